@@ -0,0 +1,426 @@
+/* This file is part of the EMA project.
+ * ConstraintKernel Copyright 2026.
+ * See the MIT/X-like license in LICENSE.txt.
+ */
+package com.cohort.array;
+
+import com.cohort.util.Math2;
+import com.cohort.util.String2;
+
+import java.util.BitSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A ConstraintKernel is a constraint (e.g., "&gt;= 10.5") that has been compiled for
+ * one type of PrimitiveArray, so that PrimitiveArray.applyConstraint can test
+ * the values in the backing array directly, 64 rows (one word of the keep bitmap) at a time,
+ * instead of calling a virtual getDouble/getInt/getString accessor and then
+ * testValueOpValue (which compares the op String with each operator) for each row.
+ *
+ * <p>value2 is parsed once, the op is converted to an int code once,
+ * and the values needed for the tests (e.g., the almostEqual tolerance) are
+ * precomputed, so the per-row work is just the comparison.
+ * The results are exactly the same as the row-by-row tests in
+ * PrimitiveArray.applyConstraintByRow (i.e., testValueOpValue,
+ * testValueOpValueExtra, and testValueOpValueExact), including the
+ * almostEqual fudge factor and the NaN and maxIsMV rules.
+ *
+ * <p>There are kernels for Double, Float, Long, Int, Short, Byte, and String arrays,
+ * and regex kernels for all types.
+ * compile() returns null for other types (and for invalid ops), which
+ * applyConstraint handles row by row.
+ *
+ * <p>A ConstraintKernel is immutable, so it is thread safe.
+ */
+public abstract class ConstraintKernel {
+
+    /** The operator codes. */
+    public final static int EQ = 0, NE = 1, LE = 2, GE = 3, LT = 4, GT = 5, REGEX = 6;
+
+    /** One of the operator codes. */
+    protected final int op;
+
+    /**
+     * The constructor.
+     *
+     * @param tOp one of the operator codes
+     */
+    protected ConstraintKernel(int tOp) {
+        op = tOp;
+    }
+
+    /**
+     * This converts an EDDTable.OPERATORS op into an operator code.
+     *
+     * @param op e.g., "&gt;="
+     * @return the operator code, or -1 if op is invalid
+     */
+    public static int opCode(String op) {
+        switch (op) {
+            case "=":  return EQ;
+            case "!=": return NE;
+            case "<=": return LE;
+            case ">=": return GE;
+            case "<":  return LT;
+            case ">":  return GT;
+            case PrimitiveArray.REGEX_OP: return REGEX;
+            default:   return -1;
+        }
+    }
+
+    /**
+     * This compiles a constraint for a type of PrimitiveArray.
+     * The parsing of value2 matches PrimitiveArray.applyConstraintByRow.
+     *
+     * @param paType the elementType of the PrimitiveArrays it will be applied to
+     * @param morePrecise e.g., for tests of time values which are very precise
+     * @param op one of EDDTable.OPERATORS
+     * @param value2 the constraint's value
+     * @return a kernel, or null if there isn't a kernel for this type or op is invalid
+     * @throws RuntimeException if op is a regex and value2 isn't a valid regex
+     */
+    public static ConstraintKernel compile(PAType paType, boolean morePrecise,
+        String op, String value2) {
+
+        int tOp = opCode(op);
+        if (tOp < 0)
+            return null;
+        if (tOp == REGEX)
+            return new RegexKernel(Pattern.compile(value2));  //for all types
+
+        switch (paType) {
+            case STRING:
+                return new StringKernel(tOp, value2);
+
+            case DOUBLE:
+                return new DoubleKernel(tOp, String2.parseDouble(value2), morePrecise? 12 : 9);
+
+            case FLOAT:
+                return new FloatKernel(tOp, String2.parseFloat(value2));
+
+            case LONG: {
+                double value2d = String2.parseDouble(value2);
+                long   value2l = String2.parseLong(value2);  //Long.MAX_VALUE if trouble
+                return value2d == value2l && value2l != Long.MAX_VALUE?
+                    new LongKernel(tOp, value2l, value2d) :  //value2 parsed cleanly as a long
+                    new LongKernel(tOp, value2d);            //do 'exact' test via double
+            }
+
+            case BYTE:
+            case SHORT:
+            case INT: {
+                double value2d = String2.parseDouble(value2);
+                int    value2i = String2.parseInt(value2);
+                return value2d == value2i && value2d != Integer.MAX_VALUE?
+                    new IntKernel(tOp, value2i, value2d) :  //value2 parsed cleanly as an int
+                    new IntKernel(tOp, value2d);            //do 'exact' test via double
+            }
+
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * This tests the keep=true elements of pa.
+     * If the test is false, the keep element is set to false.
+     *
+     * @param pa a PrimitiveArray of the type this was compiled for
+     * @param keep the test is only applied to keep=true elements
+     * @return nStillGood
+     * @throws RuntimeException if trouble (e.g., a keep=true element is beyond pa.size())
+     */
+    public int apply(PrimitiveArray pa, BitSet keep) {
+        if (keep.length() > pa.size())
+            throw new IllegalArgumentException(String2.ERROR +
+                " in ConstraintKernel.apply: keep.length()=" + keep.length() +
+                " > size=" + pa.size() + ".");
+        long words[] = keep.toLongArray();
+        int nStillGood = 0;
+        boolean changed = false;
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            if (word == 0)
+                continue;
+            long result = testWord(pa, w << 6, word);
+            if (result != word) {
+                words[w] = result;
+                changed = true;
+            }
+            nStillGood += Long.bitCount(result);
+        }
+        if (changed)
+            keep.and(BitSet.valueOf(words));
+        return nStillGood;
+    }
+
+    /**
+     * This tests the rows of one word of the keep bitmap.
+     *
+     * @param pa the PrimitiveArray
+     * @param base the row number of bit 0 of the word
+     * @param word the word's bits (1=test the row). It isn't 0.
+     * @return the word with the bits of the rows that failed the test set to 0
+     */
+    protected abstract long testWord(PrimitiveArray pa, int base, long word);
+
+
+    /**
+     * This is the superclass of the numeric kernels.
+     * It has the double tests (with an almostEqual fudge factor or exact)
+     * and the integer tests.
+     */
+    abstract static class NumericKernel extends ConstraintKernel {
+        protected final double d2;
+        protected final boolean d2NaN;
+        protected final int digits;   //almostEqual nSignificantDigits (0 = exact tests)
+        protected final double tol;   //if |v-d2| > tol, v can't be almostEqual d2
+        protected final boolean integerTests; //if true, use l2 (for long) or i2 (for int) tests
+        protected final long l2;
+        protected final int i2;
+
+        NumericKernel(int tOp, double tD2, int tDigits, double eps, boolean tIntegerTests, long tL2) {
+            super(tOp);
+            d2 = tD2;
+            d2NaN = Double.isNaN(d2);
+            digits = tDigits;
+            //almostEqual(digits>=6, v, d2) requires |v/d2 - 1| <= 5e-7 (or |v| and |d2| < eps),
+            //so this tol is a safe (generous) pre-test which avoids the division for most values
+            tol = Math.max(Math.abs(d2) * 1e-5, 3 * eps);
+            integerTests = tIntegerTests;
+            l2 = tL2;
+            i2 = (int)tL2;
+        }
+
+        /** Like testValueOpValue(double) (digits=9), testValueOpValueExtra (12),
+         * and testValueOpValueExact (0). */
+        final boolean testDouble(double v) {
+            switch (op) {
+                case EQ: return d2NaN? Double.isNaN(v) :
+                    digits == 0? v == d2 :
+                    Math.abs(v - d2) <= tol && Math2.almostEqual(digits, v, d2);
+                case NE: return d2NaN? !Double.isNaN(v) : v != d2;
+                case LE: return v <= d2 ||
+                    (digits > 0 && Math.abs(v - d2) <= tol && Math2.almostEqual(digits, v, d2));
+                case GE: return v >= d2 ||
+                    (digits > 0 && Math.abs(v - d2) <= tol && Math2.almostEqual(digits, v, d2));
+                case LT: return v < d2;
+                default: return v > d2; //GT
+            }
+        }
+
+        /** Like testValueOpValue(int). i2 is never Integer.MAX_VALUE. */
+        final boolean testInt(int v) {
+            switch (op) {
+                case EQ: return v == i2;
+                case NE: return v != i2;
+                case LE: return v <= i2;
+                case GE: return v >= i2 && v != Integer.MAX_VALUE;
+                case LT: return v <  i2;
+                default: return v >  i2 && v != Integer.MAX_VALUE; //GT
+            }
+        }
+
+        /** Like testValueOpValue(long). l2 is never Long.MAX_VALUE. */
+        final boolean testLong(long v) {
+            switch (op) {
+                case EQ: return v == l2;
+                case NE: return v != l2;
+                case LE: return v <= l2;
+                case GE: return v >= l2 && v != Long.MAX_VALUE;
+                case LT: return v <  l2;
+                default: return v >  l2 && v != Long.MAX_VALUE; //GT
+            }
+        }
+    }
+
+    /** The kernel for DoubleArrays (testValueOpValue or, if morePrecise, testValueOpValueExtra). */
+    static class DoubleKernel extends NumericKernel {
+        DoubleKernel(int tOp, double tD2, int tDigits) {
+            super(tOp, tD2, tDigits, Math2.dEps, false, 0);
+        }
+
+        protected long testWord(PrimitiveArray pa, int base, long word) {
+            double a[] = ((DoubleArray)pa).array;
+            long result = 0;
+            for (long w = word; w != 0; w &= w - 1) {
+                int bit = Long.numberOfTrailingZeros(w);
+                if (testDouble(a[base + bit]))
+                    result |= 1L << bit;
+            }
+            return result;
+        }
+    }
+
+    /** The kernel for FloatArrays (testValueOpValue(float)). */
+    static class FloatKernel extends NumericKernel {
+        protected final float f2;
+
+        FloatKernel(int tOp, float tF2) {
+            super(tOp, tF2, 6, Math2.fEps, false, 0);
+            f2 = tF2;
+        }
+
+        protected long testWord(PrimitiveArray pa, int base, long word) {
+            float a[] = ((FloatArray)pa).array;
+            long result = 0;
+            for (long w = word; w != 0; w &= w - 1) {
+                int bit = Long.numberOfTrailingZeros(w);
+                if (testFloat(a[base + bit]))
+                    result |= 1L << bit;
+            }
+            return result;
+        }
+
+        /** Like testValueOpValue(float). */
+        final boolean testFloat(float v) {
+            switch (op) {
+                case EQ: return d2NaN? Float.isNaN(v) :
+                    Math.abs(v - d2) <= tol && Math2.almostEqual(6, v, f2);
+                case NE: return d2NaN? !Float.isNaN(v) : v != f2;
+                case LE: return v <= f2 || (Math.abs(v - d2) <= tol && Math2.almostEqual(6, v, f2));
+                case GE: return v >= f2 || (Math.abs(v - d2) <= tol && Math2.almostEqual(6, v, f2));
+                case LT: return v < f2;
+                default: return v > f2; //GT
+            }
+        }
+    }
+
+    /** The kernel for LongArrays. */
+    static class LongKernel extends NumericKernel {
+        /** For a value2 which parsed cleanly as a long (testValueOpValue(long) with getLong). */
+        LongKernel(int tOp, long tL2, double tD2) {
+            super(tOp, tD2, 0, 0, true, tL2);
+        }
+
+        /** For other value2's (testValueOpValueExact with getDouble). */
+        LongKernel(int tOp, double tD2) {
+            super(tOp, tD2, 0, 0, false, 0);
+        }
+
+        protected long testWord(PrimitiveArray pa, int base, long word) {
+            long a[] = ((LongArray)pa).array;
+            boolean mv = pa.getMaxIsMV();
+            long result = 0;
+            for (long w = word; w != 0; w &= w - 1) {
+                int bit = Long.numberOfTrailingZeros(w);
+                long v = a[base + bit];
+                if (integerTests? testLong(v) :
+                        testDouble(mv && v == Long.MAX_VALUE? Double.NaN : v))
+                    result |= 1L << bit;
+            }
+            return result;
+        }
+    }
+
+    /** The kernel for ByteArrays, ShortArrays, and IntArrays. */
+    static class IntKernel extends NumericKernel {
+        /** For a value2 which parsed cleanly as an int (testValueOpValue(int) with getInt). */
+        IntKernel(int tOp, int tI2, double tD2) {
+            super(tOp, tD2, 0, 0, true, tI2);
+        }
+
+        /** For other value2's (testValueOpValueExact with getDouble). */
+        IntKernel(int tOp, double tD2) {
+            super(tOp, tD2, 0, 0, false, 0);
+        }
+
+        /**
+         * This tests one value.
+         *
+         * @param isMV true if maxIsMV and v is the type's MAX_VALUE
+         *   (getInt returns Integer.MAX_VALUE and getDouble returns NaN).
+         */
+        private boolean test(boolean isMV, int v) {
+            return integerTests? testInt(isMV? Integer.MAX_VALUE : v) :
+                testDouble(isMV? Double.NaN : v);
+        }
+
+        protected long testWord(PrimitiveArray pa, int base, long word) {
+            boolean mv = pa.getMaxIsMV();
+            long result = 0;
+            if (pa instanceof IntArray) {
+                int a[] = ((IntArray)pa).array;
+                for (long w = word; w != 0; w &= w - 1) {
+                    int bit = Long.numberOfTrailingZeros(w);
+                    int v = a[base + bit];
+                    if (test(mv && v == Integer.MAX_VALUE, v))
+                        result |= 1L << bit;
+                }
+            } else if (pa instanceof ShortArray) {
+                short a[] = ((ShortArray)pa).array;
+                for (long w = word; w != 0; w &= w - 1) {
+                    int bit = Long.numberOfTrailingZeros(w);
+                    short v = a[base + bit];
+                    if (test(mv && v == Short.MAX_VALUE, v))
+                        result |= 1L << bit;
+                }
+            } else {
+                byte a[] = ((ByteArray)pa).array;
+                for (long w = word; w != 0; w &= w - 1) {
+                    int bit = Long.numberOfTrailingZeros(w);
+                    byte v = a[base + bit];
+                    if (test(mv && v == Byte.MAX_VALUE, v))
+                        result |= 1L << bit;
+                }
+            }
+            return result;
+        }
+    }
+
+    /** The kernel for StringArrays (testValueOpValue(String)). */
+    static class StringKernel extends ConstraintKernel {
+        protected final String s2;
+        protected final String s2LC;
+
+        StringKernel(int tOp, String tS2) {
+            super(tOp);
+            s2 = tS2;
+            s2LC = tS2.toLowerCase();
+        }
+
+        protected long testWord(PrimitiveArray pa, int base, long word) {
+            StringArray sa = (StringArray)pa;
+            long result = 0;
+            for (long w = word; w != 0; w &= w - 1) {
+                int bit = Long.numberOfTrailingZeros(w);
+                String v = sa.get(base + bit);
+                boolean pass;
+                switch (op) {
+                    case EQ: pass =  v.equals(s2); break;
+                    case NE: pass = !v.equals(s2); break;
+                    case LE: pass = v.toLowerCase().compareTo(s2LC) <= 0; break;
+                    case GE: pass = v.toLowerCase().compareTo(s2LC) >= 0; break;
+                    case LT: pass = v.toLowerCase().compareTo(s2LC) <  0; break;
+                    default: pass = v.toLowerCase().compareTo(s2LC) >  0; break; //GT
+                }
+                if (pass)
+                    result |= 1L << bit;
+            }
+            return result;
+        }
+    }
+
+    /** The kernel for regex tests (of getString(row)) for all types. */
+    static class RegexKernel extends ConstraintKernel {
+        protected final Pattern pattern;
+
+        RegexKernel(Pattern tPattern) {
+            super(REGEX);
+            pattern = tPattern;
+        }
+
+        protected long testWord(PrimitiveArray pa, int base, long word) {
+            Matcher matcher = pattern.matcher("");
+            long result = 0;
+            for (long w = word; w != 0; w &= w - 1) {
+                int bit = Long.numberOfTrailingZeros(w);
+                if (matcher.reset(pa.getString(base + bit)).matches())
+                    result |= 1L << bit;
+            }
+            return result;
+        }
+    }
+
+}
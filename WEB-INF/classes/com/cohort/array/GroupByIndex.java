@@ -0,0 +1,361 @@
+/* This file is part of the EMA project.
+ * GroupByIndex Copyright 2026.
+ * See the MIT/X-like license in LICENSE.txt.
+ */
+package com.cohort.array;
+
+import com.cohort.util.*;
+import java.util.HashMap;
+
+/**
+ * This assigns a group number (0, 1, 2, ..., in the order the groups are
+ * first seen) to each distinct combination of values in some key columns,
+ * e.g., for orderByCount, orderByMean, and orderByMinMax.
+ *
+ * <p>The key values are hashed directly from the PrimitiveArrays' backing arrays
+ * into an open-addressing (linear probing) hash table, so no String keys
+ * or boxed Integers are made for each row.
+ * Callers can keep the per-group results in primitive arrays
+ * (e.g., an IntArray of counts) indexed by group number.
+ *
+ * <p>Two rows are in the same group if pa.compare() says all of their key values
+ * are equal, so grouping matches what sorting and then comparing adjacent rows
+ * would do (e.g., NaN equals NaN).
+ * The key columns of each call must be the same PATypes as the key columns
+ * given to the constructor.
+ */
+public class GroupByIndex {
+
+    /** The types of key columns that are hashed specially. */
+    protected final static int GENERIC_KEY = 0, DOUBLE_KEY = 1, FLOAT_KEY = 2,
+        INT_KEY = 3, LONG_KEY = 4, STRING_KEY = 5;
+
+    protected int nKeys;
+    protected int keyTypes[];
+    protected PrimitiveArray groupKeys[]; //for each key: each group's value
+
+    protected int slots[];       //each is group+1, or 0 if empty. length is a power of 2
+    protected int groupHashes[]; //the hash of each group
+    protected int nGroups = 0;
+
+    /**
+     * The constructor.
+     *
+     * @param keyPAs the key columns (they are just used as examples of the PATypes).
+     *   This may be length=0, in which case all rows are in group 0.
+     */
+    public GroupByIndex(PrimitiveArray keyPAs[]) {
+        nKeys = keyPAs.length;
+        keyTypes = new int[nKeys];
+        groupKeys = new PrimitiveArray[nKeys];
+        for (int k = 0; k < nKeys; k++) {
+            PAType paType = keyPAs[k].elementType();
+            keyTypes[k] =
+                paType == PAType.DOUBLE? DOUBLE_KEY :
+                paType == PAType.FLOAT?  FLOAT_KEY :
+                paType == PAType.INT?    INT_KEY :
+                paType == PAType.LONG?   LONG_KEY :
+                paType == PAType.STRING? STRING_KEY : GENERIC_KEY;
+            groupKeys[k] = PrimitiveArray.factory(paType, 64, false);
+            groupKeys[k].setMaxIsMV(keyPAs[k].getMaxIsMV());
+        }
+        slots = new int[64];
+        groupHashes = new int[32];
+    }
+
+    /**
+     * This returns the number of groups.
+     *
+     * @return the number of groups
+     */
+    public int size() {
+        return nGroups;
+    }
+
+    /**
+     * This returns a PrimitiveArray with each group's value for one of the keys.
+     * Don't change it.
+     *
+     * @param key 0 ... nKeys-1
+     * @return a PrimitiveArray with each group's value for the key.
+     */
+    public PrimitiveArray groupKeys(int key) {
+        return groupKeys[key];
+    }
+
+    /**
+     * This finds the group for one row of the key columns, adding a new group if needed.
+     *
+     * @param keyPAs the key columns
+     * @param row the row number in the key columns
+     * @return the group number. If it equals size()-1 and size() just grew,
+     *    this row started a new group.
+     */
+    public int add(PrimitiveArray keyPAs[], int row) {
+        int hash = hash(keyPAs, row);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int g = slots[slot] - 1;
+            if (g < 0)
+                break;
+            if (groupHashes[g] == hash && equals(g, keyPAs, row))
+                return g;
+            slot = (slot + 1) & mask;
+        }
+
+        //add a new group
+        int g = nGroups++;
+        for (int k = 0; k < nKeys; k++) {
+            groupKeys[k].addFromPA(keyPAs[k], row);
+            if (keyPAs[k].getMaxIsMV())
+                groupKeys[k].setMaxIsMV(true);
+        }
+        if (g == groupHashes.length) {
+            int newHashes[] = new int[2 * g];
+            System.arraycopy(groupHashes, 0, newHashes, 0, g);
+            groupHashes = newHashes;
+        }
+        groupHashes[g] = hash;
+        slots[slot] = g + 1;
+        if (2 * nGroups > slots.length) //keep load factor <= 0.5
+            rehash(2 * slots.length);
+        return g;
+    }
+
+    /**
+     * This finds the group for each row of the key columns, adding new groups if needed.
+     *
+     * @param keyPAs the key columns
+     * @return the group number for each row
+     */
+    public int[] add(PrimitiveArray keyPAs[]) {
+        int nRows = keyPAs.length == 0? 0 : keyPAs[0].size();
+        int groups[] = new int[nRows];
+        for (int row = 0; row < nRows; row++)
+            groups[row] = add(keyPAs, row);
+        return groups;
+    }
+
+    /**
+     * This finds the group for one row of the key columns.
+     *
+     * @param keyPAs the key columns
+     * @param row the row number in the key columns
+     * @return the group number, or -1 if not found
+     */
+    public int find(PrimitiveArray keyPAs[], int row) {
+        int hash = hash(keyPAs, row);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int g = slots[slot] - 1;
+            if (g < 0)
+                return -1;
+            if (groupHashes[g] == hash && equals(g, keyPAs, row))
+                return g;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * This returns true if the group's key values equal the row's key values.
+     */
+    protected boolean equals(int group, PrimitiveArray keyPAs[], int row) {
+        for (int k = 0; k < nKeys; k++) {
+            if (groupKeys[k].compare(group, keyPAs[k], row) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * This hashes the key values of one row.
+     * Values which compare() as equal must have the same hash.
+     */
+    protected int hash(PrimitiveArray keyPAs[], int row) {
+        int hash = 1;
+        for (int k = 0; k < nKeys; k++) {
+            PrimitiveArray pa = keyPAs[k];
+            int h;
+            switch (keyTypes[k]) {
+                case DOUBLE_KEY: h = Double.hashCode(((DoubleArray)pa).array[row]); break;
+                case FLOAT_KEY:  h = Float.hashCode(  ((FloatArray)pa).array[row]); break;
+                case INT_KEY:    h = Long.hashCode(pa.getLong(row)); break; //getLong handles maxIsMV like compare
+                case LONG_KEY:   h = Long.hashCode(pa.getLong(row)); break;
+                case STRING_KEY:
+                    StringHolder sh = ((StringArray)pa).stringHolderArray()[row];
+                    h = sh == null? 0 : sh.hashCode();
+                    break;
+                default:
+                    if (pa.isIntegerType() && pa.elementType() != PAType.ULONG)
+                         h = Long.hashCode(pa.getLong(row));
+                    else if (pa.elementType() == PAType.ULONG)
+                         h = Double.hashCode(pa.getDouble(row));
+                    else h = pa.getString(row).hashCode(); //CharArray
+                    break;
+            }
+            hash = 31 * hash + h;
+        }
+        //spread the bits, since the low bits are used to pick the slot
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /** This makes a bigger slots array and reinserts the groups. */
+    protected void rehash(int newNSlots) {
+        int newSlots[] = new int[newNSlots];
+        int mask = newNSlots - 1;
+        for (int g = 0; g < nGroups; g++) {
+            int slot = groupHashes[g] & mask;
+            while (newSlots[slot] != 0)
+                slot = (slot + 1) & mask;
+            newSlots[slot] = g + 1;
+        }
+        slots = newSlots;
+    }
+
+
+    /**
+     * This tests the methods in this class.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** GroupByIndex.basicTest");
+
+        StringArray sa = new StringArray(new String[]{"b", "a", "b", "",  "a", "b", "",  "a"});
+        DoubleArray da = new DoubleArray(new double[]{1,   2,   1, Double.NaN, 2, 3, Double.NaN, -0.0});
+        ByteArray   ba = (ByteArray)new ByteArray(new byte[]{5, 6, 5, 127, 6, 5, 127, 6}).setMaxIsMV(true);
+        PrimitiveArray keys[] = new PrimitiveArray[]{sa, da, ba};
+        GroupByIndex index = new GroupByIndex(keys);
+        Test.ensureEqual(index.add(keys), new int[]{0, 1, 0, 2, 1, 3, 2, 4}, "");
+        Test.ensureEqual(index.size(), 5, "");
+        Test.ensureEqual(index.groupKeys(0).toString(), "b, a, , b, a", "");
+        Test.ensureEqual(index.groupKeys(1).toString(), "1.0, 2.0, NaN, 3.0, -0.0", "");
+        Test.ensureEqual(index.groupKeys(2).toString(), "5, 6, 127, 5, 6", "");
+        Test.ensureEqual(index.groupKeys(2).getMaxIsMV(), true, "");
+        Test.ensureEqual(index.find(keys, 5), 3, "");
+
+        //a row that isn't there
+        PrimitiveArray other[] = new PrimitiveArray[]{
+            new StringArray(new String[]{"a"}), new DoubleArray(new double[]{0}), new ByteArray(new byte[]{6})};
+        Test.ensureEqual(index.find(other, 0), -1, "");  // 0.0 != -0.0, like compare()
+
+        //no keys: everything is in group 0
+        index = new GroupByIndex(new PrimitiveArray[0]);
+        Test.ensureEqual(index.add(new PrimitiveArray[0], 0), 0, "");
+        Test.ensureEqual(index.add(new PrimitiveArray[0], 1), 0, "");
+        Test.ensureEqual(index.size(), 1, "");
+
+        //lots of groups (forces rehash), and each is found again
+        IntArray ia = new IntArray();
+        LongArray la = new LongArray();
+        for (int i = 0; i < 100000; i++) {
+            ia.add(i % 1000);
+            la.add(i % 77);
+        }
+        keys = new PrimitiveArray[]{ia, la};
+        index = new GroupByIndex(keys);
+        int groups[] = index.add(keys);
+        Test.ensureEqual(index.size(), 77000, ""); //1000 and 77 are relatively prime
+        for (int i = 0; i < 100000; i += 997) {
+            int g = groups[i];
+            Test.ensureEqual(index.groupKeys(0).getInt(g), ia.get(i), "i=" + i);
+            Test.ensureEqual(index.groupKeys(1).getLong(g), la.get(i), "i=" + i);
+            Test.ensureEqual(index.find(keys, i), g, "i=" + i);
+        }
+    }
+
+    /**
+     * This compares the speed of GroupByIndex to the old way of grouping rows
+     * (a HashMap with a String key made from each row's key values,
+     * like TableWriterOrderByMean used), and ensures the groups are the same.
+     */
+    public static void testSpeed() throws Throwable {
+        String2.log("\n*** GroupByIndex.testSpeed");
+        int n = 2000000;
+        java.util.Random random = new java.util.Random(17);
+        StringArray station = new StringArray(n, false);
+        DoubleArray hour    = new DoubleArray(n, false);
+        for (int i = 0; i < n; i++) {
+            station.add("station" + random.nextInt(300));
+            hour.add(3600.0 * random.nextInt(24 * 30));
+        }
+        PrimitiveArray keys[] = new PrimitiveArray[]{station, hour};
+
+        //run each twice so the 2nd time is after JIT compiling
+        long oldTime = 0, newTime = 0;
+        int oldGroups[] = null, newGroups[] = null;
+        int nGroups = 0;
+        for (int rep = 0; rep < 2; rep++) {
+            oldTime = System.currentTimeMillis();
+            HashMap<String,Integer> rowmap = new HashMap();
+            oldGroups = new int[n];
+            StringBuilder sbKey = new StringBuilder();
+            for (int row = 0; row < n; row++) {
+                sbKey.setLength(0);
+                sbKey.append(station.get(row)).append(":");
+                sbKey.append(hour.getNiceDouble(row)).append(":");
+                String key = sbKey.toString();
+                Integer idx = rowmap.get(key);
+                if (idx == null) {
+                    idx = Integer.valueOf(rowmap.size());
+                    rowmap.put(key, idx);
+                }
+                oldGroups[row] = idx.intValue();
+            }
+            oldTime = System.currentTimeMillis() - oldTime;
+
+            newTime = System.currentTimeMillis();
+            GroupByIndex index = new GroupByIndex(keys);
+            newGroups = index.add(keys);
+            newTime = System.currentTimeMillis() - newTime;
+            nGroups = index.size();
+        }
+        Test.ensureEqual(newGroups, oldGroups, "");
+        String2.log("group n=" + n + " nGroups=" + nGroups +
+            ": String HashMap time=" + oldTime + "ms  GroupByIndex time=" + newTime + "ms");
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 1;
+        String msg = "\n^^^ GroupByIndex.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                    if (test ==  1 && doSlowTestsToo) testSpeed();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
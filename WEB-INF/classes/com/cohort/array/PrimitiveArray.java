@@ -2858,7 +2858,75 @@ public abstract class PrimitiveArray {
         return lowRank(new RowComparatorIgnoreCase(table, keys, ascending), table);
     }
     
+    /**
+     * This ranks the rows with a stable merge sort of an int[] of row numbers,
+     * so (unlike Arrays.sort of an Integer[]) no objects are made per row.
+     * For a 20M row table, that avoids 100's of MB of Integers (and the full GC's).
+     */
     private static int[] lowRank(RowComparator comparator, List table) {
+        int n = ((PrimitiveArray)table.get(0)).size();
+        int rank[] = new int[n];
+        for (int i = 0; i < n; i++)
+            rank[i] = i;
+        if (n > 1)
+            mergeSortRows(rank, new int[n], 0, n, comparator);
+        return rank;
+    }
+
+    /** Ranges with fewer than this many rows are sorted by insertion sort. */
+    private final static int INSERTION_SORT_THRESHOLD = 32;
+
+    /**
+     * This sorts rows[from ... to-1] with a stable merge sort.
+     *
+     * @param rows the row numbers to be sorted
+     * @param temp a work array at least as big as rows
+     * @param from the first element of rows to be sorted
+     * @param to one past the last element of rows to be sorted
+     * @param comparator compares 2 row numbers
+     */
+    private static void mergeSortRows(int rows[], int temp[], int from, int to, 
+        RowComparator comparator) {
+
+        //insertion sort of small ranges  (stable: only move past greater rows)
+        if (to - from < INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int row = rows[i];
+                int j = i - 1;
+                while (j >= from && comparator.compare(rows[j], row) > 0) {
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                rows[j + 1] = row;
+            }
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        mergeSortRows(rows, temp, from, mid, comparator);
+        mergeSortRows(rows, temp, mid,  to,  comparator);
+
+        //already in order? (common for partially sorted data)
+        if (comparator.compare(rows[mid - 1], rows[mid]) <= 0)
+            return;
+
+        //merge  (stable: ties take the row from the left half)
+        System.arraycopy(rows, from, temp, from, to - from);
+        int left = from, right = mid, po = from;
+        while (left < mid && right < to) 
+            rows[po++] = comparator.compare(temp[right], temp[left]) < 0? 
+                temp[right++] : temp[left++];
+        while (left < mid) 
+            rows[po++] = temp[left++];
+        while (right < to) 
+            rows[po++] = temp[right++];
+    }
+
+    /**
+     * This is the old way lowRank worked (Arrays.sort of an Integer[]).
+     * It is just used by testRankSpeed to check and time the new way.
+     */
+    private static int[] lowRankBoxed(RowComparator comparator, List table) {
 
         //create the rowArray with pointer to specific rows
         int n = ((PrimitiveArray)table.get(0)).size();
@@ -3993,6 +4061,28 @@ public abstract class PrimitiveArray {
      */
     public int applyConstraint(boolean morePrecise, BitSet keep, String op, String value2) {
 
+        //most types have a compiled kernel which works directly on the backing array
+        ConstraintKernel kernel = ConstraintKernel.compile(elementType(), morePrecise, op, value2);
+        if (kernel != null)
+            return kernel.apply(this, keep);
+        return applyConstraintByRow(morePrecise, keep, op, value2);
+    }
+
+    /**
+     * This is like applyConstraint, but always tests the keep=true elements 
+     * row by row via getString/getInt/getLong/getFloat/getDouble and testValueOpValue.
+     * applyConstraint uses this for the types and ops that don't have a ConstraintKernel.
+     * 
+     * @param morePrecise e.g., for tests of time values which are very precise.
+     * @param keep   The test is only applied to keep=true elements.
+     *   If the test is false, the keep element is set to false.
+     * @param op one of EDDTable.OPERATORS
+     * @param value2
+     * @return nStillGood
+     * @throws RuntimeException if trouble (e.g., invalid op or invalid keep element)
+     */
+    public int applyConstraintByRow(boolean morePrecise, BitSet keep, String op, String value2) {
+
         //regex
         if (op.equals(REGEX_OP)) {
             //String2.log("applyConstraint(regex)");
@@ -5723,6 +5813,187 @@ public abstract class PrimitiveArray {
     }
 
 
+    /**
+     * This tests that rank() gets the same (stable) results as the old Integer[]
+     * approach and compares their speed for 1, 2 and 4 key columns.
+     */
+    public static void testRankSpeed() throws Throwable {
+        String2.log("\n*** PrimitiveArray.testRankSpeed");
+        int n = 1000000;
+        java.util.Random random = new java.util.Random(17);
+        IntArray    ia = new IntArray(n, false);
+        DoubleArray da = new DoubleArray(n, false);
+        LongArray   la = new LongArray(n, false);
+        StringArray sa = new StringArray(n, false);
+        for (int i = 0; i < n; i++) {
+            ia.add(random.nextInt(1000));   //lots of ties
+            da.add(random.nextInt(50) == 0? Double.NaN : random.nextInt(100) / 4.0);
+            la.add(random.nextLong() % 100);
+            sa.add("s" + random.nextInt(200));
+        }
+        ArrayList table = String2.toArrayList(new Object[]{ia, da, la, sa});
+
+        int keysAr[][] = {{0}, {0, 1}, {0, 1, 2, 3}};
+        for (int ka = 0; ka < keysAr.length; ka++) {
+            int keys[] = keysAr[ka];
+            boolean ascending[] = new boolean[keys.length];
+            for (int k = 0; k < keys.length; k++)
+                ascending[k] = k != 1;
+            for (int ignoreCase = 0; ignoreCase < 2; ignoreCase++) {
+                //run each twice so the 2nd time is after JIT compiling
+                long oldTime = 0, newTime = 0;
+                int oldRank[] = null, newRank[] = null;
+                for (int rep = 0; rep < 2; rep++) {
+                    RowComparator comparator = ignoreCase == 1? 
+                        new RowComparatorIgnoreCase(table, keys, ascending) :
+                        new RowComparator(table, keys, ascending);
+                    oldTime = System.currentTimeMillis();
+                    oldRank = lowRankBoxed(comparator, table);
+                    oldTime = System.currentTimeMillis() - oldTime;
+
+                    newTime = System.currentTimeMillis();
+                    newRank = ignoreCase == 1? 
+                        rankIgnoreCase(table, keys, ascending) :
+                        rank(table, keys, ascending);
+                    newTime = System.currentTimeMillis() - newTime;
+                }
+                Test.ensureEqual(newRank, oldRank, "nKeys=" + keys.length + " ignoreCase=" + ignoreCase);
+                String2.log("rank n=" + n + " nKeys=" + keys.length + " ignoreCase=" + (ignoreCase == 1) + 
+                    ": Integer[] time=" + oldTime + "ms  int[] time=" + newTime + "ms");
+            }
+        }
+    }
+
+    /**
+     * This tests that applyConstraint (which usually uses a ConstraintKernel) 
+     * gets exactly the same results as applyConstraintByRow, 
+     * for all of the types, ops, maxIsMV, morePrecise, and some tricky values.
+     */
+    public static void testApplyConstraint() throws Throwable {
+        String2.log("\n*** PrimitiveArray.testApplyConstraint");
+        String values[] = {"-3", "0", "1", "2", "2.5", "10", "10.0000000001", "10.00001", 
+            "9.99999999", "1e-20", "-1e-20", "1.0000001", "-128", "127", "32767", 
+            "2147483647", "9223372036854775807", "1e300", "NaN", "", "a", "B", "abc"};
+        String value2s[] = {"-3", "0", "1", "2", "2.5", "10", "10.0000000001", "9.9999999999", 
+            "1e-20", "1.000001", "127", "32767", "2147483647", "9223372036854775807", 
+            "1e300", "NaN", "", "abc", "b", "A", "1|2|10", "[0-9]+"};
+        String ops[] = {"=", "!=", "<=", ">=", "<", ">", REGEX_OP};
+        PAType paTypes[] = {PAType.BYTE, PAType.SHORT, PAType.INT, PAType.LONG, 
+            PAType.FLOAT, PAType.DOUBLE, PAType.STRING, PAType.CHAR, PAType.UINT, PAType.ULONG};
+        java.util.Random random = new java.util.Random(17);
+        int n = 1000; //not a multiple of 64
+        int nTests = 0;
+        for (int ti = 0; ti < paTypes.length; ti++) {
+            PrimitiveArray pa = factory(paTypes[ti], n, true);
+            pa.clear();
+            for (int i = 0; i < n; i++)
+                pa.addString(values[random.nextInt(values.length)]);
+            for (int mv = 0; mv < 2; mv++) {
+                pa.setMaxIsMV(mv == 1);
+                for (int precise = 0; precise < 2; precise++) {
+                    for (int oi = 0; oi < ops.length; oi++) {
+                        for (int vi = 0; vi < value2s.length; vi++) {
+                            BitSet keep = new BitSet();
+                            for (int i = 0; i < n; i++)
+                                if (random.nextInt(4) > 0)
+                                    keep.set(i);
+                            BitSet expectedKeep = (BitSet)keep.clone();
+                            String msg = paTypes[ti] + " maxIsMV=" + (mv == 1) + " morePrecise=" + 
+                                (precise == 1) + " op=" + ops[oi] + " value2=" + value2s[vi];
+                            int expected = pa.applyConstraintByRow(precise == 1, expectedKeep, ops[oi], value2s[vi]);
+                            int nGood    = pa.applyConstraint(     precise == 1, keep,         ops[oi], value2s[vi]);
+                            Test.ensureEqual(nGood, expected, msg);
+                            Test.ensureEqual(keep, expectedKeep, msg);
+                            nTests++;
+                        }
+                    }
+                }
+            }
+        }
+        String2.log("nTests=" + nTests);
+
+        //invalid op
+        DoubleArray da = new DoubleArray(new double[]{1, 2, 3});
+        BitSet keep = new BitSet();
+        keep.set(0, 3);
+        try {
+            da.applyConstraint(false, keep, "==", "2");
+            throw new SimpleException("Shouldn't get here.");
+        } catch (Exception e) {
+            Test.ensureEqual(e.toString(), 
+                "com.cohort.util.SimpleException: Query error: Unknown operator=\"==\".", "");
+        }
+
+        //keep element beyond size
+        keep.set(0, 4);
+        try {
+            da.applyConstraint(false, keep, "=", "2");
+            throw new SimpleException("Shouldn't get here.");
+        } catch (Exception e) {
+            Test.ensureEqual(e.toString(), 
+                "java.lang.IllegalArgumentException: ERROR in ConstraintKernel.apply: " +
+                "keep.length()=4 > size=3.", "");
+        }
+    }
+
+    /**
+     * This compares the speed of applyConstraint (with ConstraintKernels) and 
+     * applyConstraintByRow on 10M-row Double, Float, Int, and String columns
+     * with 1 to 4 constraints (like EDDTable.applyConstraints).
+     */
+    public static void testApplyConstraintSpeed() throws Throwable {
+        String2.log("\n*** PrimitiveArray.testApplyConstraintSpeed");
+        int n = 10000000;
+        java.util.Random random = new java.util.Random(17);
+        DoubleArray da = new DoubleArray(n, false);
+        FloatArray  fa = new FloatArray(n, false);
+        IntArray    ia = new IntArray(n, false);
+        StringArray sa = new StringArray(n, false);
+        for (int i = 0; i < n; i++) {
+            da.add(random.nextInt(50) == 0? Double.NaN : random.nextDouble() * 100);
+            fa.add(random.nextInt(50) == 0? Float.NaN  : random.nextFloat() * 100);
+            ia.add(random.nextInt(1000));
+            sa.add("s" + random.nextInt(1000));
+        }
+        ia.setMaxIsMV(true);
+        PrimitiveArray pas[] = {da, fa, ia, sa};
+        //the constraints for each column: the first ones are tested first
+        String ops[][]     = {{">=", "<=", "!=", "="}, {">", "<", "!=", ">="}, 
+                              {">=", "<", "!=", "!="}, {">=", "<=", "!=", "!="}};
+        String value2s[][] = {{"10", "90", "50", "NaN"}, {"5.5", "95", "NaN", "20"}, 
+                              {"100", "900", "500", "501"}, {"s100", "s800", "s500", "s501"}};
+
+        for (int pi = 0; pi < pas.length; pi++) {
+            PrimitiveArray pa = pas[pi];
+            for (int nCon = 1; nCon <= 4; nCon++) {
+                //run each twice so the 2nd time is after JIT compiling
+                long oldTime = 0, newTime = 0;
+                BitSet oldKeep = null, newKeep = null;
+                int oldN = 0, newN = 0;
+                for (int rep = 0; rep < 2; rep++) {
+                    oldKeep = new BitSet();
+                    oldKeep.set(0, n);
+                    oldTime = System.currentTimeMillis();
+                    for (int con = 0; con < nCon; con++)
+                        oldN = pa.applyConstraintByRow(false, oldKeep, ops[pi][con], value2s[pi][con]);
+                    oldTime = System.currentTimeMillis() - oldTime;
+
+                    newKeep = new BitSet();
+                    newKeep.set(0, n);
+                    newTime = System.currentTimeMillis();
+                    for (int con = 0; con < nCon; con++)
+                        newN = pa.applyConstraint(false, newKeep, ops[pi][con], value2s[pi][con]);
+                    newTime = System.currentTimeMillis() - newTime;
+                }
+                Test.ensureEqual(newN, oldN, pa.elementTypeString() + " nCon=" + nCon);
+                Test.ensureEqual(newKeep, oldKeep, pa.elementTypeString() + " nCon=" + nCon);
+                String2.log("applyConstraint n=" + n + " " + pa.elementTypeString() + 
+                    " nConstraints=" + nCon + " nStillGood=" + newN + 
+                    ": byRow time=" + oldTime + "ms  kernel time=" + newTime + "ms");
+            }
+        }
+    }
+
     /**
      * This runs all of the interactive or not interactive tests for this class.
      *
@@ -5737,7 +6008,7 @@ public abstract class PrimitiveArray {
     public static void test(StringBuilder errorSB, boolean interactive, 
         boolean doSlowTestsToo, int firstTest, int lastTest) {
         if (lastTest < 0)
-            lastTest = interactive? -1 : 2;
+            lastTest = interactive? -1 : 5;
         String msg = "\n^^^ PrimitiveArray.test(" + interactive + ") test=";
 
         for (int test = firstTest; test <= lastTest; test++) {
@@ -5752,6 +6023,9 @@ public abstract class PrimitiveArray {
                     if (test ==  0) basicTest();
                     if (test ==  1) testTestValueOpValue();
                     if (test ==  2) testNccsv();
+                    if (test ==  3 && doSlowTestsToo) testRankSpeed();
+                    if (test ==  4) testApplyConstraint();
+                    if (test ==  5 && doSlowTestsToo) testApplyConstraintSpeed();
                 }
 
                 String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
@@ -13,13 +13,33 @@ import java.util.List;
 /**
  * This is used by PrimitiveArray.rank to rank a table of data stored as 
  * a PrimitiveArray[].
+ *
+ * <p>PrimitiveArray.rank uses compare(int, int), which compares the 
+ * backing arrays of DoubleArray, FloatArray, IntArray, LongArray, 
+ * and StringArray keys directly, so no Integer objects are made and
+ * there is no virtual call per key per comparison.
+ * Since the backing arrays are grabbed by the constructor, 
+ * don't change the size of the key columns while this is in use.
  */
 public class RowComparator implements Comparator {
 
+    /** The types of key columns that compare(int, int) handles specially. */
+    protected final static int GENERIC_KEY = 0, DOUBLE_KEY = 1, FLOAT_KEY = 2, 
+        INT_KEY = 3, LONG_KEY = 4, STRING_KEY = 5, IGNORE_CASE_KEY = 6;
+
     protected List table;
     protected int[] keys;
     protected boolean[] ascending;
 
+    //parallel to keys
+    protected int[] keyTypes;
+    protected PrimitiveArray[] keyPAs;
+    protected double[][] doubleArrays;
+    protected float[][] floatArrays;
+    protected int[][] intArrays;
+    protected long[][] longArrays;
+    protected StringHolder[][] stringHolderArrays;
+
     /**
      * A constructor used by PrimitiveArray.rank.
      *
@@ -42,6 +62,69 @@ public class RowComparator implements Comparator {
         this.table = table;
         this.keys = keys;
         this.ascending = ascending;
+
+        int nKeys = keys.length;
+        keyTypes           = new int[nKeys];
+        keyPAs             = new PrimitiveArray[nKeys];
+        doubleArrays       = new double[nKeys][];
+        floatArrays        = new float[nKeys][];
+        intArrays          = new int[nKeys][];
+        longArrays         = new long[nKeys][];
+        stringHolderArrays = new StringHolder[nKeys][];
+        for (int k = 0; k < nKeys; k++) {
+            PrimitiveArray pa = (PrimitiveArray)table.get(keys[k]);
+            keyPAs[k] = pa;
+            PAType paType = pa.elementType();
+            if (paType == PAType.DOUBLE) {
+                keyTypes[k] = DOUBLE_KEY;
+                doubleArrays[k] = ((DoubleArray)pa).array;
+            } else if (paType == PAType.FLOAT) {
+                keyTypes[k] = FLOAT_KEY;
+                floatArrays[k] = ((FloatArray)pa).array;
+            } else if (paType == PAType.INT) {
+                //IntArray.compare compares getLong()'s, which just changes 
+                //  MAX_VALUE (still the highest value) if maxIsMV
+                keyTypes[k] = INT_KEY;
+                intArrays[k] = ((IntArray)pa).array;
+            } else if (paType == PAType.LONG) {
+                keyTypes[k] = LONG_KEY;
+                longArrays[k] = ((LongArray)pa).array;
+            } else if (paType == PAType.STRING) {
+                keyTypes[k] = STRING_KEY;
+                stringHolderArrays[k] = ((StringArray)pa).stringHolderArray();
+            } else {
+                keyTypes[k] = GENERIC_KEY;
+            }
+        }
+    }
+
+    /**
+     * This compares two rows of the table.
+     *
+     * @param row1 a row number (0 ... size-1)
+     * @param row2 a row number (0 ... size-1)
+     * @return returns a negative integer, zero, or a positive integer if the 
+     *   value at row1 is less than, equal to, or greater than 
+     *   the value at row2.  
+     *   Think "row1 - row2".
+     */
+    public int compare(int row1, int row2) {
+        for (int k = 0; k < keyTypes.length; k++) {
+            int result;
+            switch (keyTypes[k]) {
+                case DOUBLE_KEY: result = Double.compare(doubleArrays[k][row1], doubleArrays[k][row2]); break;
+                case FLOAT_KEY:  result = Float.compare(  floatArrays[k][row1],  floatArrays[k][row2]); break;
+                case INT_KEY:    result = Integer.compare(  intArrays[k][row1],    intArrays[k][row2]); break;
+                case LONG_KEY:   result = Long.compare(    longArrays[k][row1],   longArrays[k][row2]); break;
+                case STRING_KEY: result = StringArray.stringHolderComparator.compare(
+                                     stringHolderArrays[k][row1], stringHolderArrays[k][row2]); break;
+                case IGNORE_CASE_KEY: result = keyPAs[k].compareIgnoreCase(row1, row2); break;
+                default:         result = keyPAs[k].compare(row1, row2); break;
+            }
+            if (result != 0) 
+                return ascending[k]? result : -result;
+        }
+        return 0;
     }
 
     /**
@@ -55,13 +138,7 @@ public class RowComparator implements Comparator {
      *   Think "o1 - o2".
      */
     public int compare(Object o1, Object o2) {
-        for (int k = 0; k < keys.length; k++) {
-            int result = ((PrimitiveArray)table.get(keys[k])).compare(
-                ((Integer)o1).intValue(), ((Integer)o2).intValue());
-            if (result != 0) 
-                return ascending[k]? result : -result;
-        }
-        return 0;
+        return compare(((Integer)o1).intValue(), ((Integer)o2).intValue());
     }
 
     /**
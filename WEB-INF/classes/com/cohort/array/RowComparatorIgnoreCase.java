@@ -32,26 +32,15 @@ public class RowComparatorIgnoreCase extends RowComparator {
      */
     public RowComparatorIgnoreCase(List table, int keys[], boolean[] ascending) {
         super(table, keys, ascending);
-    }
 
-    /**
-     * This is required for the Comparator interface.
-     *
-     * @param o1 an Integer with the row number (0 ... size-1)
-     * @param o2 an Integer with the row number (0 ... size-1)
-     * @return returns a negative integer, zero, or a positive integer if the 
-     *   value at index1 is less than, equal to, or greater than 
-     *   the value at index2.  
-     *   Think "o1 - o2".
-     */
-    public int compare(Object o1, Object o2) {
-        for (int k = 0; k < keys.length; k++) {
-            int result = ((PrimitiveArray)table.get(keys[k])).compareIgnoreCase(
-                ((Integer)o1).intValue(), ((Integer)o2).intValue());
-            if (result != 0) 
-                return ascending[k]? result : -result;
+        //compare(int, int) uses compareIgnoreCase for the StringArray and CharArray keys
+        for (int k = 0; k < keyTypes.length; k++) {
+            PAType paType = keyPAs[k].elementType();
+            if (paType == PAType.STRING || paType == PAType.CHAR) {
+                keyTypes[k] = IGNORE_CASE_KEY;
+                stringHolderArrays[k] = null;
+            }
         }
-        return 0;
     }
 
     /**
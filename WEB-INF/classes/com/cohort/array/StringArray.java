@@ -1016,6 +1016,16 @@ public class StringArray extends PrimitiveArray {
         return array[index].string();
     }
 
+    /**
+     * This returns the backing array (not a copy) for package-internal
+     * users like RowComparator. Only elements 0 ... size-1 are valid.
+     *
+     * @return the backing array
+     */
+    StringHolder[] stringHolderArray() {
+        return array;
+    }
+
     /**
      * This gets a specified element.
      *
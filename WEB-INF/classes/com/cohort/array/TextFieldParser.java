@@ -0,0 +1,378 @@
+/* This file is part of the EMA project.
+ * TextFieldParser Copyright 2026.
+ * See the MIT/X-like license in LICENSE.txt.
+ */
+package com.cohort.array;
+
+import com.cohort.util.*;
+
+/**
+ * This converts a field of text (e.g., from a line of an ASCII data file,
+ * as chars in a char[]) and appends the value to a PrimitiveArray of
+ * any type, without making a String (and canonicalizing it in a StringArray)
+ * for each number.
+ *
+ * <p>The results are always identical to
+ * <tt>pa.append(new StringArray(new String[]{String2.fromNccsvString(field)}))</tt>,
+ * which is what Table.readASCII's callers did with the StringArray columns.
+ * Simple numbers (e.g., -12, 3.25, 1.5e-3) are parsed directly from the chars:
+ * integers with up to 18 digits are exact; decimal numbers with up to 15
+ * digits and a power of 10 up to 22 are converted with one exact
+ * floating point operation, so they are correctly rounded, just as
+ * Double.parseDouble would do.
+ * Everything else (e.g., "", "NaN", hex, quoted strings, more digits)
+ * is converted to a String and handled the standard way.
+ *
+ * <p>An instance has state, so it isn't thread safe. Use one per thread.
+ */
+public class TextFieldParser {
+
+    /** Exact powers of 10 (all are exactly representable as doubles). */
+    protected final static double POWERS_OF_10[] = {
+        1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,
+        1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+        1e20, 1e21, 1e22};
+
+    //the results of the last successful parse()
+    protected boolean negative;
+    protected long mantissa;
+    protected int exponent10;     //value = mantissa * 10^exponent10
+    protected boolean isInteger;  //no '.' or exponent
+    protected int nDigits;
+
+    /** Used to append values the standard way. */
+    protected StringArray oneString = new StringArray(1, false);
+
+    /** Statistics: the number of fields parsed directly and the number done the standard way. */
+    public long nFast = 0, nStandard = 0;
+
+    /**
+     * This trims whitespace (chars &lt;= ' ', as String.trim() does) from the start of a field.
+     *
+     * @return the new start
+     */
+    public static int trimStart(char buf[], int start, int end) {
+        while (start < end && buf[start] <= ' ')
+            start++;
+        return start;
+    }
+
+    /**
+     * This trims whitespace (chars &lt;= ' ', as String.trim() does) from the end of a field.
+     *
+     * @return the new end
+     */
+    public static int trimEnd(char buf[], int start, int end) {
+        while (end > start && buf[end - 1] <= ' ')
+            end--;
+        return end;
+    }
+
+    /**
+     * This tries to parse the (already trimmed) field as a simple number:
+     * an optional sign, digits with an optional decimal point,
+     * and an optional exponent (e.g., -12, 3.25, .5, 1.5e-3).
+     *
+     * @return true if the field is a simple number
+     *   (and then mantissa, exponent10, ... are set).
+     */
+    protected boolean parse(char buf[], int start, int end) {
+        int po = start;
+        if (po >= end)
+            return false;
+        negative = false;
+        char ch = buf[po];
+        if (ch == '-' || ch == '+') {
+            negative = ch == '-';
+            po++;
+        }
+        long m = 0;
+        int nd = 0;         //the number of mantissa digits
+        int nFraction = 0;  //the number of digits after '.'
+        boolean point = false;
+        while (po < end) {
+            ch = buf[po];
+            if (ch >= '0' && ch <= '9') {
+                if (++nd > 18)
+                    return false;
+                m = m * 10 + (ch - '0');
+                if (point)
+                    nFraction++;
+            } else if (ch == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+            po++;
+        }
+        if (nd == 0)
+            return false;
+        int exp = 0;
+        boolean hasExponent = false;
+        if (po < end) {
+            ch = buf[po++];
+            if (ch != 'e' && ch != 'E')
+                return false;
+            hasExponent = true;
+            boolean expNegative = false;
+            if (po < end && (buf[po] == '-' || buf[po] == '+'))
+                expNegative = buf[po++] == '-';
+            int nExpDigits = 0;
+            while (po < end) {
+                ch = buf[po++];
+                if (ch < '0' || ch > '9' || ++nExpDigits > 3)
+                    return false;
+                exp = exp * 10 + (ch - '0');
+            }
+            if (nExpDigits == 0)
+                return false;
+            if (expNegative)
+                exp = -exp;
+        }
+        mantissa = m;
+        nDigits = nd;
+        exponent10 = exp - nFraction;
+        isInteger = !point && !hasExponent;
+        return true;
+    }
+
+    /**
+     * After a successful parse(), this indicates if the value can be converted
+     * exactly (with correct rounding) to a double.
+     */
+    protected boolean isExactDouble() {
+        return nDigits <= 15 && exponent10 >= -22 && exponent10 <= 22;
+    }
+
+    /**
+     * After a successful parse() and isExactDouble(), this returns the value.
+     */
+    protected double toDouble() {
+        double d = mantissa;  //exact since <= 15 digits
+        if (exponent10 < 0)
+             d /= POWERS_OF_10[-exponent10];
+        else if (exponent10 > 0)
+             d *= POWERS_OF_10[exponent10];
+        return negative? -d : d;
+    }
+
+    /**
+     * This returns the field's value as a double,
+     * exactly as String2.parseDouble would.
+     *
+     * @param buf the chars
+     * @param start the start of the field
+     * @param end the end (exclusive) of the field
+     * @return the value (or NaN if not a number)
+     */
+    public double parseDouble(char buf[], int start, int end) {
+        start = trimStart(buf, start, end);
+        end   = trimEnd(buf, start, end);
+        if (start == end)
+            return Double.NaN;
+        if (parse(buf, start, end)) {
+            if (isInteger) {
+                double d = mantissa; //correctly rounded, since <= 18 digits
+                return negative? -d : d;
+            }
+            if (isExactDouble())
+                return toDouble();
+        }
+        return String2.parseDouble(new String(buf, start, end - start));
+    }
+
+    /**
+     * This appends the field's value to pa.
+     *
+     * @param pa the destination
+     * @param buf the chars
+     * @param start the start of the field
+     * @param end the end (exclusive) of the field
+     */
+    public void append(PrimitiveArray pa, char buf[], int start, int end) {
+        start = trimStart(buf, start, end);
+        end   = trimEnd(buf, start, end);
+        PAType paType = pa.elementType();
+        if (paType == PAType.STRING) {
+            ((StringArray)pa).add(start == end? "" :
+                String2.fromNccsvString(new String(buf, start, end - start)));
+            return;
+        }
+        if (start < end && parse(buf, start, end)) {
+            if (isInteger) {
+                long v = negative? -mantissa : mantissa;
+                switch (paType) {
+                    //these mimic the PAType's append(StringArray)
+                    case DOUBLE: pa.addDouble(negative? -(double)mantissa : (double)mantissa); nFast++; return;
+                    case FLOAT:  pa.addFloat(Math2.doubleToFloatNaN(negative? -(double)mantissa : (double)mantissa)); nFast++; return;
+                    case LONG:
+                    case INT:    pa.addLong(v); nFast++; return;
+                    case SHORT:
+                    case BYTE:   if (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE) {
+                                     pa.addInt((int)v); nFast++; return;
+                                 }
+                                 break;
+                    default: break;
+                }
+            } else if (isExactDouble()) {
+                if (paType == PAType.DOUBLE) {
+                    pa.addDouble(toDouble()); nFast++; return;
+                }
+                if (paType == PAType.FLOAT) {
+                    pa.addFloat(Math2.doubleToFloatNaN(toDouble())); nFast++; return;
+                }
+            }
+        }
+        append(pa, new String(buf, start, end - start));
+    }
+
+    /**
+     * This appends the (untrimmed, still NCCSV-encoded) field's value to pa,
+     * the standard way.
+     *
+     * @param pa the destination
+     * @param field the field
+     */
+    public void append(PrimitiveArray pa, String field) {
+        String s = String2.fromNccsvString(field);
+        if (pa.elementType() == PAType.STRING) {
+            ((StringArray)pa).add(s);
+            return;
+        }
+        nStandard++;
+        oneString.clear();
+        oneString.add(s);
+        pa.append(oneString);
+    }
+
+    /**
+     * This tests the methods in this class.
+     *
+     * @throws Throwable if trouble.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** TextFieldParser.basicTest");
+        TextFieldParser tfp = new TextFieldParser();
+
+        //compare to the standard way, for all types, for many types of fields
+        String fields[] = {"", " ", "0", "-0", "+0", "007", "  12  ", "-12", "+12",
+            "127", "128", "-128", "-129", "255", "256", "32767", "32768", "65535", "65536",
+            "2147483647", "2147483648", "-2147483648", "-2147483649", "4294967295", "4294967296",
+            "123456789012345678", "1234567890123456789", "9223372036854775807", "-9223372036854775808",
+            "1.5", "2.5", "-2.5", "0.5", ".5", "5.", "-.5", "1e3", "1E3", "1e+3", "1e-3", "-1.5e-3", "1.5e22",
+            "1.5e23", "1e-22", "1e-23", "1.2345678901234", "1.23456789012345", "1.234567890123456",
+            "0.1", "0.2", "0.3", "3.4028235e38", "3.5e38", "1e-45", "1e-46", "1e308", "1e309", "4.9e-324",
+            "1e1000", "1e", "1e+", "e5", ".", "-", "+", "--1", "1..2", "1.2.3", "1,5", "1.5f", "1.5d", "0x1F", "0X1f",
+            "NaN", "nan", "Infinity", "-Infinity", "abc", "1 2", "\"12\"", "\"a,b\"", "\\u0041", "a\\tb",
+            "99999999999999999999", "1e-3x"};
+        PAType paTypes[] = {PAType.BYTE, PAType.SHORT, PAType.CHAR, PAType.INT, PAType.LONG,
+            PAType.FLOAT, PAType.DOUBLE, PAType.UBYTE, PAType.USHORT, PAType.UINT, PAType.ULONG,
+            PAType.STRING};
+        for (int t = 0; t < paTypes.length; t++) {
+            PrimitiveArray expected = PrimitiveArray.factory(paTypes[t], 8, false);
+            PrimitiveArray observed = PrimitiveArray.factory(paTypes[t], 8, false);
+            for (int f = 0; f < fields.length; f++) {
+                String field = fields[f];
+                expected.append(new StringArray(new String[]{String2.fromNccsvString(field.trim())}));
+                //put the field in the middle of other chars
+                char buf[] = ("ab," + field + ",cd").toCharArray();
+                tfp.append(observed, buf, 3, 3 + field.length());
+                Test.ensureEqual(observed.size(), f + 1, "");
+                Test.ensureEqual(observed.getString(f), expected.getString(f),
+                    "type=" + paTypes[t] + " field=" + String2.toJson(field));
+                if (paTypes[t] == PAType.DOUBLE || paTypes[t] == PAType.FLOAT)
+                    Test.ensureEqual(
+                        Double.doubleToRawLongBits(observed.getDouble(f)),
+                        Double.doubleToRawLongBits(expected.getDouble(f)),
+                        "type=" + paTypes[t] + " field=" + String2.toJson(field));
+            }
+            Test.ensureEqual(observed.getMaxIsMV(), expected.getMaxIsMV(), "type=" + paTypes[t]);
+            Test.ensureEqual(observed.toString(), expected.toString(), "type=" + paTypes[t]);
+
+            //parseDouble
+            for (int f = 0; f < fields.length; f++) {
+                char buf[] = fields[f].toCharArray();
+                Test.ensureEqual(
+                    Double.doubleToRawLongBits(tfp.parseDouble(buf, 0, buf.length)),
+                    Double.doubleToRawLongBits(String2.parseDouble(fields[f])),
+                    "field=" + String2.toJson(fields[f]));
+            }
+        }
+
+        //lots of random decimal numbers are correctly rounded
+        java.util.Random random = new java.util.Random(17);
+        DoubleArray expected = new DoubleArray();
+        DoubleArray observed = new DoubleArray();
+        FloatArray expectedF = new FloatArray();
+        FloatArray observedF = new FloatArray();
+        for (int i = 0; i < 100000; i++) {
+            StringBuilder sb = new StringBuilder();
+            if (random.nextBoolean())
+                sb.append('-');
+            int nd = 1 + random.nextInt(15);
+            int pointAt = random.nextInt(nd + 1);
+            for (int d = 0; d < nd; d++) {
+                if (d == pointAt)
+                    sb.append('.');
+                sb.append((char)('0' + random.nextInt(10)));
+            }
+            if (random.nextInt(4) == 0)
+                sb.append("e" + (random.nextInt(31) - 15));
+            String s = sb.toString();
+            char buf[] = s.toCharArray();
+            StringArray sa = new StringArray(new String[]{s});
+            expected.append(sa);
+            expectedF.append(sa);
+            tfp.append(observed,  buf, 0, buf.length);
+            tfp.append(observedF, buf, 0, buf.length);
+            Test.ensureEqual(
+                Double.doubleToRawLongBits(observed.get(i)),
+                Double.doubleToRawLongBits(expected.get(i)), "s=" + s);
+            Test.ensureEqual(
+                Float.floatToRawIntBits(observedF.get(i)),
+                Float.floatToRawIntBits(expectedF.get(i)), "s=" + s);
+        }
+        String2.log("nFast=" + tfp.nFast + " nStandard=" + tfp.nStandard);
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ TextFieldParser.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+}
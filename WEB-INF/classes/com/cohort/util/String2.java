@@ -199,10 +199,14 @@ public class String2 {
 
     private static String classPath; //lazy creation by getClassPath
 
-    //splitting canonicalMap and canonicalStringHolderMap into 6 maps allows each 
-    //to be bigger and makes synchronized contention less common.
-    private static Map canonicalMap[] = new Map[6];
-    private static Map canonicalStringHolderMap[] = new Map[6];
+    //splitting canonicalMap and canonicalStringHolderMap into many maps (stripes), 
+    //chosen by the hashCode (not the first char, which is very unevenly distributed),
+    //allows each to be smaller and makes synchronized contention rare, 
+    //even with many threads.
+    private final static int CANONICAL_STRIPE_BITS = 6;
+    public final static int CANONICAL_N_STRIPES = 1 << CANONICAL_STRIPE_BITS;
+    private static Map canonicalMap[] = new Map[CANONICAL_N_STRIPES];
+    private static Map canonicalStringHolderMap[] = new Map[CANONICAL_N_STRIPES];
     static {
         for (int i = 0; i < canonicalMap.length; i++) {
             canonicalMap[i]             = new WeakHashMap();
@@ -6502,12 +6506,25 @@ and zoom and pan with controls in
         return sar;
     }
 
+    /**
+     * This returns the canonicalMap stripe (0 .. CANONICAL_N_STRIPES-1) for an object's hashCode.
+     * This uses Fibonacci hashing (the high bits of hashCode * 2^32/phi), 
+     * which spreads the similar hashCodes of similar strings across all stripes.
+     *
+     * @param hashCode
+     * @return the stripe number
+     */
+    private static int canonicalStripe(int hashCode) {
+        return (hashCode * 0x9E3779B9) >>> (32 - CANONICAL_STRIPE_BITS);
+    }
+
     /** 
      * This is like String.intern(), but uses a WeakHashMap so the canonical strings 
      * can be garbage collected.
-     * <br>This is thread safe.
+     * <br>This is thread safe. The maps are striped by hashCode, 
+     *   so threads rarely contend for the same lock.
      * <br>It is fast: ~0.002ms per call.
-     * <br>See TestUtil.testString2canonical().
+     * <br>See TestUtil.testString2canonical() and testString2canonicalThreads().
      *
      * <p>Using this increases memory use by ~6 bytes per canonical string
      * (4 for pointer, and hashMap load factor = 0.75).
@@ -6523,11 +6540,8 @@ and zoom and pan with controls in
         if (s.length() == 0)
             return EMPTY_STRING;
         //generally, it slows things down to see if same as last canonical String.
-        char ch0 = s.charAt(0);
-        Map tCanonicalMap = canonicalMap[
-            ch0 < 'A'? 0 : ch0 < 'N'? 1 : //divide uppercase into 2 parts
-            ch0 < 'a'? 2 : ch0 < 'j'? 3 : //divide lowercase into 3 parts
-            ch0 < 'r'? 4 : 5];
+        //String caches its hashCode, so this is cheap and the map's get() will reuse it
+        Map tCanonicalMap = canonicalMap[canonicalStripe(s.hashCode())];
        
         //faster and logically better to use synchronized(canonicalMap) once 
         //  (and use a few times in consistent state)
@@ -6550,9 +6564,10 @@ and zoom and pan with controls in
     /** 
      * This is like String.intern(), but uses a WeakHashMap so the canonical 
      * StringHolder can be garbage collected.
-     * <br>This is thread safe.
+     * <br>This is thread safe. The maps are striped by hashCode, 
+     *   so threads rarely contend for the same lock.
      * <br>It is fast: ~0.002ms per call.
-     * <br>See TestUtil.testString2canonicalStringHolder().
+     * <br>See TestUtil.testString2canonicalStringHolder() and testString2canonicalThreads().
      *
      * <p>Using this increases memory use by ~6 bytes per canonical byte[]
      * (4 for pointer * ~.5 hashMap load factor).
@@ -6570,12 +6585,13 @@ and zoom and pan with controls in
             return STRING_HOLDER_NULL;
         if (car.length == 0)
             return STRING_HOLDER_ZERO;
-        char b = car[0];
-        int which = //b == -128? 7 : Math.abs(b)/16; //0..7
-            b < 'A'? 0 : b < 'N'? 1 : //divide uppercase into 2 parts
-            b < 'a'? 2 : b < 'j'? 3 : //divide lowercase into 3 parts
-            b < 'r'? 4 : 5;
-        Map tCanonicalStringHolderMap = canonicalStringHolderMap[which];
+        //StringHolder doesn't cache its hashCode, so just hash the length and the last 
+        //few chars (they usually vary the most, e.g., station1, station2)
+        int nChar = car.length;
+        int hash = nChar;
+        for (int i = Math.max(0, nChar - 8); i < nChar; i++)
+            hash = 31 * hash + car[i];
+        Map tCanonicalStringHolderMap = canonicalStringHolderMap[canonicalStripe(hash)];
        
         //faster and logically better to use synchronized(canonicalStringHolderMap) once 
         //  (and use a few times in consistent state)
@@ -6625,23 +6641,26 @@ and zoom and pan with controls in
 
     /** This is only used to test canonical. There isn't a trailing newline. */
     public static String canonicalStatistics() {
-        StringBuilder sb = new StringBuilder("canonical map sizes: ");
+        return 
+            "canonical map sizes: "             + canonicalStatistics(canonicalMap) + 
+            "\ncanonicalStringHolder map sizes: " + canonicalStatistics(canonicalStringHolderMap);
+    }
+
+    /** This returns the total and the range of sizes of the stripes of a canonical map. */
+    private static String canonicalStatistics(Map maps[]) {
         int sum = 0;
-        for (int i = 0; i < canonicalMap.length; i++) {
-            int tSize = canonicalMap[i].size();
-            sum += tSize;
-            sb.append((i==0? "" : " + ") + tSize);
-        }
-        sb.append(" = " + sum + 
-            "\ncanonicalStringHolder map sizes: ");
-        sum = 0;
-        for (int i = 0; i < canonicalStringHolderMap.length; i++) {
-            int tSize = canonicalStringHolderMap[i].size();
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (int i = 0; i < maps.length; i++) {
+            int tSize;
+            synchronized(maps[i]) {
+                tSize = maps[i].size();
+            }
             sum += tSize;
-            sb.append((i==0? "" : " + ") + tSize);
+            min = Math.min(min, tSize);
+            max = Math.max(max, tSize);
         }
-        sb.append(" = " + sum);
-        return sb.toString();
+        return sum + " in " + maps.length + " stripes (" + min + " to " + max + " per stripe)";
     }
 
     /** This is only used to test canonical. */
@@ -6641,6 +6641,73 @@ expected =
             "canonical(substring(s,,)) is storing references to the parent string!!!");       
     }
 
+    /**
+     * This tests the throughput and thread safety of String2.canonical() and 
+     * canonicalStringHolder() when used by 1, 8, and 32 threads at once. 
+     * With the striped maps, throughput should go up (or at least not collapse)
+     * as threads are added (up to the number of cores).
+     */
+    public static void testString2canonicalThreads() throws Exception {
+        String2.log("\n*** TestUtil.testString2canonicalThreads()");
+        int nDifferent = 10000;
+        int nCallsPerThread = 1000000;
+        final String source[] = new String[nDifferent];
+        for (int i = 0; i < nDifferent; i++)
+            source[i] = "station" + i; //the typical: many strings with the same first chars
+        int nThreadsOptions[] = {1, 8, 32};
+
+        for (int sh = 0; sh < 2; sh++) {
+            final boolean useStringHolder = sh == 1;
+            for (int nti = 0; nti < nThreadsOptions.length; nti++) {
+                final int nThreads = nThreadsOptions[nti];
+                final int nCalls = nCallsPerThread;
+                final Object results[][] = new Object[nThreads][nDifferent];
+                final Throwable trouble[] = new Throwable[1];
+                Thread threads[] = new Thread[nThreads];
+                for (int t = 0; t < nThreads; t++) {
+                    final int tt = t;
+                    threads[t] = new Thread(new Runnable() {
+                        public void run() {
+                            try {
+                                Object tResults[] = results[tt];
+                                for (int call = 0; call < nCalls; call++) {
+                                    int which = (call * 7 + tt * 13) % source.length;
+                                    //new objects, so canonical has to find the shared instance
+                                    tResults[which] = useStringHolder?
+                                        (Object)String2.canonicalStringHolder(new StringHolder(source[which].toCharArray())) :
+                                        (Object)String2.canonical(new String(source[which]));
+                                }
+                            } catch (Throwable th) {
+                                trouble[0] = th;
+                            }
+                        }
+                    });
+                }
+                long time = System.currentTimeMillis();
+                for (int t = 0; t < nThreads; t++) 
+                    threads[t].start();
+                for (int t = 0; t < nThreads; t++) 
+                    threads[t].join();
+                time = Math.max(1, System.currentTimeMillis() - time);
+                if (trouble[0] != null)
+                    throw new RuntimeException(trouble[0]);
+
+                //all threads must have gotten the same canonical instance for each value
+                for (int t = 1; t < nThreads; t++) 
+                    for (int i = 0; i < nDifferent; i++) 
+                        Test.ensureTrue(results[t][i] == results[0][i], 
+                            "t=" + t + " i=" + i + " isn't the canonical instance!");
+                Test.ensureEqual(results[0][nDifferent - 1].toString(), source[nDifferent - 1], "");
+
+                String2.log((useStringHolder? "canonicalStringHolder" : "canonical") + 
+                    " nThreads=" + String2.left("" + nThreads, 2) + 
+                    " nCalls=" + ((long)nThreads * nCalls) + 
+                    " time=" + time + "ms throughput=" + ((long)nThreads * nCalls / time) + " calls/ms");
+            }
+        }
+        String2.log(String2.canonicalStatistics());
+    }
+
     /** Test the speed of writing to hard drive. Does it block? No */
     public static void testFileWriteSpeed() throws Exception {
         String fileName = "c:/temp/TestUtilTestFileSpeed.txt";  
@@ -6721,6 +6788,7 @@ expected =
                     if (test ==  5) testString2canonical2();
                     if (test ==  6) testString2LogOutputStream();
                     if (test ==  7) testByteIndexOf();
+                    if (test ==  8 && doSlowTestsToo) testString2canonicalThreads();
 
                     if (test == 10) testFile2();
                     if (test == 12) testMustBe();
@@ -831,6 +831,7 @@ GridDataSetAnomaly gdsa;
 GridDataSetOpendap gdso;
 GridDataSetThredds gdst;
 GridScreen gs;
+GroupByIndex gbi;
 GSHHS gshhs;
 Image2 i2;
 IntArray inta;
@@ -842,6 +843,7 @@ MapScreen mapScreen;
 Math2 m2;
 Matlab matlab;     
 MustBe mb;
+Nc3StreamWriter nc3sw;
 NcHelper ncHelper;
 NetCheck netCheck;
 OneOf oneOf;
@@ -909,6 +911,7 @@ Script2 script2;
 ScriptCalendar2 sc2;
 ScriptMath sm;
 ScriptMath2 sm2;
+ScriptColumn scol;
 ScriptRow srow;
 ScriptString2 ss2;
 ShortArray sha;
@@ -927,6 +930,7 @@ Tally tally;
 Test test;
 TestBrowsers tb;
 TestSSR tssr;
+TextFieldParser tfp;
 Touch touch;
 TrajectoryScreen trajs;
 UByteArray uba;
@@ -945,6 +949,7 @@ XML xml;
 ArchiveADataset aad;
 AxisDataAccessor ada;
 DasDds dd;
+DatasetExtentIndex dei;
 EDStatic es;
 EDD edd;            
 EDDGrid eddGrid;   
@@ -967,8 +972,10 @@ EDDTableFromAsciiService eddtfas;
 EDDTableFromAsciiServiceNOS eddtfasn;
 //EDDTableFromBMDE eddtfb; //inactive
 EDDTableFromCassandra eddtfc; 
+CassandraPartitionQueries cpq;
 EDDTableFromDapSequence eddtfds; 
 EDDTableFromDatabase eddtfdb; 
+DatabaseResultSetReader drsr;
 EDDTableFromEDDGrid eddtfeg; 
 EDDTableFromErddap eddtfed;
 EDDTableFromFileNames eddtffn; 
@@ -977,6 +984,7 @@ EDDTableFromFilesCallable eddtffc;
 EDDTableFromAsciiFiles eddtfaf;
 EDDTableFromColumnarAsciiFiles eddtffaf;
 EDDTableFromHttpGet eddtfhg; 
+HttpGetGroupCommit hggc;
 EDDTableFromHyraxFiles eddtfhf;
 //EDDTableFromMWFS eddtfm;  //INACTIVE
 EDDTableFromMultidimNcFiles eddtfmdnf; 
@@ -1007,19 +1015,24 @@ FindDuplicateTime findDuplicateTime;
 FishBase fb;
 GenerateDatasetsXml gdx;
 GridDataAccessor gda;
+GridReadAhead gra;
 GridDataAllAccessor gdaacc;
 GridDataRandomAccessor gdracc;
 GridDataRandomAccessorInMemory gdraccim;
+GridOverviews gridov;
 HtmlWidgets hw;
 LoadDatasets ld;
+MappedFileTable mft;
 NoMoreDataPleaseException nmdpe;
 OpendapHelper oh;
+OriginalSearchIndex osi;
 OutputStreamSource oss;
 OutputStreamFromHttpResponse osfhr;
 OutputStreamFromHttpResponseViaAwsS3 osfhrvas;
 OutputStreamViaAwsS3 osvas;
 PersistentTable pert;
 Projects2 proj2;
+ResponseCache resc;
 RunLoadDatasets rld;
 
 Subscriptions sub;
@@ -1027,6 +1040,7 @@ TableWriter tw;
 TableWriterAll twa;
 TableWriterAllReduceDnlsTable twardt;
 TableWriterAllReduceDnlsTableNLevels twardtnl;
+TableWriterAllSortedRuns twasr;
 TableWriterAllWithMetadata twawm;
 TableWriterDataTable twdt;
 TableWriterDistinct twdis;
@@ -1050,6 +1064,7 @@ TableWriterSeparatedValue twsv;
 TableWriterUnits twu;
 TaskThread tt;
 WaitThenTryAgainException wttae;
+WmsTileCache wtc;
 
         StringBuilder errorSB = new StringBuilder();
         boolean interactive = false;
@@ -1081,6 +1096,8 @@ WaitThenTryAgainException wttae;
         ULongArray.test(                 errorSB, interactive, doSlowTestsToo, 0, -1);
         PrimitiveArray.test(             errorSB, interactive, doSlowTestsToo, 0, -1);
         PAOne.test(                      errorSB, interactive, doSlowTestsToo, 0, -1);
+        GroupByIndex.test(               errorSB, interactive, doSlowTestsToo, 0, -1);
+        TextFieldParser.test(            errorSB, interactive, doSlowTestsToo, 0, -1);
         Attributes.test(                 errorSB, interactive, doSlowTestsToo, 0, -1);
         ResourceBundle2.test(            errorSB, interactive, doSlowTestsToo, 0, -1);
 
@@ -1088,6 +1105,16 @@ WaitThenTryAgainException wttae;
         RegexFilenameFilter.test(        errorSB, interactive, doSlowTestsToo, 0, -1);  
         Tally.test(                      errorSB, interactive, doSlowTestsToo, 0, -1);
         PersistentTable.test(            errorSB, interactive, doSlowTestsToo, 0, -1);
+        SharedThreadPool.test(           errorSB, interactive, doSlowTestsToo, 0, -1);
+        TableWriterAll.test(             errorSB, interactive, doSlowTestsToo, 0, -1);
+        TableWriterAllSortedRuns.test(   errorSB, interactive, doSlowTestsToo, 0, -1);
+        MappedFileTable.test(            errorSB, interactive, doSlowTestsToo, 0, -1);
+        ResponseCache.test(              errorSB, interactive, doSlowTestsToo, 0, -1);
+        GridReadAhead.test(              errorSB, interactive, doSlowTestsToo, 0, -1);
+        GridOverviews.test(              errorSB, interactive, doSlowTestsToo, 0, -1);
+        WmsTileCache.test(               errorSB, interactive, doSlowTestsToo, 0, -1);
+        OriginalSearchIndex.test(        errorSB, interactive, doSlowTestsToo, 0, -1);
+        DatasetExtentIndex.test(         errorSB, interactive, doSlowTestsToo, 0, -1);
 
         //give antivirus a chance to get caught up
         if (!interactive) for (int i = 0; i < 3; i++) Math2.gc(20000); //in TestAll
@@ -1108,6 +1135,7 @@ WaitThenTryAgainException wttae;
         //hdf.SdsWriter.main(null); //needs work
         DataHelper.test(                 errorSB, interactive, doSlowTestsToo, 0, -1);  
         NcHelper.test(                   errorSB, interactive, doSlowTestsToo, 0, -1);   
+        Nc3StreamWriter.test(            errorSB, interactive, doSlowTestsToo, 0, -1);
         OpendapHelper.test(              errorSB, interactive, doSlowTestsToo, 0, -1);  //few tests. relies on testing in classes that use it.
         Grid.test(                       errorSB, interactive, doSlowTestsToo, 0, -1);
         //GridDataSetCWOpendap.test(     errorSB, interactive, doSlowTestsToo, 0, -1);  //INACTIVE. The test files are no longer available since we are moving to thredds
@@ -1143,6 +1171,7 @@ WaitThenTryAgainException wttae;
         SgtGraph.test(                   errorSB, interactive, doSlowTestsToo, 0, -1);   
         NDimensionalIndex.test(          errorSB, interactive, doSlowTestsToo, 0, -1); 
         ScriptRow.test(                  errorSB, interactive, doSlowTestsToo, 0, -1);
+        ScriptColumn.test(               errorSB, interactive, doSlowTestsToo, 0, -1);
         
         //give antivirus a chance to get caught up
         if (!interactive) for (int i = 0; i < 3; i++) Math2.gc(20000); //in TestAll
@@ -1203,12 +1232,15 @@ WaitThenTryAgainException wttae;
         EDDTableFromFileNames.test(      errorSB, interactive, doSlowTestsToo, 0, -1); 
         EDDTableFromEDDGrid.test(        errorSB, interactive, doSlowTestsToo, 0, -1); 
         EDDTableFromDapSequence.test(    errorSB, interactive, doSlowTestsToo, 0, -1);  
+        DatabaseResultSetReader.test(    errorSB, interactive, doSlowTestsToo, 0, -1);
         EDDTableFromDatabase.test(       errorSB, interactive, doSlowTestsToo, 0, -1);  
+        CassandraPartitionQueries.test(  errorSB, interactive, doSlowTestsToo, 0, -1);
         EDDTableFromCassandra.test(      errorSB, interactive, doSlowTestsToo, 0, -1);    
         EDDTableFromAsciiServiceNOS.test(errorSB, interactive, doSlowTestsToo, 0, -1);
         EDDTableFromErddap.test(         errorSB, interactive, doSlowTestsToo, 0, -1); 
         EDDTableFromOBIS.test(           errorSB, interactive, doSlowTestsToo, 0, -1);
         EDDTableFromHttpGet.test(        errorSB, interactive, doSlowTestsToo, 0, -1); 
+        HttpGetGroupCommit.test(         errorSB, interactive, doSlowTestsToo, 0, -1);
         EDDTableFromSOS.test(            errorSB, interactive, doSlowTestsToo, 0, -1); 
         EDDTableAggregateRows.test(      errorSB, interactive, doSlowTestsToo, 0, -1); 
         EDDTableCopy.test(               errorSB, interactive, doSlowTestsToo, 0, -1);
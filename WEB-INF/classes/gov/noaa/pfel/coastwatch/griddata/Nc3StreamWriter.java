@@ -0,0 +1,656 @@
+/*
+ * Nc3StreamWriter Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.coastwatch.griddata;
+
+import com.cohort.array.*;
+import com.cohort.util.File2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Get netcdfAll-......jar from ftp://ftp.unidata.ucar.edu/pub
+ * and copy it to <context>/WEB-INF/lib renamed as netcdf-latest.jar.
+ * Put it in the classpath for the compiler and for Java.
+ * (It is only used by the tests.)
+ */
+import ucar.nc2.*;
+import ucar.nc2.write.*;
+
+/**
+ * This writes a classic NetCDF-3 (CDF-1) file to an OutputStream
+ * without a temporary file or seeking.
+ * That works because the header and the position of each variable's data
+ * in a file without an unlimited dimension are fully determined by
+ * the dimension sizes and data types, which are defined first.
+ *
+ * <p>Use: addDimension(), addVariable() and setGlobalAttributes() to define
+ * the file; then writeHeader(); then write() all of the data for each
+ * variable (in chunks, in the order the variables were added); then finish().
+ *
+ * <p>Attributes are converted the way NcHelper.setAttributes(nc3Mode=true, ...)
+ * converts them for NetcdfFormatWriter, so a file written by this
+ * is equivalent to one written via NetcdfFormatWriter.createNewNetcdf3 with setFill(false).
+ * Only numeric variables are supported (longs and ulongs are stored as doubles;
+ * unsigned types are stored as signed types with _Unsigned=true),
+ * since char and String variables need their maximum String length before the header is written.
+ *
+ * <p>The file format is described at
+ * https://docs.unidata.ucar.edu/netcdf-c/current/file_format_specifications.html .
+ *
+ * @author agent (agent@local) 2026-10-17
+ */
+public class Nc3StreamWriter {
+
+    /**
+     * Set this to true (by calling verbose=true in your program, not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** The NetCDF-3 nc_type values. */
+    public final static int NC_BYTE = 1, NC_CHAR = 2, NC_SHORT = 3, NC_INT = 4,
+        NC_FLOAT = 5, NC_DOUBLE = 6;
+
+    /** The NetCDF-3 header tags. */
+    private final static int NC_DIMENSION = 10, NC_VARIABLE = 11, NC_ATTRIBUTE = 12;
+
+    /** The largest offset allowed in a classic (CDF-1) file. */
+    public final static long MAX_OFFSET = Integer.MAX_VALUE;
+
+    private ArrayList<String> dimNames = new ArrayList();
+    private IntArray dimSizes = new IntArray();
+    private ArrayList<String> varNames = new ArrayList();
+    private ArrayList<PAType> varPATypes = new ArrayList();
+    private ArrayList<int[]> varDims = new ArrayList();
+    private ArrayList<Attributes> varAtts = new ArrayList();
+    private Attributes globalAtts = new Attributes();
+
+    //set by writeHeader
+    private DataOutputStream dos;
+    private long varNValues[];  //the number of values in each variable
+    private int currentVar;     //the variable currently being written
+    private long currentNWritten; //the number of values of currentVar already written
+
+    /**
+     * This returns the NetCDF-3 nc_type used to store a PAType.
+     *
+     * @param paType a numeric PAType
+     * @return the nc_type (e.g., NC_DOUBLE for PAType.LONG)
+     * @throws IllegalArgumentException if paType isn't supported
+     */
+    public static int ncType(PAType paType) {
+        if (paType == PAType.BYTE   || paType == PAType.UBYTE)  return NC_BYTE;
+        if (paType == PAType.SHORT  || paType == PAType.USHORT) return NC_SHORT;
+        if (paType == PAType.INT    || paType == PAType.UINT)   return NC_INT;
+        if (paType == PAType.FLOAT)                             return NC_FLOAT;
+        if (paType == PAType.DOUBLE || paType == PAType.LONG ||
+            paType == PAType.ULONG)                             return NC_DOUBLE;
+        throw new IllegalArgumentException(String2.ERROR +
+            " in Nc3StreamWriter: unsupported data type=" + paType + ".");
+    }
+
+    /**
+     * This indicates if variables of this PAType can be written by this class.
+     *
+     * @param paType a PAType
+     * @return true if variables of this PAType can be written by this class.
+     */
+    public static boolean isSupported(PAType paType) {
+        return paType != PAType.CHAR && paType != PAType.STRING &&
+               paType != PAType.BOOLEAN;
+    }
+
+    /**
+     * This returns the number of bytes per value for an nc_type.
+     */
+    private static int ncTypeSize(int ncType) {
+        return ncType == NC_SHORT? 2 :
+               ncType == NC_INT || ncType == NC_FLOAT? 4 :
+               ncType == NC_DOUBLE? 8 : 1;
+    }
+
+    /**
+     * This adds a dimension.
+     *
+     * @param name the dimension's name
+     * @param size the dimension's size (&gt;= 0)
+     * @return the dimension's number (for use with addVariable)
+     */
+    public int addDimension(String name, int size) {
+        ensureDefineMode();
+        if (size < 0)
+            throw new IllegalArgumentException(String2.ERROR +
+                " in Nc3StreamWriter.addDimension: size=" + size + " for " + name + " is less than 0.");
+        dimNames.add(name);
+        dimSizes.add(size);
+        return dimSizes.size() - 1;
+    }
+
+    /**
+     * This adds a variable.
+     * Variables are written to the file (and their data must be provided) in
+     * the order they are added.
+     *
+     * @param name the variable's name
+     * @param paType the variable's data type (see isSupported())
+     * @param dims the variable's dimension numbers (from addDimension)
+     * @param atts the variable's attributes (not changed). If paType is unsigned,
+     *    _Unsigned=true is added in the file.
+     * @return the variable's number
+     */
+    public int addVariable(String name, PAType paType, int dims[], Attributes atts) {
+        ensureDefineMode();
+        ncType(paType); //throws exception if unsupported
+        for (int d = 0; d < dims.length; d++) {
+            if (dims[d] < 0 || dims[d] >= dimSizes.size())
+                throw new IllegalArgumentException(String2.ERROR +
+                    " in Nc3StreamWriter.addVariable: invalid dimension number=" + dims[d] + " for " + name + ".");
+        }
+        varNames.add(name);
+        varPATypes.add(paType);
+        varDims.add(dims);
+        varAtts.add(atts == null? new Attributes() : atts);
+        return varNames.size() - 1;
+    }
+
+    /**
+     * This sets the global attributes.
+     *
+     * @param atts the global attributes (not changed)
+     */
+    public void setGlobalAttributes(Attributes atts) {
+        ensureDefineMode();
+        globalAtts = atts == null? new Attributes() : atts;
+    }
+
+    private void ensureDefineMode() {
+        if (varNValues != null)
+            throw new IllegalStateException(String2.ERROR +
+                " in Nc3StreamWriter: the header has already been written.");
+    }
+
+    /**
+     * This returns the number of values in a variable.
+     */
+    private long nValues(int var) {
+        long n = 1;
+        int dims[] = varDims.get(var);
+        for (int d = 0; d < dims.length; d++)
+            n *= dimSizes.get(dims[d]);
+        return n;
+    }
+
+    /**
+     * This returns the number of bytes of data for a variable
+     * (padded to a 4 byte boundary).
+     */
+    private long vSize(int var) {
+        long n = nValues(var) * ncTypeSize(ncType(varPATypes.get(var)));
+        return (n + 3) / 4 * 4;
+    }
+
+    /**
+     * This returns the number of bytes in the file (once writeHeader has been called).
+     *
+     * @return the number of bytes in the file
+     */
+    public long fileSize() throws Exception {
+        byte header[] = makeHeader(null);
+        long size = header.length;
+        for (int var = 0; var < varNames.size(); var++)
+            size += vSize(var);
+        return size;
+    }
+
+    /**
+     * This makes the header.
+     *
+     * @param begins the begin offset of each variable (or null to write 0's as placeholders)
+     * @return the bytes of the header
+     */
+    private byte[] makeHeader(long begins[]) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream hos = new DataOutputStream(baos);
+        hos.write(new byte[]{'C', 'D', 'F', 1});
+        hos.writeInt(0); //numrecs. There is no unlimited dimension.
+
+        //dim_list
+        int nDims = dimNames.size();
+        if (nDims == 0) {
+            hos.writeInt(0); //ABSENT
+            hos.writeInt(0);
+        } else {
+            hos.writeInt(NC_DIMENSION);
+            hos.writeInt(nDims);
+            for (int d = 0; d < nDims; d++) {
+                writeName(hos, dimNames.get(d));
+                hos.writeInt(dimSizes.get(d));
+            }
+        }
+
+        //gatt_list
+        writeAttributes(hos, globalAtts, true, false);
+
+        //var_list
+        int nVars = varNames.size();
+        if (nVars == 0) {
+            hos.writeInt(0); //ABSENT
+            hos.writeInt(0);
+        } else {
+            hos.writeInt(NC_VARIABLE);
+            hos.writeInt(nVars);
+            for (int var = 0; var < nVars; var++) {
+                PAType paType = varPATypes.get(var);
+                int dims[] = varDims.get(var);
+                writeName(hos, varNames.get(var));
+                hos.writeInt(dims.length);
+                for (int d = 0; d < dims.length; d++)
+                    hos.writeInt(dims[d]);
+                writeAttributes(hos, varAtts.get(var), false, paType.isUnsigned());
+                hos.writeInt(ncType(paType));
+                long vSize = vSize(var);
+                hos.writeInt(vSize > 0xFFFFFFFCL? -1 : (int)vSize); //a too big vSize is stored as 2^32 - 1
+                long begin = begins == null? 0 : begins[var];
+                if (begin > MAX_OFFSET)
+                    throw new RuntimeException(String2.ERROR +
+                        " in Nc3StreamWriter: the data for " + varNames.get(var) +
+                        " would start at byte=" + begin + ", beyond the 2GB limit of NetCDF-3 files.");
+                hos.writeInt((int)begin);
+            }
+        }
+        hos.flush();
+        return baos.toByteArray();
+    }
+
+    /**
+     * This writes a name (or a String attribute value):
+     * nelems, the UTF-8 bytes, and padding to a 4 byte boundary.
+     */
+    private static void writeName(DataOutputStream hos, String s) throws Exception {
+        byte bar[] = String2.stringToUtf8Bytes(s);
+        hos.writeInt(bar.length);
+        hos.write(bar);
+        writePadding(hos, bar.length);
+    }
+
+    /** This writes 0's to pad nBytes to a 4 byte boundary. */
+    private static void writePadding(DataOutputStream hos, long nBytes) throws Exception {
+        while (nBytes++ % 4 != 0)
+            hos.writeByte(0);
+    }
+
+    /**
+     * This writes an att_list, converting and skipping attributes
+     * like NcHelper.setAttributes(nc3Mode=true, ...).
+     *
+     * @param global true for global attributes, false for variable attributes
+     * @param unsigned if true, an _Unsigned=true attribute is written first.
+     */
+    private static void writeAttributes(DataOutputStream hos, Attributes atts,
+        boolean global, boolean unsigned) throws Exception {
+
+        //gather the attributes to be written
+        String names[] = atts.getNames();
+        ArrayList<String> tNames = new ArrayList();
+        ArrayList<PrimitiveArray> tValues = new ArrayList();
+        if (unsigned) {
+            tNames.add("_Unsigned");
+            tValues.add(new StringArray(new String[]{"true"}));
+        }
+        for (int ni = 0; ni < names.length; ni++) {
+            String tName = names[ni];
+            if (!String2.isSomething(tName) ||
+                (global && tName.equals("_NCProperties")))
+                continue;
+            PrimitiveArray tValue = atts.get(tName);
+            if (tValue == null || tValue.size() == 0 ||
+                ((global || tValue.elementType() == PAType.STRING) && tValue.toString().length() == 0))
+                continue; //do nothing
+            tNames.add(tName);
+            tValues.add(tValue);
+        }
+
+        int nAtts = tNames.size();
+        if (nAtts == 0) {
+            hos.writeInt(0); //ABSENT
+            hos.writeInt(0);
+            return;
+        }
+        hos.writeInt(NC_ATTRIBUTE);
+        hos.writeInt(nAtts);
+        for (int ai = 0; ai < nAtts; ai++) {
+            writeName(hos, tNames.get(ai));
+            PrimitiveArray pa = tValues.get(ai);
+            PAType paType = pa.elementType();
+            if (paType == PAType.STRING || paType == PAType.CHAR) {
+                //netcdf-java stores a char attribute as a String (up to the first 0 char)
+                String s;
+                if (paType == PAType.STRING) {
+                    s = Attributes.valueToNcString(pa);
+                } else {
+                    s = new String(((CharArray)pa).toArray());
+                    int po = s.indexOf('\u0000');
+                    if (po >= 0)
+                        s = s.substring(0, po);
+                }
+                hos.writeInt(NC_CHAR);
+                writeName(hos, s);
+            } else {
+                if (paType == PAType.LONG || paType == PAType.ULONG)
+                    pa = PrimitiveArray.rawFactory(PAType.DOUBLE, pa);
+                //unsigned values are written as the signed values with the same bits
+                int ncType = ncType(pa.elementType());
+                hos.writeInt(ncType);
+                hos.writeInt(pa.size());
+                pa.writeDos(hos);
+                writePadding(hos, (long)pa.size() * ncTypeSize(ncType));
+            }
+        }
+    }
+
+    /**
+     * This writes the header to the outputStream.
+     * After this, call write() with all the data for each variable, then finish().
+     *
+     * @param outputStream the stream that will receive the file.
+     *    It is not closed by this class.
+     *    It should be buffered.
+     * @return the number of bytes in the file
+     * @throws Exception if trouble, e.g., if the file would be bigger than
+     *    NetCDF-3 allows
+     */
+    public long writeHeader(OutputStream outputStream) throws Exception {
+        ensureDefineMode();
+
+        //the header's size doesn't depend on the begin values, so make it twice
+        int nVars = varNames.size();
+        long begins[] = new long[nVars];
+        long po = makeHeader(null).length;
+        for (int var = 0; var < nVars; var++) {
+            begins[var] = po;
+            po += vSize(var);
+        }
+        byte header[] = makeHeader(begins);
+
+        varNValues = new long[nVars];
+        for (int var = 0; var < nVars; var++)
+            varNValues[var] = nValues(var);
+        dos = outputStream instanceof DataOutputStream?
+            (DataOutputStream)outputStream : new DataOutputStream(outputStream);
+        dos.write(header);
+        currentVar = -1;
+        nextVariable();
+        if (verbose) String2.log("Nc3StreamWriter.writeHeader nVars=" + nVars +
+            " headerSize=" + header.length + " fileSize=" + po);
+        return po;
+    }
+
+    /** This advances currentVar to the next variable that has data. */
+    private void nextVariable() {
+        currentVar++;
+        currentNWritten = 0;
+        while (currentVar < varNValues.length && varNValues[currentVar] == 0)
+            currentVar++;
+    }
+
+    /**
+     * This writes the next values (in row major order) of the current variable.
+     * When all of a variable's values have been written, later values are
+     * for the next variable.
+     * A chunk can't span two variables.
+     *
+     * @param pa the values. Their PAType must match the variable's PAType
+     *    or at least be stored as the same nc_type
+     *    (e.g., a LongArray for a DOUBLE variable is converted).
+     * @throws Exception if trouble (e.g., too many values for the current variable)
+     */
+    public void write(PrimitiveArray pa) throws Exception {
+        if (dos == null)
+            throw new IllegalStateException(String2.ERROR +
+                " in Nc3StreamWriter.write: writeHeader hasn't been called.");
+        if (currentVar >= varNValues.length)
+            throw new IllegalStateException(String2.ERROR +
+                " in Nc3StreamWriter.write: all of the data has already been written.");
+        int n = pa.size();
+        if (currentNWritten + n > varNValues[currentVar])
+            throw new IllegalArgumentException(String2.ERROR +
+                " in Nc3StreamWriter.write: too many values for " + varNames.get(currentVar) +
+                " (nWritten=" + currentNWritten + " + n=" + n + " > size=" + varNValues[currentVar] + ").");
+        int ncType = ncType(varPATypes.get(currentVar));
+        if (ncType == NC_DOUBLE && pa.elementType() != PAType.DOUBLE)
+            pa = new DoubleArray(pa);
+        else if (ncType(pa.elementType()) != ncType)
+            throw new IllegalArgumentException(String2.ERROR +
+                " in Nc3StreamWriter.write: data type=" + pa.elementType() +
+                " doesn't match " + varNames.get(currentVar) + "'s type=" + varPATypes.get(currentVar) + ".");
+        pa.writeDos(dos);
+        currentNWritten += n;
+
+        //variable finished?
+        if (currentNWritten == varNValues[currentVar]) {
+            writePadding(dos, currentNWritten * ncTypeSize(ncType));
+            nextVariable();
+        }
+    }
+
+    /**
+     * This ensures all of the data has been written and flushes the outputStream.
+     * This doesn't close the outputStream.
+     *
+     * @throws Exception if trouble (e.g., not all of the data was written)
+     */
+    public void finish() throws Exception {
+        if (dos == null || currentVar < varNValues.length)
+            throw new IllegalStateException(String2.ERROR +
+                " in Nc3StreamWriter.finish: not all of the data has been written" +
+                (dos == null? "." : " (" + varNames.get(currentVar) +
+                    " has nWritten=" + currentNWritten + " of " + varNValues[currentVar] + ")."));
+        dos.flush();
+    }
+
+    /**
+     * This tests that a file written by this class has the same ncdump
+     * as the same file written via NetcdfFormatWriter.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** Nc3StreamWriter.basicTest");
+        verbose = true;
+        String dir = File2.getSystemTempDirectory();
+        String streamName = dir + "Nc3StreamWriterTest.nc";
+        String ncjName    = dir + "Nc3StreamWriterTestNcj.nc";
+
+        //the test data
+        String dimNames[] = {"time", "latitude", "longitude"};
+        PrimitiveArray axes[] = {
+            new DoubleArray(new double[]{0, 86400}),
+            new FloatArray(new float[]{10, 20.5f, 30}),
+            new ShortArray(new short[]{-120, -119, -118, -117})};
+        String dataNames[] = {"ub", "i", "l", "d"};
+        PrimitiveArray data[] = {
+            PrimitiveArray.factory(PAType.UBYTE,  24, false),
+            PrimitiveArray.factory(PAType.INT,    24, false),
+            PrimitiveArray.factory(PAType.LONG,   24, false),
+            PrimitiveArray.factory(PAType.DOUBLE, 24, false)};
+        for (int i = 0; i < 24; i++) {
+            data[0].addInt(i == 5? 255 : i * 10);
+            data[1].addInt(i == 6? Integer.MIN_VALUE : -i * 1000);
+            data[2].addLong(i == 7? Long.MAX_VALUE : i * 100000L);
+            data[3].addDouble(i == 8? Double.NaN : i / 3.0);
+        }
+        data[2].setMaxIsMV(true);
+        Attributes gAtts = new Attributes();
+        gAtts.add("title", "A \u00fcnicode title\nwith 2 lines");
+        gAtts.add("strings", new StringArray(new String[]{"a", "bc"}));
+        gAtts.add("empty", "");
+        gAtts.add("ints", new IntArray(new int[]{1, -2, 3}));
+        gAtts.add("chars", new CharArray(new char[]{'a', 'b'}));
+        Attributes axisAtts[] = new Attributes[3];
+        for (int a = 0; a < 3; a++) {
+            axisAtts[a] = new Attributes();
+            axisAtts[a].add("long_name", dimNames[a]);
+            PrimitiveArray range = PrimitiveArray.factory(axes[a].elementType(), 2, false);
+            range.addDouble(axes[a].getDouble(0));
+            range.addDouble(axes[a].getDouble(axes[a].size() - 1));
+            axisAtts[a].add("actual_range", range);
+        }
+        Attributes dataAtts[] = new Attributes[4];
+        for (int dv = 0; dv < 4; dv++) {
+            dataAtts[dv] = new Attributes();
+            dataAtts[dv].add("long_name", "Data " + dataNames[dv]);
+            dataAtts[dv].add("units", "");
+        }
+        dataAtts[0].add("_FillValue", PrimitiveArray.factory(PAType.UBYTE, 1, "255"));
+        dataAtts[1].add("missing_value", Integer.MIN_VALUE);
+        dataAtts[2].add("_FillValue", PrimitiveArray.factory(PAType.LONG, 1, "" + Long.MAX_VALUE));
+        dataAtts[3].add("scale_factor", 0.5f);
+
+        //write with Nc3StreamWriter, in chunks
+        Nc3StreamWriter writer = new Nc3StreamWriter();
+        int dims[] = new int[3];
+        for (int a = 0; a < 3; a++)
+            dims[a] = writer.addDimension(dimNames[a], axes[a].size());
+        for (int a = 0; a < 3; a++)
+            writer.addVariable(dimNames[a], axes[a].elementType(), new int[]{dims[a]}, axisAtts[a]);
+        for (int dv = 0; dv < 4; dv++)
+            writer.addVariable(dataNames[dv], data[dv].elementType(), dims, dataAtts[dv]);
+        writer.setGlobalAttributes(gAtts);
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(streamName));
+        try {
+            long fileSize = writer.writeHeader(os);
+            Test.ensureEqual(fileSize, writer.fileSize(), "");
+            for (int a = 0; a < 3; a++)
+                writer.write(axes[a]);
+            for (int dv = 0; dv < 4; dv++) {
+                writer.write(data[dv].subset(0, 1, 11));
+                writer.write(data[dv].subset(12, 1, 23));
+            }
+            try {
+                writer.write(data[0]);
+                throw new RuntimeException("Shouldn't get here.");
+            } catch (IllegalStateException e) {
+                String2.log("Expected exception: " + e.toString());
+            }
+            writer.finish();
+            os.close();
+            os = null;
+            Test.ensureEqual(File2.length(streamName), fileSize, "");
+        } finally {
+            if (os != null) os.close();
+        }
+
+        //write the same file via NetcdfFormatWriter
+        NetcdfFormatWriter ncWriter = null;
+        try {
+            NetcdfFormatWriter.Builder nc = NetcdfFormatWriter.createNewNetcdf3(ncjName);
+            Group.Builder rootGroup = nc.getRootGroup();
+            nc.setFill(false);
+            ArrayList<Dimension> dimList = new ArrayList();
+            Variable.Builder axisVars[] = new Variable.Builder[3];
+            for (int a = 0; a < 3; a++) {
+                dimList.add(NcHelper.addDimension(rootGroup, dimNames[a], axes[a].size()));
+                axisVars[a] = NcHelper.addVariable(rootGroup, dimNames[a],
+                    NcHelper.getNc3DataType(axes[a].elementType()), Arrays.asList(dimList.get(a)));
+            }
+            Variable.Builder dataVars[] = new Variable.Builder[4];
+            for (int dv = 0; dv < 4; dv++)
+                dataVars[dv] = NcHelper.addVariable(rootGroup, dataNames[dv],
+                    NcHelper.getNc3DataType(data[dv].elementType()), dimList);
+            NcHelper.setAttributes(true, rootGroup, gAtts);
+            for (int a = 0; a < 3; a++)
+                NcHelper.setAttributes(true, axisVars[a], axisAtts[a], axes[a].isUnsigned());
+            for (int dv = 0; dv < 4; dv++)
+                NcHelper.setAttributes(true, dataVars[dv], dataAtts[dv], data[dv].isUnsigned());
+            ncWriter = nc.build();
+            for (int a = 0; a < 3; a++)
+                ncWriter.write(axisVars[a].getFullName(), NcHelper.get1DArray(axes[a]));
+            for (int dv = 0; dv < 4; dv++) {
+                PrimitiveArray pa = data[dv];
+                if (pa instanceof LongArray)
+                    pa = new DoubleArray(pa);
+                ncWriter.write(dataVars[dv].getFullName(), ucar.ma2.Array.factory(
+                    NcHelper.getNc3DataType(pa.elementType()), new int[]{2, 3, 4}, pa.toObjectArray()));
+            }
+            ncWriter.close();
+            ncWriter = null;
+        } finally {
+            if (ncWriter != null)
+                try {ncWriter.abort(); } catch (Exception e9) {}
+        }
+
+        //compare
+        String results  = NcHelper.ncdump(streamName, "");
+        String expected = NcHelper.ncdump(ncjName, "");
+        String2.log(results);
+        results  = results.substring(results.indexOf('{'));
+        expected = expected.substring(expected.indexOf('{'));
+        Test.ensureEqual(results, expected, "results=\n" + results);
+        Test.ensureTrue(results.indexOf("ub:_Unsigned = \"true\";") > 0, "results=\n" + results);
+
+        //unsupported types
+        try {
+            writer = new Nc3StreamWriter();
+            writer.addVariable("s", PAType.STRING, new int[0], null);
+            throw new RuntimeException("Shouldn't get here.");
+        } catch (IllegalArgumentException e) {
+            Test.ensureEqual(e.getMessage(),
+                "ERROR in Nc3StreamWriter: unsupported data type=String.", "");
+        }
+
+        File2.delete(streamName);
+        File2.delete(ncjName);
+        verbose = false;
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ Nc3StreamWriter.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,390 @@
+/*
+ * NcFileCache Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.coastwatch.griddata;
+
+import com.cohort.util.Calendar2;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import ucar.nc2.NetcdfFile;
+
+/**
+ * This is a bounded, LRU pool of open NetcdfFiles, so that a burst of requests
+ * for the same file (e.g., WMS tiles from one daily file) doesn't reopen the file
+ * and reparse its header (which is slow for netcdf-4/HDF5 files) for each request.
+ *
+ * <p>Use open() (instead of NcHelper.openFile) and release() (instead of
+ * ncFile.close()). If there is trouble while using the file, call discard()
+ * so the (possibly damaged) NetcdfFile is closed, not reused.
+ * It is always safe to call release() after discard().
+ *
+ * <p>A NetcdfFile isn't thread-safe, so each open NetcdfFile is only given to
+ * one user at a time. If several threads want the same file at once,
+ * several NetcdfFiles for that file will be opened (and pooled).
+ *
+ * <p>Pooled files are reused only if the file's lastModified and length
+ * haven't changed.
+ * The total number of NetcdfFiles opened by this cache is at most maxOpen.
+ * If that many are open (none idle), open() just opens an unpooled NetcdfFile
+ * which is closed by release().
+ * Idle files are closed after idleMillis.
+ * If opening a file fails because of Math2.TooManyOpenFiles, all idle files are
+ * closed, maxOpen is halved, and the open is tried again.
+ *
+ * <p>Only local files are pooled (not .ncml files or remote urls).
+ *
+ * @author agent (agent@local) 2026-10-16
+ */
+public class NcFileCache {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** The default time (ms) after which an idle file is closed. */
+    public final static long DEFAULT_IDLE_MILLIS = 2 * Calendar2.MILLIS_PER_MINUTE;
+
+    protected String name;
+    protected int maxOpen;    //0 = don't pool
+    protected long idleMillis;
+
+    //all of these are synchronized on this
+    protected IdentityHashMap<NetcdfFile, Handle> handles = new IdentityHashMap(); //idle and inUse
+    protected HashMap<String, ArrayDeque<Handle>> idleByName = new HashMap();      //most recently released is last
+    protected LinkedHashMap<Handle, Handle> idleLru = new LinkedHashMap();           //least recently released is first
+    protected long lastSweep = System.currentTimeMillis();
+
+    //statistics  (since last resetDailyStatistics)
+    protected long nHits = 0;
+    protected long nMisses = 0;
+    protected long nEvictions = 0;        //to make room for another file
+    protected long nIdleClosed = 0;       //idle too long
+    protected long nStale = 0;            //file changed
+    protected long nUnpooled = 0;         //not poolable or pool full
+    protected long nTooManyOpenFiles = 0;
+
+    /** A pooled NetcdfFile. */
+    protected static class Handle {
+        String fullName;
+        long lastMod, length;
+        NetcdfFile ncFile;
+        boolean inUse = true;
+        long releasedAt;
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param tName the name of this cache (for statistics)
+     * @param tMaxOpen the maximum number of open files (0 = don't pool)
+     */
+    public NcFileCache(String tName, int tMaxOpen) {
+        name = tName;
+        maxOpen = Math.max(0, tMaxOpen);
+        idleMillis = DEFAULT_IDLE_MILLIS;
+    }
+
+    /**
+     * This changes the maximum number of open files.
+     * It is safe to call this at any time (e.g., when datasets.xml is reread).
+     *
+     * @param tMaxOpen the maximum number of open files (0 = don't pool)
+     */
+    public void setMaxOpen(int tMaxOpen) {
+        ArrayList<NetcdfFile> toClose = new ArrayList();
+        synchronized(this) {
+            maxOpen = Math.max(0, tMaxOpen);
+            while (handles.size() > maxOpen && evictLru(toClose))
+                nEvictions++;
+        }
+        closeAll(toClose);
+    }
+
+    /** This returns the maximum number of open files (0 = don't pool). */
+    public synchronized int maxOpen() {
+        return maxOpen;
+    }
+
+    /**
+     * This changes the time after which idle files are closed.
+     *
+     * @param tIdleMillis the time in milliseconds
+     */
+    public synchronized void setIdleMillis(long tIdleMillis) {
+        idleMillis = Math.max(0, tIdleMillis);
+    }
+
+    /**
+     * This returns an open NetcdfFile for the file,
+     * either a pooled one or a newly opened one.
+     * ALWAYS call release() when you are finished with it,
+     * preferably in a "finally" clause.
+     *
+     * @param fullName the full name of the file (see NcHelper.openFile)
+     * @return a NetcdfFile which this thread can use until it calls release()
+     * @throws Exception if trouble
+     */
+    public NetcdfFile open(String fullName) throws Exception {
+        boolean poolable = !fullName.endsWith(".ncml") && !String2.isRemote(fullName);
+        long lastMod = poolable? File2.getLastModified(fullName) : 0;
+        long length  = poolable? File2.length(fullName) : -1;
+        poolable = poolable && lastMod > 0 && length >= 0;
+
+        //is there an idle pooled NetcdfFile?
+        ArrayList<NetcdfFile> toClose = new ArrayList();
+        Handle handle = null;
+        synchronized(this) {
+            if (maxOpen > 0) {
+                sweep(toClose);
+                ArrayDeque<Handle> dq = poolable? idleByName.get(fullName) : null;
+                while (dq != null && !dq.isEmpty()) {
+                    Handle h = dq.pollLast();
+                    idleLru.remove(h);
+                    if (h.lastMod == lastMod && h.length == length) {
+                        h.inUse = true;
+                        handle = h;
+                        break;
+                    }
+                    //the file has changed
+                    handles.remove(h.ncFile);
+                    toClose.add(h.ncFile);
+                    nStale++;
+                }
+                if (dq != null && dq.isEmpty())
+                    idleByName.remove(fullName);
+            }
+            if (handle != null)
+                nHits++;
+            else if (poolable && maxOpen > 0)
+                nMisses++;
+        }
+        closeAll(toClose);
+        if (handle != null)
+            return handle.ncFile;
+
+        //open it
+        NetcdfFile ncFile = lowOpen(fullName);
+
+        //add it to the pool?
+        synchronized(this) {
+            if (poolable && maxOpen > 0) {
+                if (handles.size() >= maxOpen && evictLru(toClose))
+                    nEvictions++;
+                if (handles.size() < maxOpen) {
+                    Handle h = new Handle();
+                    h.fullName = fullName;
+                    h.lastMod = lastMod;
+                    h.length = length;
+                    h.ncFile = ncFile;
+                    handles.put(ncFile, h);
+                } else {
+                    nUnpooled++;
+                }
+            } else {
+                nUnpooled++;
+            }
+        }
+        closeAll(toClose);
+        return ncFile;
+    }
+
+    /**
+     * This opens the file. If that fails because of TooManyOpenFiles,
+     * this closes all idle files, halves maxOpen, and tries again.
+     */
+    protected NetcdfFile lowOpen(String fullName) throws Exception {
+        try {
+            return NcHelper.openFile(fullName);
+        } catch (Exception e) {
+            if (e.toString().indexOf(Math2.TooManyOpenFiles) < 0)
+                throw e;
+
+            ArrayList<NetcdfFile> toClose = new ArrayList();
+            int tMaxOpen;
+            synchronized(this) {
+                nTooManyOpenFiles++;
+                while (evictLru(toClose))
+                    nEvictions++;
+                maxOpen /= 2;
+                tMaxOpen = maxOpen;
+            }
+            int nClosed = toClose.size();
+            closeAll(toClose);
+            String2.log("WARNING: " + name + " caught " + Math2.TooManyOpenFiles +
+                ". It closed " + nClosed + " idle files and reduced maxOpen to " + tMaxOpen + ".");
+            return NcHelper.openFile(fullName);
+        }
+    }
+
+    /**
+     * Call this when you are finished with a NetcdfFile from open().
+     * If it is pooled, it is made available to other users; otherwise it is closed.
+     * This never throws an exception.
+     *
+     * @param ncFile a NetcdfFile from open(). If null, nothing is done.
+     */
+    public void release(NetcdfFile ncFile) {
+        if (ncFile == null)
+            return;
+        ArrayList<NetcdfFile> toClose = new ArrayList();
+        synchronized(this) {
+            Handle h = handles.get(ncFile);
+            if (h != null) {
+                if (!h.inUse) //already released
+                    return;
+                if (handles.size() <= maxOpen) {
+                    h.inUse = false;
+                    h.releasedAt = System.currentTimeMillis();
+                    ArrayDeque<Handle> dq = idleByName.get(h.fullName);
+                    if (dq == null) {
+                        dq = new ArrayDeque();
+                        idleByName.put(h.fullName, dq);
+                    }
+                    dq.addLast(h);
+                    idleLru.put(h, h);
+                    sweep(toClose);
+                    ncFile = null; //don't close it
+                } else {
+                    handles.remove(ncFile); //maxOpen was reduced
+                }
+            }
+        }
+        if (ncFile != null)
+            toClose.add(ncFile);
+        closeAll(toClose);
+    }
+
+    /**
+     * Call this (instead of release()) if there was trouble while using a NetcdfFile
+     * from open(), so that it is closed and not reused.
+     * It is okay to call release() afterwards.
+     * This never throws an exception.
+     *
+     * @param ncFile a NetcdfFile from open(). If null, nothing is done.
+     */
+    public void discard(NetcdfFile ncFile) {
+        if (ncFile == null)
+            return;
+        synchronized(this) {
+            Handle h = handles.get(ncFile);
+            if (h != null && !h.inUse) //it's idle, so it belongs to someone else now
+                return;
+            handles.remove(ncFile);
+        }
+        ArrayList<NetcdfFile> toClose = new ArrayList();
+        toClose.add(ncFile);
+        closeAll(toClose);
+    }
+
+    /**
+     * This closes all idle files (e.g., when ERDDAP is shutting down).
+     * Files in use are closed when they are released.
+     */
+    public void closeIdle() {
+        ArrayList<NetcdfFile> toClose = new ArrayList();
+        synchronized(this) {
+            while (evictLru(toClose))
+                nIdleClosed++;
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * This removes the least recently released idle file from the pool.
+     * The caller must synchronize on this.
+     *
+     * @param toClose the removed NetcdfFile is added to this, to be closed
+     *   after the caller is no longer synchronized.
+     * @return true if a file was removed
+     */
+    protected boolean evictLru(ArrayList<NetcdfFile> toClose) {
+        Iterator<Handle> it = idleLru.keySet().iterator();
+        if (!it.hasNext())
+            return false;
+        Handle h = it.next();
+        it.remove();
+        ArrayDeque<Handle> dq = idleByName.get(h.fullName);
+        if (dq != null) {
+            dq.remove(h);
+            if (dq.isEmpty())
+                idleByName.remove(h.fullName);
+        }
+        handles.remove(h.ncFile);
+        toClose.add(h.ncFile);
+        return true;
+    }
+
+    /**
+     * If it's been a while, this removes the files which have been idle too long.
+     * The caller must synchronize on this.
+     */
+    protected void sweep(ArrayList<NetcdfFile> toClose) {
+        long now = System.currentTimeMillis();
+        if (now - lastSweep < idleMillis / 4)
+            return;
+        lastSweep = now;
+        while (!idleLru.isEmpty() &&
+               now - idleLru.keySet().iterator().next().releasedAt > idleMillis &&
+               evictLru(toClose))
+            nIdleClosed++;
+    }
+
+    /** This closes the files (without throwing an exception), then clears toClose. */
+    protected void closeAll(ArrayList<NetcdfFile> toClose) {
+        for (int i = 0; i < toClose.size(); i++) {
+            try {
+                toClose.get(i).close();
+            } catch (Throwable t) {
+                if (verbose) String2.log(name + " caught while closing a file:\n" +
+                    MustBe.throwableToString(t));
+            }
+        }
+        toClose.clear();
+    }
+
+    /**
+     * This returns a string with statistics for the status page and daily report.
+     *
+     * @return the statistics
+     */
+    public synchronized String statistics() {
+        long nLookups = nHits + nMisses;
+        return name + ": maxOpen=" + maxOpen +
+            " nOpen=" + handles.size() + " (nIdle=" + idleLru.size() + ")" +
+            " (since last Daily Report:" +
+            " nHits=" + nHits +
+            (nLookups == 0? "" : " (" + (nHits * 100 / nLookups) + "%)") +
+            " nMisses=" + nMisses +
+            " nEvictions=" + nEvictions +
+            " nIdleClosed=" + nIdleClosed +
+            " nStale=" + nStale +
+            " nUnpooled=" + nUnpooled +
+            " nTooManyOpenFiles=" + nTooManyOpenFiles + ")\n";
+    }
+
+    /** This resets the counts in statistics() (e.g., after the Daily Report). */
+    public synchronized void resetDailyStatistics() {
+        nHits = 0;
+        nMisses = 0;
+        nEvictions = 0;
+        nIdleClosed = 0;
+        nStale = 0;
+        nUnpooled = 0;
+        nTooManyOpenFiles = 0;
+    }
+
+}
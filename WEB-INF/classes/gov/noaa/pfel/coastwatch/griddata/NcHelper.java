@@ -87,6 +87,13 @@ public class NcHelper  {
      */
     public final static int LONG_MAXSTRINGLENGTH = 20;
 
+    /**
+     * The pool of open NetcdfFiles used by readers which call fileCache.open() 
+     * and fileCache.release() instead of openFile() and close().
+     * By default, maxOpen=0, so files aren't pooled (ERDDAP changes this).
+     */
+    public static NcFileCache fileCache = new NcFileCache("NcFileCache", 0);
+
     /**
      * Tell netcdf-java to object if a file is truncated 
      *  (e.g., didn't get completely copied over)
@@ -2388,6 +2395,59 @@ String2.log(pas13.toString());
 
 
 
+    /** This tests NcFileCache.
+     */
+    public static void testFileCache() throws Exception {
+        String2.log("\n* NcHelper.testFileCache()");
+        String dir = File2.getSystemTempDirectory();
+        String name1 = dir + "NcFileCache1.nc";
+        String name2 = dir + "NcFileCache2.nc";
+        StringArray varNames = new StringArray(new String[]{"ia"});
+        writePAsInNc3(name1, varNames, new PrimitiveArray[]{new IntArray(new int[]{1, 2, 3})});
+        writePAsInNc3(name2, varNames, new PrimitiveArray[]{new IntArray(new int[]{4, 5})});
+        NcFileCache cache = new NcFileCache("TestCache", 2);
+
+        //a released file is reused
+        NetcdfFile nc1a = cache.open(name1);
+        cache.release(nc1a);
+        NetcdfFile nc1b = cache.open(name1);
+        Test.ensureTrue(nc1a == nc1b, "");
+
+        //but not while it is in use
+        NetcdfFile nc1c = cache.open(name1);
+        Test.ensureTrue(nc1c != nc1b, "");
+        Test.ensureEqual(getPrimitiveArray(nc1c.findVariable("ia")).toString(), "1, 2, 3", "");
+        cache.release(nc1b);
+        cache.release(nc1c);
+        cache.release(nc1c); //2nd release is ignored
+
+        //maxOpen=2, so opening name2 evicts the least recently released name1 file (nc1b)
+        NetcdfFile nc2 = cache.open(name2);
+        Test.ensureEqual(getPrimitiveArray(nc2.findVariable("ia")).toString(), "4, 5", "");
+        cache.discard(nc2); //closed, not reused
+        cache.release(nc2);
+        Test.ensureTrue(cache.open(name1) == nc1c, "");
+        cache.release(nc1c);
+
+        //a changed file isn't reused
+        Math2.sleep(1100);
+        writePAsInNc3(name1, varNames, new PrimitiveArray[]{new IntArray(new int[]{6})});
+        NetcdfFile nc1d = cache.open(name1);
+        Test.ensureTrue(nc1d != nc1c, "");
+        Test.ensureEqual(getPrimitiveArray(nc1d.findVariable("ia")).toString(), "6", "");
+        cache.release(nc1d);
+
+        String results = cache.statistics();
+        String2.log(results);
+        Test.ensureTrue(results.indexOf(" nHits=2 ") > 0, results);
+        Test.ensureTrue(results.indexOf(" nMisses=4 ") > 0, results);
+        Test.ensureTrue(results.indexOf(" nEvictions=1 ") > 0, results);
+        Test.ensureTrue(results.indexOf(" nStale=1 ") > 0, results);
+        cache.closeIdle();
+        File2.delete(name1);
+        File2.delete(name2);
+    }
+
     /** This is a test of unlimitedDimension
      */
     public static void testUnlimited() throws Exception {
@@ -2957,7 +3017,7 @@ String2.log(pas13.toString());
     public static void test(StringBuilder errorSB, boolean interactive, 
         boolean doSlowTestsToo, int firstTest, int lastTest) {
         if (lastTest < 0)
-            lastTest = interactive? -1 : 2;
+            lastTest = interactive? -1 : 3;
         String msg = "\n^^^ NcHelper.test(" + interactive + ") test=";
 
         for (int test = firstTest; test <= lastTest; test++) {
@@ -2972,6 +3032,7 @@ String2.log(pas13.toString());
                     if (test ==  0) testBasic();
                     if (test ==  1) testFindAllVariablesWithDims();
                     if (test ==  2) testUnlimited();        
+                    if (test ==  3) testFileCache();
                 }
 
                 String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
@@ -0,0 +1,1511 @@
+/* ScriptColumn Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.coastwatch.pointdata;
+
+import com.cohort.array.DoubleArray;
+import com.cohort.array.FloatArray;
+import com.cohort.array.IntArray;
+import com.cohort.array.LongArray;
+import com.cohort.array.PAType;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.array.ShortArray;
+import com.cohort.array.StringArray;
+import com.cohort.array.ULongArray;
+import com.cohort.util.Calendar2;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.Script2;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.jexl3.JexlScript;
+import org.apache.commons.jexl3.MapContext;
+
+
+/**
+ * A ScriptColumn is a JEXL script (from a sourceName like
+ * <tt>=row.columnDouble("tempC")*9/5+32</tt>) which has been parsed once
+ * into an expression tree, so that it can be evaluated a whole column at a time
+ * (with primitive arrays), instead of having JEXL interpret the script
+ * once per row (with a ScriptRow and boxed values).
+ *
+ * <p>Only a subset of JEXL is supported:
+ * int, long, float, double, String, and boolean literals;
+ * row.columnInt/Long/Float/Double/String("name"), row.getFileName(),
+ * row.getFullFileName(), and row.getRow();
+ * + - * / % (and + for String concatenation), unary - and !,
+ * == != &lt; &lt;= &gt; &gt;=, &amp;&amp; ||, and ?: ;
+ * and some Math, Math2, String2, and Calendar2 methods (see makeFunction).
+ * For those, the results are exactly the same as JEXL's
+ * (e.g., JEXL's conversion of floats to doubles via their String form,
+ * integer results which are promoted to long,
+ * NaN being less than all other numbers,
+ * NaN doubles becoming "" when concatenated to a String,
+ * and rows where JEXL would throw an exception (e.g., "/ 0") becoming missing values).
+ * compile() returns null for other scripts (e.g., with 'var', ';', or other methods),
+ * and evaluate() returns null in the rare cases
+ * where JEXL would use a BigInteger (e.g., long overflow),
+ * so the caller should use JEXL.
+ *
+ * <p>A ScriptColumn is immutable (all evaluation state is local to evaluate()),
+ * so it is thread safe and can be shared by e.g., EDDTableFromFiles threads.
+ *
+ * @author agent (agent@local) 2026-10-17
+ */
+public class ScriptColumn  {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** The kinds of values (which parallel the classes of the objects JEXL would use).
+     * INT values are stored as longs since JEXL promotes int results to Long if needed. */
+    final static int INT = 0, LONG = 1, FLOAT = 2, DOUBLE = 3, STRING = 4, BOOLEAN = 5;
+
+    /** The operators. */
+    final static int ADD = 0, SUBTRACT = 1, MULTIPLY = 2, DIVIDE = 3, MOD = 4,
+        EQ = 5, NE = 6, LT = 7, LE = 8, GT = 9, GE = 10, AND = 11, OR = 12;
+
+    /** The compiled scripts: script -&gt; ScriptColumn or Boolean.FALSE if not supported. */
+    private final static ConcurrentHashMap<String, Object> cache = new ConcurrentHashMap();
+
+    private final String script;
+    private final Node root;
+
+    /**
+     * The constructor.
+     */
+    private ScriptColumn(String tScript, Node tRoot) {
+        script = tScript;
+        root = tRoot;
+    }
+
+    /**
+     * This is like compile(), but the results are cached (so each script is only parsed once).
+     *
+     * @param script a JEXL script (without the initial '=')
+     * @return the ScriptColumn, or null if the script is not supported (so use JEXL)
+     */
+    public static ScriptColumn get(String script) {
+        Object o = cache.get(script);
+        if (o == null) {
+            ScriptColumn sc = compile(script);
+            o = sc == null? Boolean.FALSE : sc;
+            cache.put(script, o);
+        }
+        return o instanceof ScriptColumn? (ScriptColumn)o : null;
+    }
+
+    /**
+     * This parses a script into a ScriptColumn.
+     *
+     * @param script a JEXL script (without the initial '=')
+     * @return the ScriptColumn, or null if the script is not supported (so use JEXL)
+     */
+    public static ScriptColumn compile(String script) {
+        try {
+            Parser parser = new Parser(script);
+            Node node = parser.parseTernary();
+            parser.expectEnd();
+            return new ScriptColumn(script, node);
+        } catch (Unsupported u) {
+            if (verbose) String2.log("ScriptColumn can't compile " +
+                String2.toJson(script) + ": " + u.getMessage());
+            return null;
+        }
+    }
+
+    /** This returns the script. */
+    public String script() {
+        return script;
+    }
+
+    /**
+     * This evaluates the script for all rows of the table.
+     * If the script would throw an exception for some rows,
+     * those rows get missing values and the first error is logged.
+     *
+     * @param fullFileName  The full name (perhaps a URL) of the current file, or "" if
+     *   the source is not file-like.
+     * @param table The raw table from the source.
+     * @param paType the type of the new column
+     * @param colName the name of the new column (for diagnostic messages)
+     * @return the new column (with the same values pa.addObject(jexlResult) would add),
+     *   or null if this can't get exactly the same results as JEXL for this table (so use JEXL).
+     */
+    public PrimitiveArray evaluate(String fullFileName, Table table, PAType paType, String colName) {
+        int nRows = table.nRows();
+        Vec v;
+        try {
+            v = root.eval(new Context(fullFileName, table, nRows));
+        } catch (Unsupported u) {
+            if (verbose) String2.log("ScriptColumn will use JEXL for col=" +
+                String2.toJson(colName) + ": " + u.getMessage());
+            return null;
+        }
+        if (v.err != null)
+            String2.log("Caught: first script error (for col=" +
+                String2.toJson(colName) + " row[" + (v.scalar? 0 : v.err.nextSetBit(0)) + "]):\n" +
+                v.errMsg);
+
+        //add the values like pa.addObject(o) does
+        PrimitiveArray pa = PrimitiveArray.factory(paType, nRows, false);
+        int kind = v.kind;
+        if (pa instanceof StringArray) {
+            for (int row = 0; row < nRows; row++)
+                pa.addString(v.isErr(row)? "" :
+                    kind == DOUBLE? String.valueOf(v.d(row)) :  //addObject uses Double.toString, so NaN -> "NaN"
+                    v.toS(row));
+        } else if (kind == STRING || kind == BOOLEAN) {
+            pa.addNDoubles(nRows, Double.NaN);
+        } else if (pa instanceof FloatArray) {
+            for (int row = 0; row < nRows; row++)
+                pa.addFloat(v.isErr(row)? Float.NaN :
+                    kind == DOUBLE? (float)v.d(row) :
+                    kind == FLOAT?  v.f(row) : (float)v.l(row));
+        } else if (pa instanceof LongArray || pa instanceof ULongArray) {
+            for (int row = 0; row < nRows; row++) {
+                if (v.isErr(row))         pa.addDouble(Double.NaN);
+                else if (kind == DOUBLE)  pa.addDouble(v.d(row));
+                else if (kind == FLOAT)   pa.addFloat(v.f(row));
+                else                      pa.addLong(v.l(row));
+            }
+        } else {
+            for (int row = 0; row < nRows; row++)
+                pa.addDouble(v.isErr(row)? Double.NaN : v.widenD(row));
+        }
+        return pa;
+    }
+
+
+    /** This is thrown if a script (or a value) is not supported, so JEXL must be used. */
+    static class Unsupported extends RuntimeException {
+        Unsupported(String msg) {
+            super(msg, null, false, false);
+        }
+    }
+
+    /** The things a ScriptRow would know about, for one call to evaluate(). */
+    static class Context {
+        final String fullFileName;
+        final String fileName;
+        final Table table;
+        final int n;
+        /** The Vecs of the columns used so far (so a column used twice is only gotten once). */
+        final HashMap<String, Vec> columns = new HashMap();
+
+        Context(String tFullFileName, Table tTable, int tN) {
+            if (String2.isSomething(tFullFileName)) {
+                fullFileName = tFullFileName;
+                fileName = File2.getNameAndExtension(tFullFileName);
+            } else {
+                fullFileName = "";
+                fileName = "";
+            }
+            table = tTable;
+            n = tN;
+        }
+    }
+
+    /**
+     * A Vec is a column of values (or 1 value for all rows, if scalar), of one kind,
+     * plus the rows where JEXL would have thrown an exception.
+     */
+    static class Vec {
+        final int kind;
+        final boolean scalar;
+        long    l[]; //for INT and LONG
+        float   f[];
+        double  d[];
+        String  s[];
+        boolean b[];
+        double  jd[]; //for FLOAT: the values converted to doubles like JEXL does (made when needed)
+        BitSet err;     //null if no errors. For scalars, bit 0 means all rows.
+        String errMsg;  //the first error message
+
+        Vec(int tKind, boolean tScalar, int n) {
+            kind = tKind;
+            scalar = tScalar;
+            int len = scalar? 1 : n;
+            switch (kind) {
+                case INT:
+                case LONG:   l = new long[len];    break;
+                case FLOAT:  f = new float[len];   break;
+                case DOUBLE: d = new double[len];  break;
+                case STRING: s = new String[len];  break;
+                default:     b = new boolean[len]; break;
+            }
+        }
+
+        int len() {
+            return scalar? 1 :
+                l != null? l.length : f != null? f.length : d != null? d.length :
+                s != null? s.length : b.length;
+        }
+
+        boolean isErr(int row) {
+            return err != null && err.get(scalar? 0 : row);
+        }
+
+        void setErr(int row, String msg) {
+            if (err == null)
+                err = new BitSet();
+            err.set(scalar? 0 : row);
+            if (errMsg == null)
+                errMsg = msg;
+        }
+
+        /** This copies the error (if any) from another Vec for this row.
+         * @return true if there was an error */
+        boolean copyErr(int row, Vec other) {
+            if (other.isErr(row)) {
+                setErr(row, other.errMsg);
+                return true;
+            }
+            return false;
+        }
+
+        long    l(int row) {return l[scalar? 0 : row]; }
+        float   f(int row) {return f[scalar? 0 : row]; }
+        double  d(int row) {return d[scalar? 0 : row]; }
+        String  s(int row) {return s[scalar? 0 : row]; }
+        boolean b(int row) {return b[scalar? 0 : row]; }
+
+        /** This returns the value as a double like JEXL's arithmetic does
+         * (floats via their String form). */
+        double toD(int row) {
+            if (kind == FLOAT) {
+                if (jd == null) { //convert all of the floats once, since it is slow
+                    int len = f.length;
+                    double tjd[] = new double[len];
+                    for (int i = 0; i < len; i++)
+                        tjd[i] = jexlDouble(f[i]);
+                    jd = tjd;
+                }
+                return jd[scalar? 0 : row];
+            }
+            return kind == DOUBLE? d(row) : l(row);
+        }
+
+        /** This returns the value as a double like Java's widening (for method parameters). */
+        double widenD(int row) {
+            return kind == DOUBLE? d(row) : kind == FLOAT? f(row) : l(row);
+        }
+
+        /** This returns the value as a float like Java's widening (for method parameters). */
+        float widenF(int row) {
+            return kind == FLOAT? f(row) : l(row);
+        }
+
+        /** This returns the value as a String like JEXL's String concatenation does. */
+        String toS(int row) {
+            switch (kind) {
+                case INT:
+                case LONG:   return String.valueOf(l(row));
+                case FLOAT:  return String.valueOf(f(row));
+                case DOUBLE: double td = d(row);
+                             return Double.isNaN(td)? "" : String.valueOf(td);
+                case STRING: return s(row);
+                default:     return String.valueOf(b(row));
+            }
+        }
+    }
+
+    /**
+     * This converts a float to a double like JEXL's arithmetic does:
+     * via the float's String form (so 0.1f becomes 0.1, not 0.10000000149011612).
+     */
+    static double jexlDouble(float f) {
+        //integer floats are exact either way
+        return f == (int)f && Math.abs(f) < 16777216f? f : Double.parseDouble(String.valueOf(f));
+    }
+
+    /** This compares two doubles like JEXL does (NaN is less than other numbers). */
+    static int jexlCompare(double d1, double d2) {
+        if (Double.isNaN(d1))
+            return Double.isNaN(d2)? 0 : -1;
+        if (Double.isNaN(d2))
+            return 1;
+        return d1 < d2? -1 : d1 > d2? 1 : 0;
+    }
+
+    static boolean isNumeric(int kind) {
+        return kind <= DOUBLE;
+    }
+
+    /** A node in the expression tree. */
+    abstract static class Node {
+        final int kind;
+        final boolean exactInt; //true if kind=INT and the values are always Integers (not promoted)
+
+        Node(int tKind, boolean tExactInt) {
+            kind = tKind;
+            exactInt = tExactInt;
+        }
+
+        abstract Vec eval(Context c);
+    }
+
+    /** A literal value. */
+    static class Constant extends Node {
+        final Vec vec;
+
+        Constant(Vec tVec) {
+            super(tVec.kind, tVec.kind == INT);
+            vec = tVec;
+        }
+
+        static Constant of(long l, int kind) {
+            Vec v = new Vec(kind, true, 1);
+            v.l[0] = l;
+            return new Constant(v);
+        }
+
+        static Constant of(float f) {
+            Vec v = new Vec(FLOAT, true, 1);
+            v.f[0] = f;
+            v.toD(0); //so the shared Vec is not modified later
+            return new Constant(v);
+        }
+
+        static Constant of(double d) {
+            Vec v = new Vec(DOUBLE, true, 1);
+            v.d[0] = d;
+            return new Constant(v);
+        }
+
+        static Constant of(String s) {
+            Vec v = new Vec(STRING, true, 1);
+            v.s[0] = s;
+            return new Constant(v);
+        }
+
+        static Constant of(boolean b) {
+            Vec v = new Vec(BOOLEAN, true, 1);
+            v.b[0] = b;
+            return new Constant(v);
+        }
+
+        Vec eval(Context c) {
+            return vec;  //Vecs are never modified after they are returned
+        }
+    }
+
+    /** row.columnInt/Long/Float/Double/String(colName). */
+    static class Column extends Node {
+        final String colName;
+
+        Column(int tKind, String tColName) {
+            super(tKind, tKind == INT);
+            colName = tColName;
+        }
+
+        Vec eval(Context c) {
+            String key = kind + colName;
+            Vec v = c.columns.get(key);
+            if (v == null) {
+                v = getColumn(c);
+                c.columns.put(key, v);
+            }
+            return v;
+        }
+
+        Vec getColumn(Context c) {
+            int col = c.table.findColumnNumber(colName);
+            if (col < 0) { //like ScriptRow
+                switch (kind) {
+                    case INT:    return Constant.of(Integer.MAX_VALUE, INT).vec;
+                    case LONG:   return Constant.of(Long.MAX_VALUE, LONG).vec;
+                    case FLOAT:  return Constant.of(Float.NaN).vec;
+                    case DOUBLE: return Constant.of(Double.NaN).vec;
+                    default:     return Constant.of("").vec;
+                }
+            }
+            PrimitiveArray pa = c.table.getColumn(col);
+            int n = c.n;
+            Vec v = new Vec(kind, false, n);
+            switch (kind) {
+                case INT:    for (int row = 0; row < n; row++) v.l[row] = pa.getInt(row);    break;
+                case LONG:   for (int row = 0; row < n; row++) v.l[row] = pa.getLong(row);   break;
+                case FLOAT:
+                    if (pa instanceof FloatArray)
+                         System.arraycopy(((FloatArray)pa).array, 0, v.f, 0, n);
+                    else for (int row = 0; row < n; row++) v.f[row] = pa.getFloat(row);
+                    break;
+                case DOUBLE:
+                    if (pa instanceof DoubleArray)
+                         System.arraycopy(((DoubleArray)pa).array, 0, v.d, 0, n);
+                    else for (int row = 0; row < n; row++) v.d[row] = pa.getDouble(row);
+                    break;
+                default:     for (int row = 0; row < n; row++) v.s[row] = pa.getString(row); break;
+            }
+            return v;
+        }
+    }
+
+    /** row.getRow(), row.getFileName(), or row.getFullFileName(). */
+    static class RowInfo extends Node {
+        final String method;
+
+        RowInfo(String tMethod) {
+            super(tMethod.equals("getRow")? INT : STRING, tMethod.equals("getRow"));
+            method = tMethod;
+        }
+
+        Vec eval(Context c) {
+            if (method.equals("getFileName"))
+                return Constant.of(c.fileName).vec;
+            if (method.equals("getFullFileName"))
+                return Constant.of(c.fullFileName).vec;
+            Vec v = new Vec(INT, false, c.n);
+            for (int row = 0; row < c.n; row++)
+                v.l[row] = row;
+            return v;
+        }
+    }
+
+    /** Unary minus. */
+    static class Negate extends Node {
+        final Node a;
+
+        Negate(Node tA) {
+            super(tA.kind, tA.exactInt);
+            a = tA;
+            if (!isNumeric(kind))
+                throw new Unsupported("unary - of a non-number");
+        }
+
+        Vec eval(Context c) {
+            Vec av = a.eval(c);
+            int len = av.len();
+            Vec v = new Vec(kind, av.scalar, c.n);
+            for (int i = 0; i < len; i++) {
+                if (v.copyErr(i, av))
+                    continue;
+                switch (kind) {
+                    case INT:
+                        long tl = av.l(i);
+                        if (exactInt) {
+                            v.l[i] = -(int)tl; //Integer: MIN_VALUE stays MIN_VALUE
+                        } else {
+                            //a promoted Long MIN_VALUE would become +2147483648
+                            if (tl == Integer.MIN_VALUE)
+                                throw new Unsupported("-" + tl);
+                            v.l[i] = -tl;
+                        }
+                        break;
+                    case LONG:   v.l[i] = -av.l(i); break;
+                    case FLOAT:  v.f[i] = -av.f(i); break;
+                    default:     v.d[i] = -av.d(i); break;
+                }
+            }
+            return v;
+        }
+    }
+
+    /** Logical not. */
+    static class Not extends Node {
+        final Node a;
+
+        Not(Node tA) {
+            super(BOOLEAN, false);
+            a = tA;
+            if (a.kind != BOOLEAN)
+                throw new Unsupported("! of a non-boolean");
+        }
+
+        Vec eval(Context c) {
+            Vec av = a.eval(c);
+            int len = av.len();
+            Vec v = new Vec(BOOLEAN, av.scalar, c.n);
+            for (int i = 0; i < len; i++) {
+                if (!v.copyErr(i, av))
+                    v.b[i] = !av.b(i);
+            }
+            return v;
+        }
+    }
+
+    /** The result kind of arithmetic with numbers of kinds k1 and k2. */
+    static int arithmeticKind(int k1, int k2) {
+        return k1 >= FLOAT || k2 >= FLOAT? DOUBLE :
+               k1 == LONG  || k2 == LONG?  LONG : INT;
+    }
+
+    /** + - * / % (and + for String concatenation). */
+    static class Arithmetic extends Node {
+        final int op;
+        final Node a, b;
+
+        Arithmetic(int tOp, Node tA, Node tB) {
+            super(tOp == ADD && (tA.kind == STRING || tB.kind == STRING)? STRING :
+                isNumeric(tA.kind) && isNumeric(tB.kind)? arithmeticKind(tA.kind, tB.kind) : -1,
+                false);
+            op = tOp;
+            a = tA;
+            b = tB;
+            if (kind < 0)
+                throw new Unsupported("arithmetic with non-numbers");
+        }
+
+        Vec eval(Context c) {
+            Vec av = a.eval(c);
+            Vec bv = b.eval(c);
+            boolean scalar = av.scalar && bv.scalar;
+            int len = scalar? 1 : c.n;
+            Vec v = new Vec(kind, scalar, c.n);
+            for (int i = 0; i < len; i++) {
+                if (v.copyErr(i, av) || v.copyErr(i, bv))
+                    continue;
+                if (kind == STRING) {
+                    v.s[i] = av.toS(i).concat(bv.toS(i));
+
+                } else if (kind == DOUBLE) {
+                    double d1 = av.toD(i);
+                    double d2 = bv.toD(i);
+                    switch (op) {
+                        case ADD:      v.d[i] = d1 + d2; break;
+                        case SUBTRACT: v.d[i] = d1 - d2; break;
+                        case MULTIPLY: v.d[i] = d1 * d2; break;
+                        case DIVIDE:
+                            if (d2 == 0) v.setErr(i, "java.lang.ArithmeticException: / by zero");
+                            else v.d[i] = d1 / d2;
+                            break;
+                        default:
+                            if (d2 == 0) v.setErr(i, "java.lang.ArithmeticException: % by zero");
+                            else v.d[i] = d1 % d2;
+                            break;
+                    }
+
+                } else { //INT or LONG (as JEXL does it with BigIntegers, then narrows)
+                    long l1 = av.l(i);
+                    long l2 = bv.l(i);
+                    try {
+                        switch (op) {
+                            case ADD:      v.l[i] = Math.addExact(l1, l2); break;
+                            case SUBTRACT: v.l[i] = Math.subtractExact(l1, l2); break;
+                            case MULTIPLY: v.l[i] = Math.multiplyExact(l1, l2); break;
+                            case DIVIDE:
+                                if (l2 == 0) v.setErr(i, "java.lang.ArithmeticException: / by zero");
+                                else if (l1 == Long.MIN_VALUE && l2 == -1) throw new ArithmeticException();
+                                else v.l[i] = l1 / l2;
+                                break;
+                            default:  //BigInteger.mod: the divisor must be positive
+                                if (l2 <= 0) v.setErr(i, "java.lang.ArithmeticException: BigInteger: modulus not positive");
+                                else v.l[i] = Math.floorMod(l1, l2);
+                                break;
+                        }
+                    } catch (ArithmeticException e) {
+                        throw new Unsupported("long overflow"); //JEXL would use a BigInteger
+                    }
+                }
+            }
+            return v;
+        }
+    }
+
+    /** == != &lt; &lt;= &gt; &gt;= */
+    static class Comparison extends Node {
+        final int op;
+        final Node a, b;
+        final boolean strings, doubles;
+
+        Comparison(int tOp, Node tA, Node tB) {
+            super(BOOLEAN, false);
+            op = tOp;
+            a = tA;
+            b = tB;
+            strings = a.kind == STRING && b.kind == STRING;
+            if (!strings && !(isNumeric(a.kind) && isNumeric(b.kind)))
+                throw new Unsupported("comparison of different types");
+            doubles = !strings && arithmeticKind(a.kind, b.kind) == DOUBLE;
+        }
+
+        Vec eval(Context c) {
+            Vec av = a.eval(c);
+            Vec bv = b.eval(c);
+            boolean scalar = av.scalar && bv.scalar;
+            int len = scalar? 1 : c.n;
+            Vec v = new Vec(BOOLEAN, scalar, c.n);
+            for (int i = 0; i < len; i++) {
+                if (v.copyErr(i, av) || v.copyErr(i, bv))
+                    continue;
+                int t;
+                if (strings) {
+                    if (op == EQ || op == NE) {
+                        v.b[i] = av.s(i).equals(bv.s(i)) == (op == EQ);
+                        continue;
+                    }
+                    t = av.s(i).compareTo(bv.s(i));
+                } else if (doubles) {
+                    t = jexlCompare(av.toD(i), bv.toD(i));
+                } else {
+                    t = Long.compare(av.l(i), bv.l(i));
+                }
+                switch (op) {
+                    case EQ: v.b[i] = t == 0; break;
+                    case NE: v.b[i] = t != 0; break;
+                    case LT: v.b[i] = t <  0; break;
+                    case LE: v.b[i] = t <= 0; break;
+                    case GT: v.b[i] = t >  0; break;
+                    default: v.b[i] = t >= 0; break;
+                }
+            }
+            return v;
+        }
+    }
+
+    /** &amp;&amp; and || (b's errors only matter for the rows where b would be evaluated). */
+    static class Logical extends Node {
+        final int op;
+        final Node a, b;
+
+        Logical(int tOp, Node tA, Node tB) {
+            super(BOOLEAN, false);
+            op = tOp;
+            a = tA;
+            b = tB;
+            if (a.kind != BOOLEAN || b.kind != BOOLEAN)
+                throw new Unsupported("&& or || of non-booleans");
+        }
+
+        Vec eval(Context c) {
+            Vec av = a.eval(c);
+            Vec bv = b.eval(c);
+            boolean scalar = av.scalar && bv.scalar;
+            int len = scalar? 1 : c.n;
+            Vec v = new Vec(BOOLEAN, scalar, c.n);
+            boolean shortCircuit = op == OR; //the a value which makes b irrelevant
+            for (int i = 0; i < len; i++) {
+                if (v.copyErr(i, av))
+                    continue;
+                if (av.b(i) == shortCircuit)
+                    v.b[i] = shortCircuit;
+                else if (!v.copyErr(i, bv))
+                    v.b[i] = bv.b(i);
+            }
+            return v;
+        }
+    }
+
+    /** cond? a : b  (a's and b's errors only matter for the rows where they are used). */
+    static class Ternary extends Node {
+        final Node cond, a, b;
+
+        Ternary(Node tCond, Node tA, Node tB) {
+            super(tA.kind, tA.exactInt && tB.exactInt);
+            cond = tCond;
+            a = tA;
+            b = tB;
+            if (cond.kind != BOOLEAN)
+                throw new Unsupported("?: with a non-boolean condition");
+            if (a.kind != b.kind)
+                throw new Unsupported("?: with different types");
+        }
+
+        Vec eval(Context c) {
+            Vec cv = cond.eval(c);
+            Vec av = a.eval(c);
+            Vec bv = b.eval(c);
+            boolean scalar = cv.scalar && av.scalar && bv.scalar;
+            int len = scalar? 1 : c.n;
+            Vec v = new Vec(kind, scalar, c.n);
+            for (int i = 0; i < len; i++) {
+                if (v.copyErr(i, cv))
+                    continue;
+                Vec tv = cv.b(i)? av : bv;
+                if (v.copyErr(i, tv))
+                    continue;
+                switch (kind) {
+                    case INT:
+                    case LONG:   v.l[i] = tv.l(i); break;
+                    case FLOAT:  v.f[i] = tv.f(i); break;
+                    case DOUBLE: v.d[i] = tv.d(i); break;
+                    case STRING: v.s[i] = tv.s(i); break;
+                    default:     v.b[i] = tv.b(i); break;
+                }
+            }
+            return v;
+        }
+    }
+
+    /** The supported methods: the double(double) methods. */
+    private final static String DOUBLE_FUNCTIONS1[] = {
+        "Math.acos", "Math.asin", "Math.atan", "Math.cbrt", "Math.ceil", "Math.cos",
+        "Math.cosh", "Math.exp", "Math.expm1", "Math.floor", "Math.log", "Math.log10",
+        "Math.log1p", "Math.rint", "Math.sin", "Math.sinh", "Math.sqrt", "Math.tan",
+        "Math.tanh", "Math.toDegrees", "Math.toRadians",
+        "Math2.trunc", "Math2.frac", "Math2.angle0360", "Math2.anglePM180"};
+
+    /** The supported methods: the double(double, double) methods. */
+    private final static String DOUBLE_FUNCTIONS2[] = {
+        "Math.atan2", "Math.hypot", "Math.pow", "Math.IEEEremainder"};
+
+    /** The supported methods: the methods with String parameters. */
+    private final static String STRING_FUNCTIONS[] = {
+        "String2.parseDouble", "String2.parseFloat", "String2.parseInt", "String2.parseLong",
+        "String2.trimStart", "String2.trimEnd", "Calendar2.parseToEpochSeconds"};
+
+    /** The result kinds of STRING_FUNCTIONS. */
+    private final static int STRING_FUNCTION_KINDS[] = {
+        DOUBLE, FLOAT, INT, LONG, STRING, STRING, DOUBLE};
+
+    /**
+     * This makes a node for a supported method.
+     *
+     * @param name e.g., Math.cos
+     * @param args the parameters
+     * @throws Unsupported if the method or its parameters aren't supported
+     */
+    static Node makeFunction(String name, ArrayList<Node> args) {
+        int nArgs = args.size();
+
+        int which = String2.indexOf(DOUBLE_FUNCTIONS1, name);
+        if (which >= 0 && nArgs == 1 && isNumeric(args.get(0).kind))
+            return new Function(name, which, DOUBLE, args);
+
+        which = String2.indexOf(DOUBLE_FUNCTIONS2, name);
+        if (which >= 0 && nArgs == 2 && isNumeric(args.get(0).kind) && isNumeric(args.get(1).kind))
+            return new Function(name, 100 + which, DOUBLE, args);
+
+        if (name.equals("Math2.roundTo") && nArgs == 2 &&
+            isNumeric(args.get(0).kind) && args.get(1).exactInt)
+            return new Function(name, 200, DOUBLE, args);
+
+        if ((name.equals("Math.abs") && nArgs == 1) ||
+            ((name.equals("Math.min") || name.equals("Math.max")) && nArgs == 2)) {
+            //JEXL picks the most specific of the int, long, float, and double versions
+            int kind = INT;
+            for (int i = 0; i < nArgs; i++) {
+                if (!isNumeric(args.get(i).kind))
+                    throw new Unsupported(name + " with a non-number");
+                kind = Math.max(kind, args.get(i).kind);
+            }
+            //a promoted int (Integer or Long) would change which version JEXL calls
+            for (int i = 0; i < nArgs; i++)
+                if (kind == INT && !args.get(i).exactInt)
+                    throw new Unsupported(name + " with an int expression");
+            return new Function(name, name.equals("Math.abs")? 300 : name.equals("Math.min")? 301 : 302,
+                kind, args);
+        }
+
+        which = String2.indexOf(STRING_FUNCTIONS, name);
+        if (which >= 0) {
+            for (int i = 0; i < nArgs; i++)
+                if (args.get(i).kind != STRING)
+                    throw new Unsupported(name + " with a non-String");
+            if (name.equals("Calendar2.parseToEpochSeconds")? nArgs == 2 || nArgs == 3 : nArgs == 1)
+                return new Function(name, 400 + which, STRING_FUNCTION_KINDS[which], args);
+        }
+
+        throw new Unsupported(name + " with " + nArgs + " parameters");
+    }
+
+    /** A call to a method in ScriptMath, ScriptMath2, ScriptString2, or ScriptCalendar2. */
+    static class Function extends Node {
+        final String name;
+        final int which;
+        final Node args[];
+
+        Function(String tName, int tWhich, int tKind, ArrayList<Node> tArgs) {
+            super(tKind, tKind == INT);
+            name = tName;
+            which = tWhich;
+            args = tArgs.toArray(new Node[0]);
+        }
+
+        Vec eval(Context c) {
+            int nArgs = args.length;
+            Vec av[] = new Vec[nArgs];
+            boolean scalar = true;
+            for (int a = 0; a < nArgs; a++) {
+                av[a] = args[a].eval(c);
+                scalar = scalar && av[a].scalar;
+            }
+            int len = scalar? 1 : c.n;
+            Vec v = new Vec(kind, scalar, c.n);
+            Vec a0 = av[0];
+            Vec a1 = nArgs > 1? av[1] : null;
+            for (int i = 0; i < len; i++) {
+                boolean isErr = false;
+                for (int a = 0; a < nArgs && !isErr; a++)
+                    isErr = v.copyErr(i, av[a]);
+                if (isErr)
+                    continue;
+                try {
+                    if (which < 100) {
+                        v.d[i] = function1(which, a0.widenD(i));
+                    } else if (which < 200) {
+                        v.d[i] = function2(which - 100, a0.widenD(i), a1.widenD(i));
+                    } else if (which == 200) {
+                        v.d[i] = Math2.roundTo(a0.widenD(i), (int)a1.l(i));
+                    } else if (which < 400) {
+                        overloaded(v, i, a0, a1);
+                    } else {
+                        stringFunction(v, i, av);
+                    }
+                } catch (Exception e) {
+                    v.setErr(i, v.errMsg == null? MustBe.throwableToString(e) : null);
+                }
+            }
+            return v;
+        }
+
+        /** This does abs, min, or max, for the kind (INT, LONG, FLOAT, DOUBLE) of this node. */
+        private void overloaded(Vec v, int i, Vec a0, Vec a1) {
+            switch (kind) {
+                case INT: {
+                    int i0 = (int)a0.l(i);
+                    v.l[i] = which == 300? Math.abs(i0) :
+                             which == 301? Math.min(i0, (int)a1.l(i)) : Math.max(i0, (int)a1.l(i));
+                    break;
+                }
+                case LONG: {
+                    long l0 = a0.l(i);
+                    v.l[i] = which == 300? Math.abs(l0) :
+                             which == 301? Math.min(l0, a1.l(i)) : Math.max(l0, a1.l(i));
+                    break;
+                }
+                case FLOAT: {
+                    float f0 = a0.widenF(i);
+                    v.f[i] = which == 300? Math.abs(f0) :
+                             which == 301? Math.min(f0, a1.widenF(i)) : Math.max(f0, a1.widenF(i));
+                    break;
+                }
+                default: {
+                    double d0 = a0.widenD(i);
+                    v.d[i] = which == 300? Math.abs(d0) :
+                             which == 301? Math.min(d0, a1.widenD(i)) : Math.max(d0, a1.widenD(i));
+                    break;
+                }
+            }
+        }
+
+        /** This does one of the STRING_FUNCTIONS. */
+        private void stringFunction(Vec v, int i, Vec av[]) {
+            String s0 = av[0].s(i);
+            switch (which - 400) {
+                case 0: v.d[i] = String2.parseDouble(s0); break;
+                case 1: v.f[i] = String2.parseFloat(s0);  break;
+                case 2: v.l[i] = String2.parseInt(s0);    break;
+                case 3: v.l[i] = String2.parseLong(s0);   break;
+                case 4: v.s[i] = String2.trimStart(s0);   break;
+                case 5: v.s[i] = String2.trimEnd(s0);     break;
+                default:
+                    v.d[i] = av.length == 2?
+                        Calendar2.parseToEpochSeconds(s0, av[1].s(i)) :
+                        Calendar2.parseToEpochSeconds(s0, av[1].s(i), av[2].s(i));
+                    break;
+            }
+        }
+    }
+
+    /** This applies one of the DOUBLE_FUNCTIONS1. */
+    static double function1(int which, double d) {
+        switch (which) {
+            case  0: return Math.acos(d);
+            case  1: return Math.asin(d);
+            case  2: return Math.atan(d);
+            case  3: return Math.cbrt(d);
+            case  4: return Math.ceil(d);
+            case  5: return Math.cos(d);
+            case  6: return Math.cosh(d);
+            case  7: return Math.exp(d);
+            case  8: return Math.expm1(d);
+            case  9: return Math.floor(d);
+            case 10: return Math.log(d);
+            case 11: return Math.log10(d);
+            case 12: return Math.log1p(d);
+            case 13: return Math.rint(d);
+            case 14: return Math.sin(d);
+            case 15: return Math.sinh(d);
+            case 16: return Math.sqrt(d);
+            case 17: return Math.tan(d);
+            case 18: return Math.tanh(d);
+            case 19: return Math.toDegrees(d);
+            case 20: return Math.toRadians(d);
+            case 21: return Math2.trunc(d);
+            case 22: return Math2.frac(d);
+            case 23: return Math2.angle0360(d);
+            default: return Math2.anglePM180(d);
+        }
+    }
+
+    /** This applies one of the DOUBLE_FUNCTIONS2. */
+    static double function2(int which, double d1, double d2) {
+        switch (which) {
+            case 0:  return Math.atan2(d1, d2);
+            case 1:  return Math.hypot(d1, d2);
+            case 2:  return Math.pow(d1, d2);
+            default: return Math.IEEEremainder(d1, d2);
+        }
+    }
+
+
+    /**
+     * A recursive descent parser for the supported subset of JEXL.
+     * The precedence of the operators is the same as JEXL's.
+     */
+    static class Parser {
+        final String s;
+        int po = 0;
+
+        Parser(String tS) {
+            s = tS;
+        }
+
+        void skipWhite() {
+            while (po < s.length() && Character.isWhitespace(s.charAt(po)))
+                po++;
+        }
+
+        /** This returns the next char (after white space), or '\u0000' if at end. */
+        char peek() {
+            skipWhite();
+            return po < s.length()? s.charAt(po) : '\u0000';
+        }
+
+        char peek(int offset) {
+            return po + offset < s.length()? s.charAt(po + offset) : '\u0000';
+        }
+
+        /** This returns true (and skips the operator) if the next chars are op. */
+        boolean nextIs(String op) {
+            skipWhite();
+            if (!s.startsWith(op, po))
+                return false;
+            po += op.length();
+            return true;
+        }
+
+        void expect(char ch) {
+            if (peek() != ch)
+                throw new Unsupported("'" + ch + "' expected at position " + po);
+            po++;
+        }
+
+        void expectEnd() {
+            if (peek() != '\u0000')
+                throw new Unsupported("unexpected '" + s.charAt(po) + "' at position " + po);
+        }
+
+        Node parseTernary() {
+            Node cond = parseOr();
+            if (peek() == '?') {
+                if (peek(1) == '?' || peek(1) == ':')
+                    throw new Unsupported("?? or ?:");
+                po++;
+                Node a = parseTernary();
+                expect(':');
+                Node b = parseTernary();
+                return new Ternary(cond, a, b);
+            }
+            return cond;
+        }
+
+        Node parseOr() {
+            Node node = parseAnd();
+            while (nextIs("||"))
+                node = new Logical(OR, node, parseAnd());
+            return node;
+        }
+
+        Node parseAnd() {
+            Node node = parseEquality();
+            while (nextIs("&&"))
+                node = new Logical(AND, node, parseEquality());
+            return node;
+        }
+
+        Node parseEquality() {
+            Node node = parseRelational();
+            while (true) {
+                if      (nextIs("==")) node = new Comparison(EQ, node, parseRelational());
+                else if (nextIs("!=")) node = new Comparison(NE, node, parseRelational());
+                else return node;
+            }
+        }
+
+        Node parseRelational() {
+            Node node = parseAdditive();
+            while (true) {
+                if      (nextIs("<=")) node = new Comparison(LE, node, parseAdditive());
+                else if (nextIs(">=")) node = new Comparison(GE, node, parseAdditive());
+                else if (peek() == '<' || peek() == '>') {
+                    int op = s.charAt(po) == '<'? LT : GT;
+                    po++;
+                    if (peek() == '<' || peek() == '>' || peek() == '=')
+                        throw new Unsupported("operator at position " + po);
+                    node = new Comparison(op, node, parseAdditive());
+                } else return node;
+            }
+        }
+
+        Node parseAdditive() {
+            Node node = parseMultiplicative();
+            while (true) {
+                char ch = peek();
+                if ((ch == '+' || ch == '-') && peek(1) != ch && peek(1) != '=') {
+                    po++;
+                    node = new Arithmetic(ch == '+'? ADD : SUBTRACT, node, parseMultiplicative());
+                } else return node;
+            }
+        }
+
+        Node parseMultiplicative() {
+            Node node = parseUnary();
+            while (true) {
+                char ch = peek();
+                if ((ch == '*' || ch == '/' || ch == '%') && peek(1) != '=') {
+                    po++;
+                    node = new Arithmetic(ch == '*'? MULTIPLY : ch == '/'? DIVIDE : MOD,
+                        node, parseUnary());
+                } else return node;
+            }
+        }
+
+        Node parseUnary() {
+            char ch = peek();
+            if (ch == '-' && peek(1) != '-') {
+                po++;
+                if (String2.isDigit(peek())) {
+                    //like JEXL, treat it as a negative literal (so -2147483648 is an Integer)
+                    Node node = parseNumber(true);
+                    if (peek() == '.' || peek() == '[')
+                        throw new Unsupported("method or index of a value at position " + po);
+                    return node;
+                }
+                return new Negate(parseUnary());
+            }
+            if (ch == '!' && peek(1) != '=' && peek(1) != '~') {
+                po++;
+                return new Not(parseUnary());
+            }
+            Node node = parsePrimary();
+            ch = peek();
+            if (ch == '.' || ch == '[')
+                throw new Unsupported("method or index of a value at position " + po);
+            return node;
+        }
+
+        Node parsePrimary() {
+            char ch = peek();
+            if (ch == '(') {
+                po++;
+                Node node = parseTernary();
+                expect(')');
+                return node;
+            }
+            if (ch == '"' || ch == '\'')
+                return Constant.of(parseString());
+            if (ch >= '0' && ch <= '9')
+                return parseNumber(false);
+            if (!Character.isJavaIdentifierStart(ch))
+                throw new Unsupported("unexpected '" + ch + "' at position " + po);
+
+            String object = parseIdentifier();
+            if (object.equals("true"))  return Constant.of(true);
+            if (object.equals("false")) return Constant.of(false);
+            expect('.');
+            String method = parseIdentifier();
+            ArrayList<Node> args = new ArrayList();
+            int argStart = po;
+            expect('(');
+            if (peek() != ')') {
+                args.add(parseTernary());
+                while (peek() == ',') {
+                    po++;
+                    args.add(parseTernary());
+                }
+            }
+            expect(')');
+
+            if (object.equals("row")) {
+                if (method.startsWith("column")) {
+                    String type = method.substring(6);
+                    int kind = type.equals("Int")? INT : type.equals("Long")? LONG :
+                        type.equals("Float")? FLOAT : type.equals("Double")? DOUBLE :
+                        type.equals("String")? STRING : -1;
+                    if (kind < 0 || args.size() != 1 || !(args.get(0) instanceof Constant) ||
+                        args.get(0).kind != STRING)
+                        throw new Unsupported("row." + method + " at position " + argStart);
+                    return new Column(kind, ((Constant)args.get(0)).vec.s[0]);
+                }
+                if ((method.equals("getRow") || method.equals("getFileName") ||
+                     method.equals("getFullFileName")) && args.size() == 0)
+                    return new RowInfo(method);
+                throw new Unsupported("row." + method);
+            }
+            if (object.equals("Math") || object.equals("Math2") ||
+                object.equals("String2") || object.equals("Calendar2"))
+                return makeFunction(object + "." + method, args);
+            throw new Unsupported(object + "." + method);
+        }
+
+        String parseIdentifier() {
+            skipWhite();
+            int start = po;
+            if (po < s.length() && Character.isJavaIdentifierStart(s.charAt(po))) {
+                po++;
+                while (po < s.length() && Character.isJavaIdentifierPart(s.charAt(po)))
+                    po++;
+            }
+            if (po == start)
+                throw new Unsupported("identifier expected at position " + po);
+            return s.substring(start, po);
+        }
+
+        /** This parses a '' or "" String with no escapes other than \\ \' and \". */
+        String parseString() {
+            char quote = s.charAt(po++);
+            StringBuilder sb = new StringBuilder();
+            while (po < s.length()) {
+                char ch = s.charAt(po++);
+                if (ch == quote)
+                    return sb.toString();
+                if (ch == '\\') {
+                    char ch2 = peek(0);
+                    if (ch2 != '\\' && ch2 != '\'' && ch2 != '"')
+                        throw new Unsupported("escape sequence at position " + po);
+                    sb.append(ch2);
+                    po++;
+                } else {
+                    sb.append(ch);
+                }
+            }
+            throw new Unsupported("unterminated String");
+        }
+
+        /**
+         * This parses an int (e.g., 10), long (10L), float (1.5f), or double (1.5, 1.5e-3, 1.5d) literal.
+         *
+         * @param negative true if there was a unary '-' before the number
+         */
+        Node parseNumber(boolean negative) {
+            int start = po;
+            while (po < s.length() && String2.isDigit(s.charAt(po)))
+                po++;
+            boolean decimal = false;
+            if (peek(0) == '.' && String2.isDigit(peek(1))) {
+                decimal = true;
+                po++;
+                while (po < s.length() && String2.isDigit(s.charAt(po)))
+                    po++;
+                char ch = peek(0);
+                if (ch == 'e' || ch == 'E') {
+                    po++;
+                    if (peek(0) == '+' || peek(0) == '-')
+                        po++;
+                    if (!String2.isDigit(peek(0)))
+                        throw new Unsupported("number at position " + start);
+                    while (po < s.length() && String2.isDigit(s.charAt(po)))
+                        po++;
+                }
+            }
+            String number = s.substring(start, po);
+            char suffix = peek(0);
+            if ("fFdDlL".indexOf(suffix) >= 0)
+                po++;
+            else suffix = ' ';
+            char next = peek(0);
+            if (next == '.' || (next != '\u0000' && Character.isJavaIdentifierPart(next)))
+                throw new Unsupported("number at position " + start); //e.g., 1e3, 0x10
+            if (number.length() > 1 && number.charAt(0) == '0' && !decimal)
+                throw new Unsupported("octal number at position " + start);
+
+            if (suffix == 'f' || suffix == 'F')
+                return Constant.of(Float.parseFloat((negative? "-" : "") + number));
+            if (decimal || suffix == 'd' || suffix == 'D') {
+                if (suffix == 'l' || suffix == 'L')
+                    throw new Unsupported("number at position " + start);
+                return Constant.of(Double.parseDouble((negative? "-" : "") + number));
+            }
+            long l;
+            try {
+                l = Long.parseLong(number);
+            } catch (NumberFormatException e) {
+                throw new Unsupported("BigInteger at position " + start);
+            }
+            if (negative)
+                l = -l;
+            if (suffix == 'l' || suffix == 'L')
+                return Constant.of(l, LONG);
+            return l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE? Constant.of(l, INT) : Constant.of(l, LONG);
+        }
+    }
+
+
+    /**
+     * This evaluates a script the way EDDTable.convertScriptColumnsToDataColumns
+     * does with JEXL: with a ScriptRow, one row at a time.
+     * This is used by the tests.
+     */
+    static PrimitiveArray evaluateWithJexl(String fullFileName, Table table, PAType paType, String script) {
+        int nRows = table.nRows();
+        PrimitiveArray pa = PrimitiveArray.factory(paType, nRows, false);
+        JexlScript jscript = Script2.jexlEngine().createScript(script);
+        MapContext jcontext = Script2.jexlMapContext();
+        ScriptRow scriptRow = new ScriptRow(fullFileName, table);
+        jcontext.set("row", scriptRow);
+        for (int row = 0; row < nRows; row++) {
+            scriptRow.setRow(row);
+            Object o = null;
+            try {
+                o = jscript.execute(jcontext);
+            } catch (Exception e2) {
+                o = null;
+            }
+            pa.addObject(o);
+        }
+        return pa;
+    }
+
+    /**
+     * This tests that ScriptColumn gets exactly the same results as JEXL.
+     */
+    public static void basicTest() throws Exception {
+        String2.log("\n*** ScriptColumn.basicTest()");
+
+        //a table with tricky values
+        int n = 2000;
+        java.util.Random random = new java.util.Random(17);
+        Table table = new Table();
+        IntArray    ia = new IntArray(n, false);
+        LongArray   la = new LongArray(n, false);
+        FloatArray  fa = new FloatArray(n, false);
+        DoubleArray da = new DoubleArray(n, false);
+        ShortArray  sha = new ShortArray(n, false);
+        StringArray sa = new StringArray(n, false);
+        StringArray ta = new StringArray(n, false);
+        int    ints[]    = {0, 1, -1, 2, 3, 7, -7, 100, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        long   longs[]   = {0, 1, -1, 5, 3000000000L, Long.MIN_VALUE, Long.MAX_VALUE};
+        float  floats[]  = {0, -0f, 0.1f, 1.5f, -2.25f, 1e20f, 3.4028235e38f, Float.NaN, Float.POSITIVE_INFINITY};
+        double doubles[] = {0, 0.1, 0.2, -1.5, 7, 1e-20, 1e7, 359.5, Double.NaN, Double.NEGATIVE_INFINITY};
+        String strings[] = {"", "a", "B", "abc", " 12.5 ", "7", "1e3", "NaN"};
+        String times[]   = {"2020-01-02", "1970-01-01", "bad", ""};
+        for (int i = 0; i < n; i++) {
+            ia.add(random.nextInt(3) == 0? ints[random.nextInt(ints.length)] : random.nextInt(200) - 100);
+            la.add(random.nextInt(3) == 0? longs[random.nextInt(longs.length)] : random.nextInt(2000) - 1000);
+            fa.add(random.nextInt(3) == 0? floats[random.nextInt(floats.length)] : (random.nextInt(2000) - 1000) / 10f);
+            da.add(random.nextInt(3) == 0? doubles[random.nextInt(doubles.length)] : random.nextDouble() * 400 - 200);
+            sha.add((short)(random.nextInt(10) == 0? Short.MAX_VALUE : random.nextInt(100)));
+            sa.add(strings[random.nextInt(strings.length)]);
+            ta.add(times[random.nextInt(times.length)]);
+        }
+        ia.setMaxIsMV(true);
+        sha.setMaxIsMV(true);
+        table.addColumn("i", ia);
+        table.addColumn("l", la);
+        table.addColumn("f", fa);
+        table.addColumn("d", da);
+        table.addColumn("sh", sha);
+        table.addColumn("s", sa);
+        table.addColumn("t", ta);
+
+        String supported[] = {
+            "row.columnDouble(\"d\")",
+            "row.columnFloat(\"f\")",
+            "row.columnInt(\"i\")",
+            "row.columnLong(\"l\")",
+            "row.columnString(\"s\")",
+            "row.columnDouble(\"f\")",
+            "row.columnInt(\"sh\")",
+            "row.columnDouble(\"sh\")",
+            "row.columnDouble(\"noSuchColumn\") + row.columnInt(\"noSuchColumn\")",
+            "(row.columnFloat(\"f\")-32)*5/9",
+            "row.columnFloat(\"f\") * Math.cos(row.columnFloat(\"d\"))",
+            "Math.toDegrees(Math.atan2(row.columnDouble(\"d\"), row.columnDouble(\"f\")))",
+            "Math2.anglePM180(row.columnDouble(\"d\"))",
+            "Math2.angle0360(row.columnDouble(\"d\"))",
+            "Math2.roundTo(row.columnDouble(\"d\"), 2)",
+            "row.columnInt(\"i\") + row.columnInt(\"sh\")/60.0",
+            "row.columnInt(\"i\") + 1",
+            "row.columnInt(\"i\") * row.columnInt(\"i\")",
+            "row.columnInt(\"i\") - row.columnLong(\"l\")",
+            "row.columnInt(\"i\") / row.columnInt(\"sh\")",
+            "row.columnInt(\"i\") % row.columnInt(\"sh\")",
+            "row.columnInt(\"i\") % 7",
+            "row.columnDouble(\"d\") / row.columnInt(\"i\")",
+            "row.columnDouble(\"d\") % row.columnFloat(\"f\")",
+            "row.columnLong(\"l\") * 3",
+            "row.columnLong(\"l\") / -1",
+            "-row.columnInt(\"i\")",
+            "-(row.columnInt(\"i\") - 1 + 1)",
+            "-row.columnLong(\"l\")",
+            "-row.columnFloat(\"f\")",
+            "-row.columnDouble(\"d\")",
+            "- -2147483648",
+            "2*-3 + 10L - 1.5f + 2.5d + 0.5e1",
+            "row.columnString(\"s\") + row.columnDouble(\"d\")",
+            "row.columnString(\"s\") + row.columnFloat(\"f\") + row.columnInt(\"i\")",
+            "1 + 2 + row.columnString(\"s\") + 1 + 2",
+            "row.getFileName() + '/' + row.getRow() + \"\\\"\"",
+            "row.getFullFileName()",
+            "row.columnString(\"s\") == 'a'",
+            "row.columnString(\"s\") < \"a\" ? 1.5 : 2.5",
+            "row.columnDouble(\"d\") < 1",
+            "row.columnDouble(\"d\") >= row.columnFloat(\"f\")",
+            "row.columnFloat(\"f\") == 0.1",
+            "row.columnInt(\"i\") > 3 && row.columnDouble(\"d\") != 7 || !(row.columnLong(\"l\") <= 5)",
+            "row.columnDouble(\"d\") > 35 || row.columnDouble(\"d\") < -5? -99.0 : row.columnFloat(\"f\")*9/5+32",
+            "row.columnInt(\"i\") > 0? 1 / row.columnInt(\"i\") : -1",
+            "row.columnInt(\"i\") > 0? 'pos' : row.columnString(\"s\")",
+            "Math.abs(row.columnInt(\"i\"))",
+            "Math.abs(row.columnFloat(\"f\"))",
+            "Math.max(row.columnInt(\"i\"), row.columnDouble(\"d\"))",
+            "Math.min(row.columnInt(\"i\"), row.columnLong(\"l\"))",
+            "Math.max(row.columnFloat(\"f\"), row.columnInt(\"i\"))",
+            "Math.sqrt(row.columnLong(\"l\")) + Math.floor(3) + Math.pow(row.columnFloat(\"f\"), 2)",
+            "Math.log10(row.columnDouble(\"d\")) + Math.exp(row.columnInt(\"sh\"))",
+            "String2.parseDouble(row.columnString(\"s\")) + String2.parseInt(row.columnString(\"s\"))",
+            "String2.parseFloat(row.columnString(\"s\"))",
+            "String2.trimStart(row.columnString(\"s\")) + String2.trimEnd(row.columnString(\"s\"))",
+            "Calendar2.parseToEpochSeconds(row.columnString(\"t\"), \"yyyy-MM-dd\")",
+            "Calendar2.parseToEpochSeconds(row.columnString(\"t\") + \"T12:00\", \"yyyy-MM-dd'T'HH:mm\", \"Zulu\")",
+            "true",
+            "10.5"};
+        String unsupported[] = {
+            "var tc=row.columnFloat(\"tempC\"); return tc;",
+            "Math.atan2(row.columnDouble(\"v\"), row.columnDouble(\"u\"))[0]",
+            "row.columnString(\"s\").length()",
+            "row.columnString(\"s\") - 1",
+            "row.columnInt(\"i\") > 0? 1 : 2.5",
+            "row.columnDouble(\"d\") > 35 || row.columnDouble(\"d\") < -5? -99.0f : row.columnFloat(\"f\")*9/5+32",
+            "Math.abs(row.columnInt(\"i\") + 1)",
+            "row.columnInt(\"i\") && true",
+            "String.valueOf(1)",
+            "1e3",
+            "0x10",
+            "row.columnDouble(\"d\") =~ '.*'",
+            "12345678901234567890",
+            "row.columnInt(\"i\") ?: 1",
+            "row.columnDouble(\"d\") eq 1"};
+
+        for (int i = 0; i < unsupported.length; i++)
+            Test.ensureEqual(compile(unsupported[i]) == null, true, unsupported[i]);
+
+        PAType paTypes[] = {PAType.DOUBLE, PAType.FLOAT, PAType.LONG, PAType.INT,
+            PAType.SHORT, PAType.BYTE, PAType.ULONG, PAType.UINT, PAType.CHAR, PAType.STRING};
+        String fileName = "/data/myDir/myFile.nc";
+        for (int i = 0; i < supported.length; i++) {
+            ScriptColumn sc = compile(supported[i]);
+            Test.ensureTrue(sc != null, supported[i]);
+            for (int pat = 0; pat < paTypes.length; pat++) {
+                String msg = supported[i] + " " + paTypes[pat];
+                PrimitiveArray expected = evaluateWithJexl(fileName, table, paTypes[pat], supported[i]);
+                PrimitiveArray results = sc.evaluate(fileName, table, paTypes[pat], "=" + supported[i]);
+                if (results == null) {
+                    String2.log("  (JEXL needed for " + msg + ")");
+                    continue;
+                }
+                Test.ensureEqual(results.testEquals(expected), "", msg);
+            }
+        }
+
+        //scripts that need a BigInteger return null
+        Test.ensureEqual(compile("row.columnLong(\"l\") + 1").evaluate(
+            fileName, table, PAType.DOUBLE, "test"), null, "");
+        Test.ensureEqual(compile("row.columnInt(\"i\") * row.columnInt(\"i\")").evaluate(
+            fileName, table, PAType.DOUBLE, "test") == null, false, "");
+
+        //get() caches
+        Test.ensureTrue(get("row.columnInt(\"i\") + 1") == get("row.columnInt(\"i\") + 1"), "");
+        Test.ensureEqual(get("1e3"), null, "");
+    }
+
+    /**
+     * This compares the speed of ScriptColumn and JEXL.
+     */
+    public static void testSpeed() throws Exception {
+        String2.log("\n*** ScriptColumn.testSpeed()");
+        int n = 1000000;
+        java.util.Random random = new java.util.Random(17);
+        Table table = new Table();
+        FloatArray  fa = new FloatArray(n, false);
+        DoubleArray da = new DoubleArray(n, false);
+        IntArray    ia = new IntArray(n, false);
+        for (int i = 0; i < n; i++) {
+            fa.add(random.nextFloat() * 40);
+            da.add(random.nextDouble() * 360);
+            ia.add(random.nextInt(60));
+        }
+        table.addColumn("tempC", fa);
+        table.addColumn("direction", da);
+        table.addColumn("min", ia);
+        String scripts[] = {
+            "row.columnFloat(\"tempC\")*9/5+32",
+            "row.columnFloat(\"tempC\") * Math.cos(Math.toRadians(row.columnDouble(\"direction\")))",
+            "row.columnInt(\"min\") + row.columnInt(\"min\")/60.0",
+            "row.columnFloat(\"tempC\") > 35 || row.columnFloat(\"tempC\") < -5? -99.0 : row.columnDouble(\"direction\")"};
+        for (int i = 0; i < scripts.length; i++) {
+            //run each twice so the 2nd time is after JIT compiling
+            long jexlTime = 0, time = 0;
+            PrimitiveArray expected = null, results = null;
+            for (int rep = 0; rep < 2; rep++) {
+                jexlTime = System.currentTimeMillis();
+                expected = evaluateWithJexl("", table, PAType.DOUBLE, scripts[i]);
+                jexlTime = System.currentTimeMillis() - jexlTime;
+
+                time = System.currentTimeMillis();
+                results = compile(scripts[i]).evaluate("", table, PAType.DOUBLE, "test");
+                time = System.currentTimeMillis() - time;
+            }
+            Test.ensureEqual(results.testEquals(expected), "", scripts[i]);
+            String2.log("n=" + n + " " + scripts[i] + "\n  JEXL time=" + jexlTime +
+                "ms  ScriptColumn time=" + time + "ms");
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 1;
+        String msg = "\n^^^ ScriptColumn.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                    if (test ==  1 && doSlowTestsToo) testSpeed();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
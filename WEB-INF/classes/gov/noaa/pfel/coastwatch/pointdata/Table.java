@@ -41,6 +41,7 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.math.BigInteger;
 import java.net.URL;
+import java.nio.CharBuffer;
 import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -66,6 +67,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.GregorianCalendar;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.Vector;
@@ -2336,6 +2338,27 @@ public class Table  {
             "", "", 0, 1, null, null, null, null, null, true);
     }
 
+    /**
+     * This is like readASCII, but reads the loadColumns directly into 
+     * PrimitiveArrays of the specified types.
+     * See readTypedASCII(fileName, linesReader, ...).
+     *
+     * @param fullFileName
+     * @param charset  e.g., ISO-8859-1 (used if charset is null or "") or UTF-8.
+     * @throws Exception if trouble
+     */
+    public void readTypedASCII(String fullFileName, String charset, 
+        String skipHeaderToRegex, String skipLinesRegex,
+        int columnNamesLine, int dataStartLine, String tColSeparator,
+        String testColumns[], double testMin[], double testMax[], 
+        String loadColumns[], PAType loadTypes[]) throws Exception {
+
+        readTypedASCII(fullFileName, 
+            File2.getDecompressedBufferedFileReader(fullFileName, charset), 
+            skipHeaderToRegex, skipLinesRegex, columnNamesLine, dataStartLine, tColSeparator,
+            testColumns, testMin, testMax, loadColumns, loadTypes); 
+    }
+
     /**
      * This reads data from an array of tab, comma, or space-separated ASCII Strings.
      * <ul>
@@ -2383,6 +2406,66 @@ public class Table  {
         String testColumns[], double testMin[], double testMax[], 
         String loadColumns[], boolean simplify) throws Exception {
 
+        lowReadASCII(fileName, linesReader, skipHeaderToRegex, skipLinesRegex,
+            columnNamesLine, dataStartLine, tColSeparator, 
+            testColumns, testMin, testMax, loadColumns, null, simplify);
+    }
+
+    /**
+     * This is like readASCII, but it reads the loadColumns directly into
+     * PrimitiveArrays of the specified types. 
+     * The results are the same as readASCII (with simplify=false) followed by
+     * converting each column to the loadType (as with newPA.append(stringPA)), 
+     * but this is much faster and uses much less memory:
+     * <ul>
+     * <li>The data lines are scanned in a char[] buffer (not a String per line).
+     * <li>Fields are located in the buffer, not split into Strings.
+     *   Lines with quoted CSV fields (and files with ' ' or no separator)
+     *   are still split the standard way.
+     * <li>Simple numbers are parsed directly into the loadType (see TextFieldParser).
+     *   Only String fields (and unusual numbers) become Strings.
+     * <li>The tests are done on each line's fields before anything from the line is stored.
+     * </ul>
+     *
+     * @param loadColumns the names of the columns to be loaded 
+     *     (perhaps in different order than in the file).
+     *     If null, this will read all variables as Strings.
+     * @param loadTypes the type of each loadColumn (e.g., PAType.DOUBLE, PAType.STRING).
+     *     This is ignored if loadColumns is null.
+     *     The testColumns needn't be loadColumns.
+     *     Tests of testColumns that aren't in the file are ignored.
+     * @throws Exception if trouble  
+     * @see #readASCII(String, BufferedReader, String, String, int, int, String, String[], double[], double[], String[], boolean)
+     */
+    public void readTypedASCII(String fileName, BufferedReader linesReader,
+        String skipHeaderToRegex, String skipLinesRegex,
+        int columnNamesLine, int dataStartLine, String tColSeparator,
+        String testColumns[], double testMin[], double testMax[], 
+        String loadColumns[], PAType loadTypes[]) throws Exception {
+
+        if (loadColumns == null) 
+            loadTypes = null;
+        else if (loadTypes == null || loadTypes.length != loadColumns.length) 
+            throw new IllegalArgumentException(String2.ERROR + 
+                " in Table.readTypedASCII: loadTypes.length must equal loadColumns.length.");
+        lowReadASCII(fileName, linesReader, skipHeaderToRegex, skipLinesRegex,
+            columnNamesLine, dataStartLine, tColSeparator, 
+            testColumns, testMin, testMax, loadColumns, 
+            loadTypes == null? new PAType[0] : loadTypes, false);
+    }
+
+    /**
+     * This does the work for readASCII and readTypedASCII.
+     *
+     * @param loadTypes null for readASCII (everything is read as Strings), 
+     *   or the loadTypes for readTypedASCII ([0] if loadColumns is null).
+     */
+    private void lowReadASCII(String fileName, BufferedReader linesReader,
+        String skipHeaderToRegex, String skipLinesRegex,
+        int columnNamesLine, int dataStartLine, String tColSeparator,
+        String testColumns[], double testMin[], double testMax[], 
+        String loadColumns[], PAType loadTypes[], boolean simplify) throws Exception {
+
         try { 
 
         //clear everything
@@ -2495,6 +2578,15 @@ public class Table  {
         }
 
         //get the data
+        if (loadTypes != null) {
+            readTypedASCIIData(fileName, linesReader, linesCache, nextLinesCache, row, logicalLine,
+                skipLinesPattern, dataStartLine, colSeparator, fileColumnNames, expectedNItems,
+                testColumns, testMin, testMax, loadColumns, loadTypes);
+            if (reallyVerbose) String2.log("  Table.readTypedASCII " + fileName + 
+                " finished. nCols=" + nColumns() + " nRows=" + nRows() + 
+                " TIME=" + (System.currentTimeMillis() - time) + "ms");
+            return;
+        }
         int testColumnNumbers[] = null;
         int loadColumnNumbers[] = null;
         StringArray loadColumnSA[] = null;
@@ -2660,6 +2752,251 @@ public class Table  {
         }
     }
 
+    /**
+     * This reads the data lines for readTypedASCII.
+     * The parameters are the state of lowReadASCII after it read the column names.
+     *
+     * @param linesCache the lines lowReadASCII read in advance.
+     *   Lines from nextLinesCache on haven't been processed yet.
+     *   The other lines are read from linesReader.
+     * @param row the number of lines read so far
+     * @param logicalLine the 0-based number of the last line processed 
+     *   (as if skipHeader and skipLines were removed)
+     * @throws Exception if trouble
+     */
+    private void readTypedASCIIData(String fileName, BufferedReader linesReader, 
+        ArrayList<String> linesCache, int nextLinesCache, int row, int logicalLine, 
+        Pattern skipLinesPattern, int dataStartLine, char colSeparator, 
+        StringArray fileColumnNames, int expectedNItems,
+        String testColumns[], double testMin[], double testMax[], 
+        String loadColumns[], PAType loadTypes[]) throws Exception {
+
+        TextFieldParser parser = new TextFieldParser();
+        //' ' (wordsAndQuotedPhrases) and '\u0000' lines are always split into Strings
+        boolean canUseOffsets = colSeparator != ' ' && colSeparator != '\u0000';
+        int fieldStart[] = new int[Math.max(8, fileColumnNames.size() + 1)];
+        int fieldEnd[]   = new int[fieldStart.length];
+        int testColumnNumbers[] = null;
+        int loadColumnNumbers[] = null;
+        PrimitiveArray loadPAs[] = null;
+        boolean missingItemNoted = false;
+        StringBuilder warnings = new StringBuilder();
+
+        //the lines after linesCache are read into buf
+        char buf[] = new char[65536];
+        int bufStart = 0, bufEnd = 0; //the unprocessed chars
+        boolean eof = false;
+        boolean skipLF = false;  //the previous line ended with \r, so skip a \n at the start of the next line
+        int linesCacheSize = linesCache.size();
+        while (true) {
+            //get the next line: line[lineStart to lineEnd)
+            char line[];
+            int lineStart, lineEnd;
+            if (nextLinesCache < linesCacheSize) {
+                line = linesCache.get(nextLinesCache).toCharArray();
+                linesCache.set(nextLinesCache, null);
+                nextLinesCache++;
+                lineStart = 0;
+                lineEnd = line.length;
+            } else {
+                int po = bufStart;
+                while (true) {
+                    if (skipLF && bufStart < bufEnd) {
+                        if (buf[bufStart] == '\n') 
+                            bufStart++;
+                        skipLF = false;
+                        po = bufStart;
+                    }
+                    while (po < bufEnd && buf[po] != '\n' && buf[po] != '\r')
+                        po++;
+                    if (po < bufEnd || eof)
+                        break;
+                    //need more chars: move the partial line to the start of buf (or make buf bigger)
+                    int nPartial = bufEnd - bufStart;
+                    if (nPartial == buf.length) {
+                        Math2.ensureArraySizeOkay(2L * buf.length, "Table.readTypedASCII");
+                        buf = Arrays.copyOf(buf, 2 * buf.length);
+                    } else if (bufStart > 0) {
+                        System.arraycopy(buf, bufStart, buf, 0, nPartial);
+                    }
+                    po -= bufStart;
+                    bufStart = 0;
+                    bufEnd = nPartial;
+                    int nRead = linesReader.read(buf, bufEnd, buf.length - bufEnd);
+                    if (nRead < 0) 
+                        eof = true;
+                    else bufEnd += nRead;
+                }
+                if (po == bufEnd && bufStart == bufEnd) 
+                    break; //eof and no more chars
+                line = buf;
+                lineStart = bufStart;
+                lineEnd = po;
+                if (po < bufEnd) {
+                    skipLF = buf[po] == '\r';
+                    po++;
+                }
+                bufStart = po;
+            }
+
+            //actual row number
+            row++;
+            //then check skipLines
+            if (skipLinesPattern != null && 
+                skipLinesPattern.matcher(CharBuffer.wrap(line, lineStart, lineEnd - lineStart)).matches())
+                continue;
+            //then check dataStartLine
+            if (++logicalLine < dataStartLine)
+                continue;
+
+            //find the fields 
+            String items[] = null;
+            int nItems = 0;
+            boolean useOffsets = canUseOffsets;
+            if (useOffsets && colSeparator == ',') {
+                for (int po = lineStart; po < lineEnd; po++) {
+                    if (line[po] == '"') {
+                        useOffsets = false; //quoted fields are handled by arrayFromCSV
+                        break;
+                    }
+                }
+            }
+            if (useOffsets) {
+                if (lineStart == lineEnd && colSeparator == ',') {
+                    //nItems=0, as with arrayFromCSV 
+                } else {
+                    int start = lineStart;
+                    for (int po = lineStart; po <= lineEnd; po++) {
+                        if (po == lineEnd || line[po] == colSeparator) {
+                            if (nItems == fieldStart.length) {
+                                fieldStart = Arrays.copyOf(fieldStart, 2 * nItems);
+                                fieldEnd   = Arrays.copyOf(fieldEnd,   2 * nItems);
+                            }
+                            fieldStart[nItems] = start;
+                            fieldEnd[nItems++] = po;
+                            start = po + 1;
+                        }
+                    }
+                }
+            } else {
+                String oneLine = new String(line, lineStart, lineEnd - lineStart);
+                try {
+                    //break the lines into items (as readASCII does)
+                    if (colSeparator == ',')
+                        items = StringArray.arrayFromCSV(oneLine);  //does handle "'d phrases
+                    else if (colSeparator == ' ')
+                        items = StringArray.wordsAndQuotedPhrases(oneLine).toArray();
+                    else if (colSeparator == '\u0000')
+                        items = new String[]{oneLine.trim()};
+                    else items = String2.split(oneLine, colSeparator);
+                } catch (Exception e) {
+                    warnings.append(String2.WARNING + ": line #" + row + ": " + e.getMessage() + "\n");
+                    continue;
+                }
+                nItems = items.length;
+            }
+
+            //one time things 
+            if (loadPAs == null) {
+                if (expectedNItems < 0)
+                    expectedNItems = nItems;
+
+                //make column names (if not done already) 
+                for (int col = fileColumnNames.size(); col < nItems; col++) 
+                    fileColumnNames.add("Column#" + col);
+
+                //identify the testColumnNumbers (-1 if not in the file)
+                testColumnNumbers = new int[testColumns.length];
+                for (int col = 0; col < testColumns.length; col++) 
+                    testColumnNumbers[col] = fileColumnNames.indexOf(testColumns[col], 0);
+
+                //loadColumnNumbers[outputColumn#] -> sourceColumn# 
+                //  (-1 if a var not in this file)
+                if (loadColumns == null) {
+                    //load all, as Strings
+                    loadColumnNumbers = new int[fileColumnNames.size()];
+                    loadPAs = new PrimitiveArray[fileColumnNames.size()];
+                    for (int col = 0; col < fileColumnNames.size(); col++) {
+                        loadColumnNumbers[col] = col;
+                        loadPAs[col] = new StringArray(); 
+                        addColumn(fileColumnNames.get(col), loadPAs[col]);                         
+                    }
+                } else {
+                    loadColumnNumbers = new int[loadColumns.length];
+                    loadPAs = new PrimitiveArray[loadColumns.length];
+                    for (int col = 0; col < loadColumns.length; col++) {
+                        loadColumnNumbers[col] = fileColumnNames.indexOf(loadColumns[col], 0);
+                        loadPAs[col] = PrimitiveArray.factory(loadTypes[col], 128, false); 
+                        addColumn(loadColumns[col], loadPAs[col]); 
+                    }
+                }
+            }
+
+            //ensure nItems is correct
+            if (nItems == 0)
+                continue; //silent error
+            if (nItems > expectedNItems ||
+                (nItems < expectedNItems && !allowRaggedRightInReadASCII)) { // if allow..., it is noted below once
+                warnings.append(String2.WARNING + ": skipping line #" + row + 
+                    ": unexpected number of items (observed=" + nItems + 
+                       ", expected=" + expectedNItems + "). [a]\n");
+                continue;
+            }
+
+            //do the tests (before anything from this line is stored)
+            boolean ok = true;
+            for (int test = 0; test < testColumnNumbers.length; test++) {
+                int which = testColumnNumbers[test];
+                if (which < 0 || which >= nItems)  //not in this file or this line
+                    continue;
+                double d = items == null?
+                    parser.parseDouble(line, fieldStart[which], fieldEnd[which]) :
+                    String2.parseDouble(items[which]);
+                if (d >= testMin[test] && d <= testMax[test]) { //NaN will fail this test
+                    continue;
+                } else {
+                    ok = false; 
+                    break; 
+                }
+            }
+            if (!ok) 
+                continue;
+
+            //store the data items
+            for (int col = 0; col < loadColumnNumbers.length; col++) {
+                int itemNumber = loadColumnNumbers[col];
+                if (itemNumber < 0) {
+                    //request col is not in the file
+                    parser.append(loadPAs[col], ""); 
+                } else if (itemNumber < nItems) {
+                    if (items == null)
+                         parser.append(loadPAs[col], line, fieldStart[itemNumber], fieldEnd[itemNumber]);
+                    else parser.append(loadPAs[col], items[itemNumber]);
+                } else if (allowRaggedRightInReadASCII) {  
+                    //see readASCII
+                    if (!missingItemNoted) {
+                        warnings.append("NOTE: skipping line #" + row + 
+                            " (and others?): unexpected number of items (observed=" + nItems + 
+                           ", expected=" + expectedNItems + ") starting on this line. [allowRaggedRightInReadASCII=true]\n");
+                        missingItemNoted = true;
+                    }
+                    parser.append(loadPAs[col], ""); //missing value
+                } //else incorrect nItems added to warnings above
+            }
+        }
+
+        if (warnings.length() > 0) 
+            String2.log(WARNING_BAD_LINE_OF_DATA_IN + "readTypedASCII(" + fileName + "):\n" +
+                warnings.toString());
+
+        //no data?
+        if (loadPAs == null)
+            throw new SimpleException(MustBe.THERE_IS_NO_DATA + " (loadColumns not found)");
+
+        if (reallyVerbose) String2.log("  Table.readTypedASCII nFieldsParsedDirectly=" + parser.nFast +
+            " nFieldsParsedAsStrings=" + parser.nStandard);
+    }
+
     /** 
      * Test readASCII with csv file.
      *
@@ -2753,6 +3090,131 @@ public class Table  {
         Test.ensureEqual(results, expected, "results=\n" + results);
     }
 
+    /**
+     * This reads a file with readASCII (as Strings) and converts the 
+     * columns to the loadTypes (as EDDTableFromAsciiFiles used to do).
+     * This is the reference for testing readTypedASCII.
+     */
+    private static Table readASCIIAndConvert(String fileName, 
+        String skipHeaderToRegex, String skipLinesRegex, String colSeparator,
+        String testColumns[], double testMin[], double testMax[],
+        String loadColumns[], PAType loadTypes[]) throws Exception {
+
+        Table table = new Table();
+        table.allowRaggedRightInReadASCII = true;
+        table.readASCII(fileName, String2.ISO_8859_1, 
+            skipHeaderToRegex, skipLinesRegex, 0, 1, colSeparator, 
+            testColumns, testMin, testMax, loadColumns, false);
+        for (int col = 0; col < table.nColumns(); col++) {
+            PrimitiveArray pa = PrimitiveArray.factory(loadTypes[col], table.nRows(), false);
+            pa.append(table.getColumn(col));
+            table.setColumn(col, pa);
+        }
+        return table;
+    }
+
+    /** 
+     * Test readTypedASCII: the results must be the same as 
+     * readASCII followed by converting the columns.
+     *
+     * @throws Exception if trouble
+     */
+    public static void testReadTypedASCII() throws Exception {
+        
+        String2.log("\nTable.testReadTypedASCII");
+        String fileName = String2.unitTestDataDir + "csvAscii.txt";
+        String skipHeaderToRegex = "\\*\\*\\* END OF HEADER.*";
+        String skipLinesRegex = "#.*";
+        String loadColumns[] = {"aString","aChar","aBoolean","aByte","aShort","anInt","aLong","aFloat","aDouble"};
+        PAType loadTypes[] = {PAType.STRING, PAType.STRING, PAType.STRING, PAType.BYTE,
+            PAType.SHORT, PAType.INT, PAType.LONG, PAType.FLOAT, PAType.DOUBLE};
+
+        //csv file with quoted fields, ragged lines, and an unclosed quote
+        Table expected = readASCIIAndConvert(fileName, skipHeaderToRegex, skipLinesRegex, "",
+            null, null, null, loadColumns, loadTypes);
+        Table table = new Table();
+        table.allowRaggedRightInReadASCII = true;
+        table.readTypedASCII(fileName, String2.ISO_8859_1, 
+            skipHeaderToRegex, skipLinesRegex, 0, 1, "", 
+            null, null, null, loadColumns, loadTypes);
+        Test.ensureEqual(table.dataToString(), expected.dataToString(), "");
+        for (int col = 0; col < table.nColumns(); col++) 
+            Test.ensureEqual(table.getColumn(col).elementType(), loadTypes[col], "col=" + col);
+
+        //tests, a subset of columns in a different order, and a column that isn't in the file
+        String subsetColumns[] = {"aDouble","aString","aByte","notInFile"};
+        PAType subsetTypes[] = {PAType.DOUBLE, PAType.STRING, PAType.BYTE, PAType.INT};
+        expected = readASCIIAndConvert(fileName, skipHeaderToRegex, skipLinesRegex, "",
+            new String[]{"aByte"}, new double[]{14}, new double[]{16}, 
+            subsetColumns, subsetTypes);
+        table = new Table();
+        table.allowRaggedRightInReadASCII = true;
+        table.readTypedASCII(fileName, String2.ISO_8859_1, 
+            skipHeaderToRegex, skipLinesRegex, 0, 1, "", 
+            new String[]{"aByte"}, new double[]{14}, new double[]{16}, 
+            subsetColumns, subsetTypes);
+        String results = table.dataToString();
+        Test.ensureEqual(results, expected.dataToString(), "");
+        Test.ensureEqual(results, 
+"aDouble,aString,aByte,notInFile\n" +
+"4.0E200,j,14,\n" +
+"5.0E200,k,15,\n" +
+"6.0E200,l,16,\n", "results=\n" + results);
+
+        //a tab-separated file with \r\n and \r line endings, skipLines, 
+        //unusual numbers, and a line that is longer than the buffer
+        fileName = File2.getSystemTempDirectory() + "testReadTypedASCII.tsv";
+        StringBuilder sb = new StringBuilder();
+        sb.append("a header line\r\n*** END\r\n");
+        sb.append("name\tb\ts\ti\tl\tf\td\r\n");
+        sb.append("#a comment\r\n");
+        String numbers[] = {"0", "-0", "1", "-1", "+5", "127", "128", "-129", "32767", "40000", 
+            "2147483647", "2147483648", "-9223372036854775808", "9223372036854775807", 
+            "99999999999999999999", "1.5", "-2.5", "0.1", "1e3", "1E-3", "1.25e-310", "1e400", 
+            ".5", "5.", "-.5", "1e", "--1", "0x1F", "NaN", "", " 12 ", "1,000", "3.40282347e38",
+            "123456789012345678", "0.30000000000000004", "\\u0041", "12.3456789012345678"};
+        for (int row = 0; row < numbers.length; row++) {
+            String n = numbers[row];
+            sb.append("row" + row + "\t" + n + "\t" + n + "\t" + n + "\t" + n + "\t" + n + "\t" + n + 
+                (row % 3 == 0? "\r" : "\r\n"));
+            if (row == 5) 
+                sb.append("#another comment\n");
+        }
+        sb.append("long" + String2.makeString('x', 100000) + "\t1\t2\t3\t4\t5\t6\r\n");
+        sb.append("ragged\t1\t2\r\n");
+        sb.append("tooMany\t1\t2\t3\t4\t5\t6\t7\r\n");
+        sb.append("last\t7\t7\t7\t7\t7.5\t7.5"); //no final newline
+        File2.delete(fileName);
+        Test.ensureEqual(String2.writeToFile(fileName, sb.toString()), "", "");
+        loadColumns = new String[]{"name","b","s","i","l","f","d"};
+        loadTypes = new PAType[]{PAType.STRING, PAType.BYTE, PAType.SHORT, PAType.INT, 
+            PAType.LONG, PAType.FLOAT, PAType.DOUBLE};
+        expected = readASCIIAndConvert(fileName, "\\*\\*\\* END", "#.*", "\t",
+            null, null, null, loadColumns, loadTypes);
+        table = new Table();
+        table.allowRaggedRightInReadASCII = true;
+        table.readTypedASCII(fileName, String2.ISO_8859_1, 
+            "\\*\\*\\* END", "#.*", 0, 1, "\t", 
+            null, null, null, loadColumns, loadTypes);
+        Test.ensureEqual(table.nRows(), numbers.length + 3, "");
+        Test.ensureEqual(table.dataToString(), expected.dataToString(), "");
+        for (int col = 0; col < table.nColumns(); col++) 
+            Test.ensureEqual(table.getColumn(col).testEquals(expected.getColumn(col)), "", "col=" + col);
+
+        //tests on a column that isn't loaded
+        expected = readASCIIAndConvert(fileName, "\\*\\*\\* END", "#.*", "\t",
+            new String[]{"d", "i"}, new double[]{-1, -1e10}, new double[]{1e10, 1e10}, 
+            new String[]{"name", "f"}, new PAType[]{PAType.STRING, PAType.FLOAT});
+        table = new Table();
+        table.allowRaggedRightInReadASCII = true;
+        table.readTypedASCII(fileName, String2.ISO_8859_1, 
+            "\\*\\*\\* END", "#.*", 0, 1, "\t", 
+            new String[]{"d", "i"}, new double[]{-1, -1e10}, new double[]{1e10, 1e10}, 
+            new String[]{"name", "f"}, new PAType[]{PAType.STRING, PAType.FLOAT});
+        Test.ensureEqual(table.dataToString(), expected.dataToString(), "");
+        File2.delete(fileName);
+    }
+
     /** 
      * Test readASCII with ssv file.
      *
@@ -6370,7 +6832,7 @@ Dataset {
         //get information
         String msg = "  Table.readFlatNc " + fullName; 
         long time = System.currentTimeMillis();
-        NetcdfFile netcdfFile = NcHelper.openFile(fullName);
+        NetcdfFile netcdfFile = NcHelper.fileCache.open(fullName);
         Attributes gridMappingAtts = null;
         try {
             Variable loadVariables[] = NcHelper.findVariables(netcdfFile, loadColumns);
@@ -6406,11 +6868,12 @@ Dataset {
                     " TIME=" + (System.currentTimeMillis() - time) + "ms";
 
         } catch (Throwable t) {
+            NcHelper.fileCache.discard(netcdfFile); //make sure it is closed, not reused
             if (!reallyVerbose) String2.log(msg); 
             throw t;
 
         } finally {
-            netcdfFile.close(); 
+            NcHelper.fileCache.release(netcdfFile); 
             if (reallyVerbose) String2.log(msg);
         }
 
@@ -6432,7 +6895,7 @@ Dataset {
         //get information
         String msg = "  Table.readNcMetadata " + fullName; 
         long time = System.currentTimeMillis();
-        NetcdfFile netcdfFile = NcHelper.openFile(fullName);
+        NetcdfFile netcdfFile = NcHelper.fileCache.open(fullName);
         Attributes gridMappingAtts = null;
         try {
             //fill the table
@@ -6473,11 +6936,12 @@ Dataset {
                     " TIME=" + (System.currentTimeMillis() - time) + "ms";
 
         } catch (Throwable t) {
+            NcHelper.fileCache.discard(netcdfFile); //make sure it is closed, not reused
             if (!reallyVerbose) String2.log(msg); 
             throw t;
 
         } finally {
-            netcdfFile.close(); 
+            NcHelper.fileCache.release(netcdfFile); 
             if (reallyVerbose) String2.log(msg);
         }
     }
@@ -6564,7 +7028,7 @@ Dataset {
         String msg = "  Table.readFlat0Nc " + fullName;
 
         //read the scalar variables
-        NetcdfFile netcdfFile = NcHelper.openFile(fullName);
+        NetcdfFile netcdfFile = NcHelper.fileCache.open(fullName);
         //getGridMappingAtts() handled by lowReadFlatNc above
         int insertAt = 0;
         try {
@@ -6609,11 +7073,12 @@ Dataset {
                 " TIME=" + (System.currentTimeMillis() - time) + "ms";
 
         } catch (Throwable t) {
+            NcHelper.fileCache.discard(netcdfFile); //make sure it is closed, not reused
             if (!reallyVerbose) String2.log(msg); 
             throw t;
 
         } finally {
-            netcdfFile.close();
+            NcHelper.fileCache.release(netcdfFile);
             if (reallyVerbose) String2.log(msg);
         }
     }
@@ -6654,7 +7119,7 @@ Dataset {
         String msg = "  Table.read4DNc " + fullName;
         String errorInMethod = String2.ERROR + " in" + msg;
         //get information
-        NetcdfFile ncFile = NcHelper.openFile(fullName);
+        NetcdfFile ncFile = NcHelper.fileCache.open(fullName);
         Attributes gridMappingAtts = null;
         try {
             Variable loadVariables[] = NcHelper.find4DVariables(ncFile, loadColumns);
@@ -6790,11 +7255,12 @@ Dataset {
                 " TIME=" + (System.currentTimeMillis() - time) + "ms";
 
         } catch (Throwable t) {
+            NcHelper.fileCache.discard(ncFile); //make sure it is closed, not reused
             if (!reallyVerbose) String2.log(msg); 
             throw t;
 
         } finally {
-            ncFile.close(); 
+            NcHelper.fileCache.release(ncFile); 
             if (reallyVerbose) String2.log(msg);
         }
 
@@ -6844,7 +7310,7 @@ Dataset {
         long time = System.currentTimeMillis();
         String errorInMethod = String2.ERROR + " in Table.readNDNc " + fullName + ":\n";
         //get information
-        NetcdfFile ncFile = NcHelper.openFile(fullName);
+        NetcdfFile ncFile = NcHelper.fileCache.open(fullName);
         Attributes gridMappingAtts = null;
         StringArray varsNotFound = new StringArray();
         try {
@@ -7189,11 +7655,12 @@ Dataset {
                 " nCols=" + nColumns() + " time=" + (System.currentTimeMillis() - time) + "ms";
 
         } catch (Throwable t) {
+            NcHelper.fileCache.discard(ncFile); //make sure it is closed, not reused
             if (!reallyVerbose) String2.log(msg); 
             throw t;
 
         } finally {            
-            ncFile.close(); 
+            NcHelper.fileCache.release(ncFile); 
             if (reallyVerbose) String2.log(msg);
         }
     }
@@ -7301,7 +7768,7 @@ Dataset {
         }
 
         //read the file
-        NetcdfFile ncFile = NcHelper.openFile(fullName);
+        NetcdfFile ncFile = NcHelper.fileCache.open(fullName);
         Attributes gridMappingAtts = null;
         try {
 
@@ -8044,11 +8511,12 @@ Dataset {
                 " time=" + (System.currentTimeMillis() - time) + "ms";
 
         } catch (Throwable t) {
+            NcHelper.fileCache.discard(ncFile); //make sure it is closed, not reused
             if (!reallyVerbose) String2.log(msg); 
             throw t;
 
         } finally  {
-            ncFile.close(); 
+            NcHelper.fileCache.release(ncFile); 
             if (debugMode) msg += "\n" + Math2.memoryString();                
             if (reallyVerbose) String2.log(msg);
         }
@@ -26894,10 +27362,10 @@ String2.log(table.dataToString());
     }
 
     /**
-     * This sorts the table by keyColumns (all ascending) then, 
-     * for each block where the nKeyColumns-1 values are constant,
+     * For each group of rows where the nKeyColumns-1 values are constant,
      * this removes all rows except the one with the first/min value and the 
-     * one with the last/max value of the last keyColumn.
+     * one with the last/max value of the last keyColumn,
+     * then sorts the table by keyColumns (all ascending).
      * For example, orderByMax([stationID, time]) would sort by stationID 
      * and time, then for each stationID, remove all rows except the ones 
      * for the first and last time for that stationID.
@@ -26940,82 +27408,52 @@ String2.log(table.dataToString());
         if (nRows == 0)
             return;
 
-        //sort based on keys
-        ascendingSort(keyColumns); 
-
         //minMax
-        //walk through the table, often marking previous and current row to be kept
-        BitSet keep = new BitSet(nRows); //all false
-        keep.set(0); //always
-        keep.set(nRows - 1); //always
-
-        //and note which rows need to be duplicated
-        ByteArray dupMe = (ByteArray)PrimitiveArray.factory(PAType.BYTE, nRows, "0");  //false
-        addColumn("dupMe", dupMe);
-        int nDupMe = 0;
-
-        if (nKeyColumns > 1) {
-            PrimitiveArray keyCols[] = new PrimitiveArray[nKeyColumns - 1];
-            for (int kc = 0; kc < nKeyColumns - 1; kc++)
-                keyCols[kc] = getColumn(keyColumns[kc]); //throws exception if not found
-            int lastDifferentRow = 0;
-            for (int row = 1; row < nRows; row++) { //1 because I'm looking backwards
-
-                //did keyColumns 0 ... n-2 change?
-                //work backwards since last most likely to have changed
-                //-2 since -1 is the one that is changing (e.g., time)
-                for (int kc = nKeyColumns - 2; kc >= 0; kc--) { 
-                    if (keyCols[kc].compare(row - 1, row) != 0) {
-                        keep.set(row - 1);  //something changed, so keep the *previous* row
-                        keep.set(row);      //  and the *current* row
-                        if (lastDifferentRow == row - 1) {
-                            dupMe.set(row - 1, (byte)1); //true
-                            nDupMe++;
-                        }
-                        lastDifferentRow = row;
-                        break;
-                    }
-                }
-            }
-            if (lastDifferentRow == nRows - 1) {
-                dupMe.set(nRows - 1, (byte)1); //true
-                nDupMe++;
-            }
-        } else {
-            if (nRows == 1) {
-                dupMe.set(0, (byte)1); //true
-                nDupMe++;
+        //group the rows via a hash of keyColumns 0 ... n-2 (so there is no need to sort all of the rows)
+        //and, for each group, find the first row with the min value and the last row with the max value
+        //of the last keyColumn (just as a stable sort would have put them)
+        PrimitiveArray keyCols[] = new PrimitiveArray[nKeyColumns - 1];
+        for (int kc = 0; kc < nKeyColumns - 1; kc++)
+            keyCols[kc] = getColumn(keyColumns[kc]); //throws exception if not found
+        PrimitiveArray lastKeyCol = getColumn(lastKeyColumn);
+        GroupByIndex groupByIndex = new GroupByIndex(keyCols);
+        IntArray minRows = new IntArray();
+        IntArray maxRows = new IntArray();
+        for (int row = 0; row < nRows; row++) {
+            int group = groupByIndex.add(keyCols, row);
+            if (group == minRows.size()) {
+                minRows.add(row);
+                maxRows.add(row);
+            } else {
+                if (lastKeyCol.compare(row, minRows.array[group]) < 0)
+                    minRows.array[group] = row;
+                if (lastKeyCol.compare(row, maxRows.array[group]) >= 0)
+                    maxRows.array[group] = row;
             }
         }
-        justKeep(keep);
-        nRows = nRows();
-        removeColumn(nColumns() - 1); //the dupMe column
-
-        //now duplicate the dupMe rows
-        if (nDupMe > 0) {
-            if (debugMode)
-                String2.log(">> nDupMe=" + nDupMe);
 
-            //do columns one at a time to save memory
-            int nCols = nColumns(); //dupMe has been removed
-            for (int col = 0; col < nCols; col++) {
-                PrimitiveArray oldCol = getColumn(col);
-                PrimitiveArray newCol = PrimitiveArray.factory(
-                    oldCol.elementType(), nRows + nDupMe, false); //the elements are not active
-            
-                for (int row = 0; row < nRows; row++) {
-                    newCol.addFromPA(oldCol, row);
-                    if (dupMe.get(row) == 1) 
-                        newCol.addFromPA(oldCol, row);
-                }
-
-                if (reallyVerbose && col == 0) 
-                    Test.ensureEqual(newCol.size(), nRows + nDupMe, "newSize != expectedNewSize");
-                //swap the newCol into place
-                setColumn(col, newCol);            
+        //make the new table with 2 rows (min and max) for each group.
+        //If a group has only one row, it is duplicated.
+        int nGroups = minRows.size();
+        if (debugMode)
+            String2.log(">> nGroups=" + nGroups);
+        int nCols = nColumns();
+        for (int col = 0; col < nCols; col++) { //do columns one at a time to save memory
+            PrimitiveArray oldCol = getColumn(col);
+            PrimitiveArray newCol = PrimitiveArray.factory(
+                oldCol.elementType(), 2 * nGroups, false); //the elements are not active
+            newCol.setMaxIsMV(oldCol.getMaxIsMV());
+            for (int group = 0; group < nGroups; group++) {
+                newCol.addFromPA(oldCol, minRows.array[group]);
+                newCol.addFromPA(oldCol, maxRows.array[group]);
             }
+            //swap the newCol into place
+            setColumn(col, newCol);            
         }
 
+        //sort based on keys (stable, so each min row stays before its max row)
+        ascendingSort(keyColumns); 
+
         //convert back to fake missing values
         if (someConverted)
             temporarilySwitchNaNToFakeMissingValues(keyColumns);
@@ -27654,10 +28092,11 @@ String2.log(table.dataToString());
 
 
     /**
-     * This sorts the table by keyColumns (all ascending) then, 
-     * for each block where the nKeyColumns-1 values are constant,
+     * This groups the rows by the values of the keyColumns then,
+     * for each group,
      * makes just one row with the count of all non-NaN, non-missingValue, non-_FillValue 
      * values of each variable. 
+     * The results are sorted by the keyColumns (all ascending).
      * For example, orderByCount([stationID]) would sort by stationID, 
      * then for each stationID, just return a count of the number
      * of non-NaN values for each other variable.
@@ -27697,45 +28136,35 @@ String2.log(table.dataToString());
             }
         }
 
-        //sort based on keys
-        if (nKeyCols > 0)
-            ascendingSort(keyCols); 
-        //String2.log(dataToString());
-
+        //group the rows via a hash of the key values (so there is no need to sort all of the rows)
+        PrimitiveArray keyPAs[] = new PrimitiveArray[nKeyCols];
+        for (int kc = 0; kc < nKeyCols; kc++) 
+            keyPAs[kc] = columns.get(keyCols[kc]);
+        GroupByIndex groupByIndex = new GroupByIndex(keyPAs);
 
         //make resultPAs for count columns (IntArrays)
         //and set units to "count"
-        PrimitiveArray resultPAs[] = new PrimitiveArray[nCols];
+        IntArray resultPAs[] = new IntArray[nCols];
+        boolean isNumeric[] = new boolean[nCols];
         for (int col = 0; col < nCols; col++) {
             if (!isKeyCol[col]) {
                 resultPAs[col] = new IntArray(32, false);
                 columnAttributes(col).set("units", "count");
+                PrimitiveArray pa = columns.get(col);
+                isNumeric[col] = pa.isIntegerType() || pa.isFloatingPointType(); //so mv's are NaN
             }
         }
 
         //walk through the table
-        int resultsRow = -1;
+        int nGroups = 0;
         BitSet keep = new BitSet(nRows); //all false
         for (int row = 0; row < nRows; row++) { 
 
-            //isNewGroup?
-            boolean isNewGroup = true;
-            if (row > 0) {
-                isNewGroup = false;
-                if (nKeyCols > 0) {
-                    for (int kc = nKeyCols - 1; kc >= 0; kc--) { //count down more likely to find change sooner
-                        if (columns.get(keyCols[kc]).compare(row - 1, row) != 0) {
-                            isNewGroup = true;
-                            break;
-                        }
-                    }
-                }
-            }
-
-            if (isNewGroup) {
-                resultsRow++;
+            int group = groupByIndex.add(keyPAs, row);
+            if (group == nGroups) {
+                //it's a new group: keep this row and add a row to resultsPAs
+                nGroups++;
                 keep.set(row);
-                //add a row to resultsPAs
                 for (int col = 0; col < nCols; col++) {
                     if (!isKeyCol[col]) 
                         resultPAs[col].addInt(0);
@@ -27745,14 +28174,14 @@ String2.log(table.dataToString());
             //increment count?
             for (int col = 0; col < nCols; col++) {
                 //String2.log("row=" + row + " col=" + col + "value=\"" + columns.get(col).getString(row) + "\"");
-                if (!isKeyCol[col] && String2.isSomething(columns.get(col).getString(row))) {
-                    resultPAs[col].setInt(resultsRow, 
-                        resultPAs[col].getInt(resultsRow) + 1);
-                }
+                if (!isKeyCol[col] && 
+                    (isNumeric[col]? !Double.isNaN(columns.get(col).getDouble(row)) :
+                        String2.isSomething(columns.get(col).getString(row)))) 
+                    resultPAs[col].array[group]++;
             }
         }
 
-        //just keep new group 
+        //just keep the first row of each group
         justKeep(keep);
 
         //swap resultPAs into place, and remove any missing_value or _FillValue
@@ -27765,6 +28194,10 @@ String2.log(table.dataToString());
             }
         }
 
+        //sort the groups based on keys
+        if (nKeyCols > 0)
+            ascendingSort(keyCols); 
+
         //convert keyColumns back 
         if (someConverted)
             temporarilySwitchNaNToFakeMissingValues(keyCols);        
@@ -33443,6 +33876,83 @@ expected =
     }
 
 
+    /** 
+     * Compare the speed of readTypedASCII and readASCII (followed by converting 
+     * the columns) with a big synthetic csv file.
+     *
+     * @param nRows the number of rows in the file, e.g., 10000000.
+     *   The file (~47 bytes/row) is made in the temp directory (if it isn't already there).
+     */
+    public static void testReadTypedASCIISpeed(int nRows) throws Exception {
+        String2.log("\n*** Table.testReadTypedASCIISpeed(" + nRows + ")");
+        String fileName = File2.getSystemTempDirectory() + "testReadTypedASCIISpeed" + nRows + ".csv";
+        String loadColumns[] = {"station", "time", "depth", "temperature", "salinity", "flag"};
+        PAType loadTypes[] = {PAType.STRING, PAType.DOUBLE, PAType.SHORT, PAType.FLOAT, PAType.FLOAT, PAType.BYTE};
+        if (!File2.isFile(fileName)) {
+            long time = System.currentTimeMillis();
+            Writer writer = String2.getBufferedOutputStreamWriter88591(
+                new FileOutputStream(fileName + ".temp"));
+            try {
+                writer.write(String2.toCSVString(loadColumns) + "\n");
+                Random random = new Random(1);
+                for (int row = 0; row < nRows; row++) 
+                    writer.write(
+                        "st" + (row / 100000) + "," +
+                        (1.5e9 + row * 60) + "," +
+                        (row % 500) + "," +
+                        String2.genEFormat6(random.nextGaussian() * 5 + 15) + "," +
+                        String2.genEFormat6(random.nextDouble() + 33.5) + "," +
+                        (row % 7) + "\n");
+            } finally {
+                writer.close();
+            }
+            File2.rename(fileName + ".temp", fileName);
+            String2.log("  made " + fileName + " (" + File2.length(fileName) + 
+                " bytes) in " + (System.currentTimeMillis() - time) + "ms");
+        }
+
+        String testColumns[] = {"depth"};
+        double testMin[] = {100};
+        double testMax[] = {149};
+        long readASCIITime[] = new long[2], typedTime[] = new long[2];
+        for (int attempt = 0; attempt < 2; attempt++) {
+            for (int withTests = 0; withTests < 2; withTests++) {
+                Math2.gcAndWait(); //in a test
+                long time = System.currentTimeMillis();
+                Table table1 = readASCIIAndConvert(fileName, "", "", ",",
+                    withTests == 0? null : testColumns, 
+                    withTests == 0? null : testMin, 
+                    withTests == 0? null : testMax, loadColumns, loadTypes);
+                readASCIITime[withTests] = System.currentTimeMillis() - time;
+                int nRows1 = table1.nRows();
+                String results1 = table1.dataToString(3);
+                table1 = null;
+
+                Math2.gcAndWait(); //in a test
+                time = System.currentTimeMillis();
+                Table table2 = new Table();
+                table2.readTypedASCII(fileName, String2.ISO_8859_1, "", "", 0, 1, ",",
+                    withTests == 0? null : testColumns, 
+                    withTests == 0? null : testMin, 
+                    withTests == 0? null : testMax, loadColumns, loadTypes);
+                typedTime[withTests] = System.currentTimeMillis() - time;
+                Test.ensureEqual(table2.nRows(), nRows1, "");
+                Test.ensureEqual(table2.nRows(), withTests == 0? nRows : nRows / 10, "");
+                Test.ensureEqual(table2.dataToString(3), results1, "");
+                table2 = null;
+                String2.log("  attempt#" + attempt + " withTests=" + (withTests == 1) + 
+                    " readASCII+convert=" + readASCIITime[withTests] + "ms" +
+                    " readTypedASCII=" + typedTime[withTests] + "ms" + 
+                    " (" + (typedTime[withTests] == 0? "?" : 
+                        String2.genEFormat6(readASCIITime[withTests] / (double)typedTime[withTests])) + 
+                    "x faster)");
+            }
+        }
+        if (typedTime[0] >= readASCIITime[0] || typedTime[1] >= readASCIITime[1])
+            throw new SimpleException("readTypedASCII wasn't faster than readASCII " +
+                "(but this can happen when the computer is busy).");
+    }
+
     /** Test the speed of readJson */
     public static void testReadJsonSpeed() throws Exception {
 
@@ -34720,6 +35230,7 @@ readAsNcCF?
                     if (test == 39) testUnpack();
 
                     if (test == 40 && doSlowTestsToo) testReadInvalidCRA(); //very slow
+                    if (test == 41) testReadTypedASCII();
 
                     //readNcCF tests
                     if (test == 45) testReadNcCFPoint(false);  //pauseAfterEachTest
@@ -34742,6 +35253,7 @@ readAsNcCF?
 
                     if (test == 60) testReadASCIISpeed();
                     if (test == 61) testBigAscii();
+                    if (test == 58 && doSlowTestsToo) testReadTypedASCIISpeed(10000000); 
                     if (test == 62) testReadJsonSpeed();
                     if (test == 63) testReadNDNcSpeed();
                     if (test == 64) testReadOpendapSequenceSpeed();
@@ -37,20 +37,31 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.FileSystemLoopException;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.TimeUnit;
@@ -140,6 +151,17 @@ public class FileVisitorDNLS extends SimpleFileVisitor<Path> {
     /** ConcurrentHashMap handles multi-threaded access well. */
     public static ConcurrentHashMap<String,Long> pruneCacheDirSize = new ConcurrentHashMap(); /* dirName, bytes */
 
+    /** 
+     * The number of threads that oneStep uses to scan a local directory tree.
+     * 1 (the default) uses Files.walkFileTree in the calling thread.
+     * ERDDAP sets this from &lt;nDirectoryScanThreads&gt; in datasets.xml.
+     */
+    public static volatile int nScanThreads = 1;
+    private static ForkJoinPool scanPool = null; //lazily created by getScanPool()
+
+    /** The maximum number of directory entries that one scan task gets the attributes of. */
+    public static int SCAN_BATCH_SIZE = 256;
+
     /** things set by constructor */
     public String dir;  //with \\ or / separators. With trailing slash (to match).
     private char fromSlash, toSlash;
@@ -188,11 +210,42 @@ public class FileVisitorDNLS extends SimpleFileVisitor<Path> {
         sizePA         = (  LongArray)table.getColumn(SIZE);
     }
 
+    /** 
+     * This constructor (for scanTask) makes a FileVisitorDNLS with the same settings
+     * as the parent, but with its own (empty) table.
+     */
+    private FileVisitorDNLS(FileVisitorDNLS parent) {
+        super();
+
+        dir             = parent.dir;
+        toSlash         = parent.toSlash;
+        fromSlash       = parent.fromSlash;
+        fileNameRegex   = parent.fileNameRegex;
+        fileNamePattern = parent.fileNamePattern;
+        recursive       = parent.recursive;
+        pathRegex       = parent.pathRegex;
+        pathPattern     = parent.pathPattern;
+        directoriesToo  = parent.directoriesToo;
+        table = makeEmptyTable();
+        directoryPA    = (StringArray)table.getColumn(DIRECTORY);
+        namePA         = (StringArray)table.getColumn(NAME);
+        lastModifiedPA = (  LongArray)table.getColumn(LASTMODIFIED);
+        sizePA         = (  LongArray)table.getColumn(SIZE);
+    }
+
+    /** 
+     * This returns the directory name (with this visitor's slashes and a trailing slash) 
+     * that is tested with pathRegex.
+     */
+    private String dirName(Path tDir) {
+        return String2.replaceAll(tDir.toString(), fromSlash, toSlash) + toSlash;
+    }
+
     /** Invoked before entering a directory. */
     public FileVisitResult preVisitDirectory(Path tDir, BasicFileAttributes attrs)
         throws IOException {
 
-        String ttDir = String2.replaceAll(tDir.toString(), fromSlash, toSlash) + toSlash;
+        String ttDir = dirName(tDir);
         if (ttDir.equals(dir)) {
             if (debugMode) String2.log(">> initial dir");
             return FileVisitResult.CONTINUE;
@@ -279,6 +332,239 @@ public class FileVisitorDNLS extends SimpleFileVisitor<Path> {
 
     }
 
+    /** 
+     * This returns a file's attributes, following symbolic links if possible 
+     * (like Files.walkFileTree with FOLLOW_LINKS).
+     */
+    private static BasicFileAttributes readAttributes(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            //e.g., a broken link
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+    }
+
+    /** 
+     * This returns the fork/join pool used by parallel scans of local directories,
+     * with nScanThreads threads. 
+     */
+    private static synchronized ForkJoinPool getScanPool() {
+        int n = Math.max(1, nScanThreads);
+        if (scanPool == null || scanPool.getParallelism() != n) {
+            if (scanPool != null)
+                scanPool.shutdown(); //scans in progress still finish
+            scanPool = new ForkJoinPool(n);
+        }
+        return scanPool;
+    }
+
+    /** 
+     * This is the information shared by all of the scanTasks of one parallel scan. 
+     */
+    private static class ScanJob {
+        final FileVisitorDNLS settings;
+        final ConcurrentLinkedQueue<FileVisitorDNLS> results = new ConcurrentLinkedQueue();
+        volatile boolean stop = false; //set if the scan was interrupted
+
+        ScanJob(FileVisitorDNLS tSettings) {
+            settings = tSettings;
+        }
+    }
+
+    /** 
+     * A directory which is being scanned, and its parent (to detect symbolic link loops). 
+     */
+    private static class ScanAncestor {
+        final Path path;
+        final Object fileKey; //may be null
+        final ScanAncestor parent; //may be null
+
+        ScanAncestor(Path tPath, Object tFileKey, ScanAncestor tParent) {
+            path = tPath;
+            fileKey = tFileKey;
+            parent = tParent;
+        }
+
+        /** This returns true if the directory is this directory or one of its ancestors. */
+        boolean wouldLoop(Path tPath, Object tFileKey) {
+            for (ScanAncestor a = this; a != null; a = a.parent) {
+                if (tFileKey != null && a.fileKey != null) {
+                    if (tFileKey.equals(a.fileKey))
+                        return true;
+                } else {
+                    try {
+                        if (Files.isSameFile(tPath, a.path))
+                            return true;
+                    } catch (Exception e) {
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A fork/join task which scans one local directory (if entries is null)
+     * or a batch of the directory's entries.
+     * It makes a scanTask for each subdirectory, so the whole tree is scanned in parallel.
+     * Each task has its own FileVisitorDNLS with the same settings,
+     * so the rows are made by the same preVisitDirectory, visitFile, and visitFileFailed 
+     * methods that Files.walkFileTree uses.
+     * Entries which can't match fileNameRegex (as a file) or pathRegex (as a directory)
+     * are rejected by their name, without getting their attributes,
+     * so subtrees that don't match pathRegex are never visited.
+     */
+    private static class ScanTask extends RecursiveAction {
+        final ScanJob job;
+        final Path directory;
+        final BasicFileAttributes attrs; //the directory's attributes
+        final List<Path> entries;        //null if the directory hasn't been read yet
+        final ScanAncestor ancestor;     //the directory's parent (may be null)
+
+        ScanTask(ScanJob tJob, Path tDirectory, BasicFileAttributes tAttrs,
+            List<Path> tEntries, ScanAncestor tAncestor) {
+            job = tJob;
+            directory = tDirectory;
+            attrs = tAttrs;
+            entries = tEntries;
+            ancestor = tAncestor;
+        }
+
+        protected void compute() {
+            if (job.stop)
+                return;
+            try {
+                FileVisitorDNLS visitor = new FileVisitorDNLS(job.settings);
+                List<Path> tEntries = entries;
+                if (tEntries == null) {
+                    //read the directory (like Files.walkFileTree)
+                    tEntries = new ArrayList();
+                    boolean opened = false;
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                        opened = true;
+                        for (Path entry : stream)
+                            tEntries.add(entry);
+                    } catch (DirectoryIteratorException e) {
+                        throw e.getCause(); //walkFileTree's postVisitDirectory throws it
+                    } catch (IOException e) {
+                        if (opened) 
+                            throw e;
+                        visitor.visitFileFailed(directory, e); //unable to open the directory
+                        return;
+                    }
+                    if (visitor.preVisitDirectory(directory, attrs) != FileVisitResult.CONTINUE) {
+                        keep(visitor);
+                        return;
+                    }
+
+                    //if lots of entries, get their attributes in batches in parallel
+                    if (tEntries.size() > SCAN_BATCH_SIZE) {
+                        keep(visitor);
+                        ArrayList<ScanTask> batches = new ArrayList();
+                        for (int po = 0; po < tEntries.size(); po += SCAN_BATCH_SIZE)
+                            batches.add(new ScanTask(job, directory, attrs, 
+                                tEntries.subList(po, Math.min(po + SCAN_BATCH_SIZE, tEntries.size())), 
+                                ancestor));
+                        invokeAll(batches);
+                        return;
+                    }
+                }
+
+                //look at the entries
+                ScanAncestor thisDir = new ScanAncestor(directory, attrs.fileKey(), ancestor);
+                boolean dirsMatter = visitor.recursive || visitor.directoriesToo;
+                ArrayList<ScanTask> subdirs = new ArrayList();
+                for (Path entry : tEntries) {
+                    if (job.stop)
+                        return;
+                    String name = entry.getFileName().toString();
+                    boolean maybeFile = visitor.fileNamePattern.matcher(name).matches();
+                    boolean maybeDir = dirsMatter && (visitor.pathPattern == null || 
+                        visitor.pathPattern.matcher(visitor.dirName(entry)).matches());
+                    if (!maybeFile && !maybeDir)
+                        continue; //no need to get its attributes
+
+                    BasicFileAttributes entryAttrs;
+                    try {
+                        entryAttrs = readAttributes(entry);
+                    } catch (IOException e) {
+                        visitor.visitFileFailed(entry, e);
+                        continue;
+                    }
+                    if (entryAttrs.isDirectory()) {
+                        if (!maybeDir) {
+                        } else if (thisDir.wouldLoop(entry, entryAttrs.fileKey())) {
+                            visitor.visitFileFailed(entry, new FileSystemLoopException(entry.toString()));
+                        } else {
+                            subdirs.add(new ScanTask(job, entry, entryAttrs, null, thisDir));
+                        }
+                    } else if (maybeFile) {
+                        visitor.visitFile(entry, entryAttrs);
+                    }
+                }
+                keep(visitor);
+                if (subdirs.size() > 0)
+                    invokeAll(subdirs);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** This keeps the visitor's results (if any). */
+        void keep(FileVisitorDNLS visitor) {
+            if (visitor.directoryPA.size() > 0)
+                job.results.add(visitor);
+        }
+    }
+
+    /**
+     * This scans a local directory tree with a fork/join pool of nScanThreads threads
+     * and puts the results in fv's table (unsorted).
+     * The results are the same as Files.walkFileTree(root, FOLLOW_LINKS, fv).
+     *
+     * @param fv the visitor with the settings. It receives the results.
+     * @param root the starting directory
+     * @throws IOException if trouble (notably, "Too many open files")
+     */
+    private static void parallelScan(FileVisitorDNLS fv, Path root) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = readAttributes(root);
+        } catch (IOException e) {
+            fv.visitFileFailed(root, e);
+            return;
+        }
+        ScanJob job = new ScanJob(fv);
+        Future future = getScanPool().submit(new ScanTask(job, root, attrs, null, null));
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            job.stop = true;
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("FileVisitorDNLS.parallelScan was interrupted.");
+        } catch (ExecutionException e) {
+            job.stop = true;
+            Throwable t = e.getCause();
+            while (t instanceof RuntimeException && t.getCause() != null && 
+                   !(t instanceof UncheckedIOException))
+                t = t.getCause(); //fork/join may wrap the original exception
+            if (t instanceof UncheckedIOException) throw ((UncheckedIOException)t).getCause();
+            if (t instanceof IOException)          throw (IOException)t;
+            if (t instanceof RuntimeException)     throw (RuntimeException)t;
+            if (t instanceof Error)                throw (Error)t;
+            throw new IOException(t.getMessage(), t);
+        }
+
+        //gather the results
+        for (FileVisitorDNLS visitor : job.results) {
+            fv.directoryPA.append(visitor.directoryPA);
+            fv.namePA.append(visitor.namePA);
+            fv.lastModifiedPA.append(visitor.lastModifiedPA);
+            fv.sizePA.append(visitor.sizePA);
+        }
+    }
+
     /** table.dataToString(); */
     public String resultsToString() {
         return table.dataToString();
@@ -612,12 +898,17 @@ public class FileVisitorDNLS extends SimpleFileVisitor<Path> {
         //  http://bugs.java.com/bugdatabase/view_bug.do?bug_id=4237760
         FileVisitorDNLS fv = new FileVisitorDNLS(tDir, tFileNameRegex, tRecursive, 
             tPathRegex, tDirectoriesToo);
-        EnumSet<FileVisitOption> opts = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
-        //2021-02-16 I revised so it throws IOException if "Too many open files"
-        Files.walkFileTree(FileSystems.getDefault().getPath(tDir), 
-            opts,               //follow symbolic links
-            Integer.MAX_VALUE,  //maxDepth
-            fv);
+        Path root = FileSystems.getDefault().getPath(tDir);
+        if (nScanThreads > 1 && Files.isDirectory(root)) {
+            parallelScan(fv, root);
+        } else {
+            EnumSet<FileVisitOption> opts = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
+            //2021-02-16 I revised so it throws IOException if "Too many open files"
+            Files.walkFileTree(root, 
+                opts,               //follow symbolic links
+                Integer.MAX_VALUE,  //maxDepth
+                fv);
+        }
         fv.table.leftToRightSortIgnoreCase(2);
         if (verbose) String2.log("FileVisitorDNLS.oneStep(" + tDir + ") finished successfully. n=" + 
             fv.directoryPA.size() + " time=" +
@@ -3423,6 +3714,113 @@ String2.unitTestDataDir + "fileNames/sub/,jplMURSST20150105090000.png,1.42066570
         Test.ensureEqual(results, expected, "results=\n" + results);
     }
         
+    /**
+     * This makes a directory tree of test files for testParallelScan.
+     *
+     * @param tDir the directory (with trailing slash)
+     * @param nLevels the number of levels of subdirectories below tDir
+     * @param nDirs the number of subdirectories (d0, d1, ...) in each directory
+     * @param nFiles the number of files (f0.nc, f1.txt, ...) in each directory
+     * @return the number of files
+     */
+    static int makeScanTestTree(String tDir, int nLevels, int nDirs, int nFiles) throws Exception {
+        File2.makeDirectory(tDir);
+        int n = 0;
+        for (int f = 0; f < nFiles; f++) {
+            String error = String2.writeToFile(tDir + "f" + f + (f % 2 == 0? ".nc" : ".txt"), 
+                String2.makeString('a', f));
+            if (error.length() > 0)
+                throw new RuntimeException(error);
+            n++;
+        }
+        if (nLevels > 0) 
+            for (int d = 0; d < nDirs; d++) 
+                n += makeScanTestTree(tDir + "d" + d + "/", nLevels - 1, nDirs, nFiles);
+        return n;
+    }
+
+    /**
+     * This tests that parallel scans of local directories (nScanThreads &gt; 1) 
+     * get the same results as Files.walkFileTree (nScanThreads=1).
+     * If doSlowTestsToo, this also compares their speed with a bigger directory tree.
+     */
+    public static void testParallelScan(boolean doSlowTestsToo) throws Throwable {
+        String2.log("\n*** FileVisitorDNLS.testParallelScan()");
+        int oNScanThreads = nScanThreads;
+        int oScanBatchSize = SCAN_BATCH_SIZE;
+        String tDir = File2.getSystemTempDirectory() + "FileVisitorDNLS_scan/";
+        Path loop = FileSystems.getDefault().getPath(tDir + "d1/loop");
+        try {
+            File2.deleteAllFiles(tDir, true, true);
+            int nFiles = makeScanTestTree(tDir, 3, 4, 5);
+            Test.ensureEqual(nFiles, 425, "");
+            //a symbolic link loop: walkFileTree (and parallelScan) report and skip it
+            try {
+                Files.createSymbolicLink(loop, FileSystems.getDefault().getPath(tDir));
+            } catch (Exception e) {
+                String2.log("(unable to make a symbolic link: " + e.toString() + ")");
+            }
+
+            SCAN_BATCH_SIZE = 3; //so batches are tested, too
+            String fileRegexes[] = {".*", ".*\\.nc", "f[12]\\..*", "zz"};
+            String pathRegexes[] = {".*", ".*/d1/.*", ".*_scan/(d[02]/(d1/)?)?", "zz"};
+            int nTests = 0;
+            for (int rec = 0; rec < 2; rec++) {
+                for (int dirsToo = 0; dirsToo < 2; dirsToo++) {
+                    for (int fr = 0; fr < fileRegexes.length; fr++) {
+                        for (int pr = 0; pr < pathRegexes.length; pr++) {
+                            nScanThreads = 1;
+                            Table table1 = oneStep(tDir, fileRegexes[fr], rec == 1, 
+                                pathRegexes[pr], dirsToo == 1);
+                            nScanThreads = 4;
+                            Table table4 = oneStep(tDir, fileRegexes[fr], rec == 1, 
+                                pathRegexes[pr], dirsToo == 1);
+                            String msg = "recursive=" + (rec == 1) + " directoriesToo=" + (dirsToo == 1) + 
+                                " fileRegex=" + fileRegexes[fr] + " pathRegex=" + pathRegexes[pr];
+                            Test.ensureEqual(table4.dataToString(), table1.dataToString(), msg);
+                            if (rec == 1 && dirsToo == 0 && fr == 0 && pr == 0)
+                                Test.ensureEqual(table4.nRows(), nFiles, msg);
+                            nTests++;
+                        }
+                    }
+                }
+            }
+            String2.log("testParallelScan: " + nTests + " comparisons were successful.");
+
+            //benchmark
+            if (doSlowTestsToo) {
+                Files.deleteIfExists(loop);
+                File2.deleteAllFiles(tDir, true, true);
+                nFiles = makeScanTestTree(tDir, 3, 12, 20);
+                SCAN_BATCH_SIZE = oScanBatchSize;
+                int nThreads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+                for (int pr = 0; pr < 2; pr++) {
+                    String tPathRegex = pr == 0? ".*" : ".*_scan/(d[0-5]/(d[0-5]/)?)?";
+                    for (int rep = 0; rep < 3; rep++) {
+                        nScanThreads = 1;
+                        long time1 = System.currentTimeMillis();
+                        Table table1 = oneStep(tDir, ".*\\.nc", true, tPathRegex, false);
+                        time1 = System.currentTimeMillis() - time1;
+                        nScanThreads = nThreads;
+                        long timeN = System.currentTimeMillis();
+                        Table tableN = oneStep(tDir, ".*\\.nc", true, tPathRegex, false);
+                        timeN = System.currentTimeMillis() - timeN;
+                        Test.ensureEqual(tableN.nRows(), table1.nRows(), "");
+                        String2.log("testParallelScan benchmark: nFiles=" + nFiles + 
+                            " pathRegex=" + tPathRegex + " nRows=" + table1.nRows() +
+                            "\n  walkFileTree time=" + time1 + "ms, parallelScan(nScanThreads=" + 
+                            nThreads + ") time=" + timeN + "ms");
+                    }
+                }
+            }
+        } finally {
+            nScanThreads = oNScanThreads;
+            SCAN_BATCH_SIZE = oScanBatchSize;
+            Files.deleteIfExists(loop); //before deleting the files, since the loop would be followed
+            File2.deleteAllFiles(tDir, true, true);
+        }
+    }
+        
     /**
      * This tests following symbolic links / soft links.
      * THIS DOESN'T WORK on Windows, because Java doesn't follow Windows .lnk's.
@@ -3654,7 +4052,7 @@ String2.unitTestDataDir + "fileNames/sub/,jplMURSST20150105090000.png,1.42066570
     public static void test(StringBuilder errorSB, boolean interactive, 
         boolean doSlowTestsToo, int firstTest, int lastTest) {
         if (lastTest < 0)
-            lastTest = interactive? 2 : 11;
+            lastTest = interactive? 2 : 12;
         String msg = "\n^^^ FileVisitorDNLS.test(" + interactive + ") test=";
 
         for (int test = firstTest; test <= lastTest; test++) {
@@ -3680,6 +4078,7 @@ String2.unitTestDataDir + "fileNames/sub/,jplMURSST20150105090000.png,1.42066570
                     if (test ==  9) testOneStepToString();
                     if (test == 10) testPathRegex();
                     if (test == 11) testReduceDnlsTableToOneDir();
+                    if (test == 12) testParallelScan(doSlowTestsToo);
                    
                     //testSymbolicLinks(); //THIS TEST DOESN'T WORK on Windows, but links are followed on Linux
 
@@ -40,6 +40,7 @@ public class SimpleXMLReader {
     private String endWhiteSpace = "";
     private StringBuilder tagBuffer = new StringBuilder();
     private long lineNumber = 1, tagNumber = 0;
+    private StringBuilder recording = null; //null unless startRecording() was called
 
     /**
      * This constructor ensures that the first tag starts with "&lt;?xml " and 
@@ -331,13 +332,13 @@ public class SimpleXMLReader {
                 tagBuffer.setLength(0); //must be inside the do loop
 
                 //read 'content' to start of tag "<"
-                int iCh = reader.read(); 
+                int iCh = read(); 
                 if (iCh < 0) throw new Exception("end of file"); 
                 else if (iCh == 10) lineNumber++;
                 char ch = (char)iCh;
                 while (ch != '<') {
                     if (ch != '\r') contentBuffer.append(ch);
-                    iCh = reader.read(); 
+                    iCh = read(); 
                     if (iCh < 0) throw new Exception("end of file");
                     else if (iCh == 10) lineNumber++;
                     ch = (char)iCh;
@@ -346,13 +347,13 @@ public class SimpleXMLReader {
                 //read to end of tag ">", or end of comment tag "-->", or end of cdata <![CDATA[  ]]> 
                 boolean done = false;
                 while (!done) {
-                    iCh = reader.read(); 
+                    iCh = read(); 
                     if (iCh < 0) throw new Exception("end of file");
                     else if (iCh == 10) lineNumber++;
                     ch = (char)iCh;
                     while (ch != '>') {
                         if (ch != '\r') tagBuffer.append(ch);
-                        iCh = reader.read(); 
+                        iCh = read(); 
                         if (iCh < 0) throw new Exception("end of file"); 
                         else if (iCh == 10) lineNumber++;
                         ch = (char)iCh;
@@ -534,6 +535,46 @@ public class SimpleXMLReader {
         content = XML.decodeEntities(contentBuffer.toString());
     }
 
+    /**
+     * This reads the next char from the reader and, if recording, 
+     * appends it to the recording.
+     *
+     * @return the char (or -1 if end of file)
+     */
+    private int read() throws Exception {
+        int iCh = reader.read();
+        if (recording != null && iCh >= 0)
+            recording.append((char)iCh);
+        return iCh;
+    }
+
+    /**
+     * This starts recording the raw xml (not decoded, comments and all) 
+     * starting with the most recently read tag
+     * (e.g., call this right after reading a &lt;dataset&gt; tag).
+     * The recorded tag is on one line, so that 
+     * the following text has the same line numbers as the source xml,
+     * relative to the tag's line.
+     */
+    public void startRecording() {
+        recording = new StringBuilder();
+        recording.append('<');
+        recording.append(tagBuffer);
+        String2.replaceAll(recording, '\n', ' ');
+        recording.append(itsOwnEndTag? "/>" : ">");
+    }
+
+    /**
+     * This stops recording and returns the raw xml read since startRecording().
+     *
+     * @return the raw xml read since startRecording() (or "" if not recording).
+     */
+    public String stopRecording() {
+        String s = recording == null? "" : recording.toString();
+        recording = null;
+        return s;
+    }
+
     /**
      * This skips efficiently until the stackSize is toStackSize.
      * E.g., call this after an opening tag is read in order to skip efficiently 
@@ -923,6 +964,33 @@ expected =
         Test.ensureEqual(xmlReader.attributeValue("attr"), "valr", "b");
         xmlReader.close();
 
+        //startRecording() and stopRecording()
+        String2.log("test startRecording()");
+        xmlReader = new SimpleXMLReader(new ByteArrayInputStream(String2.toByteArray(
+            "<?xml version=\"1.0\" encoding=\"ISO-8859-1\" ?>\n" +
+            "<erddapDatasets>\n" +
+            "<dataset type=\"a\"\n  datasetID=\"b\">\n" +
+            "  <sourceUrl>http://x/griddap/c&amp;d</sourceUrl> <!-- note -->\n" +
+            "</dataset>\n" +
+            "<dataset type=\"e\" datasetID=\"f\"/>\n" +
+            "</erddapDatasets>\n")), "erddapDatasets");
+        xmlReader.nextTag();
+        Test.ensureEqual(xmlReader.allTags(), "<erddapDatasets><dataset>", "");
+        Test.ensureEqual(xmlReader.lineNumber(), 4, "");
+        xmlReader.startRecording();
+        xmlReader.skipToStackSize(xmlReader.stackSize());
+        Test.ensureEqual(xmlReader.stopRecording(), 
+            "<dataset type=\"a\"   datasetID=\"b\">\n" +
+            "  <sourceUrl>http://x/griddap/c&amp;d</sourceUrl> <!-- note -->\n" +
+            "</dataset>", "");
+        xmlReader.nextTag();
+        xmlReader.startRecording();
+        xmlReader.nextTag();
+        Test.ensureEqual(xmlReader.stopRecording(), "<dataset type=\"e\" datasetID=\"f\"/>", "");
+        Test.ensureEqual(xmlReader.allTags(), "<erddapDatasets></dataset>", "");
+        Test.ensureEqual(xmlReader.stopRecording(), "", "");
+        xmlReader.close();
+
         //readDocBookAsPlainText
 testXml = 
 "<?xml version=\"1.0\" encoding=\"ISO-8859-1\" ?>\n" +
@@ -51,6 +51,7 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -193,6 +194,12 @@ public class Erddap extends HttpServlet {
      */
     public ConcurrentHashMap<String,EDDGrid>  gridDatasetHashMap  = new ConcurrentHashMap(16, 0.75f, 4); 
     public ConcurrentHashMap<String,EDDTable> tableDatasetHashMap = new ConcurrentHashMap(16, 0.75f, 4); 
+    /** The index of the datasets' searchBytes for the original searchEngine. 
+     * LoadDatasets keeps it up-to-date. */
+    public OriginalSearchIndex originalSearchIndex = new OriginalSearchIndex();
+    /** The index of the datasets' lon/lat/time extents for Advanced Search 
+     * (remade as needed by datasetExtentCandidates). */
+    protected volatile DatasetExtentIndex datasetExtentIndex = null;
     /** The RSS info: key=datasetId, value=utf8 byte[] of rss xml */
     public ConcurrentHashMap<String,byte[]> rssHashMap  = new ConcurrentHashMap(16, 0.75f, 4); 
     public ConcurrentHashMap<String,int[]> failedLogins = new ConcurrentHashMap(16, 0.75f, 4); 
@@ -4344,8 +4351,8 @@ writer.write(
             //give the dataset the opportunity to update (DAP)
             dataset.update();
 
-            //respond to the request
-            dataset.respondToDapQuery(request, response,
+            //respond to the request (reusing the cached response, if possible)
+            ResponseCache.respondToDapQuery(dataset, request, response,
                 ipAddress, loggedInAs, requestUrl, userDapQuery, 
                 outputStreamSource, 
                 cacheDir, fileName, fileTypeName);            
@@ -5878,6 +5885,12 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
             return;
         }
 
+        if (endEnd.startsWith(EDD.WMS_TILES + "/")) {
+            doWmsTile(request, response, loggedInAs, eddGrid, 
+                endEnd.substring(EDD.WMS_TILES.length() + 1), userQuery);
+            return;
+        }
+
         //error
         throw new SimpleException(EDStatic.queryError +
             MessageFormat.format(EDStatic.queryErrorInvalid, "endEnd=" + String2.toJson(endEnd)));
@@ -6344,6 +6357,16 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
                 "  In practice, ERDDAP's WMS tries to be as lenient as possible when processing GetMap\n" +
                 "  requests, since many current clients don't follow the specification. However, if you\n" +
                 "  are forming GetMap URLs, we encourage you to try to follow the specification.\n" +
+                "<li><strong>Tiles:</strong> In addition to GetMap requests, each dataset offers 256x256 pixel\n" +
+                "  .png map tiles on a fixed grid (like WMTS's WorldCRS84Quad) via\n" +
+                "  <br><kbd>" + tErddapUrl + "/wms/<i>datasetID</i>/" + EDD.WMS_TILES + 
+                    "/<i>layer</i>/<i>z</i>/<i>x</i>/<i>y</i>.png?time=<i>time</i></kbd>\n" +
+                "  <br>where <i>layer</i> is a variable name or a non-data layer (e.g., Coastlines),\n" +
+                "  z is the zoom level (0 - " + EDD.WMS_TILE_MAX_ZOOM + "), and at zoom level z there are 2^(z+1) columns (x)\n" +
+                "  and 2^z rows (y, 0 is the northernmost row) of tiles, each 180/2^z degrees wide and high.\n" +
+                "  Longitude starts at -180 (or at 0 for datasets with longitude values 0 to 360).\n" +
+                "  The optional time=, elevation=, dim_<i>name</i>=, transparent=, and bgcolor= are as for GetMap.\n" +
+                "  Since tiles are reused for all clients, they are usually much faster than GetMap requests.\n" +
                 "<li><strong>Why are there separate WMS servers for each dataset?</strong> Because the GetCapabilities\n" +
                 "  document lists all values of all dimensions for each dataset, the information for each\n" +
                 "  dataset can be voluminous (easily 300 KB). If all the datasets (currently ~300 at the)\n" +
@@ -6749,198 +6772,11 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
             
 
             //*** params are basically ok; try to make the map
-            //make the image
-            BufferedImage bufferedImage = new BufferedImage(width, height, 
-                BufferedImage.TYPE_INT_ARGB); //I need opacity "A"
-            Graphics g = bufferedImage.getGraphics(); 
-            Graphics2D g2 = (Graphics2D)g;
             Color bgColor = new Color(0xFF000000 | bgColori); //0xFF000000 makes it opaque
-            g.setColor(bgColor);    
-            g.fillRect(0, 0, width, height);  
-
-            //add the layers
-            String roles[] = EDStatic.getRoles(loggedInAs);
-            LAYER:
-            for (int layeri = 0; layeri < layers.length; layeri++) {
-
-                //***deal with non-data layers
-                if (layers[layeri].equals(""))
-                    continue; 
-                if (layers[layeri].equals("Land") || 
-                    layers[layeri].equals("LandMask") || 
-                    layers[layeri].equals("Coastlines") || 
-                    layers[layeri].equals("LakesAndRivers") || 
-                    layers[layeri].equals("Nations") ||
-                    layers[layeri].equals("States")) {
-                    SgtMap.makeCleanMap(minx, maxx, miny, maxy, 
-                        false,
-                        null, 1, 1, 0, null,
-                        layers[layeri].equals("Land") || 
-                        layers[layeri].equals("LandMask"), //no need to draw it twice; no distinction here
-                        layers[layeri].equals("Coastlines"), 
-                        layers[layeri].equals("LakesAndRivers")? 
-                            SgtMap.STROKE_LAKES_AND_RIVERS : //stroke (not fill) so, e.g., Great Lakes temp data not obscured by lakeColor
-                            SgtMap.NO_LAKES_AND_RIVERS,
-                        layers[layeri].equals("Nations"), 
-                        layers[layeri].equals("States"),
-                        g2, width, height,
-                        0, 0, width, height);  
-                    //String2.log("WMS layeri="+ layeri + " request was for a non-data layer=" + layers[layeri]);
-                    continue;
-                }
-
-                //*** deal with grid data
-                int spo = layers[layeri].indexOf(EDD.WMS_SEPARATOR);
-                if (spo <= 0 || spo >= layers[layeri].length() - 1)
-                    throw new SimpleException(EDStatic.queryError + "LAYER=" + layers[layeri] + 
-                        " is invalid (invalid separator position).");
-                String datasetID = layers[layeri].substring(0, spo);
-                String destVar = layers[layeri].substring(spo + 1);
-                EDDGrid eddGrid = gridDatasetHashMap.get(datasetID);
-                if (eddGrid == null)
-                    throw new SimpleException(EDStatic.queryError + "LAYER=" + layers[layeri] + 
-                        " is invalid (dataset not found).");
-                if (!eddGrid.isAccessibleTo(roles) &&
-                    !eddGrid.graphsAccessibleToPublic()) {
-                    //WMS: all requests are graphics requests
-                    //listPrivateDatasets doesn't apply
-                    EDStatic.sendHttpUnauthorizedError(loggedInAs, response, datasetID,
-                        false);
-                    return;
-                }
-                if (eddGrid.accessibleViaWMS().length() > 0)
-                    throw new SimpleException(EDStatic.queryError + "LAYER=" + layers[layeri] + 
-                        " is invalid (not accessible via WMS).");
-                int dvi = String2.indexOf(eddGrid.dataVariableDestinationNames(), destVar);
-                if (dvi < 0)
-                    throw new SimpleException(EDStatic.queryError + "LAYER=" + layers[layeri] + 
-                        " is invalid (variable not found).");
-                EDV tDataVariable = eddGrid.dataVariables()[dvi];
-                if (!tDataVariable.hasColorBarMinMax())
-                    throw new SimpleException(EDStatic.queryError + "LAYER=" + layers[layeri] + 
-                        " is invalid (variable doesn't have valid colorBarMinimum/Maximum).");
-
-                //style  (currently just the default)
-                if (!styles[layeri].equals("") && 
-                    !styles[layeri].toLowerCase().equals("default")) { //nonstandard?  but allow it
-                    throw new SimpleException(EDStatic.queryError + "for LAYER=" + layers[layeri] + 
-                        ", STYLE=" + styles[layeri] + " is invalid (must be \"\").");
-                }
-
-                //get other dimension info
-                EDVGridAxis ava[] = eddGrid.axisVariables();
-                StringBuilder tQuery = new StringBuilder(destVar);
-                for (int avi = 0; avi < ava.length; avi++) {
-                    EDVGridAxis av = ava[avi];
-                    if (avi == eddGrid.lonIndex()) {
-                        if (maxx <= av.destinationMinDouble() ||
-                            minx >= av.destinationMaxDouble()) {
-                            if (reallyVerbose) String2.log("  layer=" + layeri + 
-                                " rejected because request is out of lon range.");
-                            continue LAYER;
-                        }
-                        int first = av.destinationToClosestIndex(minx);
-                        int last = av.destinationToClosestIndex(maxx);
-                        if (first > last) {int ti = first; first = last; last = ti;}
-                        int stride = DataHelper.findStride(last - first + 1, width);
-                        tQuery.append("[" + first + ":" + stride + ":" + last + "]");
-                        continue;
-                    }
-
-                    if (avi == eddGrid.latIndex()) {
-                        if (maxy <= av.destinationMinDouble() ||
-                            miny >= av.destinationMaxDouble()) {
-                            if (reallyVerbose) String2.log("  layer=" + layeri + 
-                                " rejected because request is out of lat range.");
-                            continue LAYER;
-                        }
-                        int first = av.destinationToClosestIndex(miny);
-                        int last = av.destinationToClosestIndex(maxy);
-                        if (first > last) {int ti = first; first = last; last = ti;}
-                        int stride = DataHelper.findStride(last - first + 1, height);
-                        tQuery.append("[" + first + ":" + stride + ":" + last + "]");
-                        continue;
-                    }
-
-                    //all other axes
-                    String tAvName = 
-                        avi == eddGrid.altIndex()? "elevation" :
-                        avi == eddGrid.depthIndex()? "elevation" :  //convert depth to elevation
-                        avi == eddGrid.timeIndex()? "time" : 
-                        "dim_" + ava[avi].destinationName().toLowerCase(); //make it case-insensitive for queryMap.get
-                    String tValueS = queryMap.get(tAvName);
-                    if (tValueS == null || 
-                        (avi == eddGrid.timeIndex() && tValueS.toLowerCase().equals("current")))
-                        //default is always the last value
-                        tQuery.append("[" + (ava[avi].sourceValues().size() - 1) + "]");
-                    else {
-                        double tValueD = av.destinationToDouble(tValueS); //needed in particular for iso time -> epoch seconds
-                        if (avi == eddGrid.depthIndex())
-                            tValueD = -tValueD;
-                        if (Double.isNaN(tValueD) ||
-                            tValueD < av.destinationCoarseMin() ||
-                            tValueD > av.destinationCoarseMax()) {
-                            if (reallyVerbose) String2.log("  layer=" + layeri + 
-                                " rejected because tValueD=" + tValueD + 
-                                " for " + tAvName);
-                            continue LAYER;
-                        }
-                        int first = av.destinationToClosestIndex(tValueD);
-                        tQuery.append("[" + first + "]");
-                    }
-                }
-
-                //get the data
-                GridDataAccessor gda = new GridDataAccessor(
-                    eddGrid, 
-                    "/" + EDStatic.warName + "/griddap/" + datasetID + ".dods", tQuery.toString(), 
-                    false, //Grid needs column-major order
-                    true); //convertToNaN
-                long requestNL = gda.totalIndex().size();
-                Math2.ensureArraySizeOkay(requestNL, "doWmsGetMap");
-                int nBytesPerElement = 8;
-                int requestN = (int)requestNL; //safe since checked by ensureArraySizeOkay above
-                Math2.ensureMemoryAvailable(requestNL * nBytesPerElement, "doWmsGetMap"); 
-                Grid grid = new Grid();
-                grid.data = new double[requestN];
-                int po = 0;
-                while (gda.increment()) 
-                    grid.data[po++] = gda.getDataValueAsDouble(0);
-                grid.lon = gda.axisValues(eddGrid.lonIndex()).toDoubleArray();
-                grid.lat = gda.axisValues(eddGrid.latIndex()).toDoubleArray(); 
-                gda = null; //free up memory if possible
-
-                //make the palette
-                //I checked hasColorBarMinMax above.
-                //Note that EDV checks validity of values.
-                double minData = tDataVariable.combinedAttributes().getDouble("colorBarMinimum"); 
-                double maxData = tDataVariable.combinedAttributes().getDouble("colorBarMaximum"); 
-                String palette = tDataVariable.combinedAttributes().getString("colorBarPalette"); 
-                if (String2.indexOf(EDStatic.palettes, palette) < 0)
-                    palette = Math2.almostEqual(3, -minData, maxData)? "BlueWhiteRed" : "Rainbow"; 
-                int nSections = tDataVariable.combinedAttributes().getInt("colorBarNSections"); 
-                if (nSections > 100)
-                    nSections = -1;
-                boolean paletteContinuous = String2.parseBoolean( //defaults to true
-                    tDataVariable.combinedAttributes().getString("colorBarContinuous")); 
-                String scale = tDataVariable.combinedAttributes().getString("colorBarScale"); 
-                if (String2.indexOf(EDV.VALID_SCALES, scale) < 0)
-                    scale = "Linear";
-                String cptFullName = CompoundColorMap.makeCPT(EDStatic.fullPaletteDirectory, 
-                    palette, scale, minData, maxData, nSections, paletteContinuous, 
-                    EDStatic.fullCptCacheDirectory);
-
-                //draw the data on the map
-                //for now, just cartesian  -- BEWARE: it may be stretched!
-                SgtMap.makeCleanMap( 
-                    minx, maxx, miny, maxy, 
-                    false,
-                    grid, 1, 1, 0, cptFullName, 
-                    false, false, SgtMap.NO_LAKES_AND_RIVERS, false, false,
-                    g2, width, height,
-                    0, 0, width, height); 
-
-            }
+            BufferedImage bufferedImage = makeWmsImage(response, loggedInAs, queryMap,
+                layers, styles, minx, maxx, miny, maxy, width, height, bgColor);
+            if (bufferedImage == null)
+                return; //an error was sent
 
             //save image as file in cache dir
             //(It saves as temp file, then renames if ok.)
@@ -7031,6 +6867,425 @@ Spec questions? Ask Jeff DLb (author of WMS spec!): Jeff.deLaBeaujardiere@noaa.g
 
     }
 
+    /**
+     * Respond to a request for a WMS tile, 
+     * /wms/<i>datasetID</i>/tiles/<i>layer</i>/<i>z</i>/<i>x</i>/<i>y</i>.png ,
+     * where layer is one of the dataset's dataVariable names or a 
+     * non-data layer (e.g., Coastlines).
+     * Unlike GetMap requests (which can have any BBOX), tiles are on a fixed grid,
+     * so the tiles can be reused for all clients (see WmsTileCache).
+     *
+     * <p>The tile grid is like WMTS's WorldCRS84Quad (EPSG:4326):
+     * at zoom level z, there are 2^(z+1) columns (x) and 2^z rows (y, 0 at the top (north))
+     * of 256x256 pixel tiles, each 180/2^z degrees wide and high.
+     * Longitude starts at -180, or at 0 if the dataset's longitude values are 0 to 360.
+     *
+     * <p>The query may have time=, elevation=, and dim_<i>name</i>= 
+     * (as for GetMap, default=the last value), and transparent= and bgcolor=.
+     *
+     * @param loggedInAs  the name of the logged in user (or null if not logged in)
+     * @param eddGrid the dataset (the caller has checked that the user has access)
+     * @param tilePath e.g., sst/3/10/2.png
+     * @param userQuery post '?', still percentEncoded, may be null.
+     */
+    public void doWmsTile(HttpServletRequest request, HttpServletResponse response,
+        String loggedInAs, EDDGrid eddGrid, String tilePath, String userQuery) throws Throwable {
+
+        String tDatasetID = eddGrid.datasetID();
+        EDStatic.tally.add("WMS doWmsTile (since last daily report)", tDatasetID);
+        EDStatic.tally.add("WMS doWmsTile (since startup)", tDatasetID);
+
+        //parse tilePath
+        String parts[] = String2.split(tilePath, '/');
+        if (parts.length != 4 || !parts[3].endsWith(".png"))
+            throw new SimpleException(EDStatic.queryError + 
+                "a WMS tile request must be " + EDD.WMS_TILES + "/layer/z/x/y.png .");
+        String layer = parts[0];
+        int z = String2.parseInt(parts[1]);
+        int x = String2.parseInt(parts[2]);
+        int y = String2.parseInt(parts[3].substring(0, parts[3].length() - 4));
+        if (z < 0 || z > EDD.WMS_TILE_MAX_ZOOM)
+            throw new SimpleException(EDStatic.queryError + 
+                "z=" + parts[1] + " must be between 0 and " + EDD.WMS_TILE_MAX_ZOOM + ".");
+        if (x < 0 || x >= (2 << z))
+            throw new SimpleException(EDStatic.queryError + 
+                "x=" + parts[2] + " must be between 0 and " + ((2 << z) - 1) + ".");
+        if (y < 0 || y >= (1 << z))
+            throw new SimpleException(EDStatic.queryError + 
+                "y=" + parts[3] + " must be between 0 and " + ((1 << z) - 1) + ".");
+
+        //layer
+        boolean isNonDataLayer = 
+            layer.equals("Land") || 
+            layer.equals("LandMask") || 
+            layer.equals("Coastlines") || 
+            layer.equals("LakesAndRivers") || 
+            layer.equals("Nations") ||
+            layer.equals("States");
+        int lonIndex = eddGrid.lonIndex();
+        int latIndex = eddGrid.latIndex();
+        if (lonIndex < 0 || latIndex < 0 || eddGrid.accessibleViaWMS().length() > 0)
+            throw new SimpleException(EDStatic.queryError + 
+                "datasetID=" + tDatasetID + " isn't accessible via WMS.");
+        if (!isNonDataLayer &&
+            String2.indexOf(eddGrid.dataVariableDestinationNames(), layer) < 0)
+            throw new SimpleException(EDStatic.queryError + "layer=" + layer + 
+                " is invalid (it must be a variable name or a non-data layer).");
+        if (layer.equals("LandMask"))
+            layer = "Land"; //not distinguished when drawn
+
+        //the tile's bounding box
+        final double bbox[] = wmsTileBBox(wmsTileLonOrigin(eddGrid), z, x, y);
+
+        //other settings
+        final HashMap<String, String> queryMap = EDD.userQueryHashMap(userQuery, true); //true=names toLowerCase
+        String tTransparent = queryMap.get("transparent"); 
+        String tBgColor     = queryMap.get("bgcolor");
+        final boolean transparent = tTransparent == null? false : 
+            String2.parseBoolean(tTransparent);  //e.g., "false"
+        int bgColori = tBgColor == null || tBgColor.length() != 8 || !tBgColor.startsWith("0x")? 
+            0xFFFFFF :
+            String2.parseInt(tBgColor); //e.g., "0xFFFFFF"
+        if (bgColori == Integer.MAX_VALUE)
+            bgColori = 0xFFFFFF;
+        final Color bgColor = new Color(0xFF000000 | bgColori); //0xFF000000 makes it opaque
+
+        //the key identifies the image
+        String key = wmsTileKey(eddGrid, layer, isNonDataLayer, z, x, y, 
+            transparent, bgColori, queryMap);
+        String tileDatasetID = "";
+        String version = "";
+        if (!isNonDataLayer) {
+            tileDatasetID = tDatasetID;
+            version = eddGrid.creationTimeMillis() + "_" + eddGrid.lastChangeMillis();
+        }
+
+        //get the tile from the WmsTileCache or make it
+        final String finalLoggedInAs = loggedInAs;
+        final HttpServletResponse finalResponse = response;
+        final String layers[] = {isNonDataLayer? layer : tDatasetID + EDD.WMS_SEPARATOR + layer};
+        byte bytes[] = WmsTileCache.getTile(key, tileDatasetID, version,
+            new WmsTileCache.Maker() {
+                public byte[] make() throws Throwable {
+                    BufferedImage bufferedImage = makeWmsImage(finalResponse, finalLoggedInAs, 
+                        queryMap, layers, new String[]{""}, 
+                        bbox[0], bbox[1], bbox[2], bbox[3], 
+                        EDD.WMS_TILE_SIZE, EDD.WMS_TILE_SIZE, bgColor);
+                    if (bufferedImage == null)
+                        throw new SimpleException(EDStatic.queryError + 
+                            "unable to make the tile.");
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                    SgtUtil.saveAsTransparentPng(bufferedImage, 
+                        transparent? bgColor : null, baos); 
+                    return baos.toByteArray();
+                }
+            });
+
+        //send the tile to the client
+        String fileName = tDatasetID + "_" + String2.md5Hex12(key);
+        OutputStreamSource outputStreamSource = new OutputStreamFromHttpResponse(
+            request, response, fileName, ".png", ".png");
+        OutputStream outputStream = outputStreamSource.outputStream("", bytes.length);
+        try {
+            outputStream.write(bytes);
+            outputStream.flush();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * This returns the longitude of the west edge of WMS tile column x=0 for a dataset:
+     * 0 if the dataset's longitude values are 0 to 360, else -180.
+     *
+     * @param eddGrid a dataset with a longitude axis
+     */
+    protected static double wmsTileLonOrigin(EDDGrid eddGrid) {
+        return eddGrid.axisVariables()[eddGrid.lonIndex()].destinationMaxDouble() > 180? 0 : -180;
+    }
+
+    /**
+     * This returns the bounding box of a WMS tile (see doWmsTile).
+     *
+     * @param lonOrigin from wmsTileLonOrigin
+     * @return {minx, maxx, miny, maxy}
+     */
+    protected static double[] wmsTileBBox(double lonOrigin, int z, int x, int y) {
+        double span = 180.0 / (1 << z);
+        double minx = lonOrigin + x * span;
+        double maxy = 90 - y * span;
+        return new double[]{minx, minx + span, maxy - span, maxy};
+    }
+
+    /**
+     * This returns the WmsTileCache key of a WMS tile (see doWmsTile).
+     * Tile column x's longitudes depend on the dataset's lonOrigin,
+     * so the key includes it. Otherwise, datasets with different longitude
+     * ranges would share (wrong) tiles for the non-data layers (e.g., Coastlines),
+     * which aren't specific to a dataset.
+     * For data layers, the other axes' values are converted to indices, 
+     * so different ways of specifying the same value share a tile.
+     *
+     * @param eddGrid the dataset
+     * @param layer a dataVariable name or a non-data layer (e.g., Coastlines)
+     * @param queryMap has name=value from the url query string.
+     *    names are toLowerCase. values are original values.
+     */
+    protected static String wmsTileKey(EDDGrid eddGrid, String layer, boolean isNonDataLayer,
+        int z, int x, int y, boolean transparent, int bgColori, 
+        HashMap<String, String> queryMap) {
+
+        StringBuilder key = new StringBuilder(layer + "/" + z + "/" + x + "/" + y + 
+            " lon0=" + Math2.roundToInt(wmsTileLonOrigin(eddGrid)) +
+            " t=" + transparent + " bg=" + Integer.toHexString(bgColori));
+        if (!isNonDataLayer) {
+            key.insert(0, eddGrid.datasetID() + EDD.WMS_SEPARATOR);
+            int lonIndex = eddGrid.lonIndex();
+            int latIndex = eddGrid.latIndex();
+            for (int avi = 0; avi < eddGrid.axisVariables().length; avi++) {
+                if (avi != lonIndex && avi != latIndex)
+                    key.append(" " + avi + "=" + wmsAxisIndex(eddGrid, avi, queryMap));
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * This draws the layers of a WMS GetMap request (or a WMS tile) on a new image.
+     * The parameters must have already been validated.
+     *
+     * @param response  used to send an error if the user isn't authorized to see a layer
+     * @param loggedInAs  the name of the logged in user (or null if not logged in)
+     * @param queryMap has name=value from the url query string.
+     *    names are toLowerCase. values are original values.
+     * @param layers the layer names, e.g., "datasetID:varName" or "Coastlines"
+     * @param styles the styles (parallels layers)
+     * @param minx the minimum longitude of the map
+     * @param maxx the maximum longitude of the map
+     * @param miny the minimum latitude of the map
+     * @param maxy the maximum latitude of the map
+     * @param width the width of the image, in pixels
+     * @param height the height of the image, in pixels
+     * @param bgColor the (opaque) background color
+     * @return the image, or null if an error was sent (so the caller should just return)
+     * @throws Throwable if trouble
+     */
+    protected BufferedImage makeWmsImage(HttpServletResponse response, String loggedInAs, 
+        HashMap<String, String> queryMap, String layers[], String styles[],
+        double minx, double maxx, double miny, double maxy, 
+        int width, int height, Color bgColor) throws Throwable {
+
+        //make the image
+        BufferedImage bufferedImage = new BufferedImage(width, height, 
+            BufferedImage.TYPE_INT_ARGB); //I need opacity "A"
+        Graphics g = bufferedImage.getGraphics(); 
+        Graphics2D g2 = (Graphics2D)g;
+        g.setColor(bgColor);    
+        g.fillRect(0, 0, width, height);  
+
+        //add the layers
+        String roles[] = EDStatic.getRoles(loggedInAs);
+        LAYER:
+        for (int layeri = 0; layeri < layers.length; layeri++) {
+
+            //***deal with non-data layers
+            if (layers[layeri].equals(""))
+                continue; 
+            if (layers[layeri].equals("Land") || 
+                layers[layeri].equals("LandMask") || 
+                layers[layeri].equals("Coastlines") || 
+                layers[layeri].equals("LakesAndRivers") || 
+                layers[layeri].equals("Nations") ||
+                layers[layeri].equals("States")) {
+                SgtMap.makeCleanMap(minx, maxx, miny, maxy, 
+                    false,
+                    null, 1, 1, 0, null,
+                    layers[layeri].equals("Land") || 
+                    layers[layeri].equals("LandMask"), //no need to draw it twice; no distinction here
+                    layers[layeri].equals("Coastlines"), 
+                    layers[layeri].equals("LakesAndRivers")? 
+                        SgtMap.STROKE_LAKES_AND_RIVERS : //stroke (not fill) so, e.g., Great Lakes temp data not obscured by lakeColor
+                        SgtMap.NO_LAKES_AND_RIVERS,
+                    layers[layeri].equals("Nations"), 
+                    layers[layeri].equals("States"),
+                    g2, width, height,
+                    0, 0, width, height);  
+                //String2.log("WMS layeri="+ layeri + " request was for a non-data layer=" + layers[layeri]);
+                continue;
+            }
+
+            //*** deal with grid data
+            int spo = layers[layeri].indexOf(EDD.WMS_SEPARATOR);
+            if (spo <= 0 || spo >= layers[layeri].length() - 1)
+                throw new SimpleException(EDStatic.queryError + "LAYER=" + layers[layeri] + 
+                    " is invalid (invalid separator position).");
+            String datasetID = layers[layeri].substring(0, spo);
+            String destVar = layers[layeri].substring(spo + 1);
+            EDDGrid eddGrid = gridDatasetHashMap.get(datasetID);
+            if (eddGrid == null)
+                throw new SimpleException(EDStatic.queryError + "LAYER=" + layers[layeri] + 
+                    " is invalid (dataset not found).");
+            if (!eddGrid.isAccessibleTo(roles) &&
+                !eddGrid.graphsAccessibleToPublic()) {
+                //WMS: all requests are graphics requests
+                //listPrivateDatasets doesn't apply
+                EDStatic.sendHttpUnauthorizedError(loggedInAs, response, datasetID,
+                    false);
+                return null;
+            }
+            if (eddGrid.accessibleViaWMS().length() > 0)
+                throw new SimpleException(EDStatic.queryError + "LAYER=" + layers[layeri] + 
+                    " is invalid (not accessible via WMS).");
+            int dvi = String2.indexOf(eddGrid.dataVariableDestinationNames(), destVar);
+            if (dvi < 0)
+                throw new SimpleException(EDStatic.queryError + "LAYER=" + layers[layeri] + 
+                    " is invalid (variable not found).");
+            EDV tDataVariable = eddGrid.dataVariables()[dvi];
+            if (!tDataVariable.hasColorBarMinMax())
+                throw new SimpleException(EDStatic.queryError + "LAYER=" + layers[layeri] + 
+                    " is invalid (variable doesn't have valid colorBarMinimum/Maximum).");
+
+            //style  (currently just the default)
+            if (!styles[layeri].equals("") && 
+                !styles[layeri].toLowerCase().equals("default")) { //nonstandard?  but allow it
+                throw new SimpleException(EDStatic.queryError + "for LAYER=" + layers[layeri] + 
+                    ", STYLE=" + styles[layeri] + " is invalid (must be \"\").");
+            }
+
+            //get other dimension info
+            EDVGridAxis ava[] = eddGrid.axisVariables();
+            StringBuilder tQuery = new StringBuilder(destVar);
+            for (int avi = 0; avi < ava.length; avi++) {
+                EDVGridAxis av = ava[avi];
+                if (avi == eddGrid.lonIndex()) {
+                    if (maxx <= av.destinationMinDouble() ||
+                        minx >= av.destinationMaxDouble()) {
+                        if (reallyVerbose) String2.log("  layer=" + layeri + 
+                            " rejected because request is out of lon range.");
+                        continue LAYER;
+                    }
+                    int first = av.destinationToClosestIndex(minx);
+                    int last = av.destinationToClosestIndex(maxx);
+                    if (first > last) {int ti = first; first = last; last = ti;}
+                    int stride = DataHelper.findStride(last - first + 1, width);
+                    tQuery.append("[" + first + ":" + stride + ":" + last + "]");
+                    continue;
+                }
+
+                if (avi == eddGrid.latIndex()) {
+                    if (maxy <= av.destinationMinDouble() ||
+                        miny >= av.destinationMaxDouble()) {
+                        if (reallyVerbose) String2.log("  layer=" + layeri + 
+                            " rejected because request is out of lat range.");
+                        continue LAYER;
+                    }
+                    int first = av.destinationToClosestIndex(miny);
+                    int last = av.destinationToClosestIndex(maxy);
+                    if (first > last) {int ti = first; first = last; last = ti;}
+                    int stride = DataHelper.findStride(last - first + 1, height);
+                    tQuery.append("[" + first + ":" + stride + ":" + last + "]");
+                    continue;
+                }
+
+                //all other axes
+                int first = wmsAxisIndex(eddGrid, avi, queryMap);
+                if (first < 0) {
+                    if (reallyVerbose) String2.log("  layer=" + layeri + 
+                        " rejected because the request is out of the " + 
+                        av.destinationName() + " range.");
+                    continue LAYER;
+                }
+                tQuery.append("[" + first + "]");
+            }
+
+            //get the data
+            GridDataAccessor gda = new GridDataAccessor(
+                eddGrid, 
+                "/" + EDStatic.warName + "/griddap/" + datasetID + ".dods", tQuery.toString(), 
+                false, //Grid needs column-major order
+                true); //convertToNaN
+            long requestNL = gda.totalIndex().size();
+            Math2.ensureArraySizeOkay(requestNL, "doWmsGetMap");
+            int nBytesPerElement = 8;
+            int requestN = (int)requestNL; //safe since checked by ensureArraySizeOkay above
+            Math2.ensureMemoryAvailable(requestNL * nBytesPerElement, "doWmsGetMap"); 
+            Grid grid = new Grid();
+            grid.data = new double[requestN];
+            int po = 0;
+            while (gda.increment()) 
+                grid.data[po++] = gda.getDataValueAsDouble(0);
+            grid.lon = gda.axisValues(eddGrid.lonIndex()).toDoubleArray();
+            grid.lat = gda.axisValues(eddGrid.latIndex()).toDoubleArray(); 
+            gda = null; //free up memory if possible
+
+            //make the palette
+            //I checked hasColorBarMinMax above.
+            //Note that EDV checks validity of values.
+            double minData = tDataVariable.combinedAttributes().getDouble("colorBarMinimum"); 
+            double maxData = tDataVariable.combinedAttributes().getDouble("colorBarMaximum"); 
+            String palette = tDataVariable.combinedAttributes().getString("colorBarPalette"); 
+            if (String2.indexOf(EDStatic.palettes, palette) < 0)
+                palette = Math2.almostEqual(3, -minData, maxData)? "BlueWhiteRed" : "Rainbow"; 
+            int nSections = tDataVariable.combinedAttributes().getInt("colorBarNSections"); 
+            if (nSections > 100)
+                nSections = -1;
+            boolean paletteContinuous = String2.parseBoolean( //defaults to true
+                tDataVariable.combinedAttributes().getString("colorBarContinuous")); 
+            String scale = tDataVariable.combinedAttributes().getString("colorBarScale"); 
+            if (String2.indexOf(EDV.VALID_SCALES, scale) < 0)
+                scale = "Linear";
+            String cptFullName = CompoundColorMap.makeCPT(EDStatic.fullPaletteDirectory, 
+                palette, scale, minData, maxData, nSections, paletteContinuous, 
+                EDStatic.fullCptCacheDirectory);
+
+            //draw the data on the map
+            //for now, just cartesian  -- BEWARE: it may be stretched!
+            SgtMap.makeCleanMap( 
+                minx, maxx, miny, maxy, 
+                false,
+                grid, 1, 1, 0, cptFullName, 
+                false, false, SgtMap.NO_LAKES_AND_RIVERS, false, false,
+                g2, width, height,
+                0, 0, width, height); 
+
+        }
+        return bufferedImage;
+    }
+
+    /**
+     * This finds the index of the value for a WMS request for one of the
+     * dataset's axis variables other than longitude and latitude,
+     * e.g., from time=, elevation=, or dim_<i>name</i>= in the queryMap.
+     * The default is the last value.
+     *
+     * @param eddGrid the dataset
+     * @param avi the index of the axis variable
+     * @param queryMap has name=value from the url query string.
+     *    names are toLowerCase. values are original values.
+     * @return the index, or -1 if the requested value is out of range (or invalid)
+     */
+    protected static int wmsAxisIndex(EDDGrid eddGrid, int avi, HashMap<String, String> queryMap) {
+        EDVGridAxis av = eddGrid.axisVariables()[avi];
+        String tAvName = 
+            avi == eddGrid.altIndex()? "elevation" :
+            avi == eddGrid.depthIndex()? "elevation" :  //convert depth to elevation
+            avi == eddGrid.timeIndex()? "time" : 
+            "dim_" + av.destinationName().toLowerCase(); //make it case-insensitive for queryMap.get
+        String tValueS = queryMap.get(tAvName);
+        if (tValueS == null || 
+            (avi == eddGrid.timeIndex() && tValueS.toLowerCase().equals("current")))
+            //default is always the last value
+            return av.sourceValues().size() - 1;
+        double tValueD = av.destinationToDouble(tValueS); //needed in particular for iso time -> epoch seconds
+        if (avi == eddGrid.depthIndex())
+            tValueD = -tValueD;
+        if (Double.isNaN(tValueD) ||
+            tValueD < av.destinationCoarseMin() ||
+            tValueD > av.destinationCoarseMax()) 
+            return -1;
+        return av.destinationToClosestIndex(tValueD);
+    }
+
     /**
      * Respond to WMS GetCapabilities request for doWms.
      * To become a Layer, a grid variable must use evenly-spaced longitude and latitude variables.
@@ -10851,6 +11106,65 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
     }
 
 
+    /**
+     * This uses the datasetExtentIndex to find the datasets which may intersect 
+     * Advanced Search's lon/lat/time constraints.
+     * The datasetExtentIndex is remade if it is out-of-date (and the changes have settled).
+     *
+     * @param minLon  NaN if not specified. Similarly for the other values.
+     * @return the sorted datasetIDs of the candidate datasets 
+     *    (which must still be tested),
+     *    or null if the datasetExtentIndex can't be used now 
+     *    (i.e., there were recent changes to the datasets).
+     */
+    public StringArray datasetExtentCandidates(double minLon, double maxLon, 
+        double minLat, double maxLat, double minTime, double maxTime) {
+
+        DatasetExtentIndex index = datasetExtentIndex;
+        if (index == null || !index.isCurrent()) {
+            if (!DatasetExtentIndex.hasSettled())
+                return null;
+            long time = System.currentTimeMillis();
+            long changeCount = DatasetExtentIndex.changeCount(); //before getting the extents
+            StringArray ids = new StringArray();
+            DoubleArray boxes = new DoubleArray();
+            double box[] = new double[DatasetExtentIndex.BOX_SIZE];
+            for (int gt = 0; gt < 2; gt++) {
+                Iterator it = (gt == 0? gridDatasetHashMap : tableDatasetHashMap).values().iterator();
+                while (it.hasNext()) {
+                    EDD edd = (EDD)it.next();
+                    EDV lonEdv = null, latEdv = null, timeEdv = null;
+                    if (edd instanceof EDDGrid) {
+                        EDDGrid eddg = (EDDGrid)edd;
+                        if (eddg.lonIndex( ) >= 0) lonEdv  = eddg.axisVariables()[eddg.lonIndex()];
+                        if (eddg.latIndex( ) >= 0) latEdv  = eddg.axisVariables()[eddg.latIndex()];
+                        if (eddg.timeIndex() >= 0) timeEdv = eddg.axisVariables()[eddg.timeIndex()];
+                    } else {
+                        EDDTable eddt = (EDDTable)edd;
+                        if (eddt.lonIndex( ) >= 0) lonEdv  = eddt.dataVariables()[eddt.lonIndex()];
+                        if (eddt.latIndex( ) >= 0) latEdv  = eddt.dataVariables()[eddt.latIndex()];
+                        if (eddt.timeIndex() >= 0) timeEdv = eddt.dataVariables()[eddt.timeIndex()];
+                    }
+                    //unknown extents never exclude a dataset here (doAdvancedSearch tests the candidates)
+                    EDV edvs[] = {lonEdv, latEdv, timeEdv};
+                    for (int d = 0; d < 3; d++) {
+                        double min = edvs[d] == null? Double.NaN : edvs[d].destinationMinDouble();
+                        double max = edvs[d] == null? Double.NaN : edvs[d].destinationMaxDouble();
+                        box[2 * d]     = Double.isFinite(min)? min : -Double.MAX_VALUE;
+                        box[2 * d + 1] = Double.isFinite(max)? max :  Double.MAX_VALUE;
+                    }
+                    ids.add(edd.datasetID());
+                    boxes.add(box);
+                }
+            }
+            index = new DatasetExtentIndex(changeCount, ids, boxes.toArray());
+            datasetExtentIndex = index;
+            if (verbose) String2.log("Erddap made " + index + 
+                " in " + (System.currentTimeMillis() - time) + "ms");
+        }
+        return index.candidates(minLon, maxLon, minLat, maxLat, minTime, maxTime);
+    }
+
     /**
      * This responds to a advanced search request: erddap/search/advanced.html, 
      * and other extensions.
@@ -11315,8 +11629,13 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
         boolean testLat  = !Double.isNaN(minLat  ) || !Double.isNaN(maxLat  );
         boolean testTime = !Double.isNaN(minTimeD) || !Double.isNaN(maxTimeD);
         if (testLon || testLat || testTime) {
+            //just test the datasets that may intersect (if the index can be used now)
+            StringArray candidates = datasetExtentCandidates(
+                minLon, maxLon, minLat, maxLat, minTimeD, maxTimeD);
             if (matchingDatasetIDs == null)
-                matchingDatasetIDs = allDatasetIDs();
+                matchingDatasetIDs = candidates == null? allDatasetIDs() : candidates;
+            else if (candidates != null)
+                matchingDatasetIDs.inCommon(candidates); //both are sort()'d
             int dsn = matchingDatasetIDs.size();
             BitSet keep = new BitSet(dsn);
             keep.set(0, dsn, true);  //so look for a reason not to keep it
@@ -11337,23 +11656,12 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
                         if (eddg.timeIndex() >= 0) timeEdv = eddg.axisVariables()[eddg.timeIndex()];
                 }
 
-                //testLon
+                //testLon  (0 to 360 and -180 to 180 lons match each other)
                 if (testLon) {
-                    if (lonEdv == null) {
+                    if (lonEdv == null ||
+                        !DatasetExtentIndex.lonOverlaps(minLon, maxLon, 
+                            lonEdv.destinationMinDouble(), lonEdv.destinationMaxDouble())) {
                         keep.clear(dsi);
-                    } else {
-                        if (!Double.isNaN(minLon)) {
-                            if (Double.isNaN(lonEdv.destinationMaxDouble()) ||
-                                minLon > lonEdv.destinationMaxDouble()) {
-                                keep.clear(dsi);
-                            }
-                        }
-                        if (!Double.isNaN(maxLon)) {
-                            if (Double.isNaN(lonEdv.destinationMinDouble()) ||
-                                maxLon < lonEdv.destinationMinDouble()) {
-                                keep.clear(dsi);
-                            }
-                        }
                     }
                 }
 
@@ -11846,6 +12154,9 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
                     jumpB[w] = String2.makeJumpTable(searchWordsB[w]);
                 }
 
+                //just call searchRank for the datasets that may match (null = all)
+                HashSet<String> candidates = originalSearchIndex.candidates(isNegative, searchWordsB);
+
                 for (int i = 0; i < ntDatasetIDs; i++) {
                     String tId = tDatasetIDs.get(i);
                     EDD edd = gridDatasetHashMap.get(tId);
@@ -11857,6 +12168,12 @@ XML.encodeAsXML(String2.noLongerThanDots(EDStatic.adminInstitution, 256)) + "</A
                         !edd.isAccessibleTo(roles) &&
                         !edd.graphsAccessibleToPublic()) //search for datasets is always a metadata request
                         continue;
+                    if (candidates != null && !candidates.contains(tId)) {
+                        if (originalSearchIndex.isCurrent(tId, edd.creationTimeMillis()))
+                            continue; //it can't match
+                        //it isn't in the index yet (or has changed)
+                        originalSearchIndex.add(tId, edd.creationTimeMillis(), edd.searchBytes());
+                    }
                     nDatasetsSearched++;
                     int rank = edd.searchRank(isNegative, searchWordsB, jumpB);           
                     if (rank < Integer.MAX_VALUE) {
@@ -19111,6 +19428,66 @@ expected =
 
     }
 
+    /**
+     * This tests that WMS tiles of non-data layers (e.g., Coastlines) aren't shared
+     * by datasets with different longitude ranges (0 to 360 vs -180 to 180),
+     * since the tiles' longitudes depend on it, but are shared by datasets 
+     * with the same longitude range.
+     * This assumes erdMBsstdmday, erdMBsstdmday_LonPM180, and testGriddedNcFiles
+     * are in datasets.xml.
+     *
+     * @throws Throwable if trouble.
+     */
+    public static void testWmsTiles() throws Throwable {
+        String2.log("\n*** Erddap.testWmsTiles");
+        EDDGrid grid360  = (EDDGrid)EDD.oneFromDatasetsXml(null, "erdMBsstdmday");
+        EDDGrid grid180  = (EDDGrid)EDD.oneFromDatasetsXml(null, "erdMBsstdmday_LonPM180");
+        EDDGrid grid360b = (EDDGrid)EDD.oneFromDatasetsXml(null, "testGriddedNcFiles");
+        Test.ensureEqual(wmsTileLonOrigin(grid360),     0.0, "");
+        Test.ensureEqual(wmsTileLonOrigin(grid180),  -180.0, "");
+        Test.ensureEqual(wmsTileLonOrigin(grid360b),    0.0, "");
+        final double bbox360[] = wmsTileBBox(wmsTileLonOrigin(grid360), 1, 1, 0);
+        final double bbox180[] = wmsTileBBox(wmsTileLonOrigin(grid180), 1, 1, 0);
+        Test.ensureEqual(String2.toCSSVString(bbox360),  "90.0, 180.0, 0.0, 90.0", "");
+        Test.ensureEqual(String2.toCSSVString(bbox180), "-90.0, 0.0, 0.0, 90.0", "");
+
+        HashMap<String, String> queryMap = new HashMap();
+        String key360  = wmsTileKey(grid360,  "Coastlines", true, 1, 1, 0, false, 0xFFFFFF, queryMap);
+        String key180  = wmsTileKey(grid180,  "Coastlines", true, 1, 1, 0, false, 0xFFFFFF, queryMap);
+        String key360b = wmsTileKey(grid360b, "Coastlines", true, 1, 1, 0, false, 0xFFFFFF, queryMap);
+        Test.ensureEqual(key360,  "Coastlines/1/1/0 lon0=0 t=false bg=ffffff", "");
+        Test.ensureEqual(key180,  "Coastlines/1/1/0 lon0=-180 t=false bg=ffffff", "");
+        Test.ensureEqual(key360b, key360, "");
+
+        //via the WmsTileCache: the "tiles" are the text of their bounding boxes
+        long oMaxBytes = WmsTileCache.maxBytes();
+        try {
+            WmsTileCache.setMaxBytes(10 * Math2.BytesPerMB);
+            WmsTileCache.invalidate(""); //the non-data layers' tiles
+            byte bytes[] = WmsTileCache.getTile(key360, "", "", new WmsTileCache.Maker() {
+                public byte[] make() {
+                    return String2.toCSSVString(bbox360).getBytes();
+                }
+            });
+            Test.ensureEqual(new String(bytes), "90.0, 180.0, 0.0, 90.0", "");
+            bytes = WmsTileCache.getTile(key180, "", "", new WmsTileCache.Maker() {
+                public byte[] make() {
+                    return String2.toCSSVString(bbox180).getBytes();
+                }
+            });
+            Test.ensureEqual(new String(bytes), "-90.0, 0.0, 0.0, 90.0", "");
+            bytes = WmsTileCache.getTile(key360b, "", "", new WmsTileCache.Maker() {
+                public byte[] make() {
+                    throw new RuntimeException("The tile should have been reused.");
+                }
+            });
+            Test.ensureEqual(new String(bytes), "90.0, 180.0, 0.0, 90.0", "");
+        } finally {
+            WmsTileCache.invalidate("");
+            WmsTileCache.setMaxBytes(oMaxBytes);
+        }
+    }
+
     /**
      * This is used by Bob to do simple tests of Categorize.
      * @throws exception if trouble.
@@ -19193,6 +19570,7 @@ expected =
                     if (test ==  2) testAdvancedSearch();
                     if (test ==  3) testCategorize();
                     if (test ==  4) testConvertInterpolate();
+                    if (test ==  5) testWmsTiles();
 
                     if (test == 10) SSR.testForBrokenLinks("http://localhost:8080/cwexperimental/convert/oceanicAtmosphericAcronyms.html");
                     if (test == 11) SSR.testForBrokenLinks("http://localhost:8080/cwexperimental/convert/fipscounty.html");
@@ -16,6 +16,7 @@ import com.cohort.util.XML;
 
 import com.sun.management.UnixOperatingSystemMXBean;
 
+import gov.noaa.pfel.coastwatch.griddata.NcHelper;
 import gov.noaa.pfel.coastwatch.sgt.GSHHS;
 import gov.noaa.pfel.coastwatch.sgt.SgtMap;
 import gov.noaa.pfel.coastwatch.util.FileVisitorDNLS;
@@ -30,15 +31,23 @@ import gov.noaa.pfel.erddap.variable.EDVGridAxis;
 
 import java.awt.Color;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -95,6 +104,20 @@ public class LoadDatasets extends Thread {
     private final static boolean ADD = true;
     private final static boolean REMOVE = false;
 
+    /** 
+     * Finds the datasetIDs in urls like .../griddap/datasetID or .../tabledap/datasetID
+     * (e.g., an EDDGridFromErddap's sourceUrl) which may refer to datasets in this ERDDAP.
+     */
+    private final static Pattern DATASET_URL_PATTERN = Pattern.compile(
+        "/(?:griddap|tabledap)/([A-Za-z0-9_]+)");
+
+    //these are used if nLoadDatasetsThreads &gt; 1. They are only used by this LoadDatasets thread.
+    private ExecutorService loadPool = null; //null until the first dataset is loaded in parallel
+    private ExecutorCompletionService<ParallelLoad> loadCompletionService = null;
+    private HashMap<String, ParallelLoad> unfinishedLoads = new HashMap(); //datasetID -> waiting or running load
+    private ArrayList<ParallelLoad> waitingLoads = new ArrayList(); //in datasets.xml order
+    private int nRunningLoads = 0;
+
     /* This is set by run if there is an unexpected error. */   
     public String unexpectedError = ""; 
 
@@ -223,6 +246,13 @@ public class LoadDatasets extends Thread {
                 xmlReader.nextTag();
                 String tags = xmlReader.allTags();
                 if (tags.equals("</erddapDatasets>")) {
+                    //wait for the datasets that are being loaded in parallel
+                    if (!finishParallelLoads(true, startError, datasetsThatFailedToLoadSB, changedDatasetIDs)) {
+                        String2.log("*** The LoadDatasets thread was interrupted at " + 
+                            Calendar2.getCurrentISODateTimeStringLocalTZ());
+                        updateLucene(erddap, changedDatasetIDs);
+                        return;
+                    }
                     break;
                 } else if (tags.equals("<erddapDatasets><dataset>")) {
                     //just load minimal datasets?
@@ -348,6 +378,24 @@ public class LoadDatasets extends Thread {
                             xmlReader.nextTag();
                             tags = xmlReader.allTags();
                         }
+                    } else if (loadPool != null || EDStatic.nLoadDatasetsThreads > 1) {
+                        //construct this dataset in a worker thread, 
+                        //then (later) put it in place in this thread
+                        nTry++;
+                        String tType = xmlReader.attributeValue("type");
+                        long tLineNumber = xmlReader.lineNumber();
+                        xmlReader.startRecording();
+                        xmlReader.skipToStackSize(xmlReader.stackSize());
+                        queueParallelLoad(new ParallelLoad(tId, tType, 
+                            xmlReader.stopRecording(), tLineNumber));
+
+                        //put in place any datasets that have finished loading
+                        if (!finishParallelLoads(false, startError, datasetsThatFailedToLoadSB, changedDatasetIDs)) {
+                            String2.log("*** The LoadDatasets thread was interrupted at " + 
+                                Calendar2.getCurrentISODateTimeStringLocalTZ());
+                            updateLucene(erddap, changedDatasetIDs);
+                            return;
+                        }
                     } else {
                         //try to load this dataset
                         nTry++;
@@ -382,37 +430,7 @@ public class LoadDatasets extends Thread {
                                 oldCatInfoRemoved = true;
                             }
 
-                            //put dataset in place
-                            //(hashMap.put atomically replaces old version with new)
-                            if ((oldDataset == null || oldDataset instanceof EDDGrid) &&
-                                                          dataset instanceof EDDGrid) {
-                                erddap.gridDatasetHashMap.put(tId, (EDDGrid)dataset);  //was/is grid
-
-                            } else if ((oldDataset == null || oldDataset instanceof EDDTable) &&
-                                                                 dataset instanceof EDDTable) {
-                                erddap.tableDatasetHashMap.put(tId, (EDDTable)dataset); //was/is table 
-
-                            } else if (dataset instanceof EDDGrid) {
-                                if (oldDataset != null)
-                                    erddap.tableDatasetHashMap.remove(tId);   //was table
-                                erddap.gridDatasetHashMap.put(tId, (EDDGrid)dataset);  //now grid
-
-                            } else if (dataset instanceof EDDTable) {
-                                if (oldDataset != null)
-                                    erddap.gridDatasetHashMap.remove(tId);    //was grid
-                                erddap.tableDatasetHashMap.put(tId, (EDDTable)dataset); //now table
-                            }
-
-                            //add new info to categoryInfo
-                            addRemoveDatasetInfo(ADD, erddap.categoryInfo, dataset); 
-
-                            //clear the dataset's cache 
-                            //since axis values may have changed and "last" may have changed
-                            File2.deleteAllFiles(dataset.cacheDirectory());                           
-                       
-                            change = dataset.changed(oldDataset);
-                            if (change.length() == 0 && dataset instanceof EDDTable)
-                                change = "The dataset was reloaded.";
+                            change = putDatasetInPlace(tId, dataset, oldDataset);
 
                         } catch (Throwable t) {
                             dataset = null;
@@ -430,16 +448,7 @@ public class LoadDatasets extends Thread {
                             }
 
 
-                            //actually remove old dataset (if any existed)
-                            EDD tDataset = erddap.gridDatasetHashMap.remove(tId); //always ensure it was removed
-                            if (tDataset == null)
-                                tDataset = erddap.tableDatasetHashMap.remove(tId);
-                            if (oldDataset == null)
-                                oldDataset = tDataset;
-
-                            //if oldDataset existed, remove it from categoryInfo
-                            if (oldDataset != null && !oldCatInfoRemoved)
-                                addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldDataset); 
+                            oldDataset = removeDataset(tId, oldDataset, oldCatInfoRemoved);
 
                             String tError = startError + xmlReader.lineNumber() + "\n" + 
                                 "While trying to load datasetID=" + tId + " (after " +
@@ -468,21 +477,9 @@ public class LoadDatasets extends Thread {
                             if (oldDataset != null)  
                                 change = tError;
                         }
-                        if (verbose) String2.log("change=" + change);
-
-                        //whether succeeded (new or swapped in) or failed (removed), it was changed
-                        changedDatasetIDs.add(tId);
-                        if (System.currentTimeMillis() - lastLuceneUpdate >
-                            MAX_MILLIS_BEFORE_LUCENE_UPDATE) {
-                            updateLucene(erddap, changedDatasetIDs);
-                            lastLuceneUpdate = System.currentTimeMillis();
-                        }
-
-                        //trigger subscription and dataset.onChange actions (after new dataset is in place)
-                        EDD cooDataset = dataset == null? oldDataset : dataset; //currentOrOld, may be null
-                        tryToDoActions(erddap, tId, cooDataset, 
+                        datasetChanged(tId, dataset, oldDataset, change, 
                             startError + xmlReader.lineNumber() + " with Subscriptions",
-                            change);
+                            changedDatasetIDs);
                     }
 
                 } else if (tags.equals("<erddapDatasets><angularDegreeUnits>")) {
@@ -593,6 +590,67 @@ public class LoadDatasets extends Thread {
                         EDStatic.DEFAULT_nTableThreads : tnt; 
                     String2.log("nTableThreads=" + EDStatic.nTableThreads);
 
+                } else if (tags.equals("<erddapDatasets><nSharedThreads>")) {
+                } else if (tags.equals("<erddapDatasets></nSharedThreads>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.nSharedThreads = tnt < 1 || tnt == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_nSharedThreads : tnt; 
+                    EDStatic.sharedThreadPool.setNThreads(EDStatic.nSharedThreads);
+                    String2.log("nSharedThreads=" + EDStatic.nSharedThreads);
+
+                } else if (tags.equals("<erddapDatasets><nLoadDatasetsThreads>")) {
+                } else if (tags.equals("<erddapDatasets></nLoadDatasetsThreads>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.nLoadDatasetsThreads = tnt < 1 || tnt == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_nLoadDatasetsThreads : tnt; 
+                    String2.log("nLoadDatasetsThreads=" + EDStatic.nLoadDatasetsThreads);
+
+                } else if (tags.equals("<erddapDatasets><nDirectoryScanThreads>")) {
+                } else if (tags.equals("<erddapDatasets></nDirectoryScanThreads>")) {
+                    int tnt = String2.parseInt(xmlReader.content());
+                    EDStatic.nDirectoryScanThreads = tnt < 1 || tnt == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_nDirectoryScanThreads : tnt; 
+                    FileVisitorDNLS.nScanThreads = EDStatic.nDirectoryScanThreads;
+                    String2.log("nDirectoryScanThreads=" + EDStatic.nDirectoryScanThreads);
+
+                } else if (tags.equals("<erddapDatasets><fileTableMapped>")) {
+                } else if (tags.equals("<erddapDatasets></fileTableMapped>")) {
+                    String ts = xmlReader.content();
+                    EDStatic.fileTableMapped = String2.isSomething(ts)? String2.parseBoolean(ts) : 
+                        EDStatic.DEFAULT_fileTableMapped;
+                    String2.log("fileTableMapped=" + EDStatic.fileTableMapped);
+
+                } else if (tags.equals("<erddapDatasets><ncFileCacheSize>")) {
+                } else if (tags.equals("<erddapDatasets></ncFileCacheSize>")) {
+                    int tSize = String2.parseInt(xmlReader.content());
+                    EDStatic.ncFileCacheSize = tSize < 0 || tSize == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_ncFileCacheSize : tSize; 
+                    NcHelper.fileCache.setMaxOpen(EDStatic.ncFileCacheSize);
+                    String2.log("ncFileCacheSize=" + EDStatic.ncFileCacheSize);
+
+                } else if (tags.equals("<erddapDatasets><responseCacheMB>")) {
+                } else if (tags.equals("<erddapDatasets></responseCacheMB>")) {
+                    int tMB = String2.parseInt(xmlReader.content());
+                    EDStatic.responseCacheMB = tMB < 0 || tMB == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_responseCacheMB : tMB; 
+                    ResponseCache.setMaxBytes((long)EDStatic.responseCacheMB * Math2.BytesPerMB);
+                    String2.log("responseCacheMB=" + EDStatic.responseCacheMB);
+
+                } else if (tags.equals("<erddapDatasets><wmsTileCacheMB>")) {
+                } else if (tags.equals("<erddapDatasets></wmsTileCacheMB>")) {
+                    int tMB = String2.parseInt(xmlReader.content());
+                    EDStatic.wmsTileCacheMB = tMB < 0 || tMB == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_wmsTileCacheMB : tMB; 
+                    WmsTileCache.setMaxBytes((long)EDStatic.wmsTileCacheMB * Math2.BytesPerMB);
+                    String2.log("wmsTileCacheMB=" + EDStatic.wmsTileCacheMB);
+
+                } else if (tags.equals("<erddapDatasets><gridReadAheadMB>")) {
+                } else if (tags.equals("<erddapDatasets></gridReadAheadMB>")) {
+                    int tMB = String2.parseInt(xmlReader.content());
+                    EDStatic.gridReadAheadMB = tMB < 0 || tMB == Integer.MAX_VALUE? 
+                        EDStatic.DEFAULT_gridReadAheadMB : tMB; 
+                    String2.log("gridReadAheadMB=" + EDStatic.gridReadAheadMB);
+
                 } else if (tags.equals("<erddapDatasets><palettes>")) {
                 } else if (tags.equals("<erddapDatasets></palettes>")) {
                     String tContent = xmlReader.content();
@@ -1096,6 +1154,11 @@ public class LoadDatasets extends Thread {
                     EDStatic.majorLoadDatasetsDistribution24 = new int[String2.DistributionSize];
                     EDStatic.minorLoadDatasetsDistribution24 = new int[String2.DistributionSize];
                     EDStatic.responseTimesDistribution24     = new int[String2.DistributionSize];
+                    EDStatic.sharedThreadPool.resetDailyStatistics();
+                    NcHelper.fileCache.resetDailyStatistics();
+                    ResponseCache.resetDailyStatistics();
+                    GridOverviews.resetDailyStatistics();
+                    WmsTileCache.resetDailyStatistics();
 
                     String2.log("\n" + stars);
                     String2.log(contentSB.toString());
@@ -1208,10 +1271,342 @@ public class LoadDatasets extends Thread {
         } finally {
             if (xmlReader != null) 
                 try {xmlReader.close();} catch (Exception e) {}
+            if (loadPool != null) 
+                loadPool.shutdownNow(); //interrupts unfinished loads (e.g., if this thread was interrupted)
             EDStatic.suggestAddFillValueCSV.setLength(0);
         }
     }
 
+    /**
+     * This puts a newly constructed dataset in place in erddap 
+     * (replacing oldDataset, if any) and updates the categoryInfo, 
+     * the search indexes, and the dataset's caches.
+     * The caller must have already removed oldDataset's info from categoryInfo.
+     *
+     * @param tId the datasetID
+     * @param dataset the new dataset
+     * @param oldDataset the dataset it replaces (or null if none)
+     * @return a description of the change (may be "")
+     * @throws Throwable if trouble
+     */
+    private String putDatasetInPlace(String tId, EDD dataset, EDD oldDataset) throws Throwable {
+        //put dataset in place
+        //(hashMap.put atomically replaces old version with new)
+        if ((oldDataset == null || oldDataset instanceof EDDGrid) &&
+                                      dataset instanceof EDDGrid) {
+            erddap.gridDatasetHashMap.put(tId, (EDDGrid)dataset);  //was/is grid
+
+        } else if ((oldDataset == null || oldDataset instanceof EDDTable) &&
+                                             dataset instanceof EDDTable) {
+            erddap.tableDatasetHashMap.put(tId, (EDDTable)dataset); //was/is table 
+
+        } else if (dataset instanceof EDDGrid) {
+            if (oldDataset != null)
+                erddap.tableDatasetHashMap.remove(tId);   //was table
+            erddap.gridDatasetHashMap.put(tId, (EDDGrid)dataset);  //now grid
+
+        } else if (dataset instanceof EDDTable) {
+            if (oldDataset != null)
+                erddap.gridDatasetHashMap.remove(tId);    //was grid
+            erddap.tableDatasetHashMap.put(tId, (EDDTable)dataset); //now table
+        }
+
+        //add new info to categoryInfo
+        addRemoveDatasetInfo(ADD, erddap.categoryInfo, dataset); 
+
+        //update the original searchEngine's index
+        if (!EDStatic.useLuceneSearchEngine)
+            erddap.originalSearchIndex.add(tId, 
+                dataset.creationTimeMillis(), dataset.searchBytes());
+        DatasetExtentIndex.noteChange(); //Advanced Search's lon/lat/time index
+
+        //clear the dataset's cache 
+        //since axis values may have changed and "last" may have changed
+        ResponseCache.invalidate(tId);
+        WmsTileCache.invalidate(tId);
+        File2.deleteAllFiles(dataset.cacheDirectory());                           
+        if (oldDataset != null && oldDataset != dataset)
+            oldDataset.releaseResources();
+   
+        String change = dataset.changed(oldDataset);
+        if (change.length() == 0 && dataset instanceof EDDTable)
+            change = "The dataset was reloaded.";
+        return change;
+    }
+
+    /**
+     * After a dataset failed to load, this removes the old version of the dataset
+     * (if any) from erddap.
+     *
+     * @param tId the datasetID
+     * @param oldDataset the old dataset (or null if not yet known)
+     * @param oldCatInfoRemoved true if oldDataset's info was already removed from categoryInfo
+     * @return the old dataset (or null if there wasn't one)
+     */
+    private EDD removeDataset(String tId, EDD oldDataset, boolean oldCatInfoRemoved) {
+        //actually remove old dataset (if any existed)
+        EDD tDataset = erddap.gridDatasetHashMap.remove(tId); //always ensure it was removed
+        if (tDataset == null)
+            tDataset = erddap.tableDatasetHashMap.remove(tId);
+        erddap.originalSearchIndex.remove(tId);
+        DatasetExtentIndex.noteChange();
+        if (oldDataset == null)
+            oldDataset = tDataset;
+
+        //if oldDataset existed, remove it from categoryInfo
+        if (oldDataset != null && !oldCatInfoRemoved)
+            addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldDataset); 
+        if (oldDataset != null)
+            oldDataset.releaseResources();
+        return oldDataset;
+    }
+
+    /**
+     * After an attempt to load a dataset (whether it succeeded or failed),
+     * this notes the change, periodically updates Lucene,
+     * and triggers the subscription and dataset.onChange actions.
+     *
+     * @param tId the datasetID
+     * @param dataset the new dataset (or null if it failed to load)
+     * @param oldDataset the old dataset (or null if none)
+     * @param change the description of the change (may be "")
+     * @param subject for email messages
+     * @param changedDatasetIDs receives tId
+     */
+    private void datasetChanged(String tId, EDD dataset, EDD oldDataset, String change,
+        String subject, StringArray changedDatasetIDs) {
+
+        if (verbose) String2.log("change=" + change);
+
+        //whether succeeded (new or swapped in) or failed (removed), it was changed
+        changedDatasetIDs.add(tId);
+        if (System.currentTimeMillis() - lastLuceneUpdate >
+            MAX_MILLIS_BEFORE_LUCENE_UPDATE) {
+            updateLucene(erddap, changedDatasetIDs);
+            lastLuceneUpdate = System.currentTimeMillis();
+        }
+
+        //trigger subscription and dataset.onChange actions (after new dataset is in place)
+        EDD cooDataset = dataset == null? oldDataset : dataset; //currentOrOld, may be null
+        tryToDoActions(erddap, tId, cooDataset, subject, change);
+    }
+
+    /**
+     * A dataset from datasets.xml which a worker thread constructs (via EDD.fromXml)
+     * when nLoadDatasetsThreads &gt; 1. 
+     * The LoadDatasets thread then puts it in place (see finishParallelLoads).
+     * Composite datasets (e.g., EDDGridSideBySide, EDDGridAggregateExistingDimension,
+     * EDDGridLonPM180, EDDTableFromEDDGrid) construct their child datasets themselves,
+     * so they are just one job.
+     * Datasets which use other datasets in this ERDDAP via a 
+     * .../griddap/datasetID or .../tabledap/datasetID url (e.g., EDDGridFromErddap
+     * and EDDTableFromErddap, perhaps as a child of a composite dataset)
+     * aren't started until those datasets have been put in place.
+     */
+    private class ParallelLoad implements Callable<ParallelLoad> {
+        final String datasetID, type, xml;
+        final long lineNumber; //of the end of the <dataset> tag in datasets.xml
+        HashSet<String> dependsOn = new HashSet(); //unfinished datasetIDs that this uses
+        long startMillis, endMillis, endLineNumber;
+        EDD dataset = null;     //set if successful
+        Throwable throwable = null; //set if failure
+
+        /**
+         * The constructor.
+         *
+         * @param tDatasetID the datasetID
+         * @param tType the dataset type, e.g., EDDGridFromDap
+         * @param tXml the raw xml from the start of the &lt;dataset&gt; tag 
+         *   to the end of the &lt;/dataset&gt; tag (see SimpleXMLReader.startRecording()).
+         * @param tLineNumber the line number of the end of the &lt;dataset&gt; tag 
+         *   in datasets.xml
+         */
+        ParallelLoad(String tDatasetID, String tType, String tXml, long tLineNumber) {
+            datasetID = tDatasetID;
+            type = tType;
+            xml = tXml;
+            lineNumber = tLineNumber;
+            endLineNumber = tLineNumber;
+        }
+
+        /** 
+         * This constructs the dataset (in a worker thread). 
+         * This never throws an exception: trouble is stored in throwable.
+         */
+        public ParallelLoad call() {
+            startMillis = System.currentTimeMillis();
+            SimpleXMLReader tXmlReader = null;
+            try {
+                //make a datasets.xml with just this dataset, at the same line number as in datasets.xml
+                StringBuilder sb = new StringBuilder(xml.length() + (int)lineNumber + 80);
+                sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<erddapDatasets>");
+                for (long line = 2; line < lineNumber; line++) 
+                    sb.append('\n');
+                sb.append(xml);
+                sb.append("\n</erddapDatasets>\n");
+                tXmlReader = new SimpleXMLReader(new ByteArrayInputStream(
+                    String2.stringToUtf8Bytes(sb.toString())), "erddapDatasets");
+                sb = null; //allow gc
+                tXmlReader.nextTag(); //<dataset>
+                dataset = EDD.fromXml(erddap, type, tXmlReader);
+            } catch (Throwable t) {
+                throwable = t;
+            } finally {
+                if (tXmlReader != null) {
+                    endLineNumber = tXmlReader.lineNumber();
+                    tXmlReader.close();
+                }
+                endMillis = System.currentTimeMillis();
+            }
+            return this;
+        }
+    }
+
+    /**
+     * This queues a dataset to be constructed by a worker thread.
+     * If it uses datasets which are still being loaded, it waits for them. 
+     *
+     * @param load the dataset to be loaded
+     */
+    private void queueParallelLoad(ParallelLoad load) {
+        if (loadPool == null) {
+            final AtomicInteger threadNumber = new AtomicInteger(0);
+            loadPool = Executors.newFixedThreadPool(EDStatic.nLoadDatasetsThreads, runnable -> {
+                Thread thread = new Thread(runnable, "LoadDatasets-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            loadCompletionService = new ExecutorCompletionService(loadPool);
+            String2.log("LoadDatasets is loading datasets with nLoadDatasetsThreads=" + 
+                EDStatic.nLoadDatasetsThreads);
+        }
+
+        //does it use other datasets that are still being loaded?
+        Matcher matcher = DATASET_URL_PATTERN.matcher(load.xml);
+        while (matcher.find()) {
+            String tId = matcher.group(1);
+            if (!tId.equals(load.datasetID) && unfinishedLoads.containsKey(tId))
+                load.dependsOn.add(tId);
+        }
+        if (reallyVerbose && load.dependsOn.size() > 0) 
+            String2.log("*** datasetID=" + load.datasetID + 
+                " will be loaded after " + String2.toCSSVString(load.dependsOn));
+
+        unfinishedLoads.put(load.datasetID, load);
+        waitingLoads.add(load);
+        submitReadyLoads();
+    }
+
+    /**
+     * This submits the waiting loads which don't depend on unfinished loads.
+     */
+    private void submitReadyLoads() {
+        Iterator<ParallelLoad> it = waitingLoads.iterator();
+        while (it.hasNext()) {
+            ParallelLoad load = it.next();
+            load.dependsOn.retainAll(unfinishedLoads.keySet());
+            if (load.dependsOn.isEmpty()) {
+                it.remove();
+                loadCompletionService.submit(load);
+                nRunningLoads++;
+            }
+        }
+
+        //Dependencies are always on datasets earlier in datasets.xml, so this shouldn't happen. 
+        //But never get stuck.
+        if (nRunningLoads == 0 && waitingLoads.size() > 0) {
+            loadCompletionService.submit(waitingLoads.remove(0));
+            nRunningLoads++;
+        }
+    }
+
+    /**
+     * This puts the datasets which have finished loading in worker threads in place 
+     * in erddap, one at a time, in this thread, just like a dataset loaded in this thread.
+     *
+     * @param waitForAll if true, this waits until all datasets have finished loading. 
+     *    If false, this just deals with the datasets which have already finished.
+     * @param startError the start of error messages
+     * @param datasetsThatFailedToLoadSB receives the datasetIDs of datasets that failed
+     * @param changedDatasetIDs receives the datasetIDs of the datasets that were changed
+     * @return false if this thread was interrupted (so the caller should stop)
+     * @throws Throwable if trouble
+     */
+    private boolean finishParallelLoads(boolean waitForAll, String startError,
+        StringBuilder datasetsThatFailedToLoadSB, StringArray changedDatasetIDs) throws Throwable {
+
+        while (nRunningLoads > 0) {
+            Future<ParallelLoad> future;
+            if (waitForAll) {
+                try {
+                    future = loadCompletionService.take();
+                } catch (InterruptedException e) {
+                    interrupt(); //take() cleared the interrupted status
+                    return false;
+                }
+            } else {
+                future = loadCompletionService.poll();
+                if (future == null)
+                    return true;
+            }
+            nRunningLoads--;
+            ParallelLoad load = future.get(); //call() never throws an exception
+            unfinishedLoads.remove(load.datasetID);
+
+            //check for interruption right before making changes to Erddap
+            if (isInterrupted()) 
+                return false;
+
+            String tId = load.datasetID;
+            String change = "";
+            EDD dataset = load.dataset, oldDataset = null;
+            boolean oldCatInfoRemoved = false;
+            Throwable t = load.throwable;
+            if (t == null) {
+                try {
+                    //was there a dataset with the same datasetID?
+                    oldDataset = erddap.gridDatasetHashMap.get(tId);
+                    if (oldDataset == null)
+                        oldDataset = erddap.tableDatasetHashMap.get(tId);
+
+                    //if oldDataset existed, remove its info from categoryInfo
+                    if (oldDataset != null) {
+                        addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldDataset); 
+                        oldCatInfoRemoved = true;
+                    }
+
+                    change = putDatasetInPlace(tId, dataset, oldDataset);
+                } catch (Throwable t2) {
+                    t = t2;
+                }
+            }
+            if (t != null) {
+                dataset = null;
+                oldDataset = removeDataset(tId, oldDataset, oldCatInfoRemoved);
+
+                String tError = startError + load.endLineNumber + "\n" + 
+                    "While trying to load datasetID=" + tId + " (after " +
+                        (load.endMillis - load.startMillis) + " ms)\n" +
+                    MustBe.throwableToString(t);
+                String2.log(tError);
+                warningsFromLoadDatasets.append(tError + "\n\n");
+                datasetsThatFailedToLoadSB.append(tId + ", ");
+
+                //change      (if oldDataset=null and new one failed to load, no change)
+                if (oldDataset != null)  
+                    change = tError;
+            }
+
+            datasetChanged(tId, dataset, oldDataset, change, 
+                startError + load.lineNumber + " with Subscriptions",
+                changedDatasetIDs);
+
+            //start the datasets that were waiting for this one
+            submitReadyLoads();
+        }
+        return true;
+    }
+
     /**
      * If change is something, this tries to do the actions /notify the subscribers
      * to this dataset.
@@ -1443,7 +1838,12 @@ public class LoadDatasets extends Thread {
         //do in quick succession...   (???synchronized on ?)
         String2.log("*** unloading datasetID=" + tId);
         addRemoveDatasetInfo(REMOVE, erddap.categoryInfo, oldEdd); 
+        erddap.originalSearchIndex.remove(tId);
+        DatasetExtentIndex.noteChange();
+        ResponseCache.invalidate(tId);
+        WmsTileCache.invalidate(tId);
         File2.deleteAllFiles(EDD.cacheDirectory(tId));
+        oldEdd.releaseResources();
         changedDatasetIDs.add(tId);
         if (needToUpdateLucene)
             updateLucene(erddap, changedDatasetIDs);
@@ -0,0 +1,519 @@
+/*
+ * CassandraPartitionQueries Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.IntArray;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This keeps a bounded window of asynchronous Cassandra queries in flight
+ * (one per partition key combination) and hands back their ResultSets in
+ * the order the statements were submitted.
+ * EDDTableFromCassandra uses this (if &lt;partitionQueryWindow&gt; is &gt;1) so
+ * a request spanning many partitions doesn't pay one round trip per partition
+ * sequentially: while one ResultSet is being converted to Table columns,
+ * the next few queries are already running on the server.
+ *
+ * <p>Usage: see run(), which EDDTableFromCassandra uses: while isFull(), call next()
+ * and process its ResultSet; then submit().
+ * At the end, call next() until nInFlight()==0.
+ * Always call cancelAll() in a finally clause.
+ * An instance is for use by one thread (the request's thread).
+ *
+ * @author agent (agent@local) 2026-10-17
+ */
+public class CassandraPartitionQueries {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** This makes the statement for one partition (e.g., a BoundStatement). */
+    public interface StatementMaker {
+        Statement make(int partition) throws Throwable;
+    }
+
+    /** This processes the ResultSet of one partition's query. */
+    public interface ResultSetProcessor {
+        void process(ResultSet rs) throws Throwable;
+    }
+
+    private final Session session;
+    private final int window;
+    private final ArrayDeque<ResultSetFuture> inFlight = new ArrayDeque();
+    private int nSubmitted = 0;
+    private int maxNInFlight = 0;
+
+    /**
+     * The constructor.
+     *
+     * @param tSession the Cassandra session (thread-safe)
+     * @param tWindow the maximum number of queries in flight (1 or more)
+     */
+    public CassandraPartitionQueries(Session tSession, int tWindow) {
+        Test.ensureTrue(tWindow >= 1, "partitionQueryWindow must be 1 or more.");
+        session = tSession;
+        window = tWindow;
+    }
+
+    /**
+     * This returns true if the window is full (so the caller must call next()
+     * before submitting another statement).
+     */
+    public boolean isFull() {
+        return inFlight.size() >= window;
+    }
+
+    /** This returns the number of queries submitted but not yet returned by next(). */
+    public int nInFlight() {
+        return inFlight.size();
+    }
+
+    /** This returns the number of statements submitted so far. */
+    public int nSubmitted() {
+        return nSubmitted;
+    }
+
+    /** This returns the maximum number of queries that were in flight at one time. */
+    public int maxNInFlight() {
+        return maxNInFlight;
+    }
+
+    /**
+     * This starts executing the statement asynchronously.
+     *
+     * @param statement a BoundStatement from one of the cached PreparedStatements
+     * @throws RuntimeException if the window is full
+     */
+    public void submit(Statement statement) {
+        if (isFull())
+            throw new RuntimeException(MustBe.InternalError +
+                ": CassandraPartitionQueries window is full.");
+        inFlight.addLast(session.executeAsync(statement));
+        nSubmitted++;
+        maxNInFlight = Math.max(maxNInFlight, inFlight.size());
+    }
+
+    /**
+     * This waits for the oldest in-flight query to finish and returns its ResultSet.
+     * Only the first page of results is guaranteed to be fetched; iterating over
+     * the ResultSet fetches the rest (as with session.execute()).
+     *
+     * @return the ResultSet of the oldest submitted statement
+     * @throws Throwable if nothing is in flight, if the query failed (the
+     *    driver's exception is thrown), or if this thread was interrupted.
+     */
+    public ResultSet next() throws Throwable {
+        ResultSetFuture future = inFlight.pollFirst();
+        if (future == null)
+            throw new RuntimeException(MustBe.InternalError +
+                ": CassandraPartitionQueries has no queries in flight.");
+        try {
+            return future.get();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            throw cause == null? ee : cause;
+        }
+    }
+
+    /**
+     * This cancels all queries that are still in flight
+     * (e.g., after an error or when the tableWriter wants no more data).
+     * This is safe to call repeatedly.
+     */
+    public void cancelAll() {
+        int n = inFlight.size();
+        ResultSetFuture future;
+        while ((future = inFlight.pollFirst()) != null)
+            future.cancel(true);
+        if (verbose && n > 0)
+            String2.log("CassandraPartitionQueries.cancelAll() cancelled " + n + " queries.");
+    }
+
+
+    /**
+     * This runs the queries for partitions 0 ... nPartitions-1 and processes
+     * their ResultSets in partition order.
+     * If window is 1 (or there is just 1 partition), each query is executed
+     * (session.execute) and processed before the next statement is made.
+     * Otherwise, up to window queries are in flight (executeAsync) while the
+     * oldest one's ResultSet is being processed.
+     * This stops (and cancels the queries in flight) as soon as 
+     * tableWriter.noMoreDataPlease, or if there is an error.
+     *
+     * @param session the Cassandra session
+     * @param window the maximum number of queries in flight (1 or more)
+     * @param nPartitions the number of partitions (queries)
+     * @param maker makes the statement for each partition
+     * @param processor processes the ResultSet of each partition
+     *   (and usually writes some data to tableWriter)
+     * @param tableWriter the tableWriter (just checked for noMoreDataPlease)
+     * @return the CassandraPartitionQueries that was used (for its statistics),
+     *   or null if the queries were executed one at a time
+     * @throws Throwable if trouble
+     */
+    public static CassandraPartitionQueries run(Session session, int window, 
+        int nPartitions, StatementMaker maker, ResultSetProcessor processor,
+        TableWriter tableWriter) throws Throwable {
+
+        if (window <= 1 || nPartitions <= 1) {
+            for (int partition = 0; partition < nPartitions; partition++) {
+                processor.process(session.execute(maker.make(partition)));
+                if (tableWriter.noMoreDataPlease) 
+                    break;
+            }
+            return null;
+        }
+
+        CassandraPartitionQueries pipeline = new CassandraPartitionQueries(session, window);
+        try {
+            for (int partition = 0; partition < nPartitions; partition++) {
+                Statement statement = maker.make(partition);
+                //if the window is full, process the oldest query's results first
+                if (pipeline.isFull())
+                    processor.process(pipeline.next());
+                if (tableWriter.noMoreDataPlease) 
+                    break;
+                pipeline.submit(statement);
+            }
+
+            //process the results of the queries still in flight
+            while (pipeline.nInFlight() > 0 && !tableWriter.noMoreDataPlease) 
+                processor.process(pipeline.next());
+        } finally {
+            //after an error or noMoreDataPlease, don't leave queries running
+            pipeline.cancelAll();
+        }
+        return pipeline;
+    }
+
+
+    /**
+     * This makes a stand-in Session (for tests): executeAsync(statement)
+     * completes after a delay taken from the statement's query string
+     * (e.g., "q3 40" completes after 40 ms; "fail" fails)
+     * and the resulting ResultSet's toString() is the query string.
+     * execute(statement) is executeAsync(statement).get().
+     * Other Session methods throw UnsupportedOperationException.
+     *
+     * @param timer the executor which completes the futures
+     * @param nRunning is incremented when a query starts and decremented when it finishes
+     * @param maxNRunning records the maximum value of nRunning
+     */
+    static Session standInSession(final ScheduledExecutorService timer,
+        final AtomicInteger nRunning, final AtomicInteger maxNRunning) {
+
+        ClassLoader loader = CassandraPartitionQueries.class.getClassLoader();
+        return (Session)Proxy.newProxyInstance(loader, new Class[]{Session.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("toString"))
+                    return "standInSession";
+                if (method.getName().equals("execute") && 
+                    args[0] instanceof SimpleStatement) {
+                    try {
+                        return ((ResultSetFuture)Session.class.getMethod("executeAsync", 
+                            Statement.class).invoke(proxy, args[0])).get();
+                    } catch (ExecutionException ee) {
+                        throw ee.getCause();
+                    }
+                }
+                if (!method.getName().equals("executeAsync") ||
+                    !(args[0] instanceof SimpleStatement))
+                    throw new UnsupportedOperationException(method.getName());
+                final String query = ((SimpleStatement)args[0]).getQueryString();
+                String parts[] = String2.split(query, ' ');
+                long delay = parts.length > 1? String2.parseLong(parts[1]) : 0;
+                final CompletableFuture<ResultSet> cf = new CompletableFuture();
+                maxNRunning.accumulateAndGet(nRunning.incrementAndGet(), Math::max);
+                final ResultSet rs = (ResultSet)Proxy.newProxyInstance(loader,
+                    new Class[]{ResultSet.class},
+                    (rsProxy, rsMethod, rsArgs) -> {
+                        if (rsMethod.getName().equals("toString"))
+                            return query;
+                        throw new UnsupportedOperationException(rsMethod.getName());
+                    });
+                timer.schedule(() -> {
+                    nRunning.decrementAndGet();
+                    if (query.startsWith("fail"))
+                        cf.completeExceptionally(new RuntimeException("stand-in failure: " + query));
+                    else cf.complete(rs);
+                }, delay, TimeUnit.MILLISECONDS);
+
+                //ResultSetFuture's Future methods are delegated to the CompletableFuture
+                return Proxy.newProxyInstance(loader, new Class[]{ResultSetFuture.class},
+                    (fProxy, fMethod, fArgs) -> {
+                        String name = fMethod.getName();
+                        if (name.equals("toString"))
+                            return "future(" + query + ")";
+                        if (name.equals("getUninterruptibly"))
+                            return cf.join();
+                        if (name.equals("addListener"))
+                            throw new UnsupportedOperationException(name);
+                        try {
+                            return CompletableFuture.class.getMethod(name,
+                                fMethod.getParameterTypes()).invoke(cf, fArgs);
+                        } catch (InvocationTargetException ite) {
+                            throw ite.getCause();
+                        }
+                    });
+            });
+    }
+
+    /**
+     * This tests the window, ordering, error and cancel behavior with a stand-in Session.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** CassandraPartitionQueries.basicTest()");
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(8);
+        try {
+            AtomicInteger nRunning = new AtomicInteger();
+            AtomicInteger maxNRunning = new AtomicInteger();
+            Session session = standInSession(timer, nRunning, maxNRunning);
+
+            //results come back in submission order, even if later queries finish first
+            int n = 16;
+            int window = 4;
+            CassandraPartitionQueries cpq = new CassandraPartitionQueries(session, window);
+            ArrayList<String> results = new ArrayList();
+            cpq.submit(new SimpleStatement("warmUp 0"));
+            Test.ensureEqual(cpq.next().toString(), "warmUp 0", "");
+            long time = System.currentTimeMillis();
+            for (int i = 0; i < n; i++) {
+                if (cpq.isFull())
+                    results.add(cpq.next().toString());
+                cpq.submit(new SimpleStatement("q" + i + " " + (i % 4 == 0? 80 : 40)));
+            }
+            while (cpq.nInFlight() > 0)
+                results.add(cpq.next().toString());
+            time = System.currentTimeMillis() - time;
+            Test.ensureEqual(results.size(), n, "");
+            for (int i = 0; i < n; i++)
+                Test.ensureTrue(results.get(i).startsWith("q" + i + " "), "i=" + i + " " + results.get(i));
+            Test.ensureEqual(cpq.nSubmitted(), n + 1, "");
+            Test.ensureEqual(cpq.maxNInFlight(), window, "");
+            Test.ensureTrue(maxNRunning.get() <= window, "maxNRunning=" + maxNRunning.get());
+            //sequential would take 4*80 + 12*40 = 800ms; windowed ~ 4*80 = 320ms
+            String2.log("windowed time=" + time + "ms (sequential would be ~800ms)");
+
+            //window=1 is sequential
+            maxNRunning.set(0);
+            cpq = new CassandraPartitionQueries(session, 1);
+            cpq.submit(new SimpleStatement("a 5"));
+            Test.ensureTrue(cpq.isFull(), "");
+            boolean caught = false;
+            try {
+                cpq.submit(new SimpleStatement("b 5"));
+            } catch (RuntimeException e) {
+                caught = true;
+                Test.ensureTrue(e.getMessage().indexOf("window is full") >= 0, e.getMessage());
+            }
+            Test.ensureTrue(caught, "submit() to a full window should throw.");
+            Test.ensureEqual(cpq.next().toString(), "a 5", "");
+            Test.ensureEqual(maxNRunning.get(), 1, "");
+
+            //a failed query throws the driver's exception from next()
+            cpq = new CassandraPartitionQueries(session, 3);
+            cpq.submit(new SimpleStatement("ok 5"));
+            cpq.submit(new SimpleStatement("fail 5"));
+            cpq.submit(new SimpleStatement("later 500"));
+            Test.ensureEqual(cpq.next().toString(), "ok 5", "");
+            try {
+                cpq.next();
+                throw new RuntimeException("Shouldn't get here.");
+            } catch (Throwable t) {
+                Test.ensureTrue(t.getMessage().indexOf("stand-in failure: fail 5") >= 0,
+                    MustBe.throwableToString(t));
+            }
+
+            //cancelAll cancels what is left
+            Test.ensureEqual(cpq.nInFlight(), 1, "");
+            cpq.cancelAll();
+            Test.ensureEqual(cpq.nInFlight(), 0, "");
+            cpq.cancelAll(); //safe to call again
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * This tests run() (the loop that EDDTableFromCassandra.getDataForDapQuery uses)
+     * with a stand-in Session: the rows of each partition must reach the 
+     * TableWriter in partition order, and if the TableWriter sets noMoreDataPlease, 
+     * no more results are processed and the queries in flight are cancelled.
+     */
+    public static void testRun() throws Throwable {
+        String2.log("\n*** CassandraPartitionQueries.testRun()");
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(8);
+        try {
+            AtomicInteger nRunning = new AtomicInteger();
+            AtomicInteger maxNRunning = new AtomicInteger();
+            Session session = standInSession(timer, nRunning, maxNRunning);
+            int nPartitions = 12;
+            //later partitions' queries finish sooner
+            StatementMaker maker = partition -> new SimpleStatement(
+                "p" + partition + " " + (5 * (nPartitions - partition)));
+
+            for (int window = 1; window <= 5; window += 2) {
+                //each partition's ResultSet becomes 2 rows; 
+                //  like getDataForCassandraResultSet, rows are written in chunks of 3
+                final IntArray written = new IntArray();
+                final int nWriteSome[] = {0};
+                final int writeLimit[] = {Integer.MAX_VALUE};
+                final TableWriter tw = new TableWriter(null, null, null) {
+                    public void writeSome(Table table) throws Throwable {
+                        nWriteSome[0]++;
+                        written.append(table.getColumn(0));
+                        if (written.size() >= writeLimit[0])
+                            noMoreDataPlease = true;
+                    }
+                    public void finish() throws Throwable {
+                    }
+                };
+                final Table table = new Table();
+                table.addColumn("partition", new IntArray());
+                final StringBuilder processed = new StringBuilder();
+                ResultSetProcessor processor = rs -> {
+                    String query = rs.toString();
+                    processed.append(query.substring(0, query.indexOf(' ')) + ",");
+                    int partition = String2.parseInt(query.substring(1, query.indexOf(' ')));
+                    for (int i = 0; i < 2; i++) {
+                        table.getColumn(0).addInt(partition);
+                        if (table.nRows() == 3) {
+                            tw.writeSome(table);
+                            table.removeAllRows();
+                        }
+                    }
+                };
+
+                //all partitions, in order
+                //(the stand-in's cancelled queries still run to the end of their delay)
+                while (nRunning.get() > 0)
+                    Math2.sleep(5);
+                maxNRunning.set(0);
+                CassandraPartitionQueries cpq = run(session, window, nPartitions, 
+                    maker, processor, tw);
+                Test.ensureEqual(cpq == null, window == 1, "window=" + window);
+                if (table.nRows() > 0)
+                    tw.writeSome(table);
+                Test.ensureEqual(written.toString(), 
+                    "0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11", 
+                    "window=" + window);
+                Test.ensureEqual(nWriteSome[0], 8, "window=" + window);
+                Test.ensureTrue(maxNRunning.get() <= window, 
+                    "window=" + window + " maxNRunning=" + maxNRunning.get());
+                if (cpq != null) {
+                    Test.ensureEqual(cpq.nSubmitted(), nPartitions, "window=" + window);
+                    Test.ensureEqual(cpq.nInFlight(), 0, "window=" + window);
+                }
+
+                //noMoreDataPlease after the 2nd writeSome (partitions 0, 1 and part of 2):
+                //  no more ResultSets are processed and the rest are cancelled
+                written.clear();
+                table.removeAllRows();
+                processed.setLength(0);
+                writeLimit[0] = 6;
+                cpq = run(session, window, nPartitions, maker, processor, tw);
+                Test.ensureEqual(tw.noMoreDataPlease, true, "");
+                Test.ensureEqual(written.toString(), "0, 0, 1, 1, 2, 2", "window=" + window);
+                Test.ensureEqual(processed.toString(), "p0,p1,p2,", "window=" + window);
+                if (cpq != null) {
+                    //partitions 0..2 were processed and window-1 more were in flight
+                    Test.ensureEqual(cpq.nSubmitted(), 3 + window - 1, "window=" + window);
+                    Test.ensureEqual(cpq.nInFlight(), 0, "window=" + window);
+                }
+            }
+
+            //an error in a query is thrown and the rest are cancelled
+            StatementMaker failMaker = partition -> new SimpleStatement(
+                (partition == 2? "fail" : "p" + partition) + " 5");
+            for (int window = 1; window <= 3; window += 2) {
+                StringBuilder processed = new StringBuilder();
+                TableWriter tw = new TableWriter(null, null, null) {
+                    public void writeSome(Table table) {}
+                    public void finish() {}
+                };
+                try {
+                    run(session, window, nPartitions, failMaker, 
+                        rs -> processed.append(rs.toString() + ","), tw);
+                    throw new RuntimeException("Shouldn't get here.");
+                } catch (Throwable t) {
+                    Test.ensureTrue(t.getMessage().indexOf("stand-in failure: fail 5") >= 0,
+                        MustBe.throwableToString(t));
+                }
+                Test.ensureEqual(processed.toString(), "p0 5,p1 5,", "window=" + window);
+            }
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 1;
+        String msg = "\n^^^ CassandraPartitionQueries.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                    if (test ==  1) testRun();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,494 @@
+/*
+ * DatabaseResultSetReader Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.DoubleArray;
+import com.cohort.array.FloatArray;
+import com.cohort.array.IntArray;
+import com.cohort.array.LongArray;
+import com.cohort.array.PAType;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.array.StringArray;
+import com.cohort.array.ULongArray;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.erddap.variable.EDV;
+import gov.noaa.pfel.erddap.variable.EDVTimeStamp;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * This reads the rows of a JDBC ResultSet into typed columns (PrimitiveArrays),
+ * a batch (up to maxRows rows) at a time.
+ * The way each column is read (getDouble, getTimestamp, ...) is decided once,
+ * from the EDV's source data type, not for each cell.
+ * EDDTableFromDatabase.getDataForDapQuery uses this so that it can hand
+ * fixed-size batches to standardizeResultsTable and tableWriter.writeSome
+ * as they fill, while (with a fetchSize, see setUpStreaming) the JDBC driver
+ * fetches the rest of the results from the database.
+ *
+ * @author agent (agent@local) 2026-10-17
+ */
+public class DatabaseResultSetReader {
+
+    /** 
+     * The number of rows per fetch if the dataset and the connection don't specify one. 
+     */
+    public final static int DEFAULT_FETCH_SIZE = 10000;
+
+    /** The ways a column can be read. */
+    public final static int BOOLEAN = 0, TIMESTAMP = 1, STRING = 2, DOUBLE = 3,
+        FLOAT = 4, ULONG = 5, LONG = 6, INT = 7;
+
+    private final ResultSet rs;
+    private final int rsCols[];  //1..
+    private final int kinds[];
+    private boolean exhausted = false;
+    private long nRowsRead = 0;
+
+    /**
+     * This constructs a reader for the columns of rs which hold the
+     * source data of the resultsEDVs.
+     *
+     * @param tRs the resultSet, positioned before the first row
+     * @param resultsEDVs the EDV for each column to be read (in table column order)
+     * @throws SQLException if a sourceName isn't a column in the resultSet
+     */
+    public DatabaseResultSetReader(ResultSet tRs, EDV resultsEDVs[]) throws SQLException {
+        int nRv = resultsEDVs.length;
+        rs = tRs;
+        rsCols = new int[nRv];
+        kinds = new int[nRv];
+        for (int rv = 0; rv < nRv; rv++) {
+            rsCols[rv] = rs.findColumn(resultsEDVs[rv].sourceName()); //1..  throws exception if not found
+            kinds[rv] = kindOf(resultsEDVs[rv]);
+        }
+    }
+
+    /**
+     * This constructs a reader given the resultSet column numbers and kinds.
+     *
+     * @param tRs the resultSet, positioned before the first row
+     * @param tRsCols the resultSet column number (1..) for each table column
+     * @param tKinds the kind (BOOLEAN, ...) of each table column.
+     *   The values are added to the PrimitiveArrays passed to readBatch with
+     *   addInt, addLong, addDouble, ..., so (as with the source data type of an 
+     *   EDVTimeStamp, which may be e.g., String) any type of array is okay,
+     *   except that ULONG needs a ULongArray.
+     */
+    public DatabaseResultSetReader(ResultSet tRs, int tRsCols[], int tKinds[]) {
+        Test.ensureEqual(tRsCols.length, tKinds.length, "rsCols.length != kinds.length");
+        rs = tRs;
+        rsCols = tRsCols;
+        kinds = tKinds;
+    }
+
+    /**
+     * This returns the kind of column reader needed for an EDV.
+     * Unsigned types go to the next bigger signed type (as in the constraint
+     * values of EDDTableFromDatabase's PreparedStatement).
+     */
+    public static int kindOf(EDV edv) {
+        if (edv.isBoolean())                return BOOLEAN;
+        if (edv instanceof EDVTimeStamp)    return TIMESTAMP;
+        PAType tPAType = edv.sourceDataPAType();
+        if (tPAType == PAType.STRING)       return STRING;
+        if (tPAType == PAType.DOUBLE)       return DOUBLE;
+        if (tPAType == PAType.FLOAT)        return FLOAT;
+        if (tPAType == PAType.ULONG)        return ULONG;
+        if (tPAType == PAType.LONG ||
+            tPAType == PAType.UINT)         return LONG;
+        return INT;
+    }
+
+    /**
+     * This sets the statement and connection up so that the JDBC driver
+     * fetches fetchSize rows at a time (instead of, e.g., PostgreSQL's default
+     * of reading the entire result set into memory before returning the first row).
+     * PostgreSQL only uses a cursor if autoCommit is off, so this turns it off.
+     * Call this before statement.executeQuery().
+     *
+     * @param connection the connection
+     * @param statement the statement
+     * @param fetchSize the number of rows per fetch. 
+     *   If 0, this does nothing (the driver's defaults are used).
+     *   If &lt; 0, the statement's fetch size (e.g., from a connectionProperty
+     *   like PostgreSQL's defaultRowFetchSize) is used if it was set, 
+     *   else DEFAULT_FETCH_SIZE.
+     * @return true if this turned autoCommit off (so the caller must call
+     *   finishStreaming(connection) before connection.close()).
+     * @throws SQLException if trouble
+     */
+    public static boolean setUpStreaming(Connection connection, Statement statement,
+        int fetchSize) throws SQLException {
+        if (fetchSize == 0)
+            return false;
+        if (fetchSize > 0 || statement.getFetchSize() <= 0) 
+            statement.setFetchSize(fetchSize > 0? fetchSize : DEFAULT_FETCH_SIZE);
+        if (connection.getAutoCommit()) {
+            connection.setAutoCommit(false);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * This ends the read-only transaction started by setUpStreaming and
+     * restores autoCommit=true (important if the connection goes back to a pool).
+     * Errors are logged, not thrown.
+     *
+     * @param connection the connection
+     */
+    public static void finishStreaming(Connection connection) {
+        try {
+            connection.rollback(); //nothing to commit
+        } catch (Throwable t) {
+            String2.log("DatabaseResultSetReader.finishStreaming caught:\n" +
+                MustBe.throwableToString(t));
+        }
+        //even if rollback failed
+        try {
+            connection.setAutoCommit(true);
+        } catch (Throwable t) {
+            String2.log("DatabaseResultSetReader.finishStreaming caught:\n" +
+                MustBe.throwableToString(t));
+        }
+    }
+
+    /** This returns true if the end of the resultSet has been reached. */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    /** This returns the number of rows read so far. */
+    public long nRowsRead() {
+        return nRowsRead;
+    }
+
+    /**
+     * This reads up to maxRows more rows of data, appending them to paArray.
+     *
+     * @param paArray the destination column for each table column (see the constructor)
+     * @param maxRows the maximum number of rows to be read (1 or more)
+     * @return the number of rows read (0 if the resultSet is exhausted)
+     * @throws SQLException if trouble
+     */
+    public int readBatch(PrimitiveArray paArray[], int maxRows) throws SQLException {
+        int nCols = kinds.length;
+        int nRows = 0;
+        while (nRows < maxRows && !exhausted) {
+            if (!rs.next()) {
+                exhausted = true;
+                break;
+            }
+            for (int col = 0; col < nCols; col++) {
+                int rsCol = rsCols[col];
+                PrimitiveArray pa = paArray[col];
+                switch (kinds[col]) {
+                    case BOOLEAN: {
+                        boolean tb = rs.getBoolean(rsCol);
+                        pa.addInt(rs.wasNull()? Integer.MAX_VALUE : tb? 1 : 0);
+                        break;
+                    }
+                    case TIMESTAMP: { //zulu millis -> epoch seconds
+                        Timestamp tts = rs.getTimestamp(rsCol);
+                        pa.addDouble(tts == null? Double.NaN : tts.getTime() / 1000.0);
+                        break;
+                    }
+                    case STRING: {
+                        String ts = rs.getString(rsCol); //it may return null
+                        pa.addString(ts == null? "" : ts);
+                        break;
+                    }
+                    case DOUBLE: {
+                        double d = rs.getDouble(rsCol);
+                        pa.addDouble(rs.wasNull()? Double.NaN : d);
+                        break;
+                    }
+                    case FLOAT: {
+                        float f = rs.getFloat(rsCol);
+                        pa.addFloat(rs.wasNull()? Float.NaN : f);
+                        break;
+                    }
+                    case ULONG: {
+                        BigDecimal bd = rs.getBigDecimal(rsCol);
+                        ((ULongArray)pa).add(rs.wasNull()? null : Math2.roundToULongOrNull(bd));
+                        break;
+                    }
+                    case LONG: {
+                        long tl = rs.getLong(rsCol);
+                        if (rs.wasNull()) {
+                            pa.setMaxIsMV(true);
+                            tl = Long.MAX_VALUE;
+                        }
+                        pa.addLong(tl);
+                        break;
+                    }
+                    default: { //INT
+                        int ti = rs.getInt(rsCol);
+                        if (rs.wasNull()) {
+                            pa.setMaxIsMV(true);
+                            ti = Integer.MAX_VALUE;
+                        }
+                        pa.addInt(ti);
+                    }
+                }
+            }
+            nRows++;
+        }
+        nRowsRead += nRows;
+        return nRows;
+    }
+
+
+    /**
+     * This makes a stand-in ResultSet (for tests) with the specified rows
+     * (Java objects, null for SQL NULL). Only next, wasNull, findColumn and
+     * the getX(int) methods used by readBatch are supported.
+     *
+     * @param columnNames the column names
+     * @param rows the data
+     * @param nNextCalls nNextCalls[0] is incremented each time next() is called
+     */
+    static ResultSet standInResultSet(final String columnNames[], final Object rows[][],
+        final int nNextCalls[]) {
+        final int state[] = {-1, 0}; //row, wasNull
+        return (ResultSet)Proxy.newProxyInstance(
+            DatabaseResultSetReader.class.getClassLoader(), new Class[]{ResultSet.class},
+            (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.equals("next")) {
+                    nNextCalls[0]++;
+                    return ++state[0] < rows.length;
+                }
+                if (name.equals("wasNull"))
+                    return state[1] == 1;
+                if (name.equals("findColumn")) {
+                    int col = String2.indexOf(columnNames, (String)args[0]);
+                    if (col < 0)
+                        throw new SQLException("column not found: " + args[0]);
+                    return col + 1;
+                }
+                if (!name.startsWith("get") || args == null || !(args[0] instanceof Integer))
+                    throw new UnsupportedOperationException(name);
+                Object o = rows[state[0]][(Integer)args[0] - 1];
+                state[1] = o == null? 1 : 0;
+                if (o != null)
+                    return o;
+                //like JDBC, return 0/false for a NULL primitive
+                Class rc = method.getReturnType();
+                return rc == boolean.class? (Object)Boolean.FALSE :
+                       rc == double.class?  (Object)Double.valueOf(0) :
+                       rc == float.class?   (Object)Float.valueOf(0) :
+                       rc == long.class?    (Object)Long.valueOf(0) :
+                       rc == int.class?     (Object)Integer.valueOf(0) : null;
+            });
+    }
+
+    /**
+     * This tests readBatch's batching and its handling of each kind of column
+     * (including NULLs) with a stand-in ResultSet.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** DatabaseResultSetReader.basicTest()");
+        String names[] = {"b", "t", "s", "d", "f", "l", "i"};
+        Object rows[][] = new Object[5][];
+        for (int row = 0; row < 5; row++)
+            rows[row] = new Object[]{row % 2 == 0, new Timestamp(row * 1000L),
+                "s" + row, row + 0.5, row + 0.25f, 10000000000L + row, row};
+        rows[3] = new Object[]{null, null, null, null, null, null, null};
+        int nNextCalls[] = {0};
+        ResultSet rs = standInResultSet(names, rows, nNextCalls);
+
+        //column order in the table differs from the resultSet
+        DatabaseResultSetReader reader = new DatabaseResultSetReader(rs,
+            new int[]{7, 6, 5, 4, 3, 2, 1},
+            new int[]{INT, LONG, FLOAT, DOUBLE, STRING, TIMESTAMP, BOOLEAN});
+        PrimitiveArray pa[] = {new IntArray(), new LongArray(), new FloatArray(),
+            new DoubleArray(), new StringArray(), new DoubleArray(),
+            PrimitiveArray.factory(PAType.BYTE, 8, false)};
+
+        Test.ensureEqual(reader.readBatch(pa, 2), 2, "");
+        Test.ensureEqual(nNextCalls[0], 2, "rows beyond the batch must not be read");
+        Test.ensureEqual(reader.isExhausted(), false, "");
+        Test.ensureEqual(reader.readBatch(pa, 2), 2, "");
+        Test.ensureEqual(reader.readBatch(pa, 2), 1, "");
+        Test.ensureEqual(reader.isExhausted(), true, "");
+        Test.ensureEqual(reader.readBatch(pa, 2), 0, "");
+        Test.ensureEqual(reader.nRowsRead(), 5, "");
+
+        Test.ensureEqual(pa[0].toString(), "0, 1, 2, 2147483647, 4", "");
+        Test.ensureEqual(pa[0].getMaxIsMV(), true, "");
+        Test.ensureEqual(pa[1].toString(),
+            "10000000000, 10000000001, 10000000002, 9223372036854775807, 10000000004", "");
+        Test.ensureEqual(pa[2].toString(), "0.25, 1.25, 2.25, NaN, 4.25", "");
+        Test.ensureEqual(pa[3].toString(), "0.5, 1.5, 2.5, NaN, 4.5", "");
+        Test.ensureEqual(pa[4].toString(), "s0, s1, s2, , s4", "");
+        Test.ensureEqual(pa[5].toString(), "0.0, 1.0, 2.0, NaN, 4.0", "");
+        Test.ensureEqual(pa[6].toString(), "1, 0, 1, 127, 1", "");
+
+        //an EDVTimeStamp's source data type needn't be double (e.g., String)
+        reader = new DatabaseResultSetReader(standInResultSet(names, rows, nNextCalls),
+            new int[]{2}, new int[]{TIMESTAMP});
+        pa = new PrimitiveArray[]{new StringArray()};
+        Test.ensureEqual(reader.readBatch(pa, 100), 5, "");
+        Test.ensureEqual(pa[0].toString(), "0.0, 1.0, 2.0, , 4.0", "");
+
+        //no columns is okay (e.g., just counting rows)
+        reader = new DatabaseResultSetReader(standInResultSet(names, rows, nNextCalls),
+            new EDV[0]);
+        Test.ensureEqual(reader.readBatch(new PrimitiveArray[0], 100), 5, "");
+        Test.ensureEqual(reader.isExhausted(), true, "");
+    }
+
+    /**
+     * This makes a stand-in Connection or Statement (for tests) which records
+     * the calls to its methods in log (e.g., "setAutoCommit(false)\n")
+     * and keeps the autoCommit and fetchSize settings in state.
+     *
+     * @param tClass Connection.class or Statement.class
+     * @param state state[0] is autoCommit (0=false, 1=true), state[1] is the fetchSize
+     * @param log receives the calls
+     * @param failRollback if true, rollback() throws an SQLException
+     */
+    static Object standInJdbc(Class tClass, final int state[], final StringBuilder log,
+        final boolean failRollback) {
+        return Proxy.newProxyInstance(
+            DatabaseResultSetReader.class.getClassLoader(), new Class[]{tClass},
+            (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.equals("getAutoCommit")) return state[0] == 1;
+                if (name.equals("getFetchSize"))  return state[1];
+                log.append(name + "(" + (args == null? "" : args[0]) + ")\n");
+                if (name.equals("setAutoCommit")) {state[0] = (Boolean)args[0]? 1 : 0; return null;}
+                if (name.equals("setFetchSize"))  {state[1] = (Integer)args[0];        return null;}
+                if (name.equals("rollback")) {
+                    if (failRollback)
+                        throw new SQLException("rollback failed");
+                    return null;
+                }
+                throw new UnsupportedOperationException(name);
+            });
+    }
+
+    /**
+     * This tests setUpStreaming and finishStreaming with a stand-in Connection and
+     * Statement, notably that a connection (e.g., from a pool) is left with
+     * autoCommit as it was.
+     */
+    public static void testStreaming() throws Throwable {
+        String2.log("\n*** DatabaseResultSetReader.testStreaming()");
+        StringBuilder log = new StringBuilder();
+        int cState[] = {1, 0}; 
+        int sState[] = {1, 0};
+        Connection con = (Connection)standInJdbc(Connection.class, cState, log, false);
+        Statement stat = (Statement)standInJdbc(Statement.class,   sState, log, false);
+
+        //fetchSize=0: do nothing
+        Test.ensureEqual(setUpStreaming(con, stat, 0), false, "");
+        Test.ensureEqual(log.toString(), "", "");
+
+        //fetchSize>0 and autoCommit: turn autoCommit off, then restore it
+        Test.ensureEqual(setUpStreaming(con, stat, 500), true, "");
+        Test.ensureEqual(sState[1], 500, "");
+        Test.ensureEqual(cState[0], 0, "");
+        finishStreaming(con);
+        Test.ensureEqual(cState[0], 1, "");
+        Test.ensureEqual(log.toString(),
+            "setFetchSize(500)\n" +
+            "setAutoCommit(false)\n" +
+            "rollback()\n" +
+            "setAutoCommit(true)\n", "");
+
+        //fetchSize=-1: use the statement's fetchSize (e.g., from a connectionProperty) if set
+        log.setLength(0);
+        sState[1] = 200;
+        Test.ensureEqual(setUpStreaming(con, stat, -1), true, "");
+        Test.ensureEqual(sState[1], 200, "");
+        finishStreaming(con);
+        Test.ensureEqual(log.toString(),
+            "setAutoCommit(false)\n" +
+            "rollback()\n" +
+            "setAutoCommit(true)\n", "");
+
+        //fetchSize=-1 and the statement has none: DEFAULT_FETCH_SIZE
+        sState[1] = 0;
+        Test.ensureEqual(setUpStreaming(con, stat, -1), true, "");
+        Test.ensureEqual(sState[1], DEFAULT_FETCH_SIZE, "");
+        finishStreaming(con);
+
+        //the connection is already in a transaction (autoCommit=false): leave it alone
+        log.setLength(0);
+        cState[0] = 0;
+        Test.ensureEqual(setUpStreaming(con, stat, 500), false, "");
+        Test.ensureEqual(cState[0], 0, "");
+        Test.ensureEqual(log.toString(), "setFetchSize(500)\n", "");
+
+        //if rollback fails, autoCommit is still restored and nothing is thrown
+        log.setLength(0);
+        cState[0] = 1;
+        con = (Connection)standInJdbc(Connection.class, cState, log, true);
+        Test.ensureEqual(setUpStreaming(con, stat, 500), true, "");
+        finishStreaming(con);
+        Test.ensureEqual(cState[0], 1, "");
+        Test.ensureEqual(log.toString(),
+            "setFetchSize(500)\n" +
+            "setAutoCommit(false)\n" +
+            "rollback()\n" +
+            "setAutoCommit(true)\n", "");
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 1;
+        String msg = "\n^^^ DatabaseResultSetReader.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                    if (test ==  1) testStreaming();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -268,6 +268,9 @@ public abstract class EDD {
     public final static int WMS_MAX_WIDTH = 4096; //arbitrary EDDGrid and EDDTable.saveAsImage now use these, too
     public final static int WMS_MAX_HEIGHT = 4096; //arbitrary
     public final static char WMS_SEPARATOR = ':'; //separates datasetID and variable name (not a valid interior char)
+    public final static String WMS_TILES = "tiles"; //part of url for wms tiles: tiles/layer/z/x/y.png
+    public final static int WMS_TILE_SIZE = 256; //width and height of wms tiles, in pixels
+    public final static int WMS_TILE_MAX_ZOOM = 16; //at z, tiles are 180/2^z degrees wide and high
 
     public final static String STANDARDIZEWHAT = "standardizeWhat"; 
 
@@ -368,6 +371,7 @@ public abstract class EDD {
 
     /** Things related to incremental update */
     protected long lastUpdate = 0; //System.currentTimeMillis at completion of last update
+    protected volatile long lastChangeMillis = creationTimeMillis; //System.currentTimeMillis at start of last update that made a change
     protected int updateEveryNMillis = 0; // <=0 means incremental update not active
     protected ReentrantLock updateLock = null;  //setUpdateEveryNMillis creates this if needed
     protected long cumulativeUpdateTime = 0, updateCount = 0; 
@@ -1177,6 +1181,17 @@ public abstract class EDD {
             cause + "\n"); 
     }
 
+    /**
+     * This is called (e.g., by LoadDatasets) when this instance of the dataset
+     * has been replaced by a new instance (e.g., after a reload) or removed,
+     * so that it can release things which a new instance mustn't share
+     * (e.g., EDDTableFromFiles' MappedFileTable).
+     * Requests which are already using this instance may continue to use it.
+     * This default implementation does nothing.
+     */
+    public void releaseResources() {
+    }
+
 
     /**
      * The directory in which information for this dataset (e.g., fileTable.nc) is stored.
@@ -1221,7 +1236,9 @@ public abstract class EDD {
         String dir = datasetDir(tDatasetID);
         if (verbose)
             String2.log("*** deleting cached dataset info for datasetID=" + tDatasetID);
-        File2.deleteAllFiles(dir);  //just files, not subdirs.  Are there ever subdirs?
+        File2.deleteAllFiles(dir);  //just files, not subdirs
+        //and EDDTableFromFiles' mappedFileTable.[n] subdirs (or, if open, when they are closed)
+        MappedFileTable.deleteAll(dir);
         //was: delete individual files, e.g, dir + QUICK_RESTART_FILENAME
     }
 
@@ -2386,6 +2403,14 @@ public abstract class EDD {
      */
     public long creationTimeMillis() {return creationTimeMillis; }
 
+    /**
+     * lastChangeMillis indicates when this dataset was last changed by update()
+     * (or creationTimeMillis if it hasn't been changed).
+     * 
+     * @return when this dataset was last changed
+     */
+    public long lastChangeMillis() {return lastChangeMillis; }
+
 
     /** 
      * reloadEveryNMinutes indicates how often this program should check
@@ -2478,7 +2503,12 @@ public abstract class EDD {
             return false; 
         } //else: this thread got the lock. Do the update!
         try {
-            return lowUpdate(msg, startUpdateMillis);
+            boolean changed = lowUpdate(msg, startUpdateMillis);
+            if (changed) {
+                lastChangeMillis = startUpdateMillis;
+                ResponseCache.invalidate(datasetID);
+            }
+            return changed;
 
         } finally {  
             lastUpdate = startUpdateMillis;     //say dataset is now up-to-date (or at least tried)
@@ -30,6 +30,7 @@ import dods.dap.*;
 import gov.noaa.pfel.coastwatch.griddata.DataHelper;
 import gov.noaa.pfel.coastwatch.griddata.Grid;
 import gov.noaa.pfel.coastwatch.griddata.Matlab;
+import gov.noaa.pfel.coastwatch.griddata.Nc3StreamWriter;
 import gov.noaa.pfel.coastwatch.griddata.NcHelper;
 import gov.noaa.pfel.coastwatch.griddata.OpendapHelper;
 import gov.noaa.pfel.coastwatch.pointdata.Table;
@@ -2519,6 +2520,11 @@ public abstract class EDDGrid extends EDD {
                 dir + fileName + ".nc" : fullName);
             int random = Math2.random(Integer.MAX_VALUE);
 
+            //if not already cached, stream .nc (not write the file, then copy it) if possible
+            if (fileTypeName.equals(".nc") && !File2.isFile(cacheFullName) &&
+                saveAsNc3Stream(ipAddress, requestUrl, userDapQuery, outputStreamSource))
+                return;
+
             //thread-safe creation of the file 
             //(If there are almost simultaneous requests for the same one, only one thread will make it.)
             ReentrantLock lock = String2.canonicalLock(cacheFullName);
@@ -7866,6 +7872,32 @@ Attributes {
             stream.write(0); //0 padded to 8 byte boundary
     }
 
+    /**
+     * This ensures the size of a .nc response for a gridDataAccessor is &lt; 2GB
+     * and tallies large requests.
+     *
+     * @param gda a gridDataAccessor for the request
+     * @param ipAddress the requester's ipAddress
+     * @throws SimpleException if the response would be too big
+     */
+    protected static void ensureNcSizeOkay(GridDataAccessor gda, String ipAddress) {
+        //ensure file size < 2GB  
+        //???is there a way to allow >2GB netcdf 3 files?
+        //Yes: the 64-bit extension!  But this code doesn't yet use that.
+        //   And even if so, what about OS limit ERDDAP is running on? and client OS?
+        //Or, view this as protection against accidental requests for too much data (e.g., whole dataset).
+        if (gda.totalNBytes() > 2100000000) //leave some space for axis vars, etc.
+            throw new SimpleException(Math2.memoryTooMuchData + "  " +
+                MessageFormat.format(EDStatic.errorMoreThan2GB,
+                    ".nc", ((gda.totalNBytes() + 100000) / Math2.BytesPerMB) + " MB"));
+
+        if (gda.totalNBytes() > 1000000000) { //1GB
+            EDStatic.tally.add("Large Request, IP address (since last Major LoadDatasets)", ipAddress);
+            EDStatic.tally.add("Large Request, IP address (since last daily report)",       ipAddress);
+            EDStatic.tally.add("Large Request, IP address (since startup)",                 ipAddress);
+        }
+    }
+
     /**
      * Save the grid data in a netCDF .nc3 file.
      * This overwrites any existing file of the specified name.
@@ -7991,21 +8023,7 @@ Attributes {
         GridDataAccessor gda = new GridDataAccessor(this, requestUrl, userDapQuery, 
             true, false);  //rowMajor, convertToNaN         
 
-        //ensure file size < 2GB  
-        //???is there a way to allow >2GB netcdf 3 files?
-        //Yes: the 64-bit extension!  But this code doesn't yet use that.
-        //   And even if so, what about OS limit ERDDAP is running on? and client OS?
-        //Or, view this as protection against accidental requests for too much data (e.g., whole dataset).
-        if (gda.totalNBytes() > 2100000000) //leave some space for axis vars, etc.
-            throw new SimpleException(Math2.memoryTooMuchData + "  " +
-                MessageFormat.format(EDStatic.errorMoreThan2GB,
-                    ".nc", ((gda.totalNBytes() + 100000) / Math2.BytesPerMB) + " MB"));
-
-        if (gda.totalNBytes() > 1000000000) { //1GB
-            EDStatic.tally.add("Large Request, IP address (since last Major LoadDatasets)", ipAddress);
-            EDStatic.tally.add("Large Request, IP address (since last daily report)",       ipAddress);
-            EDStatic.tally.add("Large Request, IP address (since startup)",                 ipAddress);
-        }
+        ensureNcSizeOkay(gda, ipAddress);
 
         //** Then get gridDataAllAccessor
         //AllAccessor so max length of String variables will be known.
@@ -8162,6 +8180,107 @@ Attributes {
         }
 
     }
+
+    /**
+     * This streams the grid data as a NetCDF-3 .nc file directly to the outputStream
+     * (i.e., without making a file in the cache directory and then copying it),
+     * so the first bytes are sent right away and no disk space is needed.
+     * The file is equivalent to the one made by saveAsNc(NETCDF3, ..., keepUnusedAxes=true, lonAdjust=0).
+     * This is only possible for grid (not axis) queries where all of the
+     * data variables are numeric (the maximum length of String values
+     * would be needed before the header is written).
+     * Since NetCDF-3 stores each variable's data contiguously, 
+     * the data is requested one data variable at a time (like saveAsDODS).
+     * If no exception is thrown and this returns true, the data was successfully written.
+     * 
+     * @param ipAddress the requester's ipAddress
+     * @param requestUrl the part of the user's request, after EDStatic.baseUrl, before '?'.
+     * @param userDapQuery an OPeNDAP DAP-style query string, still percentEncoded 
+     *   (shouldn't be null). 
+     *   e.g., ATssta[45:1:45][0:1:0][120:10:140][130:10:160]
+     * @param outputStreamSource the source of an outputStream that receives the results,
+     *    usually already buffered.  The outputStream is closed at the end (if it was used).
+     * @return true if the response was written. 
+     *    false if this request can't be streamed (nothing was written) 
+     *    and the caller should use saveAsNc.
+     * @throws Throwable if trouble (e.g., invalid query, too much data)
+     */
+    public boolean saveAsNc3Stream(String ipAddress, String requestUrl, String userDapQuery, 
+        OutputStreamSource outputStreamSource) throws Throwable {
+
+        if (isAxisDapQuery(userDapQuery))
+            return false;
+        long time = System.currentTimeMillis();
+
+        //** create gridDataAccessor first, 
+        //to check for error when parsing query and to check that file size < 2GB
+        //This throws exception if invalid query.
+        GridDataAccessor gda = new GridDataAccessor(this, requestUrl, userDapQuery, 
+            true, false);  //rowMajor, convertToNaN         
+        GridDataAccessor partialGda = null;
+        try {
+            EDV tDataVariables[] = gda.dataVariables();
+            int nDv = tDataVariables.length;
+            for (int dv = 0; dv < nDv; dv++) {
+                if (!Nc3StreamWriter.isSupported(tDataVariables[dv].destinationDataPAType()))
+                    return false;
+            }
+            ensureNcSizeOkay(gda, ipAddress);
+            if (reallyVerbose) String2.log("  EDDGrid.saveAsNc3Stream"); 
+
+            //define the file 
+            //(same items in same order as saveAsNc)
+            Nc3StreamWriter writer = new Nc3StreamWriter();
+            int nAv = axisVariables.length;
+            int dims[] = new int[nAv];
+            for (int av = 0; av < nAv; av++) 
+                dims[av] = writer.addDimension(axisVariables[av].destinationName(), 
+                    gda.axisValues(av).size());
+            for (int av = 0; av < nAv; av++) 
+                writer.addVariable(axisVariables[av].destinationName(), 
+                    gda.axisValues(av).elementType(), new int[]{dims[av]}, 
+                    gda.axisAttributes(av));
+            for (int dv = 0; dv < nDv; dv++)
+                writer.addVariable(tDataVariables[dv].destinationName(), 
+                    tDataVariables[dv].destinationDataPAType(), dims, 
+                    gda.dataAttributes(dv));
+            writer.setGlobalAttributes(gda.globalAttributes());
+
+            //write the header and the axis values
+            //(I delayed getting actual outputStream as long as possible.)
+            OutputStream out = outputStreamSource.outputStream("", writer.fileSize());
+            try {
+                writer.writeHeader(out);
+                for (int av = 0; av < nAv; av++) 
+                    writer.write(gda.axisValues(av));
+
+                //write the data, one data variable at a time
+                String arrayQuery = buildDapArrayQuery(gda.constraints());
+                for (int dv = 0; dv < nDv; dv++) {
+                    partialGda = new GridDataAccessor(this, requestUrl, 
+                        tDataVariables[dv].destinationName() + arrayQuery, 
+                        true, false);   //rowMajor, convertToNaN
+                    while (partialGda.incrementChunk()) 
+                        writer.write(partialGda.getPartialDataValues(0));
+                    partialGda.releaseResources();
+                    partialGda = null;
+                }
+                writer.finish();
+            } finally {
+                try {out.close();} catch (Exception e) {} 
+            }
+
+            //diagnostic
+            if (reallyVerbose) String2.log("  EDDGrid.saveAsNc3Stream done.  TIME=" + 
+                (System.currentTimeMillis() - time) + "ms\n");
+            return true;
+
+        } finally {
+            gda.releaseResources();
+            if (partialGda != null)
+                partialGda.releaseResources();
+        }
+    }
  
     /**
      * Save the grid data in an NCO JSON .ncoJson file.
@@ -8756,15 +8875,34 @@ Attributes {
      *    (e.g., +-180 or 0..360). 
      *    //note that TableWriter expects time values as doubles, and displays them as ISO 8601 strings
      * If no exception is thrown, the data was successfully written.
+     * For a rowMajor gridDataAccessor, this works a chunk at a time (via incrementChunk),
+     * otherwise a row at a time (via increment).
      * 
      * @param gridDataAccessor The source of data to be written to the tableWriter.
      *    Missing values should be as they are in the source.
      *    Some tableWriter's convert them to other values (e.g., NaN).
+     *    This must be a fresh accessor (increment() and incrementChunk() not yet called).
      * @param tw  This calls tw.finish() at the end.
      * @throws Throwable  if trouble. 
      */
     public void saveAsTableWriter(GridDataAccessor gridDataAccessor, 
         TableWriter tw) throws Throwable {
+        saveAsTableWriter(gridDataAccessor, tw, gridDataAccessor.rowMajor());
+    }
+
+    /**
+     * This is like saveAsTableWriter(gridDataAccessor, tw), but lets the caller
+     * (e.g., a test comparing the two) choose how the rows are gathered.
+     *
+     * @param byChunk if true, this works a chunk at a time (the gridDataAccessor must be rowMajor),
+     *    otherwise a row at a time.
+     */
+    void saveAsTableWriter(GridDataAccessor gridDataAccessor, 
+        TableWriter tw, boolean byChunk) throws Throwable {
+
+        if (byChunk && !gridDataAccessor.rowMajor())
+            throw new RuntimeException(String2.ERROR + 
+                " in EDDGrid.saveAsTableWriter: byChunk requires a rowMajor gridDataAccessor.");
 
         //create the table (with one dummy row of data)
         Table table = new Table();
@@ -8802,24 +8940,93 @@ Attributes {
 
         //write the data
         int tRows = 0;
-        while (gridDataAccessor.increment()) {
-            //add a row of data to the table
-            for (int av = 0; av < nAv; av++) 
-                gridDataAccessor.getAxisValueAsPAOne(av, avPAOne[av]).addTo(avPa[av]);
-
-            for (int dv = 0; dv < nDv; dv++) 
-                gridDataAccessor.getDataValueAsPAOne(dv, dvPAOne[dv]).addTo(dvPa[dv]);
-
-            tRows++;
+        if (byChunk) {
+            //work a chunk at a time:
+            //in row major order, each chunk is a contiguous block of totalIndex
+            //  where the partial (rightmost) axes cycle and the driver axes are fixed,
+            //so axis values are runs (repeated) and ranges (tiled) of axisValues(av),
+            //and data values are bulk copied from the chunk's PrimitiveArrays.
+            //Rows are added in the same order and with the same nBufferRows writeSome 
+            //  boundaries as the row-at-a-time loop below.
+            NDimensionalIndex totalIndex = gridDataAccessor.totalIndex();
+            int partialShape[] = gridDataAccessor.partialIndex().shape();
+            int nPartial = (int)gridDataAccessor.partialIndex().size(); //safe since partialIndex size checked when constructed
+            int repeat[] = new int[nAv]; //the number of consecutive rows with the same value of av
+            int tRepeat = 1;
+            for (int av = nAv - 1; av >= 0; av--) {
+                repeat[av] = tRepeat;
+                tRepeat *= partialShape[av];
+            }
+            chunkLoop:
+            while (gridDataAccessor.incrementChunk()) {
+                int current[] = totalIndex.getCurrent(); //first cell of the chunk
+                PrimitiveArray partialDataValues[] = gridDataAccessor.getPartialDataValues();
+                int po = 0; //position in the chunk
+                while (po < nPartial) {
+                    int n = Math.min(nPartial - po, nBufferRows - tRows);
+
+                    //add n rows of axis values
+                    for (int av = 0; av < nAv; av++) {
+                        PrimitiveArray axisValues = gridDataAccessor.axisValues(av);
+                        int rep = repeat[av];
+                        int shape = partialShape[av];
+                        int c = po;
+                        int end = po + n;
+                        while (c < end) {
+                            int cycle = c / rep;
+                            int runEnd = Math.min(end, (cycle + 1) * rep);
+                            int index = current[av] + cycle % shape;
+                            if (rep == 1) {
+                                //consecutive values: copy a range up to the end of this cycle 
+                                runEnd = Math.min(end, c + shape - cycle % shape);
+                                avPa[av].addFromPA(axisValues, index, runEnd - c);
+                            } else {
+                                avPa[av].addNPAOnes(runEnd - c, avPAOne[av].readFrom(axisValues, index));
+                            }
+                            c = runEnd;
+                        }
+                    }
 
-            //write the table 
-            if (tRows >= nBufferRows) {
-                tw.writeSome(table);
-                table.removeAllRows();
-                tRows = 0;
-                if (tw.noMoreDataPlease) {
-                    tw.logCaughtNoMoreDataPlease(datasetID);
-                    break;
+                    //add n rows of data values
+                    for (int dv = 0; dv < nDv; dv++) 
+                        dvPa[dv].addFromPA(partialDataValues[dv], po, n);
+
+                    po += n;
+                    tRows += n;
+
+                    //write the table 
+                    if (tRows >= nBufferRows) {
+                        tw.writeSome(table);
+                        table.removeAllRows();
+                        tRows = 0;
+                        if (tw.noMoreDataPlease) {
+                            tw.logCaughtNoMoreDataPlease(datasetID);
+                            break chunkLoop;
+                        }
+                    }
+                }
+            }
+        } else {
+            //e.g., column major: work a row at a time
+            while (gridDataAccessor.increment()) {
+                //add a row of data to the table
+                for (int av = 0; av < nAv; av++) 
+                    gridDataAccessor.getAxisValueAsPAOne(av, avPAOne[av]).addTo(avPa[av]);
+
+                for (int dv = 0; dv < nDv; dv++) 
+                    gridDataAccessor.getDataValueAsPAOne(dv, dvPAOne[dv]).addTo(dvPa[dv]);
+
+                tRows++;
+
+                //write the table 
+                if (tRows >= nBufferRows) {
+                    tw.writeSome(table);
+                    table.removeAllRows();
+                    tRows = 0;
+                    if (tw.noMoreDataPlease) {
+                        tw.logCaughtNoMoreDataPlease(datasetID);
+                        break;
+                    }
                 }
             }
         }
@@ -145,6 +145,9 @@ public abstract class EDDGridFromFiles extends EDDGrid{
     protected String cacheFromUrl = null; //null if inactive
     protected long cacheMaxSizeB = -1; //cache threshold size in B, <=0 = copy the entire dataset
     protected String cachePartialPathRegex = null; //null if inactive
+
+    /** The optional overview pyramids (null if inactive). */
+    protected GridOverviews overviews = null;
     /** When threshold size is reached, prune cache to fraction*threshold. */
     protected double cacheFraction = FileVisitorDNLS.PRUNE_CACHE_DEFAULT_FRACTION; 
 
@@ -195,6 +198,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
         String tCacheFromUrl = null;
         int tCacheSizeGB = -1;
         String tCachePartialPathRegex = null;
+        String tOverviewFactors = null;
 
         //process the tags
         String startOfTags = xmlReader.allTags();
@@ -266,6 +270,8 @@ public abstract class EDDGridFromFiles extends EDDGrid{
             else if (localTags.equals("</cacheSizeGB>")) tCacheSizeGB = String2.parseInt(content); 
             else if (localTags.equals( "<cachePartialPathRegex>")) {}
             else if (localTags.equals("</cachePartialPathRegex>")) tCachePartialPathRegex = content; 
+            else if (localTags.equals( "<overviewFactors>")) {}
+            else if (localTags.equals("</overviewFactors>")) tOverviewFactors = content; 
             else xmlReader.unexpectedTagException();
         }
         int nav = tAxisVariables.size();
@@ -280,8 +286,9 @@ public abstract class EDDGridFromFiles extends EDDGrid{
 
         if (tType == null)
             tType = "";
+        EDDGridFromFiles edd;
         if (tType.equals("EDDGridFromAudioFiles")) 
-            return new EDDGridFromAudioFiles(tDatasetID, 
+            edd = new EDDGridFromAudioFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo, tAccessibleViaWMS,
                 tOnChange, tFgdcFile, tIso19115File,
                 tDefaultDataQuery, tDefaultGraphQuery, tGlobalAttributes,
@@ -294,7 +301,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
                 tnThreads, tDimensionValuesInMemory, 
                 tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
         else if (tType.equals("EDDGridFromNcFiles")) 
-            return new EDDGridFromNcFiles(tDatasetID, 
+            edd = new EDDGridFromNcFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo, tAccessibleViaWMS,
                 tOnChange, tFgdcFile, tIso19115File,
                 tDefaultDataQuery, tDefaultGraphQuery, tGlobalAttributes,
@@ -307,7 +314,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
                 tnThreads, tDimensionValuesInMemory, 
                 tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
         else if (tType.equals("EDDGridFromNcFilesUnpacked")) 
-            return new EDDGridFromNcFilesUnpacked(tDatasetID, 
+            edd = new EDDGridFromNcFilesUnpacked(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo, tAccessibleViaWMS,
                 tOnChange, tFgdcFile, tIso19115File,
                 tDefaultDataQuery, tDefaultGraphQuery, tGlobalAttributes,
@@ -320,7 +327,7 @@ public abstract class EDDGridFromFiles extends EDDGrid{
                 tnThreads, tDimensionValuesInMemory, 
                 tCacheFromUrl, tCacheSizeGB, tCachePartialPathRegex);
         else if (tType.equals("EDDGridFromMergeIRFiles")) 
-            return new EDDGridFromMergeIRFiles(tDatasetID, 
+            edd = new EDDGridFromMergeIRFiles(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo, tAccessibleViaWMS,
                 tOnChange, tFgdcFile, tIso19115File,
                 tDefaultDataQuery, tDefaultGraphQuery, tGlobalAttributes,
@@ -335,6 +342,22 @@ public abstract class EDDGridFromFiles extends EDDGrid{
         else throw new Exception("type=\"" + tType + 
             "\" needs to be added to EDDGridFromFiles.fromXml at end.");
 
+        if (String2.isSomething(tOverviewFactors))
+            edd.setOverviewFactors(String2.csvToIntArray(tOverviewFactors));
+        return edd;
+    }
+
+    /**
+     * This activates this dataset's overview pyramids (see GridOverviews)
+     * and asks the TaskThread to make the overview files which don't exist yet.
+     *
+     * @param tFactors the overview factors, e.g., 2, 4, 8
+     * @throws RuntimeException if trouble (e.g., the dataset doesn't have 
+     *   latitude and longitude axes)
+     */
+    public void setOverviewFactors(int tFactors[]) {
+        overviews = new GridOverviews(this, tFactors);
+        overviews.requestMake();
     }
 
     /**
@@ -1752,6 +1775,9 @@ public abstract class EDDGridFromFiles extends EDDGrid{
             }
 
             //after changes all in place
+            if (overviews != null)
+                overviews.requestMake();
+
 //Currently, update() doesn't trigger these changes.
 //The problem is that some datasets might update every second, others every day.
 //Even if they are done, perhaps do them in ERDDAP ((low)update return changes?)
@@ -2338,6 +2364,16 @@ public abstract class EDDGridFromFiles extends EDDGrid{
         int axis0Stride = tConstraints.get(1);
         int axis0Stop   = tConstraints.get(2);
         int ftRow = 0;
+
+        //can the data come from an overview?
+        GridOverviews tOverviews = overviews;
+        int overviewFactor = tOverviews == null? 0 : tOverviews.chooseFactor(tConstraints);
+        int overviewDvIndices[] = overviewFactor == 0? null : 
+            tOverviews.dataVariableIndices(tDataVariables);
+        if (overviewDvIndices == null) 
+            overviewFactor = 0;
+        else GridOverviews.noteRequest();
+
         while (axis0Start <= axis0Stop) {
             if (Thread.currentThread().isInterrupted())
                 throw new SimpleException("EDDGridFromFiles.getDataForDapQuery" + 
@@ -2366,39 +2402,43 @@ public abstract class EDDGridFromFiles extends EDDGrid{
                     " " + tFileDir + tFileName);
 
             //get the data
-            PrimitiveArray[] tResults;
-            try {
-                tResults = getSourceDataFromFile(tFileDir, tFileName, //it calls ensureInCache()
-                    tDataVariables, ttConstraints);
-                //String2.log("!tResults[0]=" + tResults[0].toString());
-            } catch (Throwable t) {
-                EDStatic.rethrowClientAbortException(t);  //first thing in catch{}
-
-                //if OutOfMemory or too much data or Too many open files, rethrow t so request fails
-                String tToString = t.toString();
-                if (Thread.currentThread().isInterrupted() ||
-                    t instanceof InterruptedException ||
-                    t instanceof TimeoutException ||
-                    t instanceof OutOfMemoryError ||
-                    tToString.indexOf(Math2.memoryTooMuchData) >= 0 ||
-                    tToString.indexOf(Math2.TooManyOpenFiles) >= 0)
-                    throw t;
-
-                //sleep and give it one more try
+            PrimitiveArray[] tResults = overviewFactor == 0? null :
+                tOverviews.read(overviewFactor, tFileDir, tFileName, ftLastMod.get(ftRow),
+                    tNValues, overviewDvIndices, ttConstraints); //null if not available
+            if (tResults == null) {
                 try {
-                    Thread.sleep(1000); //not Math2.sleep(1000);
-                    tResults = getSourceDataFromFile(tFileDir, tFileName, 
+                    tResults = getSourceDataFromFile(tFileDir, tFileName, //it calls ensureInCache()
                         tDataVariables, ttConstraints);
-                } catch (Throwable t2) {
-                    EDStatic.rethrowClientAbortException(t2);  //first thing in catch{}
-
-                    //mark the file as bad   and reload the dataset
-                    addBadFileToTableOnDisk(ftDirIndex.get(ftRow), tFileName, 
-                        ftLastMod.get(ftRow), MustBe.throwableToShortString(t)); 
-                    //an exception here will cause data request to fail (as it should)
-                    String2.log(MustBe.throwableToString(t));
-                    throw t instanceof WaitThenTryAgainException? t : //original exception
-                        new WaitThenTryAgainException(t);  
+                    //String2.log("!tResults[0]=" + tResults[0].toString());
+                } catch (Throwable t) {
+                    EDStatic.rethrowClientAbortException(t);  //first thing in catch{}
+
+                    //if OutOfMemory or too much data or Too many open files, rethrow t so request fails
+                    String tToString = t.toString();
+                    if (Thread.currentThread().isInterrupted() ||
+                        t instanceof InterruptedException ||
+                        t instanceof TimeoutException ||
+                        t instanceof OutOfMemoryError ||
+                        tToString.indexOf(Math2.memoryTooMuchData) >= 0 ||
+                        tToString.indexOf(Math2.TooManyOpenFiles) >= 0)
+                        throw t;
+
+                    //sleep and give it one more try
+                    try {
+                        Thread.sleep(1000); //not Math2.sleep(1000);
+                        tResults = getSourceDataFromFile(tFileDir, tFileName, 
+                            tDataVariables, ttConstraints);
+                    } catch (Throwable t2) {
+                        EDStatic.rethrowClientAbortException(t2);  //first thing in catch{}
+
+                        //mark the file as bad   and reload the dataset
+                        addBadFileToTableOnDisk(ftDirIndex.get(ftRow), tFileName, 
+                            ftLastMod.get(ftRow), MustBe.throwableToShortString(t)); 
+                        //an exception here will cause data request to fail (as it should)
+                        String2.log(MustBe.throwableToString(t));
+                        throw t instanceof WaitThenTryAgainException? t : //original exception
+                            new WaitThenTryAgainException(t);  
+                    }
                 }
             }
 
@@ -5162,6 +5162,67 @@ expected =
 
     }
 
+    /**
+     * This tests that EDDGrid.saveAsTableWriter writes the same tables when it works 
+     * a chunk at a time as when it works a row at a time:
+     * with constrained and strided inner axes, chunks spanning 1 and 2 axes,
+     * and a tableWriterNBufferRows which doesn't divide the chunk size.
+     *
+     * @throws Throwable if trouble
+     */
+    public static void testSaveAsTableWriterChunks() throws Throwable {
+        String2.log("\n*** EDDGridFromNcFiles.testSaveAsTableWriterChunks()\n");
+        EDDGrid eddGrid = (EDDGrid)oneFromDatasetsXml(null, "testGriddedNcFiles"); 
+        //3 times * 1 altitude * 13 latitudes * 21 longitudes = 819 rows
+        String userDapQuery = 
+            "x_wind[0:2][0][100:5:160][200:3:260],y_wind[0:2][0][100:5:160][200:3:260]";
+        int oPartialRequestMaxBytes = EDStatic.partialRequestMaxBytes;
+        int oGridReadAheadMB = EDStatic.gridReadAheadMB;
+        int oNBufferRows = EDDGrid.tableWriterNBufferRows;
+        try {
+            EDStatic.gridReadAheadMB = 0; //so the chunk size just depends on partialRequestMaxBytes
+            EDDGrid.tableWriterNBufferRows = 8;
+            //8 bytes/row, so 1000 bytes -> chunks of 21 rows (longitude)
+            //and 3000 bytes -> chunks of 273 rows (altitude, latitude, longitude)
+            int maxBytes[]          = {1000, 3000};
+            int expectedChunkSize[] = {  21,  273};
+            for (int i = 0; i < maxBytes.length; i++) {
+                EDStatic.partialRequestMaxBytes = maxBytes[i];
+                GridDataAccessor gda = new GridDataAccessor(eddGrid, "", userDapQuery, 
+                    true, false);  //rowMajor, convertToNaN
+                Test.ensureEqual(gda.partialIndex().size(), expectedChunkSize[i], "");
+                StringBuilder byChunk = new StringBuilder();
+                eddGrid.saveAsTableWriter(gda, testTableWriter(eddGrid, byChunk), true);
+
+                gda = new GridDataAccessor(eddGrid, "", userDapQuery, true, false);
+                StringBuilder byRow = new StringBuilder();
+                eddGrid.saveAsTableWriter(gda, testTableWriter(eddGrid, byRow), false);
+
+                Test.ensureEqual(byChunk.toString(), byRow.toString(), "maxBytes=" + maxBytes[i]);
+                //102 tables with 8 rows, then 1 with 3 rows
+                Test.ensureEqual(String2.countAll(byRow, "writeSome nRows=8\n"), 102, "");
+                Test.ensureEqual(String2.countAll(byRow, "writeSome nRows=3\n"), 1, "");
+                Test.ensureTrue(byRow.toString().endsWith("finish\n"), "");
+            }
+        } finally {
+            EDStatic.partialRequestMaxBytes = oPartialRequestMaxBytes;
+            EDStatic.gridReadAheadMB = oGridReadAheadMB;
+            EDDGrid.tableWriterNBufferRows = oNBufferRows;
+        }
+    }
+
+    /** This returns a TableWriter which just appends each table it receives to sb. */
+    private static TableWriter testTableWriter(EDD edd, final StringBuilder sb) {
+        return new TableWriter(edd, null, null) {
+            public void writeSome(Table table) throws Throwable {
+                sb.append("writeSome nRows=" + table.nRows() + "\n" + table.dataToString());
+            }
+            public void finish() throws Throwable {
+                sb.append("finish\n");
+            }
+        };
+    }
+
     /**
      * This tests timestamps and other things.
      *
@@ -14423,6 +14484,7 @@ expected =
                     if (test == 45) testIgor();
                     if (test == 46) testBadNcFile(false);  //runIncrediblySlowTest?
                     if (test == 47) testInvalidShortenedNcFile();
+                    if (test == 48) testSaveAsTableWriterChunks();
 
                     if (test == 50 && doSlowTestsToo) testBigRequestSpeed(3, ".dods", 895847390, 100); //nTimePoints (usually 3), expected bytes, expectedTimeInSeconds. Also testNThreads.
                     if (test == 51 && doSlowTestsToo) testNThreads(3);
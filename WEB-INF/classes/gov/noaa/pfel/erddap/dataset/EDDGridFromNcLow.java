@@ -137,7 +137,7 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
         Attributes sourceDataAttributes[]) throws Throwable {
 
         String getWhat = "globalAttributes";
-        NetcdfFile ncFile = NcHelper.openFile(tFullName); //may throw exception
+        NetcdfFile ncFile = NcHelper.fileCache.open(tFullName); //may throw exception
         String group = "";
         int groupSlashCount = 0;
         try {
@@ -201,12 +201,11 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
             //get group atts and all higher groups (up to root)            
             NcHelper.getGroupAttributes(ncFile.findGroup(group), sourceGlobalAttributes);
 
-            //I care about this exception
-            ncFile.close();
+            NcHelper.fileCache.release(ncFile); //pooled for reuse
 
         } catch (Throwable t) {
             try {
-                ncFile.close(); //make sure it is explicitly closed
+                NcHelper.fileCache.discard(ncFile); //make sure it is closed, not reused
             } catch (Throwable t2) {
                 //don't care
             }
@@ -237,7 +236,7 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
         StringArray sourceAxisNames, StringArray sourceDataNames) throws Throwable {
 
         String getWhat = "?";
-        NetcdfFile ncFile = NcHelper.openFile(tFullName); //may throw exception
+        NetcdfFile ncFile = NcHelper.fileCache.open(tFullName); //may throw exception
         try {
             PrimitiveArray[] avPa = new PrimitiveArray[sourceAxisNames.size()];
 
@@ -271,13 +270,12 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
                 }
             }
 
-            //I care about this exception
-            ncFile.close();
+            NcHelper.fileCache.release(ncFile); //pooled for reuse
             return avPa;
 
         } catch (Throwable t) {
             try {
-                ncFile.close(); //make sure it is explicitly closed
+                NcHelper.fileCache.discard(ncFile); //make sure it is closed, not reused
             } catch (Throwable t2) {
                 //don't care
             }
@@ -325,7 +323,7 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
         int nValues = -1; //not yet calculated
         EDV edv = null;
 
-        NetcdfFile ncFile = NcHelper.openFile(tFullName); //may throw exception
+        NetcdfFile ncFile = NcHelper.fileCache.open(tFullName); //may throw exception
         try {
 
             for (int dvi = 0; dvi < ndv; dvi++) {
@@ -378,14 +376,13 @@ public abstract class EDDGridFromNcLow extends EDDGridFromFiles {
                 }
             }
 
-            //I care about this exception
-            ncFile.close();
+            NcHelper.fileCache.release(ncFile); //pooled for reuse
             return paa;
 
         } catch (Throwable t) {
             //make sure it is explicitly closed
             try {   
-                ncFile.close();    
+                NcHelper.fileCache.discard(ncFile); //make sure it is closed, not reused
             } catch (Throwable t2) {
                 String2.log("Error while trying to close " + tFullName +
                     "\n" + MustBe.throwableToShortString(t2));
@@ -34,6 +34,7 @@ import gov.noaa.pfel.coastwatch.griddata.Grid;
 import gov.noaa.pfel.coastwatch.griddata.Matlab;
 import gov.noaa.pfel.coastwatch.griddata.NcHelper;
 import gov.noaa.pfel.coastwatch.griddata.OpendapHelper;
+import gov.noaa.pfel.coastwatch.pointdata.ScriptColumn;
 import gov.noaa.pfel.coastwatch.pointdata.ScriptRow;
 import gov.noaa.pfel.coastwatch.pointdata.Table;
 import gov.noaa.pfel.coastwatch.util.FileVisitorDNLS;
@@ -3550,6 +3551,8 @@ public abstract class EDDTable extends EDD {
      * Convert JEXL script columns into data columns.
      * If there are errors doing the conversions, the first error per scriptName
      * will be logged.
+     * Scripts which ScriptColumn supports (most arithmetic/Math/String2 scripts)
+     * are evaluated a column at a time. Others are evaluated by JEXL, one row at a time.
      *
      * @param fullFileName  The full name (perhaps a URL) of the current file, or "" if 
      *   the source is not file-like.
@@ -3567,8 +3570,19 @@ public abstract class EDDTable extends EDD {
             //if (debugMode) String2.log(">> raw table:\n" + table.dataToString(5));
             int nRows = table.nRows();
             for (int sni = 0; sni < scriptNames.size(); sni++) {
-                PrimitiveArray pa = PrimitiveArray.factory(
-                    PAType.fromCohortString(scriptTypes.get(sni)), nRows, false); //active?
+                PAType paType = PAType.fromCohortString(scriptTypes.get(sni));
+                if (scriptNeedsColumns.get(scriptNames.get(sni)).size() > 0) {
+                    //ScriptColumns are compiled once and are thread safe
+                    ScriptColumn scriptColumn = ScriptColumn.get(scriptNames.get(sni).substring(1));
+                    PrimitiveArray pa = scriptColumn == null? null : 
+                        scriptColumn.evaluate(fullFileName, table, paType, scriptNames.get(sni));
+                    if (pa != null) {
+                        table.addColumn(scriptNames.get(sni), pa);
+                        continue;
+                    }
+                }
+
+                PrimitiveArray pa = PrimitiveArray.factory(paType, nRows, false); //active?
                 JexlScript jscript = Script2.jexlEngine().createScript(scriptNames.get(sni).substring(1));
                 MapContext jcontext = Script2.jexlMapContext();
                 ScriptRow scriptRow = new ScriptRow(fullFileName, table);
@@ -179,39 +179,75 @@ public class EDDTableFromAsciiFiles extends EDDTableFromFiles {
             //Just return a table with columns but no rows. There is never any metadata.
             return Table.makeEmptyTable(sourceDataNames.toArray(), sourceDataTypes);
 
+        //read numeric columns directly as the sourceDataTypes
+        int nLoad = sourceDataNames.size();
+        PAType loadTypes[] = new PAType[nLoad];
+        for (int sd = 0; sd < nLoad; sd++) {
+            String tType = sourceDataTypes[sd];
+            loadTypes[sd] = tType.equals("String") || tType.equals("boolean") || 
+                tType.equals("char")? PAType.STRING : PAType.fromCohortString(tType);
+        }
+
+        //Numeric source constraints are applied as the file is read, 
+        //so rows that can't match are never stored.
+        //They are loose (they just need to keep all rows that might match) 
+        //because the constraints are applied again later (CONSTRAIN_PARTIAL).
+        //They aren't used if standardizeWhat may change the source values.
+        StringArray testColumns = new StringArray();
+        DoubleArray testMin = new DoubleArray();
+        DoubleArray testMax = new DoubleArray();
+        int nCon = sourceConVars == null || standardizeWhat != 0? 0 : sourceConVars.size();
+        for (int con = 0; con < nCon; con++) {
+            String tVar = sourceConVars.get(con);
+            int sd = sourceDataNames.indexOf(tVar);
+            if (sd < 0 || loadTypes[sd] == PAType.STRING) 
+                continue;
+            String op = sourceConOps.get(con);
+            double d = String2.parseDouble(sourceConValues.get(con));
+            if (!Double.isFinite(d))
+                continue;
+            //leave room for rounding (e.g., when the constraint value was converted from a float)
+            double slack = PAType.isIntegerType(loadTypes[sd])? 1 : Math.abs(d) * 1e-6 + 1e-30;
+            double min = -Double.MAX_VALUE, max = Double.MAX_VALUE;
+            if (op.equals(">=") || op.equals(">")) {
+                min = d - slack;
+            } else if (op.equals("<=") || op.equals("<")) {
+                max = d + slack;
+            } else if (op.equals("=")) {
+                min = d - slack;
+                max = d + slack;
+            } else { //e.g., != or regex
+                continue;
+            }
+            testColumns.add(tVar);
+            testMin.add(min);
+            testMax.add(max);
+        }
+
         Table table = new Table();
         table.allowRaggedRightInReadASCII = true;
-        table.readASCII(tFileDir + tFileName, charset, 
+        table.readTypedASCII(tFileDir + tFileName, charset, 
             skipHeaderToRegex, skipLinesRegex, columnNamesRow - 1, firstDataRow - 1, 
             columnSeparator, 
-            null, null, null, //testColumns, testMin, testMax,
+            testColumns.toArray(), testMin.toArray(), testMax.toArray(), 
             sourceDataNames.toArray(), //loadColumns, 
-            false); //don't simplify; just get the strings
+            loadTypes);
 
-        //convert to desired sourceDataTypes
+        //convert boolean and char columns to the desired sourceDataTypes
         int nCols = table.nColumns();
         for (int tc = 0; tc < nCols; tc++) {
             int sd = sourceDataNames.indexOf(table.getColumnName(tc));
             if (sd >= 0) {
                 PrimitiveArray pa = table.getColumn(tc);
                 String tType = sourceDataTypes[sd];
-                if (tType.equals("String")) { //do nothing
-                } else if (tType.equals("boolean")) {
+                if (tType.equals("boolean")) {
                     table.setColumn(tc, ByteArray.toBooleanToByte(pa));
-                } else { 
-                    PrimitiveArray newPa;
-                    if (tType.equals("char")) {
-                        CharArray ca = new CharArray();
-                        int n = pa.size();
-                        for (int i = 0; i < n; i++)
-                            ca.addString(pa.getString(i));
-                        newPa = ca;
-                    } else {
-                        newPa = PrimitiveArray.factory(
-                            PAType.fromCohortString(sourceDataTypes[sd]), 1, false);
-                        newPa.append(pa);
-                    }
-                    table.setColumn(tc, newPa);
+                } else if (tType.equals("char")) {
+                    CharArray ca = new CharArray();
+                    int n = pa.size();
+                    for (int i = 0; i < n; i++)
+                        ca.addString(pa.getString(i));
+                    table.setColumn(tc, ca);
                 }
             }
         }
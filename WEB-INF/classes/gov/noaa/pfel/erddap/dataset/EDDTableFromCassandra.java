@@ -301,6 +301,7 @@ public class EDDTableFromCassandra extends EDDTable{
     protected HashSet clusterColumnSourceNames;
     protected HashSet indexColumnSourceNames;
     protected double maxRequestFraction = 1; //>0..1; 1 until subsetVarTable has been made
+    protected int partitionQueryWindow = 1; //max number of partition queries in flight. 1=sequential
     protected String partitionKeyRelatedVariables; //CSSV for error message
     protected EDV rvToResultsEDV[]; //needed in expandPartitionKeyCSV
     protected String partitionKeyCSV; //null or csv before expansion
@@ -357,6 +358,7 @@ public class EDDTableFromCassandra extends EDDTable{
         String tClusterColumnSourceNames = null;
         String tIndexColumnSourceNames = null;
         double tMaxRequestFraction = 1;
+        int tPartitionQueryWindow = 1;
         String tColumnNameQuotes = ""; //default
         StringArray tConnectionProperties = new StringArray();
         boolean tSourceNeedsExpandedFP_EQ = true;
@@ -405,6 +407,8 @@ public class EDDTableFromCassandra extends EDDTable{
             else if (localTags.equals("</indexColumnSourceNames>")) tIndexColumnSourceNames = content; 
             else if (localTags.equals( "<maxRequestFraction>")) {}
             else if (localTags.equals("</maxRequestFraction>")) tMaxRequestFraction = String2.parseDouble(content); 
+            else if (localTags.equals( "<partitionQueryWindow>")) {}
+            else if (localTags.equals("</partitionQueryWindow>")) tPartitionQueryWindow = String2.parseInt(content); 
             else if (localTags.equals( "<columnNameQuotes>")) {}
             else if (localTags.equals("</columnNameQuotes>")) tColumnNameQuotes = content; 
             else if (localTags.equals( "<partitionKeyCSV>")) {}
@@ -446,7 +450,7 @@ public class EDDTableFromCassandra extends EDDTable{
                 tPartitionKeySourceNames, tClusterColumnSourceNames, 
                 tIndexColumnSourceNames,
                 tPartitionKeyCSV,
-                tMaxRequestFraction, tColumnNameQuotes,
+                tMaxRequestFraction, tPartitionQueryWindow, tColumnNameQuotes,
                 tSourceNeedsExpandedFP_EQ);
     }
 
@@ -471,8 +475,8 @@ public class EDDTableFromCassandra extends EDDTable{
         String tPartitionKeySourceNames, String tClusterColumnSourceNames,
         String tIndexColumnSourceNames,
         String tPartitionKeyCSV,
-        double tMaxRequestFraction, String tColumnNameQuotes,
-        boolean tSourceNeedsExpandedFP_EQ
+        double tMaxRequestFraction, int tPartitionQueryWindow, 
+        String tColumnNameQuotes, boolean tSourceNeedsExpandedFP_EQ
         ) throws Throwable {
 
         if (verbose) String2.log(
@@ -565,6 +569,11 @@ public class EDDTableFromCassandra extends EDDTable{
         Test.ensureBetween(tMaxRequestFraction, 
             1e-10, 1, "Invalid maxRequestFraction");
 
+        //1 (the default) = sequential partition queries, as before
+        partitionQueryWindow = tPartitionQueryWindow == Integer.MAX_VALUE? 1 : tPartitionQueryWindow;
+        Test.ensureBetween(partitionQueryWindow, 
+            1, 1000, "Invalid partitionQueryWindow");
+
         columnNameQuotes = tColumnNameQuotes;
         Test.ensureTrue(
             "\"".equals(columnNameQuotes) ||
@@ -1315,90 +1324,31 @@ public class EDDTableFromCassandra extends EDDTable{
         Table table = makeEmptySourceTable(rvToResultsEDV, triggerNRows + 1000); 
 
         //make a call to Cassandra for each row in pkdTable 
-        //(each relevant distinct combination of partitionKey values)
+        //(each relevant distinct combination of partitionKey values).
+        //If partitionQueryWindow > 1, up to that many queries are in flight 
+        //  (executeAsync) while the oldest one's results are being processed.
+        //  Results are still processed in pkdRow order, so chunks will be in sorted order, yea!
         int stats[] = new int[4]; //all 0's
-        for (int pkdRow = 0; pkdRow < pkdTableNRows; pkdRow++) { //chunks will be in sorted order, yea!
-
-            if (Thread.currentThread().isInterrupted())
-                throw new SimpleException("EDDTableFromCassandra.getDataForDapQuery" + 
-                    EDStatic.caughtInterrupted);
-        
-            //Make the BoundStatement
-            //***!!! This method avoids CQL/SQL Injection Vulnerability !!!***
-            //(see https://en.wikipedia.org/wiki/SQL_injection) by using
-            //preparedStatements (so String values are properly escaped and
-            //numbers are assured to be numbers).
-            //*** Plus, the statement is reused many times (so Prepared is recommended).
-            BoundStatement boundStatement = new BoundStatement(preparedStatement);
-
-            //assign values to nPartitionKeys constraints then nCon constraints
-            StringBuilder requestSB = reallyVerbose? 
-                new StringBuilder(">> statement: pkdRow=" + pkdRow + ", ") : 
-                null;
-            for (int i = 0; i < nPartitionKeys + nCon; i++) { 
-                boolean usePK = i < nPartitionKeys;
-                int coni = i - nPartitionKeys; //which con to use: only used if not !usePK
-
-                EDV edv = usePK? partitionKeyEDV[i] : conEDV[coni];
-                PrimitiveArray pa = usePK? pkdPA[i] : null;
-                PAType tPAType = edv.sourceDataPAType();
-                String conVal = usePK? null : constraintValues.get(coni);
-                if (requestSB != null)
-                    requestSB.append(edv.sourceName() + " is " + 
-                        (usePK? pa.getDouble(pkdRow) : conVal) + ", ");
-
-                //handle special cases first
-                if (edv instanceof EDVTimeStamp) {
-                    boundStatement.setTimestamp(i, //partition key value won't be nan/null                
-                        new Date(Math.round(
-                            (usePK? pa.getDouble(pkdRow) : String2.parseDouble(conVal)) 
-                            * 1000))); //round to nearest milli
-
-                } else if (edv.isBoolean()) {
-                    boundStatement.setBool(i, 
-                        (usePK? pa.getInt(pkdRow) == 1 : String2.parseBoolean(conVal)));
-                } else if (tPAType == PAType.DOUBLE ||
-                           tPAType == PAType.ULONG) {  //trouble: loss of precision
-                    boundStatement.setDouble(i, 
-                        (usePK? pa.getDouble(pkdRow) : String2.parseDouble(conVal)));
-                } else if (tPAType == PAType.FLOAT) {
-                    boundStatement.setFloat(i, 
-                        (usePK? pa.getFloat(pkdRow) : String2.parseFloat(conVal)));
-                } else if (tPAType == PAType.LONG ||
-                           tPAType == PAType.UINT) {  //???
-                    boundStatement.setLong(i, 
-                        (usePK? pa.getLong(pkdRow) : String2.parseLong(conVal)));
-                } else if (tPAType == PAType.INT  ||    
-                           tPAType == PAType.SHORT  || 
-                           tPAType == PAType.USHORT ||  //???
-                           tPAType == PAType.BYTE   ||
-                           tPAType == PAType.UBYTE) {   //???
-                    boundStatement.setInt(i, 
-                        (usePK? pa.getInt(pkdRow) : String2.parseInt(conVal))); 
-                } else {
-                    String val = usePK? pa.getString(pkdRow) : conVal;
-                    if (tPAType == PAType.STRING)   
-                        boundStatement.setString(i, val);
-                    else if (tPAType == PAType.CHAR)
-                        boundStatement.setString(i, 
-                            val.length() == 0? "\u0000" : val.substring(0, 1)); //FFFF??? 
-                    else throw new RuntimeException(
-                        "Unexpected dataType=" + edv.sourceDataType() + 
-                        "for var=" + edv.destinationName() + ".");            
-                }
-            }
-            //boundStatement.toString() is useless
-            if (requestSB != null)
-                String2.log(requestSB.toString());
-
-            //get the data
-            //FUTURE: I think this could be parallelized. See EDDTableFromFiles.
-            table = getDataForCassandraQuery(loggedInAs, requestUrl, userDapQuery,
-                resultsDVI, rvToResultsEDV, session, boundStatement, 
-                table, tableWriter, stats);
-            if (tableWriter.noMoreDataPlease) 
-                break;
-        }
+        Table tables[] = {table}; //getDataForCassandraResultSet may return a different table
+        PreparedStatement fPreparedStatement = preparedStatement;
+        CassandraPartitionQueries pipeline = CassandraPartitionQueries.run(
+            session, partitionQueryWindow, pkdTableNRows,
+            pkdRow -> {
+                if (Thread.currentThread().isInterrupted())
+                    throw new SimpleException("EDDTableFromCassandra.getDataForDapQuery" + 
+                        EDStatic.caughtInterrupted);
+                return makeBoundStatement(fPreparedStatement, pkdRow, pkdPA, 
+                    conEDV, constraintValues);
+            },
+            rs -> {
+                if (Thread.currentThread().isInterrupted())
+                    throw new SimpleException("EDDTableFromCassandra.getDataForDapQuery" + 
+                        EDStatic.caughtInterrupted);
+                tables[0] = getDataForCassandraResultSet(loggedInAs, requestUrl, userDapQuery,
+                    resultsDVI, rvToResultsEDV, rs, tables[0], tableWriter, stats);
+            },
+            tableWriter);
+        table = tables[0];
 
         //write any data remaining in table
         //C* doesn't seem to have resultSet.close, statement.close(), ...
@@ -1416,11 +1366,98 @@ public class EDDTableFromCassandra extends EDDTable{
             pkdTableNRows + "/" + oPkdTableNRows + "=" + fraction + " <= " + 
                 maxRequestFraction +
             " nCassRows=" + stats[1] + " nErddapRows=" + stats[2] + 
-            " nRowsToUser=" + stats[3]);
+            " nRowsToUser=" + stats[3] +
+            (pipeline == null? "" : " maxNQueriesInFlight=" + pipeline.maxNInFlight()));
         tableWriter.finish();
     }
 
 
+    /** 
+     * This makes the BoundStatement for one row of the partitionKeyDistinctTable.
+     *
+     * @param preparedStatement the statement with a ? for each partition key 
+     *    and then each constraint
+     * @param pkdRow the row in the partitionKeyDistinctTable
+     * @param pkdPA the partitionKeyDistinctTable column for each partition key
+     * @param conEDV the EDV of each constraint
+     * @param constraintValues the value of each constraint
+     * @return the BoundStatement
+     */
+    protected BoundStatement makeBoundStatement(PreparedStatement preparedStatement,
+        int pkdRow, PrimitiveArray pkdPA[], EDV conEDV[], StringArray constraintValues) {
+
+        int nCon = conEDV.length;
+        //Make the BoundStatement
+        //***!!! This method avoids CQL/SQL Injection Vulnerability !!!***
+        //(see https://en.wikipedia.org/wiki/SQL_injection) by using
+        //preparedStatements (so String values are properly escaped and
+        //numbers are assured to be numbers).
+        //*** Plus, the statement is reused many times (so Prepared is recommended).
+        BoundStatement boundStatement = new BoundStatement(preparedStatement);
+
+        //assign values to nPartitionKeys constraints then nCon constraints
+        StringBuilder requestSB = reallyVerbose? 
+            new StringBuilder(">> statement: pkdRow=" + pkdRow + ", ") : 
+            null;
+        for (int i = 0; i < nPartitionKeys + nCon; i++) { 
+            boolean usePK = i < nPartitionKeys;
+            int coni = i - nPartitionKeys; //which con to use: only used if not !usePK
+
+            EDV edv = usePK? partitionKeyEDV[i] : conEDV[coni];
+            PrimitiveArray pa = usePK? pkdPA[i] : null;
+            PAType tPAType = edv.sourceDataPAType();
+            String conVal = usePK? null : constraintValues.get(coni);
+            if (requestSB != null)
+                requestSB.append(edv.sourceName() + " is " + 
+                    (usePK? pa.getDouble(pkdRow) : conVal) + ", ");
+
+            //handle special cases first
+            if (edv instanceof EDVTimeStamp) {
+                boundStatement.setTimestamp(i, //partition key value won't be nan/null                
+                    new Date(Math.round(
+                        (usePK? pa.getDouble(pkdRow) : String2.parseDouble(conVal)) 
+                        * 1000))); //round to nearest milli
+
+            } else if (edv.isBoolean()) {
+                boundStatement.setBool(i, 
+                    (usePK? pa.getInt(pkdRow) == 1 : String2.parseBoolean(conVal)));
+            } else if (tPAType == PAType.DOUBLE ||
+                       tPAType == PAType.ULONG) {  //trouble: loss of precision
+                boundStatement.setDouble(i, 
+                    (usePK? pa.getDouble(pkdRow) : String2.parseDouble(conVal)));
+            } else if (tPAType == PAType.FLOAT) {
+                boundStatement.setFloat(i, 
+                    (usePK? pa.getFloat(pkdRow) : String2.parseFloat(conVal)));
+            } else if (tPAType == PAType.LONG ||
+                       tPAType == PAType.UINT) {  //???
+                boundStatement.setLong(i, 
+                    (usePK? pa.getLong(pkdRow) : String2.parseLong(conVal)));
+            } else if (tPAType == PAType.INT  ||    
+                       tPAType == PAType.SHORT  || 
+                       tPAType == PAType.USHORT ||  //???
+                       tPAType == PAType.BYTE   ||
+                       tPAType == PAType.UBYTE) {   //???
+                boundStatement.setInt(i, 
+                    (usePK? pa.getInt(pkdRow) : String2.parseInt(conVal))); 
+            } else {
+                String val = usePK? pa.getString(pkdRow) : conVal;
+                if (tPAType == PAType.STRING)   
+                    boundStatement.setString(i, val);
+                else if (tPAType == PAType.CHAR)
+                    boundStatement.setString(i, 
+                        val.length() == 0? "\u0000" : val.substring(0, 1)); //FFFF??? 
+                else throw new RuntimeException(
+                    "Unexpected dataType=" + edv.sourceDataType() + 
+                    "for var=" + edv.destinationName() + ".");            
+            }
+        }
+        //boundStatement.toString() is useless
+        if (requestSB != null)
+            String2.log(requestSB.toString());
+
+        return boundStatement;
+    }
+
     /** 
      * This executes the query statement and may write some data to the tablewriter. 
      * This doesn't call tableWriter.finish();
@@ -1442,6 +1479,28 @@ public class EDDTableFromCassandra extends EDDTable{
 
         //execute the statement
         ResultSet rs = session.execute(statement);
+        return getDataForCassandraResultSet(loggedInAs, requestUrl, userDapQuery, 
+            resultsDVI, rvToResultsEDV, rs, table, tableWriter, stats);
+    }
+
+    /** 
+     * This processes the resultSet of a query (e.g., from session.execute or
+     * from CassandraPartitionQueries.next) and may write some data to the tablewriter. 
+     * This doesn't call tableWriter.finish();
+     *
+     * @param resultsDVI dataVariables[i] (DVI) for each resultsVariable
+     * @param rs the resultSet (the remaining pages are fetched as needed)
+     * @param table May have some not-yet-tableWritten data when coming in.
+     *   May have some not-yet-tableWritten data when returning.
+     * @param stats is int[4]. stats[0]++; stats[1]+=nRows; stats[2]+=nExpandedRows; 
+     *    stats[3]+=nRowsAfterStandardize
+     * @return the same or a different table (usually with some results rows)
+     */
+    public Table getDataForCassandraResultSet(
+        String loggedInAs, String requestUrl, String userDapQuery, 
+        int resultsDVI[], EDV rvToResultsEDV[], ResultSet rs, 
+        Table table, TableWriter tableWriter, int[] stats) throws Throwable {
+
         ColumnDefinitions columnDef = rs.getColumnDefinitions();
         int nColumnDef = columnDef.size();
         stats[0]++;
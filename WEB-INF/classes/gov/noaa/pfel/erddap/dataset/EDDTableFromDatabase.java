@@ -83,6 +83,7 @@ public class EDDTableFromDatabase extends EDDTable{
     protected String tableName;
     protected String columnNameQuotes = "\"";  //may also be ' or empty string
     protected String orderBy[];
+    protected int fetchSize = -1; //-1=auto, 0=use the JDBC driver's default. See DatabaseResultSetReader.setUpStreaming
     protected HashMap<String,HashSet<String>> scriptNeedsColumns = new HashMap(); //<sourceName, otherSourceColumnNames>
 
     protected String catalogSeparator;
@@ -140,6 +141,7 @@ public class EDDTableFromDatabase extends EDDTable{
         String tTableName = null;
         String tColumnNameQuotes = "\""; //to be consistent with previous versions
         String tOrderBy[] = new String[0];
+        int tFetchSize = -1;
         StringArray tConnectionProperties = new StringArray();
         boolean tSourceNeedsExpandedFP_EQ = true;
         String tSourceCanOrderBy = "no";
@@ -195,6 +197,8 @@ public class EDDTableFromDatabase extends EDDTable{
                 if (content != null && content.length() > 0)
                     tOrderBy = String2.split(content, ',');
             }
+            else if (localTags.equals( "<fetchSize>")) {}
+            else if (localTags.equals("</fetchSize>")) tFetchSize = String2.parseInt(content); 
             else if (localTags.equals( "<sourceNeedsExpandedFP_EQ>")) {}
             else if (localTags.equals("</sourceNeedsExpandedFP_EQ>")) tSourceNeedsExpandedFP_EQ = String2.parseBoolean(content); 
             else if (localTags.equals( "<sourceCanOrderBy>")) {}
@@ -235,6 +239,7 @@ public class EDDTableFromDatabase extends EDDTable{
                 tLocalSourceUrl, tDriverName, 
                 tConnectionProperties.toArray(),
                 tCatalogName, tSchemaName, tTableName, tColumnNameQuotes, tOrderBy,
+                tFetchSize,
                 tSourceNeedsExpandedFP_EQ, tSourceCanOrderBy, tSourceCanDoDistinct);
         else*/ return new EDDTableFromDatabase(tDatasetID, 
                 tAccessibleTo, tGraphsAccessibleTo, 
@@ -247,6 +252,7 @@ public class EDDTableFromDatabase extends EDDTable{
                 tLocalSourceUrl, tDriverName, 
                 tConnectionProperties.toArray(),
                 tCatalogName, tSchemaName, tTableName, tColumnNameQuotes, tOrderBy,
+                tFetchSize,
                 tSourceNeedsExpandedFP_EQ, tSourceCanOrderBy, tSourceCanDoDistinct);
 
     }
@@ -399,6 +405,11 @@ public class EDDTableFromDatabase extends EDDTable{
      *    Only sourceNames which are relevant to a given query are used in the
      *    ORDER BY clause.
      *    The leftmost sourceName is most important; subsequent sourceNames are only used to break ties.
+     * @param tFetchSize the number of rows that the JDBC driver should get
+     *    from the database at a time. 
+     *    Use -1 (or Integer.MAX_VALUE) for the connection's default fetch size
+     *    or (if none) DatabaseResultSetReader.DEFAULT_FETCH_SIZE.
+     *    Use 0 for the driver's default behavior (and leave autoCommit on).
      * @param tSourceNeedsExpandedFP_EQ
      * @throws Throwable if trouble
      */
@@ -414,7 +425,7 @@ public class EDDTableFromDatabase extends EDDTable{
         String tLocalSourceUrl, String tDriverName, 
         String tConnectionProperties[],
         String tCatalogName, String tSchemaName, String tTableName,
-        String tColumnNameQuotes, String tOrderBy[],
+        String tColumnNameQuotes, String tOrderBy[], int tFetchSize,
         boolean tSourceNeedsExpandedFP_EQ, 
         String tSourceCanOrderBy, String tSourceCanDoDistinct
         ) throws Throwable {
@@ -467,6 +478,7 @@ public class EDDTableFromDatabase extends EDDTable{
               "".equals(columnNameQuotes), 
             "<columnNameQuotes> must be \", ', or an empty string.");
         orderBy = tOrderBy == null? new String[0] : tOrderBy;
+        fetchSize = tFetchSize == Integer.MAX_VALUE? -1 : Math.max(-1, tFetchSize);
         //database will never be able to deal with all ERDDAP-supported orderBy and distinct() options,
         //so convert Yes to Partial
         sourceCanOrderBy = Math2.minMax(0, 1, //so default=no
@@ -829,6 +841,7 @@ public class EDDTableFromDatabase extends EDDTable{
 
         //try/catch to ensure connection and statement are closed at the end
         PreparedStatement statement = null;
+        boolean finishStreaming = false; //true if autoCommit was turned off
         try {
 
             //build the sql query
@@ -950,111 +963,66 @@ public class EDDTableFromDatabase extends EDDTable{
                                      " statement~=" + humanQuery.toString());
 
             //execute the query
+            //With a fetchSize, the driver gets the results from the database 
+            //  a fetchSize chunk at a time (as they are needed), so the first 
+            //  chunk can be processed and written before the rest is received.
+            finishStreaming = DatabaseResultSetReader.setUpStreaming(
+                connection, statement, fetchSize);
             ResultSet rs = statement.executeQuery();
 
             //make empty table with a column for each resultsVariable
-            int tableColToRsCol[]= new int[nRv]; //stored as 1..
             EDV resultsEDVs[] = new EDV[nRv];
-            for (int rv = 0; rv < nRv; rv++) {
-                String tName = resultsVariables.get(rv); //a sourceName
-                resultsEDVs[rv] = findDataVariableBySourceName(tName);
-
-                //find corresponding resultSet column (should be 1:1) and other info
-                tableColToRsCol[rv] = rs.findColumn(tName); //stored as 1..    throws Throwable if not found
-            }
-            int triggerNRows = EDStatic.partialRequestMaxCells / resultsEDVs.length;
-            Table table = makeEmptySourceTable(resultsEDVs, triggerNRows);
-            PrimitiveArray paArray[] = new PrimitiveArray[nRv];
             for (int rv = 0; rv < nRv; rv++) 
-                paArray[rv] = table.getColumn(rv);
-
-            //process the resultSet rows of data
-            while (true) {
-                boolean hasNext = rs.next();
-
-                if (hasNext) {
-                    for (int rv = 0; rv < nRv; rv++) {
-                        int rsCol = tableColToRsCol[rv];
-                        EDV edv = resultsEDVs[rv];
-                        PAType tPAType = edv.sourceDataPAType();
-                        if (debugMode) String2.log(rv + " " + rs.getString(rsCol));
-                        if (edv.isBoolean()) { //special case
-                            boolean tb = rs.getBoolean(rsCol);
-                            paArray[rv].addInt(rs.wasNull()? Integer.MAX_VALUE : tb? 1 : 0);
-                        } else if (edv instanceof EDVTimeStamp) {
-                            Timestamp tts = rs.getTimestamp(rsCol);         //zulu millis -> epoch seconds
-                            paArray[rv].addDouble(tts == null? Double.NaN : tts.getTime() / 1000.0); 
-                        } else if (tPAType == PAType.STRING) {
-                            String ts = rs.getString(rsCol); //it may return null
-                            paArray[rv].addString(ts == null? "" : ts); 
-                        } else if (tPAType == PAType.DOUBLE) {
-                            double d = rs.getDouble(rsCol);
-                            paArray[rv].addDouble(rs.wasNull()? Double.NaN : d); 
-                        } else if (tPAType == PAType.FLOAT) {
-                            float f = rs.getFloat(rsCol);
-                            paArray[rv].addFloat(rs.wasNull()? Float.NaN : f); 
-                        } else if (tPAType == PAType.ULONG) {
-                            BigDecimal bd = rs.getBigDecimal(rsCol);
-                            ((ULongArray)paArray[rv]).add(rs.wasNull()? null : Math2.roundToULongOrNull(bd));
-                        } else if (tPAType == PAType.LONG ||
-                                   tPAType == PAType.UINT) {
-                            long tl = rs.getLong(rsCol);
-                            if (rs.wasNull()) {
-                                paArray[rv].setMaxIsMV(true);
-                                tl = Long.MAX_VALUE;
-                            }
-                            paArray[rv].addLong(tl); 
-                        } else {
-                            int ti = rs.getInt(rsCol);
-                            if (rs.wasNull()) {
-                                paArray[rv].setMaxIsMV(true);
-                                ti = Integer.MAX_VALUE;
-                            }
-                            paArray[rv].addInt(ti); 
-                        }
-                    }
-                }
+                resultsEDVs[rv] = findDataVariableBySourceName(resultsVariables.get(rv)); //a sourceName
+            //find corresponding resultSet column (should be 1:1)
+            DatabaseResultSetReader reader = new DatabaseResultSetReader(rs, resultsEDVs); //throws Throwable if not found
+            int triggerNRows = EDStatic.partialRequestMaxCells / resultsEDVs.length;
 
-                if ((paArray[0].size() > 0 && !hasNext) || 
-                    paArray[0].size() >= triggerNRows) {
-                    if (Thread.currentThread().isInterrupted())
-                        throw new SimpleException("EDDTableFromDatabase.getDataForDapQuery" + 
-                            EDStatic.caughtInterrupted);
-
-                    //convert script columns into data columns
-                    if (scriptNames != null)             
-                        convertScriptColumnsToDataColumns("", table, 
-                            scriptNames, scriptTypes, scriptNeedsColumns);
-       
-                    //String2.log(table.toString("rows",5));
-                    preStandardizeResultsTable(loggedInAs, table); 
-                    if (table.nRows() > 0) {
-                        standardizeResultsTable(requestUrl, userDapQuery, table); //changes sourceNames to destinationNames
-                        tableWriter.writeSome(table); //okay if 0 rows
-                    }
+            //process the resultSet rows of data, a batch of triggerNRows at a time
+            while (!reader.isExhausted()) {
+                Table table = makeEmptySourceTable(resultsEDVs, triggerNRows);
+                PrimitiveArray paArray[] = new PrimitiveArray[nRv];
+                for (int rv = 0; rv < nRv; rv++) 
+                    paArray[rv] = table.getColumn(rv);
+                if (reader.readBatch(paArray, triggerNRows) == 0)
+                    break;
 
-                    if (hasNext) {
-                        table = makeEmptySourceTable(resultsEDVs, triggerNRows);
-                        for (int rv = 0; rv < nRv; rv++) 
-                            paArray[rv] = table.getColumn(rv);
-                    }
-                    if (tableWriter.noMoreDataPlease) {
-                        tableWriter.logCaughtNoMoreDataPlease(datasetID);
-                        break;
-                    }
+                if (Thread.currentThread().isInterrupted())
+                    throw new SimpleException("EDDTableFromDatabase.getDataForDapQuery" + 
+                        EDStatic.caughtInterrupted);
+
+                //convert script columns into data columns
+                if (scriptNames != null)             
+                    convertScriptColumnsToDataColumns("", table, 
+                        scriptNames, scriptTypes, scriptNeedsColumns);
+   
+                //String2.log(table.toString("rows",5));
+                preStandardizeResultsTable(loggedInAs, table); 
+                if (table.nRows() > 0) {
+                    standardizeResultsTable(requestUrl, userDapQuery, table); //changes sourceNames to destinationNames
+                    tableWriter.writeSome(table); //okay if 0 rows
                 }
-                if (!hasNext)
+
+                if (tableWriter.noMoreDataPlease) {
+                    tableWriter.logCaughtNoMoreDataPlease(datasetID);
                     break;
+                }
             }
+            if (verbose) String2.log("  nRowsRead=" + reader.nRowsRead() + 
+                " fetchSize=" + fetchSize);
             tableWriter.finish();
             statement.close();
+            if (finishStreaming)
+                DatabaseResultSetReader.finishStreaming(connection);
 
             //last thing
             connection.close();
 
         } catch (Throwable t) {
-            try {connection.close();} catch (Exception e) {}
             try {if (statement != null) statement.close();} catch (Exception e) {}
+            if (finishStreaming) 
+                DatabaseResultSetReader.finishStreaming(connection);
+            try {connection.close();} catch (Exception e) {}
 
             EDStatic.rethrowClientAbortException(t);  //first thing in catch{}
 
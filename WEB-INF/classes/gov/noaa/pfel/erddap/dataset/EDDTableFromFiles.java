@@ -36,6 +36,7 @@ import gov.noaa.pfel.coastwatch.util.WatchDirectory;
 import gov.noaa.pfel.erddap.Erddap;
 import gov.noaa.pfel.erddap.dataset.NoMoreDataPleaseException;
 import gov.noaa.pfel.erddap.util.EDStatic;
+import gov.noaa.pfel.erddap.util.SharedThreadPool;
 import gov.noaa.pfel.erddap.variable.*;
 
 import java.io.FileWriter;
@@ -46,8 +47,6 @@ import java.util.Arrays;
 import java.util.BitSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.TimeUnit;
@@ -156,15 +155,25 @@ public abstract class EDDTableFromFiles extends EDDTable{
     protected boolean fileTableInMemory = false;
     protected Table dirTable; //one column with dir names
     protected Table fileTable;
+    //interval index of fileTable's min/max columns (null if !fileTableInMemory)
+    protected volatile FileTableIndex fileTableIndex;
+    //if not null (see EDStatic.fileTableMapped), dirTable and fileTable are stored 
+    //in this, not in dirTable.nc and fileTable.nc
+    protected MappedFileTable mappedFileTable;
 
     //things just for EDDTableFromHttpGet
     public final static String HTTP_GET_REQUIRED_VARIABLES  = "httpGetRequiredVariables";
     public final static String HTTP_GET_DIRECTORY_STRUCTURE = "httpGetDirectoryStructure";
     public final static String HTTP_GET_KEYS                = "httpGetKeys";
+    public final static String HTTP_GET_GROUP_COMMIT_MILLIS = "httpGetGroupCommitMillis";
+    public final static String HTTP_GET_FSYNC               = "httpGetFsync";
 
     protected String[] httpGetRequiredVariableNames;  //e.g., stationID, time
     protected String[] httpGetRequiredVariableTypes;  //e.g., String, double
     protected HashSet<String> httpGetKeys = new HashSet();
+    protected int httpGetGroupCommitMillis = 0; //0=off, else coalesce inserts for this long
+    protected boolean httpGetFsync = false;     //sync each data file write to the storage device?
+    protected HttpGetGroupCommit httpGetGroupCommit; //null if httpGetGroupCommitMillis=0
 
     //this has the parsed httpGetDirectoryStructure specification
     //with 1 item per directory and the last item being for the file names
@@ -954,6 +963,17 @@ public abstract class EDDTableFromFiles extends EDDTable{
             setHttpGetDirectoryStructure(    tAddGlobalAttributes.getString(HTTP_GET_DIRECTORY_STRUCTURE));
             setHttpGetKeys(                  tAddGlobalAttributes.getString(HTTP_GET_KEYS));
             tAddGlobalAttributes.remove(HTTP_GET_KEYS);
+            int tGroupCommitMillis = tAddGlobalAttributes.getInt(HTTP_GET_GROUP_COMMIT_MILLIS);
+            httpGetGroupCommitMillis = tGroupCommitMillis == Integer.MAX_VALUE? 0 : tGroupCommitMillis;
+            Test.ensureBetween(httpGetGroupCommitMillis, 
+                0, 1000, "Invalid " + HTTP_GET_GROUP_COMMIT_MILLIS);
+            String tFsync = tAddGlobalAttributes.getString(HTTP_GET_FSYNC);
+            httpGetFsync = tFsync != null && String2.parseBoolean(tFsync);
+            tAddGlobalAttributes.remove(HTTP_GET_GROUP_COMMIT_MILLIS);
+            tAddGlobalAttributes.remove(HTTP_GET_FSYNC);
+            if (verbose && (httpGetGroupCommitMillis > 0 || httpGetFsync)) 
+                String2.log("  " + HTTP_GET_GROUP_COMMIT_MILLIS + "=" + httpGetGroupCommitMillis + 
+                    " " + HTTP_GET_FSYNC + "=" + httpGetFsync);
 
         } else if (className.equals("EDDTableFromMultidimNcFiles")) {
             String ts = tAddGlobalAttributes.getString(TREAT_DIMENSIONS_AS);
@@ -1122,7 +1142,12 @@ public abstract class EDDTableFromFiles extends EDDTable{
         sourceCanConstrainStringRegex = PrimitiveArray.REGEX_OP; //partially
 
         //load cached dirTable->dirList
-        dirTable = tryToLoadDirFileTable(dirTableFileName); //may be null
+        //(from the MappedFileTable if there is one, else from dirTable.nc and fileTable.nc)
+        if (EDStatic.fileTableMapped && !(this instanceof EDDTableFromHttpGet))
+            mappedFileTable = new MappedFileTable(datasetDir(), DIR_FILE_TABLE_VERSION, standardizeWhat);
+        Table mappedTables[] = tryToLoadMappedFileTable(); //may be null
+        dirTable = mappedTables != null? mappedTables[0] :
+            tryToLoadDirFileTable(dirTableFileName); //may be null
         if (dirTable != null) {
             if (verbose) String2.log(
                 dirTable.nRows() + " rows in dirTable");
@@ -1132,7 +1157,9 @@ public abstract class EDDTableFromFiles extends EDDTable{
         }
 
         //load cached fileTable
-        fileTable = tryToLoadDirFileTable(fileTableFileName); //may be null
+        fileTable = mappedTables != null? mappedTables[1] :
+            tryToLoadDirFileTable(fileTableFileName); //may be null
+        mappedTables = null;
         if (fileTable != null) {
             if (verbose) String2.log(
                 fileTable.nRows() + " rows in fileTable");
@@ -1284,7 +1311,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 if (cachePartialPathRegex != null) {
                     //if this is same month, use cachePartialPathRegex
                     String fileTableMonth = Calendar2.millisToIsoDateString( 
-                        File2.getLastModified(fileTableFileName)).substring(0, 7); //0 if trouble
+                        fileTableLastModified()).substring(0, 7); //0 if trouble
                     String currentMonth = Calendar2.getCurrentISODateTimeStringZulu().substring(0, 7);
                     if (reallyVerbose) String2.log("fileTableMonth=" + fileTableMonth + 
                         " currentMonth=" + currentMonth);
@@ -1643,14 +1670,21 @@ public abstract class EDDTableFromFiles extends EDDTable{
         Table tMinMaxTable = makeMinMaxTable(dirList, fileTable);
 
         //if !quickRestart, save dirTable, fileTable, badFileMap
-        if (!doQuickRestart) 
-            saveDirTableFileTableBadFiles(standardizeWhat, dirTable, fileTable, badFileMap); //throws Throwable
+        //(and if the MappedFileTable doesn't exist yet or has old columns, save it even if quickRestart)
+        if (mappedFileTable != null) {
+            if (!doQuickRestart || !mappedFileTable.hasSameColumns(fileTable))
+                saveMappedFileTableBadFiles(dirTable, fileTable, badFileMap); //throws Throwable
+        } else {
+            if (!doQuickRestart) 
+                saveDirTableFileTableBadFiles(standardizeWhat, dirTable, fileTable, badFileMap); //throws Throwable
+            MappedFileTable.deleteAll(datasetDir()); //if any, it is out-of-date
+        }
         //then make related changes as quickly/atomically as possible
         minMaxTable = tMinMaxTable; //swap into place quickly
 
         //set creationTimeMillis to fileTable lastModified 
         //(either very recent or (if quickRestart) from previous full restart)
-        creationTimeMillis = File2.getLastModified(datasetDir() + FILE_TABLE_FILENAME);
+        creationTimeMillis = fileTableLastModified();
 
         //send email with bad file info
         if (!badFileMap.isEmpty()) {
@@ -1920,7 +1954,9 @@ public abstract class EDDTableFromFiles extends EDDTable{
         //    " type=" + edv.sourceDataType() + " min=" + edv.destinationMinDouble());
 
         //dirTable and fileTable InMemory?
-        if (!fileTableInMemory) {
+        if (fileTableInMemory) {
+            fileTableIndex = new FileTableIndex(fileTable, dataVariables);
+        } else {
             dirTable = null;
             fileTable = null;
         }
@@ -2178,6 +2214,21 @@ public abstract class EDDTableFromFiles extends EDDTable{
         return eName;
     }
 
+    /**
+     * This returns the next file (row number) in fileCandidates to be tested.
+     *
+     * @param fileCandidates the candidate files (or null if all files are candidates)
+     * @param from the first row number to consider
+     * @param nFiles the number of files
+     * @return the next candidate row number at or after from, or nFiles if none
+     */
+    protected static int nextCandidate(BitSet fileCandidates, int from, int nFiles) {
+        if (fileCandidates == null || from >= nFiles)
+            return from;
+        int f = fileCandidates.nextSetBit(from);
+        return f < 0 || f >= nFiles? nFiles : f;
+    }
+
     /** 
      * This is used by the constructor and lowUpdate to ensure that a new 
      * file's attributes are compatible with the expected attributes.
@@ -2500,6 +2551,12 @@ public abstract class EDDTableFromFiles extends EDDTable{
 
         //for each changed file
         int nChanges = 0; //BadFiles or FileTable
+        boolean badFileMapChanged = false;
+        //for mappedFileTable: the files which were added/changed or removed
+        ShortArray  upsertDirIndex = new ShortArray();
+        StringArray upsertFileName = new StringArray();
+        ShortArray  removeDirIndex = new ShortArray();
+        StringArray removeFileName = new StringArray();
         for (int evi = 0; evi < nEvents; evi++) {
             if (Thread.currentThread().isInterrupted())
                 throw new SimpleException("EDDTableFromFiles.lowUpdate" +
@@ -2561,6 +2618,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                         //Remove from BadFileMap if it is present
                         if (badFileMap.remove(dirIndex + "/" + fileName) != null) {
                             //It was in badFileMap
+                            badFileMapChanged = true;
                             if (verbose)
                                 String2.log(msg + 
                                     "removed from badFileMap a file that now exists and is valid, and ..."); 
@@ -2592,6 +2650,8 @@ public abstract class EDDTableFromFiles extends EDDTable{
                     setFileTableRow(tFileTable, fileListPo, dirIndex, fileName,
                         File2.getLastModified(fullName), File2.length(fullName), tTable, 
                         debugMode? evi : -1);
+                    upsertDirIndex.add((short)dirIndex);
+                    upsertFileName.add(fileName);
 
                 } else {
 
@@ -2604,6 +2664,8 @@ public abstract class EDDTableFromFiles extends EDDTable{
                         if (removeFromFileTable(dirIndex, fileName, 
                                 tFileTable, ftDirIndex, ftFileList)) {
                             nChanges++;
+                            removeDirIndex.add((short)dirIndex);
+                            removeFileName.add(fileName);
                             if (verbose)
                                 String2.log(msg + 
                                     "removed from fileTable a file that is now bad/incompatible:\n  " + 
@@ -2627,6 +2689,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 if (badFileMap.remove(dirIndex + "/" + fileName) != null) {
                     //Yes, it was in badFileMap
                     nChanges++;
+                    badFileMapChanged = true;
                     if (reallyVerbose)
                         String2.log(msg + "removed from badFileMap a now non-existent file:\n  " + 
                             fullName);
@@ -2638,6 +2701,8 @@ public abstract class EDDTableFromFiles extends EDDTable{
                     if (removeFromFileTable(dirIndex, fileName, 
                             tFileTable, ftDirIndex, ftFileList)) {
                         nChanges++;
+                        removeDirIndex.add((short)dirIndex);
+                        removeFileName.add(fileName);
                         if (verbose)
                             String2.log(msg + 
                                 "removed from fileTable a file that now doesn't exist:\n  " + 
@@ -2676,12 +2741,19 @@ public abstract class EDDTableFromFiles extends EDDTable{
 
             //finally: make the important instance changes that use the changes above 
             //as quickly/atomically as possible
-            saveDirTableFileTableBadFiles(standardizeWhat, tDirTable, tFileTable, badFileMap); //throws Throwable
+            if (mappedFileTable == null) 
+                saveDirTableFileTableBadFiles(standardizeWhat, tDirTable, tFileTable, badFileMap); //throws Throwable
+            else appendToMappedFileTable(msg, tDirTable, tFileTable, 
+                upsertDirIndex, upsertFileName, removeDirIndex, removeFileName, 
+                badFileMapChanged? badFileMap : null); //throws Throwable
+            FileTableIndex tFileTableIndex = fileTableInMemory?
+                new FileTableIndex(tFileTable, dataVariables) : null;
             minMaxTable = tMinMaxTable;
             if (fileTableInMemory) {
                 //quickly swap into place
                 dirTable  = tDirTable;
                 fileTable = tFileTable; 
+                fileTableIndex = tFileTableIndex;
             }
 
             //after changes all in place
@@ -2747,14 +2819,24 @@ public abstract class EDDTableFromFiles extends EDDTable{
         }
     }
 
+    /**
+     * This closes the mappedFileTable (if any), so that the new instance of this
+     * dataset (which has its own) can delete this instance's files.
+     */
+    public void releaseResources() {
+        if (mappedFileTable != null)
+            mappedFileTable.close();
+    }
+
     /** 
      * This gets the dirTable (perhaps the private copy) for read-only use. 
      *
      * @throw Throwable if trouble
      */
     public Table getDirTable() throws Throwable {
-        Table tDirTable = fileTableInMemory? 
-            dirTable : tryToLoadDirFileTable(datasetDir() +  DIR_TABLE_FILENAME); //may be null
+        Table tDirTable = fileTableInMemory? dirTable : 
+            mappedFileTable != null? mappedFileTable.read(0) :
+            tryToLoadDirFileTable(datasetDir() +  DIR_TABLE_FILENAME); //may be null
         Test.ensureNotNull(tDirTable, "dirTable");
         return tDirTable;
     }
@@ -2765,8 +2847,9 @@ public abstract class EDDTableFromFiles extends EDDTable{
      * @throw Throwable if trouble
      */
     public Table getFileTable() throws Throwable {
-        Table tFileTable = fileTableInMemory? 
-            fileTable : tryToLoadDirFileTable(datasetDir() +  FILE_TABLE_FILENAME); //may be null
+        Table tFileTable = fileTableInMemory? fileTable : 
+            mappedFileTable != null? mappedFileTable.read(1) :
+            tryToLoadDirFileTable(datasetDir() +  FILE_TABLE_FILENAME); //may be null
         Test.ensureNotNull(tFileTable, "fileTable");
         return tFileTable;
     }
@@ -2778,8 +2861,9 @@ public abstract class EDDTableFromFiles extends EDDTable{
      * @throw Throwable if trouble
      */
     public Table getDirTableCopy() throws Throwable {
-        Table tDirTable = fileTableInMemory? 
-            (Table)(dirTable.clone()) : tryToLoadDirFileTable(datasetDir() +  DIR_TABLE_FILENAME); //may be null
+        Table tDirTable = fileTableInMemory? (Table)(dirTable.clone()) : 
+            mappedFileTable != null? mappedFileTable.readCopy(0) :
+            tryToLoadDirFileTable(datasetDir() +  DIR_TABLE_FILENAME); //may be null
         Test.ensureNotNull(tDirTable, "dirTable");
         return tDirTable;
     }
@@ -2791,12 +2875,143 @@ public abstract class EDDTableFromFiles extends EDDTable{
      * @throw Throwable if trouble
      */
     public Table getFileTableCopy() throws Throwable {
-        Table tFileTable = fileTableInMemory? 
-            (Table)(fileTable.clone()) : tryToLoadDirFileTable(datasetDir() +  FILE_TABLE_FILENAME); //may be null
+        Table tFileTable = fileTableInMemory? (Table)(fileTable.clone()) : 
+            mappedFileTable != null? mappedFileTable.readCopy(1) :
+            tryToLoadDirFileTable(datasetDir() +  FILE_TABLE_FILENAME); //may be null
         Test.ensureNotNull(tFileTable, "fileTable");
         return tFileTable;
     }
 
+    /**
+     * This returns the lastModified time (epoch millis) of the saved fileTable
+     * (fileTable.nc or the mappedFileTable), or 0 if trouble.
+     */
+    protected long fileTableLastModified() {
+        return mappedFileTable != null? mappedFileTable.lastModified() :
+            File2.getLastModified(datasetDir() + FILE_TABLE_FILENAME);
+    }
+
+    /**
+     * If there is a mappedFileTable, try to load a copy of the dirTable and fileTable from it.
+     *
+     * @return [0]=dirTable, [1]=fileTable, or null if there is no mappedFileTable, 
+     *   or it doesn't exist yet, or minor trouble
+     * @throws Throwable if serious trouble (e.g., Too many open files, out of memory)
+     */
+    protected Table[] tryToLoadMappedFileTable() throws Throwable {
+        if (mappedFileTable == null || !mappedFileTable.exists()) 
+            return null;
+        try {
+            Table tables[] = mappedFileTable.readCopy();
+            if (verbose) String2.log(tables[1].nRows() + " rows in mappedFileTable");
+            return tables;
+        } catch (Throwable t) {
+            String msg = MustBe.throwableToString(t);
+            String2.log(String2.ERROR + " reading mappedFileTable for " + datasetID + "\n" + 
+                msg);  
+
+            //serious problem?
+            if (Thread.currentThread().isInterrupted() ||
+                t instanceof InterruptedException ||
+                msg.indexOf(Math2.TooManyOpenFiles) >= 0 ||
+                msg.toLowerCase().indexOf(Math2.memory) >= 0)
+                throw t; 
+
+            //if minor problem
+            mappedFileTable.close();
+            MappedFileTable.deleteAll(datasetDir());
+            mappedFileTable = new MappedFileTable(datasetDir(), DIR_FILE_TABLE_VERSION, standardizeWhat);
+            return null;
+        }
+    }
+
+    /** 
+     * This is like saveDirTableFileTableBadFiles, but for datasets with a mappedFileTable:
+     * it saves a new snapshot of the dirTable and fileTable in the mappedFileTable
+     * and deletes the (now out-of-date) dirTable.nc and fileTable.nc (if any).
+     * Afterwards, tDirTable and tFileTable must be treated as read-only.
+     *
+     * @param badFileMap if null, it is just skipped
+     * @throws Throwable if trouble
+     */
+    protected void saveMappedFileTableBadFiles(Table tDirTable, Table tFileTable,
+        ConcurrentHashMap badFileMap) throws Throwable {
+
+        try {
+            mappedFileTable.writeSnapshot(tDirTable, tFileTable, fileTableSortColumns);
+            saveBadFileMap(badFileMap);
+            File2.delete(datasetDir() + DIR_TABLE_FILENAME);
+            File2.delete(datasetDir() + FILE_TABLE_FILENAME);
+        } catch (Throwable t) {
+            String subject = String2.ERROR + 
+                " while saving mappedFileTable or badFiles for " + datasetID;
+            String msg = MustBe.throwableToString(t);
+            String2.log(subject + "\n" + msg);
+            EDStatic.email(EDStatic.emailEverythingToCsv, subject, msg);
+            throw t;
+        }
+    }
+
+    /** 
+     * This is used by lowUpdate with a mappedFileTable: it appends just the changes
+     * to the mappedFileTable's log (instead of rewriting the whole fileTable).
+     * If that fails, it saves a new snapshot instead.
+     * Afterwards, tDirTable and tFileTable must be treated as read-only.
+     *
+     * @param msg the start of log messages
+     * @param tDirTable the updated dirTable
+     * @param tFileTable the updated (and sorted) fileTable
+     * @param upsertDirIndex and upsertFileName identify the files which were added or changed
+     * @param removeDirIndex and removeFileName identify the files which were removed
+     * @param badFileMap if not null, this is saved, too
+     * @throws Throwable if trouble
+     */
+    protected void appendToMappedFileTable(String msg, Table tDirTable, Table tFileTable,
+        ShortArray upsertDirIndex, StringArray upsertFileName, 
+        ShortArray removeDirIndex, StringArray removeFileName,
+        ConcurrentHashMap badFileMap) throws Throwable {
+
+        //the rows may have moved when tFileTable was sorted
+        ShortArray  ftDirIndex = (ShortArray) tFileTable.getColumn(FT_DIR_INDEX_COL);
+        StringArray ftFileList = (StringArray)tFileTable.getColumn(FT_FILE_LIST_COL);
+        IntArray upsertRows = new IntArray();
+        for (int i = 0; i < upsertFileName.size(); i++) {
+            int row = findInFileTable(upsertDirIndex.get(i), upsertFileName.get(i),
+                tFileTable, ftDirIndex, ftFileList);
+            if (row >= 0) //else it was added or changed, then removed (and its removal is logged)
+                upsertRows.add(row);
+        }
+
+        try {
+            mappedFileTable.append(tDirTable, tFileTable, upsertRows, 
+                removeDirIndex, removeFileName);
+            saveBadFileMap(badFileMap);
+        } catch (Throwable t) {
+            String2.log(msg + "caught " + String2.ERROR + " while appending to mappedFileTable, " +
+                "so I'm saving a new snapshot:\n" + MustBe.throwableToString(t));
+            saveMappedFileTableBadFiles(tDirTable, tFileTable, badFileMap);
+        }
+    }
+
+    /** 
+     * This saves the badFileMap (or deletes the badFiles file if the map is empty).
+     *
+     * @param badFileMap if null, it is just skipped
+     * @throws Throwable if trouble
+     */
+    protected void saveBadFileMap(ConcurrentHashMap badFileMap) throws Throwable {
+        if (badFileMap == null)
+            return;
+        String badFilesFileName = badFileMapFileName();
+        if (badFileMap.isEmpty()) {
+            File2.delete(badFilesFileName);
+        } else {
+            int random = Math2.random(Integer.MAX_VALUE);
+            writeBadFileMap(badFilesFileName + random, badFileMap);
+            File2.rename(badFilesFileName + random, badFilesFileName);
+        }
+    }
+
     /** 
      * Try to load the dirTable or fileTable.
      * fileTable PrimitiveArrays: 0=ftDirIndex 1=ftFileList 2=ftLastMod 3=ftSize 4=ftSortedSpacing, 
@@ -3656,17 +3871,44 @@ public abstract class EDDTableFromFiles extends EDDTable{
         int task = 0;       //number for next task to be created
         int nProcessed = 0; //number for next task to be processed
         long nNotRead = 0;  //either don't have matching data or do ('distinct' and 1 value matches)
+
+        //if fileTableIndex matches tFileTable, use it to quickly find the candidate files.
+        //Each candidate file is still tested in FILE_LOOP.
+        //null=test all files
+        BitSet fileCandidates = null;
+        FileTableIndex tFileTableIndex = fileTableIndex;
+        if (tFileTableIndex != null && tFileTableIndex.isFor(tFileTable)) {
+            for (int con = 0; con < nCon; con++) {
+                EDV edv = dataVariables[cdvi[con]];
+                BitSet conCandidates = tFileTableIndex.candidates(cdvi[con], conOps.get(con), 
+                    conValuesD[con], 
+                    edv instanceof EDVTimeStamp? PAType.STRING : edv.sourceDataPAType()); //like isOK() below
+                if (conCandidates == null) 
+                    continue;
+                if (fileCandidates == null)
+                     fileCandidates = conCandidates;
+                else fileCandidates.and(conCandidates);
+            }
+            if (fileCandidates != null) {
+                int nCandidates = fileCandidates.cardinality();
+                nNotRead += nFiles - nCandidates;
+                if (reallyVerbose) String2.log("fileTableIndex: nCandidateFiles=" + nCandidates + 
+                    " of nFiles=" + nFiles);
+            }
+        }
+
         int nReadHaveMatch = 0;
         int nReadNoMatch = 0; 
         int tnThreads = nThreads >= 1 && nThreads < Integer.MAX_VALUE? nThreads : EDStatic.nTableThreads; 
         ArrayList<FutureTask> futureTasks = new ArrayList();
-        ExecutorService executorService = null;
+        SharedThreadPool.RequestQueue requestQueue = null;
         try {
             FILE_LOOP:
-            for (int f = 0; f < nFiles; f++) {
+            for (int f = nextCandidate(fileCandidates, 0, nFiles); f < nFiles; 
+                     f = nextCandidate(fileCandidates, f + 1, nFiles)) {
                 if (Thread.interrupted()) { 
-                    if (executorService != null)
-                        executorService.shutdownNow();
+                    if (requestQueue != null)
+                        requestQueue.shutdownNow();
                     throw new InterruptedException(); //consume the interrupted status
                 }
 
@@ -3882,17 +4124,18 @@ public abstract class EDDTableFromFiles extends EDDTable{
                     ftSortedSpacing.get(f), minSorted, maxSorted, 
                     sourceConVars, sourceConOps, sourceConValues)); 
                 futureTasks.add(futureTask);
-                //To isolate requests, I make a new executorService each time.
+                //To isolate requests, each request has its own queue in the shared thread pool.
                 if (tnThreads > 1) {
-                    if (executorService == null) 
-                        executorService = Executors.newFixedThreadPool(tnThreads - 1);
-                    executorService.submit(futureTask);
+                    if (requestQueue == null) 
+                        requestQueue = EDStatic.sharedThreadPool.newRequestQueue(
+                            className + " " + datasetID + " thread=" + Thread.currentThread().getName());
+                    requestQueue.submit(futureTask);
                 } else {
                     futureTask.run();
                 }
                 task++;
 
-                //if executorService is full, process a result
+                //if this request's tasks fill its share of the pool, process a result
                 if (task - nProcessed >= tnThreads) {
                     //get results table from a futureTask
                     //Put null that position in futureTasks so it can be gc'd after this method
@@ -3955,9 +4198,9 @@ public abstract class EDDTableFromFiles extends EDDTable{
 
         } finally {
             //shut everything down
-            if (executorService != null) {
-                try {executorService.shutdownNow();} catch (Exception e) {}
-                executorService = null;
+            if (requestQueue != null) {
+                try {requestQueue.shutdownNow();} catch (Exception e) {}
+                requestQueue = null;
             }
             futureTasks = null;
         }
@@ -4323,6 +4566,184 @@ public abstract class EDDTableFromFiles extends EDDTable{
 
     }
 
+    /** Test FileTableIndex: the candidate files must include every file that passes isOK(). */
+    public static void testFileTableIndex() {
+        String2.log("\n* EDDTableFromFiles.testFileTableIndex");
+        java.util.Random random = new java.util.Random(17);
+        int nRows = 2000;
+        Table tFileTable = new Table();
+        tFileTable.addColumn("dirIndex",      new ShortArray());
+        tFileTable.addColumn("fileName",      new StringArray());
+        tFileTable.addColumn("lastMod",       new LongArray());
+        tFileTable.addColumn("size",          new LongArray());
+        tFileTable.addColumn("sortedSpacing", new DoubleArray());
+        double dvMin[][] = {new double[nRows], new double[nRows]};
+        double dvMax[][] = {new double[nRows], new double[nRows]};
+        for (int row = 0; row < nRows; row++) {
+            tFileTable.getColumn(0).addInt(0);
+            tFileTable.getColumn(1).addString("f" + row);
+            tFileTable.getColumn(2).addLong(row);
+            tFileTable.getColumn(3).addLong(100);
+            tFileTable.getColumn(4).addDouble(Double.NaN);
+            for (int dv = 0; dv < 2; dv++) {
+                double mn = random.nextInt(1000) / 10.0;
+                double mx = mn + random.nextInt(50) / 10.0;
+                if (row % 97 == 0) {mn = Double.NaN; mx = Double.NaN;} //all mv
+                dvMin[dv][row] = mn;
+                dvMax[dv][row] = mx;
+            }
+        }
+        FileTableIndex index = new FileTableIndex(tFileTable, dvMin, dvMax);
+        Test.ensureTrue(index.isFor(tFileTable), "");
+        Test.ensureEqual(index.dvIntervals[0].size(), nRows - (nRows + 96) / 97, "");
+
+        String ops[] = {"=", "<", "<=", ">", ">="};
+        PAType paTypes[] = {PAType.FLOAT, PAType.DOUBLE, PAType.LONG, PAType.STRING};
+        for (int q = 0; q < 500; q++) {
+            int dv = q % 2;
+            String op = ops[random.nextInt(ops.length)];
+            PAType tPAType = paTypes[random.nextInt(paTypes.length)];
+            double conValue = random.nextInt(1100) / 10.0 - 5;
+            BitSet candidates = index.candidates(dv, op, conValue, tPAType);
+            int nOK = 0;
+            for (int row = 0; row < nRows; row++) {
+                if (isOK(tPAType, dvMin[dv][row], dvMax[dv][row], 0, op, conValue)) {
+                    nOK++;
+                    Test.ensureTrue(candidates.get(row), "dv=" + dv + " row=" + row + 
+                        " " + op + conValue + " " + tPAType);
+                }
+            }
+            //the index shouldn't return many extra candidates
+            Test.ensureTrue(candidates.cardinality() - nOK <= 2 * nRows / 100, 
+                "nOK=" + nOK + " nCandidates=" + candidates.cardinality());
+        }
+
+        //the index can't help with these
+        Test.ensureEqual(index.candidates(0, "!=", 5, PAType.DOUBLE), null, "");
+        Test.ensureEqual(index.candidates(0, "=", Double.NaN, PAType.DOUBLE), null, "");
+        Test.ensureEqual(index.candidates(0, PrimitiveArray.REGEX_OP, 5, PAType.DOUBLE), null, "");
+
+        //changed and added rows are always candidates
+        tFileTable.getColumn(3).setLong(5, 200); //size changed
+        tFileTable.getColumn(0).addInt(0);
+        tFileTable.getColumn(1).addString("new");
+        tFileTable.getColumn(2).addLong(nRows);
+        tFileTable.getColumn(3).addLong(100);
+        tFileTable.getColumn(4).addDouble(Double.NaN);
+        FileTableIndex index2 = index.update(tFileTable, null);
+        Test.ensureEqual(index2.nDirtyRows(), 2, "");
+        BitSet candidates = index2.candidates(0, "=", -1000, PAType.DOUBLE);
+        Test.ensureEqual(candidates.toString(), "{5, " + nRows + "}", "");
+    }
+
+    /**
+     * This tests reloading a dataset which stores its dirTable and fileTable in a
+     * MappedFileTable: the old and new instances (which exist at the same time
+     * during a reload) must each have their own store, and releasing the old
+     * instance (as LoadDatasets does) must delete its store.
+     */
+    public static void testMappedFileTableReload() throws Throwable {
+        String2.log("\n*** EDDTableFromFiles.testMappedFileTableReload()");
+        String tDatasetID = "testMappedFileTableReload";
+        String dataDir = File2.getSystemTempDirectory() + tDatasetID + "/";
+        File2.makeDirectory(dataDir);
+        File2.deleteAllFiles(dataDir);
+        Test.ensureEqual(String2.writeToFile(dataDir + "a.csv", 
+            "station,atmp\n1,10.5\n1,11.5\n"), "", "");
+        String xml = 
+"<dataset type=\"EDDTableFromAsciiFiles\" datasetID=\"" + tDatasetID + "\" active=\"true\">\n" +
+"    <reloadEveryNMinutes>1440</reloadEveryNMinutes>\n" +
+"    <fileDir>" + dataDir + "</fileDir>\n" +
+"    <fileNameRegex>.*\\.csv</fileNameRegex>\n" +
+"    <recursive>false</recursive>\n" +
+"    <metadataFrom>last</metadataFrom>\n" +
+"    <columnNamesRow>1</columnNamesRow>\n" +
+"    <firstDataRow>2</firstDataRow>\n" +
+"    <fileTableInMemory>false</fileTableInMemory>\n" +
+"    <addAttributes>\n" +
+"        <att name=\"cdm_data_type\">Other</att>\n" +
+"        <att name=\"infoUrl\">https://www.ndbc.noaa.gov/</att>\n" +
+"        <att name=\"institution\">NOAA NDBC</att>\n" +
+"        <att name=\"license\">[standard]</att>\n" +
+"        <att name=\"summary\">Test of reloading a dataset with a MappedFileTable.</att>\n" +
+"        <att name=\"title\">Test MappedFileTable Reload</att>\n" +
+"    </addAttributes>\n" +
+"    <dataVariable>\n" +
+"        <sourceName>station</sourceName>\n" +
+"        <dataType>int</dataType>\n" +
+"    </dataVariable>\n" +
+"    <dataVariable>\n" +
+"        <sourceName>atmp</sourceName>\n" +
+"        <dataType>float</dataType>\n" +
+"    </dataVariable>\n" +
+"</dataset>\n";
+
+        boolean oFileTableMapped = EDStatic.fileTableMapped;
+        EDStatic.fileTableMapped = true;
+        try {
+            EDD.deleteCachedDatasetInfo(tDatasetID);
+            EDDTableFromFiles edd1 = (EDDTableFromFiles)oneFromXmlFragment(null, xml);
+            Test.ensureEqual(edd1.getFileTable().nRows(), 1, "");
+
+            //reload (after a file was added): the new instance has its own store
+            Test.ensureEqual(String2.writeToFile(dataDir + "b.csv", 
+                "station,atmp\n2,12.5\n"), "", "");
+            EDDTableFromFiles edd2 = (EDDTableFromFiles)oneFromXmlFragment(null, xml);
+            String dir1 = edd1.mappedFileTable.dir;
+            String dir2 = edd2.mappedFileTable.dir;
+            Test.ensureTrue(!dir1.equals(dir2), dir2);
+            Test.ensureEqual(edd2.getFileTable().nRows(), 2, "");
+            Test.ensureEqual(edd1.getFileTable().nRows(), 1, ""); //the old instance still works
+
+            //LoadDatasets releases the old instance, which deletes its store
+            edd1.releaseResources();
+            Test.ensureEqual(File2.isDirectory(dir1), false, "");
+            Test.ensureEqual(File2.isDirectory(dir2), true, "");
+            String tName = edd2.makeNewFileForDapQuery(null, null, "&orderBy(\"atmp\")", 
+                EDStatic.fullTestCacheDirectory, edd2.className() + "_reload", ".csv"); 
+            String results = String2.directReadFrom88591File(EDStatic.fullTestCacheDirectory + tName);
+            Test.ensureEqual(results, 
+"station,atmp\n" +
+",\n" +
+"1,10.5\n" +
+"1,11.5\n" +
+"2,12.5\n", "results=\n" + results);
+
+            //shutdown then restart: the next instance starts from the newest store
+            edd2.releaseResources();
+            Test.ensureEqual(File2.isDirectory(dir2), true, "");
+            EDDTableFromFiles edd3 = (EDDTableFromFiles)oneFromXmlFragment(null, xml);
+            Test.ensureEqual(edd3.getFileTable().nRows(), 2, "");
+            Test.ensureEqual(File2.isDirectory(dir2), false, "");
+
+            //a hardFlag (deleteCachedDatasetInfo) means the next instance 
+            //doesn't start from the store, so it rereads every file,
+            //even one whose lastModified and size didn't change
+            long aTime = File2.getLastModified(dataDir + "a.csv");
+            Test.ensureEqual(String2.writeToFile(dataDir + "a.csv", 
+                "station,atmp\n1,10.5\n1,19.5\n"), "", "");
+            File2.setLastModified(dataDir + "a.csv", aTime);
+            EDD.deleteCachedDatasetInfo(tDatasetID);
+            EDDTableFromFiles edd4 = (EDDTableFromFiles)oneFromXmlFragment(null, xml);
+            String dir3 = edd3.mappedFileTable.dir;
+            tName = edd4.makeNewFileForDapQuery(null, null, "&atmp>15", 
+                EDStatic.fullTestCacheDirectory, edd4.className() + "_hardFlag", ".csv"); 
+            results = String2.directReadFrom88591File(EDStatic.fullTestCacheDirectory + tName);
+            Test.ensureEqual(results, 
+"station,atmp\n" +
+",\n" +
+"1,19.5\n", "results=\n" + results);
+            edd3.releaseResources(); 
+            Test.ensureEqual(File2.isDirectory(dir3), false, "");
+            edd4.releaseResources();
+
+        } finally {
+            EDStatic.fileTableMapped = oFileTableMapped;
+            MappedFileTable.deleteAll(EDD.datasetDir(tDatasetID));
+            File2.deleteAllFiles(dataDir);
+        }
+    }
+
     /** Quick test of regex */
     public static void testRegex() {
 
@@ -4347,7 +4768,7 @@ public abstract class EDDTableFromFiles extends EDDTable{
     public static void test(StringBuilder errorSB, boolean interactive, 
         boolean doSlowTestsToo, int firstTest, int lastTest) {
         if (lastTest < 0)
-            lastTest = interactive? -1 : 1;
+            lastTest = interactive? -1 : 3;
         String msg = "\n^^^ EDDTableFromFiles.test(" + interactive + ") test=";
 
         for (int test = firstTest; test <= lastTest; test++) {
@@ -4361,6 +4782,8 @@ public abstract class EDDTableFromFiles extends EDDTable{
                 } else {
                     if (test ==  0) testIsOK();
                     if (test ==  1) testRegex();
+                    if (test ==  2) testFileTableIndex();
+                    if (test ==  3) testMappedFileTableReload();
                 }
 
                 String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
@@ -49,6 +49,7 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.TimeUnit;
 import java.util.GregorianCalendar;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -83,6 +84,11 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
     protected PrimitiveArray columnMvFv[];
 
     protected long lastSaveDirTableFileTableBadFiles = 0; //System.currentTimeMillis
+    //The number of commitAppends calls which are changing the fileTable in place,
+    //and the most recent fileTableIndex (which commitAppends updates).
+    //Only use these while holding String2.canonicalLock(fileTable).
+    protected int nCommitsInProgress = 0;
+    protected FileTableIndex lastFileTableIndex;
     //insertOrDelete calls saveDirTableFileTable if &gt;=5 seconds since last save
     //This works quite well because 
     //  infrequently changed datasets (&gt; every 5 seconds) will save the fileTable to disk every time there is a change,
@@ -287,6 +293,11 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
             }
         }
 
+        //group commit?
+        if (httpGetGroupCommitMillis > 0)
+            httpGetGroupCommit = new HttpGetGroupCommit(httpGetGroupCommitMillis, 
+                appends -> commitAppends(appends));
+
         if (verbose) String2.log("*** EDDTableFromHttpGet constructor for datasetID=" +
             datasetID + " finished successfully.");
     }
@@ -644,7 +655,8 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
 
     /** 
      * This is the non-static insertOrDelete method which calls the
-     * static insertOrDelete method.
+     * static prepareInsertOrDelete method, then commits the appends
+     * (directly, or via httpGetGroupCommit if httpGetGroupCommitMillis &gt; 0).
      *
      * @return the response String
      * @throws Throwable if any kind of trouble
@@ -659,6 +671,38 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
                 "checks for files from the remote dataset.");
         }
 
+        ArrayList<HttpGetFileAppend> appends = new ArrayList();
+        String response = prepareInsertOrDelete(fileDir, 
+            httpGetDirectoryStructureColumnNames, 
+            httpGetDirectoryStructureNs, 
+            httpGetDirectoryStructureCalendars,
+            httpGetKeys,
+            combinedGlobalAttributes,
+            columnNames, columnUnits, columnPATypes, columnMvFv,
+            httpGetRequiredVariableNames,
+            command, userDapQuery, appends);  
+
+        //With group commit, this request's appends are merged with other 
+        //requests' appends and committed by one thread, once per batch.
+        if (httpGetGroupCommit == null)
+            commitAppends(appends);
+        else httpGetGroupCommit.submit(appends);
+
+        return response;
+    }
+
+    /** 
+     * This writes the appends to the data files, updates the dirTable and fileTable,
+     * saves them (if it is time to), and updates the minMaxTable, 
+     * destinationMinMax, and fileTableIndex.
+     * When group commit is active, HttpGetGroupCommit calls this 
+     * (for one batch at a time).
+     *
+     * @param appends the appends (one per data file) 
+     * @throws Throwable if any kind of trouble
+     */
+    void commitAppends(ArrayList<HttpGetFileAppend> appends) throws Throwable {
+
         Table tDirTable  = dirTable;  //succeeds if fileTableInMemory (which it should always be)
         Table tFileTable = fileTable;
         if (tDirTable == null) 
@@ -670,46 +714,76 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
             throw new SimpleException("dirTable and/or fileTable are null!");
         }
 
-        String response = insertOrDelete(fileDir, 
-            httpGetDirectoryStructureColumnNames, 
-            httpGetDirectoryStructureNs, 
-            httpGetDirectoryStructureCalendars,
-            httpGetKeys,
-            combinedGlobalAttributes,
-            columnNames, columnUnits, columnPATypes, columnMvFv,
-            httpGetRequiredVariableNames,
-            command, userDapQuery,
-            tDirTable, tFileTable);  
+        //The fileTable is changed in place, so don't let requests use the index 
+        //until it is updated. Other threads may be committing at the same time,
+        //so the index is only remade by the last one to finish (see below).
+        ReentrantLock lock = String2.canonicalLock(tFileTable);
+        if (!lock.tryLock(String2.longTimeoutSeconds, TimeUnit.SECONDS))
+            throw new TimeoutException("Timeout waiting for lock on fileTable in EDDTableFromHttpGet.");
+        try {
+            nCommitsInProgress++;
+            if (fileTableIndex != null)
+                lastFileTableIndex = fileTableIndex;
+            fileTableIndex = null;
+        } finally {
+            lock.unlock();
+        }
+
+        boolean ok = false;
+        try {
+            commitAppends(appends, columnNames, columnPATypes, 
+                tDirTable, tFileTable, httpGetFsync);
 
 //do more with badFileMap?
 
-        //do slow / background thing first:
-        //save dirTableFileTable to disk?
-        //there is always a change to fileTable and min max (e.g., timeStamp)
-        long tTime = System.currentTimeMillis();
-        if (!fileTableInMemory ||  
-            tTime - lastSaveDirTableFileTableBadFiles >= saveDirTableFileTableBadFilesEveryMS) { 
-            saveDirTableFileTableBadFiles(standardizeWhat, tDirTable, tFileTable,  //throws Throwable
-                null); //null so ignore badFilesMap
-            lastSaveDirTableFileTableBadFiles = tTime;
-        }
+            //do slow / background thing first:
+            //save dirTableFileTable to disk?
+            //there is always a change to fileTable and min max (e.g., timeStamp)
+            long tTime = System.currentTimeMillis();
+            if (!fileTableInMemory ||  
+                tTime - lastSaveDirTableFileTableBadFiles >= saveDirTableFileTableBadFilesEveryMS) { 
+                saveDirTableFileTableBadFiles(standardizeWhat, tDirTable, tFileTable,  //throws Throwable
+                    null); //null so ignore badFilesMap
+                lastSaveDirTableFileTableBadFiles = tTime;
+            }
 
-        //then faster things 
-        Table tMinMaxTable = makeMinMaxTable((StringArray)(tDirTable.getColumn(0)), tFileTable);
+            //then faster things 
+            Table tMinMaxTable = makeMinMaxTable((StringArray)(tDirTable.getColumn(0)), tFileTable);
 
-        //then, change secondary parts of instance variables
-        //e.g., update all variable destinationMinMax
-        updateDestinationMinMax(tMinMaxTable);
+            //then, change secondary parts of instance variables
+            //e.g., update all variable destinationMinMax
+            updateDestinationMinMax(tMinMaxTable);
 
-        //then put in place as quickly/atomically as possible
-        minMaxTable = tMinMaxTable; //swap into place quickly
-        if (fileTableInMemory) {  //it will always be true
-            //quickly swap into place
-            dirTable  = tDirTable;
-            fileTable = tFileTable; 
+            //then put in place as quickly/atomically as possible
+            minMaxTable = tMinMaxTable; //swap into place quickly
+            if (fileTableInMemory) {  //it will always be true
+                //quickly swap into place
+                dirTable  = tDirTable;
+                fileTable = tFileTable; 
+            }
+            ok = true;
+
+        } finally {
+            //Update and swap in the index while holding the fileTable's lock,
+            //so no other thread can change the fileTable while update() reads it.
+            //If another commit is still changing the fileTable, that commit 
+            //does this when it finishes (an index made now might miss its changes).
+            //If this commit failed, the index stays null (so requests use the 
+            //linear scan) until the next commit.
+            lock.lock();
+            try {
+                nCommitsInProgress--;
+                if (ok && nCommitsInProgress == 0 && fileTable == tFileTable) {
+                    FileTableIndex tFileTableIndex = lastFileTableIndex;
+                    fileTableIndex = tFileTableIndex != null && tFileTableIndex.isFor(tFileTable)?
+                        tFileTableIndex.update(tFileTable, dataVariables) :
+                        new FileTableIndex(tFileTable, dataVariables); 
+                    lastFileTableIndex = fileTableIndex;
+                }
+            } finally {
+                lock.unlock();
+            }
         }
-
-        return response;
     }
 
 
@@ -792,21 +866,45 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
         byte command, String userDapQuery,
         Table dirTable, Table fileTable) throws Throwable {
 
+        ArrayList<HttpGetFileAppend> appends = new ArrayList();
+        String response = prepareInsertOrDelete(startDir, 
+            tDirStructureColumnNames, tDirStructureNs, tDirStructureCalendars,
+            keys, tGlobalAttributes, 
+            columnNames, columnUnits, columnPATypes, columnMvFv,
+            requiredVariableNames, command, userDapQuery, appends);
+        commitAppends(appends, columnNames, columnPATypes, dirTable, fileTable, false);
+        return response;
+    }
+
+    /** 
+     * This does the first part of insertOrDelete: it parses and validates 
+     * the request and makes the .jsonl lines (and statistics) for each 
+     * data file, but doesn't write anything. 
+     * See insertOrDelete for a description of the parameters.
+     *
+     * @param appends receives one HttpGetFileAppend per data file
+     *   (in the order that the files are first used in the request).
+     * @return the response string 
+     * @throws Throwable if any kind of trouble (e.g., an invalid request)
+     */
+    public static String prepareInsertOrDelete(String startDir, 
+        StringArray tDirStructureColumnNames, 
+        IntArray tDirStructureNs, IntArray tDirStructureCalendars,
+        HashSet<String> keys,
+        Attributes tGlobalAttributes,
+        String columnNames[], String columnUnits[], PAType columnPATypes[], PrimitiveArray columnMvFv[],
+        String requiredVariableNames[],
+        byte command, String userDapQuery,
+        ArrayList<HttpGetFileAppend> appends) throws Throwable {
+
         double timestampSeconds = System.currentTimeMillis() / 1000.0;
-        if (dirTable == null || fileTable == null) { //ensure both or neither
-            dirTable = null;
-            fileTable = null;
-        }
 
         //store things in data structures paralleling columnNames (i.e., [col])
         int nColumns = columnNames.length;
         if (nColumns == 0)
             throw new SimpleException(String2.ERROR + ": columnNames not specified.");
         PrimitiveArray columnValues[] = new PrimitiveArray[nColumns];
-        boolean columnIsFixed[]  = new boolean[nColumns];
         boolean columnIsString[] = new boolean[nColumns];
-        boolean columnIsLong[]   = new boolean[nColumns];
-        boolean columnIsULong[]  = new boolean[nColumns];
         int timeColumn = -1;         
         String timeFormat = null;               //used if time variable is string
         double timeBaseAndFactor[] = null;      //used if time variable is numeric
@@ -814,10 +912,7 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
         int authorColumn = -1;
         int commandColumn = -1;
         for (int col = 0; col < nColumns; col++) {
-            columnIsFixed[ col] = columnNames[col].charAt(0) == '=';
             columnIsString[col] = columnPATypes[col] == PAType.STRING; //char treated as numeric
-            columnIsLong[  col] = columnPATypes[col] == PAType.LONG;
-            columnIsULong[ col] = columnPATypes[col] == PAType.ULONG;
 
             if (!String2.isSomething(columnUnits[col]))
                 columnUnits[col] = "";
@@ -995,23 +1090,13 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
         }
 
         //EVERYTHING SHOULD BE VALIDATED BY NOW. NO ERRORS AFTER HERE!
-        //append each input row to the appropriate file
+        //make the lines for each file
+        //EFFICIENT: each run of rows that use the same fullFileName is added at once. 
+        LinkedHashMap<String, HttpGetFileAppend> appendMap = new LinkedHashMap();
         int row = 0;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(4096);
-        String     columnMinString[] = new String[nColumns];
-        String     columnMaxString[] = new String[nColumns];
-        long       columnMinLong[]   = new long[nColumns];
-        long       columnMaxLong[]   = new long[nColumns];
-        BigInteger columnMinULong[]  = new BigInteger[nColumns];
-        BigInteger columnMaxULong[]  = new BigInteger[nColumns];
-        double     columnMinDouble[] = new double[nColumns];
-        double     columnMaxDouble[] = new double[nColumns];
-        boolean    columnHasNaN[]    = new boolean[nColumns];
         while (row < maxSize) {
             //figure out which file
-            //EFFICIENT: Code below handles all rows that use this fullFileName.               
             String fullFileName = fullFileNames.get(row); 
-            //String2.log(">> writing to " + fullFileName);
 
             //figure out which rows go to this fullFileName
             int startRow = row++;
@@ -1020,272 +1105,189 @@ public class EDDTableFromHttpGet extends EDDTableFromFiles {
                 row++;
             int stopRow = row; //1 past end
 
-            //connect info for this file
-            baos.reset();
-            boolean fileIsNew = false;
+            HttpGetFileAppend append = appendMap.get(fullFileName);
+            if (append == null) {
+                append = new HttpGetFileAppend(fullFileName, nColumns);
+                appendMap.put(fullFileName, append);
+            }
+            append.addRows(columnNames, columnPATypes, columnMvFv, columnValues, 
+                startRow, stopRow);
+        }
+        appends.addAll(appendMap.values());
 
-            try {
+        //Don't ever change any of this (except adding something new to the end). 
+        //Clients rely on it.
+        return "{\n" +
+            "\"status\":\"success\",\n" +
+            "\"nRowsReceived\":" + maxSize + ",\n" +
+            "\"stringTimestamp\":\"" + Calendar2.epochSecondsToIsoStringT3Z(timestampSeconds) + "\",\n" +
+            "\"numericTimestamp\":" + timestampSeconds + "\n" +
+            "}\n"; 
+    }
 
-                if (!File2.isFile(fullFileName)) {
-                    //if file doesn't exist, create it
-                    fileIsNew = true; //first
-                    File2.makeDirectory(File2.getDirectory(fullFileName)); //throws exception if trouble
-                }
-                Writer writer = String2.getBufferedOutputStreamWriterUtf8(baos);  
 
-                if (fileIsNew) {
-                    //write the column names to the writer
-                    boolean somethingWritten = false;
-                    for (int col = 0; col < nColumns; col++) {
-                        if (!columnIsFixed[col]) {
-                            writer.write(somethingWritten? ',' : '[');
-                            writer.write(String2.toJson(columnNames[col]));
-                            somethingWritten = true;
-                        }
-                    }                        
-                    writer.write("]\n");
-                }
+    /** 
+     * This writes each append to its data file (each with one write) and, 
+     * if fileTable isn't null, updates the file's row in the dirTable and fileTable
+     * (adding the row if the file is new).
+     *
+     * @param appends the appends (one per data file, as from prepareInsertOrDelete
+     *   or HttpGetGroupCommit.merge)
+     * @param columnNames the names of ALL of the dataset's source variables
+     * @param columnPATypes the PAType of each column
+     * @param dirTable  the dirTable  (changes may be made to it) or null.
+     * @param fileTable the fileTable (changes may be made to it) or null.
+     * @param fsync if true, each write is synced to the storage device.
+     * @throws Throwable if any kind of trouble
+     */
+    public static void commitAppends(ArrayList<HttpGetFileAppend> appends,
+        String columnNames[], PAType columnPATypes[], 
+        Table dirTable, Table fileTable, boolean fsync) throws Throwable {
 
-                //write the data to the writer
-                for (int tRow = startRow; tRow < stopRow; tRow++) {
-                    boolean somethingWritten = false;
-                    for (int col = 0; col < nColumns; col++) {
-                        if (!columnIsFixed[col]) {
-                            writer.write(somethingWritten? ',' : '[');
-                            writer.write(columnValues[col].getJsonString(tRow));
-                            somethingWritten = true;
-                        }
-                    }
-                    writer.write("]\n");
+        if (dirTable == null || fileTable == null) { //ensure both or neither
+            dirTable = null;
+            fileTable = null;
+        }
+        int nColumns = columnNames.length;
+        byte header[] = HttpGetFileAppend.headerBytes(columnNames);
+        for (HttpGetFileAppend append : appends) {
+            String fullFileName = append.fullFileName;
+            append.write(header, fsync);  //throws Throwable if trouble
+
+            //adjust min/max in fileTable
+            //(only .insert because only it adds values (and .delete only has required variables))
+            if (fileTable == null) 
+                continue;
+
+            //save statistics to fileTable
+            ReentrantLock lock2 = String2.canonicalLock(fileTable);
+            if (!lock2.tryLock(String2.longTimeoutSeconds, TimeUnit.SECONDS))
+                throw new TimeoutException("Timeout waiting for lock on fileTable in EDDTableFromHttpGet.");
+            try {
+                String fileDir  = File2.getDirectory(fullFileName);
+                String fileName = File2.getNameAndExtension(fullFileName);
+
+                //which row in dirTable?
+                int dirTableRow = ((StringArray)(dirTable.getColumn(0))).indexOf(fileDir);
+                if (dirTableRow < 0) {
+                    dirTableRow = dirTable.getColumn(0).size();
+                    dirTable.getColumn(0).addString(fileDir);
                 }
 
-
-                //prepare to write everything to the file
-                writer.flush(); //should do nothing because already done 
-                byte bar[] = baos.toByteArray();
-
-                //As much as possible has been done ahead of time
-                //  so write info to file is 1 blast
-                //synchronized is ESSENTIAL: avoid problems with 2+ threads
-                //  writing or reading same file at same time
-                //synchronized is ESSENTIAL: fullFileName is canonical
-                //  (since from StringArray) so same object in different threads
-                //There were rare problems when writing to file with 4+ threads
-                //  before switching to this system of full prep, then full write.
-                fullFileName = String2.canonical(fullFileName);
-                ReentrantLock lock = String2.canonicalLock(fullFileName);
-                if (!lock.tryLock(String2.longTimeoutSeconds, TimeUnit.SECONDS))
-                    throw new TimeoutException("Timeout waiting for lock on fullFileName in EDDTableFromHttpGet.");
-                try {
-                    BufferedOutputStream fos = new BufferedOutputStream(new FileOutputStream(fullFileName, !fileIsNew)); //append?  
-                    try {
-                        fos.write(bar, 0, bar.length);  //entire write in 1 low level command
-                        fos.close(); //explicitly now, not by finalize() at some time in future
-                    } catch (Exception e) {
-                        try {fos.close();} catch (Exception e2) {}
-                        String2.log(String2.ERROR + 
-                            " in EDDTableFromHttpGet while writing to " + fullFileName + ":\n" +
-                            MustBe.throwableToString(e));
-                        throw e;
-                    }
-                } finally {
-                    lock.unlock();
+                //which row in the fileTable?
+                int fileTableRow = 0;
+                ShortArray fileTableDirPA   = (ShortArray)( fileTable.getColumn(FT_DIR_INDEX_COL));
+                StringArray fileTableNamePA = (StringArray)(fileTable.getColumn(FT_FILE_LIST_COL));
+                int fileTableNRows = fileTable.nRows();
+                while (fileTableRow < fileTableNRows &&
+                       (fileTableDirPA.get(fileTableRow) != dirTableRow ||
+                        !fileTableNamePA.get(fileTableRow).equals(fileName))) {
+                    fileTableRow++;
                 }
 
-                //adjust min/max in fileTable
-                //(only .insert because only it adds values (and .delete only has required variables))
-                if (fileTable != null) {
-
-                    //prepare to calculate statistics
-                    Arrays.fill(columnMinString, "\uFFFF"); 
-                    Arrays.fill(columnMaxString, "\u0000");
-                    Arrays.fill(columnMinLong,   Long.MAX_VALUE);   
-                    Arrays.fill(columnMaxLong,   Long.MIN_VALUE);   
-                    Arrays.fill(columnMinDouble, Double.MAX_VALUE);     
-                    Arrays.fill(columnMaxDouble, -Double.MAX_VALUE);     
-                    Arrays.fill(columnHasNaN,    false);   
-
-                    //calculate statistics
-                    for (int tRow = startRow; tRow < stopRow; tRow++) {
-                        for (int col = 0; col < nColumns; col++) {
-                            if (columnIsFixed[col]) {
-                                //do nothing
-                            } else if (columnIsString[col]) {
-                                String s = columnValues[col].getString(tRow); 
-                                if (s.length() == 0 ||
-                                    (columnMvFv[col] != null && columnMvFv[col].indexOf(s) >= 0)) 
-                                    columnHasNaN[col] = true;
-                                else {
-                                    if (s.compareTo(columnMinString[col]) < 0) columnMinString[col] = s;
-                                    if (s.compareTo(columnMaxString[col]) > 0) columnMaxString[col] = s;
-                                }
-                            } else if (columnIsLong[col]) {
-                                long d = columnValues[col].getLong(tRow); 
-                                if (d == Long.MAX_VALUE ||
-                                    (columnMvFv[col] != null && 
-                                     columnMvFv[col].indexOf(columnValues[col].getString(tRow)) >= 0)) 
-                                    columnHasNaN[col] = true;
-                                else {
-                                    if (d < columnMinLong[col]) columnMinLong[col] = d;
-                                    if (d > columnMaxLong[col]) columnMaxLong[col] = d;
-                                }
-                            } else if (columnIsULong[col]) {
-                                BigInteger d = columnValues[col].getULong(tRow); 
-                                if (d.equals(Math2.ULONG_MAX_VALUE) ||
-                                    (columnMvFv[col] != null && 
-                                     columnMvFv[col].indexOf(columnValues[col].getString(tRow)) >= 0)) 
-                                    columnHasNaN[col] = true;
-                                else {
-                                    if (d.compareTo(columnMinULong[col]) < 0) columnMinULong[col] = d;
-                                    if (d.compareTo(columnMaxULong[col]) > 0) columnMaxULong[col] = d;
-                                }
-                            } else {
-                                double d = columnValues[col].getDouble(tRow); 
-                                if (Double.isNaN(d) ||
-                                    (columnMvFv[col] != null && 
-                                     columnMvFv[col].indexOf(columnValues[col].getString(tRow)) >= 0)) 
-                                    columnHasNaN[col] = true;
-                                else {
-                                    if (d < columnMinDouble[col]) columnMinDouble[col] = d;
-                                    if (d > columnMaxDouble[col]) columnMaxDouble[col] = d;
-                                }
-                            }
+                if (fileTableRow == fileTableNRows) {
+                    //add row to fileTable
+                    fileTableDirPA.addInt(dirTableRow);
+                    fileTableNamePA.add(fileName);
+                    fileTable.getColumn(FT_LAST_MOD_COL).addLong(0); //will be updated below
+                    fileTable.getColumn(FT_SIZE_COL).addLong(0);     //will be updated below 
+                    fileTable.getColumn(FT_SORTED_SPACING_COL).addDouble(1); //irrelevant
+                    for (int col = 0; col < nColumns; col++) {
+                        int baseFTC = dv0 + col * 3; //first of 3 File Table Columns (min, max, hasNaN) for this col
+                        PAType tPAType = columnPATypes[col];
+                        if (columnNames[col].charAt(0) == '=') {
+                            fileTable.getColumn(baseFTC  ).addString(columnNames[col].substring(1)); //???
+                            fileTable.getColumn(baseFTC+1).addString(columnNames[col].substring(1));
+                        } else if (tPAType == PAType.STRING) {
+                            fileTable.getColumn(baseFTC  ).addString(append.columnMinString[col]); 
+                            fileTable.getColumn(baseFTC+1).addString(append.columnMaxString[col]); 
+                        } else if (tPAType == PAType.LONG) {
+                            fileTable.getColumn(baseFTC  ).addLong(append.columnMinLong[col]); 
+                            fileTable.getColumn(baseFTC+1).addLong(append.columnMaxLong[col]); 
+                        } else if (tPAType == PAType.ULONG) {
+                            fileTable.getColumn(baseFTC  ).addString(append.columnMinULong[col].toString()); 
+                            fileTable.getColumn(baseFTC+1).addString(append.columnMaxULong[col].toString()); 
+                        } else {
+                            fileTable.getColumn(baseFTC  ).addDouble(append.columnMinDouble[col]);
+                            fileTable.getColumn(baseFTC+1).addDouble(append.columnMaxDouble[col]);
                         }
+                        fileTable.getColumn(baseFTC+2).addInt(append.columnHasNaN[col]? 1 : 0);   
                     }
 
-                    //save statistics to fileTable
-                    ReentrantLock lock2 = String2.canonicalLock(fileTable);
-                    if (!lock2.tryLock(String2.longTimeoutSeconds, TimeUnit.SECONDS))
-                        throw new TimeoutException("Timeout waiting for lock on fileTable in EDDTableFromHttpGet.");
-                    try {
-                        String fileDir  = File2.getDirectory(fullFileName);
-                        String fileName = File2.getNameAndExtension(fullFileName);
-
-                        //which row in dirTable?
-                        int dirTableRow = ((StringArray)(dirTable.getColumn(0))).indexOf(fileDir);
-                        if (dirTableRow < 0) {
-                            dirTableRow = dirTable.getColumn(0).size();
-                            dirTable.getColumn(0).addString(fileDir);
-                        }
-
-                        //which row in the fileTable?
-                        int fileTableRow = 0;
-                        ShortArray fileTableDirPA   = (ShortArray)( fileTable.getColumn(FT_DIR_INDEX_COL));
-                        StringArray fileTableNamePA = (StringArray)(fileTable.getColumn(FT_FILE_LIST_COL));
-                        int fileTableNRows = fileTable.nRows();
-                        while (fileTableRow < fileTableNRows &&
-                               (fileTableDirPA.get(fileTableRow) != dirTableRow ||
-                                !fileTableNamePA.get(fileTableRow).equals(fileName))) {
-                            fileTableRow++;
-                        }
-
-                        if (fileTableRow == fileTableNRows) {
-                            //add row to fileTable
-                            fileTableDirPA.addInt(dirTableRow);
-                            fileTableNamePA.add(fileName);
-                            fileTable.getColumn(FT_LAST_MOD_COL).addLong(0); //will be updated below
-                            fileTable.getColumn(FT_SIZE_COL).addLong(0);     //will be updated below 
-                            fileTable.getColumn(FT_SORTED_SPACING_COL).addDouble(1); //irrelevant
-                            for (int col = 0; col < nColumns; col++) {
-                                int baseFTC = dv0 + col * 3; //first of 3 File Table Columns (min, max, hasNaN) for this col
-                                if (columnIsFixed[col]) {
-                                    fileTable.getColumn(baseFTC  ).addString(columnNames[col].substring(1)); //???
-                                    fileTable.getColumn(baseFTC+1).addString(columnNames[col].substring(1));
-                                } else if (columnIsString[col]) {
-                                    fileTable.getColumn(baseFTC  ).addString(columnMinString[col]); 
-                                    fileTable.getColumn(baseFTC+1).addString(columnMaxString[col]); 
-                                } else if (columnIsLong[col]) {
-                                    fileTable.getColumn(baseFTC  ).addLong(columnMinLong[col]); 
-                                    fileTable.getColumn(baseFTC+1).addLong(columnMaxLong[col]); 
-                                } else {
-                                    fileTable.getColumn(baseFTC  ).addDouble(columnMinDouble[col]);
-                                    fileTable.getColumn(baseFTC+1).addDouble(columnMaxDouble[col]);
-                                }
-                                fileTable.getColumn(baseFTC+2).addInt(columnHasNaN[col]? 1 : 0);   
+                } else {
+                    //adjust current row:
+                    //dir unchanged
+                    //name unchanged
+                    //lastMod will be updated below
+                    //size be updated below 
+                    //spacing unchanged/irrelevant
+                    for (int col = 0; col < nColumns; col++) {
+                        int baseFTC = dv0 + col * 3; //first of 3 File Table Columns (min, max, hasNaN) for this col
+                        PrimitiveArray minColPA = fileTable.getColumn(baseFTC  );
+                        PrimitiveArray maxColPA = fileTable.getColumn(baseFTC+1);
+                        PAType tPAType = columnPATypes[col];
+                        if (columnNames[col].charAt(0) == '=') {
+                            //already has fixed value
+                        } else if (tPAType == PAType.STRING) {
+                            String tt = append.columnMinString[col];
+                            if (!tt.equals("\uFFFF")) { //has data
+                                if (tt.compareTo(minColPA.getString(fileTableRow)) < 0)
+                                                 minColPA.setString(fileTableRow, tt); 
+                                tt = append.columnMaxString[col];
+                                if (tt.compareTo(maxColPA.getString(fileTableRow)) > 0)
+                                                 maxColPA.setString(fileTableRow, tt); 
+                            }
+                        } else if (tPAType == PAType.LONG) {
+                            long tt = append.columnMinLong[col];
+                            if (tt != Long.MAX_VALUE) { //has data
+                                if (tt < minColPA.getLong(fileTableRow))
+                                         minColPA.setLong(fileTableRow, tt); 
+                                tt = append.columnMaxLong[col];
+                                if (tt > maxColPA.getLong(fileTableRow))
+                                         maxColPA.setLong(fileTableRow, tt); 
+                            }
+                        } else if (tPAType == PAType.ULONG) {
+                            BigInteger tt = append.columnMinULong[col];
+                            if (!tt.equals(Math2.ULONG_MAX_VALUE)) { //has data
+                                if (tt.compareTo(minColPA.getULong(fileTableRow)) < 0)
+                                                 minColPA.setString(fileTableRow, tt.toString()); 
+                                tt = append.columnMaxULong[col];
+                                if (tt.compareTo(maxColPA.getULong(fileTableRow)) > 0)
+                                                 maxColPA.setString(fileTableRow, tt.toString()); 
                             }
-
                         } else {
-                            //adjust current row:
-                            //dir unchanged
-                            //name unchanged
-                            //lastMod will be updated below
-                            //size be updated below 
-                            //spacing unchanged/irrelevant
-                            for (int col = 0; col < nColumns; col++) {
-                                int baseFTC = dv0 + col * 3; //first of 3 File Table Columns (min, max, hasNaN) for this col
-                                PrimitiveArray minColPA = fileTable.getColumn(baseFTC  );
-                                PrimitiveArray maxColPA = fileTable.getColumn(baseFTC+1);
-                                if (columnIsFixed[col]) {
-                                    //already has fixed value
-                                } else if (columnIsString[col]) {
-                                    String tt = columnMinString[col];
-                                    if (!tt.equals("\uFFFF")) { //has data
-                                        if (tt.compareTo(minColPA.getString(fileTableRow)) < 0)
-                                                         minColPA.setString(fileTableRow, tt); 
-                                        tt = columnMaxString[col];
-                                        if (tt.compareTo(maxColPA.getString(fileTableRow)) > 0)
-                                                         maxColPA.setString(fileTableRow, tt); 
-                                    }
-                                } else if (columnIsLong[col]) {
-                                    long tt = columnMinLong[col];
-                                    if (tt != Long.MAX_VALUE) { //has data
-                                        if (tt < minColPA.getLong(fileTableRow))
-                                                 minColPA.setLong(fileTableRow, tt); 
-                                        if (tt > maxColPA.getLong(fileTableRow))
-                                                 maxColPA.setLong(fileTableRow, tt); 
-                                    }
-                                } else {
-                                    double tt = columnMinDouble[col];
-                                    if (!Double.isNaN(tt)) { //has data
-                                        if (tt < minColPA.getDouble(fileTableRow))
-                                                 minColPA.setDouble(fileTableRow, tt); 
-                                        if (tt > maxColPA.getDouble(fileTableRow))
-                                                 maxColPA.setDouble(fileTableRow, tt); 
-                                    }
-                                }
-                                if (columnHasNaN[col])
-                                    fileTable.getColumn(baseFTC+2).setInt(fileTableRow, 1);   
+                            double tt = append.columnMinDouble[col];
+                            if (tt != Double.MAX_VALUE) { //has data
+                                if (tt < minColPA.getDouble(fileTableRow))
+                                         minColPA.setDouble(fileTableRow, tt); 
+                                tt = append.columnMaxDouble[col];
+                                if (tt > maxColPA.getDouble(fileTableRow))
+                                         maxColPA.setDouble(fileTableRow, tt); 
                             }
-                        }  
-                        
-                        //update file's lastMod and size
-                        long tLastMod = -1;
-                        long tLength = -1; 
-                        try {
-                            File file = new File(fullFileName);
-                            tLastMod = file.lastModified();
-                            tLength = file.length();
-                        } catch (Exception e) {
-                            String2.log(String2.ERROR + 
-                                " in EDDTableFromHttpGet while getting lastModified and length of " + 
-                                fullFileName);
                         }
-                        fileTable.getColumn(FT_LAST_MOD_COL).setLong(fileTableRow, tLastMod);
-                        fileTable.getColumn(FT_SIZE_COL    ).setLong(fileTableRow, tLength);
-                    } finally {
-                        lock2.unlock();
+                        if (append.columnHasNaN[col])
+                            fileTable.getColumn(baseFTC+2).setInt(fileTableRow, 1);   
                     }
-                } 
-
-
-            } catch (Throwable t) {
-                if (fileIsNew)
-                    File2.delete(fullFileName);
-                String2.log(String2.ERROR + " while " +
-                    (fileIsNew? "creating" : "adding to") +
-                    " " + fullFileName);
-                throw t;
+                }  
+                
+                //update file's lastMod and size
+                long tLastMod = -1;
+                long tLength = -1; 
+                try {
+                    File file = new File(fullFileName);
+                    tLastMod = file.lastModified();
+                    tLength = file.length();
+                } catch (Exception e) {
+                    String2.log(String2.ERROR + 
+                        " in EDDTableFromHttpGet while getting lastModified and length of " + 
+                        fullFileName);
+                }
+                fileTable.getColumn(FT_LAST_MOD_COL).setLong(fileTableRow, tLastMod);
+                fileTable.getColumn(FT_SIZE_COL    ).setLong(fileTableRow, tLength);
+            } finally {
+                lock2.unlock();
             }
         }
-
-        //Don't ever change any of this (except adding something new to the end). 
-        //Clients rely on it.
-        return "{\n" +
-            "\"status\":\"success\",\n" +
-            "\"nRowsReceived\":" + maxSize + ",\n" +
-            "\"stringTimestamp\":\"" + Calendar2.epochSecondsToIsoStringT3Z(timestampSeconds) + "\",\n" +
-            "\"numericTimestamp\":" + timestampSeconds + "\n" +
-            "}\n"; 
     }
 
 
@@ -0,0 +1,361 @@
+/*
+ * FileTableIndex Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.LongArray;
+import com.cohort.array.PAType;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.util.Math2;
+import com.cohort.util.String2;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.erddap.variable.EDV;
+import gov.noaa.pfel.erddap.variable.EDVTimeStamp;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * This is an in-memory interval index of the per-file min and max values
+ * in an EDDTableFromFiles fileTable.
+ * For each numeric and time dataVariable, it is an interval tree
+ * (an implicit balanced tree over the files sorted by min, where each node
+ * knows the highest max in its subtree),
+ * so it can find the files which may overlap a constraint's range
+ * in O(log nFiles + nMatchingFiles) instead of testing every file.
+ *
+ * <p>The index is just a pre-filter: the candidate files it returns are
+ * a superset of the files that pass EDDTableFromFiles.isOK(),
+ * so getDataForDapQuery still tests each candidate file with isOK().
+ * It doesn't help with String variables, regex constraints, != constraints,
+ * or constraints with NaN values; those still use the linear scan.
+ *
+ * <p>An instance is immutable and is tied to one specific fileTable instance
+ * (see isFor()), so it is thread safe.
+ * Rows which are changed in place or added to the fileTable
+ * (e.g., by EDDTableFromHttpGet) are recorded as "dirty" rows (see update()),
+ * which are always candidates.
+ *
+ * @author agent (agent@local) 2026-10-16
+ */
+public class FileTableIndex {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /**
+     * update() rebuilds the whole index if the number of dirty rows
+     * would be more than this fraction of the number of rows.
+     */
+    public static double maxDirtyFraction = 0.05;
+
+    //things the constructor generates
+    protected Table fileTable;   //the table that was indexed
+    protected int nIndexedRows;  //nRows when indexed
+    protected long lastMod[];    //copy of the lastMod column, to detect changed rows
+    protected long size[];       //copy of the size column, to detect changed rows
+    protected Intervals dvIntervals[]; //1 per dataVariable, null if not indexed
+    protected BitSet dirtyRows;  //may be empty, but not null
+
+    /**
+     * This makes an index of the fileTable of an EDDTableFromFiles.
+     *
+     * @param tFileTable the fileTable (see EDDTableFromFiles), with
+     *    dv0 + dv*3 + 0|1|2 = min|max|hasNaN for each dataVariable.
+     * @param dataVariables the dataset's dataVariables
+     */
+    public FileTableIndex(Table tFileTable, EDV dataVariables[]) {
+        this(tFileTable, getMinMax(tFileTable, dataVariables, true),
+                         getMinMax(tFileTable, dataVariables, false));
+    }
+
+    /**
+     * This makes an index of the fileTable of an EDDTableFromFiles.
+     *
+     * @param tFileTable the fileTable (see EDDTableFromFiles).
+     * @param dvMin for each dataVariable, the min value for each file
+     *    (or null if the variable shouldn't be indexed).
+     *    For time variables, these are epochSeconds.
+     * @param dvMax for each dataVariable, the max value for each file
+     *    (or null if the variable shouldn't be indexed).
+     */
+    public FileTableIndex(Table tFileTable, double dvMin[][], double dvMax[][]) {
+        long time = System.currentTimeMillis();
+        fileTable = tFileTable;
+        nIndexedRows = tFileTable.nRows();
+        lastMod = ((LongArray)tFileTable.getColumn(EDDTableFromFiles.FT_LAST_MOD_COL)).toArray();
+        size    = ((LongArray)tFileTable.getColumn(EDDTableFromFiles.FT_SIZE_COL)).toArray();
+        dirtyRows = new BitSet();
+        int ndv = dvMin.length;
+        dvIntervals = new Intervals[ndv];
+        int nIndexed = 0;
+        for (int dv = 0; dv < ndv; dv++) {
+            if (dvMin[dv] != null && dvMax[dv] != null) {
+                dvIntervals[dv] = new Intervals(dvMin[dv], dvMax[dv]);
+                nIndexed++;
+            }
+        }
+        if (verbose) String2.log("FileTableIndex nRows=" + nIndexedRows +
+            " nIndexedVars=" + nIndexed +
+            " time=" + (System.currentTimeMillis() - time) + "ms");
+    }
+
+    /** This is used by update() to make a shallow copy with different dirtyRows. */
+    private FileTableIndex(FileTableIndex old, Table tFileTable, BitSet tDirtyRows) {
+        fileTable    = tFileTable;
+        nIndexedRows = old.nIndexedRows;
+        lastMod      = old.lastMod;
+        size         = old.size;
+        dvIntervals  = old.dvIntervals;
+        dirtyRows    = tDirtyRows;
+    }
+
+    /**
+     * This gets the min or max values (as they would be used by the FILE_LOOP
+     * in EDDTableFromFiles.getDataForDapQuery) for each indexable dataVariable.
+     *
+     * @param tFileTable the fileTable
+     * @param dataVariables the dataset's dataVariables
+     * @param getMin if true, this gets the min values, else the max values
+     * @return an array with a double[nRows] for each dataVariable
+     *    (or null if the variable can't be indexed).
+     */
+    protected static double[][] getMinMax(Table tFileTable, EDV dataVariables[], boolean getMin) {
+        int ndv = dataVariables.length;
+        int nRows = tFileTable.nRows();
+        double results[][] = new double[ndv][];
+        for (int dv = 0; dv < ndv; dv++) {
+            EDV edv = dataVariables[dv];
+            PAType tPAType = edv.sourceDataPAType();
+            PrimitiveArray pa = tFileTable.getColumn(EDDTableFromFiles.dv0 + dv*3 + (getMin? 0 : 1));
+            if (edv instanceof EDVTimeStamp) {
+                //like FILE_LOOP: strings are sorted incorrectly by e.g., MM/dd/yyyy
+                EDVTimeStamp tdv = (EDVTimeStamp)edv;
+                if (tPAType == PAType.STRING &&
+                    !tdv.sourceTimeFormat().toLowerCase().startsWith("yyyy"))
+                    continue;
+                double da[] = new double[nRows];
+                for (int row = 0; row < nRows; row++) {
+                    double d = tdv.sourceTimeToEpochSeconds(pa.getString(row));
+                    //like FILE_LOOP: if min/max String times are invalid, act as if far in past/future
+                    da[row] = Double.isNaN(d)? (getMin? -1e100 : 1e100) : d;
+                }
+                results[dv] = da;
+
+            } else if (tPAType != PAType.CHAR && tPAType != PAType.STRING) {
+                double da[] = new double[nRows];
+                for (int row = 0; row < nRows; row++)
+                    da[row] = pa.getDouble(row);
+                results[dv] = da;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * This indicates if this index was made for (and is still usable with)
+     * the specified fileTable instance.
+     *
+     * @param tFileTable a fileTable
+     * @return true if this index can be used with tFileTable.
+     */
+    public boolean isFor(Table tFileTable) {
+        return tFileTable == fileTable;
+    }
+
+    /**
+     * This returns the number of dirty rows (rows which are always candidates).
+     */
+    public int nDirtyRows() {
+        return dirtyRows.cardinality();
+    }
+
+    /**
+     * After rows have been appended to the fileTable or rows have been changed
+     * in place (e.g., by EDDTableFromHttpGet.insertOrDelete), this
+     * returns an index which is usable with the fileTable.
+     * Changed rows are detected by a changed lastMod or size value.
+     * Rows must not have been removed or reordered.
+     * If there are too many dirty rows, this rebuilds the entire index.
+     *
+     * @param tFileTable the changed fileTable (perhaps the same instance as before)
+     * @param dataVariables the dataset's dataVariables
+     * @return a new FileTableIndex (this instance isn't changed)
+     */
+    public FileTableIndex update(Table tFileTable, EDV dataVariables[]) {
+        int nRows = tFileTable.nRows();
+        if (nRows < nIndexedRows)
+            return new FileTableIndex(tFileTable, dataVariables);
+        LongArray ftLastMod = (LongArray)tFileTable.getColumn(EDDTableFromFiles.FT_LAST_MOD_COL);
+        LongArray ftSize    = (LongArray)tFileTable.getColumn(EDDTableFromFiles.FT_SIZE_COL);
+        BitSet tDirtyRows = (BitSet)dirtyRows.clone();
+        for (int row = 0; row < nIndexedRows; row++) {
+            if (ftLastMod.get(row) != lastMod[row] || ftSize.get(row) != size[row])
+                tDirtyRows.set(row);
+        }
+        if (nRows > nIndexedRows)
+            tDirtyRows.set(nIndexedRows, nRows);
+        if (tDirtyRows.cardinality() > Math.max(16, maxDirtyFraction * nRows))
+            return new FileTableIndex(tFileTable, dataVariables);
+        return new FileTableIndex(this, tFileTable, tDirtyRows);
+    }
+
+    /**
+     * This returns the fileTable rows (files) which may have data which
+     * matches the constraint.
+     *
+     * @param dv the dataVariable's number
+     * @param conOp the constraint operator
+     * @param conValue the constraint value (for time variables, epochSeconds)
+     * @param tPAType the precision PAType used by the FILE_LOOP's call to isOK()
+     *   (PAType.STRING for time variables).
+     * @return a superset of the files which may have matching data,
+     *   or null if the index can't help with this constraint
+     *   (e.g., String variables, regex, !=, or NaN conValue).
+     */
+    public BitSet candidates(int dv, String conOp, double conValue, PAType tPAType) {
+        Intervals intervals = dvIntervals[dv];
+        if (intervals == null || Double.isNaN(conValue) ||
+            conOp.equals("!=") || conOp.equals(PrimitiveArray.REGEX_OP))
+            return null;
+
+        //widen the range so all files which pass isOK()'s almostEqual tests are included
+        double tol = tolerance(tPAType, conValue);
+        double lo = -Double.MAX_VALUE;
+        double hi =  Double.MAX_VALUE;
+        char ch = conOp.charAt(0);
+        if      (ch == '<') hi = conValue + tol;
+        else if (ch == '>') lo = conValue - tol;
+        else if (ch == '=') {lo = conValue - tol; hi = conValue + tol;}
+        else return null;
+
+        BitSet results = new BitSet(fileTable.nRows());
+        intervals.overlaps(lo, hi, results);
+        results.or(dirtyRows);
+        return results;
+    }
+
+    /**
+     * This returns a value which is at least as big as the tolerance of isOK()'s
+     * almostEqual tests (lessThanAE and greaterThanAE) for tPAType's precision.
+     *
+     * @param tPAType the precision PAType used by isOK()
+     * @param conValue a finite constraint value
+     * @return the tolerance
+     */
+    public static double tolerance(PAType tPAType, double conValue) {
+        //this mimics isOK(): precision=5, 9, or 18 (full) significant figures
+        int p = tPAType == PAType.FLOAT? 5 :
+                tPAType == PAType.DOUBLE? 9 : 18;
+        double tol = Math.abs(conValue) * Math.pow(10, -p) +
+            4 * Math.ulp(conValue) +
+            (p >= 6? Math2.dEps : Math2.fEps);
+        if (tPAType == PAType.LONG)
+            tol += 1; //isOK() rounds min down and max up
+        return tol;
+    }
+
+
+    /**
+     * This is an interval tree for one variable:
+     * an implicit balanced binary tree over the intervals sorted by min,
+     * where each node knows the highest max in its subtree.
+     * Intervals with min and max both NaN aren't stored (they never overlap).
+     * If just min or max is NaN, the interval is treated as unbounded on that side.
+     */
+    public static class Intervals {
+        protected int    rows[];    //the fileTable row numbers, sorted by min
+        protected double mins[];
+        protected double maxs[];
+        protected double subMax[];  //the highest max in the subtree centered at this index
+
+        /**
+         * This makes an Intervals.
+         *
+         * @param tMin the min value for each row
+         * @param tMax the max value for each row
+         */
+        public Intervals(double tMin[], double tMax[]) {
+            int nRows = tMin.length;
+            int n = 0;
+            int keys[] = new int[nRows];
+            double tMins[] = new double[nRows];
+            for (int row = 0; row < nRows; row++) {
+                double mn = tMin[row];
+                double mx = tMax[row];
+                if (Double.isNaN(mn) && Double.isNaN(mx))
+                    continue;
+                tMins[n] = Double.isNaN(mn)? -Double.MAX_VALUE : mn;
+                keys[n++] = row;
+            }
+
+            //sort row numbers by min (a stable sort of an int[] via an index array)
+            Integer order[] = new Integer[n];
+            for (int i = 0; i < n; i++)
+                order[i] = i;
+            final double fMins[] = tMins;
+            Arrays.sort(order, (a, b) -> Double.compare(fMins[a], fMins[b]));
+
+            rows   = new int[n];
+            mins   = new double[n];
+            maxs   = new double[n];
+            subMax = new double[n];
+            for (int i = 0; i < n; i++) {
+                int row = keys[order[i]];
+                double mx = tMax[row];
+                rows[i] = row;
+                mins[i] = tMins[order[i]];
+                maxs[i] = Double.isNaN(mx)? Double.MAX_VALUE : mx;
+            }
+            setSubMax(0, n);
+        }
+
+        /** This sets subMax for the subtree from (inclusive) to to (exclusive). */
+        private double setSubMax(int from, int to) {
+            if (from >= to)
+                return -Double.MAX_VALUE;
+            int mid = (from + to) >>> 1;
+            double m = Math.max(maxs[mid],
+                Math.max(setSubMax(from, mid), setSubMax(mid + 1, to)));
+            subMax[mid] = m;
+            return m;
+        }
+
+        /** This returns the number of intervals in the tree. */
+        public int size() {
+            return rows.length;
+        }
+
+        /**
+         * This sets the bits of the rows whose intervals overlap lo to hi (inclusive).
+         *
+         * @param lo the low end of the range
+         * @param hi the high end of the range
+         * @param results receives the matching row numbers
+         */
+        public void overlaps(double lo, double hi, BitSet results) {
+            overlaps(0, rows.length, lo, hi, results);
+        }
+
+        private void overlaps(int from, int to, double lo, double hi, BitSet results) {
+            while (from < to) {
+                int mid = (from + to) >>> 1;
+                if (subMax[mid] < lo) //nothing in this subtree reaches lo
+                    return;
+                overlaps(from, mid, lo, hi, results);
+                if (mins[mid] > hi) //mid and everything to its right start after hi
+                    return;
+                if (maxs[mid] >= lo)
+                    results.set(rows[mid]);
+                from = mid + 1; //iterate (instead of recurse) on the right subtree
+            }
+        }
+    }
+
+}
@@ -21,6 +21,7 @@ import com.cohort.util.String2;
 
 import gov.noaa.pfel.coastwatch.pointdata.Table;
 import gov.noaa.pfel.erddap.util.EDStatic;
+import gov.noaa.pfel.erddap.util.SharedThreadPool;
 import gov.noaa.pfel.erddap.variable.EDV;
 import gov.noaa.pfel.erddap.variable.EDVGridAxis;
 
@@ -29,10 +30,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
  
 
 /** 
@@ -101,9 +101,19 @@ public class GridDataAccessor {
     protected long totalNBytes;
     protected int nThreads; //constructor will set to be a valid number
     protected int chunk = 0; //the next chunk to be gotten by getChunk
-    protected int task = 0; //the number of the next task to be submitted to ExecutorService
+    protected int task = 0; //the number of the next task to be submitted to requestQueue
     protected ArrayList<FutureTask> futureTasks = new ArrayList();
-    protected ExecutorService executorService;
+    protected SharedThreadPool.RequestQueue requestQueue; //this request's queue in EDStatic.sharedThreadPool
+    protected boolean driverDone = false; //true when all tasks have been submitted
+
+    //read-ahead: the number of chunks (after the current chunk) requested in advance
+    protected long nBytesPerPartialRequest;
+    protected GridReadAhead readAheadStats; //null unless EDStatic.gridReadAheadMB > 0
+    protected int readAhead, minReadAhead, maxReadAhead, readAheadHighWater;
+    protected int nReadyInARow = 0;  //chunks which were ready when getChunk wanted them
+    protected long firstChunkMillis = -1, waitMillis = 0;
+    protected AtomicLong fetchMillis = new AtomicLong(); //sum of the time each task took
+    protected boolean loggedStatistics = false;
 
     protected Table tDirTable, tFileTable; //null, unless eddGrid is EDDGridFromFiles
 
@@ -311,8 +321,15 @@ public class GridDataAccessor {
         Arrays.fill(partialShape, 1);
         avInDriver = new boolean[nAxisVariables]; 
         Arrays.fill(avInDriver, true);
-        long nBytesPerPartialRequest = nDataBytesPerRow; //long to safely avoid overflow
-        int tPartialRequestMaxBytes = EDStatic.partialRequestMaxBytes; //local copy so constant for this calculation
+        nBytesPerPartialRequest = nDataBytesPerRow; //long to safely avoid overflow
+        long tPartialRequestMaxBytes = EDStatic.partialRequestMaxBytes; //local copy so constant for this calculation
+        //adaptive read-ahead? then chunk size depends on the source's measured latency and throughput
+        long readAheadCeilingBytes = Math.min(
+            (long)EDStatic.gridReadAheadMB * Math2.BytesPerMB, Math2.maxSafeMemory / 4); 
+        if (readAheadCeilingBytes > 0) {
+            readAheadStats = GridReadAhead.forDataset(eddGrid.datasetID(), GridReadAhead.isRemote(eddGrid));
+            tPartialRequestMaxBytes = readAheadStats.chunkBytes(tPartialRequestMaxBytes, readAheadCeilingBytes);
+        }
         if (rowMajor) {
             //work from right
             int av = axisAttributes.length - 1;
@@ -356,13 +373,33 @@ public class GridDataAccessor {
         Math2.ensureArraySizeOkay(driverIndex.size(), "GridDataAccessor");  //ensure not >Integer.MAX_VALUE chunks (will never finish!)
         Math2.ensureArraySizeOkay(partialIndex.size(), "GridDataAccessor"); //ensure each chunk size() is ok
         totalNBytes = driverIndex.size() * nBytesPerPartialRequest; //driverIndex.size() is a long
+
+        //decide how many chunks may be requested in advance
+        //Without read-ahead, always nThreads-1 (so nThreads tasks are in flight).
+        //With read-ahead, the number varies (see getChunk) up to the memory ceiling
+        //(readAhead+1 chunks in memory) and the size of the sharedThreadPool.
+        minReadAhead = nThreads - 1;
+        maxReadAhead = minReadAhead;
+        if (readAheadStats != null) {
+            long nChunksInCeiling = readAheadCeilingBytes / Math.max(1, nBytesPerPartialRequest);
+            maxReadAhead = Math.max(minReadAhead, 
+                (int)Math.min(EDStatic.sharedThreadPool.nThreads(), nChunksInCeiling) - 1);
+            maxReadAhead = (int)Math.min(maxReadAhead, driverIndex.size() - 1);
+            //remote sources start with 1 chunk in advance to hide the latency 
+            if (readAheadStats.isRemote() && maxReadAhead > minReadAhead)
+                minReadAhead = Math.max(minReadAhead, 1);
+        }
+        readAhead = minReadAhead;
+        readAheadHighWater = readAhead;
         if (reallyVerbose) String2.log("      getAllOfNAxes=" + getAllOfNAxes + 
             //driverShape e.g., [15][1][1][1],  note getAllOfNAxes 1's on right if row-major
             "\n      driverShape=" + String2.toCSSVString(driverShape) +  
             //partialShape e.g., [1][1][43][45],  note 1's on left if row-major
             "\n      partialShape=" + String2.toCSSVString(partialShape) +  
             "\n      nBytesPerPartialRequest=" + nBytesPerPartialRequest +
-            "\n      totalNBytes=" + totalNBytes);
+            "\n      totalNBytes=" + totalNBytes +
+            "\n      readAhead=" + readAhead + " maxReadAhead=" + maxReadAhead +
+            (readAheadStats == null? "" : " " + readAheadStats.toString()));
         
     }
 
@@ -499,8 +536,10 @@ public class GridDataAccessor {
 
         //increment totalIndex
         boolean tb = rowMajor? totalIndex.increment() : totalIndex.incrementCM();
-        if (!tb)
+        if (!tb) {
+            logChunkStatistics();
             return false;
+        }
 
         //increment the partial index
         tb = rowMajor? partialIndex.increment() : partialIndex.incrementCM();
@@ -538,8 +577,10 @@ public class GridDataAccessor {
         } else {
             //subsequent times
             //increment totalIndex by partialIndex.size, for row major or column major
-            if (totalIndex.getIndex() + partialIndex.size() >= totalIndex.size())
+            if (totalIndex.getIndex() + partialIndex.size() >= totalIndex.size()) {
+                logChunkStatistics();
                 return false;
+            }
             totalIndex.setIndex(totalIndex.getIndex() + partialIndex.size());
         }
 
@@ -569,15 +610,19 @@ public class GridDataAccessor {
             //If first call to getChunk, actually start getting actual data.
             //Don't do this in constructor because some users of GridDataAccessor
             //  just want to check request sizes and that no errors in request.
-            if (executorService == null && nThreads > 1) {
-                executorService = Executors.newFixedThreadPool(Math.max(1, nThreads-1));
-                for (int thread = 1; thread < nThreads; thread++) //yes, 1, so nThreads-1
-                    startAnotherTask();
+            if (requestQueue == null && (nThreads > 1 || maxReadAhead > 0)) {
+                requestQueue = EDStatic.sharedThreadPool.newRequestQueue("GridDataAccessor " + 
+                    eddGrid.datasetID() + " thread=" + Thread.currentThread().getName());
                 //String2.pressEnterToContinue("\nstackTrace=\n" + MustBe.stackTrace() + 
                 //    "task=" + task + " at end of Constructor.");
             }
+            if (firstChunkMillis < 0)
+                firstChunkMillis = etime;
 
-            startAnotherTask();  //for nThreads==1, that task will be for the current chunk
+            //keep this chunk and readAhead more chunks in flight
+            //(for nThreads==1 without read-ahead, that task will be for the current chunk)
+            while (task <= chunk + readAhead && !driverDone)
+                startAnotherTask();  
 
             //get chunk's results from futureTasks
             if (chunk >= futureTasks.size())
@@ -585,14 +630,19 @@ public class GridDataAccessor {
                     "at chunk=" + chunk + " driverIndex.current=" + String2.toCSSVString(driverIndex.getCurrent()));
             //Put null that position in futureTasks so it can be gc'd after this method
             FutureTask futureTask = futureTasks.set(chunk, null);                
+            boolean wasReady = futureTask.isDone();
+            long wtime = System.currentTimeMillis();
             tPartialDataValues = (PrimitiveArray[])(futureTask.get());   //blocks until done, throws ExecutionException
+            waitMillis += System.currentTimeMillis() - wtime;
+            if (chunk > 0 && maxReadAhead > minReadAhead) 
+                adjustReadAhead(wasReady);
 
         } catch (Throwable t) {
             //throwable while getting a chunk
             //shut everything down
-            if (executorService != null) {
-                try {executorService.shutdownNow();} catch (Exception e) {}
-                executorService = null;
+            if (requestQueue != null) {
+                try {requestQueue.shutdownNow();} catch (Exception e) {}
+                requestQueue = null;
             }
             futureTasks = null;
 
@@ -625,11 +675,68 @@ public class GridDataAccessor {
         //String2.pressEnterToContinue("chunk=" + chunk + " task=" + task + " at end of getChunk.");
     }
 
+    /**
+     * This adjusts readAhead (between minReadAhead and maxReadAhead)
+     * after getChunk got a chunk.
+     * If getChunk had to wait for the chunk, the source is slower than the
+     * consumer, so more chunks are requested in advance.
+     * If several chunks in a row were ready, fewer chunks are requested in
+     * advance, so less memory is used.
+     *
+     * @param wasReady true if the chunk was ready when getChunk wanted it
+     */
+    protected void adjustReadAhead(boolean wasReady) {
+        if (wasReady) {
+            if (++nReadyInARow >= 4 && readAhead > minReadAhead) {
+                readAhead--;
+                nReadyInARow = 0;
+            }
+        } else {
+            nReadyInARow = 0;
+            if (readAhead < maxReadAhead) {
+                readAhead++;
+                readAheadHighWater = Math.max(readAheadHighWater, readAhead);
+            }
+        }
+    }
+
+    /**
+     * This returns a one line summary of the chunks gotten so far 
+     * (chunk size, readAhead, and the throughput).
+     *
+     * @return the summary
+     */
+    public String chunkStatistics() {
+        long time = firstChunkMillis < 0? 0 : System.currentTimeMillis() - firstChunkMillis;
+        long nBytes = chunk * nBytesPerPartialRequest;
+        return "GridDataAccessor " + eddGrid.datasetID() + 
+            " nChunks=" + chunk + 
+            " chunkMB=" + String2.genEFormat6(nBytesPerPartialRequest / (double)Math2.BytesPerMB) +
+            " readAhead=" + readAhead + " (highWater=" + readAheadHighWater + 
+                " max=" + maxReadAhead + ")" +
+            " fetchMs/chunk=" + (chunk == 0? 0 : fetchMillis.get() / chunk) + 
+            " waitMs=" + waitMillis + 
+            " MB/s=" + String2.genEFormat6(nBytes / (Math.max(1, time) * 1000.0)) +
+            (readAheadStats == null? "" : " source: " + readAheadStats.toString());
+    }
+
+    /** 
+     * This logs chunkStatistics once per request (when done, if any chunks were gotten),
+     * regardless of verbose, so the chunk sizes and throughput are in the log for every request.
+     */
+    protected void logChunkStatistics() {
+        if (!loggedStatistics && chunk > 0) {
+            loggedStatistics = true;
+            String2.log(chunkStatistics());
+        }
+    }
+
     /** 
      * This increments the driver index (so done in calling thead),
      * creates another FutureTask (or null) from a new GetChunkCallable,
-     * adds it (or null) to futureTasks and executorService (if active).
-     * If beyond end of driveIndex, this doesn't create a futureTask.
+     * adds it (or null) to futureTasks and requestQueue (if active).
+     * If beyond end of driveIndex, this doesn't create a futureTask
+     * and sets driverDone=true.
      *
      */ 
     protected void startAnotherTask() {
@@ -637,13 +744,14 @@ public class GridDataAccessor {
         if (tb) {
             FutureTask futureTask = new FutureTask(new GetChunkCallable(task, this));  
             futureTasks.add(futureTask);
-            if (executorService == null)   //just this thread
+            if (requestQueue == null)   //just this thread
                  futureTask.run();
-            else executorService.submit(futureTask);
+            else requestQueue.submit(futureTask);
             task++;
         } else {
-            if (executorService != null) {
-                try {executorService.shutdown();} catch (Exception e) {} //it's done
+            driverDone = true;
+            if (requestQueue != null) {
+                try {requestQueue.shutdown();} catch (Exception e) {} //it's done
             }
         }
     }
@@ -791,10 +899,14 @@ class GetChunkCallable implements Callable {
                 }
             }
 
+            time = System.currentTimeMillis() - time;
+            gda.fetchMillis.addAndGet(time);
+            if (gda.readAheadStats != null)
+                gda.readAheadStats.record(gda.nBytesPerPartialRequest, time);
             if (debugMode) 
                 String2.log(">> thread=" + Thread.currentThread().getName() + " nThreads=" + gda.nThreads +
                     " cTask=" + cTask + ".9 completely done. timeInCallable=" + 
-                    (System.currentTimeMillis() - time) + "ms");
+                    time + "ms");
 
             return partialDataValues;
 
@@ -923,6 +1035,7 @@ class GetChunkCallable implements Callable {
 
     /** Call this when done getting data to release resources related to initially getting data (e.g., threads). */
     public void releaseGetResources() {
+        logChunkStatistics();
         tDirTable = null;
         tFileTable = null;
         try { 
@@ -933,9 +1046,9 @@ class GetChunkCallable implements Callable {
         } catch (Throwable t) {
         }
         try {
-            if (executorService != null) {
-                executorService.shutdownNow();
-                executorService = null;
+            if (requestQueue != null) {
+                requestQueue.shutdownNow();
+                requestQueue = null;
             }
         } catch (Throwable t) {
         }
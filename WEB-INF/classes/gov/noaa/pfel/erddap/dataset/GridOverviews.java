@@ -0,0 +1,756 @@
+/*
+ * GridOverviews Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.IntArray;
+import com.cohort.array.LongArray;
+import com.cohort.array.PAType;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.array.ShortArray;
+import com.cohort.array.StringArray;
+import com.cohort.util.Calendar2;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+import gov.noaa.pfel.erddap.util.EDStatic;
+import gov.noaa.pfel.erddap.util.TaskThread;
+import gov.noaa.pfel.erddap.variable.EDV;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+
+/**
+ * This manages the optional, precomputed, decimated overview levels
+ * ("overview pyramids") of an EDDGridFromFiles dataset, so that
+ * requests with large strides in latitude and longitude
+ * (e.g., for WMS and whole-world graphs) don't have to read
+ * all of the data in each source file.
+ *
+ * <p>For each source data file and each overview factor f, there is an
+ * overview file in datasetDir()/overviews/f/ with the values at
+ * latitude and longitude indices 0, f, 2f, ... of all of the dataVariables,
+ * for every value of the other axes.
+ * So an overview has exactly the values which a request with a
+ * stride that is a multiple of f (and a start index that is a multiple of f)
+ * would get from the source file (i.e., nearest-sample, like all strides):
+ * using an overview never changes the response.
+ *
+ * <p>The overview files are raw binary files (DataOutputStream, big-endian,
+ * the dataVariables' sourceDataPAType), arranged as
+ * [axis0 index][dataVariable][axis1]...[axisN-1] with the latitude and
+ * longitude axes decimated.
+ * The file names include the source file's lastModified time, so
+ * an overview for a changed file is never used.
+ *
+ * <p>Overviews are made by the TaskThread (TASK_MAKE_OVERVIEWS) after
+ * the dataset is loaded and after an update() notices new files.
+ * Until an overview file has been made, the source file is used.
+ *
+ * <p>This is active if datasets.xml's &lt;overviewFactors&gt; is specified
+ * for the dataset.
+ *
+ * @author agent (agent@local) 2026-10-17
+ */
+public class GridOverviews {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    public final static String OVERVIEW_EXTENSION = ".ovr";
+
+    //statistics since last Daily Report. sync on lock.
+    protected final static Object lock = new Object();
+    protected static int nRequests = 0, nFileHits = 0, nFileMisses = 0,
+        nFilesMade = 0, nFilesFailed = 0;
+    protected static long makeMillis = 0;
+
+    protected EDDGridFromFiles edd; //null for tests
+    protected String datasetID;
+    protected String overviewDir;   //with slash at end
+    protected int factors[];        //sorted, all >= 2
+    protected int latIndex, lonIndex;
+    protected int shape[];          //[nAxisVariables]. shape[0] is ignored (it varies by file)
+    protected PAType dvTypes[];     //the dataVariables' sourceDataPAType
+
+    /**
+     * The constructor used by EDDGridFromFiles.
+     *
+     * @param tEdd the dataset.
+     *   It must have latitude and longitude axes (but not as axis0).
+     * @param tFactors the overview factors, e.g., 2, 4, 8.
+     *   Values less than 2 are ignored.
+     * @throws RuntimeException if trouble (e.g., no lat and lon axes)
+     */
+    public GridOverviews(EDDGridFromFiles tEdd, int tFactors[]) {
+        this(tEdd.datasetID(), tEdd.datasetDir() + "overviews/", tFactors,
+            tEdd.latIndex(), tEdd.lonIndex(), axisSizes(tEdd), sourceDataPATypes(tEdd));
+        edd = tEdd;
+    }
+
+    /**
+     * The low level constructor (used directly by tests).
+     *
+     * @param tDatasetID
+     * @param tOverviewDir the directory (with slash at end) for the overview files
+     * @param tFactors the overview factors, e.g., 2, 4, 8.
+     *   Values less than 2 are ignored.
+     * @param tLatIndex the index of the latitude axis (must be &gt; 0)
+     * @param tLonIndex the index of the longitude axis (must be &gt; 0)
+     * @param tShape the number of values of each axis variable.
+     *   shape[0] is ignored, since it varies by file.
+     * @param tDvTypes the sourceDataPAType of each of the dataset's dataVariables
+     * @throws RuntimeException if trouble
+     */
+    public GridOverviews(String tDatasetID, String tOverviewDir, int tFactors[],
+        int tLatIndex, int tLonIndex, int tShape[], PAType tDvTypes[]) {
+
+        String msg = String2.ERROR + " in GridOverviews for datasetID=" + tDatasetID + ": ";
+        if (tLatIndex <= 0 || tLonIndex <= 0)
+            throw new RuntimeException(msg +
+                "overviews require latitude and longitude axes which aren't the leftmost axis.");
+        for (int dv = 0; dv < tDvTypes.length; dv++)
+            if (tDvTypes[dv] == PAType.STRING)
+                throw new RuntimeException(msg +
+                    "overviews aren't supported for datasets with String dataVariables.");
+        IntArray ia = new IntArray();
+        for (int i = 0; i < tFactors.length; i++)
+            if (tFactors[i] >= 2 && tFactors[i] < Integer.MAX_VALUE && ia.indexOf(tFactors[i]) < 0)
+                ia.add(tFactors[i]);
+        if (ia.size() == 0)
+            throw new RuntimeException(msg + "no valid overviewFactors (integers >= 2).");
+        ia.sort();
+
+        datasetID   = tDatasetID;
+        overviewDir = tOverviewDir;
+        factors     = ia.toArray();
+        latIndex    = tLatIndex;
+        lonIndex    = tLonIndex;
+        shape       = tShape;
+        dvTypes     = tDvTypes;
+    }
+
+    private static int[] axisSizes(EDDGrid tEdd) {
+        int nav = tEdd.axisVariables().length;
+        int tShape[] = new int[nav];
+        for (int av = 0; av < nav; av++)
+            tShape[av] = tEdd.axisVariables()[av].sourceValues().size();
+        return tShape;
+    }
+
+    private static PAType[] sourceDataPATypes(EDD tEdd) {
+        int ndv = tEdd.dataVariables().length;
+        PAType types[] = new PAType[ndv];
+        for (int dv = 0; dv < ndv; dv++)
+            types[dv] = tEdd.dataVariables()[dv].sourceDataPAType();
+        return types;
+    }
+
+    /** This returns the datasetID. */
+    public String datasetID() {
+        return datasetID;
+    }
+
+    /** This returns the overview factors (sorted, ascending). */
+    public int[] factors() {
+        return factors;
+    }
+
+    /**
+     * This returns the number of values of axis av in the overview with factor f.
+     */
+    protected int overviewSize(int av, int f) {
+        return av == latIndex || av == lonIndex? (shape[av] - 1) / f + 1 : shape[av];
+    }
+
+    /**
+     * This returns the number of values of one dataVariable for one
+     * axis0 value in the overview with factor f.
+     */
+    protected long nValuesPerDv(int f) {
+        long n = 1;
+        for (int av = 1; av < shape.length; av++)
+            n *= overviewSize(av, f);
+        return n;
+    }
+
+    /**
+     * This returns the number of bytes for one axis0 value
+     * (all dataVariables) in the overview with factor f.
+     */
+    protected long recordBytes(int f) {
+        long nPer = nValuesPerDv(f);
+        long n = 0;
+        for (int dv = 0; dv < dvTypes.length; dv++)
+            n += nPer * PAType.elementSize(dvTypes[dv]);
+        return n;
+    }
+
+    /**
+     * This returns the full name of the overview file for a source file.
+     *
+     * @param f the overview factor
+     * @param tFileDir the source file's directory
+     * @param tFileName the source file's name
+     * @param tLastMod the source file's lastModified time
+     */
+    public String overviewFileName(int f, String tFileDir, String tFileName, long tLastMod) {
+        return overviewDir + f + "/" + String2.md5Hex12(tFileDir + tFileName) +
+            "_" + tLastMod + OVERVIEW_EXTENSION;
+    }
+
+    /**
+     * This determines which (if any) overview can be used to get the data for
+     * a request.
+     *
+     * @param tConstraints  int[nAxisVariables*3]
+     *   where av*3+0=startIndex, av*3+1=stride, av*3+2=stopIndex.
+     * @return the largest overview factor that can be used
+     *   (the lat and lon start indices are multiples of the factor,
+     *   and the lat and lon strides are multiples of the factor, or irrelevant
+     *   because start=stop), or 0 if none can be used (or there'd be no benefit).
+     */
+    public int chooseFactor(IntArray tConstraints) {
+        int latStart = tConstraints.get(latIndex*3 + 0);
+        int latStop  = tConstraints.get(latIndex*3 + 2);
+        int lonStart = tConstraints.get(lonIndex*3 + 0);
+        int lonStop  = tConstraints.get(lonIndex*3 + 2);
+        if (latStart == latStop && lonStart == lonStop)
+            return 0; //no benefit
+        for (int fi = factors.length - 1; fi >= 0; fi--) {
+            int f = factors[fi];
+            if (fits(f, latStart, tConstraints.get(latIndex*3 + 1), latStop) &&
+                fits(f, lonStart, tConstraints.get(lonIndex*3 + 1), lonStop))
+                return f;
+        }
+        return 0;
+    }
+
+    private static boolean fits(int f, int start, int stride, int stop) {
+        return start % f == 0 && (start == stop || stride % f == 0);
+    }
+
+    /**
+     * This returns the indices of the requested dataVariables in the dataset's
+     * dataVariables (since the overview files have all of the dataVariables).
+     *
+     * @return the indices, or null if trouble (e.g., an unknown dataVariable)
+     */
+    public int[] dataVariableIndices(EDV tDataVariables[]) {
+        if (edd == null)
+            return null;
+        EDV dataVariables[] = edd.dataVariables();
+        int which[] = new int[tDataVariables.length];
+        for (int tdv = 0; tdv < tDataVariables.length; tdv++) {
+            which[tdv] = -1;
+            for (int dv = 0; dv < dataVariables.length; dv++) {
+                if (tDataVariables[tdv].destinationName().equals(
+                    dataVariables[dv].destinationName())) {
+                    which[tdv] = dv;
+                    break;
+                }
+            }
+            if (which[tdv] < 0)
+                return null;
+        }
+        return which;
+    }
+
+    /**
+     * This notes that a request could use overviews.
+     * This is used for the hit rate statistics.
+     */
+    public static void noteRequest() {
+        synchronized(lock) {
+            nRequests++;
+        }
+    }
+
+    /**
+     * This tries to get the data for a request for one source file from an overview.
+     *
+     * @param f the overview factor (from chooseFactor)
+     * @param tFileDir the source file's directory
+     * @param tFileName the source file's name
+     * @param tLastMod the source file's lastModified time
+     * @param nAxis0 the number of axis0 values in the source file
+     * @param tDvIndices the indices of the requested dataVariables (from dataVariableIndices)
+     * @param ttConstraints the constraints (where the first axis variable's
+     *   constraints have been customized for this file).
+     * @return a PrimitiveArray[] with an element for each tDvIndices with the
+     *   dataValues (using the sourceDataPAType), exactly as
+     *   getSourceDataFromFile would have returned them.
+     *   Or null if the overview isn't available (the caller should then use the source file).
+     *   This won't throw an exception.
+     */
+    public PrimitiveArray[] read(int f, String tFileDir, String tFileName, long tLastMod,
+        int nAxis0, int tDvIndices[], IntArray ttConstraints) {
+
+        String fullName = overviewFileName(f, tFileDir, tFileName, tLastMod);
+        PrimitiveArray results[] = null;
+        try {
+            if (!File2.isFile(fullName)) {
+                synchronized(lock) {
+                    nFileMisses++;
+                }
+                return null;
+            }
+            int nav = shape.length;
+            long nPerDv = nValuesPerDv(f);
+            long tRecordBytes = recordBytes(f);
+
+            //the constraints in the overview's index space
+            int oStart[] = new int[nav], oStride[] = new int[nav], oStop[] = new int[nav];
+            int oSize[]  = new int[nav];  //the overview's shape
+            long oMult[] = new long[nav]; //the number of values to the right of each axis
+            long mult = 1;
+            for (int av = nav - 1; av >= 1; av--) {
+                int start  = ttConstraints.get(av*3 + 0);
+                int stride = ttConstraints.get(av*3 + 1);
+                int stop   = ttConstraints.get(av*3 + 2);
+                if (av == latIndex || av == lonIndex) {
+                    oStart[av]  = start / f;
+                    oStride[av] = start == stop? 1 : stride / f;
+                    oStop[av]   = oStart[av] + ((stop - start) / stride) * oStride[av];
+                } else {
+                    oStart[av]  = start;
+                    oStride[av] = stride;
+                    oStop[av]   = stop;
+                }
+                oSize[av] = overviewSize(av, f);
+                oMult[av] = mult;
+                mult *= oSize[av];
+            }
+            int axis0Start  = ttConstraints.get(0);
+            int axis0Stride = ttConstraints.get(1);
+            int axis0Stop   = ttConstraints.get(2);
+
+            //the last axis is read in contiguous runs
+            int last = nav - 1;
+            int runLength = oStop[last] - oStart[last] + 1;
+            int nPerRun = (runLength - 1) / oStride[last] + 1;
+            long nRuns = 1;
+            for (int av = 1; av < last; av++)
+                nRuns *= (oStop[av] - oStart[av]) / oStride[av] + 1;
+            long nAxis0Values = (axis0Stop - axis0Start) / axis0Stride + 1;
+            int ndv = tDvIndices.length;
+            long nResults = nAxis0Values * nRuns * nPerRun;
+            Math2.ensureArraySizeOkay(nResults, "GridOverviews.read");
+            results = new PrimitiveArray[ndv];
+            for (int tdv = 0; tdv < ndv; tdv++)
+                results[tdv] = PrimitiveArray.factory(dvTypes[tDvIndices[tdv]],
+                    (int)nResults, false);
+
+            RandomAccessFile raf = new RandomAccessFile(fullName, "r");
+            try {
+                if (raf.length() != nAxis0 * tRecordBytes)
+                    throw new RuntimeException("Unexpected overview file length=" + raf.length() +
+                        " (expected " + (nAxis0 * tRecordBytes) + ").");
+                byte buffer[] = null;
+                int current[] = new int[nav];
+                for (int a0 = axis0Start; a0 <= axis0Stop; a0 += axis0Stride) {
+                    for (int tdv = 0; tdv < ndv; tdv++) {
+                        int dv = tDvIndices[tdv];
+                        int elementSize = PAType.elementSize(dvTypes[dv]);
+                        long dvStart = a0 * tRecordBytes;
+                        for (int odv = 0; odv < dv; odv++)
+                            dvStart += nPerDv * PAType.elementSize(dvTypes[odv]);
+                        PrimitiveArray pa = results[tdv];
+                        PrimitiveArray run = oStride[last] == 1? pa :
+                            PrimitiveArray.factory(dvTypes[dv], runLength, false);
+                        int nRunBytes = runLength * elementSize;
+                        if (buffer == null || buffer.length < nRunBytes)
+                            buffer = new byte[nRunBytes];
+
+                        //for each run (odometer over axes 1 .. last-1)
+                        for (int av = 1; av < last; av++)
+                            current[av] = oStart[av];
+                        while (true) {
+                            long index = oStart[last];
+                            for (int av = 1; av < last; av++)
+                                index += current[av] * oMult[av];
+                            raf.seek(dvStart + index * elementSize);
+                            raf.readFully(buffer, 0, nRunBytes);
+                            DataInputStream dis = new DataInputStream(
+                                new ByteArrayInputStream(buffer, 0, nRunBytes));
+                            if (run == pa) {
+                                pa.readDis(dis, runLength);
+                            } else {
+                                run.clear();
+                                run.readDis(dis, runLength);
+                                for (int i = 0; i < runLength; i += oStride[last])
+                                    pa.addFromPA(run, i);
+                            }
+
+                            //increment the odometer
+                            int av = last - 1;
+                            while (av >= 1) {
+                                current[av] += oStride[av];
+                                if (current[av] <= oStop[av])
+                                    break;
+                                current[av] = oStart[av];
+                                av--;
+                            }
+                            if (av < 1)
+                                break;
+                        }
+                    }
+                }
+            } finally {
+                raf.close();
+            }
+            synchronized(lock) {
+                nFileHits++;
+            }
+            return results;
+
+        } catch (Throwable t) {
+            //the source file will be used. The overview will be remade.
+            String2.log("GridOverviews.read datasetID=" + datasetID + " " + fullName +
+                " failed (so the source file will be used):\n" +
+                MustBe.throwableToShortString(t));
+            File2.delete(fullName);
+            synchronized(lock) {
+                nFileMisses++;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * This adds a TASK_MAKE_OVERVIEWS task to the TaskThread,
+     * unless there already is an unfinished one for this dataset.
+     */
+    public void requestMake() {
+        String key = datasetID + OVERVIEW_EXTENSION;
+        EDStatic.ensureTaskThreadIsRunningIfNeeded();  //ensure info is up-to-date
+        Integer lastAssignedTask = (Integer)EDStatic.lastAssignedTask.get(key);
+        if (lastAssignedTask != null &&
+            EDStatic.lastFinishedTask < lastAssignedTask.intValue()) {
+            if (verbose) String2.log("GridOverviews for datasetID=" + datasetID +
+                ": an unfinished TASK_MAKE_OVERVIEWS already exists.");
+            return;
+        }
+        Object taskOA[] = new Object[2];
+        taskOA[0] = TaskThread.TASK_MAKE_OVERVIEWS;
+        taskOA[1] = this;
+        int taskNumber = EDStatic.addTask(taskOA);
+        EDStatic.lastAssignedTask.put(key, new Integer(taskNumber));
+        EDStatic.ensureTaskThreadIsRunningIfNeeded();  //clients (like this class) are responsible for checking on it
+        if (verbose) String2.log("GridOverviews for datasetID=" + datasetID +
+            ": task#" + taskNumber + " TASK_MAKE_OVERVIEWS");
+    }
+
+    /**
+     * This makes the overview files which don't exist yet for all of the
+     * dataset's source files, and deletes overview files which are no
+     * longer needed. This is called by the TaskThread.
+     *
+     * @return a summary (e.g., for the log)
+     * @throws Throwable if trouble (but trouble with one source file is just logged)
+     */
+    public String make() throws Throwable {
+        long time = System.currentTimeMillis();
+        Table dirTable  = edd.getDirTable();
+        Table fileTable = edd.getFileTable();
+        StringArray dirList    = (StringArray)dirTable.getColumn(0);
+        ShortArray  ftDirIndex = (ShortArray) fileTable.getColumn(EDDGridFromFiles.FT_DIR_INDEX_COL);
+        StringArray ftFileList = (StringArray)fileTable.getColumn(EDDGridFromFiles.FT_FILE_LIST_COL);
+        LongArray   ftLastMod  = (LongArray)  fileTable.getColumn(EDDGridFromFiles.FT_LAST_MOD_COL);
+        IntArray    ftNValues  = (IntArray)   fileTable.getColumn(EDDGridFromFiles.FT_N_VALUES_COL);
+        int nFiles = ftFileList.size();
+        int nMade = 0, nFailed = 0, nDeleted = 0;
+        for (int fi = 0; fi < factors.length; fi++) {
+            int f = factors[fi];
+            String dir = overviewDir + f + "/";
+            File2.makeDirectory(dir);
+            HashSet<String> keep = new HashSet();
+            for (int row = 0; row < nFiles; row++) {
+                if (Thread.currentThread().isInterrupted())
+                    throw new InterruptedException("GridOverviews.make was interrupted.");
+                String tFileDir  = dirList.get(ftDirIndex.get(row));
+                String tFileName = ftFileList.get(row);
+                long tLastMod    = ftLastMod.get(row);
+                int nAxis0       = ftNValues.get(row);
+                String fullName  = overviewFileName(f, tFileDir, tFileName, tLastMod);
+                keep.add(File2.getNameAndExtension(fullName));
+                if (File2.length(fullName) == nAxis0 * recordBytes(f))
+                    continue;
+                long fileTime = System.currentTimeMillis();
+                try {
+                    makeOne(f, tFileDir, tFileName, nAxis0, fullName);
+                    nMade++;
+                    synchronized(lock) {
+                        nFilesMade++;
+                        makeMillis += System.currentTimeMillis() - fileTime;
+                    }
+                } catch (Throwable t) {
+                    EDStatic.rethrowClientAbortException(t);  //first thing in catch{}
+                    if (t instanceof InterruptedException)
+                        throw t;
+                    nFailed++;
+                    synchronized(lock) {
+                        nFilesFailed++;
+                        makeMillis += System.currentTimeMillis() - fileTime;
+                    }
+                    String2.log("GridOverviews.make datasetID=" + datasetID +
+                        " f=" + f + " " + tFileDir + tFileName + " failed:\n" +
+                        MustBe.throwableToString(t));
+                }
+            }
+
+            //delete overviews of files which have changed or are gone
+            String names[] = new File(dir).list();
+            for (int i = 0; names != null && i < names.length; i++) {
+                if (!keep.contains(names[i])) {
+                    File2.delete(dir + names[i]);
+                    nDeleted++;
+                }
+            }
+        }
+        return "GridOverviews.make datasetID=" + datasetID +
+            " factors=" + String2.toCSSVString(factors) +
+            " nSourceFiles=" + nFiles + " nMade=" + nMade +
+            " nFailed=" + nFailed + " nDeleted=" + nDeleted +
+            " time=" + Calendar2.elapsedTimeString(System.currentTimeMillis() - time);
+    }
+
+    /**
+     * This makes one overview file (one axis0 value at a time).
+     *
+     * @throws Throwable if trouble
+     */
+    protected void makeOne(int f, String tFileDir, String tFileName, int nAxis0,
+        String fullName) throws Throwable {
+
+        EDV dataVariables[] = edd.dataVariables();
+        int nav = shape.length;
+        int ndv = dataVariables.length;
+        long nPerDv = nValuesPerDv(f);
+        IntArray constraints = new IntArray(nav * 3, true);
+        for (int av = 1; av < nav; av++) {
+            boolean decimated = av == latIndex || av == lonIndex;
+            constraints.set(av*3 + 0, 0);
+            constraints.set(av*3 + 1, decimated? f : 1);
+            constraints.set(av*3 + 2, decimated? (overviewSize(av, f) - 1) * f : shape[av] - 1);
+        }
+
+        String tempName = fullName + String2.md5Hex12(Math2.random(Integer.MAX_VALUE) + "");
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(tempName)));
+        boolean success = false;
+        try {
+            for (int a0 = 0; a0 < nAxis0; a0++) {
+                constraints.set(0, a0);
+                constraints.set(1, 1);
+                constraints.set(2, a0);
+                PrimitiveArray pas[] = edd.getSourceDataFromFile(tFileDir, tFileName,
+                    dataVariables, constraints);
+                for (int dv = 0; dv < ndv; dv++) {
+                    PrimitiveArray pa = pas[dv];
+                    if (pa.size() != nPerDv)
+                        throw new RuntimeException("Unexpected number of values for " +
+                            dataVariables[dv].destinationName() + ": " + pa.size() +
+                            " (expected " + nPerDv + ").");
+                    if (pa.elementType() != dvTypes[dv]) { //convert to sourceDataPAType
+                        PrimitiveArray tpa = PrimitiveArray.factory(dvTypes[dv], pa.size(), false);
+                        tpa.append(pa);
+                        pa = tpa;
+                    }
+                    pa.writeDos(dos);
+                }
+            }
+            dos.close();
+            dos = null;
+            File2.rename(tempName, fullName);
+            success = true;
+        } finally {
+            if (dos != null)
+                try {dos.close();} catch (Exception e) {}
+            if (!success)
+                File2.delete(tempName);
+        }
+    }
+
+    /** This returns a one line summary of the statistics (with a trailing newline). */
+    public static String statistics() {
+        synchronized(lock) {
+            int nLookups = nFileHits + nFileMisses;
+            return "GridOverviews: (since last Daily Report:" +
+                " nRequests=" + nRequests +
+                " nFileHits=" + nFileHits +
+                (nLookups == 0? "" : " (" + (nFileHits * 100L / nLookups) + "%)") +
+                " nFileMisses=" + nFileMisses +
+                " nFilesMade=" + nFilesMade +
+                " nFilesFailed=" + nFilesFailed +
+                " makeTime=" + Calendar2.elapsedTimeString(makeMillis) + ")\n";
+        }
+    }
+
+    /** This resets the statistics which are 'since last Daily Report'. */
+    public static void resetDailyStatistics() {
+        synchronized(lock) {
+            nRequests = 0;
+            nFileHits = 0;
+            nFileMisses = 0;
+            nFilesMade = 0;
+            nFilesFailed = 0;
+            makeMillis = 0;
+        }
+    }
+
+    /**
+     * This tests chooseFactor and read() with an overview file made here
+     * (so no dataset is needed).
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** GridOverviews.basicTest()");
+        String dir = File2.getSystemTempDirectory() + "GridOverviewsTest/";
+        File2.makeDirectory(dir + "2/");
+        File2.makeDirectory(dir + "4/");
+        try {
+            resetDailyStatistics();
+
+            //[time][depth][lat][lon], with int and double dataVariables
+            int shape[] = {3, 2, 9, 10};
+            PAType types[] = {PAType.INT, PAType.DOUBLE};
+            GridOverviews go = new GridOverviews("test", dir, new int[]{4, 1, 2},
+                2, 3, shape, types);
+            Test.ensureEqual(String2.toCSSVString(go.factors()), "2, 4", "");
+
+            //chooseFactor
+            Test.ensureEqual(go.chooseFactor(IntArray.fromCSV("0,1,2, 0,1,1, 0,4,8, 0,4,8")), 4, "");
+            Test.ensureEqual(go.chooseFactor(IntArray.fromCSV("0,1,2, 0,1,1, 0,2,8, 0,4,8")), 2, "");
+            Test.ensureEqual(go.chooseFactor(IntArray.fromCSV("0,1,2, 0,1,1, 2,4,6, 0,4,8")), 2, "");
+            Test.ensureEqual(go.chooseFactor(IntArray.fromCSV("0,1,2, 0,1,1, 4,1,4, 0,8,8")), 4, ""); //lat start=stop
+            Test.ensureEqual(go.chooseFactor(IntArray.fromCSV("0,1,2, 0,1,1, 0,3,6, 0,4,8")), 0, "");
+            Test.ensureEqual(go.chooseFactor(IntArray.fromCSV("0,1,2, 0,1,1, 1,2,7, 0,4,8")), 0, "");
+            Test.ensureEqual(go.chooseFactor(IntArray.fromCSV("0,1,2, 0,1,1, 4,1,4, 8,1,8")), 0, ""); //no benefit
+
+            //make the overview files (value = a0*1000 + depth*100 + lat*10 + lon)
+            for (int fi = 0; fi < 2; fi++) {
+                int f = go.factors()[fi];
+                String fullName = go.overviewFileName(f, "/data/", "a.nc", 12345);
+                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(fullName)));
+                for (int a0 = 0; a0 < shape[0]; a0++) {
+                    for (int dv = 0; dv < 2; dv++) {
+                        for (int d = 0; d < shape[1]; d++)
+                            for (int la = 0; la < shape[2]; la += f)
+                                for (int lo = 0; lo < shape[3]; lo += f) {
+                                    int value = a0*1000 + d*100 + la*10 + lo;
+                                    if (dv == 0) dos.writeInt(value);
+                                    else dos.writeDouble(value + 0.5);
+                                }
+                    }
+                }
+                dos.close();
+                Test.ensureEqual(File2.length(fullName), shape[0] * go.recordBytes(f), "f=" + f);
+            }
+
+            //read various requests and compare to brute force
+            String tests[] = {
+                "0,1,2, 0,1,1, 0,4,8, 0,4,8",
+                "1,1,1, 1,1,1, 0,2,8, 0,2,8",
+                "0,2,2, 0,1,1, 2,2,6, 4,6,8",
+                "2,1,2, 0,1,0, 4,1,4, 0,2,9",
+                "0,1,2, 0,1,1, 0,8,8, 4,4,4"};
+            for (int ti = 0; ti < tests.length; ti++) {
+                IntArray c = IntArray.fromCSV(tests[ti]);
+                int f = go.chooseFactor(c);
+                Test.ensureTrue(f > 0, "test #" + ti);
+                PrimitiveArray pas[] = go.read(f, "/data/", "a.nc", 12345, shape[0],
+                    new int[]{1, 0}, c);
+                Test.ensureTrue(pas != null, "test #" + ti);
+                StringBuilder expected = new StringBuilder();
+                for (int a0 = c.get(0); a0 <= c.get(2); a0 += c.get(1))
+                    for (int d = c.get(3); d <= c.get(5); d += c.get(4))
+                        for (int la = c.get(6); la <= c.get(8); la += c.get(7))
+                            for (int lo = c.get(9); lo <= c.get(11); lo += c.get(10))
+                                expected.append((expected.length() == 0? "" : ", ") +
+                                    (a0*1000 + d*100 + la*10 + lo));
+                Test.ensureEqual(pas[1].toString(), expected.toString(), "test #" + ti);
+                Test.ensureEqual(pas[0].elementType(), PAType.DOUBLE, "test #" + ti);
+                Test.ensureEqual(pas[0].size(), pas[1].size(), "test #" + ti);
+                Test.ensureEqual(pas[0].getDouble(0), pas[1].getDouble(0) + 0.5, "test #" + ti);
+            }
+
+            //no overview for a different lastModified
+            Test.ensureTrue(go.read(2, "/data/", "a.nc", 12346, shape[0],
+                new int[]{0}, IntArray.fromCSV(tests[1])) == null, "");
+
+            //a bad overview file (wrong length) isn't used and is deleted
+            String fullName = go.overviewFileName(2, "/data/", "a.nc", 12345);
+            Test.ensureTrue(go.read(2, "/data/", "a.nc", 12345, shape[0] + 1,
+                new int[]{0}, IntArray.fromCSV(tests[1])) == null, "");
+            Test.ensureEqual(File2.isFile(fullName), false, "");
+
+            String2.log(statistics());
+            synchronized(lock) {
+                Test.ensureEqual(nFileHits, tests.length, "");
+                Test.ensureEqual(nFileMisses, 2, "");
+            }
+
+        } finally {
+            resetDailyStatistics();
+            File2.deleteAllFiles(dir, true, true);
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ GridOverviews.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * GridReadAhead Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This remembers how fast each EDDGrid dataset's source delivers
+ * GridDataAccessor's partial requests ("chunks"), so that GridDataAccessor
+ * (when datasets.xml's &lt;gridReadAheadMB&gt; is &gt; 0) can choose
+ * a chunk size that suits the source.
+ *
+ * <p>The time to get a chunk is modelled as latency + nBytes/bytesPerMs.
+ * For a remote source (EDDGridFromDap and EDDGridFromErddap), the latency
+ * (one round trip, plus the remote server's setup time) is large,
+ * so chunks should be big enough that the latency is a small part
+ * (about 10%) of each chunk's time.
+ * For local files, the latency is small, so chunks can be smaller
+ * (TARGET_CHUNK_MILLIS of work), so the first chunk arrives sooner and
+ * reading overlaps more with writing the response.
+ * Until there are measurements for a dataset, typical values for the
+ * type of source are used.
+ *
+ * <p>This is thread safe.
+ *
+ * @author agent (agent@local) 2026-10-16
+ */
+public class GridReadAhead {
+
+    /** The smallest chunk size that will be suggested (the same as the minimum partialRequestMaxBytes). */
+    public final static long MIN_CHUNK_BYTES = 1000000;
+
+    /** The preferred minimum time (ms) to get each chunk. */
+    public final static long TARGET_CHUNK_MILLIS = 250;
+
+    /** A chunk's time should be at least this many times the latency (so latency is about 10% of the time). */
+    public final static int LATENCY_FACTOR = 9;
+
+    /** Typical values (until there are measurements) for remote sources (e.g., 10 MB/s). */
+    public final static double REMOTE_BYTES_PER_MS = 10000, REMOTE_LATENCY_MS = 250;
+
+    /** Typical values (until there are measurements) for local files (e.g., 200 MB/s). */
+    public final static double LOCAL_BYTES_PER_MS = 200000, LOCAL_LATENCY_MS = 5;
+
+    /** The measurements for each datasetID. */
+    protected static ConcurrentHashMap<String,GridReadAhead> history = new ConcurrentHashMap();
+
+    protected boolean remote;
+    protected double bytesPerMs; //a decaying maximum of the recent throughputs
+    protected double latencyMs;  //a moving average of the per-chunk overhead
+    protected long nChunks = 0;
+
+    /**
+     * The constructor.
+     *
+     * @param tRemote true if the source is a remote server
+     */
+    public GridReadAhead(boolean tRemote) {
+        remote = tRemote;
+        bytesPerMs = remote? REMOTE_BYTES_PER_MS : LOCAL_BYTES_PER_MS;
+        latencyMs  = remote? REMOTE_LATENCY_MS   : LOCAL_LATENCY_MS;
+    }
+
+    /**
+     * This indicates if the eddGrid gets its data from a remote server.
+     *
+     * @param eddGrid an EDDGrid
+     * @return true if the eddGrid gets its data from a remote server.
+     */
+    public static boolean isRemote(EDDGrid eddGrid) {
+        return eddGrid instanceof EDDGridFromDap ||
+               eddGrid instanceof EDDGridFromErddap;
+    }
+
+    /**
+     * This gets the GridReadAhead for a datasetID (making a new one if needed).
+     *
+     * @param datasetID the datasetID
+     * @param tRemote true if the source is a remote server.
+     *    If the dataset's type has changed, the old measurements are discarded.
+     * @return the GridReadAhead for the datasetID
+     */
+    public static GridReadAhead forDataset(String datasetID, boolean tRemote) {
+        GridReadAhead gra = history.get(datasetID);
+        if (gra == null || gra.remote != tRemote) {
+            gra = new GridReadAhead(tRemote);
+            history.put(datasetID, gra);
+        }
+        return gra;
+    }
+
+    /** This indicates if this is for a remote source. */
+    public boolean isRemote() {
+        return remote;
+    }
+
+    /**
+     * This suggests the size of each chunk.
+     *
+     * @param maxBytes the maximum allowed size (e.g., EDStatic.partialRequestMaxBytes)
+     * @param ceilingBytes the memory ceiling for the chunks that are in memory at once
+     *    (each chunk will be at most 1/2 of this)
+     * @return the suggested size (in bytes) of each chunk
+     *    (at least MIN_CHUNK_BYTES, even if maxBytes or ceilingBytes are smaller).
+     */
+    public synchronized long chunkBytes(long maxBytes, long ceilingBytes) {
+        double millis = Math.max(TARGET_CHUNK_MILLIS, LATENCY_FACTOR * latencyMs);
+        long target = Math2.roundToLong(bytesPerMs * millis);
+        if (target == Long.MAX_VALUE) //NaN
+            target = MIN_CHUNK_BYTES;
+        return Math.max(MIN_CHUNK_BYTES, Math.min(Math.min(maxBytes, ceilingBytes / 2), target));
+    }
+
+    /**
+     * This records the time it took to get one chunk.
+     *
+     * @param nBytes the size of the chunk
+     * @param millis the time it took to get the chunk
+     */
+    public synchronized void record(long nBytes, long millis) {
+        if (nBytes <= 0)
+            return;
+        millis = Math.max(1, millis);
+        double rate = nBytes / (double)millis;
+        //a faster chunk raises bytesPerMs at once; slower chunks lower it gradually
+        bytesPerMs = rate >= bytesPerMs? rate : 0.9 * bytesPerMs + 0.1 * rate;
+        //the time not explained by bytesPerMs is the overhead
+        double overhead = Math.max(0, millis - nBytes / bytesPerMs);
+        latencyMs = 0.8 * latencyMs + 0.2 * overhead;
+        nChunks++;
+    }
+
+    /** This returns the current estimate of the throughput (bytes/ms, which is also ~KB/s). */
+    public synchronized double bytesPerMs() {
+        return bytesPerMs;
+    }
+
+    /** This returns the current estimate of the per-chunk latency (ms). */
+    public synchronized double latencyMs() {
+        return latencyMs;
+    }
+
+    /** This returns a short description of the current estimates. */
+    public synchronized String toString() {
+        return (remote? "remote" : "local") +
+            " MB/s=" + String2.genEFormat6(bytesPerMs / 1000) +
+            " latencyMs=" + Math2.roundToLong(latencyMs) +
+            " nChunks=" + nChunks;
+    }
+
+    /**
+     * This tests the basic methods.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** GridReadAhead.basicTest");
+
+        //typical values before any measurements
+        GridReadAhead local  = new GridReadAhead(false);
+        GridReadAhead remote = new GridReadAhead(true);
+        long max = 490000000;
+        long ceiling = 200000000;
+        Test.ensureEqual(local.chunkBytes(max, ceiling),  50000000, ""); //200000 * 250ms
+        Test.ensureEqual(remote.chunkBytes(max, ceiling), 22500000, ""); //10000 * 9 * 250ms
+        Test.ensureEqual(local.chunkBytes(2000000, ceiling),  2000000, ""); //maxBytes
+        Test.ensureEqual(local.chunkBytes(max, 40000000),    20000000, ""); //ceiling/2
+        Test.ensureEqual(local.chunkBytes(max, 10),   MIN_CHUNK_BYTES, "");
+
+        //a fast source raises bytesPerMs at once
+        local.record(100000000, 100); //1000000 bytes/ms
+        Test.ensureEqual(local.bytesPerMs(), 1000000, "");
+        Test.ensureEqual(local.latencyMs(), 4, ""); //0.8*5 + 0.2*0
+        Test.ensureEqual(local.chunkBytes(max, ceiling), 100000000, ""); //ceiling/2
+
+        //a slow remote source with little latency
+        for (int i = 0; i < 50; i++)
+            remote.record(10000000, 2000); //5000 bytes/ms
+        Test.ensureTrue(remote.bytesPerMs() > 5000 && remote.bytesPerMs() < 5100, remote.toString());
+        Test.ensureTrue(remote.latencyMs() < 100, remote.toString());
+        //chunk size is ~ 250ms of data (because latency is small)
+        Test.ensureTrue(remote.chunkBytes(max, ceiling) < 1500000, remote.toString());
+
+        //same size chunks that take longer have more overhead
+        GridReadAhead slow = new GridReadAhead(true);
+        slow.record(10000000, 1000); //10000 bytes/ms
+        for (int i = 0; i < 50; i++) {
+            slow.record(10000000, 1000);
+            slow.record(1000000, 600);  //mostly latency
+        }
+        Test.ensureTrue(slow.latencyMs() > 200, slow.toString());
+        Test.ensureTrue(slow.chunkBytes(max, ceiling) > 15000000, slow.toString());
+
+        //bad values are ignored
+        long n = slow.nChunks;
+        slow.record(0, 100);
+        Test.ensureEqual(slow.nChunks, n, "");
+
+        //forDataset
+        GridReadAhead gra = forDataset("testGridReadAhead", false);
+        Test.ensureTrue(gra == forDataset("testGridReadAhead", false), "");
+        Test.ensureTrue(gra != forDataset("testGridReadAhead", true), ""); //type changed
+        Test.ensureEqual(forDataset("testGridReadAhead", true).isRemote(), true, "");
+        history.remove("testGridReadAhead");
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ GridReadAhead.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+}
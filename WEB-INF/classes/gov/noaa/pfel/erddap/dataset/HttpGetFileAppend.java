@@ -0,0 +1,278 @@
+/*
+ * HttpGetFileAppend Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.PAType;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This holds the .jsonl lines that one or more EDDTableFromHttpGet .insert or
+ * .delete requests add to one data file, plus the min, max, and hasNaN
+ * statistics of those rows (for updating the file's row in the fileTable).
+ * Appends to the same file can be merged (see HttpGetGroupCommit),
+ * so that they are written with one write and the fileTable is updated once.
+ *
+ * @author agent (agent@local) 2026-10-17
+ */
+public class HttpGetFileAppend {
+
+    /** The canonical full name of the data file. */
+    public final String fullFileName;
+
+    /** The number of data rows (lines). */
+    public int nRows = 0;
+
+    //the .jsonl lines (no header line)
+    private final ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+
+    //statistics for each column (package-level access for EDDTableFromHttpGet)
+    final String     columnMinString[];
+    final String     columnMaxString[];
+    final long       columnMinLong[];
+    final long       columnMaxLong[];
+    final BigInteger columnMinULong[];
+    final BigInteger columnMaxULong[];
+    final double     columnMinDouble[];
+    final double     columnMaxDouble[];
+    final boolean    columnHasNaN[];
+
+    /**
+     * The constructor.
+     *
+     * @param tFullFileName the full name of the data file
+     * @param nColumns the number of columns (including fixed value columns)
+     */
+    public HttpGetFileAppend(String tFullFileName, int nColumns) {
+        fullFileName = String2.canonical(tFullFileName);
+        columnMinString = new String[nColumns];
+        columnMaxString = new String[nColumns];
+        columnMinLong   = new long[nColumns];
+        columnMaxLong   = new long[nColumns];
+        columnMinULong  = new BigInteger[nColumns];
+        columnMaxULong  = new BigInteger[nColumns];
+        columnMinDouble = new double[nColumns];
+        columnMaxDouble = new double[nColumns];
+        columnHasNaN    = new boolean[nColumns];
+        Arrays.fill(columnMinString, "\uFFFF");
+        Arrays.fill(columnMaxString, "\u0000");
+        Arrays.fill(columnMinLong,   Long.MAX_VALUE);
+        Arrays.fill(columnMaxLong,   Long.MIN_VALUE);
+        Arrays.fill(columnMinULong,  Math2.ULONG_MAX_VALUE);
+        Arrays.fill(columnMaxULong,  BigInteger.ZERO);
+        Arrays.fill(columnMinDouble, Double.MAX_VALUE);
+        Arrays.fill(columnMaxDouble, -Double.MAX_VALUE);
+    }
+
+    /**
+     * This returns the header line (the JSON array of the non-fixed column names)
+     * which starts each new data file.
+     *
+     * @param columnNames the names of all of the columns. Fixed value columns start with '='.
+     * @return the UTF-8 bytes of the header line
+     * @throws Exception if trouble
+     */
+    public static byte[] headerBytes(String columnNames[]) throws Exception {
+        ByteArrayOutputStream tBaos = new ByteArrayOutputStream(256);
+        Writer writer = String2.getBufferedOutputStreamWriterUtf8(tBaos);
+        boolean somethingWritten = false;
+        for (int col = 0; col < columnNames.length; col++) {
+            if (columnNames[col].charAt(0) != '=') {
+                writer.write(somethingWritten? ',' : '[');
+                writer.write(String2.toJson(columnNames[col]));
+                somethingWritten = true;
+            }
+        }
+        writer.write("]\n");
+        writer.flush();
+        return tBaos.toByteArray();
+    }
+
+    /**
+     * This adds the .jsonl lines for some rows and includes them in the statistics.
+     *
+     * @param columnNames the names of all of the columns. Fixed value columns start with '='.
+     * @param columnPATypes the PAType of each column
+     * @param columnMvFv the missing_value and/or _FillValue for each column (or null for each)
+     * @param columnValues the values of each column
+     * @param startRow the first row to be added
+     * @param stopRow one past the last row to be added
+     * @throws Exception if trouble
+     */
+    public void addRows(String columnNames[], PAType columnPATypes[],
+        PrimitiveArray columnMvFv[], PrimitiveArray columnValues[],
+        int startRow, int stopRow) throws Exception {
+
+        int nColumns = columnNames.length;
+        Writer writer = String2.getBufferedOutputStreamWriterUtf8(baos);
+        for (int tRow = startRow; tRow < stopRow; tRow++) {
+            boolean somethingWritten = false;
+            for (int col = 0; col < nColumns; col++) {
+                if (columnNames[col].charAt(0) != '=') {
+                    writer.write(somethingWritten? ',' : '[');
+                    writer.write(columnValues[col].getJsonString(tRow));
+                    somethingWritten = true;
+                }
+            }
+            writer.write("]\n");
+        }
+        writer.flush();
+        nRows += stopRow - startRow;
+
+        //calculate statistics
+        for (int col = 0; col < nColumns; col++) {
+            PAType tPAType = columnPATypes[col];
+            PrimitiveArray pa = columnValues[col];
+            PrimitiveArray mvFv = columnMvFv[col];
+            if (columnNames[col].charAt(0) == '=')
+                continue; //fixed value
+            for (int tRow = startRow; tRow < stopRow; tRow++) {
+                if (tPAType == PAType.STRING) {
+                    String s = pa.getString(tRow);
+                    if (s.length() == 0 ||
+                        (mvFv != null && mvFv.indexOf(s) >= 0))
+                        columnHasNaN[col] = true;
+                    else {
+                        if (s.compareTo(columnMinString[col]) < 0) columnMinString[col] = s;
+                        if (s.compareTo(columnMaxString[col]) > 0) columnMaxString[col] = s;
+                    }
+                } else if (tPAType == PAType.LONG) {
+                    long d = pa.getLong(tRow);
+                    if (d == Long.MAX_VALUE ||
+                        (mvFv != null && mvFv.indexOf(pa.getString(tRow)) >= 0))
+                        columnHasNaN[col] = true;
+                    else {
+                        if (d < columnMinLong[col]) columnMinLong[col] = d;
+                        if (d > columnMaxLong[col]) columnMaxLong[col] = d;
+                    }
+                } else if (tPAType == PAType.ULONG) {
+                    BigInteger d = pa.getULong(tRow);
+                    if (d.equals(Math2.ULONG_MAX_VALUE) ||
+                        (mvFv != null && mvFv.indexOf(pa.getString(tRow)) >= 0))
+                        columnHasNaN[col] = true;
+                    else {
+                        if (d.compareTo(columnMinULong[col]) < 0) columnMinULong[col] = d;
+                        if (d.compareTo(columnMaxULong[col]) > 0) columnMaxULong[col] = d;
+                    }
+                } else {
+                    double d = pa.getDouble(tRow);
+                    if (Double.isNaN(d) ||
+                        (mvFv != null && mvFv.indexOf(pa.getString(tRow)) >= 0))
+                        columnHasNaN[col] = true;
+                    else {
+                        if (d < columnMinDouble[col]) columnMinDouble[col] = d;
+                        if (d > columnMaxDouble[col]) columnMaxDouble[col] = d;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This adds another append's lines (after this append's lines)
+     * and statistics to this append.
+     *
+     * @param other an append to the same file
+     * @throws Exception if trouble
+     */
+    public void merge(HttpGetFileAppend other) throws Exception {
+        if (!fullFileName.equals(other.fullFileName))
+            throw new RuntimeException(MustBe.InternalError +
+                ": HttpGetFileAppend.merge: different files.");
+        other.baos.writeTo(baos);
+        nRows += other.nRows;
+        for (int col = 0; col < columnHasNaN.length; col++) {
+            if (other.columnMinString[col].compareTo(columnMinString[col]) < 0) columnMinString[col] = other.columnMinString[col];
+            if (other.columnMaxString[col].compareTo(columnMaxString[col]) > 0) columnMaxString[col] = other.columnMaxString[col];
+            columnMinLong[col]   = Math.min(columnMinLong[col],   other.columnMinLong[col]);
+            columnMaxLong[col]   = Math.max(columnMaxLong[col],   other.columnMaxLong[col]);
+            columnMinULong[col]  = columnMinULong[col].min(other.columnMinULong[col]);
+            columnMaxULong[col]  = columnMaxULong[col].max(other.columnMaxULong[col]);
+            columnMinDouble[col] = Math.min(columnMinDouble[col], other.columnMinDouble[col]);
+            columnMaxDouble[col] = Math.max(columnMaxDouble[col], other.columnMaxDouble[col]);
+            columnHasNaN[col]    = columnHasNaN[col] || other.columnHasNaN[col];
+        }
+    }
+
+    /** This returns the number of bytes of .jsonl lines. */
+    public int nBytes() {
+        return baos.size();
+    }
+
+    /**
+     * This appends the lines to the file (with a canonicalLock on fullFileName,
+     * so other threads don't write to or read from the file at the same time).
+     * If the file doesn't exist, it is created, starting with the header line.
+     * Everything is written with 1 low level write.
+     *
+     * @param header the header line (see headerBytes)
+     * @param fsync if true, this calls FileDescriptor.sync() so the data
+     *    is on the storage device (not just in the OS's buffers) before this returns.
+     * @return true if the file was created
+     * @throws Throwable if trouble (if the file was just created, it is deleted)
+     */
+    public boolean write(byte header[], boolean fsync) throws Throwable {
+        //synchronized is ESSENTIAL: avoid problems with 2+ threads
+        //  writing or reading same file at same time
+        //There were rare problems when writing to file with 4+ threads
+        //  before switching to this system of full prep, then full write.
+        ReentrantLock lock = String2.canonicalLock(fullFileName);
+        if (!lock.tryLock(String2.longTimeoutSeconds, TimeUnit.SECONDS))
+            throw new TimeoutException("Timeout waiting for lock on fullFileName in EDDTableFromHttpGet.");
+        boolean fileIsNew = false;
+        try {
+            //decide this while holding the lock, so only one thread writes the header
+            fileIsNew = !File2.isFile(fullFileName);
+            byte bar[];
+            if (fileIsNew) {
+                File2.makeDirectory(File2.getDirectory(fullFileName)); //throws exception if trouble
+                ByteArrayOutputStream tBaos = new ByteArrayOutputStream(header.length + baos.size());
+                tBaos.write(header);
+                baos.writeTo(tBaos);
+                bar = tBaos.toByteArray();
+            } else {
+                bar = baos.toByteArray();
+            }
+
+            FileOutputStream fos = new FileOutputStream(fullFileName, !fileIsNew); //append?
+            try {
+                fos.write(bar, 0, bar.length);  //entire write in 1 low level command
+                if (fsync)
+                    fos.getFD().sync();
+                fos.close(); //explicitly now, not by finalize() at some time in future
+            } catch (Exception e) {
+                try {fos.close();} catch (Exception e2) {}
+                String2.log(String2.ERROR +
+                    " in EDDTableFromHttpGet while writing to " + fullFileName + ":\n" +
+                    MustBe.throwableToString(e));
+                throw e;
+            }
+            return fileIsNew;
+
+        } catch (Throwable t) {
+            if (fileIsNew)
+                File2.delete(fullFileName);
+            String2.log(String2.ERROR + " while " +
+                (fileIsNew? "creating" : "adding to") +
+                " " + fullFileName);
+            throw t;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,482 @@
+/*
+ * HttpGetGroupCommit Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.IntArray;
+import com.cohort.array.PAType;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.array.StringArray;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This coalesces the appends of concurrent EDDTableFromHttpGet .insert and
+ * .delete requests (group commit): appends which arrive within windowMillis
+ * of the first one in a batch are merged per data file, and then each file
+ * is written with one write and its fileTable row is updated once per batch.
+ *
+ * <p>The first request thread to arrive when there is no open batch becomes
+ * the batch's leader: it waits windowMillis, closes the batch, and commits it
+ * (on behalf of all of the requests in the batch). The other request threads
+ * just wait until their batch has been committed.
+ * So submit() doesn't return until the request's data has been written
+ * (and, if fsync, synced to the storage device), just as without group commit.
+ * If the commit fails, all of the requests in the batch get the exception.
+ * Batches are committed one at a time, in order.
+ *
+ * @author agent (agent@local) 2026-10-17
+ */
+public class HttpGetGroupCommit {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** This commits a batch of appends (one per file). */
+    public interface Committer {
+        void commit(ArrayList<HttpGetFileAppend> appends) throws Throwable;
+    }
+
+    /** The appends of the requests in one batch. */
+    private static class Batch {
+        final ArrayList<HttpGetFileAppend> appends = new ArrayList();
+        final CountDownLatch committed = new CountDownLatch(1);
+        int nRequests = 0;
+        volatile Throwable error = null;
+    }
+
+    private final long windowMillis;
+    private final Committer committer;
+    private final ReentrantLock commitLock = new ReentrantLock(true); //fair
+    private Batch openBatch = null; //guarded by this
+
+    //statistics
+    private final AtomicInteger nRequests = new AtomicInteger();
+    private final AtomicInteger nBatches  = new AtomicInteger();
+    private final AtomicInteger nWrites   = new AtomicInteger();
+    private volatile int maxRequestsPerBatch = 0;
+
+    /**
+     * The constructor.
+     *
+     * @param tWindowMillis how long the leader waits for other requests
+     *   before committing the batch (e.g., 20).
+     * @param tCommitter commits each batch
+     */
+    public HttpGetGroupCommit(long tWindowMillis, Committer tCommitter) {
+        windowMillis = Math.max(0, tWindowMillis);
+        committer = tCommitter;
+    }
+
+    /**
+     * This adds the appends of one request to the open batch (or starts a new
+     * batch) and returns when the batch has been committed.
+     *
+     * @param appends the appends for one request (in order)
+     * @throws Throwable if the batch's commit failed, or if timeout or interrupted while waiting
+     */
+    public void submit(ArrayList<HttpGetFileAppend> appends) throws Throwable {
+        nRequests.incrementAndGet();
+        Batch batch;
+        boolean isLeader = false;
+        synchronized (this) {
+            if (openBatch == null) {
+                openBatch = new Batch();
+                isLeader = true;
+            }
+            batch = openBatch;
+            batch.appends.addAll(appends);
+            batch.nRequests++;
+        }
+
+        if (isLeader) {
+            boolean locked = false;
+            try {
+                if (windowMillis > 0)
+                    Math2.sleep(windowMillis);
+                //get commitLock before closing the batch, so batches are committed in order
+                if (!commitLock.tryLock(String2.longTimeoutSeconds, TimeUnit.SECONDS))
+                    throw new TimeoutException("Timeout waiting for commitLock in HttpGetGroupCommit.");
+                locked = true;
+                closeBatch(batch); //no more appends to this batch
+                ArrayList<HttpGetFileAppend> merged = merge(batch.appends);
+                maxRequestsPerBatch = Math.max(maxRequestsPerBatch, batch.nRequests);
+                nBatches.incrementAndGet();
+                nWrites.addAndGet(merged.size());
+                if (verbose) String2.log("HttpGetGroupCommit batch: nRequests=" +
+                    batch.nRequests + " nFiles=" + merged.size());
+                committer.commit(merged);
+            } catch (Throwable t) {
+                batch.error = t;
+            } finally {
+                //even if timeout or interrupted while waiting for commitLock,
+                //close the batch so later submits start a new one, and release the waiters
+                closeBatch(batch);
+                if (locked)
+                    commitLock.unlock();
+                batch.committed.countDown();
+            }
+        } else {
+            if (!batch.committed.await(String2.longTimeoutSeconds, TimeUnit.SECONDS))
+                throw new TimeoutException("Timeout waiting for group commit in EDDTableFromHttpGet.");
+        }
+
+        if (batch.error != null)
+            throw batch.error;
+    }
+
+    /** This closes the batch (if it is still the open batch) so no more appends are added to it. */
+    private synchronized void closeBatch(Batch batch) {
+        if (openBatch == batch)
+            openBatch = null;
+    }
+
+    /**
+     * This merges the appends to the same file (preserving the order of the lines).
+     *
+     * @param appends a list of appends (which are changed!)
+     * @return a list with 1 append per file, in the order the files first appeared
+     * @throws Exception if trouble
+     */
+    public static ArrayList<HttpGetFileAppend> merge(ArrayList<HttpGetFileAppend> appends)
+        throws Exception {
+        LinkedHashMap<String, HttpGetFileAppend> map = new LinkedHashMap();
+        for (HttpGetFileAppend append : appends) {
+            HttpGetFileAppend first = map.get(append.fullFileName);
+            if (first == null)
+                map.put(append.fullFileName, append);
+            else first.merge(append);
+        }
+        return new ArrayList(map.values());
+    }
+
+    /**
+     * This returns a string with statistics (for the log).
+     */
+    public String statistics() {
+        return "nRequests=" + nRequests.get() + " nBatches=" + nBatches.get() +
+            " nWrites=" + nWrites.get() + " maxRequestsPerBatch=" + maxRequestsPerBatch;
+    }
+
+    /** This returns the number of batches committed (or attempted). */
+    public int nBatches() {
+        return nBatches.get();
+    }
+
+
+    /**
+     * This makes an append with one row (stationID, time, value) for a test.
+     */
+    static HttpGetFileAppend testAppend(String fullFileName, String station,
+        int time, double value) throws Exception {
+        String names[] = {"stationID", "time", "value"};
+        PAType types[] = {PAType.STRING, PAType.INT, PAType.DOUBLE};
+        HttpGetFileAppend append = new HttpGetFileAppend(fullFileName, 3);
+        append.addRows(names, types, new PrimitiveArray[3],
+            new PrimitiveArray[]{
+                new StringArray(new String[]{station}),
+                new IntArray(new int[]{time}),
+                PrimitiveArray.factory(PAType.DOUBLE, 1, "" + value)},
+            0, 1);
+        return append;
+    }
+
+    /**
+     * This tests merging, batching, ordering, and error handling.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** HttpGetGroupCommit.basicTest()");
+        String dir = File2.getSystemTempDirectory() + "HttpGetGroupCommit/";
+        if (File2.isDirectory(dir))
+            File2.deleteAllFiles(dir);
+        File2.makeDirectory(dir);
+        byte header[] = HttpGetFileAppend.headerBytes(new String[]{"stationID", "time", "value", "=fixed"});
+        Test.ensureEqual(new String(header, "UTF-8"), "[\"stationID\",\"time\",\"value\"]\n", "");
+
+        //merge: lines in order, statistics combined
+        ArrayList<HttpGetFileAppend> list = new ArrayList();
+        list.add(testAppend(dir + "a.jsonl", "s1", 5, 1.5));
+        list.add(testAppend(dir + "b.jsonl", "s2", 1, 2.5));
+        list.add(testAppend(dir + "a.jsonl", "s0", 9, Double.NaN));
+        ArrayList<HttpGetFileAppend> merged = merge(list);
+        Test.ensureEqual(merged.size(), 2, "");
+        HttpGetFileAppend a = merged.get(0);
+        Test.ensureEqual(a.fullFileName, dir + "a.jsonl", "");
+        Test.ensureEqual(a.nRows, 2, "");
+        Test.ensureEqual(a.columnMinString[0], "s0", "");
+        Test.ensureEqual(a.columnMaxString[0], "s1", "");
+        Test.ensureEqual(a.columnMinDouble[1], 5, "");
+        Test.ensureEqual(a.columnMaxDouble[1], 9, "");
+        Test.ensureEqual(a.columnMinDouble[2], 1.5, "");
+        Test.ensureEqual(a.columnMaxDouble[2], 1.5, "");
+        Test.ensureEqual(a.columnHasNaN[2], true, "");
+        Test.ensureEqual(a.write(header, true), true, ""); //created
+        Test.ensureEqual(a.write(header, false), false, ""); //appended
+        Test.ensureEqual(String2.directReadFromUtf8File(dir + "a.jsonl"),
+            "[\"stationID\",\"time\",\"value\"]\n" +
+            "[\"s1\",5,1.5]\n" +
+            "[\"s0\",9,null]\n" +
+            "[\"s1\",5,1.5]\n" +
+            "[\"s0\",9,null]\n", "");
+
+        //concurrent submits are grouped; each thread's rows stay in its order
+        final HttpGetGroupCommit gc = new HttpGetGroupCommit(20,
+            appends -> {
+                for (HttpGetFileAppend append : appends)
+                    append.write(header, false);
+            });
+        int nThreads = 10, nPerThread = 20;
+        Thread threads[] = new Thread[nThreads];
+        final StringBuffer errors = new StringBuffer();
+        for (int t = 0; t < nThreads; t++) {
+            final int tt = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < nPerThread; i++) {
+                        ArrayList<HttpGetFileAppend> al = new ArrayList();
+                        al.add(testAppend(dir + "f" + (tt % 3) + ".jsonl", "t" + tt, i, i));
+                        gc.submit(al);
+                    }
+                } catch (Throwable th) {
+                    errors.append(MustBe.throwableToString(th));
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < nThreads; t++)
+            threads[t].join();
+        Test.ensureEqual(errors.toString(), "", "");
+        String2.log(gc.statistics());
+        Test.ensureTrue(gc.nBatches() < nThreads * nPerThread, gc.statistics());
+        for (int t = 0; t < nThreads; t++) {
+            String lines[] = String2.split(
+                String2.directReadFromUtf8File(dir + "f" + (t % 3) + ".jsonl"), '\n');
+            int next = 0;
+            for (String line : lines) {
+                if (line.startsWith("[\"t" + t + "\",")) {
+                    Test.ensureEqual(line, "[\"t" + t + "\"," + next + "," + next + "]", "");
+                    next++;
+                }
+            }
+            Test.ensureEqual(next, nPerThread, "t=" + t);
+        }
+
+        //a failed commit is thrown to the submitter
+        HttpGetGroupCommit bad = new HttpGetGroupCommit(0,
+            appends -> {throw new RuntimeException("commit failed");});
+        try {
+            bad.submit(list);
+            throw new RuntimeException("Shouldn't get here.");
+        } catch (Throwable t) {
+            Test.ensureEqual(t.getMessage(), "commit failed", "");
+        }
+
+        //a leader interrupted while waiting for commitLock closes its batch,
+        //so later submits don't hang
+        final CountDownLatch release = new CountDownLatch(1);
+        final HttpGetGroupCommit slow = new HttpGetGroupCommit(0,
+            appends -> {
+                if (appends.get(0).fullFileName.endsWith("slow.jsonl"))
+                    release.await();
+            });
+        final StringBuffer results = new StringBuffer();
+        Thread t1 = new Thread(() -> {
+            try {
+                ArrayList<HttpGetFileAppend> al = new ArrayList();
+                al.add(testAppend(dir + "slow.jsonl", "t1", 0, 0));
+                slow.submit(al);
+                results.append("t1 ok\n");
+            } catch (Throwable th) {
+                results.append("t1 " + th.toString() + "\n");
+            }
+        });
+        t1.start();
+        while (!slow.commitLock.isLocked())  //t1 is committing
+            Math2.sleep(10);
+        Thread t2 = new Thread(() -> {
+            try {
+                ArrayList<HttpGetFileAppend> al = new ArrayList();
+                al.add(testAppend(dir + "t2.jsonl", "t2", 0, 0));
+                slow.submit(al);
+                results.append("t2 ok\n");
+            } catch (Throwable th) {
+                results.append("t2 " + th.toString() + "\n");
+            }
+        });
+        t2.start();
+        while (!slow.commitLock.hasQueuedThread(t2)) //t2 is the leader of the next batch
+            Math2.sleep(10);
+        t2.interrupt();
+        t2.join(5000);
+        Test.ensureEqual(t2.isAlive(), false, "");
+        Test.ensureEqual(results.toString(), "t2 java.lang.InterruptedException\n", "");
+        release.countDown();
+        t1.join(5000);
+        Test.ensureEqual(t1.isAlive(), false, "");
+        ArrayList<HttpGetFileAppend> al = new ArrayList();
+        al.add(testAppend(dir + "t3.jsonl", "t3", 0, 0));
+        Thread t3 = new Thread(() -> {
+            try {
+                slow.submit(al);
+                results.append("t3 ok\n");
+            } catch (Throwable th) {
+                results.append("t3 " + th.toString() + "\n");
+            }
+        });
+        t3.start();
+        t3.join(5000);
+        Test.ensureEqual(t3.isAlive(), false, "");
+        Test.ensureEqual(results.toString(),
+            "t2 java.lang.InterruptedException\n" +
+            "t1 ok\n" +
+            "t3 ok\n", "");
+        File2.deleteAllFiles(dir);
+    }
+
+    /**
+     * This is a throughput benchmark: nThreads inserters each append nPerThread
+     * one-row inserts to one of nFiles files, first one write per insert
+     * (like EDDTableFromHttpGet without group commit), then with group commit.
+     * overheadMillis simulates the per-commit work that EDDTableFromHttpGet does
+     * after the writes (updating the fileTable, minMaxTable, and fileTableIndex),
+     * which is done one commit at a time.
+     *
+     * @param nThreads the number of concurrent inserters (e.g., 100)
+     * @param nPerThread the number of inserts per inserter (e.g., 100)
+     * @param nFiles the number of data files (e.g., 10)
+     * @param windowMillis the group commit window (e.g., 20)
+     * @param fsync if true, each write is fsync'd
+     * @param overheadMillis the simulated per-commit work (e.g., 2)
+     * @return a summary of the results
+     */
+    public static String benchmark(int nThreads, int nPerThread, int nFiles,
+        long windowMillis, boolean fsync, long overheadMillis) throws Throwable {
+        String dir = File2.getSystemTempDirectory() + "HttpGetGroupCommitBenchmark/";
+        byte header[] = HttpGetFileAppend.headerBytes(new String[]{"stationID", "time", "value"});
+        StringBuilder sb = new StringBuilder("HttpGetGroupCommit.benchmark nThreads=" +
+            nThreads + " nPerThread=" + nPerThread + " nFiles=" + nFiles +
+            " windowMillis=" + windowMillis + " fsync=" + fsync + 
+            " overheadMillis=" + overheadMillis + "\n");
+        final ReentrantLock overheadLock = new ReentrantLock();
+        for (int mode = 0; mode < 2; mode++) {
+            if (File2.isDirectory(dir))
+                File2.deleteAllFiles(dir);
+            File2.makeDirectory(dir);
+            final HttpGetGroupCommit gc = mode == 0? null :
+                new HttpGetGroupCommit(windowMillis, appends -> {
+                    for (HttpGetFileAppend append : appends)
+                        append.write(header, fsync);
+                    simulateOverhead(overheadLock, overheadMillis);
+                });
+            final StringBuffer errors = new StringBuffer();
+            Thread threads[] = new Thread[nThreads];
+            long time = System.currentTimeMillis();
+            for (int t = 0; t < nThreads; t++) {
+                final int tt = t;
+                threads[t] = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < nPerThread; i++) {
+                            HttpGetFileAppend append = testAppend(
+                                dir + "f" + (tt % nFiles) + ".jsonl", "t" + tt, i, i);
+                            if (gc == null) {
+                                append.write(header, fsync);
+                                simulateOverhead(overheadLock, overheadMillis);
+                            } else {
+                                ArrayList<HttpGetFileAppend> al = new ArrayList();
+                                al.add(append);
+                                gc.submit(al);
+                            }
+                        }
+                    } catch (Throwable th) {
+                        errors.append(MustBe.throwableToString(th));
+                    }
+                });
+                threads[t].start();
+            }
+            for (int t = 0; t < nThreads; t++)
+                threads[t].join();
+            time = Math.max(1, System.currentTimeMillis() - time);
+            if (errors.length() > 0)
+                throw new RuntimeException(errors.toString());
+            sb.append((gc == null? "  one write per insert: " : "  group commit:         ") +
+                time + " ms, " +
+                Math2.roundToLong(nThreads * (double)nPerThread * 1000 / time) + " inserts/s" +
+                (gc == null? "" : " (" + gc.statistics() + ")") + "\n");
+        }
+        File2.deleteAllFiles(dir);
+        String2.log(sb.toString());
+        return sb.toString();
+    }
+
+    /** This simulates the per-commit work for benchmark(). */
+    private static void simulateOverhead(ReentrantLock lock, long millis) {
+        if (millis <= 0)
+            return;
+        lock.lock();
+        try {
+            Math2.sleep(millis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? 2 : 0;
+        String msg = "\n^^^ HttpGetGroupCommit.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    if (test ==  0) benchmark(100, 50, 10, 20, false, 0);
+                    if (test ==  1) benchmark(100, 20, 10, 20, true,  0);
+                    if (test ==  2) benchmark(100, 20, 10, 20, true,  2);
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,1440 @@
+/*
+ * MappedFileTable Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.ByteArray;
+import com.cohort.array.CharArray;
+import com.cohort.array.DoubleArray;
+import com.cohort.array.FloatArray;
+import com.cohort.array.IntArray;
+import com.cohort.array.LongArray;
+import com.cohort.array.PAType;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.array.ShortArray;
+import com.cohort.array.StringArray;
+import com.cohort.array.UByteArray;
+import com.cohort.array.UIntArray;
+import com.cohort.array.ULongArray;
+import com.cohort.array.UShortArray;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * This is an alternative to dirTable.nc + fileTable.nc for storing the
+ * dirTable and fileTable of an EDDTableFromFiles dataset:
+ * a column-oriented binary snapshot file (read via a memory-mapped buffer)
+ * plus an append-only log of the changes made since the snapshot was written.
+ *
+ * <p>The snapshot (fileTable.[generation].bin) has a header
+ * (versions, standardizeWhat, nDirs, nRows, the sort columns,
+ * and the name, type, and maxIsMV of each column), then the dir names,
+ * then the data for each column (all of the values of one column are contiguous;
+ * numbers are stored as raw big-endian values; Strings are stored as
+ * [int nUtf8Bytes][utf8 bytes]).
+ *
+ * <p>The log (fileTable.[generation].log) is a series of batches,
+ * one per append() (e.g., one per EDDTableFromFiles.lowUpdate()):
+ * [int payloadLength][int nRecords][int crc32 of payload][payload], where the payload is
+ * [int nNewDirs][newDirs][int nUpserts][upserted rows][int nRemoves][(short dirIndex, String fileName) ...].
+ * A batch's upserts are applied before its removes, so append() doesn't log the
+ * removal of a file which the same batch upserts (i.e., which was removed and added again).
+ * So a change to one file costs one small append, not a rewrite of the whole table.
+ * A batch that was only partly written (e.g., because of a crash) is detected
+ * (by its length and crc) and is discarded when the store is opened.
+ *
+ * <p>When the log gets long (see compactMinRecords and compactFraction),
+ * the log is compacted in a background thread: a new snapshot
+ * (with the next generation number) is written, then the
+ * records appended during the compaction are carried over to the new log,
+ * then the new snapshot is renamed into place and the old generation's files are deleted.
+ * On startup, the newest complete generation is used and any others are deleted.
+ *
+ * <p>Each instance of the store has its own dir (mappedFileTable.[instanceNumber]/)
+ * within the dataset's dir, so that the old and new instances of a dataset
+ * (e.g., during a reload, when both exist) never write to the same files.
+ * A new instance starts with a copy of the newest generation from the
+ * newest other instance's dir. When the old instance is closed (see close()),
+ * its dir is deleted. The dirs of instances which are no longer open are
+ * deleted when the next instance is opened.
+ *
+ * <p>read() decodes the snapshot with bulk copies from the mapped buffer
+ * (not value by value; the buffer is unmapped right afterwards, so the file
+ * isn't locked, e.g., on Windows) and replays the log, then caches the resulting
+ * tables behind a SoftReference, so repeated reads (e.g., by requests
+ * when fileTableInMemory=false) don't touch the disk unless the store changed
+ * or memory got tight. append() primes the cache with the caller's updated tables.
+ *
+ * <p>All of the public methods are thread safe.
+ *
+ * @author agent (agent@local) 2026-10-17
+ */
+public class MappedFileTable {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** The log is compacted when it has more than
+     * max(compactMinRecords, compactFraction * nSnapshotRows) records. */
+    public static int compactMinRecords = 1000;
+    public static double compactFraction = 0.1;
+
+    public final static String FILE_PREFIX = "fileTable.";
+    public final static String SNAPSHOT_EXTENSION = ".bin";
+    public final static String LOG_EXTENSION = ".log";
+    public final static String INSTANCE_DIR_PREFIX = "mappedFileTable.";
+    final static long MAGIC = 0x4552444441504654L; //"ERDDAPFT"
+    final static int FORMAT_VERSION = 1;
+    final static int BATCH_HEADER_SIZE = 12; //payloadLength, nRecords, crc
+
+    private static ExecutorService compactor = null; //lazily created by getCompactor()
+
+    //the open stores (in this JVM), by instance dir (sync on openStores).
+    //A store which is never closed (e.g., its dataset's constructor failed)
+    //is forgotten when it is garbage collected.
+    private static final HashMap<String, WeakReference<MappedFileTable>> openStores = new HashMap();
+
+    //things set by the constructor
+    protected final String baseDir;             //the dataset's dir, with trailing slash
+    protected final long instanceNumber;
+    protected final String dir;                 //this instance's dir, with trailing slash
+    protected final int dirFileTableVersion;
+    protected final int standardizeWhat;
+
+    //the state of the store (sync on this)
+    protected long generation = -1;  //-1 if there is no store
+    protected String columnNames[];
+    protected PAType columnTypes[];
+    protected int sortColumns[];     //may be length=0, but not null (if generation >= 0)
+    protected int nSnapshotDirs;
+    protected int nDirs;             //snapshot + log
+    protected int nSnapshotRows;
+    protected long logLength;        //bytes of complete batches in the log
+    protected int nLogRecords;
+    protected boolean compactionPending = false;
+    protected SoftReference<Table[]> cache = null;
+    protected long cacheGeneration = -1, cacheLogLength = -1;
+    protected boolean closed = false;
+    protected volatile boolean deleteOnClose = false;
+
+    /**
+     * This makes a new instance dir in the dataset's dir, copies the newest store
+     * (if there is one) from another instance's dir into it, and opens it.
+     * The dirs of instances which aren't open are then deleted.
+     * If the store has a different format version, dirFileTableVersion,
+     * or standardizeWhat, or it is damaged, all of the store's files are deleted
+     * (so exists() will return false).
+     *
+     * @param tDir the dataset's directory (with a trailing slash)
+     * @param tDirFileTableVersion the current EDD.DIR_FILE_TABLE_VERSION
+     * @param tStandardizeWhat the dataset's standardizeWhat
+     */
+    public MappedFileTable(String tDir, int tDirFileTableVersion, int tStandardizeWhat) {
+        baseDir = File2.addSlash(tDir);
+        dirFileTableVersion = tDirFileTableVersion;
+        standardizeWhat = tStandardizeWhat;
+
+        synchronized (openStores) {
+            long numbers[] = instanceNumbers(baseDir);
+            instanceNumber = numbers.length == 0? 0 : numbers[numbers.length - 1] + 1;
+            dir = instanceDir(baseDir, instanceNumber);
+            File2.makeDirectory(dir);
+            openStores.put(dir, new WeakReference(this));
+
+            //copy the newest store from the newest instance which has one
+            for (int i = numbers.length - 1; i >= 0; i--) {
+                if (copyNewestGeneration(instanceDir(baseDir, numbers[i])))
+                    break;
+            }
+
+            //delete the dirs of instances which aren't open
+            for (int i = 0; i < numbers.length; i++) {
+                String tInstanceDir = instanceDir(baseDir, numbers[i]);
+                if (openStore(tInstanceDir) == null)
+                    deleteInstanceDir(tInstanceDir);
+            }
+        }
+
+        //find the newest generation with a snapshot, delete the others
+        long newest = newestGeneration(dir);
+        deleteAll(dir, newest);
+        if (newest < 0)
+            return;
+        try {
+            readHeader(newest, null);
+            generation = newest;
+            nDirs = nSnapshotDirs;
+            checkLog();  //adds the log's new dirs to nDirs
+            if (verbose) String2.log("MappedFileTable opened " + snapshotName(generation) +
+                " nRows=" + nSnapshotRows + " nLogRecords=" + nLogRecords);
+        } catch (Throwable t) {
+            String2.log("MappedFileTable discarded " + snapshotName(newest) + " because:\n" +
+                MustBe.throwableToString(t));
+            generation = -1;
+            deleteAll(dir, -1);
+        }
+    }
+
+    /**
+     * This copies the newest generation's snapshot and log from another instance's dir
+     * to this instance's dir. The caller must sync on openStores.
+     *
+     * @param sourceDir the other instance's dir
+     * @return true if there was a snapshot and it was copied
+     */
+    protected boolean copyNewestGeneration(String sourceDir) {
+        MappedFileTable source = openStore(sourceDir);
+        if (source != null && source.deleteOnClose)
+            return false;
+        //if the other instance is open, lock it so it can't append or compact while this copies
+        synchronized (source == null? new Object() : source) {
+            long tGeneration = newestGeneration(sourceDir);
+            if (tGeneration < 0)
+                return false;
+            String sourceName = sourceDir + FILE_PREFIX + tGeneration;
+            String tempName = snapshotName(tGeneration) + Math2.random(Integer.MAX_VALUE);
+            try {
+                if (File2.isFile(sourceName + LOG_EXTENSION) &&
+                    !File2.copy(sourceName + LOG_EXTENSION, logName(tGeneration)))
+                    throw new IOException("Unable to copy " + sourceName + LOG_EXTENSION);
+                if (!File2.copy(sourceName + SNAPSHOT_EXTENSION, tempName))
+                    throw new IOException("Unable to copy " + sourceName + SNAPSHOT_EXTENSION);
+                File2.rename(tempName, snapshotName(tGeneration));
+                if (verbose) String2.log("MappedFileTable copied " + sourceName +
+                    SNAPSHOT_EXTENSION + " to " + dir);
+                return true;
+            } catch (Throwable t) {
+                String2.log(String2.ERROR + " in MappedFileTable while copying " +
+                    sourceName + SNAPSHOT_EXTENSION + ":\n" + MustBe.throwableToString(t));
+                deleteAll(dir, -1);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * This is called when the dataset instance which uses this store is replaced
+     * (e.g., by a reload) or removed.
+     * Afterwards, writeSnapshot() and append() just update the cached tables
+     * (so requests which are still using the old dataset instance see consistent tables)
+     * and compact() does nothing.
+     * If a newer instance of the store has been opened in the dataset's dir
+     * (or deleteAll() was called), this instance's dir is deleted;
+     * otherwise (e.g., ERDDAP is shutting down) it is kept, so the next instance can start from it.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+        }
+        synchronized (openStores) {
+            openStores.remove(dir);
+            long numbers[] = instanceNumbers(baseDir);
+            if (deleteOnClose ||
+                (numbers.length > 0 && numbers[numbers.length - 1] > instanceNumber))
+                deleteInstanceDir(dir);
+        }
+        if (verbose) String2.log("MappedFileTable closed " + dir);
+    }
+
+    /** This returns true if there is a store (i.e., a snapshot) in dir. */
+    public synchronized boolean exists() {
+        return generation >= 0;
+    }
+
+    /**
+     * This returns the lastModified time (epoch millis) of the store's log
+     * (or of the snapshot if there is no log), or 0 if there is no store.
+     */
+    public synchronized long lastModified() {
+        if (generation < 0)
+            return 0;
+        long logMod = File2.getLastModified(logName(generation));
+        return logMod > 0? logMod : File2.getLastModified(snapshotName(generation));
+    }
+
+    /**
+     * This returns true if the store exists and its columns have the same names
+     * (in the same order) and types as tFileTable's.
+     * append() requires that.
+     *
+     * @param tFileTable a fileTable
+     */
+    public synchronized boolean hasSameColumns(Table tFileTable) {
+        if (generation < 0 || tFileTable.nColumns() != columnNames.length)
+            return false;
+        for (int col = 0; col < columnNames.length; col++) {
+            if (!tFileTable.getColumnName(col).equals(columnNames[col]) ||
+                tFileTable.getColumn(col).elementType() != columnTypes[col])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * This gets the dirTable and fileTable for read-only use.
+     * They are shared with other callers, so don't change them.
+     *
+     * @return [0]=dirTable (one StringArray column: dirName), [1]=fileTable,
+     *    or null if there is no store
+     * @throws IOException if trouble
+     */
+    public synchronized Table[] read() throws IOException {
+        if (generation < 0)
+            return null;
+        Table tables[] = getCache();
+        if (tables == null) {
+            tables = decode();
+            setCache(tables, generation, logLength);
+        }
+        return tables;
+    }
+
+    /**
+     * This gets the dirTable or the fileTable for read-only use.
+     * It is shared with other callers, so don't change it.
+     *
+     * @param which 0=dirTable, 1=fileTable
+     * @return the table, or null if there is no store
+     * @throws IOException if trouble
+     */
+    public synchronized Table read(int which) throws IOException {
+        Table tables[] = read();
+        return tables == null? null : tables[which];
+    }
+
+    /**
+     * This gets a copy of the dirTable and fileTable for read/write use.
+     * If they aren't cached, they are decoded but not cached
+     * (e.g., so a dataset's constructor doesn't briefly hold 2 copies).
+     *
+     * @return [0]=dirTable, [1]=fileTable, or null if there is no store
+     * @throws IOException if trouble
+     */
+    public synchronized Table[] readCopy() throws IOException {
+        if (generation < 0)
+            return null;
+        Table tables[] = getCache();
+        return tables == null? decode() :
+            new Table[]{(Table)tables[0].clone(), (Table)tables[1].clone()};
+    }
+
+    /**
+     * This gets a copy of the dirTable or the fileTable for read/write use.
+     *
+     * @param which 0=dirTable, 1=fileTable
+     * @return the table, or null if there is no store
+     * @throws IOException if trouble
+     */
+    public synchronized Table readCopy(int which) throws IOException {
+        Table tables[] = read();
+        return tables == null? null : (Table)tables[which].clone();
+    }
+
+    /**
+     * This decodes the snapshot and replays the log.
+     *
+     * @return [0]=dirTable, [1]=fileTable
+     * @throws IOException if trouble
+     */
+    protected Table[] decode() throws IOException {
+        long time = System.currentTimeMillis();
+        Table tFileTable = new Table();
+        StringArray dirList = readHeader(generation, tFileTable);  //also reads the data
+        int nBatches = replayLog(dirList, tFileTable);
+        Table tDirTable = new Table();
+        tDirTable.addColumn("dirName", dirList);
+        if (verbose) String2.log("MappedFileTable.decode " + snapshotName(generation) +
+            " nRows=" + tFileTable.nRows() + " nLogBatches=" + nBatches +
+            " time=" + (System.currentTimeMillis() - time) + "ms");
+        return new Table[]{tDirTable, tFileTable};
+    }
+
+    /**
+     * This replaces the store (if any) with a new snapshot of these tables and an empty log.
+     * Afterwards, the caller must treat the tables as read-only
+     * (they become the cached tables which read() returns).
+     *
+     * @param tDirTable the dirTable (one StringArray column: dirName)
+     * @param tFileTable the fileTable
+     * @param tSortColumns the columns which tFileTable is sorted by (ascending),
+     *    which are used to sort the table after the log is replayed (may be null)
+     * @throws IOException if trouble
+     */
+    public synchronized void writeSnapshot(Table tDirTable, Table tFileTable,
+        int tSortColumns[]) throws IOException {
+
+        if (closed) {
+            setCache(new Table[]{tDirTable, tFileTable}, generation, logLength);
+            return;
+        }
+        long time = System.currentTimeMillis();
+        long newGeneration = Math.max(generation, newestGeneration(dir)) + 1;
+        writeSnapshotFile(newGeneration, tDirTable, tFileTable,
+            tSortColumns == null? new int[0] : tSortColumns, new byte[0]);
+        long oldGeneration = generation;
+        readHeader(newGeneration, null);
+        generation = newGeneration;
+        nDirs = nSnapshotDirs;
+        logLength = 0;
+        nLogRecords = 0;
+        if (oldGeneration >= 0)
+            deleteGeneration(oldGeneration);
+        setCache(new Table[]{tDirTable, tFileTable}, generation, logLength);
+        if (verbose) String2.log("MappedFileTable.writeSnapshot " + snapshotName(generation) +
+            " nRows=" + tFileTable.nRows() +
+            " time=" + (System.currentTimeMillis() - time) + "ms");
+    }
+
+    /**
+     * This appends one batch of changes to the log.
+     * Afterwards, the caller must treat the tables as read-only
+     * (they become the cached tables which read() returns).
+     * This may start a background compaction of the log.
+     *
+     * @param tDirTable the updated dirTable. Dirs beyond the store's nDirs are new dirs.
+     * @param tFileTable the updated fileTable, with the same columns as the store
+     *    (see hasSameColumns()), sorted the same way.
+     * @param upsertRows the rows of tFileTable which were added or changed
+     * @param removeDirIndex the dirIndex of each file which was removed.
+     *    A file which was removed and then added again (e.g., a bad file which 
+     *    became valid) is in tFileTable and upsertRows, so its removal is ignored.
+     * @param removeFileName the fileName of each file which was removed
+     * @throws IOException if trouble (e.g., there is no store)
+     */
+    public synchronized void append(Table tDirTable, Table tFileTable, IntArray upsertRows,
+        ShortArray removeDirIndex, StringArray removeFileName) throws IOException {
+
+        if (closed) {
+            setCache(new Table[]{tDirTable, tFileTable}, generation, logLength);
+            return;
+        }
+        if (generation < 0)
+            throw new IOException("MappedFileTable.append: there is no store in " + dir);
+        if (!hasSameColumns(tFileTable))
+            throw new IOException("MappedFileTable.append: the fileTable's columns don't match the store's.");
+        StringArray dirList = (StringArray)tDirTable.getColumn(0);
+        int nNewDirs = dirList.size() - nDirs;
+        if (nNewDirs < 0)
+            throw new IOException("MappedFileTable.append: the dirTable has fewer dirs than the store.");
+        int nUpserts = upsertRows.size();
+
+        //replayLog applies a batch's upserts before its removes,
+        //so don't log the removal of a file which was then added again
+        ShortArray ftDirIndex = (ShortArray)tFileTable.getColumn(EDDTableFromFiles.FT_DIR_INDEX_COL);
+        StringArray ftFileList = (StringArray)tFileTable.getColumn(EDDTableFromFiles.FT_FILE_LIST_COL);
+        HashSet<String> upsertKeys = new HashSet();
+        for (int i = 0; i < nUpserts; i++) {
+            int row = upsertRows.get(i);
+            upsertKeys.add(ftDirIndex.get(row) + "/" + ftFileList.get(row));
+        }
+        IntArray removes = new IntArray();
+        for (int i = 0; i < removeDirIndex.size(); i++) {
+            if (!upsertKeys.contains(removeDirIndex.get(i) + "/" + removeFileName.get(i)))
+                removes.add(i);
+        }
+        int nRemoves = removes.size();
+        int nRecords = nNewDirs + nUpserts + nRemoves;
+
+        //make the batch
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeInt(0); //placeholders for the batch header
+        dos.writeInt(0);
+        dos.writeInt(0);
+        dos.writeInt(nNewDirs);
+        for (int i = 0; i < nNewDirs; i++)
+            writeString(dos, dirList.get(nDirs + i));
+        dos.writeInt(nUpserts);
+        int nCols = columnNames.length;
+        for (int i = 0; i < nUpserts; i++) {
+            int row = upsertRows.get(i);
+            for (int col = 0; col < nCols; col++)
+                writeValue(dos, tFileTable.getColumn(col), row);
+        }
+        dos.writeInt(nRemoves);
+        for (int i = 0; i < nRemoves; i++) {
+            dos.writeShort(removeDirIndex.get(removes.get(i)));
+            writeString(dos, removeFileName.get(removes.get(i)));
+        }
+        dos.flush();
+        ByteBuffer batch = ByteBuffer.wrap(baos.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(batch.array(), BATCH_HEADER_SIZE, batch.limit() - BATCH_HEADER_SIZE);
+        batch.putInt(0, batch.limit() - BATCH_HEADER_SIZE);
+        batch.putInt(4, nRecords);
+        batch.putInt(8, (int)crc.getValue());
+
+        //append it (at logLength, in case a previous append was only partly written)
+        try (RandomAccessFile raf = new RandomAccessFile(logName(generation), "rw")) {
+            FileChannel channel = raf.getChannel();
+            long po = logLength;
+            while (batch.hasRemaining())
+                po += channel.write(batch, po);
+            channel.truncate(po);
+            logLength = po;
+        }
+        nDirs += nNewDirs;
+        nLogRecords += nRecords;
+        setCache(new Table[]{tDirTable, tFileTable}, generation, logLength);
+        if (verbose) String2.log("MappedFileTable.append nNewDirs=" + nNewDirs +
+            " nUpserts=" + nUpserts + " nRemoves=" + nRemoves + " logLength=" + logLength);
+
+        //compact the log in the background?
+        if (!compactionPending &&
+            nLogRecords > Math.max(compactMinRecords, compactFraction * nSnapshotRows)) {
+            compactionPending = true;
+            getCompactor().submit(() -> {
+                try {
+                    compact();
+                } catch (Throwable t) {
+                    String2.log(String2.ERROR + " in MappedFileTable.compact for " + dir + ":\n" +
+                        MustBe.throwableToString(t));
+                } finally {
+                    synchronized (this) {
+                        compactionPending = false;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * This writes a new snapshot with all of the changes in the log,
+     * then carries over any records that were appended while it was writing,
+     * then deletes the old snapshot and log.
+     * Normally, this is called in a background thread by append(),
+     * but it can be called directly. After close(), this does nothing.
+     *
+     * @throws IOException if trouble
+     */
+    public void compact() throws IOException {
+        long time = System.currentTimeMillis();
+        Table tables[];
+        long oldGeneration, oldLogLength;
+        int oldNLogRecords;
+        int tSortColumns[];
+        synchronized (this) {
+            if (closed || generation < 0 || nLogRecords == 0)
+                return;
+            tables = read();
+            oldGeneration = generation;
+            oldLogLength = logLength;
+            oldNLogRecords = nLogRecords;
+            tSortColumns = sortColumns;
+        }
+
+        //the slow part: write the new snapshot (to a temp file) without holding the lock
+        long newGeneration = oldGeneration + 1;
+        String tempName = writeSnapshotFile(newGeneration, tables[0], tables[1], tSortColumns, null);
+
+        synchronized (this) {
+            if (closed || generation != oldGeneration) {
+                //close() or writeSnapshot() was called while this was writing
+                File2.delete(tempName);
+                return;
+            }
+
+            //carry over the batches that were appended while this was writing
+            byte tail[] = new byte[(int)(logLength - oldLogLength)];
+            if (tail.length > 0) {
+                try (RandomAccessFile raf = new RandomAccessFile(logName(oldGeneration), "r")) {
+                    raf.seek(oldLogLength);
+                    raf.readFully(tail);
+                }
+            }
+            try (FileOutputStream fos = new FileOutputStream(logName(newGeneration))) {
+                fos.write(tail);
+            }
+            File2.rename(tempName, snapshotName(newGeneration)); //the commit point
+            readHeader(newGeneration, null);
+            generation = newGeneration;
+            logLength = tail.length;
+            nLogRecords -= oldNLogRecords;
+            if (cacheGeneration == oldGeneration && cacheLogLength >= oldLogLength) {
+                cacheGeneration = newGeneration;
+                cacheLogLength -= oldLogLength;
+            }
+            deleteGeneration(oldGeneration);
+        }
+        if (verbose) String2.log("MappedFileTable.compact made " + snapshotName(newGeneration) +
+            " nRows=" + tables[1].nRows() + " time=" + (System.currentTimeMillis() - time) + "ms");
+    }
+
+    /**
+     * This deletes all of the stores' files in a dataset's dir
+     * (e.g., because the dataset is switching back to dirTable.nc + fileTable.nc).
+     * The dirs of stores which are still open are deleted when they are closed,
+     * and they aren't copied by new instances.
+     *
+     * @param tDir the dataset's directory (with a trailing slash)
+     */
+    public static void deleteAll(String tDir) {
+        tDir = File2.addSlash(tDir);
+        synchronized (openStores) {
+            long numbers[] = instanceNumbers(tDir);
+            for (int i = 0; i < numbers.length; i++) {
+                String tInstanceDir = instanceDir(tDir, numbers[i]);
+                MappedFileTable store = openStore(tInstanceDir);
+                if (store == null)
+                    deleteInstanceDir(tInstanceDir);
+                else store.deleteOnClose = true;
+            }
+        }
+    }
+
+    /** This returns the dir of an instance of the store in a dataset's dir. */
+    protected static String instanceDir(String tBaseDir, long tInstanceNumber) {
+        return tBaseDir + INSTANCE_DIR_PREFIX + tInstanceNumber + "/";
+    }
+
+    /**
+     * This returns the instance numbers of the instance dirs in a dataset's dir
+     * (sorted, ascending).
+     */
+    protected static long[] instanceNumbers(String tBaseDir) {
+        String names[] = new File(tBaseDir).list();
+        if (names == null)
+            return new long[0];
+        LongArray numbers = new LongArray();
+        for (String name : names) {
+            if (!name.startsWith(INSTANCE_DIR_PREFIX) ||
+                !File2.isDirectory(tBaseDir + name))
+                continue;
+            String s = name.substring(INSTANCE_DIR_PREFIX.length());
+            if (s.length() > 0 && s.length() <= 18 && s.matches("[0-9]+"))
+                numbers.add(Long.parseLong(s));
+        }
+        numbers.sort();
+        return numbers.toArray();
+    }
+
+    /**
+     * This returns the open store which uses an instance dir, or null if none.
+     * The caller must sync on openStores.
+     */
+    protected static MappedFileTable openStore(String tInstanceDir) {
+        //forget the stores which were garbage collected without being closed
+        Iterator<WeakReference<MappedFileTable>> it = openStores.values().iterator();
+        while (it.hasNext())
+            if (it.next().get() == null)
+                it.remove();
+        WeakReference<MappedFileTable> ref = openStores.get(tInstanceDir);
+        return ref == null? null : ref.get();
+    }
+
+    /** This deletes an instance dir and its files. */
+    protected static void deleteInstanceDir(String tInstanceDir) {
+        File2.deleteAllFiles(tInstanceDir);
+        new File(tInstanceDir).delete();
+    }
+
+    /**
+     * This releases a MappedByteBuffer's mapping now, instead of whenever the
+     * buffer is garbage collected (until then, e.g., Windows won't let the file
+     * be deleted or renamed). The buffer mustn't be used afterwards.
+     * If the JVM doesn't allow this, the mapping is released by the garbage collector.
+     *
+     * @param buffer a mapped buffer
+     */
+    protected static void unmap(MappedByteBuffer buffer) {
+        try {
+            //Java 9+
+            Class unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (Throwable t) {
+        }
+        try {
+            //Java 8
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null)
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+        } catch (Throwable t) {
+            if (verbose) String2.log("MappedFileTable.unmap failed: " + t.toString());
+        }
+    }
+
+    /** This returns the name of a generation's snapshot file. */
+    protected String snapshotName(long tGeneration) {
+        return dir + FILE_PREFIX + tGeneration + SNAPSHOT_EXTENSION;
+    }
+
+    /** This returns the name of a generation's log file. */
+    protected String logName(long tGeneration) {
+        return dir + FILE_PREFIX + tGeneration + LOG_EXTENSION;
+    }
+
+    /** This deletes one generation's files. */
+    protected void deleteGeneration(long tGeneration) {
+        File2.delete(snapshotName(tGeneration));
+        File2.delete(logName(tGeneration));
+    }
+
+    /** This returns the cached tables if they are for the current state of the store, else null. */
+    protected Table[] getCache() {
+        Table tables[] = cache == null? null : cache.get();
+        return tables != null && cacheGeneration == generation && cacheLogLength == logLength?
+            tables : null;
+    }
+
+    /** This sets the cached tables. */
+    protected void setCache(Table tables[], long tGeneration, long tLogLength) {
+        cache = new SoftReference(tables);
+        cacheGeneration = tGeneration;
+        cacheLogLength = tLogLength;
+    }
+
+    /**
+     * This returns the generation number of the newest snapshot in tDir, or -1 if none.
+     */
+    protected static long newestGeneration(String tDir) {
+        String names[] = new File(tDir).list();
+        long newest = -1;
+        if (names == null)
+            return newest;
+        for (String name : names) {
+            long gen = generationOf(name, SNAPSHOT_EXTENSION);
+            if (gen > newest)
+                newest = gen;
+        }
+        return newest;
+    }
+
+    /**
+     * This returns the generation number in a file name like fileTable.12.bin,
+     * or -1 if the name doesn't match.
+     */
+    protected static long generationOf(String name, String extension) {
+        if (!name.startsWith(FILE_PREFIX) || !name.endsWith(extension))
+            return -1;
+        String s = name.substring(FILE_PREFIX.length(), name.length() - extension.length());
+        if (s.length() == 0 || s.length() > 18)
+            return -1;
+        for (int i = 0; i < s.length(); i++)
+            if (s.charAt(i) < '0' || s.charAt(i) > '9')
+                return -1;
+        return Long.parseLong(s);
+    }
+
+    /**
+     * This deletes the store's files in tDir (including temp files from
+     * snapshots which weren't finished), except for keepGeneration's files.
+     */
+    protected static void deleteAll(String tDir, long keepGeneration) {
+        String names[] = new File(tDir).list();
+        if (names == null)
+            return;
+        for (String name : names) {
+            if (!name.startsWith(FILE_PREFIX))
+                continue;
+            long gen = generationOf(name, SNAPSHOT_EXTENSION);
+            if (gen < 0)
+                gen = generationOf(name, LOG_EXTENSION);
+            if (gen < 0 && name.indexOf(SNAPSHOT_EXTENSION) > 0)
+                gen = -2; //a temp file, e.g., fileTable.12.bin12345
+            if (gen == -1 || gen == keepGeneration)
+                continue;
+            File2.delete(tDir + name);
+        }
+    }
+
+    /**
+     * This writes a snapshot file for a generation.
+     *
+     * @param tGeneration the new generation number
+     * @param tLog if not null, the log for the new generation is created with these bytes
+     *   and the snapshot file is renamed into place.
+     *   If null, the snapshot is left in a temp file.
+     * @return the name of the snapshot file (final or temp)
+     * @throws IOException if trouble
+     */
+    protected String writeSnapshotFile(long tGeneration, Table tDirTable, Table tFileTable,
+        int tSortColumns[], byte tLog[]) throws IOException {
+
+        String fullName = snapshotName(tGeneration);
+        String tempName = fullName + Math2.random(Integer.MAX_VALUE);
+        StringArray dirList = (StringArray)tDirTable.getColumn(0);
+        int nCols = tFileTable.nColumns();
+        int nRows = tFileTable.nRows();
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tempName), 65536))) {
+            dos.writeLong(MAGIC);
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeInt(dirFileTableVersion);
+            dos.writeInt(standardizeWhat);
+            dos.writeInt(dirList.size());
+            dos.writeInt(nCols);
+            dos.writeInt(nRows);
+            dos.writeInt(tSortColumns.length);
+            for (int i = 0; i < tSortColumns.length; i++)
+                dos.writeInt(tSortColumns[i]);
+            for (int col = 0; col < nCols; col++) {
+                PrimitiveArray pa = tFileTable.getColumn(col);
+                writeString(dos, tFileTable.getColumnName(col));
+                writeString(dos, pa.elementTypeString());
+                dos.writeBoolean(pa.getMaxIsMV());
+            }
+            for (int i = 0; i < dirList.size(); i++)
+                writeString(dos, dirList.get(i));
+            for (int col = 0; col < nCols; col++)
+                writeColumn(dos, tFileTable.getColumn(col));
+        } catch (IOException e) {
+            File2.delete(tempName);
+            throw e;
+        }
+        if (tLog == null)
+            return tempName;
+
+        try (FileOutputStream fos = new FileOutputStream(logName(tGeneration))) {
+            fos.write(tLog);
+        }
+        File2.rename(tempName, fullName);
+        return fullName;
+    }
+
+    /**
+     * This reads a snapshot's header and sets the store's column info from it.
+     *
+     * @param tGeneration the generation to be read
+     * @param tFileTable if not null, the snapshot's data is read into this
+     *   (which should be empty)
+     * @return the snapshot's dirs if tFileTable isn't null, else null
+     * @throws IOException if trouble (e.g., wrong version)
+     */
+    protected StringArray readHeader(long tGeneration, Table tFileTable) throws IOException {
+        String fullName = snapshotName(tGeneration);
+        MappedByteBuffer buffer = null;
+        try (RandomAccessFile raf = new RandomAccessFile(fullName, "r")) {
+            FileChannel channel = raf.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Test.ensureEqual(buffer.getLong(), MAGIC, "Not a MappedFileTable snapshot: " + fullName);
+            Test.ensureEqual(buffer.getInt(), FORMAT_VERSION, "old/unsupported MappedFileTable format");
+            Test.ensureEqual(buffer.getInt(), dirFileTableVersion,
+                "old/unsupported " + EDD._dirFileTableVersion_);
+            Test.ensureEqual(buffer.getInt(), standardizeWhat,
+                "Different value for 'standardizeWhat'.");
+            int tNDirs = buffer.getInt();
+            int nCols  = buffer.getInt();
+            int nRows  = buffer.getInt();
+            int tSortColumns[] = new int[buffer.getInt()];
+            for (int i = 0; i < tSortColumns.length; i++)
+                tSortColumns[i] = buffer.getInt();
+            String tNames[] = new String[nCols];
+            PAType tTypes[] = new PAType[nCols];
+            boolean tMaxIsMV[] = new boolean[nCols];
+            for (int col = 0; col < nCols; col++) {
+                tNames[col]   = readString(buffer);
+                tTypes[col]   = PAType.fromCohortString(readString(buffer));
+                tMaxIsMV[col] = buffer.get() != 0;
+            }
+
+            StringArray dirs = null;
+            if (tFileTable != null) {
+                dirs = new StringArray(tNDirs, false);
+                for (int i = 0; i < tNDirs; i++)
+                    dirs.add(readString(buffer));
+                for (int col = 0; col < nCols; col++)
+                    tFileTable.addColumn(tNames[col],
+                        readColumn(buffer, tTypes[col], nRows).setMaxIsMV(tMaxIsMV[col]));
+            }
+
+            columnNames   = tNames;
+            columnTypes   = tTypes;
+            sortColumns   = tSortColumns;
+            nSnapshotRows = nRows;
+            nSnapshotDirs = tNDirs;
+            return dirs;
+        } finally {
+            //everything was copied out of the buffer, so release the mapping now
+            if (buffer != null)
+                unmap(buffer);
+        }
+    }
+
+    /**
+     * This finds the length of the complete batches in the log
+     * (and truncates a partly written batch at the end),
+     * and counts the log's records and new dirs.
+     */
+    protected void checkLog() throws IOException {
+        logLength = 0;
+        nLogRecords = 0;
+        String fullName = logName(generation);
+        if (!File2.isFile(fullName))
+            return;
+        try (RandomAccessFile raf = new RandomAccessFile(fullName, "rw")) {
+            byte bar[] = new byte[(int)raf.length()];
+            raf.readFully(bar);
+            ByteBuffer buffer = ByteBuffer.wrap(bar);
+            while (true) {
+                int start = buffer.position();
+                ByteBuffer batch = nextBatch(buffer);
+                if (batch == null)
+                    break;
+                nLogRecords += buffer.getInt(start + 4);
+                nDirs += batch.getInt(0);
+                logLength = buffer.position();
+            }
+            if (logLength < bar.length) {
+                String2.log("MappedFileTable discarded the incomplete last batch in " + fullName);
+                raf.setLength(logLength);
+            }
+        }
+    }
+
+    /**
+     * This gets the next complete batch's payload from the log and advances
+     * the buffer's position to the end of the batch.
+     *
+     * @return the payload (or null if there are no more complete batches)
+     */
+    protected static ByteBuffer nextBatch(ByteBuffer buffer) {
+        if (buffer.remaining() < BATCH_HEADER_SIZE)
+            return null;
+        int start = buffer.position();
+        int payloadLength = buffer.getInt(start);
+        int crcValue = buffer.getInt(start + 8);
+        if (payloadLength < 0 || payloadLength > buffer.remaining() - BATCH_HEADER_SIZE)
+            return null;
+        byte payload[] = new byte[payloadLength];
+        buffer.position(start + BATCH_HEADER_SIZE);
+        buffer.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int)crc.getValue() != crcValue) {
+            buffer.position(start);
+            return null;
+        }
+        return ByteBuffer.wrap(payload);
+    }
+
+    /**
+     * This applies the log's changes to a fileTable which was just read from the snapshot.
+     * If there were any changes, the table is then sorted by the sortColumns.
+     *
+     * @param dirList the snapshot's dirs, to which the log's new dirs are added
+     * @param tFileTable the fileTable from the snapshot
+     * @return the number of batches
+     */
+    protected int replayLog(StringArray dirList, Table tFileTable) throws IOException {
+        if (logLength == 0)
+            return 0;
+        byte bar[] = new byte[(int)logLength];
+        try (RandomAccessFile raf = new RandomAccessFile(logName(generation), "r")) {
+            raf.readFully(bar);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bar);
+
+        int nCols = tFileTable.nColumns();
+        ShortArray ftDirIndex = (ShortArray)tFileTable.getColumn(EDDTableFromFiles.FT_DIR_INDEX_COL);
+        StringArray ftFileList = (StringArray)tFileTable.getColumn(EDDTableFromFiles.FT_FILE_LIST_COL);
+        HashMap<String,Integer> rowOf = new HashMap(Math.max(16, tFileTable.nRows() * 4 / 3));
+        for (int row = 0; row < ftFileList.size(); row++)
+            rowOf.put(ftDirIndex.get(row) + "/" + ftFileList.get(row), row);
+        BitSet removed = new BitSet();
+        int nBatches = 0;
+        ByteBuffer batch;
+        while ((batch = nextBatch(buffer)) != null) {
+            nBatches++;
+            int n = batch.getInt();
+            for (int i = 0; i < n; i++)
+                dirList.add(readString(batch));
+
+            //decode the upserted rows into a column-oriented staging table
+            n = batch.getInt();
+            Table staging = new Table();
+            for (int col = 0; col < nCols; col++)
+                staging.addColumn(columnNames[col],
+                    PrimitiveArray.factory(columnTypes[col], n, false));
+            for (int i = 0; i < n; i++)
+                for (int col = 0; col < nCols; col++)
+                    readValue(batch, staging.getColumn(col));
+            ShortArray stDirIndex = (ShortArray)staging.getColumn(EDDTableFromFiles.FT_DIR_INDEX_COL);
+            StringArray stFileList = (StringArray)staging.getColumn(EDDTableFromFiles.FT_FILE_LIST_COL);
+            for (int i = 0; i < n; i++) {
+                String key = stDirIndex.get(i) + "/" + stFileList.get(i);
+                Integer row = rowOf.get(key);
+                if (row == null) {
+                    rowOf.put(key, ftFileList.size());
+                    for (int col = 0; col < nCols; col++)
+                        tFileTable.getColumn(col).addFromPA(staging.getColumn(col), i);
+                } else {
+                    for (int col = 0; col < nCols; col++)
+                        tFileTable.getColumn(col).setFromPA(row, staging.getColumn(col), i);
+                }
+            }
+
+            n = batch.getInt();
+            for (int i = 0; i < n; i++) {
+                short dirIndex = batch.getShort();
+                Integer row = rowOf.remove(dirIndex + "/" + readString(batch));
+                if (row != null)
+                    removed.set(row);
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            BitSet keep = new BitSet();
+            keep.set(0, tFileTable.nRows());
+            keep.andNot(removed);
+            tFileTable.justKeep(keep);
+        }
+        if (nBatches > 0 && sortColumns.length > 0) {
+            boolean ascending[] = new boolean[sortColumns.length];
+            Arrays.fill(ascending, true);
+            tFileTable.sort(sortColumns, ascending);
+        }
+        return nBatches;
+    }
+
+    /** This writes all of the values of a column. */
+    protected static void writeColumn(DataOutputStream dos, PrimitiveArray pa) throws IOException {
+        int n = pa.size();
+        if (pa instanceof StringArray) {
+            StringArray sa = (StringArray)pa;
+            for (int i = 0; i < n; i++)
+                writeString(dos, sa.get(i));
+            return;
+        }
+        int elementSize = pa.elementSize();
+        ByteBuffer bb = ByteBuffer.allocate(n * elementSize);
+        switch (pa.elementType()) {
+            case BYTE:   bb.put(((ByteArray)pa).array, 0, n); break;
+            case UBYTE:  bb.put(((UByteArray)pa).array, 0, n); break;
+            case SHORT:  bb.asShortBuffer().put(((ShortArray)pa).array, 0, n); break;
+            case USHORT: bb.asShortBuffer().put(((UShortArray)pa).array, 0, n); break;
+            case CHAR:   bb.asCharBuffer().put(((CharArray)pa).array, 0, n); break;
+            case INT:    bb.asIntBuffer().put(((IntArray)pa).array, 0, n); break;
+            case UINT:   bb.asIntBuffer().put(((UIntArray)pa).array, 0, n); break;
+            case LONG:   bb.asLongBuffer().put(((LongArray)pa).array, 0, n); break;
+            case ULONG:  bb.asLongBuffer().put(((ULongArray)pa).array, 0, n); break;
+            case FLOAT:  bb.asFloatBuffer().put(((FloatArray)pa).array, 0, n); break;
+            case DOUBLE: bb.asDoubleBuffer().put(((DoubleArray)pa).array, 0, n); break;
+            default: throw new IOException("MappedFileTable: unsupported type: " + pa.elementTypeString());
+        }
+        dos.write(bb.array());
+    }
+
+    /**
+     * This reads all of the values of a column with bulk copies
+     * and advances the buffer's position.
+     */
+    protected static PrimitiveArray readColumn(ByteBuffer buffer, PAType type, int n)
+        throws IOException {
+
+        if (type == PAType.STRING) {
+            StringArray sa = new StringArray(n, false);
+            for (int i = 0; i < n; i++)
+                sa.add(readString(buffer));
+            return sa;
+        }
+        int start = buffer.position();
+        PrimitiveArray pa;
+        switch (type) {
+            case BYTE:   {byte   a[] = new byte[n];   buffer.get(a); return new ByteArray(a);}
+            case UBYTE:  {byte   a[] = new byte[n];   buffer.get(a); return new UByteArray(a);}
+            case SHORT:  {short  a[] = new short[n];  buffer.asShortBuffer().get(a);  pa = new ShortArray(a);  break;}
+            case USHORT: {short  a[] = new short[n];  buffer.asShortBuffer().get(a);  pa = new UShortArray(a); break;}
+            case CHAR:   {char   a[] = new char[n];   buffer.asCharBuffer().get(a);   pa = new CharArray(a);   break;}
+            case INT:    {int    a[] = new int[n];    buffer.asIntBuffer().get(a);    pa = new IntArray(a);    break;}
+            case UINT:   {int    a[] = new int[n];    buffer.asIntBuffer().get(a);    pa = new UIntArray(a);   break;}
+            case LONG:   {long   a[] = new long[n];   buffer.asLongBuffer().get(a);   pa = new LongArray(a);   break;}
+            case ULONG:  {long   a[] = new long[n];   buffer.asLongBuffer().get(a);   pa = new ULongArray(a);  break;}
+            case FLOAT:  {float  a[] = new float[n];  buffer.asFloatBuffer().get(a);  pa = new FloatArray(a);  break;}
+            case DOUBLE: {double a[] = new double[n]; buffer.asDoubleBuffer().get(a); pa = new DoubleArray(a); break;}
+            default: throw new IOException("MappedFileTable: unsupported type: " + type);
+        }
+        buffer.position(start + n * pa.elementSize());
+        return pa;
+    }
+
+    /** This writes one value of a column. */
+    protected static void writeValue(DataOutputStream dos, PrimitiveArray pa, int row)
+        throws IOException {
+
+        switch (pa.elementType()) {
+            case BYTE:   dos.writeByte(  ((ByteArray)  pa).array[row]); break;
+            case UBYTE:  dos.writeByte(  ((UByteArray) pa).array[row]); break;
+            case SHORT:  dos.writeShort( ((ShortArray) pa).array[row]); break;
+            case USHORT: dos.writeShort( ((UShortArray)pa).array[row]); break;
+            case CHAR:   dos.writeChar(  ((CharArray)  pa).array[row]); break;
+            case INT:    dos.writeInt(   ((IntArray)   pa).array[row]); break;
+            case UINT:   dos.writeInt(   ((UIntArray)  pa).array[row]); break;
+            case LONG:   dos.writeLong(  ((LongArray)  pa).array[row]); break;
+            case ULONG:  dos.writeLong(  ((ULongArray) pa).array[row]); break;
+            case FLOAT:  dos.writeFloat( ((FloatArray) pa).array[row]); break;
+            case DOUBLE: dos.writeDouble(((DoubleArray)pa).array[row]); break;
+            case STRING: writeString(dos, pa.getString(row)); break;
+            default: throw new IOException("MappedFileTable: unsupported type: " + pa.elementTypeString());
+        }
+    }
+
+    /** This reads one value and adds it to the end of pa. */
+    protected static void readValue(ByteBuffer buffer, PrimitiveArray pa) throws IOException {
+        switch (pa.elementType()) {
+            case BYTE:   pa.addFromPA(new ByteArray(  new byte[]  {buffer.get()}),       0); break;
+            case UBYTE:  pa.addFromPA(new UByteArray( new byte[]  {buffer.get()}),       0); break;
+            case SHORT:  pa.addFromPA(new ShortArray( new short[] {buffer.getShort()}),  0); break;
+            case USHORT: pa.addFromPA(new UShortArray(new short[] {buffer.getShort()}),  0); break;
+            case CHAR:   pa.addFromPA(new CharArray(  new char[]  {buffer.getChar()}),   0); break;
+            case INT:    pa.addFromPA(new IntArray(   new int[]   {buffer.getInt()}),    0); break;
+            case UINT:   pa.addFromPA(new UIntArray(  new int[]   {buffer.getInt()}),    0); break;
+            case LONG:   pa.addFromPA(new LongArray(  new long[]  {buffer.getLong()}),   0); break;
+            case ULONG:  pa.addFromPA(new ULongArray( new long[]  {buffer.getLong()}),   0); break;
+            case FLOAT:  pa.addFromPA(new FloatArray( new float[] {buffer.getFloat()}),  0); break;
+            case DOUBLE: pa.addFromPA(new DoubleArray(new double[]{buffer.getDouble()}), 0); break;
+            case STRING: pa.addString(readString(buffer)); break;
+            default: throw new IOException("MappedFileTable: unsupported type: " + pa.elementTypeString());
+        }
+    }
+
+    /** This writes a String as [int nUtf8Bytes][utf8 bytes]. */
+    protected static void writeString(DataOutputStream dos, String s) throws IOException {
+        byte bar[] = s.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bar.length);
+        dos.write(bar);
+    }
+
+    /** This reads a String written by writeString. */
+    protected static String readString(ByteBuffer buffer) {
+        byte bar[] = new byte[buffer.getInt()];
+        buffer.get(bar);
+        return new String(bar, StandardCharsets.UTF_8);
+    }
+
+    /** This returns the single daemon thread which compacts logs. */
+    private static synchronized ExecutorService getCompactor() {
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "MappedFileTable-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return compactor;
+    }
+
+    /** This adds a row to a test fileTable (see makeTestTable), with a String for each value. */
+    private static void addTestRow(Table table, String... values) {
+        for (int col = 0; col < values.length; col++)
+            table.getColumn(col).addString(values[col]);
+    }
+
+    /**
+     * This makes a test fileTable with the EDDTableFromFiles fileTable columns
+     * and 3 dataVariables (int, String, and ulong).
+     */
+    private static Table makeTestTable() {
+        Table table = new Table();
+        table.addColumn("dirIndex",      new ShortArray());
+        table.addColumn("fileName",      new StringArray());
+        table.addColumn("lastMod",       new LongArray());
+        table.addColumn("size",          new LongArray());
+        table.addColumn("sortedSpacing", new DoubleArray());
+        table.addColumn("x_min_",        new IntArray());
+        table.addColumn("x_max_",        new IntArray());
+        table.addColumn("x_hasNaN_",     new ByteArray());
+        table.addColumn("s_min_",        new StringArray());
+        table.addColumn("s_max_",        new StringArray());
+        table.addColumn("s_hasNaN_",     new ByteArray());
+        table.addColumn("u_min_",        new ULongArray());
+        table.addColumn("u_max_",        new ULongArray());
+        table.addColumn("u_hasNaN_",     new ByteArray());
+        return table;
+    }
+
+    /** This makes a test dirTable. */
+    private static Table makeTestDirTable(String... dirs) {
+        Table table = new Table();
+        table.addColumn("dirName", new StringArray(dirs));
+        return table;
+    }
+
+    /** This returns the dirTable and fileTable as one String. */
+    private static String testString(Table tables[]) {
+        return tables[0].dataToString() + tables[1].dataToString();
+    }
+
+    /**
+     * This tests writing a snapshot, appending to the log, reopening,
+     * discarding a partly written batch, and compacting.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** MappedFileTable.basicTest()");
+        String dir = File2.getSystemTempDirectory() + "MappedFileTableTest/";
+        File2.makeDirectory(dir);
+        deleteAll(dir);
+        int sortColumns[] = {5}; //x_min_
+        boolean ascending[] = {true};
+
+        //no store
+        MappedFileTable store = new MappedFileTable(dir, 3, 0);
+        Test.ensureEqual(store.exists(), false, "");
+        Test.ensureEqual(store.read(), null, "");
+
+        //write a snapshot
+        Table dirTable = makeTestDirTable("/data/a/", "/data/b/");
+        Table fileTable = makeTestTable();
+        addTestRow(fileTable, "0", "f1.nc", "1000", "10", "NaN", "1",  "5",  "0", "a", "c", "0", "0", "18446744073709551614", "0");
+        addTestRow(fileTable, "1", "f2.nc", "2000", "20", "1.5", "3",  "9",  "1", "",  "z", "1", "7", "8", "0");
+        addTestRow(fileTable, "0", "f\u00e9.nc", "3000", "30", "2", "8", "12", "0", "b", "b", "0", "1", "2", "1");
+        store.writeSnapshot(dirTable, fileTable, sortColumns);
+        String expected = testString(new Table[]{dirTable, fileTable});
+        Test.ensureEqual(testString(store.read()), expected, "");
+        store.close();
+        store = new MappedFileTable(dir, 3, 0);
+        Test.ensureEqual(store.exists(), true, "");
+        Test.ensureEqual(store.hasSameColumns(fileTable), true, "");
+        Test.ensureEqual(testString(store.read()), expected, "");
+        Test.ensureEqual(testString(store.readCopy()), expected, "");
+
+        //append: a new dir, a changed file, a new file, and a removed file
+        Table tDirTable = makeTestDirTable("/data/a/", "/data/b/", "/data/c/");
+        Table tFileTable = makeTestTable();
+        addTestRow(tFileTable, "0", "f1.nc", "1000", "10", "NaN", "1",  "5",  "0", "a", "c", "0", "0", "18446744073709551614", "0");
+        addTestRow(tFileTable, "2", "f4.nc", "4000", "40", "1",   "2",  "4",  "0", "d", "e", "0", "3", "4", "0");
+        addTestRow(tFileTable, "1", "f2.nc", "2500", "25", "1.5", "6",  "9",  "0", "x", "z", "0", "7", "9", "0");
+        tFileTable.sort(sortColumns, ascending);
+        store.append(tDirTable, tFileTable, new IntArray(new int[]{1, 2}),
+            new ShortArray(new short[]{0}), new StringArray(new String[]{"f\u00e9.nc"}));
+        expected = testString(new Table[]{tDirTable, tFileTable});
+        Test.ensureEqual(testString(store.read()), expected, "");  //from the cache
+        store.close();
+        store = new MappedFileTable(dir, 3, 0);
+        Test.ensureEqual(store.nDirs, 3, "");
+        Test.ensureEqual(store.nLogRecords, 4, "");
+        Test.ensureEqual(testString(store.read()), expected, "");  //replayed and sorted
+
+        //a partly written batch at the end of the log is discarded
+        String logName = store.logName(store.generation);
+        long logLength = File2.length(logName);
+        try (FileOutputStream fos = new FileOutputStream(logName, true)) {
+            fos.write(new byte[]{0, 0, 0, 50, 0, 0, 0, 1, 1, 2, 3, 4, 5, 6});
+        }
+        store.close();
+        store = new MappedFileTable(dir, 3, 0);
+        logName = store.logName(store.generation);
+        Test.ensureEqual(File2.length(logName), logLength, "");
+        Test.ensureEqual(testString(store.read()), expected, "");
+
+        //compact
+        long oldGeneration = store.generation;
+        store.compact();
+        Test.ensureEqual(store.generation, oldGeneration + 1, "");
+        Test.ensureEqual(store.nLogRecords, 0, "");
+        Test.ensureEqual(File2.isFile(store.snapshotName(oldGeneration)), false, "");
+        Test.ensureEqual(File2.isFile(logName), false, "");
+        store.close();
+        store = new MappedFileTable(dir, 3, 0);
+        Test.ensureEqual(store.logLength, 0, "");
+        Test.ensureEqual(testString(store.read()), expected, "");
+
+        //a different standardizeWhat discards the store
+        store.close();
+        store = new MappedFileTable(dir, 3, 1);
+        Test.ensureEqual(store.exists(), false, "");
+        Test.ensureEqual(newestGeneration(store.dir), -1, "");
+        store.close();
+        deleteAll(dir);
+        Test.ensureEqual(instanceNumbers(dir).length, 0, "");
+    }
+
+    /**
+     * This tests a reload: the old and new instances of a dataset's store are
+     * open at the same time, so they must not share files.
+     */
+    public static void testReload() throws Throwable {
+        String2.log("\n*** MappedFileTable.testReload()");
+        String dir = File2.getSystemTempDirectory() + "MappedFileTableReload/";
+        File2.makeDirectory(dir);
+        deleteAll(dir);
+        int sortColumns[] = {5}; //x_min_
+        boolean ascending[] = {true};
+
+        //the old instance
+        MappedFileTable oldStore = new MappedFileTable(dir, 3, 0);
+        Table dirTable = makeTestDirTable("/data/a/");
+        Table fileTable = makeTestTable();
+        addTestRow(fileTable, "0", "f1.nc", "1000", "10", "NaN", "1", "5", "0", "a", "c", "0", "0", "1", "0");
+        oldStore.writeSnapshot(dirTable, fileTable, sortColumns);
+        String expected1 = testString(new Table[]{dirTable, fileTable});
+
+        //the new instance gets its own dir, starting with a copy of the old store
+        MappedFileTable newStore = new MappedFileTable(dir, 3, 0);
+        Test.ensureTrue(!newStore.dir.equals(oldStore.dir), newStore.dir);
+        Test.ensureEqual(testString(newStore.read()), expected1, "");
+
+        //the new instance's changes don't affect the old instance's files, and vice versa
+        Table tDirTable = makeTestDirTable("/data/a/", "/data/b/");
+        Table tFileTable = makeTestTable();
+        addTestRow(tFileTable, "0", "f1.nc", "1000", "10", "NaN", "1", "5", "0", "a", "c", "0", "0", "1", "0");
+        addTestRow(tFileTable, "1", "f2.nc", "2000", "20", "1.5", "3", "9", "1", "b", "z", "1", "7", "8", "0");
+        tFileTable.sort(sortColumns, ascending);
+        newStore.append(tDirTable, tFileTable, new IntArray(new int[]{1}),
+            new ShortArray(), new StringArray());
+        String expected2 = testString(new Table[]{tDirTable, tFileTable});
+        Table oDirTable = makeTestDirTable("/data/a/");
+        Table oFileTable = makeTestTable();
+        oldStore.append(oDirTable, oFileTable, new IntArray(),
+            new ShortArray(new short[]{0}), new StringArray(new String[]{"f1.nc"}));
+        oldStore.compact();
+        String expected3 = testString(new Table[]{oDirTable, oFileTable});
+        oldStore.cache = null;
+        newStore.cache = null;
+        Test.ensureEqual(testString(oldStore.read()), expected3, "");
+        Test.ensureEqual(testString(newStore.read()), expected2, "");
+
+        //closing the old instance deletes its dir (a newer instance exists),
+        //but requests which are still using it can read its cached tables
+        String oldDir = oldStore.dir;
+        oldStore.close();
+        Test.ensureEqual(File2.isDirectory(oldDir), false, "");
+        Test.ensureEqual(testString(oldStore.read()), expected3, "");
+        oldStore.append(dirTable, fileTable, new IntArray(), new ShortArray(), new StringArray());
+        Test.ensureEqual(testString(oldStore.read()), expected1, "");
+        Test.ensureEqual(File2.isDirectory(oldDir), false, "");
+        Test.ensureEqual(testString(newStore.read()), expected2, "");
+
+        //closing the newest instance (e.g., at shutdown) keeps its dir for the next instance
+        newStore.close();
+        Test.ensureEqual(File2.isDirectory(newStore.dir), true, "");
+        MappedFileTable nextStore = new MappedFileTable(dir, 3, 0);
+        Test.ensureEqual(testString(nextStore.read()), expected2, "");
+        Test.ensureEqual(File2.isDirectory(newStore.dir), false, "");
+        Test.ensureEqual(instanceNumbers(dir).length, 1, "");
+
+        //deleteAll while an instance is open: it is deleted when closed and isn't copied
+        deleteAll(dir);
+        Test.ensureEqual(File2.isDirectory(nextStore.dir), true, "");
+        MappedFileTable emptyStore = new MappedFileTable(dir, 3, 0);
+        Test.ensureEqual(emptyStore.exists(), false, "");
+        nextStore.close();
+        Test.ensureEqual(File2.isDirectory(nextStore.dir), false, "");
+        emptyStore.close();
+        deleteAll(dir);
+        Test.ensureEqual(instanceNumbers(dir).length, 0, "");
+    }
+
+    /**
+     * This tests that replaying the log gives the fileTable which was appended
+     * when, in one batch, a file was removed and then added again 
+     * (e.g., a bad file which became valid).
+     */
+    public static void testReplayOrder() throws Throwable {
+        String2.log("\n*** MappedFileTable.testReplayOrder()");
+        String dir = File2.getSystemTempDirectory() + "MappedFileTableReplay/";
+        File2.makeDirectory(dir);
+        deleteAll(dir);
+        int sortColumns[] = {5}; //x_min_
+        MappedFileTable store = new MappedFileTable(dir, 3, 0);
+        Table dirTable = makeTestDirTable("/data/a/");
+        Table fileTable = makeTestTable();
+        addTestRow(fileTable, "0", "f1.nc", "1000", "10", "NaN", "1", "5", "0", "a", "c", "0", "0", "1", "0");
+        addTestRow(fileTable, "0", "f2.nc", "2000", "20", "1.5", "3", "9", "1", "b", "z", "1", "7", "8", "0");
+        store.writeSnapshot(dirTable, fileTable, sortColumns);
+
+        //f1 was removed, then added again (with new values)
+        Table tDirTable = makeTestDirTable("/data/a/");
+        Table tFileTable = makeTestTable();
+        addTestRow(tFileTable, "0", "f1.nc", "1100", "11", "NaN", "2", "6", "0", "a", "d", "0", "0", "2", "0");
+        addTestRow(tFileTable, "0", "f2.nc", "2000", "20", "1.5", "3", "9", "1", "b", "z", "1", "7", "8", "0");
+        store.append(tDirTable, tFileTable, new IntArray(new int[]{0}),
+            new ShortArray(new short[]{0}), new StringArray(new String[]{"f1.nc"}));
+        String expected = testString(new Table[]{tDirTable, tFileTable});
+        store.cache = null;
+        Test.ensureEqual(testString(store.read()), expected, "");
+
+        //and after a restart
+        store.close();
+        store = new MappedFileTable(dir, 3, 0);
+        Test.ensureEqual(testString(store.read()), expected, "");
+        Test.ensureEqual(store.nLogRecords, 1, ""); //just the upsert
+        store.close();
+        deleteAll(dir);
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 2;
+        String msg = "\n^^^ MappedFileTable.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                    if (test ==  1) testReload();
+                    if (test ==  2) testReplayOrder();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,966 @@
+/*
+ * ResponseCache Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.SimpleException;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.util.SSR;
+import gov.noaa.pfel.erddap.util.EDStatic;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * This is an optional, server-wide cache of finished griddap and tabledap
+ * responses, so that identical requests (e.g., from dashboards)
+ * don't each recompute the whole response.
+ *
+ * <p>Responses are stored as files in the dataset's cacheDirectory().
+ * The key is the datasetID, the dataset's version (its creationTimeMillis,
+ * which changes when it is reloaded, and its lastChangeMillis,
+ * which changes when an update() changes it), loggedInAs, the fileTypeName,
+ * and the (percent-decoded) query.
+ * The total size of the cached responses is limited to maxBytes
+ * (least recently used responses are removed first).
+ * Responses are also removed when they are older than EDStatic.cacheMillis
+ * (when the cache cleaner would delete the files anyway).
+ *
+ * <p>A response is sent to the client while it is being made
+ * and, at the same time, written to the cache file (a "tee").
+ * If the response gets too big to keep (more than 1/10th of maxBytes),
+ * writing to the cache file stops (and the file is deleted), 
+ * but the response is still sent to the client.
+ * If there are almost simultaneous identical requests, only the first thread 
+ * makes (and caches) the response; the others wait for it to finish 
+ * (for up to waitSeconds), then send the cached response.
+ * A waiting thread makes the response itself (without caching it) only if 
+ * the first thread failed, the response couldn't be cached 
+ * (e.g., it was too big or was a redirect), or the wait timed out.
+ *
+ * <p>While a cached response is being sent, its entry is pinned, so that
+ * if the entry is evicted or invalidated in the meantime, 
+ * its file isn't deleted until the last reader is finished with it.
+ *
+ * <p>This is active if datasets.xml's &lt;responseCacheMB&gt; is &gt; 0.
+ *
+ * @author agent (agent@local) 2026-10-16
+ */
+public class ResponseCache {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** 
+     * The maximum time a thread waits for another thread which is making 
+     * (and caching) the same response. 
+     */
+    public static int waitSeconds = String2.longTimeoutSeconds;
+
+    /** These fileTypes aren't cached: they are html pages for humans, or are already cached files. */
+    public final static String NOT_CACHEABLE_FILE_TYPES[] = {
+        ".fgdc", ".graph", ".html", ".iso19115", ".ncml", ".subset"};
+
+    /** A cached response. */
+    protected static class Entry {
+        String datasetID;
+        String fullName;          //the cache file
+        String characterEncoding; //as requested by respondToDapQuery
+        long nBytes;
+        long createdMillis;
+        boolean kept;             //false if too big to keep in the cache
+        int nReaders;             //the number of threads sending this response. sync on entries.
+        boolean removed;          //true if no longer in entries. sync on entries.
+    }
+
+    //the cached responses, in access order (so the first is the least recently used). sync on entries.
+    protected static LinkedHashMap<String,Entry> entries = new LinkedHashMap(64, 0.75f, true);
+    protected static long maxBytes = 0;    //sync on entries. 0=cache not active
+    protected static long totalBytes = 0;  //sync on entries
+    //the keys of the responses being made (and cached) now, 
+    //and latches which are counted down when they are finished. sync on entries.
+    protected static HashMap<String,CountDownLatch> pending = new HashMap();
+
+    //a griddap constraint, e.g., [(last)] or [(2020-01-01):1:(now-1day)]
+    protected final static Pattern BRACKETS = Pattern.compile("\\[([^\\]]*)\\]");
+    //now or last as a word (not part of, e.g., snowpack or lastName)
+    protected final static Pattern NOW_OR_LAST = Pattern.compile(
+        "(?<![A-Za-z0-9_])(now|last)(?![A-Za-z0-9_])", Pattern.CASE_INSENSITIVE);
+    //a tabledap constraint's operator
+    protected final static Pattern OPERATOR = Pattern.compile("(<=|>=|!=|=~|<|>|=)");
+
+    //statistics since last Daily Report. sync on entries.
+    protected static int nHits = 0, nMisses = 0, nNotCacheable = 0, nTooBig = 0,
+        nEvictions = 0, nInvalidated = 0, nWaits = 0;
+
+    /**
+     * This sets the maximum total size of the cached responses.
+     * If the cache is now too big, the least recently used responses are removed.
+     *
+     * @param tMaxBytes  0 turns off the cache (and removes all the cached responses).
+     */
+    public static void setMaxBytes(long tMaxBytes) {
+        synchronized(entries) {
+            maxBytes = Math.max(0, tMaxBytes);
+            removeOldest(maxBytes);
+        }
+    }
+
+    /** This returns the maximum total size of the cached responses (0 if the cache isn't active). */
+    public static long maxBytes() {
+        synchronized(entries) {
+            return maxBytes;
+        }
+    }
+
+    /**
+     * This indicates if the response to a request may be cached.
+     *
+     * @param userDapQuery the percent-decoded query
+     * @param fileTypeName e.g., .csv
+     */
+    public static boolean isCacheable(String userDapQuery, String fileTypeName) {
+        if (maxBytes() <= 0 ||
+            String2.indexOf(NOT_CACHEABLE_FILE_TYPES, fileTypeName) >= 0 ||
+            fileTypeName.endsWith("Info")) //e.g., .pngInfo
+            return false;
+
+        //responses to queries with relative times (e.g., time>now-1day, or [last])
+        //change without the dataset changing
+        return !hasRelativeTime(userDapQuery);
+    }
+
+    /**
+     * This indicates if a query has a constraint relative to now or to 
+     * the last index (e.g., tabledap's time&gt;now-1day, 
+     * or griddap's [(last)], [last-1], or [(now-1day)]).
+     * Quoted strings (e.g., station="snowpack") and 
+     * variable names (e.g., lastName) are ignored.
+     *
+     * @param userDapQuery the percent-decoded query
+     * @return true if the query has a relative time or index
+     */
+    public static boolean hasRelativeTime(String userDapQuery) {
+        //remove the contents of quoted strings
+        StringBuilder sb = new StringBuilder();
+        boolean inQuotes = false;
+        int length = userDapQuery.length();
+        for (int po = 0; po < length; po++) {
+            char ch = userDapQuery.charAt(po);
+            if (inQuotes) {
+                if (ch == '\\') {
+                    po++; //skip the escaped char
+                } else if (ch == '"') {
+                    inQuotes = false;
+                    sb.append('"');
+                }
+            } else {
+                if (ch == '"') 
+                    inQuotes = true;
+                sb.append(ch);
+            }
+        }
+
+        String parts[] = String2.split(sb.toString(), '&');
+        for (int part = 0; part < parts.length; part++) {
+            String ts = parts[part];
+            if (ts.indexOf('[') >= 0) {
+                //griddap: look in each [ ] 
+                Matcher matcher = BRACKETS.matcher(ts);
+                while (matcher.find()) {
+                    if (NOW_OR_LAST.matcher(matcher.group(1)).find())
+                        return true;
+                }
+            } else {
+                //tabledap: look at the start of the constraint's value, e.g., time>now-1day
+                Matcher matcher = OPERATOR.matcher(ts);
+                if (matcher.find()) {
+                    Matcher m2 = NOW_OR_LAST.matcher(ts.substring(matcher.end()).trim());
+                    if (m2.find() && m2.start() == 0)
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This responds to a griddap or tabledap request,
+     * reusing the cached response if possible.
+     * The parameters are the same as for EDD.respondToDapQuery.
+     * If the response isn't cacheable, this just calls edd.respondToDapQuery.
+     *
+     * @throws Throwable if trouble
+     */
+    public static void respondToDapQuery(final EDD edd, final HttpServletRequest request,
+        final HttpServletResponse response, final String ipAddress, final String loggedInAs,
+        final String requestUrl, final String userDapQuery,
+        OutputStreamSource outputStreamSource,
+        final String dir, final String fileName, final String fileTypeName) throws Throwable {
+
+        //decode userDapQuery to a canonical form to avoid slight differences in percent-encoding
+        String decodedQuery = userDapQuery;
+        try {
+            decodedQuery = SSR.percentDecode(userDapQuery);
+        } catch (Exception e) {
+            //shouldn't happen
+        }
+        if (!isCacheable(decodedQuery, fileTypeName)) {
+            synchronized(entries) {
+                nNotCacheable++;
+            }
+            edd.respondToDapQuery(request, response, ipAddress, loggedInAs,
+                requestUrl, userDapQuery, outputStreamSource, dir, fileName, fileTypeName);
+            return;
+        }
+
+        String key = edd.datasetID() + "\n" +
+            edd.creationTimeMillis() + "\n" + edd.lastChangeMillis() + "\n" +
+            (loggedInAs == null? "" : loggedInAs) + "\n" + fileTypeName + "\n" + decodedQuery;
+
+        respond(key, edd.datasetID(), dir, outputStreamSource, new Responder() {
+            public void respond(OutputStreamSource oss) throws Throwable {
+                edd.respondToDapQuery(request, response, ipAddress, loggedInAs,
+                    requestUrl, userDapQuery, oss, dir, fileName, fileTypeName);
+            }
+        });
+    }
+
+    /** This makes a response and sends it to an OutputStreamSource (e.g., by calling edd.respondToDapQuery). */
+    protected interface Responder {
+        void respond(OutputStreamSource oss) throws Throwable;
+    }
+
+    /**
+     * This does the work for respondToDapQuery (and makes it easy to test):
+     * it sends the cached response for key (if any), 
+     * or waits for another thread which is making it,
+     * or uses responder to make it and caches it.
+     *
+     * @param key the cache key
+     * @param datasetID the datasetID
+     * @param dir the dataset's cacheDirectory
+     * @param outputStreamSource the client's outputStreamSource
+     * @param responder makes the response
+     * @throws Throwable if trouble
+     */
+    protected static void respond(String key, String datasetID, String dir,
+        OutputStreamSource outputStreamSource, Responder responder) throws Throwable {
+
+        //is it cached? 
+        if (sendCached(key, outputStreamSource))
+            return;
+
+        //Is another thread making (and caching) this response now?
+        //If so, wait for it, then send the cached response.
+        CountDownLatch latch;
+        boolean cacheIt;
+        synchronized(entries) {
+            latch = pending.get(key);
+            cacheIt = latch == null;
+            if (cacheIt) {
+                latch = new CountDownLatch(1);
+                pending.put(key, latch);
+            } else {
+                nWaits++;
+            }
+        }
+        if (!cacheIt) {
+            if (verbose) String2.log("  ResponseCache waiting for another thread to make the response");
+            if (latch.await(waitSeconds, TimeUnit.SECONDS) &&
+                sendCached(key, outputStreamSource))
+                return;
+            //the other thread failed, the response wasn't cached, or timeout:
+            //just make the response without caching it
+            responder.respond(outputStreamSource);
+            return;
+        }
+
+        try {
+            //send the response to the client and write it to a cache file at the same time
+            //Normally, this is cacheDirectory and it already exists,
+            //  but my testing environment (2+ things running) may have removed it.
+            File2.makeDirectory(dir);
+            String fullName = File2.addSlash(dir) + datasetID +
+                "_response_" + String2.md5Hex12(key) + ".temp" + Math2.random(Integer.MAX_VALUE);
+            TeeOutputStreamSource tee = new TeeOutputStreamSource(outputStreamSource,
+                fullName, maxBytes() / 10);
+            try {
+                responder.respond(tee);
+                tee.close(); //often already closed by edd
+            } catch (Throwable t) {
+                tee.abandonFile();
+                throw t;
+            }
+            if (tee.characterEncoding == null) //edd responded some other way (e.g., a redirect)
+                return;
+            if (!tee.fileIsComplete()) { //too big to keep, or trouble writing the file
+                synchronized(entries) {
+                    nTooBig++;
+                }
+                return;
+            }
+
+            Entry entry = new Entry();
+            entry.datasetID = datasetID;
+            entry.fullName = fullName;
+            entry.characterEncoding = tee.characterEncoding;
+            entry.nBytes = tee.fileNBytes;
+            entry.createdMillis = System.currentTimeMillis();
+            put(key, entry);
+            if (!entry.kept) //e.g., maxBytes was just reduced
+                File2.delete(fullName);
+        } finally {
+            //let the waiting threads continue (the entry, if any, is already in entries)
+            synchronized(entries) {
+                pending.remove(key);
+            }
+            latch.countDown();
+        }
+    }
+
+    /**
+     * If the response for key is cached, this sends it to the client.
+     * get() pins the entry while it is being sent, so its file isn't deleted.
+     *
+     * @return true if the cached response was sent
+     * @throws Throwable if trouble
+     */
+    protected static boolean sendCached(String key, OutputStreamSource outputStreamSource) 
+        throws Throwable {
+        Entry entry = get(key);
+        if (entry == null) 
+            return false;
+        if (verbose) String2.log("  ResponseCache reusing " + entry.fullName);
+        try {
+            //(I delayed getting actual outputStream as long as possible.)
+            OutputStream out = outputStreamSource.outputStream(entry.characterEncoding);
+            try {
+                if (!File2.copy(entry.fullName, out)) {
+                    //outputStream contentType already set,
+                    //so I can't go back to html and display error message
+                    //note than the message is thrown if user cancels the transmission; so don't email to me
+                    throw new SimpleException(String2.ERROR + " while transmitting file.");
+                }
+            } finally {
+                try {out.close();} catch (Exception e) {}
+            }
+        } finally {
+            release(entry);
+        }
+        return true;
+    }
+
+    /**
+     * This gets the entry for a key (if it is cached and still valid).
+     * If the entry is returned, it is pinned (so its file won't be deleted
+     * until it is released), so the caller MUST call release(entry) when done with it.
+     *
+     * @return the entry (or null if not cached)
+     */
+    protected static Entry get(String key) {
+        synchronized(entries) {
+            Entry entry = entries.get(key);
+            if (entry != null &&
+                (System.currentTimeMillis() - entry.createdMillis > EDStatic.cacheMillis ||
+                 !File2.isFile(entry.fullName))) { //e.g., deleted by the cache cleaner
+                remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                nMisses++;
+            } else {
+                nHits++;
+                entry.nReaders++;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * This releases an entry which was pinned by get().
+     * If the entry was removed in the meantime and this is the last reader,
+     * its file is deleted.
+     */
+    protected static void release(Entry entry) {
+        synchronized(entries) {
+            entry.nReaders--;
+            if (entry.removed && entry.nReaders <= 0)
+                File2.simpleDelete(entry.fullName);
+        }
+    }
+
+    /**
+     * This marks an entry (which has already been removed from entries) as removed 
+     * and deletes its file (now, or when the last reader releases it).
+     * Callers must sync on entries.
+     */
+    protected static void discard(Entry entry) {
+        entry.removed = true;
+        totalBytes -= entry.nBytes;
+        if (entry.nReaders <= 0)
+            File2.simpleDelete(entry.fullName);
+    }
+
+    /**
+     * This adds an entry to the cache (if it isn't too big),
+     * then removes the least recently used entries if the cache is too big.
+     * This sets entry.kept.
+     */
+    protected static void put(String key, Entry entry) {
+        synchronized(entries) {
+            //a response bigger than 1/10th of the cache would push out too many others
+            entry.kept = entry.nBytes <= maxBytes / 10;
+            if (!entry.kept) {
+                nTooBig++;
+                return;
+            }
+            Entry old = entries.put(key, entry);
+            if (old != null) //unlikely
+                discard(old);
+            totalBytes += entry.nBytes;
+            removeOldest(maxBytes);
+        }
+    }
+
+    /**
+     * This removes an entry and deletes its file (now, or when it is released). 
+     * Callers must sync on entries.
+     */
+    protected static void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) 
+            discard(entry);
+    }
+
+    /**
+     * This removes the least recently used entries until totalBytes &lt;= tMaxBytes.
+     * Callers must sync on entries.
+     */
+    protected static void removeOldest(long tMaxBytes) {
+        Iterator<Map.Entry<String,Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > tMaxBytes && it.hasNext()) {
+            Entry entry = it.next().getValue();
+            it.remove();
+            discard(entry);
+            nEvictions++;
+        }
+    }
+
+    /**
+     * This removes all of the cached responses for a dataset,
+     * e.g., because the dataset was changed, reloaded, or unloaded.
+     * (The key includes the dataset's version, so stale responses would never
+     * be reused, but this frees up their space right away.)
+     *
+     * @param datasetID
+     */
+    public static void invalidate(String datasetID) {
+        synchronized(entries) {
+            Iterator<Map.Entry<String,Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next().getValue();
+                if (entry.datasetID.equals(datasetID)) {
+                    it.remove();
+                    discard(entry);
+                    nInvalidated++;
+                }
+            }
+        }
+    }
+
+    /** This returns the number of cached responses. */
+    public static int size() {
+        synchronized(entries) {
+            return entries.size();
+        }
+    }
+
+    /** This returns a one line summary of the statistics (with a trailing newline). */
+    public static String statistics() {
+        synchronized(entries) {
+            int nLookups = nHits + nMisses;
+            return "ResponseCache: maxMB=" + (maxBytes / Math2.BytesPerMB) +
+                " nResponses=" + entries.size() +
+                " totalMB=" + (totalBytes / Math2.BytesPerMB) +
+                " (since last Daily Report:" +
+                " nHits=" + nHits +
+                (nLookups == 0? "" : " (" + (nHits * 100L / nLookups) + "%)") +
+                " nMisses=" + nMisses +
+                " nNotCacheable=" + nNotCacheable +
+                " nTooBig=" + nTooBig +
+                " nEvictions=" + nEvictions +
+                " nInvalidated=" + nInvalidated + 
+                " nWaits=" + nWaits + ")\n";
+        }
+    }
+
+    /** This resets the statistics which are 'since last Daily Report'. */
+    public static void resetDailyStatistics() {
+        synchronized(entries) {
+            nHits = 0;
+            nMisses = 0;
+            nNotCacheable = 0;
+            nTooBig = 0;
+            nEvictions = 0;
+            nInvalidated = 0;
+            nWaits = 0;
+        }
+    }
+
+    /**
+     * An OutputStreamSource which sends everything to the client's OutputStreamSource 
+     * and also writes it to a cache file (until the file gets bigger than maxFileBytes),
+     * and notes the characterEncoding requested by respondToDapQuery 
+     * (so the response can be sent the same way later).
+     */
+    protected static class TeeOutputStreamSource implements OutputStreamSource {
+        OutputStreamSource clientOss;
+        String fullName;
+        long maxFileBytes;
+        String characterEncoding = null; //set when outputStream is first requested
+        OutputStream outputStream = null;
+        OutputStream fileOut = null;     //null if not started or abandoned
+        long fileNBytes = 0;
+        boolean fileAbandoned = false;
+        boolean closed = false;
+
+        TeeOutputStreamSource(OutputStreamSource tClientOss, String tFullName, long tMaxFileBytes) {
+            clientOss = tClientOss;
+            fullName = tFullName;
+            maxFileBytes = tMaxFileBytes;
+        }
+
+        public OutputStream outputStream(String tCharacterEncoding) throws Throwable {
+            return outputStream(tCharacterEncoding, -1);
+        }
+
+        public OutputStream outputStream(String tCharacterEncoding, long contentLength)
+            throws Throwable {
+            if (outputStream == null) {
+                OutputStream clientOut = clientOss.outputStream(tCharacterEncoding, contentLength);
+                characterEncoding = tCharacterEncoding == null? "" : tCharacterEncoding;
+                if (contentLength > maxFileBytes) {
+                    fileAbandoned = true;
+                } else {
+                    try {
+                        fileOut = new BufferedOutputStream(new FileOutputStream(fullName));
+                    } catch (Exception e) {
+                        String2.log("ResponseCache couldn't create " + fullName + ": " + e.toString());
+                        fileAbandoned = true;
+                    }
+                }
+                outputStream = new TeeOutputStream(clientOut);
+            }
+            return outputStream;
+        }
+
+        public OutputStream existingOutputStream() {
+            return outputStream;
+        }
+
+        /** The client's stream does the encoding (compression). */
+        public String usingCompression() {
+            return clientOss.usingCompression();
+        }
+
+        /** This closes the outputStream (if any). */
+        void close() throws IOException {
+            if (outputStream != null)
+                outputStream.close(); //often already closed; closing again does nothing
+        }
+
+        /** 
+         * This stops writing to the cache file and deletes it. 
+         * This won't throw an exception.
+         */
+        void abandonFile() {
+            fileAbandoned = true;
+            if (fileOut != null) {
+                try {fileOut.close();} catch (Exception e) {}
+                fileOut = null;
+            }
+            File2.simpleDelete(fullName);
+        }
+
+        /** This indicates if the whole response was written to the cache file. */
+        boolean fileIsComplete() {
+            return closed && !fileAbandoned;
+        }
+
+        /** The OutputStream which writes to the client's outputStream and the file. */
+        class TeeOutputStream extends OutputStream {
+            OutputStream clientOut;
+
+            TeeOutputStream(OutputStream tClientOut) {
+                clientOut = tClientOut;
+            }
+
+            public void write(int b) throws IOException {
+                clientOut.write(b);
+                if (fileOut != null) {
+                    if (fileNBytes + 1 > maxFileBytes) {
+                        abandonFile();
+                    } else {
+                        try {
+                            fileOut.write(b);
+                            fileNBytes++;
+                        } catch (IOException e) {
+                            abandonFile();
+                        }
+                    }
+                }
+            }
+
+            public void write(byte b[], int off, int len) throws IOException {
+                clientOut.write(b, off, len);
+                if (fileOut != null) {
+                    if (fileNBytes + len > maxFileBytes) {
+                        abandonFile();
+                    } else {
+                        try {
+                            fileOut.write(b, off, len);
+                            fileNBytes += len;
+                        } catch (IOException e) {
+                            abandonFile();
+                        }
+                    }
+                }
+            }
+
+            public void flush() throws IOException {
+                clientOut.flush();
+            }
+
+            public void close() throws IOException {
+                if (closed)
+                    return;
+                closed = true;
+                try {
+                    clientOut.close();
+                } finally {
+                    if (fileOut != null) {
+                        try {
+                            fileOut.close();
+                            fileOut = null;
+                        } catch (IOException e) {
+                            abandonFile();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** For tests: this indicates if key is cached (and releases the entry). */
+    private static boolean isCached(String key) {
+        Entry entry = get(key);
+        if (entry == null)
+            return false;
+        release(entry);
+        return true;
+    }
+
+    /**
+     * This tests the cache bookkeeping (LRU eviction, the byte budget,
+     * invalidation, pinning, and the tee) without making real responses.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** ResponseCache.basicTest()");
+        String dir = File2.getSystemTempDirectory() + "ResponseCacheTest/";
+        File2.makeDirectory(dir);
+        long oMaxBytes = maxBytes();
+        try {
+            setMaxBytes(1000);
+            resetDailyStatistics();
+
+            //isCacheable
+            Test.ensureEqual(isCacheable("sst&time>=2020-01-01", ".csv"), true,  "");
+            Test.ensureEqual(isCacheable("sst&time>=now-1day",   ".csv"), false, "");
+            Test.ensureEqual(isCacheable("sst[(last)][0][0]",    ".nc"),  false, "");
+            Test.ensureEqual(isCacheable("sst",                 ".html"), false, "");
+            Test.ensureEqual(isCacheable("sst",              ".pngInfo"), false, "");
+            Test.ensureEqual(isCacheable("sst&time>=NOW-1day",   ".csv"), false, "");
+            Test.ensureEqual(isCacheable("sst&time<=now",        ".csv"), false, "");
+            Test.ensureEqual(isCacheable("sst[(last-1)][0][0]",  ".nc"),  false, "");
+            Test.ensureEqual(isCacheable("sst[last][0][0]",      ".nc"),  false, "");
+            Test.ensureEqual(isCacheable("sst[(2020-01-01):1:(now-1day)][0][0]", ".nc"), false, "");
+            Test.ensureEqual(isCacheable("sst[0][0][0],chla[(last)][0][0]", ".nc"), false, "");
+            Test.ensureEqual(isCacheable("depth&station=\"snowpack\"",    ".csv"), true, "");
+            Test.ensureEqual(isCacheable("depth&station=\"now\"",         ".csv"), true, "");
+            Test.ensureEqual(isCacheable("depth&station=\"a\\\"&b=now\"", ".csv"), true, "");
+            Test.ensureEqual(isCacheable("lastName,snowDepth&lastName>\"M\"", ".csv"), true, "");
+            Test.ensureEqual(isCacheable("snowpack[0][0][0],lastValue[(2020-01-01)][0][0]", ".nc"), true, "");
+            Test.ensureEqual(isCacheable("time,sst&orderByMax(\"time\")", ".csv"), true, "");
+
+            //put 10 responses of 100 bytes each: all fit
+            for (int i = 0; i < 10; i++) {
+                Entry entry = new Entry();
+                entry.datasetID = i % 2 == 0? "even" : "odd";
+                entry.fullName = dir + "response" + i;
+                entry.nBytes = 100;
+                entry.createdMillis = System.currentTimeMillis();
+                String2.writeToFile(entry.fullName, String2.makeString('a', 100));
+                put("key" + i, entry);
+                Test.ensureEqual(entry.kept, true, "i=" + i);
+            }
+            Test.ensureEqual(size(), 10, "");
+
+            //use key0, so key1 is the least recently used. Then add one more.
+            Test.ensureTrue(isCached("key0"), "");
+            Entry entry = new Entry();
+            entry.datasetID = "even";
+            entry.fullName = dir + "response10";
+            entry.nBytes = 100;
+            entry.createdMillis = System.currentTimeMillis();
+            String2.writeToFile(entry.fullName, String2.makeString('a', 100));
+            put("key10", entry);
+            Test.ensureEqual(size(), 10, "");
+            Test.ensureTrue(isCached("key0"), "");
+            Test.ensureTrue(!isCached("key1"), "key1 should have been evicted");
+            Test.ensureEqual(File2.isFile(dir + "response1"), false, "");
+
+            //too big to keep
+            entry = new Entry();
+            entry.datasetID = "odd";
+            entry.fullName = dir + "responseBig";
+            entry.nBytes = 101;
+            put("keyBig", entry);
+            Test.ensureEqual(entry.kept, false, "");
+            Test.ensureEqual(size(), 10, "");
+
+            //invalidate a dataset
+            invalidate("odd");
+            Test.ensureEqual(size(), 6, ""); //0,2,4,6,8,10
+            Test.ensureTrue(!isCached("key3"), "");
+            Test.ensureTrue(isCached("key4"), "");
+            Test.ensureEqual(File2.isFile(dir + "response3"), false, "");
+
+            //a file deleted by the cache cleaner is a miss
+            File2.delete(dir + "response4");
+            Test.ensureTrue(!isCached("key4"), "");
+            Test.ensureEqual(size(), 5, "");
+
+            //a pinned entry's file isn't deleted until it is released
+            Entry pinned = get("key6");
+            Test.ensureTrue(pinned != null, "");
+            invalidate("even");
+            Test.ensureEqual(size(), 0, "");
+            Test.ensureEqual(File2.isFile(dir + "response8"), false, "");
+            Test.ensureEqual(File2.isFile(dir + "response6"), true, "pinned");
+            release(pinned);
+            Test.ensureEqual(File2.isFile(dir + "response6"), false, "released");
+            for (int i = 0; i < 5; i++) {  //put some back
+                entry = new Entry();
+                entry.datasetID = "even";
+                entry.fullName = dir + "response" + i;
+                entry.nBytes = 100;
+                entry.createdMillis = System.currentTimeMillis();
+                String2.writeToFile(entry.fullName, String2.makeString('a', 100));
+                put("key" + i, entry);
+            }
+            pinned = get("key0");
+            for (int i = 5; i < 15; i++) {  //push key0 out
+                entry = new Entry();
+                entry.datasetID = "odd";
+                entry.fullName = dir + "response" + i;
+                entry.nBytes = 100;
+                entry.createdMillis = System.currentTimeMillis();
+                String2.writeToFile(entry.fullName, String2.makeString('a', 100));
+                put("key" + i, entry);
+            }
+            Test.ensureTrue(!isCached("key0"), "key0 should have been evicted");
+            Test.ensureEqual(File2.isFile(dir + "response0"), true, "pinned");
+            Test.ensureEqual(File2.length(dir + "response0"), 100, "pinned");
+            release(pinned);
+            Test.ensureEqual(File2.isFile(dir + "response0"), false, "released");
+
+            //the tee sends everything to the client and writes a small response to the file
+            for (int nBytes = 50; nBytes <= 150; nBytes += 100) {
+                final ByteArrayOutputStream clientBaos = new ByteArrayOutputStream();
+                OutputStreamSource clientOss = new OutputStreamSource() {
+                    public OutputStream outputStream(String ce) {return clientBaos;}
+                    public OutputStream outputStream(String ce, long cl) {return clientBaos;}
+                    public OutputStream existingOutputStream() {return clientBaos;}
+                    public String usingCompression() {return "gzip";}
+                };
+                TeeOutputStreamSource tee = new TeeOutputStreamSource(clientOss, 
+                    dir + "tee" + nBytes, 100);
+                OutputStream out = tee.outputStream(String2.UTF_8);
+                Test.ensureEqual(tee.usingCompression(), "gzip", "");
+                out.write('a');
+                byte ba[] = String2.makeString('b', nBytes - 1).getBytes();
+                for (int po = 0; po < ba.length; po += 20)
+                    out.write(ba, po, Math.min(20, ba.length - po));
+                Test.ensureEqual(tee.fileIsComplete(), false, "not closed yet");
+                out.close();
+                Test.ensureEqual(clientBaos.size(), nBytes, "");
+                Test.ensureEqual(tee.characterEncoding, String2.UTF_8, "");
+                Test.ensureEqual(tee.fileIsComplete(), nBytes <= 100, "nBytes=" + nBytes);
+                Test.ensureEqual(File2.isFile(dir + "tee" + nBytes), nBytes <= 100, "nBytes=" + nBytes);
+                if (nBytes <= 100) {
+                    Test.ensureEqual(tee.fileNBytes, nBytes, "");
+                    Test.ensureEqual(String2.directReadFrom88591File(dir + "tee" + nBytes), 
+                        "a" + String2.makeString('b', nBytes - 1), "");
+                }
+            }
+
+            String2.log(statistics());
+
+            //turning off the cache removes everything
+            setMaxBytes(0);
+            Test.ensureEqual(size(), 0, "");
+            Test.ensureEqual(File2.isFile(dir + "response0"), false, "");
+            Test.ensureEqual(isCacheable("sst", ".csv"), false, "");
+
+        } finally {
+            setMaxBytes(oMaxBytes);
+            resetDailyStatistics();
+            File2.deleteAllFiles(dir);
+        }
+    }
+
+    /**
+     * This tests that when several threads make the same request at the same time,
+     * the response is made just once (and the other threads wait for it and 
+     * send the cached response), unless it couldn't be cached.
+     */
+    public static void testSingleFlight() throws Throwable {
+        String2.log("\n*** ResponseCache.testSingleFlight()");
+        final String dir = File2.getSystemTempDirectory() + "ResponseCacheTest/";
+        File2.makeDirectory(dir);
+        long oMaxBytes = maxBytes();
+        try {
+            setMaxBytes(10000);
+            resetDailyStatistics();
+            final int nThreads = 8;
+
+            //nBytes=500 is cached. nBytes=2000 is too big to cache, so each thread makes it.
+            for (int nBytes = 500; nBytes <= 2000; nBytes += 1500) {
+                final String key = "singleFlight" + nBytes;
+                final byte ba[] = String2.makeString('a', nBytes).getBytes();
+                final java.util.concurrent.atomic.AtomicInteger nResponses = 
+                    new java.util.concurrent.atomic.AtomicInteger(0);
+                final Responder responder = new Responder() {
+                    public void respond(OutputStreamSource oss) throws Throwable {
+                        nResponses.incrementAndGet();
+                        Math2.sleep(300); //a slow query, so the other threads arrive while it runs
+                        OutputStream out = oss.outputStream(String2.UTF_8);
+                        out.write(ba);
+                        out.close();
+                    }
+                };
+
+                final CountDownLatch start = new CountDownLatch(1);
+                final ByteArrayOutputStream results[] = new ByteArrayOutputStream[nThreads];
+                final Throwable troubles[] = new Throwable[nThreads];
+                Thread threads[] = new Thread[nThreads];
+                for (int t = 0; t < nThreads; t++) {
+                    final int ft = t;
+                    results[t] = new ByteArrayOutputStream();
+                    threads[t] = new Thread() {
+                        public void run() {
+                            final ByteArrayOutputStream baos = results[ft];
+                            OutputStreamSource oss = new OutputStreamSource() {
+                                public OutputStream outputStream(String ce) {return baos;}
+                                public OutputStream outputStream(String ce, long cl) {return baos;}
+                                public OutputStream existingOutputStream() {return baos;}
+                                public String usingCompression() {return "";}
+                            };
+                            try {
+                                start.await();
+                                respond(key, "singleFlight", dir, oss, responder);
+                            } catch (Throwable t) {
+                                troubles[ft] = t;
+                            }
+                        }
+                    };
+                    threads[t].start();
+                }
+                start.countDown();
+                for (int t = 0; t < nThreads; t++)
+                    threads[t].join();
+
+                for (int t = 0; t < nThreads; t++) {
+                    Test.ensureEqual(troubles[t], null, "t=" + t);
+                    Test.ensureEqual(results[t].size(), nBytes, "t=" + t);
+                }
+                Test.ensureEqual(nResponses.get(), nBytes <= 1000? 1 : nThreads, "nBytes=" + nBytes);
+                Test.ensureEqual(isCached(key), nBytes <= 1000, "nBytes=" + nBytes);
+            }
+            Test.ensureEqual(pending.size(), 0, "");
+            String2.log(statistics());
+
+        } finally {
+            setMaxBytes(oMaxBytes);
+            resetDailyStatistics();
+            File2.deleteAllFiles(dir);
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 1;
+        String msg = "\n^^^ ResponseCache.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                    if (test ==  1) testSingleFlight();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+}
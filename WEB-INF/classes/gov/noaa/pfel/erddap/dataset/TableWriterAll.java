@@ -5,12 +5,20 @@
 package gov.noaa.pfel.erddap.dataset;
 
 import com.cohort.array.Attributes;
+import com.cohort.array.ByteArray;
+import com.cohort.array.CharArray;
 import com.cohort.array.DoubleArray;
 import com.cohort.array.FloatArray;
 import com.cohort.array.IntArray;
+import com.cohort.array.LongArray;
+import com.cohort.array.PAType;
 import com.cohort.array.PrimitiveArray;
 import com.cohort.array.ShortArray;
 import com.cohort.array.StringArray;
+import com.cohort.array.UByteArray;
+import com.cohort.array.UIntArray;
+import com.cohort.array.ULongArray;
+import com.cohort.array.UShortArray;
 import com.cohort.util.Calendar2;
 import com.cohort.util.File2;
 import com.cohort.util.Math2;
@@ -28,8 +36,11 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
 /**
@@ -43,12 +54,22 @@ import java.util.Arrays;
  * write the data anywhere (to an outputStream or to another tableWriter), 
  * it just makes all of the data available.
  *
+ * <p>The column files are in DataOutputStream format (so dataInputStream(col) works), 
+ * but since the numeric types are fixed-width (big-endian),
+ * they are written and read back in large blocks, 
+ * straight from/to the backing arrays of the PrimitiveArrays, 
+ * rather than one value at a time.
+ *
  * @author Bob Simons (bob.simons@noaa.gov) 2007-08-23
  */
 public class TableWriterAll extends TableWriter {
 
     public static String attributeTo = "gathering data in TableWriterAll";
 
+    /** The size (in bytes, a multiple of 8) of the blocks used to write and read
+     * the fixed-width (numeric) column files. */
+    public static int blockNBytes = 1 << 16; 
+
     protected int randomInt = Math2.random(Integer.MAX_VALUE);
 
     //set by constructor
@@ -60,6 +81,7 @@ public class TableWriterAll extends TableWriter {
     //each instance makes unique temp files names by adding randomInt to name.
     protected volatile DataOutputStream[] columnStreams;
     protected volatile long totalNRows = 0; 
+    protected ByteBuffer writeBuffer; //set firstTime, reused for each block
 
     protected Table cumulativeTable; //set by writeAllAndFinish, if used
 
@@ -113,6 +135,7 @@ public class TableWriterAll extends TableWriter {
         //do firstTime stuff
         int nColumns = table.nColumns();
         if (firstTime) {
+            writeBuffer = ByteBuffer.allocate(blockNBytes); //big-endian, like DataOutputStream
             columnStreams = new DataOutputStream[nColumns];
             for (int col = 0; col < nColumns; col++) {
                 String tFileName = columnFileName(col);
@@ -135,7 +158,9 @@ public class TableWriterAll extends TableWriter {
         for (int col = 0; col < nColumns; col++) {
             Test.ensureNotNull(columnStreams[col], "columnStreams[" + col + "] is null! nColumns=" + nColumns);
             PrimitiveArray pa = table.getColumn(col);
-            pa.writeDos(columnStreams[col]);
+            if (pa.elementType() == PAType.STRING) 
+                pa.writeDos(columnStreams[col]);
+            else writeBlocks(pa, columnStreams[col]);
         }
         totalNRows = newTotalNRows;
     }
@@ -162,6 +187,7 @@ public class TableWriterAll extends TableWriter {
             columnStreams[col] = null;  
         }
         columnStreams = null;
+        writeBuffer = null;
 
         //diagnostic
         if (verbose)
@@ -189,16 +215,7 @@ public class TableWriterAll extends TableWriter {
 
         //get it from DOSFile
         Math2.ensureArraySizeOkay(totalNRows, "TableWriterAll");
-        PrimitiveArray pa = PrimitiveArray.factory(columnType(col), 
-            (int)totalNRows, false);  //safe since checked above
-        pa.setMaxIsMV(columnMaxIsMV[col]);
-        DataInputStream dis = dataInputStream(col);
-        try {
-            pa.readDis(dis, (int)totalNRows); //safe since checked above
-        } finally {
-            dis.close();
-        }
-        return pa;
+        return readColumn(col, (int)totalNRows); //safe since checked above
     }
 
     /**
@@ -224,19 +241,145 @@ public class TableWriterAll extends TableWriter {
             return cumulativeTable.getColumn(col);
 
         //get it from DOSFile
-        Math2.ensureArraySizeOkay(totalNRows, "TableWriterAll");
-        PrimitiveArray pa = PrimitiveArray.factory(columnType(col), 
-            (int)totalNRows, false);  //safe since checked above
+        //Just read (and allocate space for) the first rows. 
+        //For numeric columns, the rest of the file isn't even read.
+        return readColumn(col, (int)Math.min(firstNRows, totalNRows));
+    }
+
+    /**
+     * This reads the first n values of a column's file.
+     *
+     * @param col   0..
+     * @param n the number of values to be read
+     * @return a PrimitiveArray with the values
+     * @throws Throwable if trouble
+     */
+    protected PrimitiveArray readColumn(int col, int n) throws Throwable {
+        PAType paType = columnType(col);
+        if (paType == PAType.STRING) {
+            //Strings are variable length, so use the DataInputStream 
+            PrimitiveArray pa = PrimitiveArray.factory(paType, n, false); 
+            pa.setMaxIsMV(columnMaxIsMV[col]);
+            DataInputStream dis = dataInputStream(col);
+            try {
+                pa.readDis(dis, n); 
+            } finally {
+                dis.close();
+            }
+            return pa;
+        }
+
+        //numeric values are fixed-width, so read blocks straight into the backing array
+        PrimitiveArray pa = 
+            paType == PAType.BYTE?   new ByteArray(  new byte[n]) :
+            paType == PAType.UBYTE?  new UByteArray( new byte[n]) :
+            paType == PAType.SHORT?  new ShortArray( new short[n]) :
+            paType == PAType.USHORT? new UShortArray(new short[n]) :
+            paType == PAType.CHAR?   new CharArray(  new char[n]) :
+            paType == PAType.INT?    new IntArray(   new int[n]) :
+            paType == PAType.UINT?   new UIntArray(  new int[n]) :
+            paType == PAType.LONG?   new LongArray(  new long[n]) :
+            paType == PAType.ULONG?  new ULongArray( new long[n]) :
+            paType == PAType.FLOAT?  new FloatArray( new float[n]) :
+                                     new DoubleArray(new double[n]);
         pa.setMaxIsMV(columnMaxIsMV[col]);
-        DataInputStream dis = dataInputStream(col);
+        int elementSize = pa.elementSize();
+        int blockNValues = blockNBytes / elementSize;
+        ByteBuffer bb = ByteBuffer.allocate(blockNValues * elementSize); //big-endian, like DataOutputStream
+        FileInputStream fis = new FileInputStream(columnFileName(col));
         try {
-            pa.readDis(dis, Math.min(firstNRows, Math2.narrowToInt(totalNRows)));
-        } finally { 
-            dis.close();
+            FileChannel fc = fis.getChannel();
+            for (int po = 0; po < n; po += blockNValues) {
+                int tn = Math.min(blockNValues, n - po);
+                bb.clear();
+                bb.limit(tn * elementSize);
+                while (bb.hasRemaining()) {
+                    if (fc.read(bb) < 0) 
+                        throw new EOFException(String2.ERROR + 
+                            " in TableWriterAll.readColumn: unexpected end of file for column=" + 
+                            columnNames[col] + " (expected nRows=" + n + ")");
+                }
+                bb.flip();
+                transferBlock(pa, po, tn, bb, false);
+            }
+        } finally {
+            fis.close();
         }
         return pa;
     }
 
+    /**
+     * This writes all of the values of a fixed-width (numeric) pa to dos 
+     * (in DataOutputStream format), a block at a time.
+     *
+     * @param pa a numeric PrimitiveArray
+     * @param dos the DataOutputStream
+     * @throws Throwable if trouble
+     */
+    protected void writeBlocks(PrimitiveArray pa, DataOutputStream dos) throws Throwable {
+        int n = pa.size();
+        int elementSize = pa.elementSize();
+        int blockNValues = writeBuffer.capacity() / elementSize;
+        for (int po = 0; po < n; po += blockNValues) {
+            int tn = Math.min(blockNValues, n - po);
+            writeBuffer.clear();
+            transferBlock(pa, po, tn, writeBuffer, true);
+            dos.write(writeBuffer.array(), 0, tn * elementSize);
+        }
+    }
+
+    /**
+     * This copies a block of values between the backing array of a numeric pa 
+     * and a ByteBuffer (starting at its current position).
+     *
+     * @param pa a numeric PrimitiveArray
+     * @param po the first index in pa
+     * @param n the number of values to be copied
+     * @param bb the ByteBuffer
+     * @param toBuffer if true, values are copied from pa to bb. If false, from bb to pa.
+     */
+    protected static void transferBlock(PrimitiveArray pa, int po, int n, ByteBuffer bb, 
+        boolean toBuffer) {
+
+        switch (pa.elementType()) {
+            case BYTE:   byte ba[] = ((ByteArray)pa).array;    
+                         if (toBuffer) bb.put(ba, po, n); else bb.get(ba, po, n); 
+                         break;
+            case UBYTE:  byte uba[] = ((UByteArray)pa).array;   
+                         if (toBuffer) bb.put(uba, po, n); else bb.get(uba, po, n); 
+                         break;
+            case SHORT:  short sa[] = ((ShortArray)pa).array;   
+                         if (toBuffer) bb.asShortBuffer().put(sa, po, n); else bb.asShortBuffer().get(sa, po, n); 
+                         break;
+            case USHORT: short usa[] = ((UShortArray)pa).array;   
+                         if (toBuffer) bb.asShortBuffer().put(usa, po, n); else bb.asShortBuffer().get(usa, po, n); 
+                         break;
+            case CHAR:   char ca[] = ((CharArray)pa).array;   
+                         if (toBuffer) bb.asCharBuffer().put(ca, po, n); else bb.asCharBuffer().get(ca, po, n); 
+                         break;
+            case INT:    int ia[] = ((IntArray)pa).array;   
+                         if (toBuffer) bb.asIntBuffer().put(ia, po, n); else bb.asIntBuffer().get(ia, po, n); 
+                         break;
+            case UINT:   int uia[] = ((UIntArray)pa).array;   
+                         if (toBuffer) bb.asIntBuffer().put(uia, po, n); else bb.asIntBuffer().get(uia, po, n); 
+                         break;
+            case LONG:   long la[] = ((LongArray)pa).array;   
+                         if (toBuffer) bb.asLongBuffer().put(la, po, n); else bb.asLongBuffer().get(la, po, n); 
+                         break;
+            case ULONG:  long ula[] = ((ULongArray)pa).array;   
+                         if (toBuffer) bb.asLongBuffer().put(ula, po, n); else bb.asLongBuffer().get(ula, po, n); 
+                         break;
+            case FLOAT:  float fa[] = ((FloatArray)pa).array;   
+                         if (toBuffer) bb.asFloatBuffer().put(fa, po, n); else bb.asFloatBuffer().get(fa, po, n); 
+                         break;
+            case DOUBLE: double da[] = ((DoubleArray)pa).array;   
+                         if (toBuffer) bb.asDoubleBuffer().put(da, po, n); else bb.asDoubleBuffer().get(da, po, n); 
+                         break;
+            default: throw new RuntimeException(String2.ERROR + 
+                " in TableWriterAll.transferBlock: unsupported elementType=" + pa.elementType());
+        }
+    }
+
     /**
      * Call this after finish() to get the data from a DataInputStream 
      * with all of the data for one of the columns.
@@ -320,6 +463,7 @@ public class TableWriterAll extends TableWriter {
                 }
                 columnStreams = null;
             }
+            writeBuffer = null;
 
             //delete the files
             if (columnNames == null)
@@ -345,6 +489,129 @@ public class TableWriterAll extends TableWriter {
         super.finalize();
     }
 
+    /**
+     * This tests that every type of column survives the round trip through
+     * the column files: with small blocks, so there are several full blocks 
+     * and a partial last block, with missing values, and with extreme values. 
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** TableWriterAll.basicTest()");
+        String dir = File2.getSystemTempDirectory();
+        PAType paTypes[] = {PAType.BYTE, PAType.UBYTE, PAType.SHORT, PAType.USHORT, 
+            PAType.CHAR, PAType.INT, PAType.UINT, PAType.LONG, PAType.ULONG, 
+            PAType.FLOAT, PAType.DOUBLE, PAType.STRING};
+        int nColumns = paTypes.length;
+        int chunkNRows[] = {37, 100, 13}; //150 rows
+        int oBlockNBytes = blockNBytes;
+        TableWriterAll twa = new TableWriterAll(null, null, dir, "twaBasicTest");
+        try {
+            blockNBytes = 64; //e.g., 8 doubles per block
+            PrimitiveArray expected[] = new PrimitiveArray[nColumns];
+            for (int col = 0; col < nColumns; col++) 
+                expected[col] = PrimitiveArray.factory(paTypes[col], 150, false);
+            int row = 0;
+            for (int chunk = 0; chunk < chunkNRows.length; chunk++) {
+                Table table = new Table();
+                for (int col = 0; col < nColumns; col++) {
+                    PrimitiveArray pa = PrimitiveArray.factory(paTypes[col], chunkNRows[chunk], false);
+                    for (int i = 0; i < chunkNRows[chunk]; i++) {
+                        int tRow = row + i;
+                        if (tRow % 10 == 3) {
+                            pa.addString("");  //missing value (e.g., MAX_VALUE or NaN)
+                        } else if (tRow % 10 == 7) {
+                            //extreme values
+                            pa.addString(
+                                paTypes[col] == PAType.LONG?   "-9223372036854775807" :
+                                paTypes[col] == PAType.ULONG?  "18446744073709551614" :
+                                paTypes[col] == PAType.FLOAT?  "-3.4028235E38" :
+                                paTypes[col] == PAType.DOUBLE? "1.7976931348623157E308" :
+                                paTypes[col] == PAType.STRING? "a \"quoted\" \u20ac string" :
+                                paTypes[col] == PAType.CHAR?   "\u20ac" :
+                                pa.MINEST_VALUE().toString());  //negative or 0
+                        } else if (paTypes[col] == PAType.CHAR) {
+                            pa.addString("" + (char)('A' + tRow % 26));
+                        } else {
+                            pa.addDouble(tRow % 100 + 
+                                (paTypes[col] == PAType.FLOAT || paTypes[col] == PAType.DOUBLE? 0.25 : 0));
+                        }
+                    }
+                    table.addColumn("c" + paTypes[col], pa);
+                    expected[col].append(pa);
+                }
+                twa.writeSome(table);
+                row += chunkNRows[chunk];
+            }
+            twa.finish();
+            Test.ensureEqual(twa.nRows(), 150, "");
+
+            for (int col = 0; col < nColumns; col++) {
+                String msg = "col=" + col + " type=" + paTypes[col];
+                expected[col].setMaxIsMV(true);
+                Test.ensureEqual(twa.column(col).testEquals(expected[col]), "", msg);
+                Test.ensureEqual(twa.column(col, 70).testEquals(   //ends in a partial block
+                    expected[col].subset(0, 1, 69)), "", msg);
+                Test.ensureEqual(twa.column(col, 1).testEquals(
+                    expected[col].subset(0, 1, 0)), "", msg);
+                Test.ensureEqual(twa.column(col, 1000).testEquals( //more than nRows
+                    expected[col]), "", msg);
+
+                //dataInputStream readers still see the DataOutputStream format
+                PrimitiveArray pa = twa.columnEmptyPA(col);
+                DataInputStream dis = twa.dataInputStream(col);
+                try {
+                    pa.readDis(dis, 150);
+                } finally {
+                    dis.close();
+                }
+                Test.ensureEqual(pa.testEquals(expected[col]), "", msg);
+            }
+        } finally {
+            blockNBytes = oBlockNBytes;
+            twa.releaseResources();
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ TableWriterAll.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
 
 }
 
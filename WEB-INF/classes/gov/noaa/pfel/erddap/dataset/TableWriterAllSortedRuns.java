@@ -0,0 +1,702 @@
+/*
+ * TableWriterAllSortedRuns Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.dataset;
+
+import com.cohort.array.IntArray;
+import com.cohort.array.PrimitiveArray;
+import com.cohort.array.StringArray;
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.SimpleException;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import gov.noaa.pfel.coastwatch.pointdata.Table;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/**
+ * TableWriterAllSortedRuns is the superclass of the TableWriters
+ * (e.g., distinct() and orderBy()) which have to see all of the rows,
+ * sorted, before they can send anything to otherTableWriter.
+ *
+ * <p>TableWriterAll saves everything, then finish() has to make one huge
+ * cumulativeTable (so the whole response has to fit in memory).
+ * Instead, this gathers the incoming rows in an in-memory runTable.
+ * When the runTable gets bigger than runMaxBytes, it is reduced
+ * (sorted and e.g., duplicates removed) and saved as a sorted run
+ * (one DataOutputStream file per column, like TableWriterAll).
+ * finish() then does a k-way merge of the runs and streams the results to
+ * otherTableWriter in chunks, so the memory needed is bounded by runMaxBytes,
+ * not by the size of the response.
+ * If there are too many runs to open at once, they are merged in several passes.
+ *
+ * <p>If all of the data fits in one runTable, nothing is written to disk and
+ * finish() just calls writeAllAndFinish(runTable), as before.
+ *
+ * <p>Chunks sent to otherTableWriter are only split between groups
+ * (see nGroupKeys()), so reduce() of each chunk gives the same results
+ * as reduce() of the whole table would.
+ *
+ * @author agent (agent@local) 2026-10-16
+ */
+public abstract class TableWriterAllSortedRuns extends TableWriterAll {
+
+    /**
+     * The default max number of bytes in an in-memory run
+     * (also used to size the merge's buffers).
+     */
+    public static long defaultRunMaxBytes = Math.max(8 * Math2.BytesPerMB, Math2.maxSafeMemory / 40);
+
+    /**
+     * The max number of run files (nRuns * nColumns) open at once during a merge.
+     * If there are more runs than that, they are merged in several passes.
+     */
+    public static int maxOpenRunFiles = 500;
+
+    //set by constructor
+    protected TableWriter otherTableWriter;
+    protected long runMaxBytes = defaultRunMaxBytes;
+
+    //set firstTime
+    protected int mergeKeys[];     //null if the rows can't be merged (so they are all kept in memory)
+    protected boolean mergeKeysKnown = false;
+
+    //set while running
+    protected Table runTable;      //the rows not yet saved as a run
+    protected ArrayList<long[]> runs = new ArrayList(); //each is [runNumber, nRows]
+    protected int nextRunNumber = 0;
+    protected boolean runMaxIsMV[];  //for each column, true if maxIsMV was ever true in a run
+    protected boolean runsHaveStandardMV = false; //true if some mergeKey mv's were converted to NaN
+
+    /**
+     * The constructor.
+     *
+     * @param tDir a private cache directory for storing the intermediate files,
+     *    usually cacheDirectory(datasetID)
+     * @param tFileNameNoExt is the fileName-safe fileName without dir or extension
+     *    (used as basis for temp files).
+     *     A random number will be added to it for safety.
+     * @param tOtherTableWriter the tableWriter that will receive the results
+     *   of this tableWriter.
+     */
+    public TableWriterAllSortedRuns(EDD tEdd, String tNewHistory, String tDir,
+        String tFileNameNoExt, TableWriter tOtherTableWriter) {
+
+        super(tEdd, tNewHistory, tDir, tFileNameNoExt);
+        otherTableWriter = tOtherTableWriter;
+    }
+
+    /**
+     * This does this TableWriter's work (e.g., sort then remove duplicates) on a table.
+     * This is used on each run before it is saved and on each merged chunk
+     * before it is sent to otherTableWriter.
+     * It must leave the table sorted (ascending) by mergeKeys().
+     *
+     * @param table a table with some or all of the data
+     * @throws Throwable if trouble
+     */
+    protected abstract void reduce(Table table) throws Throwable;
+
+    /**
+     * This returns the column numbers (most important first) that reduce()
+     * sorts by (ascending).
+     * This is called once, after the first call to ensureCompatible.
+     *
+     * @return the merge key column numbers, or null if the runs can't be merged
+     *   (e.g., orderByMax with rounding), in which case all of the rows
+     *   are kept in memory (like TableWriterAll).
+     */
+    protected abstract int[] mergeKeys();
+
+    /**
+     * This returns the number of leading mergeKeys which define a group of
+     * rows that must be given to reduce() together (so a chunk is never split
+     * within a group). 0 means chunks can be split anywhere.
+     *
+     * @param nMergeKeys the number of mergeKeys
+     */
+    protected abstract int nGroupKeys(int nMergeKeys);
+
+    /**
+     * If true, String mergeKeys are compared via compareIgnoreCase
+     * (like Table.sortIgnoreCase).
+     */
+    protected boolean mergeIgnoreCase() {
+        return false;
+    }
+
+    /**
+     * If true, the mergeKey columns' missing values are converted to
+     * standard missing values (e.g., NaN) before a run is reduced and saved
+     * (like Table.orderByMax() does internally), and converted back to fake
+     * missing values in the chunks sent to otherTableWriter.
+     */
+    protected boolean standardizeMergeKeys() {
+        return false;
+    }
+
+    /**
+     * This is a convenience for mergeKeys(): it finds the column numbers
+     * of some columnNames.
+     *
+     * @param names the column names
+     * @return the column numbers, or null if a name isn't a column name
+     *   (e.g., it uses rounding, like time/1day)
+     */
+    protected int[] findColumnNumbers(String names[]) {
+        int cols[] = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            cols[i] = String2.indexOf(columnNames, names[i]);
+            if (cols[i] < 0)
+                return null;
+        }
+        return cols;
+    }
+
+    /**
+     * This sets the max number of bytes in an in-memory run.
+     * This is mostly for testing.
+     */
+    public void setRunMaxBytes(long tRunMaxBytes) {
+        runMaxBytes = Math.max(1, tRunMaxBytes);
+    }
+
+    /** This returns the number of runs which have been saved to disk (so far). */
+    public int nRunsSaved() {
+        return nextRunNumber;
+    }
+
+    /**
+     * This adds the current contents of table (a chunk of data) to the runTable.
+     * If the runTable gets too big, it is reduced and saved as a run.
+     * This calls ensureCompatible each time it is called.
+     * The number of columns, the column names, and the types of columns
+     *   must be the same each time this is called.
+     *
+     * @param table with destinationValues.
+     *   The table should have missing values stored as destinationMissingValues
+     *   or destinationFillValues.
+     * @throws Throwable if trouble
+     */
+    public void writeSome(Table table) throws Throwable {
+        if (table.nRows() == 0)
+            return;
+
+        //ensure the table's structure is the same as before
+        ensureCompatible(table);
+
+        //do firstTime stuff
+        int nColumns = table.nColumns();
+        if (runTable == null)
+            runTable = makeEmptyTable();
+        if (!mergeKeysKnown) {
+            mergeKeys = mergeKeys();
+            mergeKeysKnown = true;
+        }
+
+        //avoid gathering more data than can be held in memory
+        long newNRows = runTable.nRows() + (long)table.nRows();
+        Math2.ensureArraySizeOkay(newNRows, attributeTo);
+        if (mergeKeys == null)
+            Math2.ensureMemoryAvailable(newNRows * 8, attributeTo); //to process one PA
+
+        //append to runTable
+        for (int col = 0; col < nColumns; col++)
+            if (columnMaxIsMV[col])
+                runTable.getColumn(col).setMaxIsMV(true);
+        runTable.append(table);
+        totalNRows += table.nRows();
+
+        //is it time to save a run?
+        if (mergeKeys != null &&
+            (long)runTable.nRows() * runTable.estimatedBytesPerRow() >= runMaxBytes)
+            saveRun();
+    }
+
+    /**
+     * This reduces the runTable and saves it as a run (a set of column files).
+     *
+     * @throws Throwable if trouble
+     */
+    protected void saveRun() throws Throwable {
+        if (runTable == null || runTable.nRows() == 0)
+            return;
+        if (standardizeMergeKeys() &&
+            runTable.temporarilyConvertToStandardMissingValues(mergeKeys))
+            runsHaveStandardMV = true;
+        reduce(runTable);
+
+        int nColumns = runTable.nColumns();
+        if (runMaxIsMV == null)
+            runMaxIsMV = new boolean[nColumns];
+        long run[] = new long[]{nextRunNumber++, runTable.nRows()};
+        runs.add(run);  //add it first, so releaseResources will delete the files if trouble
+        DataOutputStream dos[] = openRun((int)run[0]);
+        try {
+            for (int col = 0; col < nColumns; col++) {
+                PrimitiveArray pa = runTable.getColumn(col);
+                if (pa.getMaxIsMV())
+                    runMaxIsMV[col] = true;
+                pa.writeDos(dos[col]);
+            }
+        } finally {
+            closeRun(dos);
+        }
+        if (reallyVerbose) String2.log("TableWriterAllSortedRuns saved run#" + run[0] +
+            " nRows=" + run[1]);
+        runTable.removeAllRows();
+    }
+
+    /**
+     * This reduces all of the data and sends it to otherTableWriter.
+     * If ignoreFinish=true, nothing will be done.
+     *
+     * @throws Throwable if trouble (e.g., MustBe.THERE_IS_NO_DATA if there is no data)
+     */
+    public void finish() throws Throwable {
+        if (ignoreFinish)
+            return;
+
+        //check for MustBe.THERE_IS_NO_DATA
+        if (runTable == null)
+            throw new SimpleException(MustBe.THERE_IS_NO_DATA + " (nRows = 0)");
+
+        //if everything fit in memory, do it all at once
+        if (runs.size() == 0) {
+            Table table = runTable;
+            runTable = null;
+            releaseResources();
+            writeAllAndFinish(table);
+            return;
+        }
+
+        //else merge the runs
+        try {
+            saveRun();
+            runTable = null;
+            mergeRuns();
+        } finally {
+            releaseResources();
+            otherTableWriter = null;
+        }
+
+        //diagnostic
+        if (verbose)
+            String2.log("TableWriterAllSortedRuns done. nRuns=" + nextRunNumber +
+                " TIME=" + (System.currentTimeMillis() - time) + "ms\n");
+    }
+
+    /**
+     * This merges all of the runs and sends the results to otherTableWriter.
+     * If there are more than maxOpenRunFiles/nColumns runs,
+     * adjacent runs are first merged into bigger runs.
+     * Runs stay in their original order so the merge is stable.
+     *
+     * @throws Throwable if trouble
+     */
+    protected void mergeRuns() throws Throwable {
+        int fanIn = Math.max(2, maxOpenRunFiles / columnNames.length);
+        while (runs.size() > fanIn) {
+            ArrayList<long[]> newRuns = new ArrayList();
+            try {
+                for (int first = 0; first < runs.size(); first += fanIn) {
+                    ArrayList<long[]> someRuns = new ArrayList(
+                        runs.subList(first, Math.min(first + fanIn, runs.size())));
+                    if (someRuns.size() == 1) {
+                        newRuns.add(someRuns.get(0));
+                        continue;
+                    }
+                    long run[] = new long[]{nextRunNumber++, 0};
+                    newRuns.add(run);
+                    DataOutputStream dos[] = openRun((int)run[0]);
+                    try {
+                        run[1] = mergePass(someRuns, dos);
+                    } finally {
+                        closeRun(dos);
+                    }
+                    deleteRuns(someRuns);
+                }
+            } catch (Throwable t) {
+                deleteRuns(newRuns); //releaseResources will delete the others
+                throw t;
+            }
+            runs = newRuns;
+        }
+        mergePass(runs, null);
+    }
+
+    /**
+     * This merges some runs, reduces each chunk, and writes the chunks
+     * to dos (if not null) or to otherTableWriter (and then finishes otherTableWriter).
+     *
+     * @param someRuns the runs to be merged
+     * @param dos the column streams of a new run, or null to write to otherTableWriter
+     * @return the number of rows written
+     * @throws Throwable if trouble
+     */
+    protected long mergePass(ArrayList<long[]> someRuns, DataOutputStream dos[]) throws Throwable {
+        int nRuns = someRuns.size();
+        int nColumns = columnNames.length;
+        int nMergeKeys = mergeKeys.length;
+        int nGroupKeys = nGroupKeys(nMergeKeys);
+        boolean ignoreCase = mergeIgnoreCase();
+        int bytesPerRow = Math.max(1, makeRunTable().estimatedBytesPerRow());
+        int blockNRows = Math2.narrowToInt(Math.max(100,
+            Math.min(Integer.MAX_VALUE / 2, runMaxBytes / (nRuns + 1) / bytesPerRow)));
+
+        RunReader readers[] = new RunReader[nRuns];
+        PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(nRuns,
+            (a, b) -> {
+                int result = compareRows(a.table, a.row, b.table, b.row, nMergeKeys, ignoreCase);
+                return result != 0? result : Integer.compare(a.index, b.index); //stable
+            });
+        long nRowsWritten = 0;
+        boolean sentSome = false;
+        try {
+            for (int r = 0; r < nRuns; r++) {
+                readers[r] = new RunReader(r, someRuns.get(r), blockNRows);
+                if (readers[r].next())
+                    queue.add(readers[r]);
+            }
+
+            Table chunk = makeRunTable();
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+
+                //is chunk full? only split it between groups
+                int chunkNRows = chunk.nRows();
+                if (chunkNRows >= blockNRows &&
+                    (nGroupKeys == 0 ||
+                     compareRows(chunk, chunkNRows - 1, reader.table, reader.row, nGroupKeys, false) != 0)) {
+                    nRowsWritten += writeChunk(chunk, dos, sentSome, false);
+                    sentSome = true;
+                    chunk = makeRunTable();
+                    if (dos == null && otherTableWriter.noMoreDataPlease)
+                        break;
+                }
+
+                //copy the row to chunk
+                for (int col = 0; col < nColumns; col++)
+                    chunk.getColumn(col).addFromPA(reader.table.getColumn(col), reader.row);
+
+                if (reader.next())
+                    queue.add(reader);
+            }
+            nRowsWritten += writeChunk(chunk, dos, sentSome, true);
+        } finally {
+            for (int r = 0; r < nRuns; r++)
+                if (readers[r] != null)
+                    readers[r].close();
+        }
+        return nRowsWritten;
+    }
+
+    /**
+     * This reduces a merged chunk and writes it to dos or otherTableWriter.
+     *
+     * @param chunk the merged rows (it may have 0 rows)
+     * @param dos the column streams of a new run, or null to write to otherTableWriter
+     * @param sentSome true if an earlier chunk was sent to otherTableWriter
+     * @param isLast true if this is the last chunk (so otherTableWriter should be finished)
+     * @return the number of rows written
+     * @throws Throwable if trouble
+     */
+    protected int writeChunk(Table chunk, DataOutputStream dos[], boolean sentSome,
+        boolean isLast) throws Throwable {
+
+        reduce(chunk); //if standardized, reduce leaves mergeKeys as standard mv
+        int nRows = chunk.nRows();
+
+        //write to another run
+        if (dos != null) {
+            for (int col = 0; col < dos.length; col++)
+                chunk.getColumn(col).writeDos(dos[col]);
+            return nRows;
+        }
+
+        //write to otherTableWriter
+        if (runsHaveStandardMV)
+            chunk.temporarilySwitchNaNToFakeMissingValues(mergeKeys);
+        if (!isLast)
+            otherTableWriter.writeSome(chunk);
+        else if (sentSome) {
+            otherTableWriter.writeSome(chunk);
+            otherTableWriter.finish();
+        } else {
+            otherTableWriter.writeAllAndFinish(chunk);
+        }
+        return nRows;
+    }
+
+    /**
+     * This compares row1 of table1 and row2 of table2 based on the first n mergeKeys.
+     *
+     * @return a negative integer, zero, or a positive integer if the row1 is
+     *   less than, equal to, or greater than row2.
+     */
+    protected int compareRows(Table table1, int row1, Table table2, int row2,
+        int nKeys, boolean ignoreCase) {
+        for (int k = 0; k < nKeys; k++) {
+            PrimitiveArray pa1 = table1.getColumn(mergeKeys[k]);
+            PrimitiveArray pa2 = table2.getColumn(mergeKeys[k]);
+            int result = ignoreCase?
+                pa1.compareIgnoreCase(row1, pa2, row2) :
+                pa1.compare(row1, pa2, row2);
+            if (result != 0)
+                return result;
+        }
+        return 0;
+    }
+
+    /**
+     * This makes an empty table for run data, with maxIsMV set
+     * like the columns of the saved runs.
+     */
+    protected Table makeRunTable() {
+        Table table = makeEmptyTable();
+        if (runMaxIsMV != null) {
+            for (int col = 0; col < runMaxIsMV.length; col++)
+                if (runMaxIsMV[col])
+                    table.getColumn(col).setMaxIsMV(true);
+        }
+        return table;
+    }
+
+    /** The name of the file with the data for one column of one run. */
+    public String runFileName(int runNumber, int col) {
+        return dir + fileNameNoExt + "." + randomInt + ".run" + runNumber + "." +
+            String2.encodeFileNameSafe(columnNames[col]) + ".temp";
+    }
+
+    /** This opens the column streams for a new run. */
+    protected DataOutputStream[] openRun(int runNumber) throws Throwable {
+        int nColumns = columnNames.length;
+        DataOutputStream dos[] = new DataOutputStream[nColumns];
+        try {
+            for (int col = 0; col < nColumns; col++)
+                dos[col] = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(runFileName(runNumber, col))));
+        } catch (Throwable t) {
+            closeRun(dos);
+            throw t;
+        }
+        return dos;
+    }
+
+    /** This closes the column streams for a run. This won't throw an exception. */
+    protected void closeRun(DataOutputStream dos[]) {
+        for (int col = 0; col < dos.length; col++) {
+            try {if (dos[col] != null) dos[col].close();} catch (Exception e) {}
+            dos[col] = null;
+        }
+    }
+
+    /** This deletes the files for some runs. This won't throw an exception. */
+    protected void deleteRuns(ArrayList<long[]> someRuns) {
+        if (columnNames == null)
+            return;
+        for (int r = 0; r < someRuns.size(); r++) {
+            int runNumber = (int)someRuns.get(r)[0];
+            for (int col = 0; col < columnNames.length; col++)
+                File2.simpleDelete(runFileName(runNumber, col));
+        }
+    }
+
+    /**
+     * This deletes the run files and the runTable (if any).
+     * This won't throw an exception.
+     */
+    public void releaseResources() {
+        try {
+            runTable = null;
+            deleteRuns(runs);
+            runs.clear();
+        } catch (Throwable t) {
+            String2.log("TableWriterAllSortedRuns.releaseResources caught:\n" + MustBe.throwableToString(t));
+        }
+        super.releaseResources();
+    }
+
+    /**
+     * This reads a run, one block of rows at a time.
+     */
+    protected class RunReader {
+        int index;
+        Table table;
+        int row = -1;
+        long nRowsToRead;
+        int blockNRows;
+        DataInputStream dis[];
+
+        RunReader(int tIndex, long run[], int tBlockNRows) throws Throwable {
+            index = tIndex;
+            nRowsToRead = run[1];
+            blockNRows = tBlockNRows;
+            table = makeRunTable();
+            int nColumns = columnNames.length;
+            dis = new DataInputStream[nColumns];
+            for (int col = 0; col < nColumns; col++)
+                dis[col] = new DataInputStream(File2.getDecompressedBufferedInputStream(
+                    runFileName((int)run[0], col)));
+        }
+
+        /**
+         * This moves to the next row (reading the next block if needed).
+         *
+         * @return false if there are no more rows
+         */
+        boolean next() throws Throwable {
+            row++;
+            if (row < table.nRows())
+                return true;
+            if (nRowsToRead == 0)
+                return false;
+            int n = Math2.narrowToInt(Math.min(nRowsToRead, blockNRows));
+            table.removeAllRows();
+            for (int col = 0; col < dis.length; col++)
+                table.getColumn(col).readDis(dis[col], n);
+            nRowsToRead -= n;
+            row = 0;
+            return true;
+        }
+
+        /** This closes the streams. This won't throw an exception. */
+        void close() {
+            for (int col = 0; col < dis.length; col++) {
+                try {if (dis[col] != null) dis[col].close();} catch (Exception e) {}
+                dis[col] = null;
+            }
+        }
+    }
+
+
+    /**
+     * This tests that the sorted-run merge gets the same results as the in-memory
+     * way for distinct(), orderBy(), orderByMax(), orderByMin(), and orderByClosest().
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** TableWriterAllSortedRuns.basicTest()");
+        String dir = File2.getSystemTempDirectory();
+        int oMaxOpenRunFiles = maxOpenRunFiles;
+        try {
+            maxOpenRunFiles = 8; //with 3 columns: fanIn=2, so multiple merge passes
+            for (int type = 0; type < 5; type++) {
+                for (int nRows = 10000; nRows <= 20000; nRows += 10000) {
+                    TableWriterAll expected = new TableWriterAll(null, null, dir, "twasrExpected");
+                    TableWriterAll observed = new TableWriterAll(null, null, dir, "twasrObserved");
+                    TableWriterAllSortedRuns twInMemory = makeTestTableWriter(type, dir, expected);
+                    TableWriterAllSortedRuns twRuns     = makeTestTableWriter(type, dir, observed);
+                    twRuns.setRunMaxBytes(10000); //~500 rows
+
+                    Math2.setSeed(type * 1000 + nRows);
+                    Table all = makeTestTable(0);
+                    for (int chunk = 0; chunk < nRows / 1000; chunk++) {
+                        Table table = makeTestTable(1000);
+                        all.append(table);
+                        twRuns.writeSome(table);
+                    }
+                    twInMemory.writeAllAndFinish(all);
+                    String expectedString = expected.cumulativeTable().dataToString();
+                    String observedString = null;
+                    try {
+                        twRuns.finish();
+                        observedString = observed.cumulativeTable().dataToString();
+                    } catch (Throwable t) {
+                        observedString = t.toString();
+                    }
+                    String2.log("type=" + type + " nRows=" + nRows +
+                        " nRunsSaved=" + twRuns.nRunsSaved() + " nResults=" + expected.nRows());
+                    Test.ensureEqual(observedString, expectedString,
+                        "type=" + type + " nRows=" + nRows);
+                    Test.ensureTrue(twRuns.nRunsSaved() > 2, "nRunsSaved=" + twRuns.nRunsSaved());
+                    expected.releaseResources();
+                    observed.releaseResources();
+                }
+            }
+        } finally {
+            maxOpenRunFiles = oMaxOpenRunFiles;
+        }
+    }
+
+    /** This makes a test table with some duplicates, mixed case Strings, and missing values. */
+    private static Table makeTestTable(int nRows) {
+        String names[] = {"a", "A", "b", "bb", "B", "c", ""};
+        StringArray sa = new StringArray();
+        IntArray ia = new IntArray();
+        IntArray ta = new IntArray();
+        for (int row = 0; row < nRows; row++) {
+            sa.add(names[Math2.random(names.length)]);
+            ia.add(Math2.random(20) == 0? -999 : Math2.random(100));
+            ta.add(Math2.random(50) * 60);
+        }
+        Table table = new Table();
+        table.addColumn("station", sa);
+        table.addColumn("depth", ia);
+        table.addColumn("time", ta);
+        table.columnAttributes(1).set("missing_value", -999);
+        return table;
+    }
+
+    /** This makes one of the TableWriterAllSortedRuns subclasses for basicTest. */
+    private static TableWriterAllSortedRuns makeTestTableWriter(int type, String dir,
+        TableWriter otherTableWriter) {
+        String name = "twasr" + type;
+        return
+            type == 0? new TableWriterDistinct(      null, null, dir, name, otherTableWriter) :
+            type == 1? new TableWriterOrderBy(       null, null, dir, name, otherTableWriter, "depth") :
+            type == 2? new TableWriterOrderByMax(    null, null, dir, name, otherTableWriter, "station,depth") :
+            type == 3? new TableWriterOrderByMin(    null, null, dir, name, otherTableWriter, "depth,station,time") :
+                       new TableWriterOrderByClosest(null, null, dir, name, otherTableWriter, "station,depth,time,10 minutes");
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ TableWriterAllSortedRuns.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
@@ -36,11 +36,7 @@ import java.util.HashSet;
  *
  * @author Bob Simons (bob.simons@noaa.gov) 2009-05-08
  */
-public class TableWriterDistinct extends TableWriterAll {
-
-
-    //set by constructor
-    protected TableWriter otherTableWriter;
+public class TableWriterDistinct extends TableWriterAllSortedRuns {
 
     /**
      * The constructor.
@@ -56,8 +52,7 @@ public class TableWriterDistinct extends TableWriterAll {
     public TableWriterDistinct(EDD tEdd, String tNewHistory, String tDir, String tFileNameNoExt, 
         TableWriter tOtherTableWriter) {
 
-        super(tEdd, tNewHistory, tDir, tFileNameNoExt); 
-        otherTableWriter = tOtherTableWriter;
+        super(tEdd, tNewHistory, tDir, tFileNameNoExt, tOtherTableWriter); 
     }
 
 
@@ -81,35 +76,13 @@ public class TableWriterDistinct extends TableWriterAll {
 
         //to save memory, this just does a feeble job (remove duplicates from this partial table)
         //  and leaves perfect job to finish()
-        sortAndRemoveDuplicates(table);
+        reduce(table);
 
         //ensure the table's structure is the same as before
-        //and write to dataOutputStreams
+        //and add to the sorted runs
         super.writeSome(table);
     }
 
-    
-    /**
-     * This reconstructs the table, sorts and removes duplicates, and sends table to otherTableWriter.
-     * If ignoreFinish=true, nothing will be done.
-     *
-     * @throws Throwable if trouble (e.g., MustBe.THERE_IS_NO_DATA if there is no data)
-     */
-    public void finish() throws Throwable {
-        if (ignoreFinish)
-            return;
-
-        //close the dataOutputStreams
-        super.finish();  //this throws Throwable if no data
-
-        //makeCumulativeTable
-        Table table = cumulativeTable();   
-        releaseResources();
-
-        //sorts and remove duplicates, and sends table to otherTableWriter.
-        lowFinish(table);
-    }
-
     /**
      * If caller has the entire table, use this instead of repeated writeSome() + finish().
      *
@@ -134,7 +107,7 @@ public class TableWriterDistinct extends TableWriterAll {
             throw new SimpleException(MustBe.THERE_IS_NO_DATA + " (nRows = 0)");
 
         //sortAndRemoveDuplicates
-        sortAndRemoveDuplicates(cumulativeTable);
+        reduce(cumulativeTable);
 
         //write results to otherTableWriter
         otherTableWriter.writeAllAndFinish(cumulativeTable);
@@ -143,13 +116,32 @@ public class TableWriterDistinct extends TableWriterAll {
         otherTableWriter = null;
     }
 
-    private void sortAndRemoveDuplicates(Table table) {
+    /** This sorts the table and removes duplicate rows. */
+    protected void reduce(Table table) {
         //sort
         table.leftToRightSortIgnoreCase(table.nColumns()); 
 
         //removeDuplicates
         table.removeDuplicates();
     }
+
+    /** Runs are merged by all columns. */
+    protected int[] mergeKeys() {
+        int keys[] = new int[columnNames.length];
+        for (int col = 0; col < keys.length; col++)
+            keys[col] = col;
+        return keys;
+    }
+
+    /** Only identical rows must be kept together. */
+    protected int nGroupKeys(int nMergeKeys) {
+        return nMergeKeys;
+    }
+
+    /** leftToRightSortIgnoreCase sorts Strings in a case-insensitive way. */
+    protected boolean mergeIgnoreCase() {
+        return true;
+    }
     
 
 }
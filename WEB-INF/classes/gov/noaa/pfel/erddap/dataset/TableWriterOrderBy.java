@@ -27,10 +27,9 @@ import gov.noaa.pfel.erddap.util.EDStatic;
  *
  * @author Bob Simons (bob.simons@noaa.gov) 2009-05-10
  */
-public class TableWriterOrderBy extends TableWriterAll {
+public class TableWriterOrderBy extends TableWriterAllSortedRuns {
 
     //set by constructor
-    protected TableWriter otherTableWriter;
     public String orderBy[];
 
     /**
@@ -47,8 +46,7 @@ public class TableWriterOrderBy extends TableWriterAll {
     public TableWriterOrderBy(EDD tEdd, String tNewHistory, String tDir, 
         String tFileNameNoExt, TableWriter tOtherTableWriter, String tOrderByCsv) {
 
-        super(tEdd, tNewHistory, tDir, tFileNameNoExt); 
-        otherTableWriter = tOtherTableWriter;
+        super(tEdd, tNewHistory, tDir, tFileNameNoExt, tOtherTableWriter); 
         String err = EDStatic.queryError +
                "No column names were specified for 'orderBy'.";
         if (tOrderByCsv == null || tOrderByCsv.trim().length() == 0)
@@ -64,23 +62,6 @@ public class TableWriterOrderBy extends TableWriterAll {
 
 
 
-    /**
-     * This sorts cumulativeTable, then writes it to otherTableWriter
-     * If ignoreFinish=true, nothing will be done.
-     *
-     * @throws Throwable if trouble (e.g., MustBe.THERE_IS_NO_DATA if there is no data)
-     */
-    public void finish() throws Throwable {
-        if (ignoreFinish) 
-            return;
-
-        super.finish();
-
-        Table cumulativeTable = cumulativeTable();
-        releaseResources();
-        writeAllAndFinish(cumulativeTable);
-    }
-
     /**
      * If caller has the entire table, use this instead of repeated writeSome() + finish().
      * This overwrites the superclass method.
@@ -98,13 +79,14 @@ public class TableWriterOrderBy extends TableWriterAll {
             tCumulativeTable.removeAllRows();
             return;
         }
-        sort(tCumulativeTable);
+        reduce(tCumulativeTable);
         otherTableWriter.writeAllAndFinish(tCumulativeTable);
         otherTableWriter = null;
     }
 
 
-    private void sort(Table table) {
+    /** This sorts the table by the orderBy columns. */
+    protected void reduce(Table table) {
         //ensure orderBy columns are present in results table
         int[] keys = new int[orderBy.length];
         boolean[] ascending = new boolean[orderBy.length];
@@ -119,6 +101,16 @@ public class TableWriterOrderBy extends TableWriterAll {
         table.sort(keys, ascending);  
     }
 
+    /** Runs are merged by the orderBy columns. */
+    protected int[] mergeKeys() {
+        return findColumnNumbers(orderBy);
+    }
+
+    /** Sorted rows can be split anywhere. */
+    protected int nGroupKeys(int nMergeKeys) {
+        return 0;
+    }
+
 
 }
 
@@ -32,11 +32,10 @@ import java.util.BitSet;
  *
  * @author Bob Simons (bob.simons@noaa.gov) 2017-02-21
  */
-public class TableWriterOrderByClosest extends TableWriterAll {
+public class TableWriterOrderByClosest extends TableWriterAllSortedRuns {
 
 
     //set by constructor
-    protected TableWriter otherTableWriter;
     public String orderBy[];     //the orderBy var names. The last one will be a numeric column.
     protected double numberTimeUnits[];  //eg 10 minutes -> [10, 60]
 
@@ -55,8 +54,7 @@ public class TableWriterOrderByClosest extends TableWriterAll {
     public TableWriterOrderByClosest(EDD tEdd, String tNewHistory, String tDir, 
         String tFileNameNoExt, TableWriter tOtherTableWriter, String tOrderByCsv) {
 
-        super(tEdd, tNewHistory, tDir, tFileNameNoExt); 
-        otherTableWriter = tOtherTableWriter;
+        super(tEdd, tNewHistory, tDir, tFileNameNoExt, tOtherTableWriter); 
         if (tOrderByCsv == null || tOrderByCsv.trim().length() == 0)
             throw new SimpleException(EDStatic.queryError + Table.ORDER_BY_CLOSEST_ERROR + 
                 " (no CSV)");
@@ -117,30 +115,28 @@ public class TableWriterOrderByClosest extends TableWriterAll {
         table.orderByClosest(orderBy, numberTimeUnits); //it handles missing_values and _FillValues temporarily
 
         //ensure the table's structure is the same as before
-        //and write to dataOutputStreams
+        //and add to the sorted runs
         super.writeSome(table);
     }
 
-    
-    /**
-     * This finishes orderByMax and writes results to otherTableWriter
-     * If ignoreFinish=true, nothing will be done.
-     *
-     * @throws Throwable if trouble (e.g., EDStatic.THERE_IS_NO_DATA if there is no data)
-     */
-    public void finish() throws Throwable {
-        if (ignoreFinish) 
-            return;
+    /** This does orderByClosest on the table. */
+    protected void reduce(Table table) throws Throwable {
+        table.orderByClosest(orderBy, numberTimeUnits); //it handles missing_values and _FillValues temporarily
+    }
 
-        super.finish();
+    /** Runs are merged by the orderBy columns. */
+    protected int[] mergeKeys() {
+        return findColumnNumbers(orderBy);
+    }
 
-        Table cumulativeTable = cumulativeTable();
-        releaseResources();
-        cumulativeTable.orderByClosest(orderBy, numberTimeUnits); //it handles missing_values and _FillValues temporarily
-        otherTableWriter.writeAllAndFinish(cumulativeTable);
+    /** The rows for each combination of orderBy[0 ... n-2] must be kept together. */
+    protected int nGroupKeys(int nMergeKeys) {
+        return nMergeKeys - 1;
+    }
 
-        //clean up
-        otherTableWriter = null;
+    /** Like Table.orderByClosest, runs are sorted with standard missing values. */
+    protected boolean standardizeMergeKeys() {
+        return true;
     }
 
     /**
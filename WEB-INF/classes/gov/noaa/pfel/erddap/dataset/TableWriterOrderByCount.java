@@ -5,6 +5,8 @@
 package gov.noaa.pfel.erddap.dataset;
 
 import com.cohort.array.Attributes;
+import com.cohort.array.GroupByIndex;
+import com.cohort.array.IntArray;
 import com.cohort.array.PrimitiveArray;
 import com.cohort.util.SimpleException;
 import com.cohort.util.String2;
@@ -113,11 +115,6 @@ public class TableWriterOrderByCount extends TableWriterAll {
             Arrays.stream(orderBy).map((s)->s.split("/")[0]).toArray(size -> new String[size]));
         int nKeyCols = keyCols.length;
 
-        //sort based on keys
-        if (nKeyCols > 0)
-            cumTable.ascendingSort(keyCols); 
-        //String2.log(dataToString());
-
         //note which are keyCol
         boolean isKeyCol[] = new boolean[nCols]; //all false
         for (int kc = 0; kc < nKeyCols; kc++)
@@ -144,31 +141,25 @@ public class TableWriterOrderByCount extends TableWriterAll {
             }
         }
 
-        //walk through the table
-        int resultsRow = -1;
+        //walk through the table, grouping the rows via a hash of the key values
+        PrimitiveArray keyPAs[] = new PrimitiveArray[nKeyCols];
+        for (int kc = 0; kc < nKeyCols; kc++) 
+            keyPAs[kc] = pas[keyCols[kc]];
+        GroupByIndex groupByIndex = new GroupByIndex(keyPAs);
+        IntArray groupRows = new IntArray(); //the row that results for each group are merged onto
         BitSet keep = new BitSet(nRows); //all false
         for (int row = 0; row < nRows; row++) { 
 
-            //isNewGroup?
-            boolean isNewGroup = true;
-            if (row > 0) {
-                isNewGroup = false;
-                if (nKeyCols > 0) {
-                    for (int kc = nKeyCols - 1; kc >= 0; kc--) { //count down more likely to find change sooner
-                        if (pas[keyCols[kc]].compare(row - 1, row) != 0) {
-                            isNewGroup = true;
-                            break;
-                        }
-                    }
-                }
-            }
-            if (isNewGroup) {
-                resultsRow = row;  //results for this group will be merged onto this row
+            int group = groupByIndex.add(keyPAs, row);
+            if (group == groupRows.size()) {
+                //it's a new group
+                groupRows.add(row); 
                 keep.set(row);
                 continue;
             }
 
             //increment count?
+            int resultsRow = groupRows.array[group];
             for (int col = 0; col < nCols; col++) {
                 //String2.log("row=" + row + " col=" + col + "value=\"" + columns.get(col).getString(row) + "\"");
                 if (!isKeyCol[col]) {
@@ -178,8 +169,10 @@ public class TableWriterOrderByCount extends TableWriterAll {
             }
         }
 
-        //just keep new group 
+        //just keep new group, then sort based on keys
         cumTable.justKeep(keep);
+        if (nKeyCols > 0)
+            cumTable.ascendingSort(keyCols); 
 
         //send results to otherTableWriter;
         otherTableWriter.writeAllAndFinish(cumTable);
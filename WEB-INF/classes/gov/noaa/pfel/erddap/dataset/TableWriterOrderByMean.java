@@ -14,10 +14,11 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.cohort.array.Attributes;
+import com.cohort.array.DoubleArray;
+import com.cohort.array.GroupByIndex;
 import com.cohort.array.IntArray;
 import com.cohort.array.PAType;
 import com.cohort.array.PrimitiveArray;
-import com.cohort.array.StringArray;
 import com.cohort.util.Calendar2;
 import com.cohort.util.Math2;
 import com.cohort.util.SimpleException;
@@ -48,12 +49,12 @@ public class TableWriterOrderByMean extends TableWriterAll {
     //set by constructor
     protected final TableWriter otherTableWriter;
     public String orderBy[];
-    // maintains count of the number of values in average
-    protected final Map<String,int[]> counts = new HashMap<String,int[]>();
-    protected final Map<String,Integer> rowmap = new HashMap<String,Integer>();
-    // used when calculating degree means at the end, one key for each row.
-    protected final StringArray keymap = new StringArray();
-    protected final Map<String,DegreesAccumulator> degreesMap = new HashMap<String,DegreesAccumulator>();
+    // finds the group (and so the meansTable row) for each combination of key values
+    protected GroupByIndex groupByIndex = null;
+    // maintains count of the number of values in average, [col] has a value for each group
+    protected IntArray counts[] = null;
+    // used when calculating degree means at the end, [col] is null if not a degrees column
+    protected DegreesAccumulator degreesAccums[] = null;
 
     protected Attributes oColumnAtts[] = null; //from incoming table or edd
     
@@ -138,48 +139,63 @@ public class TableWriterOrderByMean extends TableWriterAll {
             //note that metadata hasn't been changed yet
         }
 
-        StringBuilder sbKey = new StringBuilder();
-        double[] roundedValue = new double[nCols];
+        //make the key columns: numeric keys are (possibly rounded) nice doubles
+        int nKeyCols = keyCols.length;
+        PrimitiveArray keyPAs[] = new PrimitiveArray[nKeyCols];
         BitSet isRounded = new BitSet(nCols);
-        ROW:
-        for (int row = 0; row < nRows; row++) {
-            sbKey.setLength(0);
-            for (int i=0; i<keyCols.length; i++) {
-                int col = keyCols[i];
-                PrimitiveArray column = table.getColumn(col);
-                String columnName = table.getColumnName(col);
-                if (column.isFloatingPointType() || column.isIntegerType()) {
+        BitSet skipRow = new BitSet(nRows);
+        for (int i=0; i<nKeyCols; i++) {
+            int col = keyCols[i];
+            PrimitiveArray column = table.getColumn(col);
+            String columnName = table.getColumnName(col);
+            if (column.isFloatingPointType() || column.isIntegerType()) {
+                Table.Rounder rounder = rounders.get(columnName);
+                double values[] = new double[nRows];
+                for (int row = 0; row < nRows; row++) {
                     double value = column.getNiceDouble(row);
-                    if (rounders.containsKey(columnName)) {
+                    if (rounder != null) {
                         if (Double.isNaN(value)) {
                             // No value, cannot group by this...
-                            continue ROW;
+                            skipRow.set(row);
+                            continue;
                         }
-                        value = rounders.get(columnName).round(value);
-                        isRounded.set(col);
-                        roundedValue[col] = value;
+                        value = rounder.round(value);
                     }
-                    sbKey.append(value);
-                } else {
-                    sbKey.append(column.getString(row));
+                    values[row] = value;
                 }
-                sbKey.append(":");
+                if (rounder != null) 
+                    isRounded.set(col);
+                keyPAs[i] = new DoubleArray(values);
+            } else {
+                keyPAs[i] = column;
             }
-            String key = sbKey.toString();
-            int[] tCounts = counts.get(key);
-            if (tCounts == null) {
-                tCounts = new int[nCols];
-                int idx = counts.size();
-                counts.put(key, tCounts);
+        }
+        if (groupByIndex == null) {
+            groupByIndex = new GroupByIndex(keyPAs);
+            counts = new IntArray[nCols];
+            degreesAccums = new DegreesAccumulator[nCols];
+            for (int col=0;col<nCols;col++) {
+                counts[col] = new IntArray();
+                if (degreesTrueCol.get(col) || degreesCol.get(col))
+                    degreesAccums[col] = new DegreesAccumulator(degreesTrueCol.get(col));
+            }
+        }
+
+        for (int row = 0; row < nRows; row++) {
+            if (skipRow.get(row))
+                continue;
+            int idx = groupByIndex.add(keyPAs, row);
+            if (idx == meansTable.nRows()) {
+                //it's a new group
                 for (int col=0;col<nCols;col++) {
                     PrimitiveArray column = table.getColumn(col);
                     String value = column.getRawString(row);
                     meansTable.getColumn(col).addString(value);
+                    counts[col].add(0);
+                    if (degreesAccums[col] != null)
+                        degreesAccums[col].addGroup();
                 }
-                rowmap.put(key, idx);
-                keymap.add(key);
             }
-            int idx = rowmap.get(key);
             for (int col=0;col<nCols;col++) {
                 PrimitiveArray column = table.getColumn(col);
                 if (cannotMeanCol.get(col)) {
@@ -195,32 +211,37 @@ public class TableWriterOrderByMean extends TableWriterAll {
                     meansTable.setStringData(col, idx, column.getRawString(row));
                     continue;
                 }
-                double value = isRounded.get(col) ? roundedValue[col] : table.getNiceDoubleData(col, row);
+                double value = isRounded.get(col) ? keyPAs[keyIndex(col)].getDouble(row) : table.getNiceDoubleData(col, row);
                 if (Double.isNaN(value)) {
                     continue;
                 }
                 //String2.log(">> row=" + row + " col=" + col + " val=" + value + " mean=" + mean);
-                if (degreesTrueCol.get(col)) {
-                    accumulateDegreesTrue(key + ":" + col, value);
+                if (degreesAccums[col] != null) {
+                    //String2.log(">> accumulateDegrees idx=" + idx + " col=" + col + " value=" + value);
+                    degreesAccums[col].add(idx, value);
                     continue;
                 }
-                if (degreesCol.get(col)) {
-                    accumulateDegrees(key + ":" + col, value);
-                    continue;
-                }
-                tCounts[col] += 1;
-                if (tCounts[col] == 1) {
+                int tCount = ++counts[col].array[idx];
+                if (tCount == 1) {
                     meansTable.setDoubleData(col, idx, value);
                     continue;
                 }
                 double mean = meansTable.getDoubleData(col, idx);
-                mean += (value-mean)/tCounts[col];
+                mean += (value-mean)/tCount;
                 meansTable.setDoubleData(col, idx, mean);
             }
         }
     }
     
 
+    /** This returns the index in keyCols of col (which must be a key column). */
+    private int keyIndex(int col) {
+        for (int i = 0; i < keyCols.length; i++)
+            if (keyCols[i] == col)
+                return i;
+        return -1;
+    }
+
     private boolean isTimeColumn(Table table, int col) {
         String units = table.columnAttributes(col).getString("units");
         return "time".equals(table.getColumnName(col)) || EDV.TIME_UNITS.equals(units);
@@ -346,79 +367,62 @@ public class TableWriterOrderByMean extends TableWriterAll {
     }
 
 
-    private void accumulateDegrees(String key, double value) {
-        DegreesAccumulator accum = degreesMap.get(key);
-        if (accum == null) {
-            accum = new DegreesAccumulator(false); //not degrees true
-            degreesMap.put(key, accum);
-        }
-        //String2.log(">> accumulateDegrees " + key + " value=" + value);
-        accum.add(value);
-    }
-
-    private void accumulateDegreesTrue(String key, double value) {
-        DegreesAccumulator accum = degreesMap.get(key);
-        if (accum == null) {
-            accum = new DegreesAccumulator(true); //is degrees true
-            degreesMap.put(key, accum);
-        }
-        //String2.log(">> accumulateDegrees " + key + " value=" + value);
-        accum.add(value);
-    }
-
-
-    
     private void calculateDegreeMeans() {
-        if (meansTable == null || (degreesCol.isEmpty() && degreesTrueCol.isEmpty())) {
+        if (meansTable == null || degreesAccums == null) {
             return;
         }
         int ncols = meansTable.nColumns();
         for (int col=0; col<ncols;col++) {
-            if (degreesCol.get(col) ||
-                degreesTrueCol.get(col)) {
+            DegreesAccumulator accum = degreesAccums[col];
+            if (accum != null) {
                 int nRows = meansTable.nRows();
                 for (int row = 0; row < nRows; row++) {
-                    String key = keymap.get(row)+":"+col;
-                    DegreesAccumulator accum = degreesMap.get(key); //will be null if 0 values for that group
-                    meansTable.setDoubleData(col, row, 
-                        accum == null? Double.NaN : accum.getMean());
-                    //String2.log(">> " + key + " row=" + row + (accum == null? " null" : " mean=" + accum.getMean()));
-                    //if (accum != null) 
-                    //    meansTable.setDoubleData(col, row, accum.getMean());
+                    //NaN if 0 values for that group
+                    meansTable.setDoubleData(col, row, accum.getMean(row));
+                    //String2.log(">> col=" + col + " row=" + row + " mean=" + accum.getMean(row));
                 }
             }
         }        
     }
 
+    /** This accumulates the mean angle of one degrees column for each group. */
     private class DegreesAccumulator{
         boolean isDegreesTrue;
-        boolean allSame = true;
-        double deg = Double.NaN; //the value if allSame
-        double meanx = Double.NaN;
-        double meany = Double.NaN;
-        int count = 0;
+        BitSet notAllSame = new BitSet();
+        DoubleArray deg = new DoubleArray(); //the value if allSame
+        DoubleArray meanx = new DoubleArray();
+        DoubleArray meany = new DoubleArray();
+        IntArray count = new IntArray();
         //constructor
         DegreesAccumulator(boolean tIsDegreesTrue) {
             isDegreesTrue = tIsDegreesTrue;
         }
-        void add(double angleDegrees) {
-            count++;
+        void addGroup() {
+            deg.add(Double.NaN);
+            meanx.add(Double.NaN);
+            meany.add(Double.NaN);
+            count.add(0);
+        }
+        void add(int group, double angleDegrees) {
+            int tCount = ++count.array[group];
             double angleR = Math.toRadians(angleDegrees);
-            if (count == 1) {
-                deg = angleDegrees;
-                meanx = Math.cos(angleR);
-                meany = Math.sin(angleR);
+            if (tCount == 1) {
+                deg.array[group] = angleDegrees;
+                meanx.array[group] = Math.cos(angleR);
+                meany.array[group] = Math.sin(angleR);
             } else {
-                if (allSame && angleDegrees != deg)
-                    allSame = false;
-                meanx += (Math.cos(angleR) - meanx) / count;
-                meany += (Math.sin(angleR) - meany) / count;
+                if (angleDegrees != deg.array[group])
+                    notAllSame.set(group);
+                meanx.array[group] += (Math.cos(angleR) - meanx.array[group]) / tCount;
+                meany.array[group] += (Math.sin(angleR) - meany.array[group]) / tCount;
             }
         }
-        public double getMean() {
-            if (count == 0)
+        public double getMean(int group) {
+            if (count.array[group] == 0)
                 return Double.NaN;
-            double d = allSame? deg : Math.toDegrees(Math.atan2(meany, meanx));
+            double d = notAllSame.get(group)? 
+                Math.toDegrees(Math.atan2(meany.array[group], meanx.array[group])) :
+                deg.array[group];
             return isDegreesTrue? Math2.angle0360(d) : Math2.anglePM180(d);
         }
     }
@@ -465,9 +469,9 @@ public class TableWriterOrderByMean extends TableWriterAll {
 
         //clean up
         meansTable = null;
-        degreesMap.clear();
-        counts.clear();
-        rowmap.clear();
+        groupByIndex = null;
+        counts = null;
+        degreesAccums = null;
     }
 
 
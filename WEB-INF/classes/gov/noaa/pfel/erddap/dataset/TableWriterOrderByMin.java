@@ -32,11 +32,10 @@ import java.util.regex.Pattern;
  *
  * @author Bob Simons (bob.simons@noaa.gov) 2009-05-13
  */
-public class TableWriterOrderByMin extends TableWriterAll {
+public class TableWriterOrderByMin extends TableWriterAllSortedRuns {
 
 
     //set by constructor
-    protected TableWriter otherTableWriter;
     public String orderBy[];
 
     /**
@@ -53,8 +52,7 @@ public class TableWriterOrderByMin extends TableWriterAll {
     public TableWriterOrderByMin(EDD tEdd, String tNewHistory, String tDir, 
         String tFileNameNoExt, TableWriter tOtherTableWriter, String tOrderByCsv) {
 
-        super(tEdd, tNewHistory, tDir, tFileNameNoExt); 
-        otherTableWriter = tOtherTableWriter;
+        super(tEdd, tNewHistory, tDir, tFileNameNoExt, tOtherTableWriter); 
         String err = EDStatic.queryError + 
             "No column names were specified for 'orderByMin'.";
         if (tOrderByCsv == null || tOrderByCsv.trim().length() == 0)
@@ -90,30 +88,31 @@ public class TableWriterOrderByMin extends TableWriterAll {
         table.orderByMin(orderBy); //this handles missingValues and _FillValues temporarily
 
         //ensure the table's structure is the same as before
-        //and write to dataOutputStreams
+        //and add to the sorted runs
         super.writeSome(table);
     }
 
-    
-    /**
-     * This finishes orderByMin and writes results to otherTableWriter
-     * If ignoreFinish=true, nothing will be done.
-     *
-     * @throws Throwable if trouble (e.g., EDStatic.THERE_IS_NO_DATA if there is no data)
-     */
-    public void finish() throws Throwable {
-        if (ignoreFinish) 
-            return;
+    /** This does orderByMin on the table. */
+    protected void reduce(Table table) throws Throwable {
+        table.orderByMin(orderBy); //this handles missingValues and _FillValues temporarily
+    }
 
-        super.finish();
+    /** 
+     * Runs are merged by the orderBy columns. 
+     * With rounding (e.g., time/1day), the rows are all kept in memory.
+     */
+    protected int[] mergeKeys() {
+        return findColumnNumbers(orderBy);
+    }
 
-        Table cumulativeTable = cumulativeTable();
-        releaseResources();
-        cumulativeTable.orderByMin(orderBy); //this handles missingValues and _FillValues temporarily
-        otherTableWriter.writeAllAndFinish(cumulativeTable);
+    /** The rows for each combination of orderBy[0 ... n-2] must be kept together. */
+    protected int nGroupKeys(int nMergeKeys) {
+        return nMergeKeys - 1;
+    }
 
-        //clean up
-        otherTableWriter = null;
+    /** Like Table.orderByMin, runs are sorted with standard missing values. */
+    protected boolean standardizeMergeKeys() {
+        return true;
     }
 
     /**
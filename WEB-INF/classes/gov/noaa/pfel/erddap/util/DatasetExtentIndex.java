@@ -0,0 +1,427 @@
+/*
+ * DatasetExtentIndex Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.array.StringArray;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is an R-tree of the datasets' longitude, latitude, and time extents,
+ * used by Advanced Search (Erddap.doAdvancedSearch) to find the datasets
+ * which may intersect a lon/lat/time query, so that only those datasets need
+ * to be tested.
+ *
+ * <p>The tree is STR-packed (Sort-Tile-Recursive): the boxes are sorted
+ * by lon into slabs, each slab is sorted by lat into slabs,
+ * each of those is sorted by time, and then consecutive boxes are grouped into
+ * leaf nodes (and consecutive nodes into higher level nodes).
+ * An instance is immutable (so thread safe). When something changes,
+ * the caller makes a new instance (that is fast, even for 10,000's of datasets).
+ *
+ * <p>Any change to the datasets' extents must be noted via noteChange(),
+ * e.g., when LoadDatasets adds or removes a dataset and when EDV's
+ * destinationMin or destinationMax changes (e.g., when a dataset is updated).
+ * An index is only used if there have been no changes since it was made
+ * (see isCurrent).
+ * Since a changed EDV may not be in place in its dataset yet when noteChange()
+ * is called, a new index is only made after the changes have settled
+ * (see hasSettled); until then, the caller tests all of the datasets.
+ *
+ * <p>Boxes with an unknown extent (e.g., no lon variable or a NaN destinationMin)
+ * must use -Double.MAX_VALUE and Double.MAX_VALUE (so the tree will never exclude them),
+ * so the caller must still test each candidate dataset.
+ *
+ * @author agent (agent@local) 2026-10-17
+ */
+public class DatasetExtentIndex {
+
+    /** The maximum number of children of each node. */
+    public final static int NODE_SIZE = 16;
+
+    /** A new index is only made if there have been no changes for this many ms. */
+    public final static long SETTLE_MILLIS = 5000;
+
+    /** The values in each box: minLon, maxLon, minLat, maxLat, minTime, maxTime. */
+    public final static int BOX_SIZE = 6;
+
+    private static AtomicLong changeCount = new AtomicLong();
+    private static volatile long lastChangeMillis = 0;
+
+    /** The changeCount when this index was made. */
+    protected final long madeAtChangeCount;
+    /** The datasetIDs, in the order of the leaves. */
+    protected final String datasetIDs[];
+    /** The boxes (BOX_SIZE values each), in the order of the leaves. */
+    protected final double boxes[];
+    /** levels[0] has the boxes of the nodes with datasets as children;
+     *  levels[levels.length - 1] has the box of the root node. */
+    protected final double levels[][];
+
+    /**
+     * This notes that a dataset's extent may have changed
+     * (or that a dataset has been added or removed).
+     */
+    public static void noteChange() {
+        changeCount.incrementAndGet();
+        lastChangeMillis = System.currentTimeMillis();
+    }
+
+    /** This returns the number of changes so far. */
+    public static long changeCount() {
+        return changeCount.get();
+    }
+
+    /** This indicates if there have been no changes for SETTLE_MILLIS. */
+    public static boolean hasSettled() {
+        return System.currentTimeMillis() - lastChangeMillis >= SETTLE_MILLIS;
+    }
+
+    /**
+     * This makes an index.
+     *
+     * @param tChangeCount the changeCount() from just before the datasets'
+     *   extents were gathered
+     * @param tDatasetIDs the datasetIDs
+     * @param tBoxes the boxes (BOX_SIZE values for each datasetID).
+     *   For unknown values, use -Double.MAX_VALUE (for mins) and Double.MAX_VALUE (for maxs).
+     */
+    public DatasetExtentIndex(long tChangeCount, StringArray tDatasetIDs, double tBoxes[]) {
+        madeAtChangeCount = tChangeCount;
+        int n = tDatasetIDs.size();
+        Test.ensureEqual(tBoxes.length, n * BOX_SIZE, "tBoxes.length != nDatasetIDs * BOX_SIZE");
+
+        //sort (STR)
+        Integer order[] = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        strSort(order, 0, n, tBoxes, 0, 3);
+
+        datasetIDs = new String[n];
+        boxes = new double[n * BOX_SIZE];
+        for (int i = 0; i < n; i++) {
+            datasetIDs[i] = tDatasetIDs.get(order[i]);
+            System.arraycopy(tBoxes, order[i] * BOX_SIZE, boxes, i * BOX_SIZE, BOX_SIZE);
+        }
+
+        //make the levels of nodes
+        int nLevels = 1;
+        for (int nNodes = (n + NODE_SIZE - 1) / NODE_SIZE; nNodes > 1; nNodes = (nNodes + NODE_SIZE - 1) / NODE_SIZE)
+            nLevels++;
+        levels = new double[nLevels][];
+        double children[] = boxes;
+        for (int level = 0; level < nLevels; level++) {
+            levels[level] = unionOfGroups(children);
+            children = levels[level];
+        }
+    }
+
+    /**
+     * This sorts part of order by the center of dimension dim,
+     * cuts it into slabs, and sorts each slab by the next dimension.
+     */
+    private static void strSort(Integer order[], int from, int to,
+        double tBoxes[], int dim, int nDims) {
+
+        int n = to - from;
+        if (n <= 1)
+            return;
+        Arrays.sort(order, from, to, (a, b) -> Double.compare(
+            center(tBoxes, a, dim), center(tBoxes, b, dim)));
+        if (dim == nDims - 1)
+            return;
+
+        //each slab has about nSlabs^(nDims - dim - 1) leaves
+        int nLeaves = (n + NODE_SIZE - 1) / NODE_SIZE;
+        int nSlabs = Math.max(1, (int)Math.ceil(Math.pow(nLeaves, 1.0 / (nDims - dim))));
+        int slabSize = ((nLeaves + nSlabs - 1) / nSlabs) * NODE_SIZE;
+        for (int start = from; start < to; start += slabSize)
+            strSort(order, start, Math.min(to, start + slabSize), tBoxes, dim + 1, nDims);
+    }
+
+    /** This returns the center of one dimension of a box (unknown values are treated as 0). */
+    private static double center(double tBoxes[], int which, int dim) {
+        double min = tBoxes[which * BOX_SIZE + 2 * dim];
+        double max = tBoxes[which * BOX_SIZE + 2 * dim + 1];
+        if (min == -Double.MAX_VALUE) min = 0;
+        if (max ==  Double.MAX_VALUE) max = 0;
+        return (min + max) / 2;
+    }
+
+    /** This returns the union of each group of NODE_SIZE boxes. */
+    private static double[] unionOfGroups(double children[]) {
+        int nChildren = children.length / BOX_SIZE;
+        int nNodes = (nChildren + NODE_SIZE - 1) / NODE_SIZE;
+        double nodes[] = new double[nNodes * BOX_SIZE];
+        for (int node = 0; node < nNodes; node++) {
+            int nb = node * BOX_SIZE;
+            for (int d = 0; d < BOX_SIZE; d += 2) {
+                nodes[nb + d]     =  Double.MAX_VALUE;
+                nodes[nb + d + 1] = -Double.MAX_VALUE;
+            }
+            int last = Math.min(nChildren, (node + 1) * NODE_SIZE);
+            for (int child = node * NODE_SIZE; child < last; child++) {
+                int cb = child * BOX_SIZE;
+                for (int d = 0; d < BOX_SIZE; d += 2) {
+                    nodes[nb + d]     = Math.min(nodes[nb + d],     children[cb + d]);
+                    nodes[nb + d + 1] = Math.max(nodes[nb + d + 1], children[cb + d + 1]);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /** This indicates if there have been no changes since this index was made. */
+    public boolean isCurrent() {
+        return changeCount.get() == madeAtChangeCount;
+    }
+
+    /** This returns the number of datasets in the index. */
+    public int size() {
+        return datasetIDs.length;
+    }
+
+    /**
+     * This finds the datasets whose boxes intersect the query.
+     * For lon, if minLon and maxLon are both specified, this also finds
+     * datasets whose lon range intersects the query when shifted by +/-360
+     * (see lonOverlaps).
+     *
+     * @param minLon  NaN if not specified.  Similarly for the other values.
+     * @return the sorted datasetIDs of the candidate datasets
+     *    (which must still be tested, since unknown extents always intersect)
+     */
+    public StringArray candidates(double minLon, double maxLon, double minLat, double maxLat,
+        double minTime, double maxTime) {
+
+        double query[] = {
+            Double.isNaN(minLon)?  -Double.MAX_VALUE : minLon,
+            Double.isNaN(maxLon)?   Double.MAX_VALUE : maxLon,
+            Double.isNaN(minLat)?  -Double.MAX_VALUE : minLat,
+            Double.isNaN(maxLat)?   Double.MAX_VALUE : maxLat,
+            Double.isNaN(minTime)? -Double.MAX_VALUE : minTime,
+            Double.isNaN(maxTime)?  Double.MAX_VALUE : maxTime};
+        boolean found[] = new boolean[datasetIDs.length];
+        int nShifts = Double.isNaN(minLon) || Double.isNaN(maxLon)? 0 : 1;
+        for (int shift = -nShifts; shift <= nShifts; shift++) {
+            double tQuery[] = query.clone();
+            tQuery[0] = query[0] + 360 * shift;
+            tQuery[1] = query[1] + 360 * shift;
+            search(levels.length - 1, 0, tQuery, found);
+        }
+
+        StringArray results = new StringArray();
+        for (int i = 0; i < found.length; i++)
+            if (found[i])
+                results.add(datasetIDs[i]);
+        results.sort();
+        return results;
+    }
+
+    /** This searches the children of the node. */
+    private void search(int level, int node, double query[], boolean found[]) {
+        double children[] = level == 0? boxes : levels[level - 1];
+        int nChildren = children.length / BOX_SIZE;
+        int last = Math.min(nChildren, (node + 1) * NODE_SIZE);
+        for (int child = node * NODE_SIZE; child < last; child++) {
+            if (!intersects(children, child, query))
+                continue;
+            if (level == 0)
+                found[child] = true;
+            else search(level - 1, child, query, found);
+        }
+    }
+
+    /** This indicates if a box intersects the query (in all dimensions). */
+    private static boolean intersects(double tBoxes[], int which, double query[]) {
+        int b = which * BOX_SIZE;
+        for (int d = 0; d < BOX_SIZE; d += 2) {
+            if (query[d] > tBoxes[b + d + 1] || query[d + 1] < tBoxes[b + d])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * This indicates if a lon query intersects a dataset's lon range.
+     * If the query has a min and a max, the dataset's lon range is also tried
+     * shifted by -360 and +360, so that, e.g., a -180 to 180 query
+     * will find datasets with 0 to 360 longitudes (and vice versa).
+     *
+     * @param minLon the query's min (NaN if not specified)
+     * @param maxLon the query's max (NaN if not specified)
+     * @param datasetMin the dataset's lon destinationMin (may be NaN)
+     * @param datasetMax the dataset's lon destinationMax (may be NaN)
+     * @return true if they intersect
+     */
+    public static boolean lonOverlaps(double minLon, double maxLon,
+        double datasetMin, double datasetMax) {
+
+        if (!Double.isNaN(minLon) && Double.isNaN(datasetMax))
+            return false;
+        if (!Double.isNaN(maxLon) && Double.isNaN(datasetMin))
+            return false;
+        if (Double.isNaN(minLon) || Double.isNaN(maxLon))
+            return (Double.isNaN(minLon) || minLon <= datasetMax) &&
+                   (Double.isNaN(maxLon) || maxLon >= datasetMin);
+        for (int shift = -360; shift <= 360; shift += 360) {
+            if (minLon <= datasetMax + shift && maxLon >= datasetMin + shift)
+                return true;
+        }
+        return false;
+    }
+
+    /** This returns a short description of the index. */
+    public String toString() {
+        return "DatasetExtentIndex nDatasets=" + datasetIDs.length + " nLevels=" + levels.length +
+            " current=" + isCurrent();
+    }
+
+    /**
+     * This tests the basic methods.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** DatasetExtentIndex.basicTest");
+        double M = Double.MAX_VALUE, N = Double.NaN;
+
+        //lonOverlaps
+        Test.ensureEqual(lonOverlaps(-135, -120, -180, 180), true, "");
+        Test.ensureEqual(lonOverlaps(-135, -120, 0, 360), true, "");    //shifted -360
+        Test.ensureEqual(lonOverlaps(-135, -120, 100, 120), false, "");
+        Test.ensureEqual(lonOverlaps(200, 220, -180, 180), true, "");   //shifted +360
+        Test.ensureEqual(lonOverlaps(-175, -170, 170, 190), true, "");  //crosses the date line
+        Test.ensureEqual(lonOverlaps(N, -10, 100, 120), false, "");     //one-sided queries aren't shifted
+        Test.ensureEqual(lonOverlaps(N, 110, 100, 120), true, "");
+        Test.ensureEqual(lonOverlaps(130, N, 100, 120), false, "");
+        Test.ensureEqual(lonOverlaps(N, N, N, N), true, "");
+        Test.ensureEqual(lonOverlaps(0, 10, N, N), false, "");
+
+        StringArray ids = new StringArray(new String[]{"global360", "global180", "westUS",
+            "asia", "noLon", "recent", "old"});
+        double boxes[] = {
+               0, 360,  -90, 90, 0, 1e9,
+            -180, 180,  -90, 90, 0, 1e9,
+            -130, -115,  30, 50, 0, 1e9,
+             100, 120,   20, 40, 0, 1e9,
+              -M, M,     -M, M,  0, 1e9,
+            -180, 180,  -90, 90, 1.5e9, M,
+            -180, 180,  -90, 90, -1e9, -5e8};
+        DatasetExtentIndex index = new DatasetExtentIndex(changeCount(), ids, boxes);
+        Test.ensureEqual(index.candidates(-135, -120, 35, 40, N, N).toString(),
+            "global180, global360, noLon, old, recent, westUS", "");
+        Test.ensureEqual(index.candidates(-135, -120, 35, 40, 1.6e9, N).toString(),
+            "recent", "");
+        Test.ensureEqual(index.candidates(105, 110, N, N, N, 0).toString(),
+            "asia, global180, global360, noLon, old", "");
+        Test.ensureEqual(index.candidates(N, N, 45, N, N, N).toString(),
+            "global180, global360, noLon, old, recent, westUS", "");
+        Test.ensureEqual(index.isCurrent(), true, "");
+        noteChange();
+        Test.ensureEqual(index.isCurrent(), false, "");
+        Test.ensureEqual(hasSettled(), false, "");
+    }
+
+    /**
+     * This compares the candidates from a big index with a linear search.
+     */
+    public static void testRandom() throws Throwable {
+        String2.log("\n*** DatasetExtentIndex.testRandom");
+        Random random = new Random(1);
+        int n = 20000;
+        StringArray ids = new StringArray();
+        double boxes[] = new double[n * BOX_SIZE];
+        for (int i = 0; i < n; i++) {
+            ids.add("d" + i);
+            double lon = random.nextDouble() * 540 - 180;
+            double lat = random.nextDouble() * 180 - 90;
+            double time = random.nextDouble() * 2e9;
+            double b[] = {lon, lon + random.nextDouble() * 30, lat, lat + random.nextDouble() * 20,
+                time, time + random.nextDouble() * 1e8};
+            if (random.nextInt(50) == 0) { b[0] = -Double.MAX_VALUE; b[1] = Double.MAX_VALUE; }
+            if (random.nextInt(50) == 0) { b[5] = Double.MAX_VALUE; }
+            System.arraycopy(b, 0, boxes, i * BOX_SIZE, BOX_SIZE);
+        }
+        long time = System.currentTimeMillis();
+        DatasetExtentIndex index = new DatasetExtentIndex(changeCount(), ids, boxes);
+        String2.log("  made " + index + " in " + (System.currentTimeMillis() - time) + "ms");
+
+        long indexTime = 0;
+        int nFound = 0;
+        for (int q = 0; q < 500; q++) {
+            double minLon = random.nextDouble() * 360 - 180;
+            double maxLon = minLon + random.nextDouble() * 20;
+            double minLat = random.nextDouble() * 180 - 90;
+            double maxLat = minLat + random.nextDouble() * 10;
+            double minTime = random.nextInt(3) == 0? Double.NaN : random.nextDouble() * 2e9;
+            double maxTime = Double.isNaN(minTime)? Double.NaN : minTime + 1e8;
+            if (random.nextInt(5) == 0) maxLon = Double.NaN;
+
+            time = System.currentTimeMillis();
+            StringArray results = index.candidates(minLon, maxLon, minLat, maxLat, minTime, maxTime);
+            indexTime += System.currentTimeMillis() - time;
+
+            StringArray expected = new StringArray();
+            for (int i = 0; i < n; i++) {
+                int b = i * BOX_SIZE;
+                if (lonOverlaps(minLon, maxLon, boxes[b], boxes[b + 1]) &&
+                    minLat <= boxes[b + 3] && maxLat >= boxes[b + 2] &&
+                    (Double.isNaN(minTime) || minTime <= boxes[b + 5]) &&
+                    (Double.isNaN(maxTime) || maxTime >= boxes[b + 4]))
+                    expected.add(ids.get(i));
+            }
+            expected.sort();
+            Test.ensureEqual(results.toString(), expected.toString(), "q=" + q);
+            nFound += results.size();
+        }
+        String2.log("  500 queries found " + nFound + " datasets in " + indexTime + "ms");
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 1;
+        String msg = "\n^^^ DatasetExtentIndex.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                    if (test ==  1) testRandom();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+}
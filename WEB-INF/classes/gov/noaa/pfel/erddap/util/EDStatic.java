@@ -266,12 +266,30 @@ public static boolean developmentMode = false;
     public final static int DEFAULT_decompressedCacheMaxMinutesOld = 15;
     public final static int DEFAULT_nGridThreads = 1;
     public final static int DEFAULT_nTableThreads = 1;
+    public final static int DEFAULT_nSharedThreads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    public final static int DEFAULT_nLoadDatasetsThreads = 1;
+    public final static int DEFAULT_nDirectoryScanThreads = 1;
+    public final static boolean DEFAULT_fileTableMapped = false;
+    public final static int DEFAULT_ncFileCacheSize = 100;
+    public final static int DEFAULT_responseCacheMB = 0; //0=off
+    public final static int DEFAULT_gridReadAheadMB = 0; //0=off
+    public final static int DEFAULT_wmsTileCacheMB = 100; //0=off
     public static String          DEFAULT_palettes[]   = null; //set when messages.xml is read
     public static HashSet<String> DEFAULT_palettes_set = null;  //set when messages.xml is read
     public static int decompressedCacheMaxGB         = DEFAULT_decompressedCacheMaxGB; 
     public static int decompressedCacheMaxMinutesOld = DEFAULT_decompressedCacheMaxMinutesOld; 
     public static int nGridThreads                   = DEFAULT_nGridThreads;  //will be a valid number 1+
     public static int nTableThreads                  = DEFAULT_nTableThreads; //will be a valid number 1+
+    public static int nSharedThreads                 = DEFAULT_nSharedThreads; //will be a valid number 1+
+    public static int nLoadDatasetsThreads           = DEFAULT_nLoadDatasetsThreads; //will be a valid number 1+. 1=load datasets one at a time
+    public static int nDirectoryScanThreads          = DEFAULT_nDirectoryScanThreads; //will be a valid number 1+. 1=Files.walkFileTree. See FileVisitorDNLS.nScanThreads
+    public static boolean fileTableMapped            = DEFAULT_fileTableMapped; //if true, EDDTableFromFiles datasets store their dir and file tables in a MappedFileTable
+    /** The server-wide pool of worker threads used by requests with nTableThreads or nGridThreads &gt; 1. */
+    public static SharedThreadPool sharedThreadPool  = new SharedThreadPool("SharedThreadPool", DEFAULT_nSharedThreads);
+    public static int ncFileCacheSize                = DEFAULT_ncFileCacheSize; //max open files in NcHelper.fileCache. 0=don't pool
+    public static int responseCacheMB                = DEFAULT_responseCacheMB; //max total size of ResponseCache. 0=off
+    public static int gridReadAheadMB                = DEFAULT_gridReadAheadMB; //max memory for each GridDataAccessor's read-ahead chunks. 0=off
+    public static int wmsTileCacheMB                 = DEFAULT_wmsTileCacheMB; //max total size of WmsTileCache. 0=off
     public static String convertInterpolateRequestCSVExample = null;         //may be null or ""
     public static String convertInterpolateDatasetIDVariableList[] = new String[0]; //may be [0]
 
@@ -645,6 +663,7 @@ public static boolean developmentMode = false;
         fullSgtMapTopographyCacheDirectory,
         fullTestCacheDirectory,
         fullWmsCacheDirectory,
+        fullWmsTileCacheDirectory,
 
         imageDirUrl,
         imageDirHttpsUrl,
@@ -1474,6 +1493,7 @@ public static boolean developmentMode = false;
         //route calls to a logger to com.cohort.util.String2Log
         String2.setupCommonsLogging(-1);
         SSR.erddapVersion = erddapVersion;
+        NcHelper.fileCache.setMaxOpen(ncFileCacheSize); //pool open .nc files
 
         String eol = String2.lineSeparator;
         String2.log(eol + "////**** " + erdStartup + eol +
@@ -1574,6 +1594,7 @@ public static boolean developmentMode = false;
         fullLogsDirectory         = bigParentDirectory + "logs/";
         fullCopyDirectory         = bigParentDirectory + "copy/";
         fullLuceneDirectory       = bigParentDirectory + "lucene/";
+        fullWmsTileCacheDirectory = bigParentDirectory + "wmsTiles/"; //not in cache dir, so not cleaned by cache cleaner
 
         Test.ensureTrue(File2.isDirectory(fullPaletteDirectory),  
             "fullPaletteDirectory (" + fullPaletteDirectory + ") doesn't exist.");
@@ -1589,6 +1610,8 @@ public static boolean developmentMode = false;
         File2.makeDirectory(fullLogsDirectory);
         File2.makeDirectory(fullCopyDirectory);
         File2.makeDirectory(fullLuceneDirectory);
+        WmsTileCache.setDirectory(fullWmsTileCacheDirectory); //makes it and deletes old tiles
+        WmsTileCache.setMaxBytes((long)wmsTileCacheMB * Math2.BytesPerMB);
 
         String2.log(
             "bigParentDirectory=" + bigParentDirectory + eol +
@@ -3708,6 +3731,11 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
         sb.append(String2.getBriefDistributionStatistics(taskThreadSucceededDistribution24) + "\n");
         sb.append("TaskThread Succeeded Time (since startup)               ");
         sb.append(String2.getBriefDistributionStatistics(taskThreadSucceededDistributionTotal) + "\n");
+        sb.append(sharedThreadPool.statistics());
+        sb.append(NcHelper.fileCache.statistics());
+        sb.append(ResponseCache.statistics());
+        sb.append(GridOverviews.statistics());
+        sb.append(WmsTileCache.statistics());
     }
 
     /**
@@ -4131,6 +4159,12 @@ accessibleViaNC4 = ".nc4 is not yet supported.";
             //shutdown Cassandra clusters/sessions
             EDDTableFromCassandra.shutdown();
 
+            //stop the shared worker threads
+            sharedThreadPool.shutdownNow();
+
+            //close the pooled .nc files
+            NcHelper.fileCache.closeIdle();
+
             //interrupt all of them
             for (int i = 0; i < names.length; i++) {
                 try {
@@ -0,0 +1,522 @@
+/*
+ * OriginalSearchIndex Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.array.IntArray;
+import com.cohort.array.LongArray;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * This is an in-memory inverted index of the datasets' searchBytes,
+ * used by the original searchEngine (Erddap.getSearchDatasetIDs)
+ * to find the candidate datasets for a search, so that EDD.searchRank
+ * only has to be called for those datasets (not for every dataset).
+ * The ranks (and so the order of the results) are unchanged,
+ * since EDD.searchRank still determines if each candidate matches and its rank.
+ *
+ * <p>The searchBytes are split into tokens (runs of letters, digits, and
+ * non-ASCII UTF-8 bytes). For each token, the index has a sorted list of
+ * the datasets ("docs") that have the token.
+ * Since the original searchEngine finds search words anywhere
+ * (e.g., "temp" matches "temperature"), each run of token bytes in a
+ * (positive) search word must be within a token in the dataset
+ * (or must be a whole token, a token's prefix, or a token's suffix,
+ * if the search word has other characters before and/or after the run).
+ * The tokens that contain a run are found by searching one big String with all
+ * of the tokens, which is much smaller than all of the datasets' searchBytes.
+ * Negative search words (e.g., -NCDC) and words without letters or digits
+ * can't reduce the candidates.
+ *
+ * <p>LoadDatasets adds datasets (when they are loaded or reloaded) and
+ * removes datasets (when they are unloaded).
+ * Each dataset's version (e.g., its creationTimeMillis) is stored,
+ * so callers can tell if the index is current for a dataset (see isCurrent).
+ * The docs of removed datasets are removed from the token lists
+ * when there are many of them (see compact).
+ *
+ * <p>This is thread safe.
+ *
+ * @author agent (agent@local) 2026-10-17
+ */
+public class OriginalSearchIndex {
+
+    /** If there are more than this many removed docs (and more than nLiveDocs), the index is compacted. */
+    public final static int COMPACT_N_DEAD = 1000;
+
+    /** key=datasetID, value=doc# */
+    protected HashMap<String,Integer> datasetIDToDoc = new HashMap();
+    /** For each doc#: the datasetID (or null if removed) and the version. */
+    protected ArrayList<String> docDatasetID = new ArrayList();
+    protected LongArray docVersion = new LongArray();
+    protected BitSet liveDocs = new BitSet();
+    protected int nDeadDocs = 0;
+
+    /** key=token, value=token# */
+    protected HashMap<String,Integer> tokenToNumber = new HashMap();
+    /** For each token#: the sorted doc#s of the docs with the token. */
+    protected ArrayList<IntArray> postings = new ArrayList();
+    /** All of the tokens, each followed by '\n'. */
+    protected StringBuilder allTokens = new StringBuilder();
+    /** For each token#: the position in allTokens of the start of the token. */
+    protected IntArray tokenStart = new IntArray();
+
+    /**
+     * This indicates if the byte is part of a token.
+     */
+    public static boolean isTokenByte(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') ||
+               (b >= 'A' && b <= 'Z') || b < 0; //b < 0 is part of a multi-byte UTF-8 char
+    }
+
+    /**
+     * This returns the number of datasets in the index.
+     */
+    public synchronized int size() {
+        return datasetIDToDoc.size();
+    }
+
+    /**
+     * This returns the number of distinct tokens in the index.
+     */
+    public synchronized int nTokens() {
+        return postings.size();
+    }
+
+    /**
+     * This indicates if the index has the specified version of the dataset.
+     *
+     * @param datasetID
+     * @param version e.g., edd.creationTimeMillis()
+     * @return true if the index has the specified version of the dataset.
+     */
+    public synchronized boolean isCurrent(String datasetID, long version) {
+        Integer doc = datasetIDToDoc.get(datasetID);
+        return doc != null && docVersion.get(doc) == version;
+    }
+
+    /**
+     * This adds a dataset to the index (or replaces the old version of it).
+     *
+     * @param datasetID
+     * @param version e.g., edd.creationTimeMillis()
+     * @param searchBytes e.g., edd.searchBytes() (already lowercase)
+     */
+    public synchronized void add(String datasetID, long version, byte searchBytes[]) {
+        remove(datasetID);
+
+        int doc = docDatasetID.size();
+        docDatasetID.add(datasetID);
+        docVersion.add(version);
+        liveDocs.set(doc);
+        datasetIDToDoc.put(datasetID, doc);
+
+        //add doc to the postings of each of its distinct tokens
+        HashSet<String> tokens = new HashSet();
+        int n = searchBytes.length;
+        int po = 0;
+        while (po < n) {
+            if (!isTokenByte(searchBytes[po])) {
+                po++;
+                continue;
+            }
+            int start = po;
+            while (po < n && isTokenByte(searchBytes[po]))
+                po++;
+            String token = new String(searchBytes, start, po - start, StandardCharsets.ISO_8859_1);
+            if (tokens.add(token))
+                postingsFor(token).add(doc);  //docs are added in order, so postings stay sorted
+        }
+    }
+
+    /**
+     * This gets (or makes) the postings for a token.
+     */
+    protected IntArray postingsFor(String token) {
+        Integer tokenNumber = tokenToNumber.get(token);
+        if (tokenNumber != null)
+            return postings.get(tokenNumber);
+        tokenToNumber.put(token, postings.size());
+        tokenStart.add(allTokens.length());
+        allTokens.append(token).append('\n');
+        IntArray ia = new IntArray(4, false);
+        postings.add(ia);
+        return ia;
+    }
+
+    /**
+     * This removes a dataset from the index (if it is in the index).
+     *
+     * @param datasetID
+     */
+    public synchronized void remove(String datasetID) {
+        Integer doc = datasetIDToDoc.remove(datasetID);
+        if (doc == null)
+            return;
+        docDatasetID.set(doc, null);
+        liveDocs.clear(doc);
+        nDeadDocs++;
+        if (nDeadDocs > COMPACT_N_DEAD && nDeadDocs > datasetIDToDoc.size())
+            compact();
+    }
+
+    /**
+     * This removes everything from the index.
+     */
+    public synchronized void clear() {
+        datasetIDToDoc.clear();
+        docDatasetID.clear();
+        docVersion.clear();
+        liveDocs.clear();
+        nDeadDocs = 0;
+        tokenToNumber.clear();
+        postings.clear();
+        allTokens.setLength(0);
+        tokenStart.clear();
+    }
+
+    /**
+     * This renumbers the docs (leaving out the removed docs)
+     * and rebuilds the postings and the tokens (leaving out tokens without docs).
+     */
+    protected synchronized void compact() {
+        long time = System.currentTimeMillis();
+        int nOldDocs = docDatasetID.size();
+        int oldToNew[] = new int[nOldDocs];
+        ArrayList<String> newDocDatasetID = new ArrayList();
+        LongArray newDocVersion = new LongArray();
+        for (int doc = 0; doc < nOldDocs; doc++) {
+            String id = docDatasetID.get(doc);
+            if (id == null) {
+                oldToNew[doc] = -1;
+            } else {
+                oldToNew[doc] = newDocDatasetID.size();
+                datasetIDToDoc.put(id, newDocDatasetID.size());
+                newDocDatasetID.add(id);
+                newDocVersion.add(docVersion.get(doc));
+            }
+        }
+
+        ArrayList<IntArray> oldPostings = postings;
+        String oldAllTokens = allTokens.toString();
+        IntArray oldTokenStart = tokenStart;
+        tokenToNumber = new HashMap();
+        postings = new ArrayList();
+        allTokens = new StringBuilder();
+        tokenStart = new IntArray();
+        int nOldTokens = oldPostings.size();
+        for (int t = 0; t < nOldTokens; t++) {
+            IntArray oldIa = oldPostings.get(t);
+            int n = oldIa.size();
+            IntArray newIa = null;
+            for (int i = 0; i < n; i++) {
+                int doc = oldToNew[oldIa.get(i)];
+                if (doc >= 0) {
+                    if (newIa == null) {
+                        int start = oldTokenStart.get(t);
+                        newIa = postingsFor(oldAllTokens.substring(start, oldAllTokens.indexOf('\n', start)));
+                    }
+                    newIa.add(doc);
+                }
+            }
+            if (newIa != null)
+                newIa.trimToSize();
+        }
+
+        docDatasetID = newDocDatasetID;
+        docVersion = newDocVersion;
+        liveDocs.clear();
+        liveDocs.set(0, docDatasetID.size());
+        String2.log("OriginalSearchIndex.compact removed " + nDeadDocs + " docs and " +
+            (nOldTokens - postings.size()) + " tokens in " +
+            (System.currentTimeMillis() - time) + "ms");
+        nDeadDocs = 0;
+    }
+
+    /**
+     * This returns the docs with a token that contains the run.
+     *
+     * @param run the bytes of the run (as an ISO-8859-1 String)
+     * @param atTokenStart if true, the run must be at the start of the token
+     * @param atTokenEnd if true, the run must be at the end of the token
+     */
+    protected BitSet docsWithRun(String run, boolean atTokenStart, boolean atTokenEnd) {
+        BitSet docs = new BitSet();
+        if (atTokenStart && atTokenEnd) {
+            Integer t = tokenToNumber.get(run);
+            if (t != null)
+                addPostings(docs, postings.get(t));
+            return docs;
+        }
+
+        int runLength = run.length();
+        int nTokens = postings.size();
+        int po = allTokens.indexOf(run);
+        while (po >= 0) {
+            //which token is it in?
+            int t = Arrays.binarySearch(tokenStart.array, 0, nTokens, po);
+            if (t < 0)
+                t = -t - 2; //the token that starts before po
+            int tEnd = t + 1 < nTokens? tokenStart.get(t + 1) - 1 : allTokens.length() - 1; //the '\n'
+            if ((!atTokenStart || po == tokenStart.get(t)) &&
+                (!atTokenEnd   || po + runLength == tEnd)) {
+                addPostings(docs, postings.get(t));
+                po = allTokens.indexOf(run, tEnd + 1); //look in the next tokens
+            } else {
+                po = allTokens.indexOf(run, po + 1);   //look later in this token, too
+            }
+        }
+        return docs;
+    }
+
+    /** This sets the bits in docs for the doc#s in ia. */
+    protected static void addPostings(BitSet docs, IntArray ia) {
+        int n = ia.size();
+        for (int i = 0; i < n; i++)
+            docs.set(ia.get(i));
+    }
+
+    /**
+     * This returns the datasetIDs of the datasets in the index which may match
+     * the search words.
+     * A dataset which isn't in the index (or isn't current) may match, too.
+     *
+     * @param isNegative indicates if each word is a negative search word
+     * @param words the words or phrases (already lowercase) as UTF-8 bytes
+     *   (as for EDD.searchRank)
+     * @return the datasetIDs of the candidate datasets,
+     *    or null if the words can't reduce the candidates
+     *    (e.g., all of the words are negative).
+     */
+    public synchronized HashSet<String> candidates(boolean isNegative[], byte words[][]) {
+        BitSet docs = null;
+        for (int w = 0; w < words.length; w++) {
+            if (isNegative[w])
+                continue;
+            byte word[] = words[w];
+            int n = word.length;
+            int po = 0;
+            while (po < n) {
+                if (!isTokenByte(word[po])) {
+                    po++;
+                    continue;
+                }
+                int start = po;
+                while (po < n && isTokenByte(word[po]))
+                    po++;
+                BitSet runDocs = docsWithRun(
+                    new String(word, start, po - start, StandardCharsets.ISO_8859_1),
+                    start > 0, po < n); //if other chars are before/after the run, the run must be at the token start/end
+                if (docs == null)
+                     docs = runDocs;
+                else docs.and(runDocs);
+                if (docs.isEmpty())
+                    return new HashSet();
+            }
+        }
+        if (docs == null)
+            return null;
+
+        docs.and(liveDocs);
+        HashSet<String> hs = new HashSet(Math2.roundToInt(1.4 * docs.cardinality()) + 16);
+        for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1))
+            hs.add(docDatasetID.get(doc));
+        return hs;
+    }
+
+    /** This returns a short description of the index. */
+    public synchronized String toString() {
+        return "OriginalSearchIndex nDatasets=" + datasetIDToDoc.size() +
+            " nRemoved=" + nDeadDocs + " nTokens=" + postings.size() +
+            " tokensLength=" + allTokens.length();
+    }
+
+    /**
+     * This tests the basic methods.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** OriginalSearchIndex.basicTest");
+        OriginalSearchIndex index = new OriginalSearchIndex();
+        index.add("a", 1, String2.stringToUtf8Bytes("title=sea surface temperature\ninstitution=noaa ncdc"));
+        index.add("b", 1, String2.stringToUtf8Bytes("title=sea ice\nprotocol=griddap\nsalinity"));
+        index.add("c", 1, String2.stringToUtf8Bytes("title=temp\u00e9rature de la mer\nprotocol=tabledap"));
+        Test.ensureEqual(index.size(), 3, "");
+        boolean pos1[] = {false};
+
+        Test.ensureEqual(String2.toCSSVString(index.candidates(pos1, new byte[][]{
+            String2.stringToUtf8Bytes("temp")})), "a, c", "");
+        Test.ensureEqual(String2.toCSSVString(index.candidates(pos1, new byte[][]{
+            String2.stringToUtf8Bytes("sea")})), "a, b", "");
+        Test.ensureEqual(String2.toCSSVString(index.candidates(pos1, new byte[][]{
+            String2.stringToUtf8Bytes("ea surf")})), "a", "");
+        Test.ensureEqual(String2.toCSSVString(index.candidates(pos1, new byte[][]{
+            String2.stringToUtf8Bytes("protocol=g")})), "b", "");
+        Test.ensureEqual(String2.toCSSVString(index.candidates(pos1, new byte[][]{
+            String2.stringToUtf8Bytes("temp\u00e9r")})), "c", "");
+        Test.ensureEqual(String2.toCSSVString(index.candidates(pos1, new byte[][]{
+            String2.stringToUtf8Bytes("=sea")})), "a, b", "");
+        Test.ensureEqual(String2.toCSSVString(index.candidates(pos1, new byte[][]{
+            String2.stringToUtf8Bytes("x=sea")})), "", ""); //no token ends with "x"
+        Test.ensureEqual(String2.toCSSVString(index.candidates(pos1, new byte[][]{
+            String2.stringToUtf8Bytes("xyz")})), "", "");
+        Test.ensureEqual(index.candidates(pos1, new byte[][]{
+            String2.stringToUtf8Bytes("=")}), null, ""); //no letters or digits
+        Test.ensureEqual(String2.toCSSVString(index.candidates(new boolean[]{false, false}, new byte[][]{
+            String2.stringToUtf8Bytes("sea"), String2.stringToUtf8Bytes("dap")})), "b", "");
+        Test.ensureEqual(String2.toCSSVString(index.candidates(new boolean[]{false, true}, new byte[][]{
+            String2.stringToUtf8Bytes("sea"), String2.stringToUtf8Bytes("dap")})), "a, b", ""); //negative words don't reduce the candidates
+        Test.ensureEqual(index.candidates(new boolean[]{true}, new byte[][]{
+            String2.stringToUtf8Bytes("sea")}), null, "");
+
+        //replace and remove
+        Test.ensureEqual(index.isCurrent("b", 1), true, "");
+        Test.ensureEqual(index.isCurrent("b", 2), false, "");
+        index.add("b", 2, String2.stringToUtf8Bytes("title=lake ice"));
+        Test.ensureEqual(index.isCurrent("b", 2), true, "");
+        Test.ensureEqual(String2.toCSSVString(index.candidates(pos1, new byte[][]{
+            String2.stringToUtf8Bytes("sea")})), "a", "");
+        index.remove("a");
+        Test.ensureEqual(index.isCurrent("a", 1), false, "");
+        Test.ensureEqual(String2.toCSSVString(index.candidates(pos1, new byte[][]{
+            String2.stringToUtf8Bytes("sea")})), "", "");
+        Test.ensureEqual(index.size(), 2, "");
+        index.compact();
+        Test.ensureEqual(index.size(), 2, "");
+        Test.ensureEqual(String2.toCSSVString(index.candidates(pos1, new byte[][]{
+            String2.stringToUtf8Bytes("ice")})), "b", "");
+        Test.ensureEqual(String2.toCSSVString(index.candidates(pos1, new byte[][]{
+            String2.stringToUtf8Bytes("temp")})), "c", "");
+        Test.ensureEqual(index.nTokens(), 9, index.allTokens.toString()); //only the tokens of b and c
+    }
+
+    /**
+     * This tests that the candidates always include the datasets that
+     * String2.indexOf finds (as EDD.searchRank does),
+     * with random datasets, searches, replacements, and removals.
+     */
+    public static void testRandom() throws Throwable {
+        String2.log("\n*** OriginalSearchIndex.testRandom");
+        String vocabulary[] = {"sea", "seas", "surface", "temperature", "temp", "ice", "noaa",
+            "ncdc", "title=", "protocol=", "griddap", "tabledap", "\u00e9t\u00e9", "1.5", "-", " ",
+            "\n", "a", "b", "ab", "\"", "_", "sst"};
+        Random random = new Random(1);
+        OriginalSearchIndex index = new OriginalSearchIndex();
+        HashMap<String,byte[]> truth = new HashMap();
+        int nChecked = 0, nPruned = 0;
+        for (int iteration = 0; iteration < 5000; iteration++) {
+            //add, replace, or remove a dataset
+            String id = "d" + random.nextInt(300);
+            if (random.nextInt(5) == 0) {
+                index.remove(id);
+                truth.remove(id);
+            } else {
+                StringBuilder sb = new StringBuilder();
+                int nWords = 1 + random.nextInt(30);
+                for (int i = 0; i < nWords; i++)
+                    sb.append(vocabulary[random.nextInt(vocabulary.length)]);
+                byte bytes[] = String2.stringToUtf8Bytes(sb.toString());
+                index.add(id, iteration, bytes);
+                truth.put(id, bytes);
+            }
+
+            //search
+            int nWords = 1 + random.nextInt(3);
+            boolean isNegative[] = new boolean[nWords];
+            byte words[][] = new byte[nWords][];
+            int jump[][] = new int[nWords][];
+            for (int w = 0; w < nWords; w++) {
+                isNegative[w] = random.nextInt(4) == 0;
+                StringBuilder sb = new StringBuilder();
+                int nParts = 1 + random.nextInt(2);
+                for (int i = 0; i < nParts; i++)
+                    sb.append(vocabulary[random.nextInt(vocabulary.length)]);
+                String s = sb.toString();
+                if (random.nextBoolean()) //a substring
+                    s = s.substring(random.nextInt(s.length()));
+                words[w] = String2.stringToUtf8Bytes(s);
+                jump[w] = String2.makeJumpTable(words[w]);
+            }
+            HashSet<String> candidates = index.candidates(isNegative, words);
+            for (String tId : truth.keySet()) {
+                byte bytes[] = truth.get(tId);
+                boolean matches = true;
+                for (int w = 0; w < nWords; w++) {
+                    if (words[w].length == 0)
+                        continue;
+                    boolean found = String2.indexOf(bytes, words[w], jump[w]) >= 0;
+                    if (found == isNegative[w]) {
+                        matches = false;
+                        break;
+                    }
+                }
+                nChecked++;
+                if (candidates != null && !candidates.contains(tId)) {
+                    nPruned++;
+                    Test.ensureTrue(!matches, "iteration=" + iteration + " id=" + tId +
+                        " should be a candidate for words[0]=" + String2.utf8BytesToString(words[0]) + 
+                        "\nsearchString=" + String2.utf8BytesToString(bytes));
+                }
+            }
+            if (candidates != null) {
+                for (String tId : candidates)
+                    Test.ensureTrue(truth.containsKey(tId), "candidate " + tId + " was removed");
+            }
+        }
+        String2.log(index.toString() + " nChecked=" + nChecked + " nPruned=" + nPruned);
+        Test.ensureTrue(nPruned > nChecked / 4, "nChecked=" + nChecked + " nPruned=" + nPruned);
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 1;
+        String msg = "\n^^^ OriginalSearchIndex.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                    if (test ==  1) testRandom();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * SharedThreadPool Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.util.MustBe;
+import com.cohort.util.SimpleException;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is a server-wide, bounded pool of worker threads which is shared by
+ * all requests that want to do some of their work (e.g., reading data files)
+ * in parallel (e.g., EDDTableFromFiles.getDataForDapQuery and
+ * GridDataAccessor.getChunk), instead of each request making (and
+ * tearing down) its own ExecutorService.
+ *
+ * <p>Each request gets its own RequestQueue (via newRequestQueue()).
+ * The worker threads take tasks from the RequestQueues round-robin,
+ * so one huge request can't starve the other requests.
+ * Callers still limit the number of tasks they have in flight
+ * (e.g., to nTableThreads or nGridThreads), so this just caps the total
+ * number of tasks running at once (nThreads).
+ *
+ * <p>If a worker thread submits a task (e.g., an EDDTableFromEDDGrid task
+ * which reads from a GridDataAccessor), the task is run in the
+ * submitting thread, so the pool can't deadlock waiting for itself.
+ *
+ * @author agent (agent@local) 2026-10-16
+ */
+public class SharedThreadPool {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    protected String name;
+    protected ThreadPoolExecutor executor; //its queue holds 1 dispatch token per submitted task
+    protected ArrayDeque<RequestQueue> readyQueues = new ArrayDeque(); //queues with pending tasks. sync on this.
+    protected ThreadLocal<Boolean> isWorker = new ThreadLocal();
+
+    //statistics
+    protected AtomicInteger nActive = new AtomicInteger(0);
+    protected int queueDepth = 0;          //sync on this
+    protected int queueDepthHighWater = 0; //sync on this
+    protected int nRequestQueues = 0;      //sync on this
+    protected long nTasksRun = 0;          //sync on this
+    protected long nTasksRunInCaller = 0;  //sync on this
+    protected long nTasksCancelled = 0;    //sync on this
+    /** Time (ms) tasks waited in the queue. Sync on the array. */
+    public int waitTimeDistribution24[]    = new int[String2.DistributionSize];
+    public int waitTimeDistributionTotal[] = new int[String2.DistributionSize];
+
+    /**
+     * The constructor.
+     *
+     * @param tName the name of the pool (used for thread names and statistics)
+     * @param nThreads the maximum number of worker threads (1+)
+     */
+    public SharedThreadPool(String tName, int nThreads) {
+        name = tName;
+        nThreads = Math.max(1, nThreads);
+        final AtomicInteger threadNumber = new AtomicInteger(0);
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(nThreads, nThreads,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue(), threadFactory);
+        executor.allowCoreThreadTimeOut(true); //so idle server has no idle threads
+    }
+
+    /**
+     * This changes the maximum number of worker threads.
+     * It is safe to call this at any time (e.g., when datasets.xml is reread).
+     *
+     * @param nThreads the maximum number of worker threads (1+)
+     */
+    public synchronized void setNThreads(int nThreads) {
+        nThreads = Math.max(1, nThreads);
+        if (nThreads == executor.getMaximumPoolSize())
+            return;
+        //order matters: core must always be <= max
+        if (nThreads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(nThreads);
+            executor.setCorePoolSize(nThreads);
+        } else {
+            executor.setCorePoolSize(nThreads);
+            executor.setMaximumPoolSize(nThreads);
+        }
+        if (verbose) String2.log(name + " nThreads=" + nThreads);
+    }
+
+    /** This returns the maximum number of worker threads. */
+    public int nThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /** This returns the number of tasks waiting to be run. */
+    public synchronized int queueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * This makes a new RequestQueue.
+     * Call this once per request (e.g., instead of Executors.newFixedThreadPool()).
+     *
+     * @param tName the name of the request (for diagnostic messages)
+     * @return a new RequestQueue
+     */
+    public RequestQueue newRequestQueue(String tName) {
+        synchronized(this) {
+            nRequestQueues++;
+        }
+        return new RequestQueue(tName);
+    }
+
+    /**
+     * This is run by a worker thread (once per submitted task)
+     * to run the oldest task from the next RequestQueue (round-robin).
+     */
+    protected void dispatch() {
+        Pending pending;
+        RequestQueue rq;
+        synchronized(this) {
+            rq = readyQueues.pollFirst();
+            if (rq == null) //the tasks were cancelled
+                return;
+            pending = rq.pending.pollFirst();
+            if (rq.pending.isEmpty())
+                 rq.isReady = false;
+            else readyQueues.addLast(rq); //go to the end of the line
+            queueDepth--;
+            nTasksRun++;
+        }
+        long waitTime = System.currentTimeMillis() - pending.submitMillis;
+        synchronized(waitTimeDistributionTotal) {
+            String2.distribute(waitTime, waitTimeDistribution24);
+            String2.distribute(waitTime, waitTimeDistributionTotal);
+        }
+
+        isWorker.set(Boolean.TRUE);
+        nActive.incrementAndGet();
+        try {
+            pending.task.run(); //FutureTask catches all Throwables
+        } finally {
+            nActive.decrementAndGet();
+            isWorker.remove();
+            rq.taskDone(pending.task);
+            Thread.interrupted(); //clear interrupted status (e.g., from shutdownNow) before next task
+        }
+    }
+
+    /**
+     * This returns a string with statistics for the status page and daily report.
+     *
+     * @return the statistics
+     */
+    public String statistics() {
+        StringBuilder sb = new StringBuilder();
+        synchronized(this) {
+            sb.append(name + ": nThreads=" + nThreads() +
+                " nActive=" + nActive.get() +
+                " queueDepth=" + queueDepth +
+                " (highWater=" + queueDepthHighWater + ")" +
+                " nRequests=" + nRequestQueues +
+                " nTasksRun=" + nTasksRun +
+                " nTasksRunInCaller=" + nTasksRunInCaller +
+                " nTasksCancelled=" + nTasksCancelled + "\n");
+        }
+        synchronized(waitTimeDistributionTotal) {
+            sb.append(name + " Task Wait Time (since last Daily Report) " +
+                String2.getBriefDistributionStatistics(waitTimeDistribution24) + "\n");
+            sb.append(name + " Task Wait Time (since startup)           " +
+                String2.getBriefDistributionStatistics(waitTimeDistributionTotal) + "\n");
+        }
+        return sb.toString();
+    }
+
+    /** This resets the statistics which are "since last Daily Report". */
+    public void resetDailyStatistics() {
+        synchronized(waitTimeDistributionTotal) {
+            java.util.Arrays.fill(waitTimeDistribution24, 0);
+        }
+        synchronized(this) {
+            queueDepthHighWater = queueDepth;
+        }
+    }
+
+    /** This stops all worker threads (e.g., when ERDDAP is shutting down). */
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+
+
+    /** A task and when it was submitted. */
+    protected static class Pending {
+        FutureTask task;
+        long submitMillis;
+        Pending(FutureTask tTask) {
+            task = tTask;
+            submitMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * A RequestQueue holds one request's tasks.
+     * It has the subset of ExecutorService methods that ERDDAP uses
+     * (submit, shutdown, and shutdownNow), with the same meanings.
+     */
+    public class RequestQueue {
+        protected String rqName;
+        protected ArrayDeque<Pending> pending = new ArrayDeque(); //sync on SharedThreadPool.this
+        protected HashSet<FutureTask> running = new HashSet();    //sync on SharedThreadPool.this
+        protected boolean isReady = false;    //in readyQueues?  sync on SharedThreadPool.this
+        protected volatile boolean isShutdown = false;
+
+        protected RequestQueue(String tName) {
+            rqName = tName;
+        }
+
+        /**
+         * This submits a task to be run by a worker thread.
+         * If this is called by a worker thread, the task is run now in this thread.
+         *
+         * @param task the task.
+         * @throws RejectedExecutionException if this RequestQueue has been shut down.
+         */
+        public void submit(FutureTask task) {
+            if (isShutdown)
+                throw new RejectedExecutionException(name + " request queue for " +
+                    rqName + " has been shut down.");
+            if (isWorker.get() != null) {
+                synchronized(SharedThreadPool.this) {
+                    nTasksRunInCaller++;
+                }
+                task.run();
+                return;
+            }
+            synchronized(SharedThreadPool.this) {
+                pending.addLast(new Pending(task));
+                running.add(task);
+                if (!isReady) {
+                    isReady = true;
+                    readyQueues.addLast(this);
+                }
+                queueDepth++;
+                queueDepthHighWater = Math.max(queueDepthHighWater, queueDepth);
+            }
+            executor.execute(SharedThreadPool.this::dispatch);
+        }
+
+        /** This is called by dispatch when a task is done. */
+        protected void taskDone(FutureTask task) {
+            synchronized(SharedThreadPool.this) {
+                running.remove(task);
+            }
+        }
+
+        /**
+         * After this, no new tasks can be submitted, but already submitted
+         * tasks will be run (like ExecutorService.shutdown()).
+         */
+        public void shutdown() {
+            isShutdown = true;
+        }
+
+        /**
+         * This prevents new tasks from being submitted,
+         * removes tasks which haven't started,
+         * and interrupts the threads running this request's tasks
+         * (like ExecutorService.shutdownNow()).
+         */
+        public void shutdownNow() {
+            isShutdown = true;
+            FutureTask toCancel[];
+            synchronized(SharedThreadPool.this) {
+                int nPending = pending.size();
+                queueDepth -= nPending;
+                nTasksCancelled += nPending;
+                pending.clear();
+                if (isReady) {
+                    readyQueues.remove(this);
+                    isReady = false;
+                }
+                toCancel = running.toArray(new FutureTask[0]);
+                running.clear();
+            }
+            for (int i = 0; i < toCancel.length; i++)
+                toCancel[i].cancel(true); //does nothing if already done; interrupts if running
+        }
+    }
+
+    /**
+     * This tests the fairness, nested submit, and shutdownNow of SharedThreadPool.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** SharedThreadPool.basicTest");
+        SharedThreadPool pool = new SharedThreadPool("TestPool", 2);
+        RequestQueue big   = pool.newRequestQueue("big");
+        RequestQueue small = pool.newRequestQueue("small");
+
+        //a huge request fills the queue
+        ArrayList<FutureTask> bigTasks = new ArrayList();
+        for (int i = 0; i < 40; i++) {
+            FutureTask task = new FutureTask(() -> {Thread.sleep(50); return 1;});
+            bigTasks.add(task);
+            big.submit(task);
+        }
+
+        //a small request isn't stuck behind all of the huge request's tasks
+        //and a task submitted from a worker thread is run in that thread
+        long time = System.currentTimeMillis();
+        FutureTask smallTask = new FutureTask(() -> {
+            FutureTask inner = new FutureTask(() -> 2);
+            small.submit(inner);
+            return inner.get();
+        });
+        small.submit(smallTask);
+        Test.ensureEqual(smallTask.get(), 2, "");
+        time = System.currentTimeMillis() - time;
+        Test.ensureTrue(time < 1000, "time=" + time);
+
+        //shutdownNow cancels the pending tasks and interrupts the running tasks
+        big.shutdownNow();
+        for (int i = 0; i < bigTasks.size(); i++)
+            Test.ensureTrue(bigTasks.get(i).isDone(), "i=" + i);
+        Test.ensureEqual(pool.queueDepth(), 0, "");
+        try {
+            big.submit(new FutureTask(() -> 3));
+            throw new SimpleException("Shouldn't get here.");
+        } catch (RejectedExecutionException e) {
+        }
+
+        pool.setNThreads(5);
+        Test.ensureEqual(pool.nThreads(), 5, "");
+        pool.setNThreads(1);
+        Test.ensureEqual(pool.nThreads(), 1, "");
+        String2.log(pool.statistics());
+        pool.shutdownNow();
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests; 
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test). 
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive, 
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ SharedThreadPool.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+            
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" + 
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive) 
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+
+}
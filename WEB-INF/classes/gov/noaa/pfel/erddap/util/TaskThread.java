@@ -15,6 +15,7 @@ import com.cohort.util.String2;
 import gov.noaa.pfel.coastwatch.griddata.OpendapHelper;
 import gov.noaa.pfel.coastwatch.util.SSR;
 import gov.noaa.pfel.erddap.dataset.EDD;
+import gov.noaa.pfel.erddap.dataset.GridOverviews;
 import gov.noaa.pfel.erddap.util.EDStatic;
 import gov.noaa.pfel.erddap.variable.EDV;
 
@@ -61,6 +62,11 @@ public class TaskThread extends Thread {
      */
     public final static Integer TASK_DOWNLOAD = new Integer(4);
 
+    /** If taskOA[0].equals(TASK_MAKE_OVERVIEWS), then make
+     * taskOA[1]=GridOverviews
+     */
+    public final static Integer TASK_MAKE_OVERVIEWS = new Integer(5);
+
     /**
      * TASK_NAMES parallels the TASK Integers.
      */
@@ -69,7 +75,8 @@ public class TaskThread extends Thread {
         "SET_FLAG",
         "DAP_TO_NC",
         "ALL_DAP_TO_NC",
-        "DOWNLOAD"};
+        "DOWNLOAD",
+        "MAKE_OVERVIEWS"};
 
     /**
      * Set this to true (by calling verbose=true in your program, 
@@ -213,6 +220,15 @@ public class TaskThread extends Thread {
                     if (lastMod < Long.MAX_VALUE)
                         File2.setLastModified(fullFileName, lastMod);
 
+                //TASK_MAKE_OVERVIEWS
+                } else if (taskType.equals(TASK_MAKE_OVERVIEWS)) {
+
+                    GridOverviews overviews = (GridOverviews)taskOA[1];
+                    taskSummary = "  TASK_MAKE_OVERVIEWS datasetID=" + overviews.datasetID();
+                    String2.log(taskSummary);
+
+                    String2.log(overviews.make());
+
                 //UNKNOWN taskType
                 } else {
                     String2.log("TaskThread error: Unknown taskType=" + taskType + 
@@ -0,0 +1,537 @@
+/*
+ * WmsTileCache Copyright 2026, NOAA.
+ * See the LICENSE.txt file in this file's directory.
+ */
+package gov.noaa.pfel.erddap.util;
+
+import com.cohort.util.File2;
+import com.cohort.util.Math2;
+import com.cohort.util.MustBe;
+import com.cohort.util.String2;
+import com.cohort.util.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the server-wide store of rendered WMS tiles
+ * (from /wms/<i>datasetID</i>/tiles/<i>layer</i>/<i>z</i>/<i>x</i>/<i>y</i>.png).
+ * Since tiles are on a fixed grid, the same tiles are requested by
+ * many clients, so they are worth keeping.
+ *
+ * <p>Tiles are stored as files in the tile directory,
+ * which isn't in the cache directory, so the cache cleaner doesn't delete them.
+ * Instead, the total size of the tiles is limited to maxBytes
+ * (least recently used tiles are removed first).
+ *
+ * <p>Each tile has a version. For data layers, it is the dataset's
+ * creationTimeMillis and lastChangeMillis, so when the dataset's data changes,
+ * the old tile isn't used (it is replaced when next requested).
+ * invalidate(datasetID) removes all of a dataset's tiles
+ * (e.g., when it is reloaded or unloaded).
+ *
+ * <p>If there are simultaneous requests for the same tile,
+ * only one thread makes it (single-flight); the others wait for it, then use it
+ * (even if the tile is too big to keep, or the store isn't active).
+ *
+ * <p>The store is active if datasets.xml's &lt;wmsTileCacheMB&gt; is &gt; 0.
+ *
+ * @author agent (agent@local) 2026-10-17
+ */
+public class WmsTileCache {
+
+    /**
+     * Set this to true (by calling verbose=true in your program,
+     * not by changing the code here)
+     * if you want lots of diagnostic messages sent to String2.log.
+     */
+    public static boolean verbose = false;
+
+    /** This makes a tile when it isn't in the store. */
+    public interface Maker {
+        /**
+         * @return the tile (e.g., the bytes of a .png file)
+         * @throws Throwable if trouble
+         */
+        byte[] make() throws Throwable;
+    }
+
+    /** A stored tile. */
+    protected static class Entry {
+        String datasetID; //"" for tiles which aren't related to a dataset
+        String version;
+        String fullName;  //the tile's file
+        long nBytes;
+    }
+
+    /** A tile which is being made by one thread, which other threads are waiting for. */
+    protected static class Flight {
+        final CountDownLatch done = new CountDownLatch(1);
+        byte bytes[];
+        Throwable throwable;
+    }
+
+    //the stored tiles, in access order (so the first is the least recently used). sync on entries.
+    protected static LinkedHashMap<String,Entry> entries = new LinkedHashMap(256, 0.75f, true);
+    //the tiles being made. sync on entries.
+    protected static HashMap<String,Flight> flights = new HashMap();
+    protected static String directory = null; //sync on entries. with slash at end
+    protected static long maxBytes = 0;    //sync on entries. 0=store not active
+    protected static long totalBytes = 0;  //sync on entries
+
+    //statistics since last Daily Report. sync on entries.
+    protected static int nHits = 0, nMisses = 0, nWaits = 0, nTooBig = 0,
+        nEvictions = 0, nInvalidated = 0;
+
+    /**
+     * This sets the directory for the tile files.
+     * Tiles from a previous run of ERDDAP are deleted
+     * (since they aren't in the list of stored tiles).
+     *
+     * @param dir the directory (with slash at end)
+     */
+    public static void setDirectory(String dir) {
+        synchronized(entries) {
+            removeOldest(0);
+            directory = dir;
+            File2.makeDirectory(dir);
+            File2.deleteAllFiles(dir, true, false);
+        }
+    }
+
+    /**
+     * This sets the maximum total size of the stored tiles.
+     * If the store is now too big, the least recently used tiles are removed.
+     *
+     * @param tMaxBytes  0 turns off the store (and removes all the stored tiles).
+     */
+    public static void setMaxBytes(long tMaxBytes) {
+        synchronized(entries) {
+            maxBytes = Math.max(0, tMaxBytes);
+            removeOldest(maxBytes);
+        }
+    }
+
+    /** This returns the maximum total size of the stored tiles (0 if the store isn't active). */
+    public static long maxBytes() {
+        synchronized(entries) {
+            return maxBytes;
+        }
+    }
+
+    /**
+     * This gets a tile from the store or, if it isn't there,
+     * makes it (or waits for another thread which is already making it).
+     *
+     * @param key identifies the tile, e.g., datasetID, layer, z, x, y,
+     *   and the other settings which affect the image.
+     *   It shouldn't include the version.
+     * @param datasetID the datasetID which the tile's data is from,
+     *   or "" if none (e.g., a Coastlines tile).
+     * @param version identifies the version of the dataset's data,
+     *   e.g., creationTimeMillis + "_" + lastChangeMillis, or "" if none.
+     * @param maker makes the tile if needed
+     * @return the tile's bytes
+     * @throws Throwable if trouble (e.g., from maker)
+     */
+    public static byte[] getTile(String key, String datasetID, String version,
+        Maker maker) throws Throwable {
+
+        Entry entry;
+        Flight flight;
+        boolean makeIt = false;
+        synchronized(entries) {
+            entry = get(key, version);
+            flight = null;
+            if (entry == null) {
+                flight = flights.get(key);
+                if (flight == null) {
+                    flight = new Flight();
+                    flights.put(key, flight);
+                    makeIt = true;
+                } else {
+                    nWaits++;
+                }
+            }
+        }
+
+        //it's in the store
+        if (entry != null) {
+            byte bytes[] = readBytes(entry.fullName);
+            if (bytes != null) {
+                if (verbose) String2.log("  WmsTileCache reusing " + entry.fullName);
+                return bytes;
+            }
+            //else it was just removed. Make it (rare, so no need for single-flight).
+            return store(key, datasetID, version, maker.make());
+        }
+
+        //another thread is making it
+        if (!makeIt) {
+            if (!flight.done.await(String2.longTimeoutSeconds, TimeUnit.SECONDS))
+                throw new TimeoutException("Timeout waiting for another thread to make the WMS tile.");
+            if (flight.throwable != null)
+                throw flight.throwable;
+            return flight.bytes;
+        }
+
+        //this thread makes it
+        try {
+            flight.bytes = store(key, datasetID, version, maker.make());
+            return flight.bytes;
+        } catch (Throwable t) {
+            flight.throwable = t;
+            throw t;
+        } finally {
+            synchronized(entries) {
+                flights.remove(key);
+            }
+            flight.done.countDown();
+        }
+    }
+
+    /** This reads a tile's file, or returns null if trouble (e.g., it was just removed). */
+    private static byte[] readBytes(String fullName) {
+        try {
+            return Files.readAllBytes(Paths.get(fullName));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * This gets the entry for a key (if it is stored and is the same version).
+     * Callers must sync on entries.
+     *
+     * @return the entry (or null if not stored)
+     */
+    protected static Entry get(String key, String version) {
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.version.equals(version)) {
+            //e.g., the dataset's data has changed
+            remove(key);
+            entry = null;
+        }
+        if (entry == null)
+            nMisses++;
+        else nHits++;
+        return entry;
+    }
+
+    /**
+     * This stores a new tile (if the store is active and the tile isn't too big),
+     * then removes the least recently used tiles if the store is too big.
+     *
+     * @return bytes
+     * @throws Exception if trouble writing the file
+     */
+    protected static byte[] store(String key, String datasetID, String version,
+        byte bytes[]) throws Exception {
+
+        String dir;
+        synchronized(entries) {
+            //a tile bigger than 1/100th of the store would push out too many others
+            if (directory == null || maxBytes == 0)
+                return bytes;
+            if (bytes.length > maxBytes / 100) {
+                nTooBig++;
+                return bytes;
+            }
+            dir = directory;
+        }
+
+        Entry entry = new Entry();
+        entry.datasetID = datasetID;
+        entry.version = version;
+        entry.nBytes = bytes.length;
+        entry.fullName = dir + (datasetID.length() == 0? "_" : datasetID) + "/" +
+            String2.md5Hex12(key + "\n" + version) + ".png";
+        File2.makeDirectory(File2.getDirectory(entry.fullName));
+        String tempName = entry.fullName + Math2.random(Integer.MAX_VALUE);
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(tempName));
+        try {
+            os.write(bytes);
+        } finally {
+            os.close();
+        }
+        File2.rename(tempName, entry.fullName);
+
+        synchronized(entries) {
+            Entry old = entries.put(key, entry);
+            if (old != null) { //unlikely
+                totalBytes -= old.nBytes;
+                if (!old.fullName.equals(entry.fullName))
+                    File2.simpleDelete(old.fullName);
+            }
+            totalBytes += entry.nBytes;
+            removeOldest(maxBytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * This removes an entry and deletes its file. Callers must sync on entries.
+     */
+    protected static void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            totalBytes -= entry.nBytes;
+            File2.simpleDelete(entry.fullName);
+        }
+    }
+
+    /**
+     * This removes the least recently used entries until totalBytes &lt;= tMaxBytes.
+     * Callers must sync on entries.
+     */
+    protected static void removeOldest(long tMaxBytes) {
+        Iterator<Map.Entry<String,Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > tMaxBytes && it.hasNext()) {
+            Entry entry = it.next().getValue();
+            it.remove();
+            totalBytes -= entry.nBytes;
+            File2.simpleDelete(entry.fullName);
+            nEvictions++;
+        }
+    }
+
+    /**
+     * This removes all of the stored tiles for a dataset,
+     * e.g., because the dataset was reloaded or unloaded.
+     * (Tiles with an old version would never be used,
+     * but this frees up their space right away.)
+     *
+     * @param datasetID
+     */
+    public static void invalidate(String datasetID) {
+        synchronized(entries) {
+            Iterator<Map.Entry<String,Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next().getValue();
+                if (entry.datasetID.equals(datasetID)) {
+                    it.remove();
+                    totalBytes -= entry.nBytes;
+                    File2.simpleDelete(entry.fullName);
+                    nInvalidated++;
+                }
+            }
+        }
+    }
+
+    /** This returns the number of stored tiles. */
+    public static int size() {
+        synchronized(entries) {
+            return entries.size();
+        }
+    }
+
+    /** This returns a one line summary of the statistics (with a trailing newline). */
+    public static String statistics() {
+        synchronized(entries) {
+            int nLookups = nHits + nMisses;
+            return "WmsTileCache: maxMB=" + (maxBytes / Math2.BytesPerMB) +
+                " nTiles=" + entries.size() +
+                " totalMB=" + (totalBytes / Math2.BytesPerMB) +
+                " (since last Daily Report:" +
+                " nHits=" + nHits +
+                (nLookups == 0? "" : " (" + (nHits * 100L / nLookups) + "%)") +
+                " nMisses=" + nMisses +
+                " nWaitedForOtherThread=" + nWaits +
+                " nTooBig=" + nTooBig +
+                " nEvictions=" + nEvictions +
+                " nInvalidated=" + nInvalidated + ")\n";
+        }
+    }
+
+    /** This resets the statistics which are 'since last Daily Report'. */
+    public static void resetDailyStatistics() {
+        synchronized(entries) {
+            nHits = 0;
+            nMisses = 0;
+            nWaits = 0;
+            nTooBig = 0;
+            nEvictions = 0;
+            nInvalidated = 0;
+        }
+    }
+
+    /**
+     * This tests the store's bookkeeping (LRU eviction, the byte budget,
+     * versions, invalidation, and single-flight) without rendering real tiles.
+     */
+    public static void basicTest() throws Throwable {
+        String2.log("\n*** WmsTileCache.basicTest()");
+        String dir = File2.getSystemTempDirectory() + "WmsTileCacheTest/";
+        String oDirectory;
+        long oMaxBytes;
+        synchronized(entries) {
+            oDirectory = directory;
+            oMaxBytes = maxBytes;
+        }
+        try {
+            setDirectory(dir);
+            setMaxBytes(10000);
+            resetDailyStatistics();
+            final AtomicInteger nMade = new AtomicInteger(0);
+
+            //put 10 tiles of 100 bytes each: all fit
+            for (int i = 0; i < 10; i++) {
+                final int fi = i;
+                byte bytes[] = getTile("key" + i, i % 2 == 0? "even" : "odd", "v1",
+                    new Maker() {
+                        public byte[] make() {
+                            nMade.incrementAndGet();
+                            byte tb[] = new byte[100];
+                            tb[0] = (byte)fi;
+                            return tb;
+                        }
+                    });
+                Test.ensureEqual(bytes.length, 100, "i=" + i);
+            }
+            Test.ensureEqual(size(), 10, "");
+            Test.ensureEqual(nMade.get(), 10, "");
+
+            //reuse key3 (from the file)
+            Maker failMaker = new Maker() {
+                public byte[] make() {
+                    throw new RuntimeException("This shouldn't be called.");
+                }
+            };
+            byte bytes[] = getTile("key3", "odd", "v1", failMaker);
+            Test.ensureEqual(bytes.length, 100, "");
+            Test.ensureEqual(bytes[0], 3, "");
+
+            //a new version (e.g., the data changed) is remade
+            bytes = getTile("key3", "odd", "v2", new Maker() {
+                public byte[] make() {
+                    nMade.incrementAndGet();
+                    return new byte[50];
+                }
+            });
+            Test.ensureEqual(bytes.length, 50, "");
+            Test.ensureEqual(nMade.get(), 11, "");
+            Test.ensureEqual(size(), 10, "");
+
+            //too big to keep (> 1/100th of maxBytes)
+            bytes = getTile("keyBig", "odd", "v1", new Maker() {
+                public byte[] make() {
+                    return new byte[101];
+                }
+            });
+            Test.ensureEqual(bytes.length, 101, "");
+            Test.ensureEqual(size(), 10, "");
+
+            //LRU: shrink the store so only the most recently used fit
+            getTile("key0", "even", "v1", failMaker); //key0 is now the most recently used
+            setMaxBytes(250); //key3 (50 bytes) + key9 + key0
+            Test.ensureEqual(size(), 3, "");
+            getTile("key0", "even", "v1", failMaker);
+            getTile("key9", "odd",  "v1", failMaker);
+            getTile("key3", "odd",  "v2", failMaker);
+
+            //invalidate a dataset
+            invalidate("odd");
+            Test.ensureEqual(size(), 1, ""); //key0
+            setMaxBytes(10000);
+
+            //single-flight: 10 simultaneous requests for a new tile make it once
+            final CountDownLatch release = new CountDownLatch(1);
+            final Maker slowMaker = new Maker() {
+                public byte[] make() throws Throwable {
+                    nMade.incrementAndGet();
+                    release.await(10, TimeUnit.SECONDS);
+                    return new byte[77];
+                }
+            };
+            nMade.set(0);
+            final AtomicInteger nOk = new AtomicInteger(0);
+            Thread threads[] = new Thread[10];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            if (getTile("keySlow", "even", "v1", slowMaker).length == 77)
+                                nOk.incrementAndGet();
+                        } catch (Throwable t) {
+                            String2.log(MustBe.throwableToString(t));
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            Math2.sleep(500);
+            release.countDown();
+            for (int i = 0; i < threads.length; i++)
+                threads[i].join(10000);
+            Test.ensureEqual(nMade.get(), 1, "");
+            Test.ensureEqual(nOk.get(), 10, "");
+
+            String2.log(statistics());
+
+            //turning off the store removes everything
+            setMaxBytes(0);
+            Test.ensureEqual(size(), 0, "");
+
+        } finally {
+            synchronized(entries) {
+                removeOldest(0);
+                directory = oDirectory;
+                maxBytes = oMaxBytes;
+            }
+            resetDailyStatistics();
+            File2.deleteAllFiles(dir, true, true);
+        }
+    }
+
+    /**
+     * This runs all of the interactive or not interactive tests for this class.
+     *
+     * @param errorSB all caught exceptions are logged to this.
+     * @param interactive  If true, this runs all of the interactive tests;
+     *   otherwise, this runs all of the non-interactive tests.
+     * @param doSlowTestsToo If true, this runs the slow tests, too.
+     * @param firstTest The first test to be run (0...).  Test numbers may change.
+     * @param lastTest The last test to be run, inclusive (0..., or -1 for the last test).
+     *   Test numbers may change.
+     */
+    public static void test(StringBuilder errorSB, boolean interactive,
+        boolean doSlowTestsToo, int firstTest, int lastTest) {
+        if (lastTest < 0)
+            lastTest = interactive? -1 : 0;
+        String msg = "\n^^^ WmsTileCache.test(" + interactive + ") test=";
+
+        for (int test = firstTest; test <= lastTest; test++) {
+            try {
+                long time = System.currentTimeMillis();
+                String2.log(msg + test);
+
+                if (interactive) {
+                    //if (test ==  0) ...;
+
+                } else {
+                    if (test ==  0) basicTest();
+                }
+
+                String2.log(msg + test + " finished successfully in " + (System.currentTimeMillis() - time) + " ms.");
+            } catch (Throwable testThrowable) {
+                String eMsg = msg + test + " caught throwable:\n" +
+                    MustBe.throwableToString(testThrowable);
+                errorSB.append(eMsg);
+                String2.log(eMsg);
+                if (interactive)
+                    String2.pressEnterToContinue("");
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ import com.cohort.util.Units2;
 
 import gov.noaa.pfel.coastwatch.griddata.DataHelper;
 import gov.noaa.pfel.coastwatch.sgt.SgtMap;
+import gov.noaa.pfel.erddap.util.DatasetExtentIndex;
 import gov.noaa.pfel.erddap.util.EDStatic;
 
 import java.util.GregorianCalendar;
@@ -1192,13 +1193,19 @@ will show NaN).
     }
 
     public void setDestinationMin(PAOne tMin) {
-        if (tMin != null)
+        if (tMin != null) {
+            if (Double.compare(tMin.getDouble(), destinationMin.getDouble()) != 0)
+                DatasetExtentIndex.noteChange(); //Advanced Search's index may be out-of-date
             destinationMin = tMin;
+        }
     }
 
     public void setDestinationMax(PAOne tMax) {
-        if (tMax != null)
+        if (tMax != null) {
+            if (Double.compare(tMax.getDouble(), destinationMax.getDouble()) != 0)
+                DatasetExtentIndex.noteChange(); 
             destinationMax = tMax;
+        }
     }
 
     /** 